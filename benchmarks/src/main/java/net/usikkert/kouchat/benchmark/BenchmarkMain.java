@@ -0,0 +1,68 @@
+
+/***************************************************************************
+ *   Copyright 2006-2018 by Christian Ihle                                 *
+ *   contact@kouchat.net                                                   *
+ *                                                                         *
+ *   This file is part of KouChat.                                         *
+ *                                                                         *
+ *   KouChat is free software; you can redistribute it and/or modify       *
+ *   it under the terms of the GNU Lesser General Public License as        *
+ *   published by the Free Software Foundation, either version 3 of        *
+ *   the License, or (at your option) any later version.                   *
+ *                                                                         *
+ *   KouChat is distributed in the hope that it will be useful,            *
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of        *
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU      *
+ *   Lesser General Public License for more details.                       *
+ *                                                                         *
+ *   You should have received a copy of the GNU Lesser General Public      *
+ *   License along with KouChat.                                           *
+ *   If not, see <http://www.gnu.org/licenses/>.                           *
+ ***************************************************************************/
+
+package net.usikkert.kouchat.benchmark;
+
+import org.jetbrains.annotations.NonNls;
+
+/**
+ * Runs the benchmarks with the JMH command line, but saves the results as JSON in
+ * <code>jmh-result.json</code> unless another result format or file is specified.
+ *
+ * <p>Use <code>-rff</code> to choose a different file, like one per release, and compare the files
+ * to find regressions.</p>
+ *
+ * @author Christian Ihle
+ */
+public final class BenchmarkMain {
+
+    private BenchmarkMain() {
+        // Only static methods
+    }
+
+    public static void main(final String[] args) throws Exception {
+        org.openjdk.jmh.Main.main(withDefaultResultFormat(args));
+    }
+
+    static String[] withDefaultResultFormat(final String[] args) {
+        if (hasOption(args, "-rf") || hasOption(args, "-l") || hasOption(args, "-h")) {
+            return args;
+        }
+
+        final String[] argsWithJson = new String[args.length + 2];
+        argsWithJson[0] = "-rf";
+        argsWithJson[1] = "json";
+        System.arraycopy(args, 0, argsWithJson, 2, args.length);
+
+        return argsWithJson;
+    }
+
+    private static boolean hasOption(final String[] args, @NonNls final String option) {
+        for (final String arg : args) {
+            if (arg.equals(option)) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+}
@@ -0,0 +1,128 @@
+
+/***************************************************************************
+ *   Copyright 2006-2018 by Christian Ihle                                 *
+ *   contact@kouchat.net                                                   *
+ *                                                                         *
+ *   This file is part of KouChat.                                         *
+ *                                                                         *
+ *   KouChat is free software; you can redistribute it and/or modify       *
+ *   it under the terms of the GNU Lesser General Public License as        *
+ *   published by the Free Software Foundation, either version 3 of        *
+ *   the License, or (at your option) any later version.                   *
+ *                                                                         *
+ *   KouChat is distributed in the hope that it will be useful,            *
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of        *
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU      *
+ *   Lesser General Public License for more details.                       *
+ *                                                                         *
+ *   You should have received a copy of the GNU Lesser General Public      *
+ *   License along with KouChat.                                           *
+ *   If not, see <http://www.gnu.org/licenses/>.                           *
+ ***************************************************************************/
+
+package net.usikkert.kouchat.benchmark;
+
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import net.usikkert.kouchat.misc.Controller;
+import net.usikkert.kouchat.misc.User;
+import net.usikkert.kouchat.misc.UserListController;
+
+import org.jetbrains.annotations.NonNls;
+import org.objenesis.ObjenesisStd;
+
+/**
+ * Creates the objects needed by the benchmarks.
+ *
+ * @author Christian Ihle
+ */
+public final class BenchmarkObjects {
+
+    private static final String NICK_CHARACTERS = "abcdefghijklmnopqrstuvwxyzABCDEFGHIJKLMNOPQRSTUVWXYZ0123456789";
+
+    private BenchmarkObjects() {
+        // Only static methods
+    }
+
+    /**
+     * Creates users with unique codes and nick names. The same seed gives the same users.
+     *
+     * @param count The number of users to create.
+     * @param seed Seed for the random codes and nick names.
+     * @return The users.
+     */
+    public static List<User> createUsers(final int count, final long seed) {
+        final Random random = new Random(seed);
+        final Set<Integer> codes = new HashSet<>();
+        final Set<String> nicks = new HashSet<>();
+        final List<User> users = new ArrayList<>(count);
+
+        while (users.size() < count) {
+            final int code = 10000000 + random.nextInt(9999999);
+            final String nick = createNick(random);
+
+            if (codes.add(code) && nicks.add(nick.toLowerCase())) {
+                final User user = new User(nick, code);
+                user.setIpAddress("192.168." + random.nextInt(256) + "." + random.nextInt(256));
+                users.add(user);
+            }
+        }
+
+        return users;
+    }
+
+    /**
+     * Creates a controller that only has a user list controller.
+     *
+     * <p>The real controller needs a user interface and a network, which are not needed when benchmarking the
+     * user lookups in the network code. The constructor is not run, so any other method will fail.</p>
+     *
+     * @param userListController The user list controller to use for the user lookups.
+     * @return The controller.
+     */
+    public static Controller createController(final UserListController userListController) {
+        final Controller controller = instantiate(Controller.class);
+        setField(controller, "userListController", userListController);
+
+        return controller;
+    }
+
+    /**
+     * Creates a new instance of the class without running any constructors.
+     *
+     * @param type The class to create an instance of.
+     * @param <T> The type of the class.
+     * @return The new instance.
+     */
+    public static <T> T instantiate(final Class<T> type) {
+        return new ObjenesisStd().newInstance(type);
+    }
+
+    private static void setField(final Object object, @NonNls final String fieldName, final Object value) {
+        try {
+            final Field field = object.getClass().getDeclaredField(fieldName);
+            field.setAccessible(true);
+            field.set(object, value);
+        }
+
+        catch (final NoSuchFieldException | IllegalAccessException e) {
+            throw new RuntimeException("Failed to set " + fieldName, e);
+        }
+    }
+
+    private static String createNick(final Random random) {
+        final int length = 3 + random.nextInt(8);
+        final StringBuilder nick = new StringBuilder(length);
+
+        for (int i = 0; i < length; i++) {
+            nick.append(NICK_CHARACTERS.charAt(random.nextInt(NICK_CHARACTERS.length())));
+        }
+
+        return nick.toString();
+    }
+}
@@ -0,0 +1,161 @@
+
+/***************************************************************************
+ *   Copyright 2006-2018 by Christian Ihle                                 *
+ *   contact@kouchat.net                                                   *
+ *                                                                         *
+ *   This file is part of KouChat.                                         *
+ *                                                                         *
+ *   KouChat is free software; you can redistribute it and/or modify       *
+ *   it under the terms of the GNU Lesser General Public License as        *
+ *   published by the Free Software Foundation, either version 3 of        *
+ *   the License, or (at your option) any later version.                   *
+ *                                                                         *
+ *   KouChat is distributed in the hope that it will be useful,            *
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of        *
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU      *
+ *   Lesser General Public License for more details.                       *
+ *                                                                         *
+ *   You should have received a copy of the GNU Lesser General Public      *
+ *   License along with KouChat.                                           *
+ *   If not, see <http://www.gnu.org/licenses/>.                           *
+ ***************************************************************************/
+
+package net.usikkert.kouchat.benchmark;
+
+import net.usikkert.kouchat.misc.User;
+import net.usikkert.kouchat.net.MessageResponder;
+
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Message responder that gives all the parsed values to a {@link Blackhole},
+ * to avoid the parsing being optimized away.
+ *
+ * @author Christian Ihle
+ */
+public class BlackholeMessageResponder implements MessageResponder {
+
+    private final Blackhole blackhole;
+
+    public BlackholeMessageResponder(final Blackhole blackhole) {
+        this.blackhole = blackhole;
+    }
+
+    @Override
+    public void messageArrived(final int userCode, final String msg, final int color) {
+        blackhole.consume(userCode);
+        blackhole.consume(msg);
+        blackhole.consume(color);
+    }
+
+    @Override
+    public void topicChanged(final int userCode, final String newTopic, final String nick, final long time) {
+        blackhole.consume(userCode);
+        blackhole.consume(newTopic);
+        blackhole.consume(nick);
+        blackhole.consume(time);
+    }
+
+    @Override
+    public void topicRequested() {
+        blackhole.consume(true);
+    }
+
+    @Override
+    public void awayChanged(final int userCode, final boolean away, final String awayMsg) {
+        blackhole.consume(userCode);
+        blackhole.consume(away);
+        blackhole.consume(awayMsg);
+    }
+
+    @Override
+    public void nickChanged(final int userCode, final String newNick) {
+        blackhole.consume(userCode);
+        blackhole.consume(newNick);
+    }
+
+    @Override
+    public void nickCrash() {
+        blackhole.consume(true);
+    }
+
+    @Override
+    public void meLogOn(final String ipAddress) {
+        blackhole.consume(ipAddress);
+    }
+
+    @Override
+    public void userLogOn(final User newUser) {
+        blackhole.consume(newUser);
+    }
+
+    @Override
+    public void userLogOff(final int userCode) {
+        blackhole.consume(userCode);
+    }
+
+    @Override
+    public void userExposing(final User user) {
+        blackhole.consume(user);
+    }
+
+    @Override
+    public void exposeRequested() {
+        blackhole.consume(true);
+    }
+
+    @Override
+    public void writingChanged(final int userCode, final boolean writing) {
+        blackhole.consume(userCode);
+        blackhole.consume(writing);
+    }
+
+    @Override
+    public void meIdle(final String ipAddress) {
+        blackhole.consume(ipAddress);
+    }
+
+    @Override
+    public void userIdle(final int userCode, final String ipAddress) {
+        blackhole.consume(userCode);
+        blackhole.consume(ipAddress);
+    }
+
+    @Override
+    public void fileSend(final int userCode, final long byteSize, final String fileName, final String user,
+                         final int fileHash) {
+        blackhole.consume(userCode);
+        blackhole.consume(byteSize);
+        blackhole.consume(fileName);
+        blackhole.consume(user);
+        blackhole.consume(fileHash);
+    }
+
+    @Override
+    public void fileSendAborted(final int userCode, final String fileName, final int fileHash) {
+        blackhole.consume(userCode);
+        blackhole.consume(fileName);
+        blackhole.consume(fileHash);
+    }
+
+    @Override
+    public void fileSendAccepted(final int userCode, final String fileName, final int fileHash, final int port) {
+        blackhole.consume(userCode);
+        blackhole.consume(fileName);
+        blackhole.consume(fileHash);
+        blackhole.consume(port);
+    }
+
+    @Override
+    public void clientInfo(final int userCode, final String client, final long timeSinceLogon,
+                           final String operatingSystem, final int privateChatPort, final int tcpChatPort,
+                           final int capabilities) {
+        blackhole.consume(userCode);
+        blackhole.consume(client);
+        blackhole.consume(timeSinceLogon);
+        blackhole.consume(operatingSystem);
+        blackhole.consume(privateChatPort);
+        blackhole.consume(tcpChatPort);
+        blackhole.consume(capabilities);
+    }
+}
@@ -20,40 +20,42 @@
  *   If not, see <http://www.gnu.org/licenses/>.                           *
  ***************************************************************************/
 
-package net.usikkert.kouchat.net;
+package net.usikkert.kouchat.benchmark;
 
-import static org.mockito.Mockito.*;
+import net.usikkert.kouchat.misc.User;
+import net.usikkert.kouchat.net.NetworkService;
 
-import net.usikkert.kouchat.junit.ExpectedException;
-import net.usikkert.kouchat.misc.ErrorHandler;
-import net.usikkert.kouchat.settings.Settings;
-
-import org.junit.Rule;
-import org.junit.Test;
+import org.openjdk.jmh.infra.Blackhole;
 
 /**
- * Test of {@link UDPReceiver}.
+ * Network service that gives the messages to a {@link Blackhole} instead of sending them.
+ *
+ * <p>Must be created with {@link BenchmarkObjects#instantiate(Class)}, since the real constructor
+ * needs a controller.</p>
  *
  * @author Christian Ihle
  */
-public class UDPReceiverTest {
+public class BlackholeNetworkService extends NetworkService {
 
-    @Rule
-    public ExpectedException expectedException = ExpectedException.none();
+    private Blackhole blackhole;
 
-    @Test
-    public void constructorShouldThrowExceptionIfSettingsIsNull() {
-        expectedException.expect(IllegalArgumentException.class);
-        expectedException.expectMessage("Settings can not be null");
+    private BlackholeNetworkService() {
+        super(null, null, null);
+    }
 
-        new UDPReceiver(null, mock(ErrorHandler.class));
+    public void setBlackhole(final Blackhole blackhole) {
+        this.blackhole = blackhole;
     }
 
-    @Test
-    public void constructorShouldThrowExceptionIfErrorHandlerIsNull() {
-        expectedException.expect(IllegalArgumentException.class);
-        expectedException.expectMessage("Error handler can not be null");
+    @Override
+    public boolean sendMessageToAllUsers(final String message) {
+        blackhole.consume(message);
+        return true;
+    }
 
-        new UDPReceiver(mock(Settings.class), null);
+    @Override
+    public boolean sendMessageToUser(final String message, final User user) {
+        blackhole.consume(message);
+        return true;
     }
 }
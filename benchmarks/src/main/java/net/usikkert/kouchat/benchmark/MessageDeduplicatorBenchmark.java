@@ -0,0 +1,129 @@
+
+/***************************************************************************
+ *   Copyright 2006-2018 by Christian Ihle                                 *
+ *   contact@kouchat.net                                                   *
+ *                                                                         *
+ *   This file is part of KouChat.                                         *
+ *                                                                         *
+ *   KouChat is free software; you can redistribute it and/or modify       *
+ *   it under the terms of the GNU Lesser General Public License as        *
+ *   published by the Free Software Foundation, either version 3 of        *
+ *   the License, or (at your option) any later version.                   *
+ *                                                                         *
+ *   KouChat is distributed in the hope that it will be useful,            *
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of        *
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU      *
+ *   Lesser General Public License for more details.                       *
+ *                                                                         *
+ *   You should have received a copy of the GNU Lesser General Public      *
+ *   License along with KouChat.                                           *
+ *   If not, see <http://www.gnu.org/licenses/>.                           *
+ ***************************************************************************/
+
+package net.usikkert.kouchat.benchmark;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import net.usikkert.kouchat.event.ReceiverListener;
+import net.usikkert.kouchat.misc.User;
+import net.usikkert.kouchat.misc.UserList;
+import net.usikkert.kouchat.misc.UserListController;
+import net.usikkert.kouchat.net.MessageDeduplicator;
+import net.usikkert.kouchat.settings.Settings;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Benchmark of {@link MessageDeduplicator}, forwarding the recorded messages in <code>message-mix.txt</code>
+ * and <code>private-message-mix.txt</code> as multicast messages.
+ *
+ * <p>The senders of the messages are in the user list, together with other users to get the
+ * size of the user list up to <code>userCount</code>. The score is the time to forward all the messages.</p>
+ *
+ * @author Christian Ihle
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MessageDeduplicatorBenchmark {
+
+    private static final String IP_ADDRESS = "192.168.1.2";
+
+    /** Strong reference, so the level is not lost if the logger is garbage collected. */
+    private static final Logger KOUCHAT_LOG = Logger.getLogger("net.usikkert.kouchat");
+
+    @Param({"12", "500"})
+    private int userCount;
+
+    private String[] messages;
+    private MessageDeduplicator messageDeduplicator;
+
+    @Setup
+    public void setUp(final Blackhole blackhole) {
+        KOUCHAT_LOG.setLevel(Level.OFF);
+
+        final Settings settings = new Settings();
+        final int meCode = settings.getMe().getCode();
+        final String[] mainChatMessages = RecordedMessages.load("message-mix.txt", meCode);
+        final String[] privateChatMessages = RecordedMessages.load("private-message-mix.txt", meCode);
+
+        messages = new String[mainChatMessages.length + privateChatMessages.length];
+        System.arraycopy(mainChatMessages, 0, messages, 0, mainChatMessages.length);
+        System.arraycopy(privateChatMessages, 0, messages, mainChatMessages.length, privateChatMessages.length);
+
+        final UserListController userListController = new UserListController(settings);
+        addUsers(userListController.getUserList());
+
+        final ReceiverListener listener = new ReceiverListener() {
+            @Override
+            public void messageArrived(final String message, final String ipAddress) {
+                blackhole.consume(message);
+            }
+        };
+
+        messageDeduplicator = new MessageDeduplicator(BenchmarkObjects.createController(userListController));
+        messageDeduplicator.registerMainChatReceiverListener(listener);
+        messageDeduplicator.registerPrivateChatReceiverListener(listener);
+    }
+
+    @Benchmark
+    public void multicastMessageArrived() {
+        for (final String message : messages) {
+            messageDeduplicator.messageArrived(message, IP_ADDRESS);
+        }
+    }
+
+    private void addUsers(final UserList userList) {
+        for (final String message : messages) {
+            final int code = Integer.parseInt(message.substring(0, message.indexOf('!')));
+            final User user = new User(message.substring(message.indexOf('#') + 1, message.indexOf(':')), code);
+
+            if (userList.indexOf(user) == -1) {
+                userList.add(user);
+            }
+        }
+
+        final List<User> otherUsers = BenchmarkObjects.createUsers(userCount, 1);
+
+        for (int i = 0; userList.size() < userCount && i < otherUsers.size(); i++) {
+            userList.add(otherUsers.get(i));
+        }
+    }
+}
@@ -0,0 +1,103 @@
+
+/***************************************************************************
+ *   Copyright 2006-2018 by Christian Ihle                                 *
+ *   contact@kouchat.net                                                   *
+ *                                                                         *
+ *   This file is part of KouChat.                                         *
+ *                                                                         *
+ *   KouChat is free software; you can redistribute it and/or modify       *
+ *   it under the terms of the GNU Lesser General Public License as        *
+ *   published by the Free Software Foundation, either version 3 of        *
+ *   the License, or (at your option) any later version.                   *
+ *                                                                         *
+ *   KouChat is distributed in the hope that it will be useful,            *
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of        *
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU      *
+ *   Lesser General Public License for more details.                       *
+ *                                                                         *
+ *   You should have received a copy of the GNU Lesser General Public      *
+ *   License along with KouChat.                                           *
+ *   If not, see <http://www.gnu.org/licenses/>.                           *
+ ***************************************************************************/
+
+package net.usikkert.kouchat.benchmark;
+
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import net.usikkert.kouchat.event.ReceiverListener;
+import net.usikkert.kouchat.net.MessageParser;
+import net.usikkert.kouchat.settings.Settings;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Compares {@link MessageParser} with {@link LegacyMessageParser}, the parser from before the single pass
+ * tokenizer and the switch on the type, by parsing the recorded messages in <code>message-mix.txt</code>.
+ *
+ * <p>The score is the time to parse the whole mix.</p>
+ *
+ * @author Christian Ihle
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MessageParserBenchmark {
+
+    private static final String IP_ADDRESS = "192.168.1.2";
+
+    /** Strong reference, so the level is not lost if the logger is garbage collected. */
+    private static final Logger KOUCHAT_LOG = Logger.getLogger("net.usikkert.kouchat");
+
+    private String[] messages;
+    private ReceiverListener legacyParser;
+    private ReceiverListener messageParser;
+
+    @Setup
+    public void setUp(final Blackhole blackhole) {
+        // Avoid measuring the logging of the file transfers and unknown users
+        KOUCHAT_LOG.setLevel(Level.OFF);
+
+        final Settings settings = new Settings();
+        final int meCode = settings.getMe().getCode();
+        final String meLogOn = meCode + "!LOGON#" + settings.getMe().getNick() + ":";
+
+        messages = RecordedMessages.load("message-mix.txt", meCode);
+
+        legacyParser = new LegacyMessageParser(new BlackholeMessageResponder(blackhole), settings);
+        legacyParser.messageArrived(meLogOn, IP_ADDRESS);
+
+        messageParser = new MessageParser(new BlackholeMessageResponder(blackhole), settings);
+        messageParser.messageArrived(meLogOn, IP_ADDRESS);
+    }
+
+    @Benchmark
+    public void legacyParser() {
+        parseAll(legacyParser);
+    }
+
+    @Benchmark
+    public void messageParser() {
+        parseAll(messageParser);
+    }
+
+    private void parseAll(final ReceiverListener parser) {
+        for (final String message : messages) {
+            parser.messageArrived(message, IP_ADDRESS);
+        }
+    }
+}
@@ -0,0 +1,112 @@
+
+/***************************************************************************
+ *   Copyright 2006-2018 by Christian Ihle                                 *
+ *   contact@kouchat.net                                                   *
+ *                                                                         *
+ *   This file is part of KouChat.                                         *
+ *                                                                         *
+ *   KouChat is free software; you can redistribute it and/or modify       *
+ *   it under the terms of the GNU Lesser General Public License as        *
+ *   published by the Free Software Foundation, either version 3 of        *
+ *   the License, or (at your option) any later version.                   *
+ *                                                                         *
+ *   KouChat is distributed in the hope that it will be useful,            *
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of        *
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU      *
+ *   Lesser General Public License for more details.                       *
+ *                                                                         *
+ *   You should have received a copy of the GNU Lesser General Public      *
+ *   License along with KouChat.                                           *
+ *   If not, see <http://www.gnu.org/licenses/>.                           *
+ ***************************************************************************/
+
+package net.usikkert.kouchat.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import net.usikkert.kouchat.misc.CommandException;
+import net.usikkert.kouchat.misc.Topic;
+import net.usikkert.kouchat.misc.User;
+import net.usikkert.kouchat.net.NetworkMessages;
+import net.usikkert.kouchat.settings.Settings;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Benchmark of building the messages in {@link NetworkMessages}. The messages are given to a
+ * {@link BlackholeNetworkService} instead of being sent.
+ *
+ * @author Christian Ihle
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class NetworkMessagesBenchmark {
+
+    private NetworkMessages networkMessages;
+    private Topic topic;
+    private User user;
+
+    @Setup
+    public void setUp(final Blackhole blackhole) {
+        final Settings settings = new Settings();
+        settings.setClient("Swing");
+        settings.getMe().setPrivateChatPort(40656);
+        settings.getMe().setTcpChatPort(40657);
+
+        final BlackholeNetworkService networkService = BenchmarkObjects.instantiate(BlackholeNetworkService.class);
+        networkService.setBlackhole(blackhole);
+
+        networkMessages = new NetworkMessages(networkService, settings);
+        topic = new Topic("Release 1.5.0 on friday", "Christian", 1525170000000L);
+        user = new User("Harry", 18737868);
+    }
+
+    @Benchmark
+    public void sendIdleMessage() {
+        networkMessages.sendIdleMessage();
+    }
+
+    @Benchmark
+    public void sendWritingMessage() {
+        networkMessages.sendWritingMessage();
+    }
+
+    @Benchmark
+    public void sendChatMessage() throws CommandException {
+        networkMessages.sendChatMessage("Anyone up for lunch at 11:30?");
+    }
+
+    @Benchmark
+    public void sendPrivateMessage() throws CommandException {
+        networkMessages.sendPrivateMessage("The build failed on the tcp tests again, can you take a look?", user);
+    }
+
+    @Benchmark
+    public void sendTopicChangeMessage() {
+        networkMessages.sendTopicChangeMessage(topic);
+    }
+
+    @Benchmark
+    public void sendFileAccept() throws CommandException {
+        networkMessages.sendFileAccept(user, 40660, 1983274653, "slides.pdf");
+    }
+
+    @Benchmark
+    public void sendClient() {
+        networkMessages.sendClient();
+    }
+}
@@ -0,0 +1,91 @@
+
+/***************************************************************************
+ *   Copyright 2006-2018 by Christian Ihle                                 *
+ *   contact@kouchat.net                                                   *
+ *                                                                         *
+ *   This file is part of KouChat.                                         *
+ *                                                                         *
+ *   KouChat is free software; you can redistribute it and/or modify       *
+ *   it under the terms of the GNU Lesser General Public License as        *
+ *   published by the Free Software Foundation, either version 3 of        *
+ *   the License, or (at your option) any later version.                   *
+ *                                                                         *
+ *   KouChat is distributed in the hope that it will be useful,            *
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of        *
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU      *
+ *   Lesser General Public License for more details.                       *
+ *                                                                         *
+ *   You should have received a copy of the GNU Lesser General Public      *
+ *   License along with KouChat.                                           *
+ *   If not, see <http://www.gnu.org/licenses/>.                           *
+ ***************************************************************************/
+
+package net.usikkert.kouchat.benchmark;
+
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import net.usikkert.kouchat.net.PrivateMessageParser;
+import net.usikkert.kouchat.net.PrivateMessageResponder;
+import net.usikkert.kouchat.settings.Settings;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Benchmark of {@link PrivateMessageParser}, parsing the recorded messages in <code>private-message-mix.txt</code>.
+ *
+ * <p>The score is the time to parse the whole mix.</p>
+ *
+ * @author Christian Ihle
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PrivateMessageParserBenchmark {
+
+    private static final String IP_ADDRESS = "192.168.1.2";
+
+    /** Strong reference, so the level is not lost if the logger is garbage collected. */
+    private static final Logger KOUCHAT_LOG = Logger.getLogger("net.usikkert.kouchat");
+
+    private String[] messages;
+    private PrivateMessageParser parser;
+
+    @Setup
+    public void setUp(final Blackhole blackhole) {
+        KOUCHAT_LOG.setLevel(Level.OFF);
+
+        final Settings settings = new Settings();
+        messages = RecordedMessages.load("private-message-mix.txt", settings.getMe().getCode());
+
+        parser = new PrivateMessageParser(new PrivateMessageResponder() {
+            @Override
+            public void messageArrived(final int userCode, final String msg, final int color) {
+                blackhole.consume(userCode);
+                blackhole.consume(msg);
+                blackhole.consume(color);
+            }
+        }, settings);
+    }
+
+    @Benchmark
+    public void privateMessageParser() {
+        for (final String message : messages) {
+            parser.messageArrived(message, IP_ADDRESS);
+        }
+    }
+}
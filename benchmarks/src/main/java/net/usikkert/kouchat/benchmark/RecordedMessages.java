@@ -0,0 +1,79 @@
+
+/***************************************************************************
+ *   Copyright 2006-2018 by Christian Ihle                                 *
+ *   contact@kouchat.net                                                   *
+ *                                                                         *
+ *   This file is part of KouChat.                                         *
+ *                                                                         *
+ *   KouChat is free software; you can redistribute it and/or modify       *
+ *   it under the terms of the GNU Lesser General Public License as        *
+ *   published by the Free Software Foundation, either version 3 of        *
+ *   the License, or (at your option) any later version.                   *
+ *                                                                         *
+ *   KouChat is distributed in the hope that it will be useful,            *
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of        *
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU      *
+ *   Lesser General Public License for more details.                       *
+ *                                                                         *
+ *   You should have received a copy of the GNU Lesser General Public      *
+ *   License along with KouChat.                                           *
+ *   If not, see <http://www.gnu.org/licenses/>.                           *
+ ***************************************************************************/
+
+package net.usikkert.kouchat.benchmark;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.jetbrains.annotations.NonNls;
+
+/**
+ * Loads recorded network messages used as input to the benchmarks.
+ *
+ * @author Christian Ihle
+ */
+public final class RecordedMessages {
+
+    private RecordedMessages() {
+        // Only static methods
+    }
+
+    /**
+     * Loads the messages from a resource file. Blank lines and lines starting with <code>#</code> are skipped.
+     *
+     * @param resource The name of the resource file to load.
+     * @param meCode The user code of the application user, to use instead of <code>@me@</code>.
+     * @return The messages in the file.
+     */
+    public static String[] load(@NonNls final String resource, final int meCode) {
+        final InputStream inputStream = RecordedMessages.class.getResourceAsStream("/" + resource);
+
+        if (inputStream == null) {
+            throw new IllegalArgumentException("Missing resource: " + resource);
+        }
+
+        final List<String> messages = new ArrayList<>();
+
+        try (final BufferedReader reader = new BufferedReader(new InputStreamReader(inputStream, "UTF-8"))) {
+            String line = reader.readLine();
+
+            while (line != null) {
+                if (!line.trim().isEmpty() && !line.startsWith("#")) {
+                    messages.add(line.replace("@me@", String.valueOf(meCode)));
+                }
+
+                line = reader.readLine();
+            }
+        }
+
+        catch (final IOException e) {
+            throw new RuntimeException("Failed to load " + resource, e);
+        }
+
+        return messages.toArray(new String[messages.size()]);
+    }
+}
@@ -0,0 +1,112 @@
+
+/***************************************************************************
+ *   Copyright 2006-2018 by Christian Ihle                                 *
+ *   contact@kouchat.net                                                   *
+ *                                                                         *
+ *   This file is part of KouChat.                                         *
+ *                                                                         *
+ *   KouChat is free software; you can redistribute it and/or modify       *
+ *   it under the terms of the GNU Lesser General Public License as        *
+ *   published by the Free Software Foundation, either version 3 of        *
+ *   the License, or (at your option) any later version.                   *
+ *                                                                         *
+ *   KouChat is distributed in the hope that it will be useful,            *
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of        *
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU      *
+ *   Lesser General Public License for more details.                       *
+ *                                                                         *
+ *   You should have received a copy of the GNU Lesser General Public      *
+ *   License along with KouChat.                                           *
+ *   If not, see <http://www.gnu.org/licenses/>.                           *
+ ***************************************************************************/
+
+package net.usikkert.kouchat.benchmark;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import net.usikkert.kouchat.misc.SortedUserList;
+import net.usikkert.kouchat.misc.User;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmark of {@link SortedUserList}.
+ *
+ * <p><code>addAllUsers</code> is the time to fill an empty list with <code>userCount</code> users,
+ * like when logging on to a busy chat. <code>setUser</code> is the time to change the nick name of one
+ * user in a full list, which moves the user to a new position.</p>
+ *
+ * @author Christian Ihle
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SortedUserListBenchmark {
+
+    @Param({"50", "500"})
+    private int userCount;
+
+    private List<User> users;
+    private SortedUserList fullList;
+    private String[] originalNicks;
+    private int nextUser;
+
+    @Setup
+    public void setUp() {
+        users = BenchmarkObjects.createUsers(userCount, 1);
+        Collections.shuffle(users, new Random(2));
+
+        fullList = new SortedUserList();
+
+        for (final User user : users) {
+            fullList.add(user);
+        }
+
+        originalNicks = new String[userCount];
+
+        for (int i = 0; i < userCount; i++) {
+            originalNicks[i] = users.get(i).getNick();
+        }
+    }
+
+    @Benchmark
+    public SortedUserList addAllUsers() {
+        final SortedUserList userList = new SortedUserList();
+
+        for (final User user : users) {
+            userList.add(user);
+        }
+
+        return userList;
+    }
+
+    @Benchmark
+    public User setUser() {
+        final int userIndex = nextUser;
+        nextUser = (nextUser + 1) % userCount;
+
+        final User user = users.get(userIndex);
+        final String originalNick = originalNicks[userIndex];
+
+        // Toggle between the original nick and a nick that sorts at the end of the list
+        user.setNick(user.getNick().equals(originalNick) ? "zz" + originalNick : originalNick);
+
+        return fullList.set(fullList.indexOf(user), user);
+    }
+}
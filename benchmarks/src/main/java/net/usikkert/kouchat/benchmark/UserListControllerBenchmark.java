@@ -0,0 +1,108 @@
+
+/***************************************************************************
+ *   Copyright 2006-2018 by Christian Ihle                                 *
+ *   contact@kouchat.net                                                   *
+ *                                                                         *
+ *   This file is part of KouChat.                                         *
+ *                                                                         *
+ *   KouChat is free software; you can redistribute it and/or modify       *
+ *   it under the terms of the GNU Lesser General Public License as        *
+ *   published by the Free Software Foundation, either version 3 of        *
+ *   the License, or (at your option) any later version.                   *
+ *                                                                         *
+ *   KouChat is distributed in the hope that it will be useful,            *
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of        *
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU      *
+ *   Lesser General Public License for more details.                       *
+ *                                                                         *
+ *   You should have received a copy of the GNU Lesser General Public      *
+ *   License along with KouChat.                                           *
+ *   If not, see <http://www.gnu.org/licenses/>.                           *
+ ***************************************************************************/
+
+package net.usikkert.kouchat.benchmark;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import net.usikkert.kouchat.misc.User;
+import net.usikkert.kouchat.misc.UserListController;
+import net.usikkert.kouchat.settings.Settings;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmark of the user lookups in {@link UserListController}, with <code>userCount</code> users
+ * in the user list. Each invocation looks up the next user in the list.
+ *
+ * @author Christian Ihle
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class UserListControllerBenchmark {
+
+    @Param({"50", "500"})
+    private int userCount;
+
+    private UserListController userListController;
+    private int[] codes;
+    private String[] nicks;
+    private int nextUser;
+
+    @Setup
+    public void setUp() {
+        userListController = new UserListController(new Settings());
+
+        final List<User> users = BenchmarkObjects.createUsers(userCount, 1);
+        codes = new int[userCount];
+        nicks = new String[userCount];
+
+        for (int i = 0; i < userCount; i++) {
+            final User user = users.get(i);
+            userListController.getUserList().add(user);
+            codes[i] = user.getCode();
+            nicks[i] = user.getNick().toUpperCase();
+        }
+    }
+
+    @Benchmark
+    public User getUserByCode() {
+        return userListController.getUser(codes[nextUser()]);
+    }
+
+    @Benchmark
+    public User getUserByNick() {
+        return userListController.getUser(nicks[nextUser()]);
+    }
+
+    @Benchmark
+    public boolean isNewUser() {
+        return userListController.isNewUser(codes[nextUser()]);
+    }
+
+    @Benchmark
+    public boolean isNickNameInUse() {
+        return userListController.isNickNameInUse(nicks[nextUser()]);
+    }
+
+    private int nextUser() {
+        final int userIndex = nextUser;
+        nextUser = (nextUser + 1) % userCount;
+
+        return userIndex;
+    }
+}
@@ -0,0 +1,118 @@
+
+/***************************************************************************
+ *   Copyright 2006-2018 by Christian Ihle                                 *
+ *   contact@kouchat.net                                                   *
+ *                                                                         *
+ *   This file is part of KouChat.                                         *
+ *                                                                         *
+ *   KouChat is free software; you can redistribute it and/or modify       *
+ *   it under the terms of the GNU Lesser General Public License as        *
+ *   published by the Free Software Foundation, either version 3 of        *
+ *   the License, or (at your option) any later version.                   *
+ *                                                                         *
+ *   KouChat is distributed in the hope that it will be useful,            *
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of        *
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU      *
+ *   Lesser General Public License for more details.                       *
+ *                                                                         *
+ *   You should have received a copy of the GNU Lesser General Public      *
+ *   License along with KouChat.                                           *
+ *   If not, see <http://www.gnu.org/licenses/>.                           *
+ ***************************************************************************/
+
+package net.usikkert.kouchat.ui.swing;
+
+import java.util.concurrent.TimeUnit;
+
+import net.usikkert.kouchat.misc.ErrorHandler;
+import net.usikkert.kouchat.settings.Settings;
+import net.usikkert.kouchat.ui.swing.messages.SwingMessages;
+import net.usikkert.kouchat.util.ResourceLoader;
+import net.usikkert.kouchat.util.ResourceValidator;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Benchmark of finding smileys and urls in chat messages, like {@link SmileyDocumentFilter}
+ * and {@link URLDocumentFilter} do for every message shown in the chat.
+ *
+ * <p>This is in the same package as the filters to be able to use the protected methods.
+ * The score is the time to search through all the lines.</p>
+ *
+ * @author Christian Ihle
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DocumentFilterBenchmark {
+
+    /** Chat lines like they are inserted in the document, always ending with a new line. */
+    private static final String[] LINES = {
+            "[11:02:13] <Christian>: Anyone up for lunch at 11:30?\n",
+            "[11:02:20] <Harry>: Sure, the usual place? :)\n",
+            "[11:02:31] <Christian>: Yes :) :D\n",
+            "[11:05:42] <Marcus>: Could someone review the build changes? http://intranet/review/1024\n",
+            "[11:05:50] <Tina>: I'll take it ;)\n",
+            "[11:06:01] *** Sally is away: In a meeting\n",
+            "[11:10:12] <Jenny>: The slides are on www.kouchat.net and ftp.kouchat.net :p\n",
+            "[11:12:44] <Oliver>: :):) not a smiley, but this is :O\n",
+            "[11:14:03] <Rita>: Just a normal message without anything special in it at all\n",
+            "[11:15:30] <Kim>: https://www.kouchat.net/ :S :@ ;)\n"
+    };
+
+    private SmileyDocumentFilter smileyDocumentFilter;
+    private URLDocumentFilter urlDocumentFilter;
+
+    @Setup
+    public void setUp() {
+        final ImageLoader imageLoader = new ImageLoader(new ErrorHandler(), new SwingMessages(),
+                                                        new ResourceValidator(), new ResourceLoader());
+
+        smileyDocumentFilter = new SmileyDocumentFilter(false, imageLoader, new Settings());
+        urlDocumentFilter = new URLDocumentFilter(false);
+    }
+
+    @Benchmark
+    public void findSmileys(final Blackhole blackhole) {
+        for (final String line : LINES) {
+            Smiley smiley = smileyDocumentFilter.findSmiley(line, 0);
+
+            while (smiley != null) {
+                blackhole.consume(smiley);
+                smiley = smileyDocumentFilter.findSmiley(line, smiley.getStopPosition());
+            }
+        }
+    }
+
+    @Benchmark
+    public void findURLs(final Blackhole blackhole) {
+        for (final String line : LINES) {
+            int startPos = urlDocumentFilter.findURLPos(line, 0);
+
+            while (startPos != -1) {
+                blackhole.consume(startPos);
+
+                int stopPos = line.indexOf(" ", startPos);
+
+                if (stopPos == -1) {
+                    stopPos = line.indexOf("\n", startPos);
+                }
+
+                startPos = urlDocumentFilter.findURLPos(line, stopPos);
+            }
+        }
+    }
+}
@@ -103,6 +103,30 @@ public interface Constants {
      */
     int NETWORK_PACKET_SIZE = 512;
 
+    /**
+     * The default max number of multicast packets to
+     * send per second.
+     */
+    int NETWORK_PACKET_RATE = 50;
+
+    /**
+     * The max number of messages waiting to be sent
+     * to each user over tcp.
+     */
+    int NETWORK_TCP_SEND_QUEUE_SIZE = 500;
+
+    /**
+     * The number of sent multicast messages to keep
+     * for retransmitting to users that missed them.
+     */
+    int NETWORK_RETRANSMIT_BUFFER_SIZE = 256;
+
+    /**
+     * The number of network and user list events to keep
+     * in memory, for saving to a file when something goes wrong.
+     */
+    int FLIGHT_RECORDER_SIZE = 4096;
+
     /**
      * The multicast address used for sending and receiving
      * packets for the main chat.
@@ -126,6 +150,12 @@ public interface Constants {
      */
     int MESSAGE_MAX_BYTES = 450;
 
+    /**
+     * Max number of bytes allowed in a chat message, when all
+     * the users can receive messages split into several udp packets.
+     */
+    int MESSAGE_MAX_FRAGMENTED_BYTES = 8000;
+
     /**
      * The folder where the application can save files.
      */
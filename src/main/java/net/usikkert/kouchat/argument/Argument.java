@@ -45,6 +45,13 @@ public enum Argument {
     NO_PRIVATE_CHAT(null, "--no-private-chat", "Disables private chat.", false),
     ALWAYS_LOG(null, "--always-log", "Enables logging, without option to disable.", false),
     LOG_LOCATION(null, "--log-location", "Location to store log files.", true),
+    BINARY_PROTOCOL(null, "--binary-protocol", "Sends compact binary messages when all users support it.", false),
+    PACKET_RATE(null, "--packet-rate", "Max multicast packets to send per second. 0 for no limit.", true),
+    COMPRESSION(null, "--compression", "Compresses large messages when all users support it.", false),
+    TCP_OVERFLOW(null, "--tcp-overflow", "What to do when a user is too slow to receive: drop or disconnect.", true),
+    BAD_NETWORK(null, "--bad-network", "Emulates a bad network, like loss=5,delay=50,jitter=20.", true),
+    NETWORK_SEED(null, "--network-seed", "Seed for the emulated network, to repeat the same problems.", true),
+    LATENCY_TIMESTAMPS(null, "--latency-timestamps", "Sends chat messages with a timestamp, to measure latency.", false),
     UNKNOWN(null, null, null, false);
 
     private final String shortArgumentName;
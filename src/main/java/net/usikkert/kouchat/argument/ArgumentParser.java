@@ -41,7 +41,7 @@ import org.jetbrains.annotations.Nullable;
 public class ArgumentParser {
 
     /** Looks for a pattern of type <code>argument=value</code>. */
-    private static final Pattern VALUE_REGEX = Pattern.compile(".+=(.+)");
+    private static final Pattern VALUE_REGEX = Pattern.compile("[^=]+=(.+)");
 
     private final String[] originalArguments;
     private final List<ParsedArgument> parsedArguments;
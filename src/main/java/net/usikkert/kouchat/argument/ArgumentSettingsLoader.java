@@ -22,7 +22,10 @@
 
 package net.usikkert.kouchat.argument;
 
+import net.usikkert.kouchat.net.tcp.TCPOverflowPolicy;
+import net.usikkert.kouchat.net.transport.NetworkConditions;
 import net.usikkert.kouchat.settings.Settings;
+import net.usikkert.kouchat.util.Logger;
 
 /**
  * Loads settings based on arguments.
@@ -31,6 +34,8 @@ import net.usikkert.kouchat.settings.Settings;
  */
 public class ArgumentSettingsLoader {
 
+    private static final Logger LOG = Logger.getLogger(ArgumentSettingsLoader.class);
+
     /**
      * Loads settings from the parsed arguments.
      *
@@ -39,6 +44,13 @@ public class ArgumentSettingsLoader {
      *   <li>--always-log ({@link Settings#isAlwaysLog()}</li>
      *   <li>--no-private-chat ({@link Settings#isNoPrivateChat()}</li>
      *   <li>--log-location ({@link Settings#getLogLocation()}</li>
+     *   <li>--binary-protocol ({@link Settings#isBinaryProtocol()}</li>
+     *   <li>--packet-rate ({@link Settings#getPacketRate()}</li>
+     *   <li>--compression ({@link Settings#isCompression()}</li>
+     *   <li>--tcp-overflow ({@link Settings#getTcpOverflowPolicy()}</li>
+     *   <li>--bad-network ({@link Settings#getNetworkEmulation()}</li>
+     *   <li>--network-seed ({@link Settings#getNetworkSeed()}</li>
+     *   <li>--latency-timestamps ({@link Settings#isLatencyTimestamps()}</li>
      * </ul>
      *
      * @param argumentParser The parsed arguments.
@@ -47,9 +59,83 @@ public class ArgumentSettingsLoader {
     public void loadSettings(final ArgumentParser argumentParser, final Settings settings) {
         settings.setAlwaysLog(argumentParser.hasArgument(Argument.ALWAYS_LOG));
         settings.setNoPrivateChat(argumentParser.hasArgument(Argument.NO_PRIVATE_CHAT));
+        settings.setBinaryProtocol(argumentParser.hasArgument(Argument.BINARY_PROTOCOL));
+        settings.setCompression(argumentParser.hasArgument(Argument.COMPRESSION));
+        settings.setLatencyTimestamps(argumentParser.hasArgument(Argument.LATENCY_TIMESTAMPS));
 
         if (argumentParser.hasArgument(Argument.LOG_LOCATION)) {
             settings.setLogLocation(argumentParser.getArgument(Argument.LOG_LOCATION).getValue());
         }
+
+        if (argumentParser.hasArgument(Argument.PACKET_RATE)) {
+            loadPacketRate(argumentParser.getArgument(Argument.PACKET_RATE).getValue(), settings);
+        }
+
+        if (argumentParser.hasArgument(Argument.TCP_OVERFLOW)) {
+            loadTcpOverflowPolicy(argumentParser.getArgument(Argument.TCP_OVERFLOW).getValue(), settings);
+        }
+
+        if (argumentParser.hasArgument(Argument.BAD_NETWORK)) {
+            loadNetworkEmulation(argumentParser.getArgument(Argument.BAD_NETWORK).getValue(), settings);
+        }
+
+        if (argumentParser.hasArgument(Argument.NETWORK_SEED)) {
+            loadNetworkSeed(argumentParser.getArgument(Argument.NETWORK_SEED).getValue(), settings);
+        }
+    }
+
+    private void loadTcpOverflowPolicy(final String value, final Settings settings) {
+        final TCPOverflowPolicy policy = TCPOverflowPolicy.fromName(value);
+
+        if (policy != null) {
+            settings.setTcpOverflowPolicy(policy);
+        }
+
+        else {
+            LOG.warning("Invalid tcp overflow policy '%s'. Using the default of %s",
+                        value, settings.getTcpOverflowPolicy().getName());
+        }
+    }
+
+    private void loadNetworkEmulation(final String value, final Settings settings) {
+        try {
+            settings.setNetworkEmulation(NetworkConditions.parse(value));
+        }
+
+        catch (final IllegalArgumentException e) {
+            LOG.warning("Invalid network emulation '%s': %s. Using the network as it is", value, e.getMessage());
+        }
+    }
+
+    private void loadNetworkSeed(final String value, final Settings settings) {
+        try {
+            settings.setNetworkSeed(Long.parseLong(value));
+        }
+
+        catch (final NumberFormatException e) {
+            LOG.warning("Invalid network seed '%s'. Using the default of %s", value, settings.getNetworkSeed());
+        }
+    }
+
+    private void loadPacketRate(final String value, final Settings settings) {
+        final int packetRate = parsePacketRate(value);
+
+        if (packetRate >= 0) {
+            settings.setPacketRate(packetRate);
+        }
+
+        else {
+            LOG.warning("Invalid packet rate '%s'. Using the default of %s", value, settings.getPacketRate());
+        }
+    }
+
+    private int parsePacketRate(final String value) {
+        try {
+            return Integer.parseInt(value);
+        }
+
+        catch (final NumberFormatException e) {
+            return -1;
+        }
     }
 }
@@ -37,6 +37,7 @@ public class CommandAutoCompleteList implements AutoCompleteList {
         "/back",
         "/cancel",
         "/clear",
+        "/dump",
         "/help",
         "/msg",
         "/nick",
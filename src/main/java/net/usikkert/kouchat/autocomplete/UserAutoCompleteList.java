@@ -22,6 +22,8 @@
 
 package net.usikkert.kouchat.autocomplete;
 
+import java.util.List;
+
 import net.usikkert.kouchat.event.UserListListener;
 import net.usikkert.kouchat.misc.User;
 import net.usikkert.kouchat.misc.UserList;
@@ -38,7 +40,7 @@ public class UserAutoCompleteList implements AutoCompleteList, UserListListener
     private final UserList userList;
 
     /** A simple array with users, for use in auto completion. */
-    private String[] users;
+    private volatile String[] users;
 
     /**
      * Constructor. Registers itself as a user list listener.
@@ -67,7 +69,7 @@ public class UserAutoCompleteList implements AutoCompleteList, UserListListener
      * {@inheritDoc}
      */
     @Override
-    public void userChanged(final int pos, final User user) {
+    public void userChanged(final int oldPos, final int newPos, final User user) {
         updateWords();
     }
 
@@ -86,11 +88,14 @@ public class UserAutoCompleteList implements AutoCompleteList, UserListListener
      * list of words.
      */
     private void updateWords() {
-        users = new String[userList.size()];
+        final List<User> currentUsers = userList.getUsers();
+        final String[] newUsers = new String[currentUsers.size()];
 
-        for (int i = 0; i < userList.size(); i++) {
-            users[i] = userList.get(i).getNick();
+        for (int i = 0; i < newUsers.length; i++) {
+            newUsers[i] = currentUsers.get(i).getNick();
         }
+
+        users = newUsers;
     }
 
     /**
@@ -45,10 +45,14 @@ public interface UserListListener {
      * A user has updated some of its fields,
      * so the ui needs to refresh.
      *
-     * @param pos The new position of the changed user in the user list.
+     * <p>If the user moved to a new position, the users between the old
+     * and the new position have moved one position to make room.</p>
+     *
+     * @param oldPos The position of the changed user in the user list before the change.
+     * @param newPos The new position of the changed user in the user list.
      * @param user The (new) changed user.
      */
-    void userChanged(int pos, User user);
+    void userChanged(int oldPos, int newPos, User user);
 
     /**
      * A user has been removed from the user list.
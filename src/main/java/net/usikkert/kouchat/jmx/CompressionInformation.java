@@ -0,0 +1,119 @@
+
+/***************************************************************************
+ *   Copyright 2006-2018 by Christian Ihle                                 *
+ *   contact@kouchat.net                                                   *
+ *                                                                         *
+ *   This file is part of KouChat.                                         *
+ *                                                                         *
+ *   KouChat is free software; you can redistribute it and/or modify       *
+ *   it under the terms of the GNU Lesser General Public License as        *
+ *   published by the Free Software Foundation, either version 3 of        *
+ *   the License, or (at your option) any later version.                   *
+ *                                                                         *
+ *   KouChat is distributed in the hope that it will be useful,            *
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of        *
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU      *
+ *   Lesser General Public License for more details.                       *
+ *                                                                         *
+ *   You should have received a copy of the GNU Lesser General Public      *
+ *   License along with KouChat.                                           *
+ *   If not, see <http://www.gnu.org/licenses/>.                           *
+ ***************************************************************************/
+
+package net.usikkert.kouchat.jmx;
+
+import net.usikkert.kouchat.net.CompressionStatistics;
+import net.usikkert.kouchat.util.Validate;
+
+/**
+ * This is a JMX MBean for the compression of network messages.
+ *
+ * @author Christian Ihle
+ */
+public class CompressionInformation implements CompressionInformationMBean {
+
+    /** The compression counters. */
+    private final CompressionStatistics statistics;
+
+    /**
+     * Constructor.
+     *
+     * @param statistics The compression counters.
+     */
+    public CompressionInformation(final CompressionStatistics statistics) {
+        Validate.notNull(statistics, "Compression statistics can not be null");
+        this.statistics = statistics;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long getCompressedMessages() {
+        return statistics.getCompressedMessages();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long getSkippedMessages() {
+        return statistics.getSkippedMessages();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long getBytesBeforeCompression() {
+        return statistics.getBytesBeforeCompression();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long getBytesAfterCompression() {
+        return statistics.getBytesAfterCompression();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public double getCompressionRatio() {
+        return statistics.getCompressionRatio();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long getCompressionTimeMillis() {
+        return statistics.getCompressionTimeMillis();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long getDecompressedMessages() {
+        return statistics.getDecompressedMessages();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long getDecompressionTimeMillis() {
+        return statistics.getDecompressionTimeMillis();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String getBeanName() {
+        return "Compression";
+    }
+}
@@ -0,0 +1,87 @@
+
+/***************************************************************************
+ *   Copyright 2006-2018 by Christian Ihle                                 *
+ *   contact@kouchat.net                                                   *
+ *                                                                         *
+ *   This file is part of KouChat.                                         *
+ *                                                                         *
+ *   KouChat is free software; you can redistribute it and/or modify       *
+ *   it under the terms of the GNU Lesser General Public License as        *
+ *   published by the Free Software Foundation, either version 3 of        *
+ *   the License, or (at your option) any later version.                   *
+ *                                                                         *
+ *   KouChat is distributed in the hope that it will be useful,            *
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of        *
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU      *
+ *   Lesser General Public License for more details.                       *
+ *                                                                         *
+ *   You should have received a copy of the GNU Lesser General Public      *
+ *   License along with KouChat.                                           *
+ *   If not, see <http://www.gnu.org/licenses/>.                           *
+ ***************************************************************************/
+
+package net.usikkert.kouchat.jmx;
+
+/**
+ * This is a JMX MBean interface for the compression of network messages.
+ *
+ * @author Christian Ihle
+ */
+public interface CompressionInformationMBean extends JMXBean {
+
+    /**
+     * Gets the number of messages sent compressed.
+     *
+     * @return The number of compressed messages.
+     */
+    long getCompressedMessages();
+
+    /**
+     * Gets the number of messages sent uncompressed, because compression did not make them smaller.
+     *
+     * @return The number of skipped messages.
+     */
+    long getSkippedMessages();
+
+    /**
+     * Gets the total size of the compressed messages before compression.
+     *
+     * @return The number of bytes.
+     */
+    long getBytesBeforeCompression();
+
+    /**
+     * Gets the total size of the compressed messages after compression.
+     *
+     * @return The number of bytes.
+     */
+    long getBytesAfterCompression();
+
+    /**
+     * Gets the size of the compressed messages compared to their original size.
+     *
+     * @return The compressed size divided by the original size.
+     */
+    double getCompressionRatio();
+
+    /**
+     * Gets the cpu time spent compressing messages.
+     *
+     * @return The cpu time in milliseconds.
+     */
+    long getCompressionTimeMillis();
+
+    /**
+     * Gets the number of messages received compressed.
+     *
+     * @return The number of decompressed messages.
+     */
+    long getDecompressedMessages();
+
+    /**
+     * Gets the cpu time spent decompressing messages.
+     *
+     * @return The cpu time in milliseconds.
+     */
+    long getDecompressionTimeMillis();
+}
@@ -0,0 +1,103 @@
+
+/***************************************************************************
+ *   Copyright 2006-2018 by Christian Ihle                                 *
+ *   contact@kouchat.net                                                   *
+ *                                                                         *
+ *   This file is part of KouChat.                                         *
+ *                                                                         *
+ *   KouChat is free software; you can redistribute it and/or modify       *
+ *   it under the terms of the GNU Lesser General Public License as        *
+ *   published by the Free Software Foundation, either version 3 of        *
+ *   the License, or (at your option) any later version.                   *
+ *                                                                         *
+ *   KouChat is distributed in the hope that it will be useful,            *
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of        *
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU      *
+ *   Lesser General Public License for more details.                       *
+ *                                                                         *
+ *   You should have received a copy of the GNU Lesser General Public      *
+ *   License along with KouChat.                                           *
+ *   If not, see <http://www.gnu.org/licenses/>.                           *
+ ***************************************************************************/
+
+package net.usikkert.kouchat.jmx;
+
+import java.io.IOException;
+import java.util.List;
+
+import net.usikkert.kouchat.misc.FlightRecorder;
+import net.usikkert.kouchat.settings.Settings;
+import net.usikkert.kouchat.util.Validate;
+
+/**
+ * This is a JMX MBean for the flight recorder, with the latest network and user list events.
+ *
+ * @author Christian Ihle
+ */
+public class FlightRecorderInformation implements FlightRecorderInformationMBean {
+
+    private final FlightRecorder flightRecorder;
+    private final Settings settings;
+
+    /**
+     * Constructor.
+     *
+     * @param flightRecorder The flight recorder.
+     * @param settings The settings, for the log folder.
+     */
+    public FlightRecorderInformation(final FlightRecorder flightRecorder, final Settings settings) {
+        Validate.notNull(flightRecorder, "Flight recorder can not be null");
+        Validate.notNull(settings, "Settings can not be null");
+
+        this.flightRecorder = flightRecorder;
+        this.settings = settings;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int getCapacity() {
+        return flightRecorder.getCapacity();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long getRecordedEvents() {
+        return flightRecorder.getRecordedEvents();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String[] showLatestEvents(final int count) {
+        final List<FlightRecorder.Event> events = flightRecorder.getEvents();
+        final int first = Math.max(0, events.size() - Math.max(0, count));
+        final String[] lines = new String[events.size() - first];
+
+        for (int i = first; i < events.size(); i++) {
+            lines[i - first] = events.get(i).toString();
+        }
+
+        return lines;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String dumpEvents() throws IOException {
+        return flightRecorder.dumpToFolder(settings.getLogLocation()).getAbsolutePath();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String getBeanName() {
+        return "FlightRecorder";
+    }
+}
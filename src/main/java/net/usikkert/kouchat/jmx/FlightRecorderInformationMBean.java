@@ -0,0 +1,63 @@
+
+/***************************************************************************
+ *   Copyright 2006-2018 by Christian Ihle                                 *
+ *   contact@kouchat.net                                                   *
+ *                                                                         *
+ *   This file is part of KouChat.                                         *
+ *                                                                         *
+ *   KouChat is free software; you can redistribute it and/or modify       *
+ *   it under the terms of the GNU Lesser General Public License as        *
+ *   published by the Free Software Foundation, either version 3 of        *
+ *   the License, or (at your option) any later version.                   *
+ *                                                                         *
+ *   KouChat is distributed in the hope that it will be useful,            *
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of        *
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU      *
+ *   Lesser General Public License for more details.                       *
+ *                                                                         *
+ *   You should have received a copy of the GNU Lesser General Public      *
+ *   License along with KouChat.                                           *
+ *   If not, see <http://www.gnu.org/licenses/>.                           *
+ ***************************************************************************/
+
+package net.usikkert.kouchat.jmx;
+
+import java.io.IOException;
+
+/**
+ * This is a JMX MBean interface for the flight recorder, with the latest network and user list events.
+ *
+ * @author Christian Ihle
+ */
+public interface FlightRecorderInformationMBean extends JMXBean {
+
+    /**
+     * Gets the number of events kept in memory.
+     *
+     * @return The capacity of the flight recorder.
+     */
+    int getCapacity();
+
+    /**
+     * Gets the number of events recorded since the application started, including the ones no longer in memory.
+     *
+     * @return The number of events.
+     */
+    long getRecordedEvents();
+
+    /**
+     * Shows the latest events, oldest first.
+     *
+     * @param count The maximum number of events to show.
+     * @return One line for each event.
+     */
+    String[] showLatestEvents(int count);
+
+    /**
+     * Saves the events in memory to a new file in the log folder.
+     *
+     * @return The path to the file.
+     * @throws IOException If the file could not be saved.
+     */
+    String dumpEvents() throws IOException;
+}
@@ -40,6 +40,13 @@ import net.usikkert.kouchat.util.Validate;
  *   <li>{@link NetworkInformation}</li>
  *   <li>{@link ControllerInformation}</li>
  *   <li>{@link GeneralInformation}</li>
+ *   <li>{@link ThreadPoolInformation}</li>
+ *   <li>{@link CompressionInformation}</li>
+ *   <li>{@link LatencyInformation}</li>
+ *   <li>{@link TrafficInformation}</li>
+ *   <li>{@link FlightRecorderInformation}</li>
+ *   <li>{@link ProfilerInformation}</li>
+ *   <li>{@link TCPSendQueueInformation}</li>
  * </ul>
  *
  * @author Christian Ihle
@@ -66,7 +73,14 @@ public class JMXBeanLoader {
         jmxBeans = Arrays.asList(
                 new NetworkInformation(connectionWorker, settings, errorHandler),
                 new ControllerInformation(controller),
-                new GeneralInformation(settings));
+                new GeneralInformation(settings),
+                new ThreadPoolInformation(controller.getThreadPools()),
+                new CompressionInformation(controller.getCompressionStatistics()),
+                new LatencyInformation(controller.getLatencyStatistics()),
+                new TrafficInformation(controller.getTrafficStatistics()),
+                new FlightRecorderInformation(controller.getFlightRecorder(), settings),
+                new ProfilerInformation(),
+                new TCPSendQueueInformation(controller));
     }
 
     public List<JMXBean> getJMXBeans() {
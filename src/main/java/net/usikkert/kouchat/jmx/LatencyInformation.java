@@ -0,0 +1,169 @@
+
+/***************************************************************************
+ *   Copyright 2006-2018 by Christian Ihle                                 *
+ *   contact@kouchat.net                                                   *
+ *                                                                         *
+ *   This file is part of KouChat.                                         *
+ *                                                                         *
+ *   KouChat is free software; you can redistribute it and/or modify       *
+ *   it under the terms of the GNU Lesser General Public License as        *
+ *   published by the Free Software Foundation, either version 3 of        *
+ *   the License, or (at your option) any later version.                   *
+ *                                                                         *
+ *   KouChat is distributed in the hope that it will be useful,            *
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of        *
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU      *
+ *   Lesser General Public License for more details.                       *
+ *                                                                         *
+ *   You should have received a copy of the GNU Lesser General Public      *
+ *   License along with KouChat.                                           *
+ *   If not, see <http://www.gnu.org/licenses/>.                           *
+ ***************************************************************************/
+
+package net.usikkert.kouchat.jmx;
+
+import net.usikkert.kouchat.net.LatencyStatistics;
+import net.usikkert.kouchat.net.LatencyStatistics.Stage;
+import net.usikkert.kouchat.net.transport.TransportChannel;
+import net.usikkert.kouchat.util.LatencyHistogram;
+import net.usikkert.kouchat.util.Validate;
+
+/**
+ * This is a JMX MBean for the latency of the received chat messages.
+ *
+ * @author Christian Ihle
+ */
+public class LatencyInformation implements LatencyInformationMBean {
+
+    /** The number of microseconds in a millisecond. */
+    private static final double MICROS_PER_MILLI = 1000.0;
+
+    /** The latency histograms. */
+    private final LatencyStatistics statistics;
+
+    /**
+     * Constructor.
+     *
+     * @param statistics The latency histograms.
+     */
+    public LatencyInformation(final LatencyStatistics statistics) {
+        Validate.notNull(statistics, "Latency statistics can not be null");
+        this.statistics = statistics;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long getTimestampedMessages() {
+        long timestampedMessages = 0;
+
+        for (final TransportChannel channel : TransportChannel.values()) {
+            timestampedMessages += statistics.getEndToEndLatency(channel).getCount();
+        }
+
+        return timestampedMessages;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long getTracedMessages() {
+        return statistics.getLocalLatency().getCount();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public double getMulticastLatencyP99Millis() {
+        return toMillis(statistics.getEndToEndLatency(TransportChannel.MULTICAST).getPercentile(99));
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public double getPrivateUdpLatencyP99Millis() {
+        return toMillis(statistics.getEndToEndLatency(TransportChannel.PRIVATE_UDP).getPercentile(99));
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public double getTcpLatencyP99Millis() {
+        return toMillis(statistics.getEndToEndLatency(TransportChannel.TCP).getPercentile(99));
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public double getLocalLatencyP99Millis() {
+        return toMillis(statistics.getLocalLatency().getPercentile(99));
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String[] showEndToEndLatency() {
+        final TransportChannel[] channels = TransportChannel.values();
+        final String[] latency = new String[channels.length];
+
+        for (int i = 0; i < channels.length; i++) {
+            latency[i] = describe(channels[i].getName(), statistics.getEndToEndLatency(channels[i]));
+        }
+
+        return latency;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String[] showStageLatency() {
+        final Stage[] stages = Stage.values();
+        final String[] latency = new String[stages.length + 1];
+
+        for (int i = 0; i < stages.length; i++) {
+            latency[i] = describe(stages[i].getName(), statistics.getStageLatency(stages[i]));
+        }
+
+        latency[stages.length] = describe("Total", statistics.getLocalLatency());
+
+        return latency;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void resetLatency() {
+        statistics.reset();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String getBeanName() {
+        return "Latency";
+    }
+
+    private String describe(final String name, final LatencyHistogram histogram) {
+        return name +
+                ": messages=" + histogram.getCount() +
+                ", p50=" + toMillis(histogram.getPercentile(50)) + "ms" +
+                ", p90=" + toMillis(histogram.getPercentile(90)) + "ms" +
+                ", p99=" + toMillis(histogram.getPercentile(99)) + "ms" +
+                ", p99.9=" + toMillis(histogram.getPercentile(99.9)) + "ms" +
+                ", max=" + toMillis(histogram.getMax()) + "ms";
+    }
+
+    private double toMillis(final long micros) {
+        return micros / MICROS_PER_MILLI;
+    }
+}
@@ -0,0 +1,93 @@
+
+/***************************************************************************
+ *   Copyright 2006-2018 by Christian Ihle                                 *
+ *   contact@kouchat.net                                                   *
+ *                                                                         *
+ *   This file is part of KouChat.                                         *
+ *                                                                         *
+ *   KouChat is free software; you can redistribute it and/or modify       *
+ *   it under the terms of the GNU Lesser General Public License as        *
+ *   published by the Free Software Foundation, either version 3 of        *
+ *   the License, or (at your option) any later version.                   *
+ *                                                                         *
+ *   KouChat is distributed in the hope that it will be useful,            *
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of        *
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU      *
+ *   Lesser General Public License for more details.                       *
+ *                                                                         *
+ *   You should have received a copy of the GNU Lesser General Public      *
+ *   License along with KouChat.                                           *
+ *   If not, see <http://www.gnu.org/licenses/>.                           *
+ ***************************************************************************/
+
+package net.usikkert.kouchat.jmx;
+
+/**
+ * This is a JMX MBean interface for the latency of the received chat messages.
+ *
+ * @author Christian Ihle
+ */
+public interface LatencyInformationMBean extends JMXBean {
+
+    /**
+     * Gets the number of received chat messages with a send timestamp, from all the channels.
+     *
+     * @return The number of timestamped messages.
+     */
+    long getTimestampedMessages();
+
+    /**
+     * Gets the number of received chat messages with measured stage timings.
+     *
+     * @return The number of traced messages.
+     */
+    long getTracedMessages();
+
+    /**
+     * Gets the 99th percentile of the time from chat messages were sent on multicast until they were shown.
+     *
+     * @return The latency in milliseconds.
+     */
+    double getMulticastLatencyP99Millis();
+
+    /**
+     * Gets the 99th percentile of the time from private chat messages were sent on udp until they were shown.
+     *
+     * @return The latency in milliseconds.
+     */
+    double getPrivateUdpLatencyP99Millis();
+
+    /**
+     * Gets the 99th percentile of the time from chat messages were sent on tcp until they were shown.
+     *
+     * @return The latency in milliseconds.
+     */
+    double getTcpLatencyP99Millis();
+
+    /**
+     * Gets the 99th percentile of the time from chat messages were received until they were shown.
+     *
+     * @return The latency in milliseconds.
+     */
+    double getLocalLatencyP99Millis();
+
+    /**
+     * Shows the percentiles of the time from chat messages were sent until they were shown, for each channel.
+     *
+     * @return A line of information for each channel.
+     */
+    String[] showEndToEndLatency();
+
+    /**
+     * Shows the percentiles of the time chat messages spent in each stage of the receiving pipeline,
+     * and in total.
+     *
+     * @return A line of information for each stage.
+     */
+    String[] showStageLatency();
+
+    /**
+     * Removes all the measured latencies, to start measuring again.
+     */
+    void resetLatency();
+}
@@ -0,0 +1,109 @@
+
+/***************************************************************************
+ *   Copyright 2006-2018 by Christian Ihle                                 *
+ *   contact@kouchat.net                                                   *
+ *                                                                         *
+ *   This file is part of KouChat.                                         *
+ *                                                                         *
+ *   KouChat is free software; you can redistribute it and/or modify       *
+ *   it under the terms of the GNU Lesser General Public License as        *
+ *   published by the Free Software Foundation, either version 3 of        *
+ *   the License, or (at your option) any later version.                   *
+ *                                                                         *
+ *   KouChat is distributed in the hope that it will be useful,            *
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of        *
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU      *
+ *   Lesser General Public License for more details.                       *
+ *                                                                         *
+ *   You should have received a copy of the GNU Lesser General Public      *
+ *   License along with KouChat.                                           *
+ *   If not, see <http://www.gnu.org/licenses/>.                           *
+ ***************************************************************************/
+
+package net.usikkert.kouchat.jmx;
+
+import java.util.concurrent.TimeUnit;
+
+import net.usikkert.kouchat.util.HotPathProfiler;
+import net.usikkert.kouchat.util.HotPathProfiler.HotPath;
+import net.usikkert.kouchat.util.HotPathProfiler.Measurement;
+
+/**
+ * This is a JMX MBean for profiling the hot paths of the application, using {@link HotPathProfiler}.
+ *
+ * @author Christian Ihle
+ */
+public class ProfilerInformation implements ProfilerInformationMBean {
+
+    /** The number of microseconds in a millisecond. */
+    private static final double MICROS_PER_MILLI = 1000.0;
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void startProfiling() {
+        HotPathProfiler.startProfiling();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void stopProfiling() {
+        HotPathProfiler.stopProfiling();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean isProfiling() {
+        return HotPathProfiler.isProfiling();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void resetProfiling() {
+        HotPathProfiler.reset();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String[] showHotPaths() {
+        final HotPath[] hotPaths = HotPath.values();
+        final String[] lines = new String[hotPaths.length];
+
+        for (int i = 0; i < hotPaths.length; i++) {
+            lines[i] = describe(HotPathProfiler.getMeasurement(hotPaths[i]));
+        }
+
+        return lines;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String getBeanName() {
+        return "Profiler";
+    }
+
+    private String describe(final Measurement measurement) {
+        return measurement.getHotPath() +
+                ": calls=" + measurement.getCount() +
+                ", average=" + toMillis(measurement.getAverageTime()) + "ms" +
+                ", max=" + toMillis(measurement.getMaxTime()) + "ms" +
+                ", total=" + toMillis(measurement.getTotalTime()) + "ms" +
+                ", slow=" + measurement.getSlowCount() +
+                " (over " + toMillis(measurement.getHotPath().getSlowTime()) + "ms)";
+    }
+
+    private double toMillis(final long nanos) {
+        return TimeUnit.NANOSECONDS.toMicros(nanos) / MICROS_PER_MILLI;
+    }
+}
@@ -0,0 +1,62 @@
+
+/***************************************************************************
+ *   Copyright 2006-2018 by Christian Ihle                                 *
+ *   contact@kouchat.net                                                   *
+ *                                                                         *
+ *   This file is part of KouChat.                                         *
+ *                                                                         *
+ *   KouChat is free software; you can redistribute it and/or modify       *
+ *   it under the terms of the GNU Lesser General Public License as        *
+ *   published by the Free Software Foundation, either version 3 of        *
+ *   the License, or (at your option) any later version.                   *
+ *                                                                         *
+ *   KouChat is distributed in the hope that it will be useful,            *
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of        *
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU      *
+ *   Lesser General Public License for more details.                       *
+ *                                                                         *
+ *   You should have received a copy of the GNU Lesser General Public      *
+ *   License along with KouChat.                                           *
+ *   If not, see <http://www.gnu.org/licenses/>.                           *
+ ***************************************************************************/
+
+package net.usikkert.kouchat.jmx;
+
+/**
+ * This is a JMX MBean interface for profiling the hot paths of the application.
+ *
+ * <p>Profiling is off until started, and can be left on while the application is in use.</p>
+ *
+ * @author Christian Ihle
+ */
+public interface ProfilerInformationMBean extends JMXBean {
+
+    /**
+     * Starts measuring the time spent in the hot paths.
+     */
+    void startProfiling();
+
+    /**
+     * Stops measuring the time spent in the hot paths. The measurements are kept.
+     */
+    void stopProfiling();
+
+    /**
+     * Checks if the hot paths are being measured.
+     *
+     * @return If profiling is on.
+     */
+    boolean isProfiling();
+
+    /**
+     * Removes the measurements of all the hot paths.
+     */
+    void resetProfiling();
+
+    /**
+     * Shows the number of calls, the average, max and total time, and the number of slow calls, for each hot path.
+     *
+     * @return One line for each hot path.
+     */
+    String[] showHotPaths();
+}
@@ -0,0 +1,123 @@
+
+/***************************************************************************
+ *   Copyright 2006-2018 by Christian Ihle                                 *
+ *   contact@kouchat.net                                                   *
+ *                                                                         *
+ *   This file is part of KouChat.                                         *
+ *                                                                         *
+ *   KouChat is free software; you can redistribute it and/or modify       *
+ *   it under the terms of the GNU Lesser General Public License as        *
+ *   published by the Free Software Foundation, either version 3 of        *
+ *   the License, or (at your option) any later version.                   *
+ *                                                                         *
+ *   KouChat is distributed in the hope that it will be useful,            *
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of        *
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU      *
+ *   Lesser General Public License for more details.                       *
+ *                                                                         *
+ *   You should have received a copy of the GNU Lesser General Public      *
+ *   License along with KouChat.                                           *
+ *   If not, see <http://www.gnu.org/licenses/>.                           *
+ ***************************************************************************/
+
+package net.usikkert.kouchat.jmx;
+
+import java.util.Map;
+
+import net.usikkert.kouchat.misc.Controller;
+import net.usikkert.kouchat.misc.User;
+import net.usikkert.kouchat.net.tcp.TCPSendQueue;
+import net.usikkert.kouchat.util.Validate;
+
+/**
+ * This is a JMX MBean for the queues of tcp messages waiting to be sent to each user.
+ *
+ * @author Christian Ihle
+ */
+public class TCPSendQueueInformation implements TCPSendQueueInformationMBean {
+
+    /** The controller, for getting the queues. */
+    private final Controller controller;
+
+    /**
+     * Constructor.
+     *
+     * @param controller The controller.
+     */
+    public TCPSendQueueInformation(final Controller controller) {
+        Validate.notNull(controller, "Controller can not be null");
+        this.controller = controller;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int getQueuedMessages() {
+        int queuedMessages = 0;
+
+        for (final TCPSendQueue sendQueue : controller.getTcpSendQueues().values()) {
+            queuedMessages += sendQueue.size();
+        }
+
+        return queuedMessages;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int getMaxQueueSize() {
+        int maxQueueSize = 0;
+
+        for (final TCPSendQueue sendQueue : controller.getTcpSendQueues().values()) {
+            maxQueueSize = Math.max(maxQueueSize, sendQueue.getMaxSize());
+        }
+
+        return maxQueueSize;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long getDroppedMessages() {
+        long droppedMessages = 0;
+
+        for (final TCPSendQueue sendQueue : controller.getTcpSendQueues().values()) {
+            droppedMessages += sendQueue.getDroppedMessages();
+        }
+
+        return droppedMessages;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String[] showSendQueues() {
+        final Map<User, TCPSendQueue> sendQueues = controller.getTcpSendQueues();
+        final String[] status = new String[sendQueues.size()];
+        int i = 0;
+
+        for (final Map.Entry<User, TCPSendQueue> entry : sendQueues.entrySet()) {
+            final TCPSendQueue sendQueue = entry.getValue();
+
+            status[i++] = entry.getKey().getNick() +
+                    ": queued=" + sendQueue.size() + "/" + sendQueue.getCapacity() +
+                    ", max=" + sendQueue.getMaxSize() +
+                    ", sent=" + sendQueue.getSentMessages() +
+                    ", dropped=" + sendQueue.getDroppedMessages();
+        }
+
+        return status;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String getBeanName() {
+        return "TCPSendQueues";
+    }
+}
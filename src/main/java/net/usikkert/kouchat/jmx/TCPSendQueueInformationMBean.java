@@ -0,0 +1,59 @@
+
+/***************************************************************************
+ *   Copyright 2006-2018 by Christian Ihle                                 *
+ *   contact@kouchat.net                                                   *
+ *                                                                         *
+ *   This file is part of KouChat.                                         *
+ *                                                                         *
+ *   KouChat is free software; you can redistribute it and/or modify       *
+ *   it under the terms of the GNU Lesser General Public License as        *
+ *   published by the Free Software Foundation, either version 3 of        *
+ *   the License, or (at your option) any later version.                   *
+ *                                                                         *
+ *   KouChat is distributed in the hope that it will be useful,            *
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of        *
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU      *
+ *   Lesser General Public License for more details.                       *
+ *                                                                         *
+ *   You should have received a copy of the GNU Lesser General Public      *
+ *   License along with KouChat.                                           *
+ *   If not, see <http://www.gnu.org/licenses/>.                           *
+ ***************************************************************************/
+
+package net.usikkert.kouchat.jmx;
+
+/**
+ * This is a JMX MBean interface for the queues of tcp messages waiting to be sent to each user.
+ *
+ * @author Christian Ihle
+ */
+public interface TCPSendQueueInformationMBean extends JMXBean {
+
+    /**
+     * Gets the number of tcp messages waiting to be sent, to all the users.
+     *
+     * @return The number of waiting messages.
+     */
+    int getQueuedMessages();
+
+    /**
+     * Gets the largest number of messages that has been waiting for any one user.
+     *
+     * @return The max queue size.
+     */
+    int getMaxQueueSize();
+
+    /**
+     * Gets the number of messages thrown away because a user was too slow to receive them.
+     *
+     * @return The number of dropped messages.
+     */
+    long getDroppedMessages();
+
+    /**
+     * Shows the status of the send queue for each user.
+     *
+     * @return A line of information for each user.
+     */
+    String[] showSendQueues();
+}
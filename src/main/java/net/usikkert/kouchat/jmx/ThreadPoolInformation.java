@@ -0,0 +1,144 @@
+
+/***************************************************************************
+ *   Copyright 2006-2018 by Christian Ihle                                 *
+ *   contact@kouchat.net                                                   *
+ *                                                                         *
+ *   This file is part of KouChat.                                         *
+ *                                                                         *
+ *   KouChat is free software; you can redistribute it and/or modify       *
+ *   it under the terms of the GNU Lesser General Public License as        *
+ *   published by the Free Software Foundation, either version 3 of        *
+ *   the License, or (at your option) any later version.                   *
+ *                                                                         *
+ *   KouChat is distributed in the hope that it will be useful,            *
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of        *
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU      *
+ *   Lesser General Public License for more details.                       *
+ *                                                                         *
+ *   You should have received a copy of the GNU Lesser General Public      *
+ *   License along with KouChat.                                           *
+ *   If not, see <http://www.gnu.org/licenses/>.                           *
+ ***************************************************************************/
+
+package net.usikkert.kouchat.jmx;
+
+import java.util.List;
+
+import net.usikkert.kouchat.misc.ThreadPools;
+import net.usikkert.kouchat.util.BoundedThreadPool;
+import net.usikkert.kouchat.util.Validate;
+
+/**
+ * This is a JMX MBean for the shared thread pools.
+ *
+ * @author Christian Ihle
+ */
+public class ThreadPoolInformation implements ThreadPoolInformationMBean {
+
+    /** The thread pools. */
+    private final ThreadPools threadPools;
+
+    /**
+     * Constructor.
+     *
+     * @param threadPools The thread pools.
+     */
+    public ThreadPoolInformation(final ThreadPools threadPools) {
+        Validate.notNull(threadPools, "Thread pools can not be null");
+        this.threadPools = threadPools;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int getNetworkActiveThreads() {
+        return threadPools.getNetworkPool().getActiveCount();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int getNetworkQueuedTasks() {
+        return threadPools.getNetworkPool().getQueuedTaskCount();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long getNetworkCompletedTasks() {
+        return threadPools.getNetworkPool().getCompletedTaskCount();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long getNetworkRejectedTasks() {
+        return threadPools.getNetworkPool().getRejectedTaskCount();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int getFileTransferActiveThreads() {
+        return threadPools.getFileTransferPool().getActiveCount();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int getFileTransferQueuedTasks() {
+        return threadPools.getFileTransferPool().getQueuedTaskCount();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long getFileTransferCompletedTasks() {
+        return threadPools.getFileTransferPool().getCompletedTaskCount();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long getFileTransferRejectedTasks() {
+        return threadPools.getFileTransferPool().getRejectedTaskCount();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String[] showThreadPools() {
+        final List<BoundedThreadPool> pools = threadPools.getPools();
+        final String[] status = new String[pools.size()];
+
+        for (int i = 0; i < status.length; i++) {
+            final BoundedThreadPool pool = pools.get(i);
+
+            status[i] = pool.getName() +
+                    ": threads=" + pool.getPoolSize() + "/" + pool.getMaximumPoolSize() +
+                    ", active=" + pool.getActiveCount() +
+                    ", queued=" + pool.getQueuedTaskCount() + "/" + pool.getQueueCapacity() +
+                    ", completed=" + pool.getCompletedTaskCount() +
+                    ", rejected=" + pool.getRejectedTaskCount();
+        }
+
+        return status;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String getBeanName() {
+        return "ThreadPools";
+    }
+}
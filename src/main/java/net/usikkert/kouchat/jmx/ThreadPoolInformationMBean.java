@@ -0,0 +1,94 @@
+
+/***************************************************************************
+ *   Copyright 2006-2018 by Christian Ihle                                 *
+ *   contact@kouchat.net                                                   *
+ *                                                                         *
+ *   This file is part of KouChat.                                         *
+ *                                                                         *
+ *   KouChat is free software; you can redistribute it and/or modify       *
+ *   it under the terms of the GNU Lesser General Public License as        *
+ *   published by the Free Software Foundation, either version 3 of        *
+ *   the License, or (at your option) any later version.                   *
+ *                                                                         *
+ *   KouChat is distributed in the hope that it will be useful,            *
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of        *
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU      *
+ *   Lesser General Public License for more details.                       *
+ *                                                                         *
+ *   You should have received a copy of the GNU Lesser General Public      *
+ *   License along with KouChat.                                           *
+ *   If not, see <http://www.gnu.org/licenses/>.                           *
+ ***************************************************************************/
+
+package net.usikkert.kouchat.jmx;
+
+/**
+ * This is a JMX MBean interface for the shared thread pools.
+ *
+ * @author Christian Ihle
+ */
+public interface ThreadPoolInformationMBean extends JMXBean {
+
+    /**
+     * Gets the number of threads busy with network operations.
+     *
+     * @return The number of active threads.
+     */
+    int getNetworkActiveThreads();
+
+    /**
+     * Gets the number of network operations waiting for a thread.
+     *
+     * @return The number of queued tasks.
+     */
+    int getNetworkQueuedTasks();
+
+    /**
+     * Gets the number of network operations that have completed.
+     *
+     * @return The number of completed tasks.
+     */
+    long getNetworkCompletedTasks();
+
+    /**
+     * Gets the number of network operations rejected because the pool was full.
+     *
+     * @return The number of rejected tasks.
+     */
+    long getNetworkRejectedTasks();
+
+    /**
+     * Gets the number of threads busy with file transfers.
+     *
+     * @return The number of active threads.
+     */
+    int getFileTransferActiveThreads();
+
+    /**
+     * Gets the number of file transfers waiting for a thread.
+     *
+     * @return The number of queued tasks.
+     */
+    int getFileTransferQueuedTasks();
+
+    /**
+     * Gets the number of file transfers that have completed.
+     *
+     * @return The number of completed tasks.
+     */
+    long getFileTransferCompletedTasks();
+
+    /**
+     * Gets the number of file transfers rejected because the pool was full.
+     *
+     * @return The number of rejected tasks.
+     */
+    long getFileTransferRejectedTasks();
+
+    /**
+     * Shows the status of all the thread pools.
+     *
+     * @return A line of information for each pool.
+     */
+    String[] showThreadPools();
+}
@@ -0,0 +1,287 @@
+
+/***************************************************************************
+ *   Copyright 2006-2018 by Christian Ihle                                 *
+ *   contact@kouchat.net                                                   *
+ *                                                                         *
+ *   This file is part of KouChat.                                         *
+ *                                                                         *
+ *   KouChat is free software; you can redistribute it and/or modify       *
+ *   it under the terms of the GNU Lesser General Public License as        *
+ *   published by the Free Software Foundation, either version 3 of        *
+ *   the License, or (at your option) any later version.                   *
+ *                                                                         *
+ *   KouChat is distributed in the hope that it will be useful,            *
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of        *
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU      *
+ *   Lesser General Public License for more details.                       *
+ *                                                                         *
+ *   You should have received a copy of the GNU Lesser General Public      *
+ *   License along with KouChat.                                           *
+ *   If not, see <http://www.gnu.org/licenses/>.                           *
+ ***************************************************************************/
+
+package net.usikkert.kouchat.jmx;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import net.usikkert.kouchat.net.TrafficStatistics;
+import net.usikkert.kouchat.net.transport.TransportChannel;
+import net.usikkert.kouchat.util.Validate;
+
+/**
+ * This is a JMX MBean for the network traffic, and the messages handled by the network code.
+ *
+ * <p>The rates are calculated from the difference between the counters now and when the rates
+ * were last calculated, at most once a second.</p>
+ *
+ * @author Christian Ihle
+ */
+public class TrafficInformation implements TrafficInformationMBean {
+
+    /** The shortest time to calculate the rates over. */
+    private static final long RATE_INTERVAL = TimeUnit.SECONDS.toNanos(1);
+
+    private static final int PACKETS_IN = 0;
+    private static final int BYTES_IN = 1;
+    private static final int PACKETS_OUT = 2;
+    private static final int BYTES_OUT = 3;
+    private static final int MESSAGES = 4;
+
+    /** The traffic counters. */
+    private final TrafficStatistics statistics;
+
+    /** The totals when the rates were last calculated. Guarded by this. */
+    private final long[] snapshot;
+
+    /** The rates per second, by the same index as the snapshot. Guarded by this. */
+    private final double[] rates;
+
+    /** When the snapshot was taken, in nanoseconds. Guarded by this. */
+    private long snapshotTime;
+
+    /**
+     * Constructor.
+     *
+     * @param statistics The traffic counters.
+     */
+    public TrafficInformation(final TrafficStatistics statistics) {
+        Validate.notNull(statistics, "Traffic statistics can not be null");
+
+        this.statistics = statistics;
+        this.snapshot = readTotals();
+        this.rates = new double[snapshot.length];
+        this.snapshotTime = System.nanoTime();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long getPacketsIn() {
+        long packets = 0;
+
+        for (final TransportChannel channel : TransportChannel.values()) {
+            packets += statistics.getPacketsIn(channel);
+        }
+
+        return packets;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long getBytesIn() {
+        long bytes = 0;
+
+        for (final TransportChannel channel : TransportChannel.values()) {
+            bytes += statistics.getBytesIn(channel);
+        }
+
+        return bytes;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long getPacketsOut() {
+        long packets = 0;
+
+        for (final TransportChannel channel : TransportChannel.values()) {
+            packets += statistics.getPacketsOut(channel);
+        }
+
+        return packets;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long getBytesOut() {
+        long bytes = 0;
+
+        for (final TransportChannel channel : TransportChannel.values()) {
+            bytes += statistics.getBytesOut(channel);
+        }
+
+        return bytes;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public double getPacketsInPerSecond() {
+        return getRate(PACKETS_IN);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public double getBytesInPerSecond() {
+        return getRate(BYTES_IN);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public double getPacketsOutPerSecond() {
+        return getRate(PACKETS_OUT);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public double getBytesOutPerSecond() {
+        return getRate(BYTES_OUT);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public double getMessagesPerSecond() {
+        return getRate(MESSAGES);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long getParseFailures() {
+        return statistics.getParseFailures();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long getOversizedMessages() {
+        return statistics.getOversizedMessages();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long getDuplicateMessages() {
+        return statistics.getDuplicateMessages();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long getTcpReconnects() {
+        return statistics.getTcpReconnects();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String[] showChannels() {
+        final TransportChannel[] channels = TransportChannel.values();
+        final String[] traffic = new String[channels.length];
+
+        for (int i = 0; i < channels.length; i++) {
+            final TransportChannel channel = channels[i];
+
+            traffic[i] = channel.getName() +
+                    ": packetsIn=" + statistics.getPacketsIn(channel) +
+                    ", bytesIn=" + statistics.getBytesIn(channel) +
+                    ", packetsOut=" + statistics.getPacketsOut(channel) +
+                    ", bytesOut=" + statistics.getBytesOut(channel);
+        }
+
+        return traffic;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String[] showMessageTypes() {
+        final Map<String, Long> messageTypes = statistics.getMessageTypes();
+        final String[] types = new String[messageTypes.size()];
+        int i = 0;
+
+        for (final Map.Entry<String, Long> entry : messageTypes.entrySet()) {
+            types[i++] = entry.getKey() + ": " + entry.getValue();
+        }
+
+        return types;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String getBeanName() {
+        return "Traffic";
+    }
+
+    private synchronized double getRate(final int index) {
+        updateRates(System.nanoTime());
+        return rates[index];
+    }
+
+    /**
+     * Calculates the rates again, if the last calculation was at least a second ago.
+     *
+     * @param now The current time, in nanoseconds.
+     */
+    synchronized void updateRates(final long now) {
+        final long elapsed = now - snapshotTime;
+
+        if (elapsed < RATE_INTERVAL) {
+            return;
+        }
+
+        final long[] totals = readTotals();
+        final double seconds = (double) elapsed / TimeUnit.SECONDS.toNanos(1);
+
+        for (int i = 0; i < totals.length; i++) {
+            rates[i] = (totals[i] - snapshot[i]) / seconds;
+            snapshot[i] = totals[i];
+        }
+
+        snapshotTime = now;
+    }
+
+    private long[] readTotals() {
+        long messages = 0;
+
+        for (final long count : statistics.getMessageTypes().values()) {
+            messages += count;
+        }
+
+        return new long[] {getPacketsIn(), getBytesIn(), getPacketsOut(), getBytesOut(), messages};
+    }
+}
@@ -0,0 +1,139 @@
+
+/***************************************************************************
+ *   Copyright 2006-2018 by Christian Ihle                                 *
+ *   contact@kouchat.net                                                   *
+ *                                                                         *
+ *   This file is part of KouChat.                                         *
+ *                                                                         *
+ *   KouChat is free software; you can redistribute it and/or modify       *
+ *   it under the terms of the GNU Lesser General Public License as        *
+ *   published by the Free Software Foundation, either version 3 of        *
+ *   the License, or (at your option) any later version.                   *
+ *                                                                         *
+ *   KouChat is distributed in the hope that it will be useful,            *
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of        *
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU      *
+ *   Lesser General Public License for more details.                       *
+ *                                                                         *
+ *   You should have received a copy of the GNU Lesser General Public      *
+ *   License along with KouChat.                                           *
+ *   If not, see <http://www.gnu.org/licenses/>.                           *
+ ***************************************************************************/
+
+package net.usikkert.kouchat.jmx;
+
+/**
+ * This is a JMX MBean interface for the network traffic, and the messages handled by the network code.
+ *
+ * <p>The counters only grow, from the application starts. The rates are per second, measured over
+ * at least the last second before they were read.</p>
+ *
+ * @author Christian Ihle
+ */
+public interface TrafficInformationMBean extends JMXBean {
+
+    /**
+     * Gets the number of packets, and tcp messages, received on all the channels.
+     *
+     * @return The number of packets.
+     */
+    long getPacketsIn();
+
+    /**
+     * Gets the number of bytes received on all the channels.
+     *
+     * @return The number of bytes.
+     */
+    long getBytesIn();
+
+    /**
+     * Gets the number of packets, and tcp messages, sent on all the channels.
+     *
+     * @return The number of packets.
+     */
+    long getPacketsOut();
+
+    /**
+     * Gets the number of bytes sent on all the channels.
+     *
+     * @return The number of bytes.
+     */
+    long getBytesOut();
+
+    /**
+     * Gets the number of packets, and tcp messages, received per second.
+     *
+     * @return The number of packets per second.
+     */
+    double getPacketsInPerSecond();
+
+    /**
+     * Gets the number of bytes received per second.
+     *
+     * @return The number of bytes per second.
+     */
+    double getBytesInPerSecond();
+
+    /**
+     * Gets the number of packets, and tcp messages, sent per second.
+     *
+     * @return The number of packets per second.
+     */
+    double getPacketsOutPerSecond();
+
+    /**
+     * Gets the number of bytes sent per second.
+     *
+     * @return The number of bytes per second.
+     */
+    double getBytesOutPerSecond();
+
+    /**
+     * Gets the number of messages of all types received per second.
+     *
+     * @return The number of messages per second.
+     */
+    double getMessagesPerSecond();
+
+    /**
+     * Gets the number of received messages that could not be parsed.
+     *
+     * @return The number of parse failures.
+     */
+    long getParseFailures();
+
+    /**
+     * Gets the number of messages that were too large for a packet or tcp frame.
+     *
+     * @return The number of oversized messages.
+     */
+    long getOversizedMessages();
+
+    /**
+     * Gets the number of received messages dropped as copies of messages that already arrived.
+     *
+     * @return The number of duplicate messages.
+     */
+    long getDuplicateMessages();
+
+    /**
+     * Gets the number of attempts to reconnect to users that lost all the tcp connections.
+     *
+     * @return The number of tcp reconnects.
+     */
+    long getTcpReconnects();
+
+    /**
+     * Shows the packets and bytes received and sent on each channel.
+     *
+     * @return One line for each channel.
+     */
+    String[] showChannels();
+
+    /**
+     * Shows the number of received messages of each type.
+     *
+     * @return One line for each message type.
+     */
+    String[] showMessageTypes();
+}
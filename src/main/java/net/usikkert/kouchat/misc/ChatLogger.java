@@ -32,6 +32,8 @@ import java.util.logging.Logger;
 import net.usikkert.kouchat.event.SettingsListener;
 import net.usikkert.kouchat.settings.Setting;
 import net.usikkert.kouchat.settings.Settings;
+import net.usikkert.kouchat.util.HotPathProfiler;
+import net.usikkert.kouchat.util.HotPathProfiler.HotPath;
 import net.usikkert.kouchat.util.Tools;
 import net.usikkert.kouchat.util.Validate;
 
@@ -157,6 +159,8 @@ public class ChatLogger implements SettingsListener {
      */
     public void append(final String line) {
         if (open) {
+            final long start = HotPathProfiler.start();
+
             try {
                 writer.append(line);
                 writer.newLine();
@@ -167,6 +171,10 @@ public class ChatLogger implements SettingsListener {
                 LOG.log(Level.SEVERE, e.toString(), e);
                 close();
             }
+
+            finally {
+                HotPathProfiler.end(HotPath.CHAT_LOG_APPEND, start);
+            }
         }
     }
 
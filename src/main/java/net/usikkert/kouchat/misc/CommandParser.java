@@ -23,6 +23,7 @@
 package net.usikkert.kouchat.misc;
 
 import java.io.File;
+import java.io.IOException;
 import java.util.Date;
 import java.util.List;
 import java.util.regex.Pattern;
@@ -183,6 +184,24 @@ public class CommandParser {
         ui.clearChat();
     }
 
+    /**
+     * Command: <em>/dump</em>.
+     *
+     * <p>Saves the latest network and user list events from the flight recorder to a file in the log folder.</p>
+     */
+    private void cmdDump() {
+        try {
+            final File file = controller.getFlightRecorder().dumpToFolder(settings.getLogLocation());
+            msgController.showSystemMessage(coreMessages.getMessage("core.command.dump.systemMessage.saved",
+                                                                    file.getAbsolutePath()));
+        }
+
+        catch (final IOException e) {
+            msgController.showSystemMessage(coreMessages.getMessage("core.command.dump.systemMessage.failed",
+                                                                    e.getMessage()));
+        }
+    }
+
     /**
      * Command: <em>/about</em>.
      *
@@ -617,7 +636,7 @@ public class CommandParser {
      * <p>Shows a list of connected users.</p>
      */
     private void cmdUsers() {
-        final UserList list = controller.getUserList();
+        final List<User> list = controller.getUserList().getUsers();
         String userList = "";
 
         for (int i = 0; i < list.size(); i++) {
@@ -813,6 +832,7 @@ public class CommandParser {
                         coreMessages.getMessage("core.command.back.systemMessage.help") + "\n" +
                         coreMessages.getMessage("core.command.cancel.systemMessage.help") + "\n" +
                         coreMessages.getMessage("core.command.clear.systemMessage.help") + "\n" +
+                        coreMessages.getMessage("core.command.dump.systemMessage.help") + "\n" +
                         coreMessages.getMessage("core.command.help.systemMessage.help") + "\n" +
                         coreMessages.getMessage("core.command.msg.systemMessage.help") + "\n" +
                         coreMessages.getMessage("core.command.nick.systemMessage.help") + "\n" +
@@ -854,6 +874,8 @@ public class CommandParser {
                 cmdBack();
             } else if (command.equals("clear")) {
                 cmdClear();
+            } else if (command.equals("dump")) {
+                cmdDump();
             } else if (command.equals("about")) {
                 cmdAbout();
             } else if (command.equals("help")) {
@@ -23,27 +23,40 @@
 package net.usikkert.kouchat.misc;
 
 import java.util.List;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
 import net.usikkert.kouchat.Constants;
 import net.usikkert.kouchat.autocomplete.AutoCompleter;
 import net.usikkert.kouchat.autocomplete.CommandAutoCompleteList;
 import net.usikkert.kouchat.autocomplete.UserAutoCompleteList;
 import net.usikkert.kouchat.event.NetworkConnectionListener;
+import net.usikkert.kouchat.event.UserListListener;
 import net.usikkert.kouchat.jmx.JMXBeanLoader;
 import net.usikkert.kouchat.message.CoreMessages;
 import net.usikkert.kouchat.net.AsyncMessageResponderWrapper;
+import net.usikkert.kouchat.net.CompressionStatistics;
 import net.usikkert.kouchat.net.DefaultMessageResponder;
 import net.usikkert.kouchat.net.DefaultPrivateMessageResponder;
 import net.usikkert.kouchat.net.FileReceiver;
 import net.usikkert.kouchat.net.FileSender;
 import net.usikkert.kouchat.net.FileToSend;
+import net.usikkert.kouchat.net.LatencyStatistics;
 import net.usikkert.kouchat.net.MessageParser;
 import net.usikkert.kouchat.net.MessageResponder;
+import net.usikkert.kouchat.net.NetworkCapabilities;
 import net.usikkert.kouchat.net.NetworkMessages;
 import net.usikkert.kouchat.net.NetworkService;
 import net.usikkert.kouchat.net.PrivateMessageParser;
 import net.usikkert.kouchat.net.PrivateMessageResponder;
+import net.usikkert.kouchat.net.TrafficStatistics;
 import net.usikkert.kouchat.net.TransferList;
+import net.usikkert.kouchat.net.tcp.TCPSendQueue;
+import net.usikkert.kouchat.net.transport.FaultInjectingTransport;
+import net.usikkert.kouchat.net.transport.NetworkConditions;
+import net.usikkert.kouchat.net.transport.SocketTransport;
+import net.usikkert.kouchat.net.transport.Transport;
 import net.usikkert.kouchat.settings.Settings;
 import net.usikkert.kouchat.settings.SettingsSaver;
 import net.usikkert.kouchat.ui.UserInterface;
@@ -67,6 +80,8 @@ import org.jetbrains.annotations.Nullable;
  */
 public class Controller implements NetworkConnectionListener {
 
+    private static final Logger LOG = Logger.getLogger(Controller.class.getName());
+
     /** The time to wait after the network is up before logon is set as completed. */
     private static final int LOGON_DELAY = 1500;
 
@@ -75,11 +90,14 @@ public class Controller implements NetworkConnectionListener {
 
     private final ChatState chatState;
     private final UserListController userListController;
+    @Nullable
+    private final SocketTransport socketTransport;
     private final NetworkService networkService;
     private final NetworkMessages networkMessages;
     private final IdleThread idleThread;
     private final TransferList tList;
     private final WaitingList wList;
+    private final ThreadPools threadPools;
     private final User me;
     private final UserInterface ui;
     private final MessageController msgController;
@@ -89,6 +107,7 @@ public class Controller implements NetworkConnectionListener {
     private final Thread shutdownHook;
     private final CoreMessages coreMessages;
     private final ErrorHandler errorHandler;
+    private final FlightRecorder flightRecorder;
 
     /**
      * Constructor. Initializes the controller.
@@ -103,6 +122,24 @@ public class Controller implements NetworkConnectionListener {
      */
     public Controller(final UserInterface ui, final Settings settings, final SettingsSaver settingsSaver,
                       final CoreMessages coreMessages, final ErrorHandler errorHandler) {
+        this(ui, settings, settingsSaver, coreMessages, errorHandler, null);
+    }
+
+    /**
+     * Constructor. Initializes the controller with a different transport than the network sockets.
+     *
+     * <p>Use {@link #start()} and {@link #logOn()} to connect to the network.</p>
+     *
+     * @param ui The active user interface object.
+     * @param settings The settings to use.
+     * @param settingsSaver The saver to use for storing settings.
+     * @param coreMessages The core messages to use.
+     * @param errorHandler The error handler to use.
+     * @param transport The transport to use, or <code>null</code> to use the network sockets.
+     */
+    public Controller(final UserInterface ui, final Settings settings, final SettingsSaver settingsSaver,
+                      final CoreMessages coreMessages, final ErrorHandler errorHandler,
+                      @Nullable final Transport transport) {
         Validate.notNull(ui, "User interface can not be null");
         Validate.notNull(settings, "Settings can not be null");
         Validate.notNull(settingsSaver, "Settings saver can not be null");
@@ -126,25 +163,58 @@ public class Controller implements NetworkConnectionListener {
         Runtime.getRuntime().addShutdownHook(shutdownHook);
 
         me = settings.getMe();
+        flightRecorder = new FlightRecorder(Constants.FLIGHT_RECORDER_SIZE);
         userListController = new UserListController(settings);
+        recordUserListChanges();
         chatState = new ChatState();
         tList = new TransferList();
         wList = new WaitingList();
+        threadPools = new ThreadPools();
         idleThread = new IdleThread(this, ui, settings);
         dayTimer = new DayTimer(ui);
-        networkService = new NetworkService(this, settings, errorHandler);
+
+        if (transport == null) {
+            socketTransport = new SocketTransport(this, settings, errorHandler);
+            networkService = new NetworkService(this, settings, emulateNetwork(socketTransport));
+        } else {
+            socketTransport = null;
+            networkService = new NetworkService(this, settings, emulateNetwork(transport));
+        }
+
         final MessageResponder msgResponder = new DefaultMessageResponder(this, ui, settings, coreMessages);
-        final AsyncMessageResponderWrapper msgResponderWrapper = new AsyncMessageResponderWrapper(msgResponder, this);
+        final AsyncMessageResponderWrapper msgResponderWrapper = new AsyncMessageResponderWrapper(msgResponder, this, ui);
         final PrivateMessageResponder privmsgResponder = new DefaultPrivateMessageResponder(this, ui, settings);
-        final MessageParser msgParser = new MessageParser(msgResponderWrapper, settings);
+        final MessageParser msgParser = new MessageParser(msgResponderWrapper, settings, getTrafficStatistics(),
+                                                          flightRecorder);
         networkService.registerMainChatMessageReceiverListener(msgParser);
-        final PrivateMessageParser privmsgParser = new PrivateMessageParser(privmsgResponder, settings);
+        networkService.registerMainChatBinaryReceiverListener(msgParser);
+        final PrivateMessageParser privmsgParser = new PrivateMessageParser(privmsgResponder, settings,
+                                                                             getTrafficStatistics(), flightRecorder);
         networkService.registerPrivateChatReceiverListener(privmsgParser);
         networkMessages = new NetworkMessages(networkService, settings);
         networkService.registerNetworkConnectionListener(this);
         msgController = ui.getMessageController();
     }
 
+    private void recordUserListChanges() {
+        getUserList().addUserListListener(new UserListListener() {
+            @Override
+            public void userAdded(final int pos, final User user) {
+                flightRecorder.record(FlightRecorder.EventType.USER_ADDED, user.getCode(), user.getNick());
+            }
+
+            @Override
+            public void userChanged(final int oldPos, final int newPos, final User user) {
+                // Only additions and removals are recorded
+            }
+
+            @Override
+            public void userRemoved(final int pos, final User user) {
+                flightRecorder.record(FlightRecorder.EventType.USER_REMOVED, user.getCode(), user.getNick());
+            }
+        });
+    }
+
     /**
      * Starts background threads and shows welcome messages in the user interface.
      */
@@ -167,6 +237,60 @@ public class Controller implements NetworkConnectionListener {
         return chatState.getTopic();
     }
 
+    /**
+     * Gets the thread pools shared by the application.
+     *
+     * @return The thread pools.
+     */
+    public ThreadPools getThreadPools() {
+        return threadPools;
+    }
+
+    /**
+     * Gets the counters for the compressed messages sent and received.
+     *
+     * @return The compression statistics.
+     */
+    public CompressionStatistics getCompressionStatistics() {
+        return networkService.getCompressionStatistics();
+    }
+
+    /**
+     * Gets the latencies of the chat messages received.
+     *
+     * @return The latency statistics.
+     */
+    public LatencyStatistics getLatencyStatistics() {
+        return networkService.getLatencyStatistics();
+    }
+
+    /**
+     * Gets the counters for the network traffic, and the messages handled by the network code.
+     *
+     * @return The traffic statistics.
+     */
+    public TrafficStatistics getTrafficStatistics() {
+        return networkService.getTrafficStatistics();
+    }
+
+    /**
+     * Gets the recorder of the latest network and user list events.
+     *
+     * @return The flight recorder.
+     */
+    public FlightRecorder getFlightRecorder() {
+        return flightRecorder;
+    }
+
+    /**
+     * Gets the queues of tcp messages waiting to be sent to each user.
+     *
+     * @return The send queues, by user.
+     */
+    public Map<User, TCPSendQueue> getTcpSendQueues() {
+        return networkService.getTcpSendQueues();
+    }
+
     /**
      * Gets the list of online users.
      *
@@ -300,6 +424,35 @@ public class Controller implements NetworkConnectionListener {
         return userListController.isNickNameInUse(nick);
     }
 
+    /**
+     * Checks if all the other users in the chat support the network feature.
+     *
+     * @param capability The feature to check, from {@link net.usikkert.kouchat.net.NetworkCapabilities}.
+     * @return True if every other user supports the feature.
+     */
+    public boolean isCapabilitySupportedByAllUsers(final int capability) {
+        return userListController.isCapabilitySupportedByAllUsers(capability);
+    }
+
+    /**
+     * Gets the network features supported by all the other users in the chat.
+     *
+     * @return The features every other user supports, as bits from {@link net.usikkert.kouchat.net.NetworkCapabilities}.
+     */
+    public int getCapabilitiesSupportedByAllUsers() {
+        return userListController.getCapabilitiesSupportedByAllUsers();
+    }
+
+    /**
+     * Changes the network features supported by the user's client.
+     *
+     * @param code The user code for the user.
+     * @param capabilities The supported features, as bits from {@link net.usikkert.kouchat.net.NetworkCapabilities}.
+     */
+    public void changeCapabilities(final int code, final int capabilities) {
+        userListController.changeCapabilities(code, capabilities);
+    }
+
     /**
      * Checks if the user with that user code is already in the user list.
      *
@@ -426,14 +579,9 @@ public class Controller implements NetworkConnectionListener {
      * and removes them from the user list.
      */
     private void removeAllUsers() {
-        final UserList userList = getUserList();
-
-        for (int i = 0; i < userList.size(); i++) {
-            final User user = userList.get(i);
-
+        for (final User user : getUserList().getUsers()) {
             if (!user.isMe()) {
                 removeUser(user, coreMessages.getMessage("core.network.systemMessage.meLogOff"));
-                i--;
             }
         }
     }
@@ -462,11 +610,7 @@ public class Controller implements NetworkConnectionListener {
     }
 
     private void closeAllUserResources() {
-        final UserList userList = getUserList();
-
-        for (int i = 0; i < userList.size(); i++) {
-            final User user = userList.get(i);
-
+        for (final User user : getUserList().getUsers()) {
             cancelFileTransfers(user);
             closePrivateChatLogger(user);
         }
@@ -511,6 +655,7 @@ public class Controller implements NetworkConnectionListener {
         idleThread.stopThread();
         dayTimer.stopTimer();
         msgController.shutdown();
+        threadPools.shutdown();
     }
 
     /**
@@ -548,6 +693,8 @@ public class Controller implements NetworkConnectionListener {
     /**
      * Sends a chat message over the network, to all the other users.
      *
+     * <p>The message can be up to {@link #getChatMessageMaxBytes()} bytes.</p>
+     *
      * @param msg The message to send.
      * @throws CommandException If there is no connection to the network,
      *         or the application user is away,
@@ -561,14 +708,30 @@ public class Controller implements NetworkConnectionListener {
             throw new CommandException(coreMessages.getMessage("core.chatMessage.error.meIsAway"));
         } else if (msg.trim().length() == 0) {
             throw new CommandException(coreMessages.getMessage("core.chatMessage.error.emptyMessage"));
-        } else if (Tools.getBytes(msg) > Constants.MESSAGE_MAX_BYTES) {
+        } else if (Tools.getBytes(msg) > getChatMessageMaxBytes()) {
+            // As a string, to avoid grouping of the digits
             throw new CommandException(coreMessages.getMessage("core.chatMessage.error.messageTooLong",
-                                                               Constants.MESSAGE_MAX_BYTES));
+                                                               String.valueOf(getChatMessageMaxBytes())));
         } else {
             networkMessages.sendChatMessage(msg);
         }
     }
 
+    /**
+     * Gets the max number of bytes in a chat message. Larger messages can be sent when all the
+     * other users can receive messages split into several packets.
+     *
+     * @return {@link Constants#MESSAGE_MAX_FRAGMENTED_BYTES} if all the other users support it,
+     *         or {@link Constants#MESSAGE_MAX_BYTES}.
+     */
+    public int getChatMessageMaxBytes() {
+        if (isCapabilitySupportedByAllUsers(NetworkCapabilities.FRAGMENTED_MESSAGES)) {
+            return Constants.MESSAGE_MAX_FRAGMENTED_BYTES;
+        }
+
+        return Constants.MESSAGE_MAX_BYTES;
+    }
+
     /**
      * Sends a message over the network with the current topic.
      */
@@ -805,6 +968,8 @@ public class Controller implements NetworkConnectionListener {
      */
     @Override
     public void networkCameUp(final boolean silent) {
+        flightRecorder.record(FlightRecorder.EventType.NETWORK_UP, null);
+
         // Network came up after a logon
         if (!isLoggedOn()) {
             runDelayedLogon();
@@ -834,6 +999,7 @@ public class Controller implements NetworkConnectionListener {
      */
     @Override
     public void networkWentDown(final boolean silent) {
+        flightRecorder.record(FlightRecorder.EventType.NETWORK_DOWN, null);
         ui.showTopic();
 
         if (isLoggedOn()) {
@@ -856,13 +1022,32 @@ public class Controller implements NetworkConnectionListener {
         return chatState;
     }
 
+    /**
+     * Adds the network problems from the settings to the transport, if any.
+     */
+    private Transport emulateNetwork(final Transport transport) {
+        final NetworkConditions networkEmulation = settings.getNetworkEmulation();
+
+        if (networkEmulation == null) {
+            return transport;
+        }
+
+        LOG.log(Level.WARNING, "Emulating a bad network: " + networkEmulation + ", with seed " + settings.getNetworkSeed());
+        return new FaultInjectingTransport(transport, networkEmulation, settings.getNetworkSeed());
+    }
+
     /**
      * Creates an instance of a JMX bean loader, and returns it.
      *
      * @return A JMX bean loader.
+     * @throws IllegalStateException If the controller is not using the network sockets.
      */
     public JMXBeanLoader createJMXBeanLoader() {
-        return new JMXBeanLoader(this, networkService.getConnectionWorker(), settings, errorHandler);
+        if (socketTransport == null) {
+            throw new IllegalStateException("JMX beans are only available when using the network sockets");
+        }
+
+        return new JMXBeanLoader(this, socketTransport.getConnectionWorker(), settings, errorHandler);
     }
 
     public void registerNetworkConnectionListener(final NetworkConnectionListener listener) {
@@ -0,0 +1,338 @@
+
+/***************************************************************************
+ *   Copyright 2006-2018 by Christian Ihle                                 *
+ *   contact@kouchat.net                                                   *
+ *                                                                         *
+ *   This file is part of KouChat.                                         *
+ *                                                                         *
+ *   KouChat is free software; you can redistribute it and/or modify       *
+ *   it under the terms of the GNU Lesser General Public License as        *
+ *   published by the Free Software Foundation, either version 3 of        *
+ *   the License, or (at your option) any later version.                   *
+ *                                                                         *
+ *   KouChat is distributed in the hope that it will be useful,            *
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of        *
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU      *
+ *   Lesser General Public License for more details.                       *
+ *                                                                         *
+ *   You should have received a copy of the GNU Lesser General Public      *
+ *   License along with KouChat.                                           *
+ *   If not, see <http://www.gnu.org/licenses/>.                           *
+ ***************************************************************************/
+
+package net.usikkert.kouchat.misc;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import net.usikkert.kouchat.Constants;
+import net.usikkert.kouchat.util.Tools;
+import net.usikkert.kouchat.util.Validate;
+
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Keeps the latest network and user list events in memory, so they can be saved to a file
+ * when something goes wrong, without having to run with detailed logging.
+ *
+ * <p>The events are kept in a ring buffer of fixed size, where the oldest events are replaced by new ones.
+ * Recording an event never locks. Each event is immutable, and is published to its slot with a single write.
+ * Reading uses the sequence number of each event to skip the events that were already replaced.</p>
+ *
+ * <p>This class is thread safe.</p>
+ *
+ * @author Christian Ihle
+ */
+public class FlightRecorder {
+
+    /**
+     * The types of events to record.
+     */
+    public enum EventType {
+
+        /** A packet, or a tcp message, arrived. The detail is the ip address of the sender. */
+        PACKET_RECEIVED,
+
+        /** A message was parsed. The detail is the message type. */
+        MESSAGE_PARSED,
+
+        /** A user was added to the user list. The detail is the nick name. */
+        USER_ADDED,
+
+        /** A user was removed from the user list. The detail is the nick name. */
+        USER_REMOVED,
+
+        /** A user stopped sending idle messages, and is about to be removed. The detail is the nick name. */
+        USER_TIMED_OUT,
+
+        /** A tcp connection to a user was added. The detail is the ip address of the user. */
+        TCP_CONNECTED,
+
+        /** A tcp connection to a user was closed. The detail is the ip address of the user. */
+        TCP_DISCONNECTED,
+
+        /** The network came up. */
+        NETWORK_UP,
+
+        /** The network went down. */
+        NETWORK_DOWN
+    }
+
+    /** Used for events without a user. */
+    public static final int NO_USER = -1;
+
+    private static final String CHARSET = "UTF-8";
+
+    private static final String DUMP_FILE_PREFIX = "kouchat-events-";
+
+    private final int capacity;
+    private final int mask;
+
+    /** The sequence number of the next event. */
+    private final AtomicLong nextSequence;
+
+    /** The latest event in each slot, or <code>null</code> if nothing is recorded there yet. */
+    private final AtomicReferenceArray<Event> events;
+
+    /** For converting the event times to the time of day. */
+    private final long startTimeMillis;
+    private final long startTimeNanos;
+
+    /**
+     * Constructor.
+     *
+     * @param capacity The number of events to keep. Must be a power of two.
+     */
+    public FlightRecorder(final int capacity) {
+        if (capacity <= 0 || Integer.bitCount(capacity) != 1) {
+            throw new IllegalArgumentException("Capacity must be a power of two");
+        }
+
+        this.capacity = capacity;
+        this.mask = capacity - 1;
+        this.nextSequence = new AtomicLong();
+        this.events = new AtomicReferenceArray<>(capacity);
+        this.startTimeMillis = System.currentTimeMillis();
+        this.startTimeNanos = System.nanoTime();
+    }
+
+    /**
+     * Records an event without a user.
+     *
+     * @param type The type of event.
+     * @param detail More information about the event, or <code>null</code>.
+     */
+    public void record(final EventType type, @Nullable final String detail) {
+        record(type, NO_USER, detail);
+    }
+
+    /**
+     * Records an event.
+     *
+     * @param type The type of event.
+     * @param userCode The user code of the user the event is about, or {@link #NO_USER}.
+     * @param detail More information about the event, or <code>null</code>.
+     */
+    public void record(final EventType type, final int userCode, @Nullable final String detail) {
+        final long sequence = nextSequence.getAndIncrement();
+        final Event event = new Event(sequence, System.nanoTime(), type, userCode, detail);
+
+        events.set((int) (sequence & mask), event);
+    }
+
+    /**
+     * Gets the number of events to keep.
+     *
+     * @return The capacity.
+     */
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * Gets the number of events recorded since the start, including the ones that are replaced.
+     *
+     * @return The number of events.
+     */
+    public long getRecordedEvents() {
+        return nextSequence.get();
+    }
+
+    /**
+     * Gets the events still in memory.
+     *
+     * @return The events, oldest first.
+     */
+    public List<Event> getEvents() {
+        final long end = nextSequence.get();
+        final long start = Math.max(0, end - capacity);
+        final List<Event> eventList = new ArrayList<>((int) (end - start));
+
+        for (long sequence = start; sequence < end; sequence++) {
+            final Event event = events.get((int) (sequence & mask));
+
+            // Not written yet, or already replaced
+            if (event != null && event.sequence == sequence) {
+                eventList.add(event);
+            }
+        }
+
+        return eventList;
+    }
+
+    /**
+     * Saves the events still in memory to a new file in the folder, named after the current time.
+     * The folder is created if it's missing.
+     *
+     * @param folder The folder to save the file in, ending with a separator.
+     * @return The file the events were saved to.
+     * @throws IOException If the folder could not be created, or the file could not be written.
+     */
+    public File dumpToFolder(final String folder) throws IOException {
+        Validate.notEmpty(folder, "Folder can not be empty");
+
+        final File dumpFolder = new File(folder);
+
+        if (!dumpFolder.exists() && !dumpFolder.mkdirs()) {
+            throw new IOException("Unable to create folder for the events: " + dumpFolder);
+        }
+
+        final File file = new File(folder + DUMP_FILE_PREFIX + Tools.dateToString(null, "yyyy.MM.dd-HH.mm.ss-SSS") + ".log");
+        dump(file);
+
+        return file;
+    }
+
+    /**
+     * Saves the events still in memory to a text file, one event on each line.
+     *
+     * @param file The file to save to. Replaced if it exists.
+     * @return The number of events saved.
+     * @throws IOException If the file could not be written.
+     */
+    public int dump(final File file) throws IOException {
+        Validate.notNull(file, "File can not be null");
+
+        try (final Writer writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file), CHARSET))) {
+            return dump(writer);
+        }
+    }
+
+    /**
+     * Writes the events still in memory, one event on each line.
+     *
+     * @param writer The writer to write to.
+     * @return The number of events written.
+     * @throws IOException If the events could not be written.
+     */
+    public int dump(final Writer writer) throws IOException {
+        Validate.notNull(writer, "Writer can not be null");
+
+        final List<Event> events = getEvents();
+        final SimpleDateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss");
+
+        writer.write(Constants.APP_NAME + " v" + Constants.APP_VERSION + " - " + events.size() + " of " +
+                getRecordedEvents() + " events\n");
+
+        for (final Event event : events) {
+            writer.write(formatTime(event.getTime(), dateFormat) + " " + event + "\n");
+        }
+
+        writer.flush();
+
+        return events.size();
+    }
+
+    private String formatTime(final long time, final SimpleDateFormat dateFormat) {
+        final long nanosSinceEpoch = TimeUnit.MILLISECONDS.toNanos(startTimeMillis) + time - startTimeNanos;
+        final long millisSinceEpoch = TimeUnit.NANOSECONDS.toMillis(nanosSinceEpoch);
+        final long nanosOfSecond = nanosSinceEpoch % TimeUnit.SECONDS.toNanos(1);
+
+        return dateFormat.format(new Date(millisSinceEpoch)) + String.format(".%09d", nanosOfSecond);
+    }
+
+    /**
+     * A recorded event.
+     */
+    public static final class Event {
+
+        private final long sequence;
+        private final long time;
+        private final EventType type;
+        private final int userCode;
+
+        @Nullable
+        private final String detail;
+
+        Event(final long sequence, final long time, final EventType type, final int userCode,
+              @Nullable final String detail) {
+            this.sequence = sequence;
+            this.time = time;
+            this.type = type;
+            this.userCode = userCode;
+            this.detail = detail;
+        }
+
+        /**
+         * Gets the number of the event, counting from 0 since the start.
+         *
+         * @return The sequence number.
+         */
+        public long getSequence() {
+            return sequence;
+        }
+
+        /**
+         * Gets when the event happened.
+         *
+         * @return The time from {@link System#nanoTime()}.
+         */
+        public long getTime() {
+            return time;
+        }
+
+        public EventType getType() {
+            return type;
+        }
+
+        public int getUserCode() {
+            return userCode;
+        }
+
+        @Nullable
+        public String getDetail() {
+            return detail;
+        }
+
+        /**
+         * Gets the event as text, without the time.
+         *
+         * @return The type, user code and detail.
+         */
+        @Override
+        public String toString() {
+            final StringBuilder text = new StringBuilder(type.name());
+
+            if (userCode != NO_USER) {
+                text.append(" user=").append(userCode);
+            }
+
+            if (detail != null) {
+                text.append(' ').append(detail);
+            }
+
+            return text.toString();
+        }
+    }
+}
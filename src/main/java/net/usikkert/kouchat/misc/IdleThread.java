@@ -61,6 +61,7 @@ public class IdleThread extends Thread {
     private final UserList userList;
     private final User me;
     private final MessageController msgController;
+    private final FlightRecorder flightRecorder;
 
     /** The thread runs while this is true. */
     private boolean run;
@@ -82,6 +83,7 @@ public class IdleThread extends Thread {
         userList = controller.getUserList();
         me = settings.getMe();
         msgController = ui.getMessageController();
+        flightRecorder = controller.getFlightRecorder();
 
         run = true;
         setName("IdleThread");
@@ -103,13 +105,10 @@ public class IdleThread extends Thread {
             controller.sendIdleMessage();
             boolean timeout = false;
 
-            for (int i = 0; i < userList.size(); i++) {
-                final User temp = userList.get(i);
-
+            for (final User temp : userList.getUsers()) {
                 if (temp.getCode() != me.getCode() && temp.getLastIdle() < System.currentTimeMillis() - TIMEOUT) {
                     userTimedOut(temp);
                     timeout = true;
-                    i--;
                 }
             }
 
@@ -137,6 +136,7 @@ public class IdleThread extends Thread {
      */
     private void userTimedOut(final User user) {
         final String timeOutMessage = user.getNick() + " timed out";
+        flightRecorder.record(FlightRecorder.EventType.USER_TIMED_OUT, user.getCode(), user.getNick());
 
         controller.removeUser(user, timeOutMessage);
         msgController.showSystemMessage(timeOutMessage);
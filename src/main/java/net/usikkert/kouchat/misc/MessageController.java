@@ -22,9 +22,12 @@
 
 package net.usikkert.kouchat.misc;
 
+import net.usikkert.kouchat.net.MessageTrace;
 import net.usikkert.kouchat.settings.Settings;
 import net.usikkert.kouchat.ui.ChatWindow;
 import net.usikkert.kouchat.ui.UserInterface;
+import net.usikkert.kouchat.util.HotPathProfiler;
+import net.usikkert.kouchat.util.HotPathProfiler.HotPath;
 import net.usikkert.kouchat.util.Tools;
 import net.usikkert.kouchat.util.Validate;
 
@@ -76,9 +79,15 @@ public class MessageController {
      * @param color The color the user chose for the message.
      */
     public void showUserMessage(final String user, final String message, final int color) {
+        MessageTrace.markResponded();
+        final long start = HotPathProfiler.start();
+
         final String msg = Tools.getTime() + " <" + user + ">: " + message;
         chat.appendToChat(msg, color);
+        MessageTrace.markAppended();
         cLog.append(msg);
+
+        HotPathProfiler.end(HotPath.MESSAGE_APPEND, start);
     }
 
     /**
@@ -104,9 +113,13 @@ public class MessageController {
      * @param message The message written by the application user.
      */
     public void showOwnMessage(final String message) {
+        final long start = HotPathProfiler.start();
+
         final String msg = Tools.getTime() + " <" + me.getNick() + ">: " + message;
         chat.appendToChat(msg, settings.getOwnColor());
         cLog.append(msg);
+
+        HotPathProfiler.end(HotPath.MESSAGE_APPEND, start);
     }
 
     /**
@@ -124,9 +137,15 @@ public class MessageController {
             ui.createPrivChat(user);
         }
 
+        MessageTrace.markResponded();
+        final long start = HotPathProfiler.start();
+
         final String msg = Tools.getTime() + " <" + user + ">: " + privmsg;
         user.getPrivchat().appendToPrivateChat(msg, color);
+        MessageTrace.markAppended();
         user.getPrivateChatLogger().append(msg);
+
+        HotPathProfiler.end(HotPath.MESSAGE_APPEND, start);
     }
 
     /**
@@ -143,9 +162,13 @@ public class MessageController {
             ui.createPrivChat(user);
         }
 
+        final long start = HotPathProfiler.start();
+
         final String msg = Tools.getTime() + " <" + me.getNick() + ">: " + privmsg;
         user.getPrivchat().appendToPrivateChat(msg, settings.getOwnColor());
         user.getPrivateChatLogger().append(msg);
+
+        HotPathProfiler.end(HotPath.MESSAGE_APPEND, start);
     }
 
     /**
@@ -23,10 +23,16 @@
 package net.usikkert.kouchat.misc;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 import net.usikkert.kouchat.event.UserListListener;
+import net.usikkert.kouchat.util.HotPathProfiler;
+import net.usikkert.kouchat.util.HotPathProfiler.HotPath;
 import net.usikkert.kouchat.util.Validate;
 
 import org.jetbrains.annotations.Nullable;
@@ -37,41 +43,78 @@ import org.jetbrains.annotations.Nullable;
  * <p>The users in the list are sorted by nick name,
  * as specified in {@link User#compareTo(User)}.</p>
  *
+ * <p>The users are also indexed by code and nick name, so {@link #getUser(int)}
+ * and {@link #getUsers(String)} don't have to search through the list.</p>
+ *
+ * <p>The list is kept sorted by inserting each user at the correct position
+ * using binary search, instead of sorting the whole list on every change.</p>
+ *
+ * <p>This list is thread safe. The users are kept in an array that is replaced with
+ * a changed copy when users are added, removed or moved, so reading from the list
+ * never needs a lock, and {@link #getUsers()} can return the array as a snapshot.
+ * The indexes are concurrent maps. Changes are done one at a time, and the listeners
+ * are notified in the same order as the changes.</p>
+ *
  * @author Christian Ihle
  */
 public class SortedUserList implements UserList {
 
-    /** The list of users in the chat. */
-    private final List<User> userList;
+    /** The current users in the chat, and their nick name keys. */
+    private volatile Snapshot snapshot;
+
+    /** Lock held while changing the list, so changes and notifications happen in order. */
+    private final Object changeLock;
 
     /** The list of listeners of changes to the user list. */
     private final List<UserListListener> listeners;
 
+    /** The users in the list, by their unique code. */
+    private final ConcurrentMap<Integer, User> usersByCode;
+
+    /** The nick name key each user is indexed with in {@link #usersByNick}, by the code of the user. */
+    private final ConcurrentMap<Integer, String> nickKeysByCode;
+
+    /** The users in the list, by their nick name in lower case. The lists are never changed, only replaced. */
+    private final ConcurrentMap<String, List<User>> usersByNick;
+
     /**
      * Constructor.
      */
     public SortedUserList() {
-        userList = new ArrayList<>();
-        listeners = new ArrayList<>();
+        snapshot = new Snapshot(new User[0], new String[0]);
+        changeLock = new Object();
+        listeners = new CopyOnWriteArrayList<>();
+        usersByCode = new ConcurrentHashMap<>();
+        nickKeysByCode = new ConcurrentHashMap<>();
+        usersByNick = new ConcurrentHashMap<>();
     }
 
     /**
-     * Adds the user, and then sorts the list.
+     * Adds the user at the sorted position.
      *
      * {@inheritDoc}
      */
     @Override
     public boolean add(final User user) {
         Validate.notNull(user, "User can not be null");
+        final long start = HotPathProfiler.start();
 
-        final boolean success = userList.add(user);
+        try {
+            synchronized (changeLock) {
+                final String nickKey = toNickKey(user.getNick());
+                final int pos = findPositionAfter(snapshot.nickKeys, nickKey);
+
+                snapshot = snapshot.insert(pos, user, nickKey);
+                addToIndex(user, nickKey);
+                fireUserAdded(pos, user);
+            }
+        }
 
-        if (success) {
-            Collections.sort(userList);
-            fireUserAdded(userList.indexOf(user), user);
+        finally {
+            HotPathProfiler.end(HotPath.USER_LIST_CHANGE, start);
         }
 
-        return success;
+        return true;
     }
 
     /**
@@ -80,21 +123,25 @@ public class SortedUserList implements UserList {
     @Nullable
     @Override
     public User get(final int pos) {
-        if (pos < userList.size()) {
-            return userList.get(pos);
+        final User[] users = snapshot.users;
+
+        if (pos < users.length) {
+            return users[pos];
         } else {
             return null;
         }
     }
 
     /**
+     * Finds the user using binary search, if the user is in the list.
+     *
      * {@inheritDoc}
      */
     @Override
     public int indexOf(final User user) {
         Validate.notNull(user, "User can not be null");
 
-        return userList.indexOf(user);
+        return indexOf(snapshot, user);
     }
 
     /**
@@ -103,31 +150,130 @@ public class SortedUserList implements UserList {
     @Override
     public boolean remove(final User user) {
         Validate.notNull(user, "User can not be null");
+        final long start = HotPathProfiler.start();
+
+        try {
+            synchronized (changeLock) {
+                final Snapshot currentSnapshot = snapshot;
+                final int pos = indexOf(currentSnapshot, user);
 
-        final int pos = userList.indexOf(user);
-        final boolean success = userList.remove(user);
+                if (pos == -1) {
+                    return false;
+                }
+
+                snapshot = currentSnapshot.remove(pos);
+                removeFromIndex(currentSnapshot.users[pos]);
+                fireUserRemoved(pos, user);
+            }
+        }
 
-        if (success) {
-            fireUserRemoved(pos, user);
+        finally {
+            HotPathProfiler.end(HotPath.USER_LIST_CHANGE, start);
         }
 
-        return success;
+        return true;
     }
 
     /**
-     * Sets the user, and then sorts the list.
+     * Sets the user, and then moves it to the sorted position.
+     * The user is only moved if the nick name has changed.
      *
      * {@inheritDoc}
      */
     @Override
     public User set(final int pos, final User user) {
         Validate.notNull(user, "User can not be null");
+        final long start = HotPathProfiler.start();
 
-        final User oldUser = userList.set(pos, user);
-        Collections.sort(userList);
-        fireUserChanged(userList.indexOf(user), user);
+        try {
+            synchronized (changeLock) {
+                final int size = snapshot.users.length;
 
-        return oldUser;
+                if (pos < 0 || pos >= size) {
+                    throw new IndexOutOfBoundsException("Index: " + pos + ", Size: " + size);
+                }
+
+                return setAt(pos, user);
+            }
+        }
+
+        finally {
+            HotPathProfiler.end(HotPath.USER_LIST_CHANGE, start);
+        }
+    }
+
+    /**
+     * Updates the position of the user after a change to the user, and notifies
+     * with {@link UserListListener#userChanged(int, int, User)}.
+     *
+     * <p>Works like {@link #set(int, User)} at the position of the user, but finding the
+     * position and setting the user is done as one change, so it's safe to use
+     * while other threads change the list.</p>
+     *
+     * @param user The user that has changed.
+     * @return If the user was found in the list.
+     */
+    public boolean update(final User user) {
+        Validate.notNull(user, "User can not be null");
+        final long start = HotPathProfiler.start();
+
+        try {
+            synchronized (changeLock) {
+                final int pos = indexOf(snapshot, user);
+
+                if (pos == -1) {
+                    return false;
+                }
+
+                setAt(pos, user);
+            }
+        }
+
+        finally {
+            HotPathProfiler.end(HotPath.USER_LIST_CHANGE, start);
+        }
+
+        return true;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public List<User> getUsers() {
+        return Collections.unmodifiableList(Arrays.asList(snapshot.users));
+    }
+
+    /**
+     * Gets the user with the unique code.
+     *
+     * @param code The unique code of the user to get.
+     * @return The user, or <code>null</code> if no user in the list has the code.
+     */
+    @Nullable
+    public User getUser(final int code) {
+        return usersByCode.get(code);
+    }
+
+    /**
+     * Gets the users with the nick name. The nick name is not case sensitive.
+     *
+     * <p>There is usually only one user with a nick name, but several users can
+     * have the same nick name for a short while when there is a nick crash.</p>
+     *
+     * @param nickName The nick name of the users to get.
+     * @return The users with the nick name. An empty list if none are found.
+     */
+    public List<User> getUsers(final String nickName) {
+        Validate.notNull(nickName, "Nick name can not be null");
+
+        final List<User> users = usersByNick.get(toNickKey(nickName));
+
+        if (users == null) {
+            return Collections.emptyList();
+        }
+
+        return users;
     }
 
     /**
@@ -135,7 +281,7 @@ public class SortedUserList implements UserList {
      */
     @Override
     public int size() {
-        return userList.size();
+        return snapshot.users.length;
     }
 
     /**
@@ -167,6 +313,196 @@ public class SortedUserList implements UserList {
         return Collections.unmodifiableList(listeners);
     }
 
+    /**
+     * Sets the user at the position, and moves it if the nick name has changed.
+     * Must be called while holding {@link #changeLock}.
+     */
+    private User setAt(final int pos, final User user) {
+        final Snapshot currentSnapshot = snapshot;
+        final User oldUser = currentSnapshot.users[pos];
+        final String oldNickKey = currentSnapshot.nickKeys[pos];
+        final String nickKey = toNickKey(user.getNick());
+        final int newPos;
+
+        if (oldUser == user && oldNickKey.equals(nickKey)) {
+            // Only some other field of the user has changed, like away or writing
+            newPos = pos;
+        } else if (isSortedAt(currentSnapshot.nickKeys, pos, nickKey)) {
+            newPos = pos;
+            snapshot = currentSnapshot.replace(pos, user, nickKey);
+        } else {
+            final Snapshot removedSnapshot = currentSnapshot.remove(pos);
+
+            // Same order among users with equal nick names as a stable sort would give
+            if (nickKey.compareTo(oldNickKey) < 0) {
+                newPos = findPositionAfter(removedSnapshot.nickKeys, nickKey);
+            } else {
+                newPos = findPositionBefore(removedSnapshot.nickKeys, nickKey);
+            }
+
+            snapshot = removedSnapshot.insert(newPos, user, nickKey);
+        }
+
+        if (oldUser != user || !oldNickKey.equals(nickKey)) {
+            // Removing first, since the nick name might have changed since the user was indexed
+            removeFromIndex(oldUser);
+            addToIndex(user, nickKey);
+        }
+
+        fireUserChanged(pos, newPos, user);
+
+        return oldUser;
+    }
+
+    private int indexOf(final Snapshot currentSnapshot, final User user) {
+        final String nickKey = nickKeysByCode.get(user.getCode());
+
+        if (nickKey != null) {
+            final String[] nickKeys = currentSnapshot.nickKeys;
+            int pos = findPositionBefore(nickKeys, nickKey);
+
+            while (pos < nickKeys.length && nickKeys[pos].equals(nickKey)) {
+                if (currentSnapshot.users[pos].equals(user)) {
+                    return pos;
+                }
+
+                pos++;
+            }
+        }
+
+        // Only happens if the user is not in the list, if several users have the same code,
+        // or if another thread changed the index after the snapshot was read
+        for (int pos = 0; pos < currentSnapshot.users.length; pos++) {
+            if (currentSnapshot.users[pos].equals(user)) {
+                return pos;
+            }
+        }
+
+        return -1;
+    }
+
+    /**
+     * Checks if the nick name key belongs at the position, between the users before and after it.
+     *
+     * @param nickKeys The sorted nick name keys.
+     * @param pos The position to check.
+     * @param nickKey The nick name key of the user at the position.
+     * @return If the keys are still sorted with the key at the position.
+     */
+    private static boolean isSortedAt(final String[] nickKeys, final int pos, final String nickKey) {
+        if (pos > 0 && nickKeys[pos - 1].compareTo(nickKey) > 0) {
+            return false;
+        }
+
+        return pos == nickKeys.length - 1 || nickKeys[pos + 1].compareTo(nickKey) >= 0;
+    }
+
+    /**
+     * Finds the position of the first nick name key equal to or after the key.
+     *
+     * @param nickKeys The sorted nick name keys.
+     * @param nickKey The key to find the position of.
+     * @return The position before any equal keys.
+     */
+    private static int findPositionBefore(final String[] nickKeys, final String nickKey) {
+        int low = 0;
+        int high = nickKeys.length;
+
+        while (low < high) {
+            final int middle = (low + high) >>> 1;
+
+            if (nickKeys[middle].compareTo(nickKey) < 0) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+
+        return low;
+    }
+
+    /**
+     * Finds the position of the first nick name key after the key.
+     *
+     * @param nickKeys The sorted nick name keys.
+     * @param nickKey The key to find the position of.
+     * @return The position after any equal keys.
+     */
+    private static int findPositionAfter(final String[] nickKeys, final String nickKey) {
+        int low = 0;
+        int high = nickKeys.length;
+
+        while (low < high) {
+            final int middle = (low + high) >>> 1;
+
+            if (nickKeys[middle].compareTo(nickKey) <= 0) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+
+        return low;
+    }
+
+    private void addToIndex(final User user, final String nickKey) {
+        final User existingUser = usersByCode.get(user.getCode());
+
+        if (existingUser != null) {
+            removeFromIndex(existingUser);
+        }
+
+        usersByCode.put(user.getCode(), user);
+        nickKeysByCode.put(user.getCode(), nickKey);
+
+        final List<User> users = usersByNick.get(nickKey);
+        final List<User> newUsers = users == null ? new ArrayList<User>(1) : new ArrayList<>(users);
+
+        newUsers.add(user);
+        usersByNick.put(nickKey, Collections.unmodifiableList(newUsers));
+    }
+
+    private void removeFromIndex(final User user) {
+        if (usersByCode.get(user.getCode()) != user) {
+            return;
+        }
+
+        usersByCode.remove(user.getCode());
+        final String nickKey = nickKeysByCode.remove(user.getCode());
+        final List<User> newUsers = new ArrayList<>(usersByNick.get(nickKey));
+
+        for (int i = 0; i < newUsers.size(); i++) {
+            if (newUsers.get(i) == user) {
+                newUsers.remove(i);
+                break;
+            }
+        }
+
+        if (newUsers.isEmpty()) {
+            usersByNick.remove(nickKey);
+        } else {
+            usersByNick.put(nickKey, Collections.unmodifiableList(newUsers));
+        }
+    }
+
+    /**
+     * Converts the nick name to a key for {@link #usersByNick} and the snapshot. Each character
+     * is folded the same way as in {@link String#compareToIgnoreCase(String)}, so comparing the keys
+     * gives the same order as {@link User#compareTo(User)}.
+     *
+     * @param nickName The nick name to convert.
+     * @return The nick name in lower case.
+     */
+    private static String toNickKey(final String nickName) {
+        final char[] chars = new char[nickName.length()];
+
+        for (int i = 0; i < chars.length; i++) {
+            chars[i] = Character.toLowerCase(Character.toUpperCase(nickName.charAt(i)));
+        }
+
+        return new String(chars);
+    }
+
     /**
      * Notifies the listeners that a user was added.
      *
@@ -181,11 +517,12 @@ public class SortedUserList implements UserList {
     /**
      * Notifies the listeners that a user was changed.
      *
-     * @param pos The new position of the changed user.
+     * @param oldPos The position of the changed user before the change.
+     * @param newPos The new position of the changed user.
      */
-    private void fireUserChanged(final int pos, final User user) {
+    private void fireUserChanged(final int oldPos, final int newPos, final User user) {
         for (final UserListListener listener : listeners) {
-            listener.userChanged(pos, user);
+            listener.userChanged(oldPos, newPos, user);
         }
     }
 
@@ -199,4 +536,60 @@ public class SortedUserList implements UserList {
             listener.userRemoved(pos, user);
         }
     }
+
+    /**
+     * The users in the list, sorted by their nick name keys. Never changed after it's created.
+     * Every change to the list creates a new snapshot.
+     */
+    private static final class Snapshot {
+
+        /** The users, sorted by nick name. */
+        private final User[] users;
+
+        /** The nick name key of each user, at the same position as the user. */
+        private final String[] nickKeys;
+
+        private Snapshot(final User[] users, final String[] nickKeys) {
+            this.users = users;
+            this.nickKeys = nickKeys;
+        }
+
+        private Snapshot insert(final int pos, final User user, final String nickKey) {
+            final int size = users.length;
+            final User[] newUsers = new User[size + 1];
+            final String[] newNickKeys = new String[size + 1];
+
+            System.arraycopy(users, 0, newUsers, 0, pos);
+            System.arraycopy(nickKeys, 0, newNickKeys, 0, pos);
+            newUsers[pos] = user;
+            newNickKeys[pos] = nickKey;
+            System.arraycopy(users, pos, newUsers, pos + 1, size - pos);
+            System.arraycopy(nickKeys, pos, newNickKeys, pos + 1, size - pos);
+
+            return new Snapshot(newUsers, newNickKeys);
+        }
+
+        private Snapshot remove(final int pos) {
+            final int size = users.length;
+            final User[] newUsers = new User[size - 1];
+            final String[] newNickKeys = new String[size - 1];
+
+            System.arraycopy(users, 0, newUsers, 0, pos);
+            System.arraycopy(nickKeys, 0, newNickKeys, 0, pos);
+            System.arraycopy(users, pos + 1, newUsers, pos, size - pos - 1);
+            System.arraycopy(nickKeys, pos + 1, newNickKeys, pos, size - pos - 1);
+
+            return new Snapshot(newUsers, newNickKeys);
+        }
+
+        private Snapshot replace(final int pos, final User user, final String nickKey) {
+            final User[] newUsers = users.clone();
+            final String[] newNickKeys = nickKeys.clone();
+
+            newUsers[pos] = user;
+            newNickKeys[pos] = nickKey;
+
+            return new Snapshot(newUsers, newNickKeys);
+        }
+    }
 }
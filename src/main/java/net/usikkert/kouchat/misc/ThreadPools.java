@@ -0,0 +1,162 @@
+
+/***************************************************************************
+ *   Copyright 2006-2018 by Christian Ihle                                 *
+ *   contact@kouchat.net                                                   *
+ *                                                                         *
+ *   This file is part of KouChat.                                         *
+ *                                                                         *
+ *   KouChat is free software; you can redistribute it and/or modify       *
+ *   it under the terms of the GNU Lesser General Public License as        *
+ *   published by the Free Software Foundation, either version 3 of        *
+ *   the License, or (at your option) any later version.                   *
+ *                                                                         *
+ *   KouChat is distributed in the hope that it will be useful,            *
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of        *
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU      *
+ *   Lesser General Public License for more details.                       *
+ *                                                                         *
+ *   You should have received a copy of the GNU Lesser General Public      *
+ *   License along with KouChat.                                           *
+ *   If not, see <http://www.gnu.org/licenses/>.                           *
+ ***************************************************************************/
+
+package net.usikkert.kouchat.misc;
+
+import java.util.Arrays;
+import java.util.List;
+
+import net.usikkert.kouchat.util.BoundedThreadPool;
+import net.usikkert.kouchat.util.BoundedThreadPool.RejectionPolicy;
+
+/**
+ * The thread pools shared by the whole application, for work that must not
+ * block the thread that receives messages.
+ *
+ * <p>Each pool has a limit on the number of threads and waiting tasks,
+ * so a storm of reconnects or file transfers can't start an unlimited number of threads.</p>
+ *
+ * @author Christian Ihle
+ */
+public class ThreadPools {
+
+    /** Max number of threads for connecting to other users. */
+    private static final int NETWORK_THREADS = 16;
+
+    /** Max number of connections waiting for a thread. */
+    private static final int NETWORK_QUEUE_CAPACITY = 256;
+
+    /** Max number of files offered by other users at the same time, including the ones being received. */
+    private static final int FILE_OFFER_THREADS = 8;
+
+    /** Max number of file offers waiting for a thread. */
+    private static final int FILE_OFFER_QUEUE_CAPACITY = 32;
+
+    /** Max number of files being sent to other users at the same time. */
+    private static final int FILE_TRANSFER_THREADS = 8;
+
+    /** Max number of files waiting for a thread to be sent. */
+    private static final int FILE_TRANSFER_QUEUE_CAPACITY = 32;
+
+    /** Max number of threads for sending tcp messages to users. */
+    private static final int TCP_SEND_THREADS = 8;
+
+    /** Max number of users waiting for a thread to send their tcp messages. */
+    private static final int TCP_SEND_QUEUE_CAPACITY = 512;
+
+    /** Max number of threads for handling tcp messages received from users. */
+    private static final int TCP_RECEIVE_THREADS = 8;
+
+    /** Max number of users waiting for a thread to handle their received tcp messages. */
+    private static final int TCP_RECEIVE_QUEUE_CAPACITY = 512;
+
+    private final BoundedThreadPool networkPool;
+    private final BoundedThreadPool fileOfferPool;
+    private final BoundedThreadPool fileTransferPool;
+    private final BoundedThreadPool tcpSendPool;
+    private final BoundedThreadPool tcpReceivePool;
+
+    /**
+     * Constructor. Creates the thread pools. The pools don't start any threads until they are used.
+     */
+    public ThreadPools() {
+        // The users of these pools clean up after rejected tasks, like closing sockets and aborting file transfers
+        networkPool = new BoundedThreadPool("Network", NETWORK_THREADS, NETWORK_QUEUE_CAPACITY,
+                                            RejectionPolicy.ABORT);
+        // Offers wait for the user to answer, so they have their own pool, and can't delay the files being sent
+        fileOfferPool = new BoundedThreadPool("FileOffer", FILE_OFFER_THREADS, FILE_OFFER_QUEUE_CAPACITY,
+                                              RejectionPolicy.ABORT);
+        fileTransferPool = new BoundedThreadPool("FileTransfer", FILE_TRANSFER_THREADS, FILE_TRANSFER_QUEUE_CAPACITY,
+                                                 RejectionPolicy.ABORT);
+        // Each user has at most one task waiting. The messages stay in the user's send queue if the task is rejected
+        tcpSendPool = new BoundedThreadPool("TCPSend", TCP_SEND_THREADS, TCP_SEND_QUEUE_CAPACITY,
+                                            RejectionPolicy.ABORT);
+        // Each user has at most one task waiting. Rejected messages are handled on the thread reading them instead
+        tcpReceivePool = new BoundedThreadPool("TCPReceive", TCP_RECEIVE_THREADS, TCP_RECEIVE_QUEUE_CAPACITY,
+                                               RejectionPolicy.ABORT);
+    }
+
+    /**
+     * Gets the pool for network operations that may block, like connecting to other users.
+     *
+     * @return The network pool.
+     */
+    public BoundedThreadPool getNetworkPool() {
+        return networkPool;
+    }
+
+    /**
+     * Gets the pool for files offered by other users, which waits for the user to answer,
+     * and then receives the file if accepted.
+     *
+     * @return The file offer pool.
+     */
+    public BoundedThreadPool getFileOfferPool() {
+        return fileOfferPool;
+    }
+
+    /**
+     * Gets the pool for sending files to other users.
+     *
+     * @return The file transfer pool.
+     */
+    public BoundedThreadPool getFileTransferPool() {
+        return fileTransferPool;
+    }
+
+    /**
+     * Gets the pool for sending tcp messages waiting in the queue for each user.
+     *
+     * @return The tcp send pool.
+     */
+    public BoundedThreadPool getTcpSendPool() {
+        return tcpSendPool;
+    }
+
+    /**
+     * Gets the pool for handling the tcp messages received from each user, so the thread reading
+     * from the sockets never waits for the chat.
+     *
+     * @return The tcp receive pool.
+     */
+    public BoundedThreadPool getTcpReceivePool() {
+        return tcpReceivePool;
+    }
+
+    /**
+     * Gets all the thread pools.
+     *
+     * @return The thread pools.
+     */
+    public List<BoundedThreadPool> getPools() {
+        return Arrays.asList(networkPool, fileOfferPool, fileTransferPool, tcpSendPool, tcpReceivePool);
+    }
+
+    /**
+     * Stops accepting new tasks. Tasks that are already added will still run.
+     */
+    public void shutdown() {
+        for (final BoundedThreadPool pool : getPools()) {
+            pool.shutdown();
+        }
+    }
+}
@@ -22,6 +22,7 @@
 
 package net.usikkert.kouchat.misc;
 
+import net.usikkert.kouchat.net.NetworkCapabilities;
 import net.usikkert.kouchat.ui.PrivateChatWindow;
 
 import org.jetbrains.annotations.Nullable;
@@ -64,6 +65,9 @@ public class User implements Comparable<User> {
     /** Whether a tcp connection is enabled for this user. */
     private boolean tcpEnabled;
 
+    /** The network features supported by this user's client, as bits from {@link NetworkCapabilities}. */
+    private int capabilities;
+
     /** The time when the last idle message came from this user. */
     private long lastIdle;
 
@@ -118,6 +122,7 @@ public class User implements Comparable<User> {
         newMsg = false;
         privateChatPort = 0;
         tcpChatPort = 0;
+        capabilities = 0;
         privchat = null;
         online = true;
         newPrivMsg = false;
@@ -135,6 +140,7 @@ public class User implements Comparable<User> {
         newMsg = false;
         privateChatPort = 0;
         tcpChatPort = 0;
+        capabilities = 0;
         privchat = null;
         newPrivMsg = false;
     }
@@ -419,6 +425,34 @@ public class User implements Comparable<User> {
         this.tcpEnabled = tcpEnabled;
     }
 
+    /**
+     * Gets the network features supported by this user's client.
+     *
+     * @return The supported features, as bits from {@link NetworkCapabilities}.
+     */
+    public int getCapabilities() {
+        return capabilities;
+    }
+
+    /**
+     * Sets the network features supported by this user's client.
+     *
+     * @param capabilities The supported features, as bits from {@link NetworkCapabilities}.
+     */
+    public void setCapabilities(final int capabilities) {
+        this.capabilities = capabilities;
+    }
+
+    /**
+     * Checks if this user's client supports the network feature.
+     *
+     * @param capability The feature to check, from {@link NetworkCapabilities}.
+     * @return If the feature is supported.
+     */
+    public boolean hasCapability(final int capability) {
+        return (capabilities & capability) == capability;
+    }
+
     /**
      * Checks if this user is logged on to the chat.
      *
@@ -22,6 +22,8 @@
 
 package net.usikkert.kouchat.misc;
 
+import java.util.List;
+
 import net.usikkert.kouchat.event.UserListListener;
 
 /**
@@ -75,7 +77,7 @@ public interface UserList {
 
     /**
      * Sets the specified user at the specified position in the user list,
-     * and notifies with {@link UserListListener#userChanged(int, User)}.
+     * and notifies with {@link UserListListener#userChanged(int, int, User)}.
      *
      * @param pos The position to put the user.
      * @param user The user to put in the position.
@@ -83,6 +85,17 @@ public interface UserList {
      */
     User set(int pos, User user);
 
+    /**
+     * Gets a snapshot of the users in the list.
+     *
+     * <p>The snapshot does not change when the list is changed later, so it's safe
+     * to iterate over it while other threads change the list, or to remove users
+     * from the list during the iteration.</p>
+     *
+     * @return The users in the list, in the same order as in the list.
+     */
+    List<User> getUsers();
+
     /**
      * Gets the number for users in the list.
      *
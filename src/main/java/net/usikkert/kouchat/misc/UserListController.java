@@ -22,6 +22,9 @@
 
 package net.usikkert.kouchat.misc;
 
+import java.util.List;
+
+import net.usikkert.kouchat.event.UserListListener;
 import net.usikkert.kouchat.settings.Settings;
 import net.usikkert.kouchat.util.Validate;
 
@@ -37,8 +40,15 @@ import org.jetbrains.annotations.Nullable;
  */
 public class UserListController {
 
-    /** The user list. */
-    private final UserList userList;
+    /** The user list, with an index of the users by code and nick name. */
+    private final SortedUserList userList;
+
+    /**
+     * The network features supported by all the other users, as bits from
+     * {@link net.usikkert.kouchat.net.NetworkCapabilities}. Kept up to date when users are added or removed,
+     * and when their features change, so checking a feature doesn't have to look at every user.
+     */
+    private volatile int capabilitiesSupportedByAllUsers;
 
     /**
      * Constructor.
@@ -51,6 +61,8 @@ public class UserListController {
         Validate.notNull(settings, "Settings can not be null");
 
         userList = new SortedUserList();
+        capabilitiesSupportedByAllUsers = ~0;
+        updateCapabilitiesOnUserListChanges();
         userList.add(settings.getMe());
     }
 
@@ -62,18 +74,7 @@ public class UserListController {
      */
     @Nullable
     public User getUser(final int code) {
-        User user = null;
-
-        for (int i = 0; i < userList.size(); i++) {
-            final User temp = userList.get(i);
-
-            if (temp.getCode() == code) {
-                user = temp;
-                break;
-            }
-        }
-
-        return user;
+        return userList.getUser(code);
     }
 
     /**
@@ -84,18 +85,13 @@ public class UserListController {
      */
     @Nullable
     public User getUser(final String nickname) {
-        User user = null;
-
-        for (int i = 0; i < userList.size(); i++) {
-            final User temp = userList.get(i);
+        final List<User> users = userList.getUsers(nickname);
 
-            if (temp.getNick().equalsIgnoreCase(nickname)) {
-                user = temp;
-                break;
-            }
+        if (users.isEmpty()) {
+            return null;
         }
 
-        return user;
+        return users.get(0);
     }
 
     /**
@@ -105,14 +101,11 @@ public class UserListController {
      * @param nickname The new nick name of the user.
      */
     public void changeNickName(final int code, final String nickname) {
-        for (int i = 0; i < userList.size(); i++) {
-            final User temp = userList.get(i);
+        final User user = userList.getUser(code);
 
-            if (temp.getCode() == code) {
-                temp.setNick(nickname);
-                userList.set(i, temp);
-                break;
-            }
+        if (user != null) {
+            user.setNick(nickname);
+            updateUser(user);
         }
     }
 
@@ -124,15 +117,12 @@ public class UserListController {
      * @param awaymsg The new away message.
      */
     public void changeAwayStatus(final int code, final boolean away, final String awaymsg) {
-        for (int i = 0; i < userList.size(); i++) {
-            final User temp = userList.get(i);
-
-            if (temp.getCode() == code) {
-                temp.setAway(away);
-                temp.setAwayMsg(awaymsg);
-                userList.set(i, temp);
-                break;
-            }
+        final User user = userList.getUser(code);
+
+        if (user != null) {
+            user.setAway(away);
+            user.setAwayMsg(awaymsg);
+            updateUser(user);
         }
     }
 
@@ -143,14 +133,26 @@ public class UserListController {
      * @param writing If the user is writing.
      */
     public void changeWriting(final int code, final boolean writing) {
-        for (int i = 0; i < userList.size(); i++) {
-            final User temp = userList.get(i);
+        final User user = userList.getUser(code);
 
-            if (temp.getCode() == code) {
-                temp.setWriting(writing);
-                userList.set(i, temp);
-                break;
-            }
+        if (user != null) {
+            user.setWriting(writing);
+            updateUser(user);
+        }
+    }
+
+    /**
+     * Changes the network features supported by the user's client.
+     *
+     * @param code The unique code of the user.
+     * @param capabilities The supported features, as bits from {@link net.usikkert.kouchat.net.NetworkCapabilities}.
+     */
+    public void changeCapabilities(final int code, final int capabilities) {
+        final User user = userList.getUser(code);
+
+        if (user != null) {
+            user.setCapabilities(capabilities);
+            calculateCapabilitiesSupportedByAllUsers();
         }
     }
 
@@ -161,14 +163,11 @@ public class UserListController {
      * @param newMsg If the user has new private messages.
      */
     public void changeNewMessage(final int code, final boolean newMsg) {
-        for (int i = 0; i < userList.size(); i++) {
-            final User temp = userList.get(i);
+        final User user = userList.getUser(code);
 
-            if (temp.getCode() == code) {
-                temp.setNewPrivMsg(newMsg);
-                userList.set(i, temp);
-                break;
-            }
+        if (user != null) {
+            user.setNewPrivMsg(newMsg);
+            updateUser(user);
         }
     }
 
@@ -179,18 +178,13 @@ public class UserListController {
      * @return If the nick name is in use.
      */
     public boolean isNickNameInUse(final String nickname) {
-        boolean inUse = false;
-
-        for (int i = 0; i < userList.size(); i++) {
-            final User temp = userList.get(i);
-
-            if (temp.getNick().equalsIgnoreCase(nickname) && !temp.isMe()) {
-                inUse = true;
-                break;
+        for (final User user : userList.getUsers(nickname)) {
+            if (!user.isMe()) {
+                return true;
             }
         }
 
-        return inUse;
+        return false;
     }
 
     /**
@@ -200,18 +194,7 @@ public class UserListController {
      * @return If the user is new, which means it is not in the user list.
      */
     public boolean isNewUser(final int code) {
-        boolean newUser = true;
-
-        for (int i = 0; i < userList.size(); i++) {
-            final User temp = userList.get(i);
-
-            if (temp.getCode() == code) {
-                newUser = false;
-                break;
-            }
-        }
-
-        return newUser;
+        return userList.getUser(code) == null;
     }
 
     /**
@@ -225,9 +208,7 @@ public class UserListController {
      * @return If there are any timeout users.
      */
     public boolean isTimeoutUsers() {
-        for (int i = 0; i < userList.size(); i++) {
-            final User temp = userList.get(i);
-
+        for (final User temp : userList.getUsers()) {
             if (temp.getNick().equals("" + temp.getCode())) {
                 return true;
             }
@@ -236,6 +217,70 @@ public class UserListController {
         return false;
     }
 
+    /**
+     * Checks if all the other users in the user list support the network feature.
+     *
+     * @param capability The feature to check, from {@link net.usikkert.kouchat.net.NetworkCapabilities}.
+     * @return If every user except the application user supports the feature.
+     */
+    public boolean isCapabilitySupportedByAllUsers(final int capability) {
+        return (capabilitiesSupportedByAllUsers & capability) == capability;
+    }
+
+    /**
+     * Gets the network features supported by all the other users in the user list.
+     * A feature is included when there are no other users.
+     *
+     * @return The features every user except the application user supports,
+     *         as bits from {@link net.usikkert.kouchat.net.NetworkCapabilities}.
+     */
+    public int getCapabilitiesSupportedByAllUsers() {
+        return capabilitiesSupportedByAllUsers;
+    }
+
+    private void updateCapabilitiesOnUserListChanges() {
+        userList.addUserListListener(new UserListListener() {
+            @Override
+            public void userAdded(final int pos, final User user) {
+                calculateCapabilitiesSupportedByAllUsers();
+            }
+
+            @Override
+            public void userChanged(final int oldPos, final int newPos, final User user) {
+                // Features are only changed through changeCapabilities()
+            }
+
+            @Override
+            public void userRemoved(final int pos, final User user) {
+                calculateCapabilitiesSupportedByAllUsers();
+            }
+        });
+    }
+
+    /**
+     * Combines the features of all the other users. Only done when the users or their features change.
+     */
+    private synchronized void calculateCapabilitiesSupportedByAllUsers() {
+        int capabilities = ~0;
+
+        for (final User temp : userList.getUsers()) {
+            if (!temp.isMe()) {
+                capabilities &= temp.getCapabilities();
+            }
+        }
+
+        capabilitiesSupportedByAllUsers = capabilities;
+    }
+
+    /**
+     * Puts the changed user back in the user list, to sort the list and notify the listeners.
+     *
+     * @param user The changed user.
+     */
+    private void updateUser(final User user) {
+        userList.update(user);
+    }
+
     /**
      * Gets the user list.
      *
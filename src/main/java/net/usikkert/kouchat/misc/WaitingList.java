@@ -22,8 +22,9 @@
 
 package net.usikkert.kouchat.misc;
 
-import java.util.HashSet;
+import java.util.Collections;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * This waiting list is used to store unknown users while asking them to
@@ -31,6 +32,8 @@ import java.util.Set;
  * By doing this, messages from unknown users can be held back until they
  * have identified themselves.
  *
+ * <p>This class is thread safe.</p>
+ *
  * @author Christian Ihle
  */
 public class WaitingList {
@@ -41,7 +44,7 @@ public class WaitingList {
      * Constructor.
      */
     public WaitingList() {
-        users = new HashSet<>();
+        users = Collections.newSetFromMap(new ConcurrentHashMap<Integer, Boolean>());
     }
 
     /**
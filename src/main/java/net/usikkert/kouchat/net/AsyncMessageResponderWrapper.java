@@ -23,12 +23,15 @@
 package net.usikkert.kouchat.net;
 
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
 
 import net.usikkert.kouchat.misc.Controller;
 import net.usikkert.kouchat.misc.User;
 import net.usikkert.kouchat.misc.WaitingList;
-import net.usikkert.kouchat.util.Sleeper;
+import net.usikkert.kouchat.ui.UserInterface;
+import net.usikkert.kouchat.util.Logger;
+import net.usikkert.kouchat.util.NamedThreadFactory;
 import net.usikkert.kouchat.util.Validate;
 
 /**
@@ -36,31 +39,45 @@ import net.usikkert.kouchat.util.Validate;
  * operations from unknown users.
  *
  * <p>As a rule, all operations are handled by a single thread, to keep the order they arrive.
- * Some operations need to wait for a response, and must therefore be handled by a new thread to
- * avoid locking other operations.</p>
+ * Some operations need to wait for a response, and must therefore be handled by a thread from the
+ * shared file pools in {@link net.usikkert.kouchat.misc.ThreadPools} to avoid locking other operations.
+ * If a pool is full, the file transfer is aborted, and the user is told about it.</p>
  *
  * <p>Some operations handles users appearing unexpectedly, from a timeout, or because of packet loss.
- * Those will add the user to a waiting list, ask the user to identify, and then wait for it to happen,
- * before continuing.</p>
+ * Those will add the user to a waiting list, ask the user to identify, and then put the operation in a
+ * {@link PendingMessageQueue} until the user has identified, or it times out.</p>
  *
  * @author Christian Ihle
  */
 public class AsyncMessageResponderWrapper implements MessageResponder {
 
-    private final Sleeper sleeper = new Sleeper();
-    private final ExecutorService executorService = Executors.newCachedThreadPool();
+    private static final Logger LOG = Logger.getLogger(AsyncMessageResponderWrapper.class);
 
     private final MessageResponder messageResponder;
     private final Controller controller;
+    private final UserInterface ui;
     private final WaitingList waitingList;
+    private final ExecutorService fileOfferExecutor;
+    private final ExecutorService fileTransferExecutor;
+    private final PendingMessageQueue pendingMessages;
 
-    public AsyncMessageResponderWrapper(final MessageResponder messageResponder, final Controller controller) {
+    public AsyncMessageResponderWrapper(final MessageResponder messageResponder, final Controller controller,
+                                        final UserInterface ui) {
         Validate.notNull(messageResponder, "MessageResponder can not be null");
         Validate.notNull(controller, "Controller can not be null");
+        Validate.notNull(ui, "UserInterface can not be null");
 
         this.messageResponder = messageResponder;
         this.controller = controller;
+        this.ui = ui;
         this.waitingList = controller.getWaitingList();
+        this.fileOfferExecutor = controller.getThreadPools().getFileOfferPool();
+        this.fileTransferExecutor = controller.getThreadPools().getFileTransferPool();
+
+        final ScheduledThreadPoolExecutor timeoutExecutor =
+                new ScheduledThreadPoolExecutor(1, new NamedThreadFactory("PendingMessageTimeout"));
+        timeoutExecutor.setRemoveOnCancelPolicy(true);
+        this.pendingMessages = new PendingMessageQueue(timeoutExecutor);
     }
 
     /**
@@ -73,10 +90,9 @@ public class AsyncMessageResponderWrapper implements MessageResponder {
         if (controller.isNewUser(userCode)) {
             askUserToIdentify(userCode);
 
-            executorService.execute(new Runnable() {
+            pendingMessages.add(userCode, new Runnable() {
                 @Override
                 public void run() {
-                    waitForUserToIdentify(userCode);
                     messageResponder.messageArrived(userCode, msg, color);
                 }
             });
@@ -144,9 +160,13 @@ public class AsyncMessageResponderWrapper implements MessageResponder {
         messageResponder.meLogOn(ipAddress);
     }
 
+    /**
+     * User logged on. Handles any messages that arrived from the user before it was known.
+     */
     @Override
     public void userLogOn(final User newUser) {
         messageResponder.userLogOn(newUser);
+        pendingMessages.flush(newUser.getCode());
     }
 
     @Override
@@ -154,9 +174,13 @@ public class AsyncMessageResponderWrapper implements MessageResponder {
         messageResponder.userLogOff(userCode);
     }
 
+    /**
+     * User identified. Handles any messages that arrived from the user before it was known.
+     */
     @Override
     public void userExposing(final User user) {
         messageResponder.userExposing(user);
+        pendingMessages.flush(user.getCode());
     }
 
     @Override
@@ -195,17 +219,47 @@ public class AsyncMessageResponderWrapper implements MessageResponder {
     @Override
     public void fileSend(final int userCode, final long byteSize, final String fileName,
                          final String user, final int fileHash) {
+        final Runnable fileSend = new Runnable() {
+            @Override
+            public void run() {
+                messageResponder.fileSend(userCode, byteSize, fileName, user, fileHash);
+            }
+        };
+
         if (controller.isNewUser(userCode)) {
             askUserToIdentify(userCode);
+
+            pendingMessages.add(userCode, new Runnable() {
+                @Override
+                public void run() {
+                    executeFileSend(fileSend, userCode, fileName, fileHash);
+                }
+            });
         }
 
-        executorService.execute(new Runnable() {
-            @Override
-            public void run() {
-                waitForUserToIdentify(userCode);
-                messageResponder.fileSend(userCode, byteSize, fileName, user, fileHash);
+        else {
+            executeFileSend(fileSend, userCode, fileName, fileHash);
+        }
+    }
+
+    /**
+     * Starts handling the file offer, or declines it if there are too many offers already.
+     */
+    private void executeFileSend(final Runnable fileSend, final int userCode, final String fileName, final int fileHash) {
+        try {
+            fileOfferExecutor.execute(fileSend);
+        }
+
+        catch (final RejectedExecutionException e) {
+            LOG.warning("Unable to handle file offer of %s from %s: %s", fileName, userCode, e.getMessage());
+            final User user = controller.getUser(userCode);
+
+            if (user != null) {
+                controller.sendFileAbort(user, fileHash, fileName);
+                ui.getMessageController().showSystemMessage(user.getNick() + " is trying to send the file " + fileName +
+                        ", but too many files are waiting already. Declined.");
             }
-        });
+        }
     }
 
     @Override
@@ -219,41 +273,59 @@ public class AsyncMessageResponderWrapper implements MessageResponder {
      */
     @Override
     public void fileSendAccepted(final int userCode, final String fileName, final int fileHash, final int port) {
-        executorService.execute(new Runnable() {
-            @Override
-            public void run() {
-                messageResponder.fileSendAccepted(userCode, fileName, fileHash, port);
-            }
-        });
+        try {
+            fileTransferExecutor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    messageResponder.fileSendAccepted(userCode, fileName, fileHash, port);
+                }
+            });
+        }
+
+        catch (final RejectedExecutionException e) {
+            LOG.warning("Unable to send %s to %s: %s", fileName, userCode, e.getMessage());
+            abortFileSend(userCode, fileName, fileHash);
+        }
+    }
+
+    /**
+     * Cancels the file transfer, and tells both users about it, so the other user stops waiting for the file.
+     */
+    private void abortFileSend(final int userCode, final String fileName, final int fileHash) {
+        final User user = controller.getUser(userCode);
+
+        if (user == null) {
+            return;
+        }
+
+        final TransferList transferList = controller.getTransferList();
+        final FileSender fileSender = transferList.getFileSender(user, fileName, fileHash);
+
+        if (fileSender != null) {
+            fileSender.cancel();
+            transferList.removeFileSender(fileSender);
+        }
+
+        controller.sendFileAbort(user, fileHash, fileName);
+        ui.getMessageController().showSystemMessage("Failed to send " + fileName + " to " + user.getNick() +
+                ", because too many files are being sent already");
     }
 
     @Override
     public void clientInfo(final int userCode, final String client, final long timeSinceLogon,
-                           final String operatingSystem, final int privateChatPort, final int tcpChatPort) {
-        messageResponder.clientInfo(userCode, client, timeSinceLogon, operatingSystem, privateChatPort, tcpChatPort);
+                           final String operatingSystem, final int privateChatPort, final int tcpChatPort,
+                           final int capabilities) {
+        messageResponder.clientInfo(userCode, client, timeSinceLogon, operatingSystem, privateChatPort, tcpChatPort,
+                                    capabilities);
     }
 
     /**
      * Asks user with the specified userCode to identify with {@link #userExposing(User)}.
-     * Adds user to waiting list so we know this user sent a message without being known,
-     * and also so we can wait for this user to identify before continuing an operation.
+     * Adds user to waiting list so we know this user sent a message without being known.
      */
     void askUserToIdentify(final int userCode) {
         waitingList.addWaitingUser(userCode);
         controller.sendExposeMessage();
         controller.sendGetTopicMessage();
     }
-
-    /**
-     * Waits for user with the specified userCode to identify in {@link #userExposing(User)}.
-     * Gives up after 2 seconds.
-     */
-    void waitForUserToIdentify(final int userCode) {
-        int counter = 0;
-
-        while (waitingList.isWaitingUser(userCode) && counter < 40) {
-            counter++;
-            sleeper.sleep(50);
-        }
-    }
 }
@@ -0,0 +1,202 @@
+
+/***************************************************************************
+ *   Copyright 2006-2018 by Christian Ihle                                 *
+ *   contact@kouchat.net                                                   *
+ *                                                                         *
+ *   This file is part of KouChat.                                         *
+ *                                                                         *
+ *   KouChat is free software; you can redistribute it and/or modify       *
+ *   it under the terms of the GNU Lesser General Public License as        *
+ *   published by the Free Software Foundation, either version 3 of        *
+ *   the License, or (at your option) any later version.                   *
+ *                                                                         *
+ *   KouChat is distributed in the hope that it will be useful,            *
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of        *
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU      *
+ *   Lesser General Public License for more details.                       *
+ *                                                                         *
+ *   You should have received a copy of the GNU Lesser General Public      *
+ *   License along with KouChat.                                           *
+ *   If not, see <http://www.gnu.org/licenses/>.                           *
+ ***************************************************************************/
+
+package net.usikkert.kouchat.net;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.Charset;
+
+import net.usikkert.kouchat.Constants;
+import net.usikkert.kouchat.util.Logger;
+
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Encodes text messages in the binary message format described in {@link BinaryMessageFormat}.
+ *
+ * <p>Only the message types in {@link BinaryMessageFormat} can be encoded. The messages used to
+ * discover other clients, like {@link NetworkMessageType#LOGON}, {@link NetworkMessageType#EXPOSING}
+ * and {@link NetworkMessageType#CLIENT}, must be understood by every client and are always sent as text.</p>
+ *
+ * <p>This class is thread safe.</p>
+ *
+ * @author Christian Ihle
+ */
+public class BinaryMessageEncoder {
+
+    private static final Logger LOG = Logger.getLogger(BinaryMessageEncoder.class);
+
+    private static final Charset MESSAGE_CHARSET = Charset.forName(Constants.MESSAGE_CHARSET);
+
+    /**
+     * Encodes a text message, like <code>12345678!MSG#nick:[-15987646]hello</code>, as a binary message.
+     *
+     * @param message The text message to encode.
+     * @return The binary message, or <code>null</code> if the message type is not supported,
+     *         or the message is not valid.
+     */
+    @Nullable
+    public byte[] encode(final String message) {
+        final int exclamation = message.indexOf('!');
+        final int hash = message.indexOf('#');
+        final int colon = message.indexOf(':');
+
+        if (exclamation < 1 || hash < exclamation || colon < hash) {
+            return null;
+        }
+
+        try {
+            final int msgCode = Integer.parseInt(message.substring(0, exclamation));
+            final String type = message.substring(exclamation + 1, hash);
+            final String msgNick = message.substring(hash + 1, colon);
+            final String msg = message.substring(colon + 1, message.length());
+
+            final ByteArrayOutputStream out = new ByteArrayOutputStream(message.length() + 8);
+
+            switch (type) {
+                case NetworkMessageType.MSG:
+                    writeHeader(out, BinaryMessageFormat.MSG, msgCode);
+                    writeSignedVarInt(out, Integer.parseInt(between(msg, '[', ']')));
+                    writeString(out, msg.substring(msg.indexOf(']') + 1, msg.length()));
+                    break;
+
+                case NetworkMessageType.AWAY:
+                    writeHeader(out, BinaryMessageFormat.AWAY, msgCode);
+                    writeString(out, msg);
+                    break;
+
+                case NetworkMessageType.BACK:
+                    writeHeader(out, BinaryMessageFormat.BACK, msgCode);
+                    break;
+
+                case NetworkMessageType.WRITING:
+                    writeHeader(out, BinaryMessageFormat.WRITING, msgCode);
+                    break;
+
+                case NetworkMessageType.STOPPEDWRITING:
+                    writeHeader(out, BinaryMessageFormat.STOPPEDWRITING, msgCode);
+                    break;
+
+                case NetworkMessageType.GETTOPIC:
+                    writeHeader(out, BinaryMessageFormat.GETTOPIC, msgCode);
+                    break;
+
+                case NetworkMessageType.TOPIC:
+                    if (msg.indexOf('[') == -1 || msg.indexOf(']') == -1) {
+                        return null;
+                    }
+
+                    writeHeader(out, BinaryMessageFormat.TOPIC, msgCode);
+                    writeString(out, between(msg, '(', ')'));
+                    writeVarLong(out, Long.parseLong(between(msg, '[', ']')));
+                    writeString(out, msg.substring(msg.indexOf(']') + 1, msg.length()));
+                    break;
+
+                case NetworkMessageType.NICK:
+                    writeHeader(out, BinaryMessageFormat.NICK, msgCode);
+                    writeString(out, msgNick);
+                    break;
+
+                case NetworkMessageType.IDLE:
+                    writeHeader(out, BinaryMessageFormat.IDLE, msgCode);
+                    break;
+
+                case NetworkMessageType.SENDFILEACCEPT:
+                    writeHeader(out, BinaryMessageFormat.SENDFILEACCEPT, msgCode);
+                    writeVarInt(out, Integer.parseInt(between(msg, '(', ')')));
+                    writeVarInt(out, Integer.parseInt(between(msg, '[', ']')));
+                    writeSignedVarInt(out, Integer.parseInt(between(msg, '{', '}')));
+                    writeString(out, msg.substring(msg.indexOf('}') + 1, msg.length()));
+                    break;
+
+                case NetworkMessageType.SENDFILEABORT:
+                    writeHeader(out, BinaryMessageFormat.SENDFILEABORT, msgCode);
+                    writeVarInt(out, Integer.parseInt(between(msg, '(', ')')));
+                    writeSignedVarInt(out, Integer.parseInt(between(msg, '{', '}')));
+                    writeString(out, msg.substring(msg.indexOf('}') + 1, msg.length()));
+                    break;
+
+                case NetworkMessageType.SENDFILE:
+                    writeHeader(out, BinaryMessageFormat.SENDFILE, msgCode);
+                    writeVarInt(out, Integer.parseInt(between(msg, '(', ')')));
+                    writeVarLong(out, Long.parseLong(between(msg, '[', ']')));
+                    writeSignedVarInt(out, Integer.parseInt(between(msg, '{', '}')));
+                    writeString(out, msg.substring(msg.indexOf('}') + 1, msg.length()));
+                    writeString(out, msgNick);
+                    break;
+
+                default:
+                    return null;
+            }
+
+            return out.toByteArray();
+        }
+
+        catch (final NumberFormatException | StringIndexOutOfBoundsException e) {
+            LOG.fine("Failed to encode message, will send as text. message=%s, error=%s", message, e.toString());
+            return null;
+        }
+    }
+
+    private String between(final String msg, final char left, final char right) {
+        return msg.substring(msg.indexOf(left) + 1, msg.indexOf(right));
+    }
+
+    private void writeHeader(final ByteArrayOutputStream out, final byte type, final int msgCode) {
+        out.write(BinaryMessageFormat.BINARY_MESSAGE);
+        out.write(type);
+        writeVarInt(out, msgCode);
+    }
+
+    private void writeString(final ByteArrayOutputStream out, final String value) {
+        final byte[] bytes = value.getBytes(MESSAGE_CHARSET);
+
+        writeVarInt(out, bytes.length);
+        out.write(bytes, 0, bytes.length);
+    }
+
+    private void writeSignedVarInt(final ByteArrayOutputStream out, final int value) {
+        writeVarInt(out, (value << 1) ^ (value >> 31));
+    }
+
+    private void writeVarInt(final ByteArrayOutputStream out, final int value) {
+        int remaining = value;
+
+        while ((remaining & ~0x7F) != 0) {
+            out.write((remaining & 0x7F) | 0x80);
+            remaining >>>= 7;
+        }
+
+        out.write(remaining);
+    }
+
+    private void writeVarLong(final ByteArrayOutputStream out, final long value) {
+        long remaining = value;
+
+        while ((remaining & ~0x7FL) != 0) {
+            out.write((int) ((remaining & 0x7F) | 0x80));
+            remaining >>>= 7;
+        }
+
+        out.write((int) remaining);
+    }
+}
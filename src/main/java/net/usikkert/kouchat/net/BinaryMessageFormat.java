@@ -0,0 +1,78 @@
+
+/***************************************************************************
+ *   Copyright 2006-2018 by Christian Ihle                                 *
+ *   contact@kouchat.net                                                   *
+ *                                                                         *
+ *   This file is part of KouChat.                                         *
+ *                                                                         *
+ *   KouChat is free software; you can redistribute it and/or modify       *
+ *   it under the terms of the GNU Lesser General Public License as        *
+ *   published by the Free Software Foundation, either version 3 of        *
+ *   the License, or (at your option) any later version.                   *
+ *                                                                         *
+ *   KouChat is distributed in the hope that it will be useful,            *
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of        *
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU      *
+ *   Lesser General Public License for more details.                       *
+ *                                                                         *
+ *   You should have received a copy of the GNU Lesser General Public      *
+ *   License along with KouChat.                                           *
+ *   If not, see <http://www.gnu.org/licenses/>.                           *
+ ***************************************************************************/
+
+package net.usikkert.kouchat.net;
+
+/**
+ * Constants for the binary message format.
+ *
+ * <p>A binary message starts with {@link #BINARY_MESSAGE}, followed by a one byte type tag
+ * and the user code of the sender as a var int. The rest of the fields depend on the type.
+ * Numbers are var ints or var longs, with zigzag encoding for numbers that can be negative.
+ * Strings are UTF-8, prefixed with their length in bytes as a var int.</p>
+ *
+ * <p>Text messages always start with the user code, so the first byte is enough to tell the
+ * two formats apart.</p>
+ *
+ * @author Christian Ihle
+ */
+public interface BinaryMessageFormat {
+
+    /** The first byte of every binary message. */
+    byte BINARY_MESSAGE = 0x01;
+
+    /** Fields: color (zigzag), message. */
+    byte MSG = 1;
+
+    /** Fields: away message. */
+    byte AWAY = 2;
+
+    /** No fields. */
+    byte BACK = 3;
+
+    /** No fields. */
+    byte WRITING = 4;
+
+    /** No fields. */
+    byte STOPPEDWRITING = 5;
+
+    /** No fields. */
+    byte GETTOPIC = 6;
+
+    /** Fields: nick, time (var long), topic. */
+    byte TOPIC = 7;
+
+    /** Fields: new nick. */
+    byte NICK = 8;
+
+    /** No fields. */
+    byte IDLE = 9;
+
+    /** Fields: user code of the receiver, port, file hash (zigzag), file name. */
+    byte SENDFILEACCEPT = 10;
+
+    /** Fields: user code of the receiver, file hash (zigzag), file name. */
+    byte SENDFILEABORT = 11;
+
+    /** Fields: user code of the receiver, file size (var long), file hash (zigzag), file name, nick. */
+    byte SENDFILE = 12;
+}
@@ -0,0 +1,184 @@
+
+/***************************************************************************
+ *   Copyright 2006-2018 by Christian Ihle                                 *
+ *   contact@kouchat.net                                                   *
+ *                                                                         *
+ *   This file is part of KouChat.                                         *
+ *                                                                         *
+ *   KouChat is free software; you can redistribute it and/or modify       *
+ *   it under the terms of the GNU Lesser General Public License as        *
+ *   published by the Free Software Foundation, either version 3 of        *
+ *   the License, or (at your option) any later version.                   *
+ *                                                                         *
+ *   KouChat is distributed in the hope that it will be useful,            *
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of        *
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU      *
+ *   Lesser General Public License for more details.                       *
+ *                                                                         *
+ *   You should have received a copy of the GNU Lesser General Public      *
+ *   License along with KouChat.                                           *
+ *   If not, see <http://www.gnu.org/licenses/>.                           *
+ ***************************************************************************/
+
+package net.usikkert.kouchat.net;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+
+import net.usikkert.kouchat.Constants;
+
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Reads the fields of messages in the binary message format described in {@link BinaryMessageFormat}.
+ *
+ * <p>The fields are read from the position of the buffer, and the position is moved past each field.
+ * A {@link BufferUnderflowException} or an {@link IllegalArgumentException} is thrown if the message
+ * is not valid.</p>
+ *
+ * <p>This class is not thread safe. It reuses the same byte array when reading strings.</p>
+ *
+ * @author Christian Ihle
+ */
+public class BinaryMessageReader {
+
+    private static final Charset MESSAGE_CHARSET = Charset.forName(Constants.MESSAGE_CHARSET);
+
+    /** The text message type of each binary message type, by the binary type. */
+    private static final String[] TEXT_TYPES = {
+            null, NetworkMessageType.MSG, NetworkMessageType.AWAY, NetworkMessageType.BACK,
+            NetworkMessageType.WRITING, NetworkMessageType.STOPPEDWRITING, NetworkMessageType.GETTOPIC,
+            NetworkMessageType.TOPIC, NetworkMessageType.NICK, NetworkMessageType.IDLE,
+            NetworkMessageType.SENDFILEACCEPT, NetworkMessageType.SENDFILEABORT, NetworkMessageType.SENDFILE
+    };
+
+    private byte[] stringBytes;
+
+    public BinaryMessageReader() {
+        stringBytes = new byte[Constants.NETWORK_PACKET_SIZE];
+    }
+
+    /**
+     * Gets the text message type with the same meaning as a binary message type.
+     *
+     * @param type The binary message type, like {@link BinaryMessageFormat#MSG}.
+     * @return The text message type, like {@link NetworkMessageType#MSG}, or <code>null</code> if unknown.
+     */
+    @Nullable
+    public static String toTextType(final byte type) {
+        if (type > 0 && type < TEXT_TYPES.length) {
+            return TEXT_TYPES[type];
+        }
+
+        return null;
+    }
+
+    /**
+     * Reads the start of the message, and returns the type tag.
+     *
+     * @param message The message to read from.
+     * @return The type of the message, like {@link BinaryMessageFormat#MSG}.
+     */
+    public byte readType(final ByteBuffer message) {
+        if (message.get() != BinaryMessageFormat.BINARY_MESSAGE) {
+            throw new IllegalArgumentException("Not a binary message");
+        }
+
+        return message.get();
+    }
+
+    /**
+     * Gets the user code of the sender, without moving the position of the buffer.
+     *
+     * @param message The message to read from.
+     * @return The user code from the message.
+     */
+    public int peekUserCode(final ByteBuffer message) {
+        final int position = message.position();
+
+        try {
+            readType(message);
+            return readVarInt(message);
+        }
+
+        finally {
+            message.position(position);
+        }
+    }
+
+    /**
+     * Reads a var int.
+     *
+     * @param message The message to read from.
+     * @return The number.
+     */
+    public int readVarInt(final ByteBuffer message) {
+        int value = 0;
+
+        for (int shift = 0; shift < 32; shift += 7) {
+            final byte next = message.get();
+            value |= (next & 0x7F) << shift;
+
+            if ((next & 0x80) == 0) {
+                return value;
+            }
+        }
+
+        throw new IllegalArgumentException("Var int is too long");
+    }
+
+    /**
+     * Reads a zigzag encoded var int.
+     *
+     * @param message The message to read from.
+     * @return The number.
+     */
+    public int readSignedVarInt(final ByteBuffer message) {
+        final int value = readVarInt(message);
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    /**
+     * Reads a var long.
+     *
+     * @param message The message to read from.
+     * @return The number.
+     */
+    public long readVarLong(final ByteBuffer message) {
+        long value = 0;
+
+        for (int shift = 0; shift < 64; shift += 7) {
+            final byte next = message.get();
+            value |= (long) (next & 0x7F) << shift;
+
+            if ((next & 0x80) == 0) {
+                return value;
+            }
+        }
+
+        throw new IllegalArgumentException("Var long is too long");
+    }
+
+    /**
+     * Reads a length prefixed UTF-8 string.
+     *
+     * @param message The message to read from.
+     * @return The string.
+     */
+    public String readString(final ByteBuffer message) {
+        final int length = readVarInt(message);
+
+        if (length < 0 || length > message.remaining()) {
+            throw new IllegalArgumentException("Invalid string length: " + length);
+        }
+
+        if (length > stringBytes.length) {
+            stringBytes = new byte[length];
+        }
+
+        message.get(stringBytes, 0, length);
+
+        return new String(stringBytes, 0, length, MESSAGE_CHARSET);
+    }
+}
@@ -0,0 +1,84 @@
+
+/***************************************************************************
+ *   Copyright 2006-2018 by Christian Ihle                                 *
+ *   contact@kouchat.net                                                   *
+ *                                                                         *
+ *   This file is part of KouChat.                                         *
+ *                                                                         *
+ *   KouChat is free software; you can redistribute it and/or modify       *
+ *   it under the terms of the GNU Lesser General Public License as        *
+ *   published by the Free Software Foundation, either version 3 of        *
+ *   the License, or (at your option) any later version.                   *
+ *                                                                         *
+ *   KouChat is distributed in the hope that it will be useful,            *
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of        *
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU      *
+ *   Lesser General Public License for more details.                       *
+ *                                                                         *
+ *   You should have received a copy of the GNU Lesser General Public      *
+ *   License along with KouChat.                                           *
+ *   If not, see <http://www.gnu.org/licenses/>.                           *
+ ***************************************************************************/
+
+package net.usikkert.kouchat.net;
+
+/**
+ * The color field of the chat messages, which can have the time the message was sent after the color.
+ *
+ * <p>The field looks like <code>[-15987646]</code> without a send timestamp, and like
+ * <code>[-15987646;1356994800000]</code> with one. The send timestamp is only understood by clients
+ * supporting {@link NetworkCapabilities#LATENCY_TIMESTAMPS}, and makes the message too complex
+ * for {@link BinaryMessageEncoder}, so timestamped messages are always sent as text.</p>
+ *
+ * @author Christian Ihle
+ */
+final class ColorField {
+
+    /** Separates the color from the send timestamp. */
+    private static final char SEPARATOR = ';';
+
+    private ColorField() {
+        // Only static methods
+    }
+
+    /**
+     * Creates the color field of a chat message.
+     *
+     * @param color The color of the message.
+     * @param sendTime The time the message is sent, in milliseconds, or -1 for no send timestamp.
+     * @return The color field, with brackets.
+     */
+    static String create(final int color, final long sendTime) {
+        if (sendTime < 0) {
+            return "[" + color + "]";
+        }
+
+        return "[" + color + SEPARATOR + sendTime + "]";
+    }
+
+    /**
+     * Reads the color from the contents of a color field.
+     *
+     * @param field The contents of the field, without brackets.
+     * @return The color.
+     * @throws NumberFormatException If the color is not a number.
+     */
+    static int readColor(final String field) {
+        final int separator = field.indexOf(SEPARATOR);
+
+        return Integer.parseInt(separator == -1 ? field : field.substring(0, separator));
+    }
+
+    /**
+     * Reads the send timestamp from the contents of a color field.
+     *
+     * @param field The contents of the field, without brackets.
+     * @return The time the message was sent, in milliseconds, or -1 if the field has no send timestamp.
+     * @throws NumberFormatException If the send timestamp is not a number.
+     */
+    static long readSendTime(final String field) {
+        final int separator = field.indexOf(SEPARATOR);
+
+        return separator == -1 ? -1 : Long.parseLong(field.substring(separator + 1));
+    }
+}
@@ -0,0 +1,156 @@
+
+/***************************************************************************
+ *   Copyright 2006-2018 by Christian Ihle                                 *
+ *   contact@kouchat.net                                                   *
+ *                                                                         *
+ *   This file is part of KouChat.                                         *
+ *                                                                         *
+ *   KouChat is free software; you can redistribute it and/or modify       *
+ *   it under the terms of the GNU Lesser General Public License as        *
+ *   published by the Free Software Foundation, either version 3 of        *
+ *   the License, or (at your option) any later version.                   *
+ *                                                                         *
+ *   KouChat is distributed in the hope that it will be useful,            *
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of        *
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU      *
+ *   Lesser General Public License for more details.                       *
+ *                                                                         *
+ *   You should have received a copy of the GNU Lesser General Public      *
+ *   License along with KouChat.                                           *
+ *   If not, see <http://www.gnu.org/licenses/>.                           *
+ ***************************************************************************/
+
+package net.usikkert.kouchat.net;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Counters for the messages compressed and decompressed by {@link MessageCompressor}.
+ *
+ * <p>This class is thread safe.</p>
+ *
+ * @author Christian Ihle
+ */
+public class CompressionStatistics {
+
+    private final AtomicLong compressedMessages = new AtomicLong();
+    private final AtomicLong skippedMessages = new AtomicLong();
+    private final AtomicLong bytesBeforeCompression = new AtomicLong();
+    private final AtomicLong bytesAfterCompression = new AtomicLong();
+    private final AtomicLong compressionTime = new AtomicLong();
+    private final AtomicLong decompressedMessages = new AtomicLong();
+    private final AtomicLong decompressionTime = new AtomicLong();
+
+    /**
+     * Records a message that was compressed.
+     *
+     * @param originalSize The size of the message before compression, in bytes.
+     * @param compressedSize The size of the message after compression, in bytes.
+     * @param cpuTime The cpu time spent compressing, in nanoseconds.
+     */
+    public void recordCompression(final int originalSize, final int compressedSize, final long cpuTime) {
+        compressedMessages.incrementAndGet();
+        bytesBeforeCompression.addAndGet(originalSize);
+        bytesAfterCompression.addAndGet(compressedSize);
+        compressionTime.addAndGet(cpuTime);
+    }
+
+    /**
+     * Records a message that was sent uncompressed, because compression did not make it smaller.
+     *
+     * @param cpuTime The cpu time spent trying to compress, in nanoseconds.
+     */
+    public void recordSkippedCompression(final long cpuTime) {
+        skippedMessages.incrementAndGet();
+        compressionTime.addAndGet(cpuTime);
+    }
+
+    /**
+     * Records a message that was decompressed.
+     *
+     * @param cpuTime The cpu time spent decompressing, in nanoseconds.
+     */
+    public void recordDecompression(final long cpuTime) {
+        decompressedMessages.incrementAndGet();
+        decompressionTime.addAndGet(cpuTime);
+    }
+
+    /**
+     * Gets the number of messages sent compressed.
+     *
+     * @return The number of compressed messages.
+     */
+    public long getCompressedMessages() {
+        return compressedMessages.get();
+    }
+
+    /**
+     * Gets the number of messages that were sent uncompressed, because compression did not make them smaller.
+     *
+     * @return The number of skipped messages.
+     */
+    public long getSkippedMessages() {
+        return skippedMessages.get();
+    }
+
+    /**
+     * Gets the total size of the compressed messages before compression.
+     *
+     * @return The number of bytes.
+     */
+    public long getBytesBeforeCompression() {
+        return bytesBeforeCompression.get();
+    }
+
+    /**
+     * Gets the total size of the compressed messages after compression.
+     *
+     * @return The number of bytes.
+     */
+    public long getBytesAfterCompression() {
+        return bytesAfterCompression.get();
+    }
+
+    /**
+     * Gets the size of the compressed messages compared to their original size.
+     *
+     * @return The compressed size divided by the original size, or 1 if nothing has been compressed.
+     */
+    public double getCompressionRatio() {
+        final long before = bytesBeforeCompression.get();
+
+        if (before == 0) {
+            return 1;
+        }
+
+        return (double) bytesAfterCompression.get() / before;
+    }
+
+    /**
+     * Gets the cpu time spent compressing messages, including the skipped messages.
+     *
+     * @return The cpu time in milliseconds.
+     */
+    public long getCompressionTimeMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(compressionTime.get());
+    }
+
+    /**
+     * Gets the number of messages received compressed.
+     *
+     * @return The number of decompressed messages.
+     */
+    public long getDecompressedMessages() {
+        return decompressedMessages.get();
+    }
+
+    /**
+     * Gets the cpu time spent decompressing messages.
+     *
+     * @return The cpu time in milliseconds.
+     */
+    public long getDecompressionTimeMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(decompressionTime.get());
+    }
+}
@@ -0,0 +1,133 @@
+
+/***************************************************************************
+ *   Copyright 2006-2018 by Christian Ihle                                 *
+ *   contact@kouchat.net                                                   *
+ *                                                                         *
+ *   This file is part of KouChat.                                         *
+ *                                                                         *
+ *   KouChat is free software; you can redistribute it and/or modify       *
+ *   it under the terms of the GNU Lesser General Public License as        *
+ *   published by the Free Software Foundation, either version 3 of        *
+ *   the License, or (at your option) any later version.                   *
+ *                                                                         *
+ *   KouChat is distributed in the hope that it will be useful,            *
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of        *
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU      *
+ *   Lesser General Public License for more details.                       *
+ *                                                                         *
+ *   You should have received a copy of the GNU Lesser General Public      *
+ *   License along with KouChat.                                           *
+ *   If not, see <http://www.gnu.org/licenses/>.                           *
+ ***************************************************************************/
+
+package net.usikkert.kouchat.net;
+
+import java.net.DatagramPacket;
+import java.net.InetAddress;
+import java.nio.ByteBuffer;
+
+import net.usikkert.kouchat.Constants;
+
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * A reusable receive buffer for udp packets.
+ *
+ * <p>Holds a single packet, the byte array it receives into, and a {@link MessageDecoder}
+ * for turning the received bytes into a message. All of it is reused between packets,
+ * so receiving a packet does not allocate anything but the decoded message itself.</p>
+ *
+ * <p>This class is not thread safe. Each receiver thread must have its own buffer.</p>
+ *
+ * @author Christian Ihle
+ */
+public class DatagramBuffer {
+
+    /** The byte array the packet receives into. */
+    private final byte[] data;
+
+    /** The packet to receive into. */
+    private final DatagramPacket packet;
+
+    /** A view of the byte array, used as input to the decoder. */
+    private final ByteBuffer byteBuffer;
+
+    /** Decoder for the received bytes. */
+    private final MessageDecoder decoder;
+
+    /** The address of the last packet with a different sender than the one before it. */
+    @Nullable
+    private InetAddress lastAddress;
+
+    /** The ip address of {@link #lastAddress} as a string. */
+    @Nullable
+    private String lastIPAddress;
+
+    /**
+     * Default constructor.
+     *
+     * <p>Creates a buffer with room for packets of {@link Constants#NETWORK_PACKET_SIZE} bytes.</p>
+     */
+    public DatagramBuffer() {
+        this(Constants.NETWORK_PACKET_SIZE);
+    }
+
+    /**
+     * Alternative constructor.
+     *
+     * @param size The max number of bytes in a packet.
+     */
+    public DatagramBuffer(final int size) {
+        data = new byte[size];
+        packet = new DatagramPacket(data, size);
+        byteBuffer = ByteBuffer.wrap(data);
+        decoder = new MessageDecoder(size);
+    }
+
+    /**
+     * Gets the packet, ready to receive a new message.
+     *
+     * <p>The length of the packet is reset to the full size of the buffer,
+     * since receiving a packet shrinks it to the length of the received data.</p>
+     *
+     * @return The packet to receive into.
+     */
+    public DatagramPacket getPacket() {
+        packet.setData(data, 0, data.length);
+        return packet;
+    }
+
+    /**
+     * Decodes the last packet into a message.
+     *
+     * <p>Only the received bytes are decoded, and leading and trailing whitespace
+     * is removed like {@link String#trim()} does.</p>
+     *
+     * @return The decoded message.
+     * @see Constants#MESSAGE_CHARSET
+     */
+    public String getMessage() {
+        byteBuffer.clear();
+        byteBuffer.limit(packet.getLength());
+
+        return decoder.decode(byteBuffer);
+    }
+
+    /**
+     * Gets the ip address of the sender of the last packet.
+     *
+     * <p>The string is reused as long as the packets keep coming from the same sender.</p>
+     *
+     * @return The ip address of the sender.
+     */
+    public String getIPAddress() {
+        final InetAddress address = packet.getAddress();
+
+        if (!address.equals(lastAddress)) {
+            lastAddress = address;
+            lastIPAddress = address.getHostAddress();
+        }
+
+        return lastIPAddress;
+    }
+}
@@ -36,6 +36,8 @@ import net.usikkert.kouchat.misc.WaitingList;
 import net.usikkert.kouchat.settings.Settings;
 import net.usikkert.kouchat.ui.UserInterface;
 import net.usikkert.kouchat.util.DateTools;
+import net.usikkert.kouchat.util.HotPathProfiler;
+import net.usikkert.kouchat.util.HotPathProfiler.HotPath;
 import net.usikkert.kouchat.util.Logger;
 import net.usikkert.kouchat.util.Sleeper;
 import net.usikkert.kouchat.util.Tools;
@@ -98,27 +100,35 @@ public class DefaultMessageResponder implements MessageResponder {
      */
     @Override
     public void messageArrived(final int userCode, final String msg, final int color) {
-        if (!controller.isNewUser(userCode)) {
-            final User user = controller.getUser(userCode);
+        final long start = HotPathProfiler.start();
+
+        try {
+            if (!controller.isNewUser(userCode)) {
+                final User user = controller.getUser(userCode);
 
-            if (!user.isAway()) {
-                msgController.showUserMessage(user.getNick(), msg, color);
+                if (!user.isAway()) {
+                    msgController.showUserMessage(user.getNick(), msg, color);
 
-                // Visible but not in front
-                if (ui.isVisible() && !ui.isFocused()) {
-                    me.setNewMsg(true);
+                    // Visible but not in front
+                    if (ui.isVisible() && !ui.isFocused()) {
+                        me.setNewMsg(true);
+                    }
+
+                    ui.notifyMessageArrived(user, msg);
                 }
 
-                ui.notifyMessageArrived(user, msg);
+                else {
+                    LOG.severe("User is away - ignoring message. user=%s, userCode=%s, message=%s", user, userCode, msg);
+                }
             }
 
             else {
-                LOG.severe("User is away - ignoring message. user=%s, userCode=%s, message=%s", user, userCode, msg);
+                LOG.severe("User is unknown - ignoring message. userCode=%s, message=%s", userCode, msg);
             }
         }
 
-        else {
-            LOG.severe("User is unknown - ignoring message. userCode=%s, message=%s", userCode, msg);
+        finally {
+            HotPathProfiler.end(HotPath.MESSAGE_RESPONSE, start);
         }
     }
 
@@ -317,7 +327,15 @@ public class DefaultMessageResponder implements MessageResponder {
      */
     @Override
     public void writingChanged(final int userCode, final boolean writing) {
-        controller.changeWriting(userCode, writing);
+        final long start = HotPathProfiler.start();
+
+        try {
+            controller.changeWriting(userCode, writing);
+        }
+
+        finally {
+            HotPathProfiler.end(HotPath.MESSAGE_RESPONSE, start);
+        }
     }
 
     /**
@@ -387,18 +405,26 @@ public class DefaultMessageResponder implements MessageResponder {
      */
     @Override
     public void userIdle(final int userCode, final String ipAddress) {
-        final User user = controller.getUser(userCode);
+        final long start = HotPathProfiler.start();
 
-        if (user == null) {
-            LOG.severe("Could not find user: %s", userCode);
-            return;
-        }
+        try {
+            final User user = controller.getUser(userCode);
+
+            if (user == null) {
+                LOG.severe("Could not find user: %s", userCode);
+                return;
+            }
 
-        user.setLastIdle(System.currentTimeMillis());
+            user.setLastIdle(System.currentTimeMillis());
+
+            if (!user.getIpAddress().equals(ipAddress)) {
+                msgController.showSystemMessage(user.getNick() + " changed ip from " + user.getIpAddress() + " to " + ipAddress);
+                user.setIpAddress(ipAddress);
+            }
+        }
 
-        if (!user.getIpAddress().equals(ipAddress)) {
-            msgController.showSystemMessage(user.getNick() + " changed ip from " + user.getIpAddress() + " to " + ipAddress);
-            user.setIpAddress(ipAddress);
+        finally {
+            HotPathProfiler.end(HotPath.MESSAGE_RESPONSE, start);
         }
     }
 
@@ -608,10 +634,12 @@ public class DefaultMessageResponder implements MessageResponder {
      * @param operatingSystem The user's operating system.
      * @param privateChatPort The port to use for sending private chat messages to this user.
      * @param tcpChatPort The port to use for sending chat messages to this user using tcp.
+     * @param capabilities The network features supported by the user's client, from {@link NetworkCapabilities}.
      */
     @Override
     public void clientInfo(final int userCode, final String client, final long timeSinceLogon,
-                           final String operatingSystem, final int privateChatPort, final int tcpChatPort) {
+                           final String operatingSystem, final int privateChatPort, final int tcpChatPort,
+                           final int capabilities) {
         final User user = controller.getUser(userCode);
 
         if (user != null) {
@@ -620,6 +648,7 @@ public class DefaultMessageResponder implements MessageResponder {
             user.setOperatingSystem(operatingSystem);
             user.setPrivateChatPort(privateChatPort);
             user.setTcpChatPort(tcpChatPort);
+            controller.changeCapabilities(userCode, capabilities);
         }
 
         else {
@@ -35,6 +35,8 @@ import net.usikkert.kouchat.Constants;
 import net.usikkert.kouchat.event.FileTransferListener;
 import net.usikkert.kouchat.misc.User;
 import net.usikkert.kouchat.util.ByteCounter;
+import net.usikkert.kouchat.util.HotPathProfiler;
+import net.usikkert.kouchat.util.HotPathProfiler.HotPath;
 
 import org.jetbrains.annotations.Nullable;
 
@@ -187,9 +189,11 @@ public class FileReceiver implements FileTransfer {
                 int tmpPercent = 0;
                 int transCounter = 0;
                 bCounter.prepare();
+                long chunkStart = HotPathProfiler.start();
 
                 while (!cancel && (tmpTransferred = is.read(b)) != -1) {
                     fos.write(b, 0, tmpTransferred);
+                    HotPathProfiler.end(HotPath.FILE_RECEIVE_CHUNK, chunkStart);
                     transferred += tmpTransferred;
                     percent = (int) ((transferred * 100) / size);
                     bCounter.addBytes(tmpTransferred);
@@ -200,6 +204,8 @@ public class FileReceiver implements FileTransfer {
                         tmpPercent = percent;
                         listener.transferUpdate();
                     }
+
+                    chunkStart = HotPathProfiler.start();
                 }
 
                 if (!cancel && transferred == size) {
@@ -34,6 +34,8 @@ import java.util.logging.Logger;
 import net.usikkert.kouchat.event.FileTransferListener;
 import net.usikkert.kouchat.misc.User;
 import net.usikkert.kouchat.util.ByteCounter;
+import net.usikkert.kouchat.util.HotPathProfiler;
+import net.usikkert.kouchat.util.HotPathProfiler.HotPath;
 
 import org.jetbrains.annotations.Nullable;
 
@@ -161,9 +163,11 @@ public class FileSender implements FileTransfer {
                     int tmpPercent = 0;
                     int transCounter = 0;
                     bCounter.prepare();
+                    long chunkStart = HotPathProfiler.start();
 
                     while (!cancel && (tmpTransferred = is.read(b)) != -1) {
                         os.write(b, 0, tmpTransferred);
+                        HotPathProfiler.end(HotPath.FILE_SEND_CHUNK, chunkStart);
                         transferred += tmpTransferred;
                         percent = (int) ((transferred * 100) / file.length());
                         bCounter.addBytes(tmpTransferred);
@@ -174,6 +178,8 @@ public class FileSender implements FileTransfer {
                             tmpPercent = percent;
                             listener.transferUpdate();
                         }
+
+                        chunkStart = HotPathProfiler.start();
                     }
 
                     if (!cancel && transferred == file.length()) {
@@ -0,0 +1,175 @@
+
+/***************************************************************************
+ *   Copyright 2006-2018 by Christian Ihle                                 *
+ *   contact@kouchat.net                                                   *
+ *                                                                         *
+ *   This file is part of KouChat.                                         *
+ *                                                                         *
+ *   KouChat is free software; you can redistribute it and/or modify       *
+ *   it under the terms of the GNU Lesser General Public License as        *
+ *   published by the Free Software Foundation, either version 3 of        *
+ *   the License, or (at your option) any later version.                   *
+ *                                                                         *
+ *   KouChat is distributed in the hope that it will be useful,            *
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of        *
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU      *
+ *   Lesser General Public License for more details.                       *
+ *                                                                         *
+ *   You should have received a copy of the GNU Lesser General Public      *
+ *   License along with KouChat.                                           *
+ *   If not, see <http://www.gnu.org/licenses/>.                           *
+ ***************************************************************************/
+
+package net.usikkert.kouchat.net;
+
+import net.usikkert.kouchat.net.transport.TransportChannel;
+import net.usikkert.kouchat.util.LatencyHistogram;
+
+/**
+ * Latency histograms for the chat messages received from other users.
+ *
+ * <p>There are two kinds of latencies, both in microseconds:</p>
+ * <ul>
+ *   <li>End to end: from the sender sent the message until it was shown in the chat. Only for messages with a
+ *       send timestamp, as described in {@link NetworkCapabilities#LATENCY_TIMESTAMPS}. One histogram for each
+ *       {@link TransportChannel} the messages arrive on. The clocks of the computers must be in sync for these
+ *       to be accurate.</li>
+ *   <li>Local stages: the time spent in each {@link Stage} of the receiving pipeline, measured with
+ *       a {@link MessageTrace}, and the total time from the message was received until it was shown.</li>
+ * </ul>
+ *
+ * <p>This class is thread safe.</p>
+ *
+ * @author Christian Ihle
+ */
+public class LatencyStatistics {
+
+    /**
+     * The stages of the receiving pipeline, in the order a message goes through them.
+     */
+    public enum Stage {
+
+        /** From the message was received until the duplicate check let it through. */
+        DEDUPLICATE("Deduplicate"),
+
+        /** From the duplicate check until the message was parsed. */
+        PARSE("Parse"),
+
+        /** From the message was parsed until the responder gave it to the chat. */
+        RESPOND("Respond"),
+
+        /** From the message was given to the chat until it was shown, including waiting for the user interface. */
+        APPEND("Append");
+
+        private final String name;
+
+        Stage(final String name) {
+            this.name = name;
+        }
+
+        /**
+         * Gets the name of the stage, for showing to the user.
+         *
+         * @return The name.
+         */
+        public String getName() {
+            return name;
+        }
+    }
+
+    private final LatencyHistogram[] endToEndLatencies;
+    private final LatencyHistogram[] stageLatencies;
+    private final LatencyHistogram localLatency;
+
+    /**
+     * Constructor.
+     */
+    public LatencyStatistics() {
+        endToEndLatencies = createHistograms(TransportChannel.values().length);
+        stageLatencies = createHistograms(Stage.values().length);
+        localLatency = new LatencyHistogram();
+    }
+
+    /**
+     * Records the time from a message was sent until it was shown in the chat.
+     *
+     * @param channel How the message arrived.
+     * @param latency The latency, in microseconds.
+     */
+    public void recordEndToEndLatency(final TransportChannel channel, final long latency) {
+        endToEndLatencies[channel.ordinal()].record(latency);
+    }
+
+    /**
+     * Records the time a message spent in a stage of the receiving pipeline.
+     *
+     * @param stage The stage.
+     * @param latency The time spent, in microseconds.
+     */
+    public void recordStageLatency(final Stage stage, final long latency) {
+        stageLatencies[stage.ordinal()].record(latency);
+    }
+
+    /**
+     * Records the time from a message was received until it was shown in the chat.
+     *
+     * @param latency The latency, in microseconds.
+     */
+    public void recordLocalLatency(final long latency) {
+        localLatency.record(latency);
+    }
+
+    /**
+     * Gets the end to end latencies of the messages that arrived on the channel.
+     *
+     * @param channel The channel.
+     * @return The latencies, in microseconds.
+     */
+    public LatencyHistogram getEndToEndLatency(final TransportChannel channel) {
+        return endToEndLatencies[channel.ordinal()];
+    }
+
+    /**
+     * Gets the time the messages spent in a stage of the receiving pipeline.
+     *
+     * @param stage The stage.
+     * @return The latencies, in microseconds.
+     */
+    public LatencyHistogram getStageLatency(final Stage stage) {
+        return stageLatencies[stage.ordinal()];
+    }
+
+    /**
+     * Gets the time from the messages were received until they were shown in the chat.
+     *
+     * @return The latencies, in microseconds.
+     */
+    public LatencyHistogram getLocalLatency() {
+        return localLatency;
+    }
+
+    /**
+     * Removes all the recorded latencies.
+     */
+    public void reset() {
+        for (final LatencyHistogram histogram : endToEndLatencies) {
+            histogram.reset();
+        }
+
+        for (final LatencyHistogram histogram : stageLatencies) {
+            histogram.reset();
+        }
+
+        localLatency.reset();
+    }
+
+    private LatencyHistogram[] createHistograms(final int size) {
+        final LatencyHistogram[] histograms = new LatencyHistogram[size];
+
+        for (int i = 0; i < size; i++) {
+            histograms[i] = new LatencyHistogram();
+        }
+
+        return histograms;
+    }
+}
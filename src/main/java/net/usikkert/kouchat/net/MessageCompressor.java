@@ -0,0 +1,201 @@
+
+/***************************************************************************
+ *   Copyright 2006-2018 by Christian Ihle                                 *
+ *   contact@kouchat.net                                                   *
+ *                                                                         *
+ *   This file is part of KouChat.                                         *
+ *                                                                         *
+ *   KouChat is free software; you can redistribute it and/or modify       *
+ *   it under the terms of the GNU Lesser General Public License as        *
+ *   published by the Free Software Foundation, either version 3 of        *
+ *   the License, or (at your option) any later version.                   *
+ *                                                                         *
+ *   KouChat is distributed in the hope that it will be useful,            *
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of        *
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU      *
+ *   Lesser General Public License for more details.                       *
+ *                                                                         *
+ *   You should have received a copy of the GNU Lesser General Public      *
+ *   License along with KouChat.                                           *
+ *   If not, see <http://www.gnu.org/licenses/>.                           *
+ ***************************************************************************/
+
+package net.usikkert.kouchat.net;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+import net.usikkert.kouchat.Constants;
+import net.usikkert.kouchat.util.Logger;
+import net.usikkert.kouchat.util.Validate;
+
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Compresses and decompresses large messages with deflate.
+ *
+ * <p>A compressed message starts with {@link #COMPRESSED}, followed by the deflated bytes of the
+ * text or binary message. The deflater is primed with a preset dictionary of strings that are common
+ * in the network messages, so even short messages get smaller. Only messages of at least
+ * {@link #COMPRESSION_THRESHOLD} bytes are compressed, and only if it makes them smaller.
+ * Only clients that support {@link NetworkCapabilities#COMPRESSED_MESSAGES} understand
+ * compressed messages.</p>
+ *
+ * <p>The dictionary is part of the network protocol. Changing it breaks compatibility
+ * with other clients.</p>
+ *
+ * <p>This class is thread safe.</p>
+ *
+ * @author Christian Ihle
+ */
+public class MessageCompressor {
+
+    private static final Logger LOG = Logger.getLogger(MessageCompressor.class);
+
+    /** The first byte of every compressed message. */
+    public static final byte COMPRESSED = 0x04;
+
+    /** The smallest message in bytes to compress. */
+    public static final int COMPRESSION_THRESHOLD = 128;
+
+    /** The largest message in bytes to decompress. Larger messages are thrown away. */
+    public static final int MAX_MESSAGE_SIZE = MessageFragmenter.MAX_MESSAGE_SIZE;
+
+    /** Common strings in messages, with the most common at the end where they are cheapest to refer to. */
+    private static final byte[] DICTIONARY = (
+            "SwingConsoleAndroid{Windows}{Linux}{Mac OS X}" +
+            "!LOGON#!LOGOFF#!EXPOSING#!CLIENT#(KouChat v1.5.0 )<40656>/40657" +
+            "!SENDFILEACCEPT#!SENDFILEABORT#!SENDFILE#!GETTOPIC#!NICK#!IDLE#!BACK#" +
+            "!WRITING#!STOPPEDWRITING#!AWAY#!TOPIC#!MSG#" +
+            " the and you that this have with what for not are but " +
+            "https://www.http://.com/ :) :( ;) :D :p" +
+            "]}[-").getBytes(Charset.forName(Constants.MESSAGE_CHARSET));
+
+    private final CompressionStatistics statistics;
+    private final Deflater deflater;
+    private final Inflater inflater;
+    private final ThreadMXBean threadMXBean;
+    private final boolean cpuTimeSupported;
+
+    /** Buffer to decompress into, with one extra byte to find out if a message is too large. */
+    @Nullable
+    private byte[] decompressBuffer;
+
+    /**
+     * Constructor.
+     *
+     * @param statistics The statistics to update when compressing and decompressing.
+     */
+    public MessageCompressor(final CompressionStatistics statistics) {
+        Validate.notNull(statistics, "Compression statistics can not be null");
+
+        this.statistics = statistics;
+        this.deflater = new Deflater(Deflater.BEST_COMPRESSION, true);
+        this.inflater = new Inflater(true);
+        this.threadMXBean = ManagementFactory.getThreadMXBean();
+        this.cpuTimeSupported = threadMXBean.isCurrentThreadCpuTimeSupported() && threadMXBean.isThreadCpuTimeEnabled();
+    }
+
+    /**
+     * Compresses a message, if it's large enough and gets smaller by compression.
+     *
+     * @param message The encoded text or binary message to compress.
+     * @return The compressed message, or <code>null</code> if the message should be sent uncompressed.
+     */
+    @Nullable
+    public synchronized byte[] compress(final byte[] message) {
+        Validate.notNull(message, "Message can not be null");
+
+        if (message.length < COMPRESSION_THRESHOLD) {
+            return null;
+        }
+
+        final long start = getCpuTime();
+
+        deflater.reset();
+        deflater.setDictionary(DICTIONARY);
+        deflater.setInput(message);
+        deflater.finish();
+
+        // Only interesting if smaller than the message, so it's fine if it does not fit
+        final byte[] compressed = new byte[message.length];
+        compressed[0] = COMPRESSED;
+        final int length = 1 + deflater.deflate(compressed, 1, compressed.length - 1);
+        final boolean smaller = deflater.finished() && length < message.length;
+
+        final long cpuTime = getCpuTime() - start;
+
+        if (!smaller) {
+            statistics.recordSkippedCompression(cpuTime);
+            return null;
+        }
+
+        statistics.recordCompression(message.length, length, cpuTime);
+
+        return Arrays.copyOf(compressed, length);
+    }
+
+    /**
+     * Decompresses a message compressed by {@link #compress(byte[])}.
+     *
+     * @param message The compressed message, from the position to the limit of the buffer.
+     *                The position of the buffer is moved to the limit.
+     * @return The decompressed message, or <code>null</code> if the message was invalid
+     *         or larger than {@link #MAX_MESSAGE_SIZE}.
+     */
+    @Nullable
+    public synchronized byte[] decompress(final ByteBuffer message) {
+        Validate.notNull(message, "Message can not be null");
+
+        if (!message.hasRemaining() || message.get() != COMPRESSED) {
+            message.position(message.limit());
+            return null;
+        }
+
+        final long start = getCpuTime();
+        final byte[] input = new byte[message.remaining()];
+        message.get(input);
+
+        inflater.reset();
+        inflater.setInput(input);
+        inflater.setDictionary(DICTIONARY);
+
+        if (decompressBuffer == null) {
+            decompressBuffer = new byte[MAX_MESSAGE_SIZE + 1];
+        }
+
+        final byte[] output = decompressBuffer;
+
+        try {
+            final int length = inflater.inflate(output);
+
+            if (!inflater.finished() || length > MAX_MESSAGE_SIZE) {
+                LOG.fine("Could not decompress message: too large or incomplete");
+                return null;
+            }
+
+            statistics.recordDecompression(getCpuTime() - start);
+
+            return Arrays.copyOf(output, length);
+        }
+
+        catch (final DataFormatException e) {
+            LOG.fine("Could not decompress message: %s", e.toString());
+            return null;
+        }
+    }
+
+    private long getCpuTime() {
+        if (cpuTimeSupported) {
+            return threadMXBean.getCurrentThreadCpuTime();
+        }
+
+        return System.nanoTime();
+    }
+}
@@ -0,0 +1,103 @@
+
+/***************************************************************************
+ *   Copyright 2006-2018 by Christian Ihle                                 *
+ *   contact@kouchat.net                                                   *
+ *                                                                         *
+ *   This file is part of KouChat.                                         *
+ *                                                                         *
+ *   KouChat is free software; you can redistribute it and/or modify       *
+ *   it under the terms of the GNU Lesser General Public License as        *
+ *   published by the Free Software Foundation, either version 3 of        *
+ *   the License, or (at your option) any later version.                   *
+ *                                                                         *
+ *   KouChat is distributed in the hope that it will be useful,            *
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of        *
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU      *
+ *   Lesser General Public License for more details.                       *
+ *                                                                         *
+ *   You should have received a copy of the GNU Lesser General Public      *
+ *   License along with KouChat.                                           *
+ *   If not, see <http://www.gnu.org/licenses/>.                           *
+ ***************************************************************************/
+
+package net.usikkert.kouchat.net;
+
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+
+import net.usikkert.kouchat.Constants;
+
+/**
+ * Decodes the bytes of a network message into a string, reusing the
+ * decoder and character buffer between messages.
+ *
+ * <p>This class is not thread safe. Each receiver thread must have its own decoder.</p>
+ *
+ * @author Christian Ihle
+ */
+public class MessageDecoder {
+
+    /** The decoded characters of the last message. */
+    private final CharBuffer charBuffer;
+
+    /** Decoder for the message charset. */
+    private final CharsetDecoder decoder;
+
+    /**
+     * Default constructor.
+     *
+     * <p>Creates a decoder for messages of up to {@link Constants#NETWORK_PACKET_SIZE} bytes.</p>
+     */
+    public MessageDecoder() {
+        this(Constants.NETWORK_PACKET_SIZE);
+    }
+
+    /**
+     * Alternative constructor.
+     *
+     * @param maxBytes The max number of bytes in a message.
+     */
+    public MessageDecoder(final int maxBytes) {
+        // An utf-8 character is never shorter than one byte, so this is always enough
+        charBuffer = CharBuffer.allocate(maxBytes);
+
+        decoder = Charset.forName(Constants.MESSAGE_CHARSET).newDecoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+    }
+
+    /**
+     * Decodes the remaining bytes in the buffer into a message.
+     *
+     * <p>Leading and trailing whitespace is removed like {@link String#trim()} does.
+     * Bytes beyond the max size of a message are ignored.</p>
+     *
+     * @param bytes The bytes to decode. The position of the buffer is moved past the decoded bytes.
+     * @return The decoded message.
+     * @see Constants#MESSAGE_CHARSET
+     */
+    public String decode(final ByteBuffer bytes) {
+        charBuffer.clear();
+
+        decoder.reset();
+        decoder.decode(bytes, charBuffer, true);
+        decoder.flush(charBuffer);
+
+        final char[] chars = charBuffer.array();
+        int start = 0;
+        int end = charBuffer.position();
+
+        while (start < end && chars[start] <= ' ') {
+            start++;
+        }
+
+        while (end > start && chars[end - 1] <= ' ') {
+            end--;
+        }
+
+        return new String(chars, start, end - start);
+    }
+}
@@ -22,30 +22,61 @@
 
 package net.usikkert.kouchat.net;
 
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
+import net.usikkert.kouchat.event.BinaryReceiverListener;
 import net.usikkert.kouchat.event.ReceiverListener;
 import net.usikkert.kouchat.misc.Controller;
 import net.usikkert.kouchat.misc.User;
 import net.usikkert.kouchat.net.tcp.TCPReceiverListener;
+import net.usikkert.kouchat.net.transport.TransportChannel;
 import net.usikkert.kouchat.util.Logger;
 import net.usikkert.kouchat.util.Validate;
 
 import org.jetbrains.annotations.Nullable;
 
 /**
- * Proxy that listens for messages from both multicast and tcp and forwards from only one source at
- * a time (per user) to avoid duplicates.
+ * Proxy that listens for messages from both multicast and tcp, and forwards each message only once.
+ *
+ * <p>Messages with a sequence number from {@link MessageSequencer} are forwarded the first time they arrive,
+ * from whichever source is fastest, and later copies are dropped. A {@link SequenceWindow} per user code
+ * remembers which numbers have been seen. Messages without a sequence number are forwarded from only one
+ * source per user: tcp if the user is connected with tcp, and multicast if not.</p>
+ *
+ * <p>The sequence numbers of main chat messages are given to the {@link MissingMessageTracker}, to find lost
+ * messages. NACK messages asking for lost messages are given to the NACK listener instead of the chat.</p>
+ *
+ * <p>A {@link MessageTrace} is started for each tcp message, and marked for each forwarded message.</p>
  *
  * @author Christian Ihle
  */
-public class MessageDeduplicator implements ReceiverListener, TCPReceiverListener {
+public class MessageDeduplicator implements ReceiverListener, BinaryReceiverListener, TCPReceiverListener {
 
     private static final Logger LOG = Logger.getLogger(MessageDeduplicator.class);
 
+    /** The type of private messages, which are forwarded to the private chat listener. */
+    private static final String PRIVATE_MESSAGE_TYPE = "!" + NetworkMessageType.PRIVMSG + "#";
+
+    /** The type of NACK messages, which are forwarded to the NACK listener. */
+    private static final String NACK_MESSAGE_TYPE = "!" + NetworkMessageType.NACK + "#";
+
+    /** The number of sequence windows to keep before removing the windows of users that are gone. */
+    private static final int MAX_WINDOWS = 256;
+
+    /** The largest number of digits in a user code. */
+    private static final int MAX_USER_CODE_DIGITS = 9;
+
     private final Controller controller;
-    private final Pattern privateMessagePattern;
+    private final BinaryMessageReader binaryMessageReader;
+    private final MissingMessageTracker missingMessageTracker;
+    private final LatencyStatistics latencyStatistics;
+    private final TrafficStatistics trafficStatistics;
+    private final ConcurrentMap<Integer, SequenceWindow> sequenceWindows;
+    private final ConcurrentMap<Integer, SequenceWindow> privateSequenceWindows;
 
     @Nullable
     private ReceiverListener mainChatListener;
@@ -53,11 +84,26 @@ public class MessageDeduplicator implements ReceiverListener, TCPReceiverListene
     @Nullable
     private ReceiverListener privateChatListener;
 
-    public MessageDeduplicator(final Controller controller) {
+    @Nullable
+    private BinaryReceiverListener mainChatBinaryListener;
+
+    @Nullable
+    private ReceiverListener nackListener;
+
+    public MessageDeduplicator(final Controller controller, final MissingMessageTracker missingMessageTracker,
+                               final LatencyStatistics latencyStatistics, final TrafficStatistics trafficStatistics) {
         Validate.notNull(controller, "Controller can not be null");
+        Validate.notNull(missingMessageTracker, "Missing message tracker can not be null");
+        Validate.notNull(latencyStatistics, "Latency statistics can not be null");
+        Validate.notNull(trafficStatistics, "Traffic statistics can not be null");
 
         this.controller = controller;
-        this.privateMessagePattern = Pattern.compile("^(\\d+)!(PRIVMSG)#.+");
+        this.missingMessageTracker = missingMessageTracker;
+        this.latencyStatistics = latencyStatistics;
+        this.trafficStatistics = trafficStatistics;
+        this.binaryMessageReader = new BinaryMessageReader();
+        this.sequenceWindows = new ConcurrentHashMap<>();
+        this.privateSequenceWindows = new ConcurrentHashMap<>();
     }
 
     public void registerMainChatReceiverListener(final ReceiverListener theListener) {
@@ -68,8 +114,30 @@ public class MessageDeduplicator implements ReceiverListener, TCPReceiverListene
         this.privateChatListener = theListener;
     }
 
+    public void registerMainChatBinaryReceiverListener(final BinaryReceiverListener theListener) {
+        this.mainChatBinaryListener = theListener;
+    }
+
+    public void registerNackReceiverListener(final ReceiverListener theListener) {
+        this.nackListener = theListener;
+    }
+
     @Override
     public void messageArrived(final String message, final String ipAddress) {
+        if (MessageSequencer.isSequenced(message)) {
+            forwardSequencedMessage(message, ipAddress);
+            return;
+        }
+
+        // NACKs are only sent on multicast
+        if (isMessageOfType(message, NACK_MESSAGE_TYPE)) {
+            if (nackListener != null) {
+                nackListener.messageArrived(message, ipAddress);
+            }
+
+            return;
+        }
+
         final User user = parseUserFromMessage(message);
 
         if (user == null || !user.isTcpEnabled()) {
@@ -79,20 +147,159 @@ public class MessageDeduplicator implements ReceiverListener, TCPReceiverListene
 
             forwardMessageToListener(message, ipAddress);
         }
+
+        else {
+            // The same message arrives with tcp
+            trafficStatistics.recordDuplicateMessage();
+        }
+    }
+
+    @Override
+    public void messageArrived(final ByteBuffer message, final String ipAddress) {
+        // Binary messages only arrive on multicast, and are never private messages
+        if (message.hasRemaining() && message.get(message.position()) == MessageSequencer.SEQUENCED_BINARY) {
+            forwardSequencedBinaryMessage(message, ipAddress);
+            return;
+        }
+
+        final User user = parseUserFromBinaryMessage(message);
+
+        if (user == null || !user.isTcpEnabled()) {
+            forwardBinaryMessageToListener(message, ipAddress);
+        }
+
+        else {
+            trafficStatistics.recordDuplicateMessage();
+        }
     }
 
     @Override
     public void messageArrived(final String message, final String ipAddress, final User user) {
-        if (user.isTcpEnabled()) {
-            LOG.fine("TCP message: " + message);
-            forwardMessageToListener(message, ipAddress);
+        MessageTrace.start(latencyStatistics, TransportChannel.TCP);
+
+        try {
+            if (MessageSequencer.isSequenced(message)) {
+                forwardSequencedMessage(message, ipAddress);
+            }
+
+            else if (user.isTcpEnabled()) {
+                LOG.fine("TCP message: " + message);
+                forwardMessageToListener(message, ipAddress);
+            }
+
+            else {
+                // The same message arrives with multicast
+                trafficStatistics.recordDuplicateMessage();
+            }
+        }
+
+        // The trace belongs to the thread, so it must not be left behind for the next message
+        finally {
+            MessageTrace.end();
+        }
+    }
+
+    private void forwardSequencedMessage(final String message, final String ipAddress) {
+        final int sequenceEnd = MessageSequencer.findSequenceEnd(message);
+        final Integer sequenceNumber = sequenceEnd > 0 ? MessageSequencer.readSequenceNumber(message, sequenceEnd) : null;
+
+        if (sequenceNumber == null) {
+            LOG.warning("Failed to parse sequence number from message: %s", message);
+            return;
+        }
+
+        final String plainMessage = message.substring(sequenceEnd + 1);
+        final int userCode = parseUserCode(plainMessage);
+
+        if (userCode < 0) {
+            LOG.warning("Failed to parse user from message: %s", plainMessage);
+            return;
+        }
+
+        final boolean privateMessage = isMessageOfType(plainMessage, PRIVATE_MESSAGE_TYPE);
+        final boolean firstCopy = privateMessage
+                ? getSequenceWindow(privateSequenceWindows, userCode).accept(sequenceNumber)
+                : acceptMainChatMessage(userCode, sequenceNumber);
+
+        if (!firstCopy) {
+            LOG.fine("Duplicate message %s from %s", sequenceNumber, userCode);
+            trafficStatistics.recordDuplicateMessage();
+            return;
+        }
+
+        LOG.fine("Message %s: %s", sequenceNumber, plainMessage);
+        forwardMessageToListener(plainMessage, ipAddress);
+    }
+
+    private void forwardSequencedBinaryMessage(final ByteBuffer message, final String ipAddress) {
+        if (message.remaining() <= MessageSequencer.BINARY_HEADER_SIZE) {
+            LOG.warning("Sequenced binary message from %s was too short", ipAddress);
+            return;
+        }
+
+        message.position(message.position() + 1);
+        final int sequenceNumber = message.getInt();
+        final int userCode = parseUserCodeFromBinaryMessage(message);
+
+        if (userCode < 0) {
+            return;
+        }
+
+        if (!acceptMainChatMessage(userCode, sequenceNumber)) {
+            LOG.fine("Duplicate binary message %s from %s", sequenceNumber, userCode);
+            trafficStatistics.recordDuplicateMessage();
+            return;
+        }
+
+        forwardBinaryMessageToListener(message, ipAddress);
+    }
+
+    /**
+     * Checks if this is the first copy of a main chat message, and looks for lost messages before it.
+     */
+    private boolean acceptMainChatMessage(final int userCode, final int sequenceNumber) {
+        final SequenceWindow sequenceWindow = getSequenceWindow(sequenceWindows, userCode);
+
+        if (!sequenceWindow.accept(sequenceNumber)) {
+            return false;
+        }
+
+        missingMessageTracker.messageArrived(userCode, sequenceNumber, sequenceWindow, System.nanoTime());
+
+        return true;
+    }
+
+    private SequenceWindow getSequenceWindow(final ConcurrentMap<Integer, SequenceWindow> windows, final int userCode) {
+        final SequenceWindow sequenceWindow = windows.get(userCode);
+
+        if (sequenceWindow != null) {
+            return sequenceWindow;
+        }
+
+        if (windows.size() >= MAX_WINDOWS) {
+            removeWindowsOfUsersThatAreGone(windows);
+        }
+
+        final SequenceWindow newSequenceWindow = new SequenceWindow();
+        final SequenceWindow existingSequenceWindow = windows.putIfAbsent(userCode, newSequenceWindow);
+
+        return existingSequenceWindow != null ? existingSequenceWindow : newSequenceWindow;
+    }
+
+    private void removeWindowsOfUsersThatAreGone(final ConcurrentMap<Integer, SequenceWindow> windows) {
+        final Iterator<Integer> userCodes = windows.keySet().iterator();
+
+        while (userCodes.hasNext()) {
+            if (controller.getUser(userCodes.next()) == null) {
+                userCodes.remove();
+            }
         }
     }
 
     private void forwardMessageToListener(final String message, final String ipAddress) {
-        final Matcher privateMessageMatcher = privateMessagePattern.matcher(message);
+        MessageTrace.markDeduplicated();
 
-        if (privateMessageMatcher.matches()) {
+        if (isMessageOfType(message, PRIVATE_MESSAGE_TYPE)) {
             if (privateChatListener != null) {
                 privateChatListener.messageArrived(message, ipAddress);
             }
@@ -105,16 +312,101 @@ public class MessageDeduplicator implements ReceiverListener, TCPReceiverListene
         }
     }
 
+    private void forwardBinaryMessageToListener(final ByteBuffer message, final String ipAddress) {
+        MessageTrace.markDeduplicated();
+
+        if (mainChatBinaryListener != null) {
+            mainChatBinaryListener.messageArrived(message, ipAddress);
+        }
+    }
+
+    /**
+     * Checks if the message looks like <code>code!TYPE#something</code>, where the type
+     * includes the <code>!</code> and <code>#</code>.
+     */
+    private boolean isMessageOfType(final String message, final String type) {
+        final int typeStart = findUserCodeEnd(message);
+
+        return typeStart > 0
+                && message.length() > typeStart + type.length()
+                && message.startsWith(type, typeStart);
+    }
+
     @Nullable
     private User parseUserFromMessage(final String message) {
-        try {
-            final int msgCode = Integer.parseInt(message.substring(0, message.indexOf("!")));
-            return controller.getUser(msgCode);
+        final int userCode = parseUserCode(message);
+
+        if (userCode < 0) {
+            LOG.warning("Failed to parse user from message: %s", message);
+            return null;
+        }
+
+        return controller.getUser(userCode);
+    }
+
+    /**
+     * Reads the digits in front of the first <code>!</code> in the message.
+     *
+     * @return The user code, or <code>-1</code> if the message does not start with a user code.
+     */
+    private int parseUserCode(final String message) {
+        final int userCodeEnd = findUserCodeEnd(message);
+
+        if (userCodeEnd < 0) {
+            return -1;
+        }
+
+        int userCode = 0;
+
+        for (int i = 0; i < userCodeEnd; i++) {
+            userCode = userCode * 10 + (message.charAt(i) - '0');
+        }
+
+        return userCode;
+    }
+
+    /**
+     * Finds the position of the <code>!</code> after the user code at the start of the message.
+     *
+     * @return The position, or <code>-1</code> if the message does not start with a user code.
+     */
+    private int findUserCodeEnd(final String message) {
+        final int length = Math.min(message.length(), MAX_USER_CODE_DIGITS + 1);
+
+        for (int i = 0; i < length; i++) {
+            final char c = message.charAt(i);
+
+            if (c == '!') {
+                return i > 0 ? i : -1;
+            }
+
+            if (c < '0' || c > '9') {
+                return -1;
+            }
         }
 
-        catch (final NumberFormatException | StringIndexOutOfBoundsException e) {
-            LOG.warning("Failed to parse user from message: %s", e.getMessage());
+        return -1;
+    }
+
+    @Nullable
+    private User parseUserFromBinaryMessage(final ByteBuffer message) {
+        final int userCode = parseUserCodeFromBinaryMessage(message);
+
+        if (userCode < 0) {
             return null;
         }
+
+        return controller.getUser(userCode);
+    }
+
+    private int parseUserCodeFromBinaryMessage(final ByteBuffer message) {
+        try {
+            return binaryMessageReader.peekUserCode(message);
+        }
+
+        catch (final BufferUnderflowException | IllegalArgumentException e) {
+            LOG.warning("Failed to parse user from binary message: %s", e.toString());
+            return -1;
+        }
     }
 }
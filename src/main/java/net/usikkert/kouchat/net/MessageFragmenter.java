@@ -0,0 +1,111 @@
+
+/***************************************************************************
+ *   Copyright 2006-2018 by Christian Ihle                                 *
+ *   contact@kouchat.net                                                   *
+ *                                                                         *
+ *   This file is part of KouChat.                                         *
+ *                                                                         *
+ *   KouChat is free software; you can redistribute it and/or modify       *
+ *   it under the terms of the GNU Lesser General Public License as        *
+ *   published by the Free Software Foundation, either version 3 of        *
+ *   the License, or (at your option) any later version.                   *
+ *                                                                         *
+ *   KouChat is distributed in the hope that it will be useful,            *
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of        *
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU      *
+ *   Lesser General Public License for more details.                       *
+ *                                                                         *
+ *   You should have received a copy of the GNU Lesser General Public      *
+ *   License along with KouChat.                                           *
+ *   If not, see <http://www.gnu.org/licenses/>.                           *
+ ***************************************************************************/
+
+package net.usikkert.kouchat.net;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import net.usikkert.kouchat.Constants;
+import net.usikkert.kouchat.util.Validate;
+
+/**
+ * Splits messages that are too large for a single udp packet into numbered fragments,
+ * that are put back together by {@link MessageReassembler}.
+ *
+ * <p>Each fragment starts with a header of {@link #HEADER_SIZE} bytes: {@link #FRAGMENT},
+ * the user code of the sender and an id for the message as four byte numbers, then the
+ * index of the fragment and the number of fragments as one unsigned byte each.
+ * The rest of the fragment is the next part of the message. The message can be a text
+ * or binary message. Only clients that support {@link NetworkCapabilities#FRAGMENTED_MESSAGES}
+ * understand fragments.</p>
+ *
+ * <p>This class is thread safe.</p>
+ *
+ * @author Christian Ihle
+ */
+public class MessageFragmenter {
+
+    /** The first byte of every fragment. */
+    public static final byte FRAGMENT = 0x03;
+
+    /** The number of bytes before the part of the message in each fragment. */
+    public static final int HEADER_SIZE = 11;
+
+    /** The max number of bytes of the message in each fragment. */
+    public static final int MAX_FRAGMENT_SIZE = Constants.NETWORK_PACKET_SIZE - HEADER_SIZE;
+
+    /** The max number of fragments of a message. */
+    public static final int MAX_FRAGMENTS = 32;
+
+    /** The max number of bytes in a message that can be split into fragments. */
+    public static final int MAX_MESSAGE_SIZE = MAX_FRAGMENT_SIZE * MAX_FRAGMENTS;
+
+    private final AtomicInteger nextMessageId;
+
+    /**
+     * Constructor.
+     */
+    public MessageFragmenter() {
+        // Random start, so a restarted client does not reuse ids the others might still have fragments of
+        nextMessageId = new AtomicInteger((int) System.nanoTime());
+    }
+
+    /**
+     * Splits the message into fragments.
+     *
+     * @param message The encoded message to split.
+     * @param userCode The user code of the sender.
+     * @return The fragments, in order.
+     * @throws IllegalArgumentException If the message is larger than {@link #MAX_MESSAGE_SIZE}.
+     */
+    public List<byte[]> split(final byte[] message, final int userCode) {
+        Validate.notNull(message, "Message can not be null");
+
+        if (message.length > MAX_MESSAGE_SIZE) {
+            throw new IllegalArgumentException("Message is too large to split: " + message.length + " bytes");
+        }
+
+        final int messageId = nextMessageId.getAndIncrement();
+        final int fragmentCount = Math.max(1, (message.length + MAX_FRAGMENT_SIZE - 1) / MAX_FRAGMENT_SIZE);
+        final List<byte[]> fragments = new ArrayList<>(fragmentCount);
+
+        for (int index = 0; index < fragmentCount; index++) {
+            final int offset = index * MAX_FRAGMENT_SIZE;
+            final int length = Math.min(MAX_FRAGMENT_SIZE, message.length - offset);
+            final ByteBuffer fragment = ByteBuffer.allocate(HEADER_SIZE + length);
+
+            fragment.put(FRAGMENT)
+                    .putInt(userCode)
+                    .putInt(messageId)
+                    .put((byte) index)
+                    .put((byte) fragmentCount)
+                    .put(message, offset, length);
+
+            fragments.add(fragment.array());
+        }
+
+        return fragments;
+    }
+}
@@ -24,12 +24,18 @@ package net.usikkert.kouchat.net;
 
 import static net.usikkert.kouchat.net.NetworkMessageType.*;
 
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
+import net.usikkert.kouchat.event.BinaryReceiverListener;
 import net.usikkert.kouchat.event.ReceiverListener;
+import net.usikkert.kouchat.misc.FlightRecorder;
 import net.usikkert.kouchat.misc.User;
 import net.usikkert.kouchat.settings.Settings;
+import net.usikkert.kouchat.util.HotPathProfiler;
+import net.usikkert.kouchat.util.HotPathProfiler.HotPath;
 import net.usikkert.kouchat.util.Validate;
 
 /**
@@ -59,9 +65,12 @@ import net.usikkert.kouchat.util.Validate;
  *   <li>CLIENT</li>
  * </ul>
  *
+ * <p>Most of the message types can also arrive in the binary format described in
+ * {@link BinaryMessageFormat}, from clients supporting {@link NetworkCapabilities#BINARY_MESSAGES}.</p>
+ *
  * @author Christian Ihle
  */
-public class MessageParser implements ReceiverListener {
+public class MessageParser implements ReceiverListener, BinaryReceiverListener {
 
     /** The logger. */
     private static final Logger LOG = Logger.getLogger(MessageParser.class.getName());
@@ -72,6 +81,18 @@ public class MessageParser implements ReceiverListener {
     /** The application settings. */
     private final Settings settings;
 
+    /** For reading the fields of text messages. One for each thread, since messages arrive from several threads. */
+    private final ThreadLocal<TextMessageReader> textMessageReader;
+
+    /** For reading the fields of binary messages. */
+    private final BinaryMessageReader binaryMessageReader;
+
+    /** For counting the message types and parse failures. */
+    private final TrafficStatistics trafficStatistics;
+
+    /** For recording the parsed messages. */
+    private final FlightRecorder flightRecorder;
+
     /** If logged on to the chat or not. */
     private boolean loggedOn;
 
@@ -80,13 +101,28 @@ public class MessageParser implements ReceiverListener {
      *
      * @param responder To handle the different kind of messages parsed here.
      * @param settings The settings to use.
+     * @param trafficStatistics For counting the message types and parse failures.
+     * @param flightRecorder For recording the parsed messages.
      */
-    public MessageParser(final MessageResponder responder, final Settings settings) {
+    public MessageParser(final MessageResponder responder, final Settings settings,
+                         final TrafficStatistics trafficStatistics, final FlightRecorder flightRecorder) {
         Validate.notNull(responder, "MessageResponder can not be null");
         Validate.notNull(settings, "Settings can not be null");
+        Validate.notNull(trafficStatistics, "Traffic statistics can not be null");
+        Validate.notNull(flightRecorder, "Flight recorder can not be null");
 
         this.responder = responder;
         this.settings = settings;
+        this.trafficStatistics = trafficStatistics;
+        this.flightRecorder = flightRecorder;
+        this.binaryMessageReader = new BinaryMessageReader();
+
+        this.textMessageReader = new ThreadLocal<TextMessageReader>() {
+            @Override
+            protected TextMessageReader initialValue() {
+                return new TextMessageReader();
+            }
+        };
     }
 
     /**
@@ -99,202 +135,150 @@ public class MessageParser implements ReceiverListener {
      */
     @Override
     public void messageArrived(final String message, final String ipAddress) {
+        final TextMessageReader reader = textMessageReader.get();
+        final long start = HotPathProfiler.start();
+
         try {
-            final int exclamation = message.indexOf("!");
-            final int hash = message.indexOf("#");
-            final int colon = message.indexOf(":");
+            reader.readHeader(message);
+
+            final int msgCode = reader.getUserCode();
+            final String type = reader.getType();
+            trafficStatistics.recordMessageType(type);
+            flightRecorder.record(FlightRecorder.EventType.MESSAGE_PARSED, msgCode, type);
 
-            final int msgCode = Integer.parseInt(message.substring(0, exclamation));
-            final String type = message.substring(exclamation + 1, hash);
-            final String msgNick = message.substring(hash + 1, colon);
-            final String msg = message.substring(colon + 1, message.length());
+            if (type == null) {
+                return;
+            }
 
             final User tempme = settings.getMe();
 
             if (msgCode != tempme.getCode() && loggedOn) {
-                if (type.equals(MSG)) {
-                    final int leftBracket = msg.indexOf("[");
-                    final int rightBracket = msg.indexOf("]");
-                    final int rgb = Integer.parseInt(msg.substring(leftBracket + 1, rightBracket));
+                switch (type) {
+                    case MSG:
+                        final String colorField = reader.readString('[', ']');
+                        final int rgb = ColorField.readColor(colorField);
+                        MessageTrace.markParsed(ColorField.readSendTime(colorField));
+                        responder.messageArrived(msgCode, reader.readRest(), rgb);
+                        break;
+
+                    case LOGON:
+                        final User newUser = new User(reader.getNick(), msgCode);
+                        newUser.setIpAddress(ipAddress);
+                        newUser.setLastIdle(System.currentTimeMillis());
+                        newUser.setLogonTime(System.currentTimeMillis());
+
+                        responder.userLogOn(newUser);
+                        break;
+
+                    case EXPOSING:
+                        final User user = new User(reader.getNick(), msgCode);
+                        final String awayMsg = reader.readRest();
+                        user.setIpAddress(ipAddress);
+                        user.setAwayMsg(awayMsg);
+
+                        if (awayMsg.length() > 0) {
+                            user.setAway(true);
+                        }
 
-                    responder.messageArrived(msgCode, msg.substring(rightBracket + 1, msg.length()), rgb);
-                }
+                        user.setLastIdle(System.currentTimeMillis());
+                        user.setLogonTime(System.currentTimeMillis());
 
-                else if (type.equals(LOGON)) {
-                    final User newUser = new User(msgNick, msgCode);
-                    newUser.setIpAddress(ipAddress);
-                    newUser.setLastIdle(System.currentTimeMillis());
-                    newUser.setLogonTime(System.currentTimeMillis());
+                        responder.userExposing(user);
+                        break;
 
-                    responder.userLogOn(newUser);
-                }
+                    case LOGOFF:
+                        responder.userLogOff(msgCode);
+                        break;
 
-                else if (type.equals(EXPOSING)) {
-                    final User user = new User(msgNick, msgCode);
-                    user.setIpAddress(ipAddress);
-                    user.setAwayMsg(msg);
+                    case AWAY:
+                        responder.awayChanged(msgCode, true, reader.readRest());
+                        break;
 
-                    if (msg.length() > 0) {
-                        user.setAway(true);
-                    }
+                    case BACK:
+                        responder.awayChanged(msgCode, false, "");
+                        break;
 
-                    user.setLastIdle(System.currentTimeMillis());
-                    user.setLogonTime(System.currentTimeMillis());
+                    case EXPOSE:
+                        responder.exposeRequested();
+                        break;
 
-                    responder.userExposing(user);
-                }
+                    case NICKCRASH:
+                        if (tempme.getNick().equals(reader.readRest())) {
+                            responder.nickCrash();
+                        }
 
-                else if (type.equals(LOGOFF)) {
-                    responder.userLogOff(msgCode);
-                }
+                        break;
 
-                else if (type.equals(AWAY)) {
-                    responder.awayChanged(msgCode, true, msg);
-                }
+                    case WRITING:
+                        responder.writingChanged(msgCode, true);
+                        break;
 
-                else if (type.equals(BACK)) {
-                    responder.awayChanged(msgCode, false, "");
-                }
+                    case STOPPEDWRITING:
+                        responder.writingChanged(msgCode, false);
+                        break;
 
-                else if (type.equals(EXPOSE)) {
-                    responder.exposeRequested();
-                }
+                    case GETTOPIC:
+                        responder.topicRequested();
+                        break;
 
-                else if (type.equals(NICKCRASH)) {
-                    if (tempme.getNick().equals(msg)) {
-                        responder.nickCrash();
-                    }
-                }
+                    case TOPIC:
+                        if (reader.hasField('[', ']')) {
+                            final String theNick = reader.readString('(', ')');
+                            final long theTime = reader.readLong('[', ']');
+                            final String theTopic = reader.hasRemaining() ? reader.readRest() : null;
 
-                else if (type.equals(WRITING)) {
-                    responder.writingChanged(msgCode, true);
-                }
+                            responder.topicChanged(msgCode, theTopic, theNick, theTime);
+                        }
 
-                else if (type.equals(STOPPEDWRITING)) {
-                    responder.writingChanged(msgCode, false);
-                }
+                        break;
 
-                else if (type.equals(GETTOPIC)) {
-                    responder.topicRequested();
-                }
+                    case NICK:
+                        responder.nickChanged(msgCode, reader.getNick());
+                        break;
 
-                else if (type.equals(TOPIC)) {
-                    final int leftBracket = msg.indexOf("[");
-                    final int rightBracket = msg.indexOf("]");
-                    final int leftPara = msg.indexOf("(");
-                    final int rightPara = msg.indexOf(")");
+                    case IDLE:
+                        responder.userIdle(msgCode, ipAddress);
+                        break;
 
-                    if (rightBracket != -1 && leftBracket != -1) {
-                        final String theNick = msg.substring(leftPara + 1, rightPara);
-                        final long theTime = Long.parseLong(msg.substring(leftBracket + 1, rightBracket));
-                        String theTopic = null;
+                    case SENDFILEACCEPT:
+                        if (reader.readInt('(', ')') == tempme.getCode()) {
+                            final int port = reader.readInt('[', ']');
+                            final int fileHash = reader.readInt('{', '}');
+                            final String fileName = reader.readRest();
 
-                        if (msg.length() > rightBracket + 1) {
-                            theTopic = msg.substring(rightBracket + 1, msg.length());
+                            responder.fileSendAccepted(msgCode, fileName, fileHash, port);
                         }
 
-                        responder.topicChanged(msgCode, theTopic, theNick, theTime);
-                    }
-                }
+                        break;
 
-                else if (type.equals(NICK)) {
-                    responder.nickChanged(msgCode, msgNick);
-                }
-
-                else if (type.equals(IDLE)) {
-                    responder.userIdle(msgCode, ipAddress);
-                }
-
-                else if (type.equals(SENDFILEACCEPT)) {
-                    final int leftPara = msg.indexOf("(");
-                    final int rightPara = msg.indexOf(")");
-                    final int fileCode = Integer.parseInt(msg.substring(leftPara + 1, rightPara));
-
-                    if (fileCode == tempme.getCode()) {
-                        final int leftCurly = msg.indexOf("{");
-                        final int rightCurly = msg.indexOf("}");
-                        final int leftBracket = msg.indexOf("[");
-                        final int rightBracket = msg.indexOf("]");
-                        final int port = Integer.parseInt(msg.substring(leftBracket + 1, rightBracket));
-                        final int fileHash = Integer.parseInt(msg.substring(leftCurly + 1, rightCurly));
-                        final String fileName = msg.substring(rightCurly + 1, msg.length());
-
-                        responder.fileSendAccepted(msgCode, fileName, fileHash, port);
-                    }
-                }
-
-                else if (type.equals(SENDFILEABORT)) {
-                    final int leftPara = msg.indexOf("(");
-                    final int rightPara = msg.indexOf(")");
-                    final int fileCode = Integer.parseInt(msg.substring(leftPara + 1, rightPara));
+                    case SENDFILEABORT:
+                        if (reader.readInt('(', ')') == tempme.getCode()) {
+                            final int fileHash = reader.readInt('{', '}');
+                            final String fileName = reader.readRest();
 
-                    if (fileCode == tempme.getCode()) {
-                        final int leftCurly = msg.indexOf("{");
-                        final int rightCurly = msg.indexOf("}");
-                        final String fileName = msg.substring(rightCurly + 1, msg.length());
-                        final int fileHash = Integer.parseInt(msg.substring(leftCurly + 1, rightCurly));
+                            responder.fileSendAborted(msgCode, fileName, fileHash);
+                        }
 
-                        responder.fileSendAborted(msgCode, fileName, fileHash);
-                    }
-                }
+                        break;
 
-                else if (type.equals(SENDFILE)) {
-                    final int leftPara = msg.indexOf("(");
-                    final int rightPara = msg.indexOf(")");
-                    final int fileCode = Integer.parseInt(msg.substring(leftPara + 1, rightPara));
-
-                    if (fileCode == tempme.getCode()) {
-                        final int leftCurly = msg.indexOf("{");
-                        final int rightCurly = msg.indexOf("}");
-                        final int leftBracket = msg.indexOf("[");
-                        final int rightBracket = msg.indexOf("]");
-                        final long byteSize = Long.parseLong(msg.substring(leftBracket + 1, rightBracket));
-                        final String fileName = msg.substring(rightCurly + 1, msg.length());
-                        final int fileHash = Integer.parseInt(msg.substring(leftCurly + 1, rightCurly));
-
-                        responder.fileSend(msgCode, byteSize, fileName, msgNick, fileHash);
-                    }
-                }
+                    case SENDFILE:
+                        if (reader.readInt('(', ')') == tempme.getCode()) {
+                            final long byteSize = reader.readLong('[', ']');
+                            final int fileHash = reader.readInt('{', '}');
+                            final String fileName = reader.readRest();
 
-                else if (type.equals(CLIENT)) {
-                    final int leftPara = msg.indexOf("(");
-                    final int rightPara = msg.indexOf(")");
-                    final int leftBracket = msg.indexOf("[");
-                    final int rightBracket = msg.indexOf("]");
-                    final int leftCurly = msg.indexOf("{");
-                    final int rightCurly = msg.indexOf("}");
-                    final int lessThan = msg.indexOf("<");
-                    final int greaterThan = msg.indexOf(">");
-                    final int slash = msg.indexOf("/");
-                    final int backslash = msg.indexOf("\\");
-
-                    final String client = msg.substring(leftPara + 1, rightPara);
-                    final long timeSinceLogon = Long.parseLong(msg.substring(leftBracket + 1, rightBracket));
-                    final String operatingSystem = msg.substring(leftCurly + 1, rightCurly);
-
-                    int privateChatPort = 0;
-
-                    try {
-                        privateChatPort = Integer.parseInt(msg.substring(lessThan + 1, greaterThan));
-                    }
-
-                    catch (final NumberFormatException e) {
-                        LOG.log(Level.WARNING, "Failed to parse private chat port. message=" + message + ", ipAddress=" + ipAddress, e);
-                    }
-
-                    int tcpChatPort = 0;
-
-                    if (slash != -1 && backslash != -1) {
-                        try {
-                            tcpChatPort = Integer.parseInt(msg.substring(slash + 1, backslash));
+                            responder.fileSend(msgCode, byteSize, fileName, reader.getNick(), fileHash);
                         }
 
-                        catch (final NumberFormatException e) {
-                            LOG.log(Level.WARNING, "Failed to parse tcp chat port. message=" + message + ", ipAddress=" + ipAddress, e);
-                        }
-                    }
+                        break;
+
+                    case CLIENT:
+                        parseClient(reader, msgCode, message, ipAddress);
+                        break;
 
-                    responder.clientInfo(msgCode, client, timeSinceLogon, operatingSystem, privateChatPort, tcpChatPort);
+                    default:
+                        // Private messages and unsupported messages
+                        break;
                 }
             }
 
@@ -311,11 +295,179 @@ public class MessageParser implements ReceiverListener {
         // Just ignore, someone sent a badly formatted message
         catch (final StringIndexOutOfBoundsException e) {
             LOG.log(Level.SEVERE, "Failed to parse message. message=" + message + ", ipAddress=" + ipAddress, e);
+            trafficStatistics.recordParseFailure();
         }
 
         // Just ignore, someone sent a badly formatted message
         catch (final NumberFormatException e) {
             LOG.log(Level.SEVERE, "Failed to parse message. message=" + message + ", ipAddress=" + ipAddress, e);
+            trafficStatistics.recordParseFailure();
+        }
+
+        finally {
+            HotPathProfiler.end(HotPath.MESSAGE_PARSE, start);
+        }
+    }
+
+    private void parseClient(final TextMessageReader reader, final int msgCode, final String message,
+                             final String ipAddress) {
+        final String client = reader.readString('(', ')');
+        final long timeSinceLogon = reader.readLong('[', ']');
+        final String operatingSystem = reader.readString('{', '}');
+
+        int privateChatPort = 0;
+
+        try {
+            privateChatPort = reader.readInt('<', '>');
+        }
+
+        catch (final NumberFormatException e) {
+            LOG.log(Level.WARNING, "Failed to parse private chat port. message=" + message + ", ipAddress=" + ipAddress, e);
+        }
+
+        int tcpChatPort = 0;
+
+        if (reader.hasField('/', '\\')) {
+            try {
+                tcpChatPort = reader.readInt('/', '\\');
+            }
+
+            catch (final NumberFormatException e) {
+                LOG.log(Level.WARNING, "Failed to parse tcp chat port. message=" + message + ", ipAddress=" + ipAddress, e);
+            }
+        }
+
+        int capabilities = 0;
+
+        if (reader.hasField('|', '|')) {
+            try {
+                capabilities = reader.readInt('|', '|');
+            }
+
+            catch (final NumberFormatException e) {
+                LOG.log(Level.WARNING, "Failed to parse capabilities. message=" + message + ", ipAddress=" + ipAddress, e);
+            }
+        }
+
+        responder.clientInfo(msgCode, client, timeSinceLogon, operatingSystem, privateChatPort, tcpChatPort,
+                             capabilities);
+    }
+
+    /**
+     * The parser for binary messages. Reads the fields of the message type,
+     * and gives them to the responder like {@link #messageArrived(String, String)} does.
+     *
+     * @param message The binary message to parse.
+     * @param ipAddress The IP address of the user who sent the message.
+     */
+    @Override
+    public void messageArrived(final ByteBuffer message, final String ipAddress) {
+        final long start = HotPathProfiler.start();
+
+        try {
+            final byte type = binaryMessageReader.readType(message);
+            trafficStatistics.recordBinaryMessageType(type);
+            final int msgCode = binaryMessageReader.readVarInt(message);
+            flightRecorder.record(FlightRecorder.EventType.MESSAGE_PARSED, msgCode, BinaryMessageReader.toTextType(type));
+
+            final User tempme = settings.getMe();
+
+            if (msgCode != tempme.getCode() && loggedOn) {
+                switch (type) {
+                    case BinaryMessageFormat.MSG:
+                        final int rgb = binaryMessageReader.readSignedVarInt(message);
+                        final String chatMessage = binaryMessageReader.readString(message);
+                        MessageTrace.markParsed(-1);
+                        responder.messageArrived(msgCode, chatMessage, rgb);
+                        break;
+
+                    case BinaryMessageFormat.AWAY:
+                        responder.awayChanged(msgCode, true, binaryMessageReader.readString(message));
+                        break;
+
+                    case BinaryMessageFormat.BACK:
+                        responder.awayChanged(msgCode, false, "");
+                        break;
+
+                    case BinaryMessageFormat.WRITING:
+                        responder.writingChanged(msgCode, true);
+                        break;
+
+                    case BinaryMessageFormat.STOPPEDWRITING:
+                        responder.writingChanged(msgCode, false);
+                        break;
+
+                    case BinaryMessageFormat.GETTOPIC:
+                        responder.topicRequested();
+                        break;
+
+                    case BinaryMessageFormat.TOPIC:
+                        final String theNick = binaryMessageReader.readString(message);
+                        final long theTime = binaryMessageReader.readVarLong(message);
+                        final String theTopic = binaryMessageReader.readString(message);
+
+                        responder.topicChanged(msgCode, theTopic.isEmpty() ? null : theTopic, theNick, theTime);
+                        break;
+
+                    case BinaryMessageFormat.NICK:
+                        responder.nickChanged(msgCode, binaryMessageReader.readString(message));
+                        break;
+
+                    case BinaryMessageFormat.IDLE:
+                        responder.userIdle(msgCode, ipAddress);
+                        break;
+
+                    case BinaryMessageFormat.SENDFILEACCEPT:
+                        if (binaryMessageReader.readVarInt(message) == tempme.getCode()) {
+                            final int port = binaryMessageReader.readVarInt(message);
+                            final int fileHash = binaryMessageReader.readSignedVarInt(message);
+                            final String fileName = binaryMessageReader.readString(message);
+
+                            responder.fileSendAccepted(msgCode, fileName, fileHash, port);
+                        }
+
+                        break;
+
+                    case BinaryMessageFormat.SENDFILEABORT:
+                        if (binaryMessageReader.readVarInt(message) == tempme.getCode()) {
+                            final int fileHash = binaryMessageReader.readSignedVarInt(message);
+                            final String fileName = binaryMessageReader.readString(message);
+
+                            responder.fileSendAborted(msgCode, fileName, fileHash);
+                        }
+
+                        break;
+
+                    case BinaryMessageFormat.SENDFILE:
+                        if (binaryMessageReader.readVarInt(message) == tempme.getCode()) {
+                            final long byteSize = binaryMessageReader.readVarLong(message);
+                            final int fileHash = binaryMessageReader.readSignedVarInt(message);
+                            final String fileName = binaryMessageReader.readString(message);
+                            final String msgNick = binaryMessageReader.readString(message);
+
+                            responder.fileSend(msgCode, byteSize, fileName, msgNick, fileHash);
+                        }
+
+                        break;
+
+                    default:
+                        LOG.log(Level.WARNING, "Unknown binary message type: " + type + ", ipAddress=" + ipAddress);
+                }
+            }
+
+            else if (msgCode == tempme.getCode() && type == BinaryMessageFormat.IDLE && loggedOn) {
+                responder.meIdle(ipAddress);
+            }
+        }
+
+        // Just ignore, someone sent a badly formatted message
+        catch (final BufferUnderflowException | IllegalArgumentException e) {
+            LOG.log(Level.SEVERE, "Failed to parse binary message. ipAddress=" + ipAddress, e);
+            trafficStatistics.recordParseFailure();
+        }
+
+        finally {
+            HotPathProfiler.end(HotPath.MESSAGE_PARSE, start);
         }
     }
 }
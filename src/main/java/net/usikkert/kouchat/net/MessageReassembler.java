@@ -0,0 +1,275 @@
+
+/***************************************************************************
+ *   Copyright 2006-2018 by Christian Ihle                                 *
+ *   contact@kouchat.net                                                   *
+ *                                                                         *
+ *   This file is part of KouChat.                                         *
+ *                                                                         *
+ *   KouChat is free software; you can redistribute it and/or modify       *
+ *   it under the terms of the GNU Lesser General Public License as        *
+ *   published by the Free Software Foundation, either version 3 of        *
+ *   the License, or (at your option) any later version.                   *
+ *                                                                         *
+ *   KouChat is distributed in the hope that it will be useful,            *
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of        *
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU      *
+ *   Lesser General Public License for more details.                       *
+ *                                                                         *
+ *   You should have received a copy of the GNU Lesser General Public      *
+ *   License along with KouChat.                                           *
+ *   If not, see <http://www.gnu.org/licenses/>.                           *
+ ***************************************************************************/
+
+package net.usikkert.kouchat.net;
+
+import java.nio.ByteBuffer;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import net.usikkert.kouchat.util.Logger;
+import net.usikkert.kouchat.util.Validate;
+
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Puts messages split by {@link MessageFragmenter} back together.
+ *
+ * <p>The fragments can arrive in any order, and duplicates are ignored. At most
+ * {@link #MAX_PARTIAL_MESSAGES} messages are kept while waiting for more fragments.
+ * When that is reached, the oldest message is thrown away to make room. Messages that are not
+ * complete within {@link #FRAGMENT_TIMEOUT} milliseconds of the first fragment are thrown
+ * away as well, since udp packets can be lost.</p>
+ *
+ * <p>This class is not thread safe. Each receiver thread must have its own reassembler.</p>
+ *
+ * @author Christian Ihle
+ */
+public class MessageReassembler {
+
+    private static final Logger LOG = Logger.getLogger(MessageReassembler.class);
+
+    /** The max number of messages waiting for more fragments. */
+    public static final int MAX_PARTIAL_MESSAGES = 16;
+
+    /** Milliseconds to wait for all the fragments of a message. */
+    public static final int FRAGMENT_TIMEOUT = 5000;
+
+    private static final long FRAGMENT_TIMEOUT_NANOS = TimeUnit.MILLISECONDS.toNanos(FRAGMENT_TIMEOUT);
+
+    /** The messages waiting for more fragments, oldest first. */
+    private final Map<MessageKey, PartialMessage> partialMessages;
+
+    /**
+     * Constructor.
+     */
+    public MessageReassembler() {
+        partialMessages = new LinkedHashMap<>();
+    }
+
+    /**
+     * Adds a fragment of a message.
+     *
+     * @param fragment The fragment, from the position to the limit of the buffer.
+     *                 The position of the buffer is moved to the limit.
+     * @param ipAddress The ip address the fragment came from.
+     * @param now The current time, from {@link System#nanoTime()}.
+     * @return The complete message, if this was the last missing fragment,
+     *         or <code>null</code> if more fragments are needed or the fragment was invalid.
+     */
+    @Nullable
+    public byte[] addFragment(final ByteBuffer fragment, final String ipAddress, final long now) {
+        Validate.notNull(fragment, "Fragment can not be null");
+        Validate.notNull(ipAddress, "IP address can not be null");
+
+        removeExpiredMessages(now);
+
+        if (fragment.remaining() < MessageFragmenter.HEADER_SIZE || fragment.get() != MessageFragmenter.FRAGMENT) {
+            LOG.fine("Invalid fragment from %s", ipAddress);
+            fragment.position(fragment.limit());
+            return null;
+        }
+
+        final int userCode = fragment.getInt();
+        final int messageId = fragment.getInt();
+        final int index = fragment.get() & 0xFF;
+        final int count = fragment.get() & 0xFF;
+        final int size = fragment.remaining();
+
+        if (!isValidFragment(index, count, size)) {
+            LOG.fine("Invalid fragment %s of %s with %s bytes from %s", index, count, size, ipAddress);
+            fragment.position(fragment.limit());
+            return null;
+        }
+
+        final byte[] bytes = new byte[size];
+        fragment.get(bytes);
+
+        if (count == 1) {
+            return bytes;
+        }
+
+        final MessageKey key = new MessageKey(ipAddress, userCode, messageId);
+        PartialMessage partialMessage = partialMessages.get(key);
+
+        if (partialMessage == null) {
+            removeOldestMessageIfFull();
+            partialMessage = new PartialMessage(count, now);
+            partialMessages.put(key, partialMessage);
+        }
+
+        else if (partialMessage.getFragmentCount() != count) {
+            LOG.fine("Fragment %s of %s from %s does not match the message with %s fragments",
+                     index, count, ipAddress, partialMessage.getFragmentCount());
+            return null;
+        }
+
+        partialMessage.addFragment(index, bytes);
+
+        if (!partialMessage.isComplete()) {
+            return null;
+        }
+
+        partialMessages.remove(key);
+
+        return partialMessage.getMessage();
+    }
+
+    /**
+     * Gets the number of messages waiting for more fragments.
+     *
+     * @return The number of partial messages.
+     */
+    public int getPartialMessageCount() {
+        return partialMessages.size();
+    }
+
+    private boolean isValidFragment(final int index, final int count, final int size) {
+        if (count < 1 || count > MessageFragmenter.MAX_FRAGMENTS || index >= count) {
+            return false;
+        }
+
+        // Only the last fragment can be smaller than the max size
+        if (index < count - 1) {
+            return size == MessageFragmenter.MAX_FRAGMENT_SIZE;
+        }
+
+        return size <= MessageFragmenter.MAX_FRAGMENT_SIZE;
+    }
+
+    private void removeExpiredMessages(final long now) {
+        final Iterator<Map.Entry<MessageKey, PartialMessage>> iterator = partialMessages.entrySet().iterator();
+
+        while (iterator.hasNext()) {
+            final Map.Entry<MessageKey, PartialMessage> entry = iterator.next();
+
+            if (now - entry.getValue().getCreated() < FRAGMENT_TIMEOUT_NANOS) {
+                return;
+            }
+
+            LOG.fine("Timed out waiting for fragments of message from %s", entry.getKey().getIpAddress());
+            iterator.remove();
+        }
+    }
+
+    private void removeOldestMessageIfFull() {
+        if (partialMessages.size() < MAX_PARTIAL_MESSAGES) {
+            return;
+        }
+
+        final Iterator<MessageKey> iterator = partialMessages.keySet().iterator();
+        final MessageKey oldest = iterator.next();
+        iterator.remove();
+
+        LOG.fine("Too many partial messages. Removed message from %s", oldest.getIpAddress());
+    }
+
+    /**
+     * Identifies a message from a specific client.
+     */
+    private static final class MessageKey {
+
+        private final String ipAddress;
+        private final int userCode;
+        private final int messageId;
+
+        MessageKey(final String ipAddress, final int userCode, final int messageId) {
+            this.ipAddress = ipAddress;
+            this.userCode = userCode;
+            this.messageId = messageId;
+        }
+
+        public String getIpAddress() {
+            return ipAddress;
+        }
+
+        @Override
+        public boolean equals(final Object obj) {
+            if (this == obj) {
+                return true;
+            }
+
+            if (!(obj instanceof MessageKey)) {
+                return false;
+            }
+
+            final MessageKey other = (MessageKey) obj;
+
+            return userCode == other.userCode && messageId == other.messageId && ipAddress.equals(other.ipAddress);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * (31 * ipAddress.hashCode() + userCode) + messageId;
+        }
+    }
+
+    /**
+     * The fragments received so far of a message.
+     */
+    private static final class PartialMessage {
+
+        private final byte[][] fragments;
+        private final long created;
+        private int receivedFragments;
+        private int size;
+
+        PartialMessage(final int fragmentCount, final long created) {
+            this.fragments = new byte[fragmentCount][];
+            this.created = created;
+        }
+
+        public void addFragment(final int index, final byte[] fragment) {
+            if (fragments[index] == null) {
+                fragments[index] = fragment;
+                receivedFragments++;
+                size += fragment.length;
+            }
+        }
+
+        public boolean isComplete() {
+            return receivedFragments == fragments.length;
+        }
+
+        public byte[] getMessage() {
+            final byte[] message = new byte[size];
+            int offset = 0;
+
+            for (final byte[] fragment : fragments) {
+                System.arraycopy(fragment, 0, message, offset, fragment.length);
+                offset += fragment.length;
+            }
+
+            return message;
+        }
+
+        public int getFragmentCount() {
+            return fragments.length;
+        }
+
+        public long getCreated() {
+            return created;
+        }
+    }
+}
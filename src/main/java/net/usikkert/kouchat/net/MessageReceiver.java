@@ -25,7 +25,6 @@ package net.usikkert.kouchat.net;
 import static net.usikkert.kouchat.net.NetworkUtils.IPTOS_RELIABILITY;
 
 import java.io.IOException;
-import java.net.DatagramPacket;
 import java.net.InetAddress;
 import java.net.MulticastSocket;
 import java.net.NetworkInterface;
@@ -69,6 +68,9 @@ public class MessageReceiver implements Runnable {
     /** The port to receive messages on. */
     private final int port;
 
+    /** The buffer to receive packets into, reused by the background thread for every packet. */
+    private final DatagramBuffer buffer;
+
     /**
      * Default constructor.
      *
@@ -98,6 +100,7 @@ public class MessageReceiver implements Runnable {
         Validate.notNull(errorHandler, "Error handler can not be null");
 
         this.port = port;
+        buffer = new DatagramBuffer();
 
         try {
             address = InetAddress.getByName(ipAddress);
@@ -119,14 +122,14 @@ public class MessageReceiver implements Runnable {
     public void run() {
         while (connected) {
             try {
-                final DatagramPacket packet = new DatagramPacket(
-                        new byte[Constants.NETWORK_PACKET_SIZE], Constants.NETWORK_PACKET_SIZE);
-
                 if (connected) {
-                    mcSocket.receive(packet);
-                    final String ip = packet.getAddress().getHostAddress();
-                    final String message = new String(packet.getData(), Constants.MESSAGE_CHARSET).trim();
-                    LOG.log(Level.FINE, "Message arrived from " + ip + ": " + message);
+                    mcSocket.receive(buffer.getPacket());
+                    final String ip = buffer.getIPAddress();
+                    final String message = buffer.getMessage();
+
+                    if (LOG.isLoggable(Level.FINE)) {
+                        LOG.log(Level.FINE, "Message arrived from " + ip + ": " + message);
+                    }
 
                     if (listener != null) {
                         listener.messageArrived(message, ip);
@@ -178,6 +178,8 @@ public interface MessageResponder {
      * @param operatingSystem The user's operating system.
      * @param privateChatPort The port to use for sending private chat messages to this user.
      * @param tcpChatPort The port to use for sending chat messages to this user using tcp.
+     * @param capabilities The network features supported by the user's client, from {@link NetworkCapabilities}.
      */
-    void clientInfo(int userCode, String client, long timeSinceLogon, String operatingSystem, int privateChatPort, int tcpChatPort);
+    void clientInfo(int userCode, String client, long timeSinceLogon, String operatingSystem, int privateChatPort, int tcpChatPort,
+                    int capabilities);
 }
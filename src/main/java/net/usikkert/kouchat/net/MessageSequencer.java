@@ -0,0 +1,141 @@
+
+/***************************************************************************
+ *   Copyright 2006-2018 by Christian Ihle                                 *
+ *   contact@kouchat.net                                                   *
+ *                                                                         *
+ *   This file is part of KouChat.                                         *
+ *                                                                         *
+ *   KouChat is free software; you can redistribute it and/or modify       *
+ *   it under the terms of the GNU Lesser General Public License as        *
+ *   published by the Free Software Foundation, either version 3 of        *
+ *   the License, or (at your option) any later version.                   *
+ *                                                                         *
+ *   KouChat is distributed in the hope that it will be useful,            *
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of        *
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU      *
+ *   Lesser General Public License for more details.                       *
+ *                                                                         *
+ *   You should have received a copy of the GNU Lesser General Public      *
+ *   License along with KouChat.                                           *
+ *   If not, see <http://www.gnu.org/licenses/>.                           *
+ ***************************************************************************/
+
+package net.usikkert.kouchat.net;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import net.usikkert.kouchat.util.Validate;
+
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Gives messages a sequence number, so the receivers can tell the multicast and tcp copies of a message apart
+ * from new messages.
+ *
+ * <p>Every message from this client gets the next number, and both copies of a message get the same number.
+ * A sequenced text message starts with {@link #SEQUENCE_MARKER}, followed by the number as text, another
+ * {@link #SEQUENCE_MARKER}, and the message. A sequenced binary message starts with {@link #SEQUENCED_BINARY},
+ * followed by the number as a 4 byte int, and the binary message. Only clients that support
+ * {@link NetworkCapabilities#SEQUENCED_MESSAGES} understand sequenced messages.</p>
+ *
+ * <p>This class is thread safe.</p>
+ *
+ * @author Christian Ihle
+ */
+public class MessageSequencer {
+
+    /** The first character of every sequenced text message, and the character after the sequence number. */
+    public static final char SEQUENCE_MARKER = '~';
+
+    /** The first byte of every sequenced binary message. */
+    public static final byte SEQUENCED_BINARY = 0x05;
+
+    /** The size of the header before a sequenced binary message. */
+    public static final int BINARY_HEADER_SIZE = 5;
+
+    private final AtomicInteger sequenceNumber = new AtomicInteger();
+
+    /**
+     * Gets the sequence number for the next message.
+     *
+     * @return The next sequence number.
+     */
+    public int nextSequenceNumber() {
+        return sequenceNumber.incrementAndGet();
+    }
+
+    /**
+     * Adds a sequence number in front of a text message.
+     *
+     * @param message The message to add the sequence number to.
+     * @param number The sequence number to add.
+     * @return The sequenced message.
+     */
+    public String addSequenceNumber(final String message, final int number) {
+        Validate.notNull(message, "Message can not be null");
+
+        return SEQUENCE_MARKER + String.valueOf(number) + SEQUENCE_MARKER + message;
+    }
+
+    /**
+     * Adds a sequence number in front of a binary message.
+     *
+     * @param message The message to add the sequence number to.
+     * @param number The sequence number to add.
+     * @return The sequenced message.
+     */
+    public byte[] addSequenceNumber(final byte[] message, final int number) {
+        Validate.notNull(message, "Message can not be null");
+
+        final ByteBuffer sequencedMessage = ByteBuffer.allocate(BINARY_HEADER_SIZE + message.length);
+        sequencedMessage.put(SEQUENCED_BINARY).putInt(number).put(message);
+
+        return sequencedMessage.array();
+    }
+
+    /**
+     * Checks if a text message starts with a sequence number.
+     *
+     * @param message The message to check.
+     * @return If the message is sequenced.
+     */
+    public static boolean isSequenced(final String message) {
+        return !message.isEmpty() && message.charAt(0) == SEQUENCE_MARKER;
+    }
+
+    /**
+     * Finds the position of the {@link #SEQUENCE_MARKER} after the sequence number in a sequenced text message.
+     * The message itself starts at the next character.
+     *
+     * @param message The sequenced message.
+     * @return The position of the marker, or <code>-1</code> if there is no valid sequence number.
+     */
+    public static int findSequenceEnd(final String message) {
+        final int end = message.indexOf(SEQUENCE_MARKER, 1);
+
+        if (end < 2 || end > 12) {
+            return -1;
+        }
+
+        return end;
+    }
+
+    /**
+     * Reads the sequence number from a sequenced text message.
+     *
+     * @param message The sequenced message.
+     * @param sequenceEnd The position of the marker after the number, from {@link #findSequenceEnd(String)}.
+     * @return The sequence number, or <code>null</code> if it's not a valid number.
+     */
+    @Nullable
+    public static Integer readSequenceNumber(final String message, final int sequenceEnd) {
+        try {
+            return Integer.valueOf(message.substring(1, sequenceEnd));
+        }
+
+        catch (final NumberFormatException e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,195 @@
+
+/***************************************************************************
+ *   Copyright 2006-2018 by Christian Ihle                                 *
+ *   contact@kouchat.net                                                   *
+ *                                                                         *
+ *   This file is part of KouChat.                                         *
+ *                                                                         *
+ *   KouChat is free software; you can redistribute it and/or modify       *
+ *   it under the terms of the GNU Lesser General Public License as        *
+ *   published by the Free Software Foundation, either version 3 of        *
+ *   the License, or (at your option) any later version.                   *
+ *                                                                         *
+ *   KouChat is distributed in the hope that it will be useful,            *
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of        *
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU      *
+ *   Lesser General Public License for more details.                       *
+ *                                                                         *
+ *   You should have received a copy of the GNU Lesser General Public      *
+ *   License along with KouChat.                                           *
+ *   If not, see <http://www.gnu.org/licenses/>.                           *
+ ***************************************************************************/
+
+package net.usikkert.kouchat.net;
+
+import java.util.concurrent.TimeUnit;
+
+import net.usikkert.kouchat.net.LatencyStatistics.Stage;
+import net.usikkert.kouchat.net.transport.TransportChannel;
+
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Measures the time a received chat message spends in each {@link Stage} of the receiving pipeline.
+ *
+ * <p>A trace is started for each received message, by {@link PacketReceiver} for udp and by
+ * {@link MessageDeduplicator} for tcp, and follows the message through the same thread.
+ * Each part of the pipeline marks the end of its stage with the static methods, which do nothing
+ * if there is no trace on the thread. Only chat messages are recorded. The other messages are
+ * forgotten when the trace ends.</p>
+ *
+ * <p>When the message is shown in the chat the stage timings are recorded in {@link LatencyStatistics}.
+ * User interfaces that show messages later on another thread use {@link #defer()} to take the trace with
+ * the message, and {@link #appended()} when it has been shown.</p>
+ *
+ * @author Christian Ihle
+ */
+public final class MessageTrace {
+
+    private static final ThreadLocal<MessageTrace> CURRENT_TRACE = new ThreadLocal<>();
+
+    private final LatencyStatistics statistics;
+    private final TransportChannel channel;
+
+    /** The time each stage ended, in nanoseconds, with the time the message was received first. */
+    private final long[] marks;
+
+    /** The last stage that has ended, or -1 if the message was just received. */
+    private int lastStage;
+
+    /** If this is a chat message, which should be recorded. */
+    private boolean chatMessage;
+
+    /** The time the sender sent the message, in milliseconds, or -1 if the message had no send timestamp. */
+    private long sendTime;
+
+    private MessageTrace(final LatencyStatistics statistics, final TransportChannel channel) {
+        this.statistics = statistics;
+        this.channel = channel;
+
+        marks = new long[Stage.values().length + 1];
+        marks[0] = System.nanoTime();
+        lastStage = -1;
+        sendTime = -1;
+    }
+
+    /**
+     * Starts a trace on this thread, for a message that was just received.
+     *
+     * @param statistics Where to record the stage timings.
+     * @param channel How the message arrived.
+     */
+    public static void start(final LatencyStatistics statistics, final TransportChannel channel) {
+        CURRENT_TRACE.set(new MessageTrace(statistics, channel));
+    }
+
+    /**
+     * Removes the trace from this thread, when the message has been handled.
+     */
+    public static void end() {
+        CURRENT_TRACE.remove();
+    }
+
+    /**
+     * Marks that the message was let through by the duplicate check.
+     */
+    public static void markDeduplicated() {
+        final MessageTrace trace = CURRENT_TRACE.get();
+
+        if (trace != null) {
+            trace.mark(Stage.DEDUPLICATE);
+        }
+    }
+
+    /**
+     * Marks that the message was parsed, and is a chat message.
+     *
+     * @param sendTime The time the sender sent the message, in milliseconds, or -1 if unknown.
+     */
+    public static void markParsed(final long sendTime) {
+        final MessageTrace trace = CURRENT_TRACE.get();
+
+        if (trace != null) {
+            trace.chatMessage = true;
+            trace.sendTime = sendTime;
+            trace.mark(Stage.PARSE);
+        }
+    }
+
+    /**
+     * Marks that the responder has given the chat message to the chat.
+     */
+    public static void markResponded() {
+        final MessageTrace trace = CURRENT_TRACE.get();
+
+        if (trace != null && trace.chatMessage) {
+            trace.mark(Stage.RESPOND);
+        }
+    }
+
+    /**
+     * Marks that the chat message has been shown, if the user interface did not {@link #defer()} the trace.
+     */
+    public static void markAppended() {
+        final MessageTrace trace = CURRENT_TRACE.get();
+
+        if (trace != null && trace.chatMessage && trace.lastStage == Stage.RESPOND.ordinal()) {
+            CURRENT_TRACE.remove();
+            trace.appended();
+        }
+    }
+
+    /**
+     * Takes the trace of the chat message being shown from this thread, so the message can be shown later
+     * on another thread. Use {@link #appended()} on the trace when it has been shown.
+     *
+     * @return The trace, or <code>null</code> if no chat message is being shown.
+     */
+    @Nullable
+    public static MessageTrace defer() {
+        final MessageTrace trace = CURRENT_TRACE.get();
+
+        if (trace == null || !trace.chatMessage || trace.lastStage != Stage.RESPOND.ordinal()) {
+            return null;
+        }
+
+        CURRENT_TRACE.remove();
+
+        return trace;
+    }
+
+    /**
+     * Records the stage timings, and the end to end latency if the message had a send timestamp,
+     * now that the chat message has been shown.
+     */
+    public void appended() {
+        mark(Stage.APPEND);
+
+        for (final Stage stage : Stage.values()) {
+            statistics.recordStageLatency(stage, toMicros(marks[stage.ordinal() + 1] - marks[stage.ordinal()]));
+        }
+
+        statistics.recordLocalLatency(toMicros(marks[marks.length - 1] - marks[0]));
+
+        if (sendTime >= 0) {
+            final long latency = System.currentTimeMillis() - sendTime;
+            statistics.recordEndToEndLatency(channel, TimeUnit.MILLISECONDS.toMicros(latency));
+        }
+    }
+
+    /**
+     * Marks the end of a stage. Stages that were skipped end at the same time.
+     */
+    private void mark(final Stage stage) {
+        final long now = System.nanoTime();
+
+        while (lastStage < stage.ordinal()) {
+            lastStage++;
+            marks[lastStage + 1] = now;
+        }
+    }
+
+    private long toMicros(final long nanos) {
+        return TimeUnit.NANOSECONDS.toMicros(nanos);
+    }
+}
@@ -0,0 +1,304 @@
+
+/***************************************************************************
+ *   Copyright 2006-2018 by Christian Ihle                                 *
+ *   contact@kouchat.net                                                   *
+ *                                                                         *
+ *   This file is part of KouChat.                                         *
+ *                                                                         *
+ *   KouChat is free software; you can redistribute it and/or modify       *
+ *   it under the terms of the GNU Lesser General Public License as        *
+ *   published by the Free Software Foundation, either version 3 of        *
+ *   the License, or (at your option) any later version.                   *
+ *                                                                         *
+ *   KouChat is distributed in the hope that it will be useful,            *
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of        *
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU      *
+ *   Lesser General Public License for more details.                       *
+ *                                                                         *
+ *   You should have received a copy of the GNU Lesser General Public      *
+ *   License along with KouChat.                                           *
+ *   If not, see <http://www.gnu.org/licenses/>.                           *
+ ***************************************************************************/
+
+package net.usikkert.kouchat.net;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import net.usikkert.kouchat.event.MissingMessageListener;
+import net.usikkert.kouchat.util.Logger;
+import net.usikkert.kouchat.util.Validate;
+
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Finds multicast messages that are lost, and decides when to ask the sender to send them again.
+ *
+ * <p>The main chat messages from each user are numbered by {@link MessageSequencer}. When a number is skipped,
+ * the messages in between are missing. If they don't show up on multicast or tcp within a short random delay,
+ * a {@link NetworkMessageType#NACK} is sent on multicast to ask the sender to retransmit them from its
+ * {@link RetransmitBuffer}. Every user sees the NACK, so other users missing the same messages wait for
+ * the retransmission instead of sending their own NACK. A message is asked for at most
+ * {@link #MAX_ATTEMPTS} times before giving up.</p>
+ *
+ * <p>Only the last {@link #MAX_MISSING_MESSAGES} missing messages from each user are tracked, so a long outage
+ * does not cause a storm of NACKs.</p>
+ *
+ * <p>This class is thread safe.</p>
+ *
+ * @author Christian Ihle
+ */
+public class MissingMessageTracker {
+
+    private static final Logger LOG = Logger.getLogger(MissingMessageTracker.class);
+
+    /** The max number of missing messages to track from each user. */
+    public static final int MAX_MISSING_MESSAGES = 64;
+
+    /** The max number of times to ask for the same message. */
+    public static final int MAX_ATTEMPTS = 3;
+
+    /** The shortest time in milliseconds to wait for a missing message before asking for it. */
+    public static final int NACK_MIN_DELAY_MS = 20;
+
+    /** The longest time in milliseconds to wait for a missing message before asking for it. */
+    public static final int NACK_MAX_DELAY_MS = 80;
+
+    /** The time in milliseconds to wait for a retransmission before asking again. */
+    public static final int NACK_RETRY_DELAY_MS = 250;
+
+    /** The number of users to track before removing the users without missing messages. */
+    private static final int MAX_SENDERS = 256;
+
+    private final Map<Integer, Sender> senders;
+    private final Random random;
+
+    @Nullable
+    private volatile MissingMessageListener listener;
+
+    public MissingMessageTracker() {
+        this.senders = new HashMap<>();
+        this.random = new Random();
+    }
+
+    /**
+     * Registers the listener to notify when messages are found to be missing.
+     *
+     * @param theListener The listener, or <code>null</code> to remove it.
+     */
+    public void registerMissingMessageListener(@Nullable final MissingMessageListener theListener) {
+        this.listener = theListener;
+    }
+
+    /**
+     * Registers a new main chat message, to find any messages skipped before it.
+     * The listener is notified if any messages were skipped.
+     *
+     * @param userCode The user code of the sender.
+     * @param sequenceNumber The sequence number of the message.
+     * @param window The window with the sequence numbers seen from the sender.
+     * @param now The current time, from {@link System#nanoTime()}.
+     */
+    public void messageArrived(final int userCode, final int sequenceNumber, final SequenceWindow window, final long now) {
+        Validate.notNull(window, "Sequence window can not be null");
+
+        final boolean skipped;
+
+        synchronized (this) {
+            skipped = findSkippedMessages(userCode, sequenceNumber, window, now);
+        }
+
+        final MissingMessageListener currentListener = listener;
+
+        if (skipped && currentListener != null) {
+            currentListener.messagesMissing();
+        }
+    }
+
+    private boolean findSkippedMessages(final int userCode, final int sequenceNumber, final SequenceWindow window,
+                                        final long now) {
+        final Sender sender = senders.get(userCode);
+
+        if (sender == null) {
+            addSender(userCode, sequenceNumber, window);
+            return false;
+        }
+
+        final int distance = sequenceNumber - sender.highest;
+
+        if (distance <= 0) {
+            sender.missing.remove(sequenceNumber);
+            return false;
+        }
+
+        final int firstMissing = distance > MAX_MISSING_MESSAGES ? sequenceNumber - MAX_MISSING_MESSAGES : sender.highest + 1;
+
+        for (int missingNumber = firstMissing; missingNumber != sequenceNumber; missingNumber++) {
+            sender.missing.put(missingNumber, new MissingMessage(now + getRandomDelay(NACK_MIN_DELAY_MS, NACK_MAX_DELAY_MS)));
+        }
+
+        removeOldestMissing(sender);
+        sender.highest = sequenceNumber;
+
+        return distance > 1;
+    }
+
+    /**
+     * Registers a NACK from another user, so this user waits for the retransmission instead of asking
+     * for the same messages.
+     *
+     * @param userCode The user code of the sender of the missing messages.
+     * @param sequenceNumbers The sequence numbers of the missing messages.
+     * @param now The current time, from {@link System#nanoTime()}.
+     */
+    public synchronized void nackArrived(final int userCode, final List<Integer> sequenceNumbers, final long now) {
+        Validate.notNull(sequenceNumbers, "Sequence numbers can not be null");
+
+        final Sender sender = senders.get(userCode);
+
+        if (sender == null) {
+            return;
+        }
+
+        for (final Integer sequenceNumber : sequenceNumbers) {
+            final MissingMessage missingMessage = sender.missing.get(sequenceNumber);
+
+            if (missingMessage != null) {
+                missingMessage.due = now + getRetryDelay();
+            }
+        }
+    }
+
+    /**
+     * Gets the missing messages it's time to ask for, and schedules the next attempt.
+     * Messages that have arrived since last time, or are asked for too many times, are forgotten.
+     *
+     * @param now The current time, from {@link System#nanoTime()}.
+     * @return The sequence numbers to ask for, by the user code of the sender.
+     */
+    public synchronized Map<Integer, List<Integer>> getDueNacks(final long now) {
+        final Map<Integer, List<Integer>> dueNacks = new HashMap<>();
+
+        for (final Map.Entry<Integer, Sender> entry : senders.entrySet()) {
+            final Sender sender = entry.getValue();
+            final Iterator<Map.Entry<Integer, MissingMessage>> missingMessages = sender.missing.entrySet().iterator();
+
+            while (missingMessages.hasNext()) {
+                final Map.Entry<Integer, MissingMessage> missingEntry = missingMessages.next();
+                final int sequenceNumber = missingEntry.getKey();
+                final MissingMessage missingMessage = missingEntry.getValue();
+
+                if (!sender.window.isMissing(sequenceNumber)) {
+                    missingMessages.remove();
+                }
+
+                else if (missingMessage.due - now <= 0) {
+                    if (missingMessage.attempts >= MAX_ATTEMPTS) {
+                        LOG.fine("Giving up on message %s from %s", sequenceNumber, entry.getKey());
+                        missingMessages.remove();
+                    }
+
+                    else {
+                        missingMessage.attempts++;
+                        missingMessage.due = now + getRetryDelay();
+                        addDueNack(dueNacks, entry.getKey(), sequenceNumber);
+                    }
+                }
+            }
+        }
+
+        return dueNacks;
+    }
+
+    /**
+     * Gets the number of missing messages from all the users.
+     *
+     * @return The number of missing messages.
+     */
+    public synchronized int getMissingMessages() {
+        int missingMessages = 0;
+
+        for (final Sender sender : senders.values()) {
+            missingMessages += sender.missing.size();
+        }
+
+        return missingMessages;
+    }
+
+    private void addSender(final int userCode, final int sequenceNumber, final SequenceWindow window) {
+        if (senders.size() >= MAX_SENDERS) {
+            final Iterator<Sender> iterator = senders.values().iterator();
+
+            while (iterator.hasNext()) {
+                if (iterator.next().missing.isEmpty()) {
+                    iterator.remove();
+                }
+            }
+        }
+
+        senders.put(userCode, new Sender(window, sequenceNumber));
+    }
+
+    private void removeOldestMissing(final Sender sender) {
+        final Iterator<Integer> iterator = sender.missing.keySet().iterator();
+
+        while (sender.missing.size() > MAX_MISSING_MESSAGES) {
+            iterator.next();
+            iterator.remove();
+        }
+    }
+
+    private void addDueNack(final Map<Integer, List<Integer>> dueNacks, final int userCode, final int sequenceNumber) {
+        List<Integer> sequenceNumbers = dueNacks.get(userCode);
+
+        if (sequenceNumbers == null) {
+            sequenceNumbers = new ArrayList<>();
+            dueNacks.put(userCode, sequenceNumbers);
+        }
+
+        sequenceNumbers.add(sequenceNumber);
+    }
+
+    private long getRetryDelay() {
+        return getRandomDelay(NACK_RETRY_DELAY_MS, NACK_RETRY_DELAY_MS + NACK_MAX_DELAY_MS);
+    }
+
+    private long getRandomDelay(final int minDelayMs, final int maxDelayMs) {
+        return TimeUnit.MILLISECONDS.toNanos(minDelayMs + random.nextInt(maxDelayMs - minDelayMs + 1));
+    }
+
+    /**
+     * The missing messages from one user.
+     */
+    private static class Sender {
+
+        private final SequenceWindow window;
+        private final LinkedHashMap<Integer, MissingMessage> missing;
+        private int highest;
+
+        Sender(final SequenceWindow window, final int highest) {
+            this.window = window;
+            this.highest = highest;
+            this.missing = new LinkedHashMap<>();
+        }
+    }
+
+    /**
+     * When to ask for a missing message, and how many times it's asked for already.
+     */
+    private static class MissingMessage {
+
+        private long due;
+        private int attempts;
+
+        MissingMessage(final long due) {
+            this.due = due;
+        }
+    }
+}
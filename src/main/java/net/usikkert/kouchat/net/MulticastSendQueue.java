@@ -0,0 +1,310 @@
+
+/***************************************************************************
+ *   Copyright 2006-2018 by Christian Ihle                                 *
+ *   contact@kouchat.net                                                   *
+ *                                                                         *
+ *   This file is part of KouChat.                                         *
+ *                                                                         *
+ *   KouChat is free software; you can redistribute it and/or modify       *
+ *   it under the terms of the GNU Lesser General Public License as        *
+ *   published by the Free Software Foundation, either version 3 of        *
+ *   the License, or (at your option) any later version.                   *
+ *                                                                         *
+ *   KouChat is distributed in the hope that it will be useful,            *
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of        *
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU      *
+ *   Lesser General Public License for more details.                       *
+ *                                                                         *
+ *   You should have received a copy of the GNU Lesser General Public      *
+ *   License along with KouChat.                                           *
+ *   If not, see <http://www.gnu.org/licenses/>.                           *
+ ***************************************************************************/
+
+package net.usikkert.kouchat.net;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import net.usikkert.kouchat.Constants;
+import net.usikkert.kouchat.util.Validate;
+
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * A queue of multicast messages, that combines small messages into a single packet,
+ * and paces the packets so no more than a given number are sent each second.
+ *
+ * <p>Messages added with <code>combine</code> set are sent together with the other combinable
+ * messages waiting in the queue, as long as they fit in {@link Constants#NETWORK_PACKET_SIZE}.
+ * A packet with several messages starts with {@link #MULTI_MESSAGE}, followed by each message
+ * prefixed with its length in bytes as an unsigned two byte number. The messages can be text
+ * or binary messages. Only clients that support {@link NetworkCapabilities#MULTI_MESSAGES}
+ * understand these packets. A message that can not be combined with any other message
+ * is sent unchanged.</p>
+ *
+ * <p>Messages are never delayed to wait for more messages to combine with. They are only
+ * combined when they are already waiting, because the pace limit was reached, or because
+ * the network was busy.</p>
+ *
+ * <p>This class is thread safe.</p>
+ *
+ * @author Christian Ihle
+ */
+public class MulticastSendQueue {
+
+    /** The first byte of a packet with several messages. */
+    public static final byte MULTI_MESSAGE = 0x02;
+
+    /** The number of bytes used for the length of each message in a packet with several messages. */
+    public static final int LENGTH_SIZE = 2;
+
+    /** Max number of messages waiting to be sent. Adding fails if the queue is full. */
+    private static final int MAX_QUEUED_MESSAGES = 1000;
+
+    /** How many milliseconds worth of packets can be sent at once, before pacing starts. */
+    private static final int BURST_MILLIS = 200;
+
+    private final Deque<QueuedMessage> queue;
+
+    /** Nanoseconds between each packet, or 0 if packets are not paced. */
+    private final long packetInterval;
+
+    /** How far ahead of the pace a packet can be sent, in nanoseconds. */
+    private final long burstTolerance;
+
+    /** The time when the next packet is due, if sending at the exact pace. */
+    private long nextPacketTime;
+
+    /** If any packets have been sent, so {@link #nextPacketTime} is set. */
+    private boolean packetSent;
+
+    /** The packet returned by {@link #peek(long)}, until it's removed. */
+    @Nullable
+    private Packet peekedPacket;
+
+    /**
+     * Constructor.
+     *
+     * @param packetsPerSecond Max number of packets to send per second, or 0 to send without pacing.
+     */
+    public MulticastSendQueue(final int packetsPerSecond) {
+        if (packetsPerSecond < 0) {
+            throw new IllegalArgumentException("Packets per second can not be negative");
+        }
+
+        queue = new ArrayDeque<>();
+
+        if (packetsPerSecond > 0) {
+            packetInterval = TimeUnit.SECONDS.toNanos(1) / packetsPerSecond;
+            final long burstPackets = Math.max(1, packetsPerSecond * BURST_MILLIS / 1000);
+            burstTolerance = packetInterval * (burstPackets - 1);
+        }
+
+        else {
+            packetInterval = 0;
+            burstTolerance = 0;
+        }
+    }
+
+    /**
+     * Adds a message to the end of the queue.
+     *
+     * @param encodedMessage The bytes of the message to send.
+     * @param message The message as text, for logging.
+     * @param combine If the message can be sent in the same packet as other messages.
+     * @return If the message was added, or <code>false</code> if the queue was full.
+     */
+    public synchronized boolean offer(final byte[] encodedMessage, final String message, final boolean combine) {
+        Validate.notNull(encodedMessage, "Encoded message can not be null");
+
+        if (queue.size() >= MAX_QUEUED_MESSAGES) {
+            return false;
+        }
+
+        queue.add(new QueuedMessage(encodedMessage, message, combine));
+
+        return true;
+    }
+
+    /**
+     * Gets the next packet to send, without removing it from the queue.
+     *
+     * <p>The same packet is returned until {@link #remove(long)} is called, even if more
+     * messages are added in the mean time.</p>
+     *
+     * @param now The current time, from {@link System#nanoTime()}.
+     * @return The next packet, or <code>null</code> if the queue is empty, or it's too soon
+     *         to send another packet.
+     */
+    @Nullable
+    public synchronized Packet peek(final long now) {
+        if (peekedPacket == null && !queue.isEmpty() && getNanosUntilNextPacket(now) == 0) {
+            peekedPacket = createPacket();
+        }
+
+        return peekedPacket;
+    }
+
+    /**
+     * Removes the packet returned by {@link #peek(long)} from the queue, after it was sent.
+     *
+     * @param now The current time, from {@link System#nanoTime()}.
+     */
+    public synchronized void remove(final long now) {
+        if (peekedPacket == null) {
+            return;
+        }
+
+        peekedPacket = null;
+
+        if (packetInterval > 0) {
+            if (!packetSent || nextPacketTime - now < 0) {
+                nextPacketTime = now;
+            }
+
+            nextPacketTime += packetInterval;
+            packetSent = true;
+        }
+    }
+
+    /**
+     * Gets the number of nanoseconds until the next packet can be sent.
+     *
+     * @param now The current time, from {@link System#nanoTime()}.
+     * @return Nanoseconds to wait, or 0 if a packet can be sent now, or there is nothing to send.
+     */
+    public synchronized long getNanosUntilNextPacket(final long now) {
+        if (!packetSent || peekedPacket == null && queue.isEmpty()) {
+            return 0;
+        }
+
+        return Math.max(0, nextPacketTime - burstTolerance - now);
+    }
+
+    /**
+     * Gets the number of messages waiting to be sent.
+     *
+     * @return The number of messages in the queue.
+     */
+    public synchronized int size() {
+        return queue.size() + (peekedPacket != null ? peekedPacket.getMessages().size() : 0);
+    }
+
+    /**
+     * Removes all the messages from the queue.
+     */
+    public synchronized void clear() {
+        queue.clear();
+        peekedPacket = null;
+    }
+
+    private Packet createPacket() {
+        final QueuedMessage first = queue.poll();
+
+        if (!first.isCombine() || !fitsWithNext(1 + LENGTH_SIZE + first.getLength())) {
+            return new Packet(ByteBuffer.wrap(first.getEncodedMessage()),
+                              Collections.singletonList(first.getMessage()));
+        }
+
+        final List<QueuedMessage> messages = new ArrayList<>();
+        messages.add(first);
+        int packetSize = 1 + LENGTH_SIZE + first.getLength();
+
+        while (fitsWithNext(packetSize)) {
+            final QueuedMessage next = queue.poll();
+            messages.add(next);
+            packetSize += LENGTH_SIZE + next.getLength();
+        }
+
+        final ByteBuffer buffer = ByteBuffer.allocate(packetSize);
+        final List<String> textMessages = new ArrayList<>(messages.size());
+        buffer.put(MULTI_MESSAGE);
+
+        for (final QueuedMessage message : messages) {
+            buffer.putShort((short) message.getLength());
+            buffer.put(message.getEncodedMessage());
+            textMessages.add(message.getMessage());
+        }
+
+        buffer.flip();
+
+        return new Packet(buffer, textMessages);
+    }
+
+    private boolean fitsWithNext(final int packetSize) {
+        final QueuedMessage next = queue.peek();
+
+        return next != null
+                && next.isCombine()
+                && packetSize + LENGTH_SIZE + next.getLength() <= Constants.NETWORK_PACKET_SIZE;
+    }
+
+    /**
+     * A packet ready to be sent, with one or more messages.
+     */
+    public static class Packet {
+
+        private final ByteBuffer buffer;
+        private final List<String> messages;
+
+        Packet(final ByteBuffer buffer, final List<String> messages) {
+            this.buffer = buffer;
+            this.messages = messages;
+        }
+
+        /**
+         * Gets the bytes of the packet.
+         *
+         * @return The bytes to send.
+         */
+        public ByteBuffer getBuffer() {
+            return buffer;
+        }
+
+        /**
+         * Gets the messages in the packet as text.
+         *
+         * @return The messages in the packet.
+         */
+        public List<String> getMessages() {
+            return messages;
+        }
+    }
+
+    /**
+     * A message waiting to be sent.
+     */
+    private static class QueuedMessage {
+
+        private final byte[] encodedMessage;
+        private final String message;
+        private final boolean combine;
+
+        QueuedMessage(final byte[] encodedMessage, final String message, final boolean combine) {
+            this.encodedMessage = encodedMessage;
+            this.message = message;
+            this.combine = combine;
+        }
+
+        public byte[] getEncodedMessage() {
+            return encodedMessage;
+        }
+
+        public int getLength() {
+            return encodedMessage.length;
+        }
+
+        public String getMessage() {
+            return message;
+        }
+
+        public boolean isCombine() {
+            return combine;
+        }
+    }
+}
@@ -0,0 +1,123 @@
+
+/***************************************************************************
+ *   Copyright 2006-2018 by Christian Ihle                                 *
+ *   contact@kouchat.net                                                   *
+ *                                                                         *
+ *   This file is part of KouChat.                                         *
+ *                                                                         *
+ *   KouChat is free software; you can redistribute it and/or modify       *
+ *   it under the terms of the GNU Lesser General Public License as        *
+ *   published by the Free Software Foundation, either version 3 of        *
+ *   the License, or (at your option) any later version.                   *
+ *                                                                         *
+ *   KouChat is distributed in the hope that it will be useful,            *
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of        *
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU      *
+ *   Lesser General Public License for more details.                       *
+ *                                                                         *
+ *   You should have received a copy of the GNU Lesser General Public      *
+ *   License along with KouChat.                                           *
+ *   If not, see <http://www.gnu.org/licenses/>.                           *
+ ***************************************************************************/
+
+package net.usikkert.kouchat.net;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import net.usikkert.kouchat.misc.User;
+import net.usikkert.kouchat.util.Validate;
+
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * A request to retransmit lost multicast messages, as described in {@link MissingMessageTracker}.
+ *
+ * <p>The message looks like this: <code>code!NACK#nick:userCode:1,2,3</code>, where <code>code</code> and
+ * <code>nick</code> is the user asking, <code>userCode</code> is the user that sent the lost messages,
+ * and the rest is the sequence numbers of the lost messages.</p>
+ *
+ * @author Christian Ihle
+ */
+public class NackMessage {
+
+    private final int userCode;
+    private final List<Integer> sequenceNumbers;
+
+    /**
+     * Constructor.
+     *
+     * @param userCode The user code of the user that sent the lost messages.
+     * @param sequenceNumbers The sequence numbers of the lost messages.
+     */
+    public NackMessage(final int userCode, final List<Integer> sequenceNumbers) {
+        Validate.notNull(sequenceNumbers, "Sequence numbers can not be null");
+
+        this.userCode = userCode;
+        this.sequenceNumbers = Collections.unmodifiableList(new ArrayList<>(sequenceNumbers));
+    }
+
+    public int getUserCode() {
+        return userCode;
+    }
+
+    public List<Integer> getSequenceNumbers() {
+        return sequenceNumbers;
+    }
+
+    /**
+     * Creates the network message for this NACK.
+     *
+     * @param me The user asking for the lost messages.
+     * @return The network message.
+     */
+    public String toMessage(final User me) {
+        Validate.notNull(me, "Me can not be null");
+
+        final StringBuilder message = new StringBuilder();
+        message.append(me.getCode()).append('!').append(NetworkMessageType.NACK).append('#')
+                .append(me.getNick()).append(':').append(userCode).append(':');
+
+        for (int i = 0; i < sequenceNumbers.size(); i++) {
+            if (i > 0) {
+                message.append(',');
+            }
+
+            message.append(sequenceNumbers.get(i));
+        }
+
+        return message.toString();
+    }
+
+    /**
+     * Reads a NACK from a network message.
+     *
+     * @param message The network message.
+     * @return The NACK, or <code>null</code> if the message is not a valid NACK.
+     */
+    @Nullable
+    public static NackMessage parse(final String message) {
+        final int sequenceNumbersStart = message.lastIndexOf(':') + 1;
+        final int userCodeStart = message.lastIndexOf(':', sequenceNumbersStart - 2) + 1;
+
+        if (userCodeStart <= 0 || !message.contains("!" + NetworkMessageType.NACK + "#")) {
+            return null;
+        }
+
+        try {
+            final int userCode = Integer.parseInt(message.substring(userCodeStart, sequenceNumbersStart - 1));
+            final List<Integer> sequenceNumbers = new ArrayList<>();
+
+            for (final String sequenceNumber : message.substring(sequenceNumbersStart).split(",")) {
+                sequenceNumbers.add(Integer.valueOf(sequenceNumber));
+            }
+
+            return new NackMessage(userCode, sequenceNumbers);
+        }
+
+        catch (final NumberFormatException e) {
+            return null;
+        }
+    }
+}
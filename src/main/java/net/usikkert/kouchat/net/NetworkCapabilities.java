@@ -0,0 +1,63 @@
+
+/***************************************************************************
+ *   Copyright 2006-2018 by Christian Ihle                                 *
+ *   contact@kouchat.net                                                   *
+ *                                                                         *
+ *   This file is part of KouChat.                                         *
+ *                                                                         *
+ *   KouChat is free software; you can redistribute it and/or modify       *
+ *   it under the terms of the GNU Lesser General Public License as        *
+ *   published by the Free Software Foundation, either version 3 of        *
+ *   the License, or (at your option) any later version.                   *
+ *                                                                         *
+ *   KouChat is distributed in the hope that it will be useful,            *
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of        *
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU      *
+ *   Lesser General Public License for more details.                       *
+ *                                                                         *
+ *   You should have received a copy of the GNU Lesser General Public      *
+ *   License along with KouChat.                                           *
+ *   If not, see <http://www.gnu.org/licenses/>.                           *
+ ***************************************************************************/
+
+package net.usikkert.kouchat.net;
+
+/**
+ * Network features a client can support in addition to the text messages all clients understand.
+ *
+ * <p>The features are bits in a mask, which the clients send to each other in the
+ * {@link NetworkMessageType#CLIENT} message. A feature should only be used when talking
+ * to clients that have said they support it.</p>
+ *
+ * @author Christian Ihle
+ */
+public interface NetworkCapabilities {
+
+    /** Can receive multicast messages encoded by {@link BinaryMessageEncoder}. */
+    int BINARY_MESSAGES = 1;
+
+    /** Can receive multicast packets with several messages, as described in {@link MulticastSendQueue}. */
+    int MULTI_MESSAGES = 2;
+
+    /** Can receive multicast messages split into several packets by {@link MessageFragmenter}. */
+    int FRAGMENTED_MESSAGES = 4;
+
+    /** Can receive multicast messages compressed by {@link MessageCompressor}. */
+    int COMPRESSED_MESSAGES = 8;
+
+    /** Can send and receive tcp messages as frames, as described in {@link net.usikkert.kouchat.net.tcp.TCPFrameCodec}. */
+    int FRAMED_TCP_MESSAGES = 16;
+
+    /** Can receive multicast and tcp messages with sequence numbers from {@link MessageSequencer}. */
+    int SEQUENCED_MESSAGES = 32;
+
+    /** Can ask for and retransmit lost multicast messages, as described in {@link MissingMessageTracker}. */
+    int RELIABLE_MULTICAST = 64;
+
+    /** Can receive chat messages with a send timestamp, used for measuring latency in {@link LatencyStatistics}. */
+    int LATENCY_TIMESTAMPS = 128;
+
+    /** All the features supported by this client. */
+    int SUPPORTED = BINARY_MESSAGES | MULTI_MESSAGES | FRAGMENTED_MESSAGES | COMPRESSED_MESSAGES |
+            FRAMED_TCP_MESSAGES | SEQUENCED_MESSAGES | RELIABLE_MULTICAST | LATENCY_TIMESTAMPS;
+}
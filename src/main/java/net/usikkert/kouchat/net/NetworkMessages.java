@@ -135,14 +135,18 @@ public class NetworkMessages {
     /**
      * Sends a normal chat message, that is part of the main chat.
      *
+     * <p>The message gets a send timestamp, as described in {@link ColorField}, if
+     * {@link Settings#isLatencyTimestamps()} is enabled and all the users support it.</p>
+     *
      * <p>Note: the network will be checked, and the user notified if this fails!</p>
      *
      * @param chatMsg The message for the main chat.
      * @throws CommandException If the message was not sent successfully.
      */
     public void sendChatMessage(final String chatMsg) throws CommandException {
+        final long sendTime = networkService.isLatencyTimestampsEnabled() ? System.currentTimeMillis() : -1;
         final String msg = createMessage(MSG) +
-                "[" + settings.getOwnColor() + "]" +
+                ColorField.create(settings.getOwnColor(), sendTime) +
                 chatMsg;
 
         final boolean sent = networkService.sendMessageToAllUsers(msg);
@@ -318,6 +322,7 @@ public class NetworkMessages {
      *   <li>Operating system.</li>
      *   <li>Port to connect to for private chat.</li>
      *   <li>Port to connect to for tcp chat.</li>
+     *   <li>Supported network features, from {@link NetworkCapabilities}.</li>
      * </ul>
      */
     public void sendClient() {
@@ -326,7 +331,8 @@ public class NetworkMessages {
                 "[" + (System.currentTimeMillis() - me.getLogonTime()) + "]" +
                 "{" + me.getOperatingSystem() + "}" +
                 "<" + me.getPrivateChatPort() + ">" +
-                "/" + me.getTcpChatPort() + "\\";
+                "/" + me.getTcpChatPort() + "\\" +
+                "|" + NetworkCapabilities.SUPPORTED + "|";
 
         networkService.sendMessageToAllUsers(msg);
     }
@@ -334,6 +340,9 @@ public class NetworkMessages {
     /**
      * Sends a private message to a user.
      *
+     * <p>The message gets a send timestamp if {@link Settings#isLatencyTimestamps()} is enabled
+     * and the user supports it.</p>
+     *
      * <p>Note: the network will be checked, and the user notified if this fails!</p>
      *
      * @param privMsg The private message to send.
@@ -341,9 +350,11 @@ public class NetworkMessages {
      * @throws CommandException If the message was not sent successfully.
      */
     public void sendPrivateMessage(final String privMsg, final User user) throws CommandException {
+        final boolean timestamp = settings.isLatencyTimestamps() && user.hasCapability(NetworkCapabilities.LATENCY_TIMESTAMPS);
+        final long sendTime = timestamp ? System.currentTimeMillis() : -1;
         final String msg = createMessage(PRIVMSG) +
                 "(" + user.getCode() + ")" +
-                "[" + settings.getOwnColor() + "]" +
+                ColorField.create(settings.getOwnColor(), sendTime) +
                 privMsg;
 
         final boolean sent = networkService.sendMessageToUser(msg, user);
@@ -22,21 +22,39 @@
 
 package net.usikkert.kouchat.net;
 
-import java.net.NetworkInterface;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.Timer;
+import java.util.TimerTask;
+import java.util.logging.Level;
 import java.util.logging.Logger;
 
+import net.usikkert.kouchat.Constants;
+
+import net.usikkert.kouchat.event.BinaryReceiverListener;
+import net.usikkert.kouchat.event.MissingMessageListener;
 import net.usikkert.kouchat.event.NetworkConnectionListener;
 import net.usikkert.kouchat.event.ReceiverListener;
 import net.usikkert.kouchat.misc.Controller;
-import net.usikkert.kouchat.misc.ErrorHandler;
 import net.usikkert.kouchat.misc.User;
-import net.usikkert.kouchat.net.tcp.TCPNetworkService;
+import net.usikkert.kouchat.net.tcp.TCPSendQueue;
+import net.usikkert.kouchat.net.transport.Transport;
 import net.usikkert.kouchat.settings.Settings;
 import net.usikkert.kouchat.util.Validate;
 
+import org.jetbrains.annotations.Nullable;
+
 /**
  * This class has services for connecting to the network.
  *
+ * <p>The messages are encoded, decoded and deduplicated here, while the {@link Transport} moves the packets
+ * and tcp messages between the users.</p>
+ *
  * @author Christian Ihle
  */
 public class NetworkService implements NetworkConnectionListener {
@@ -44,27 +62,64 @@ public class NetworkService implements NetworkConnectionListener {
     /** The logger. */
     private static final Logger LOG = Logger.getLogger(NetworkService.class.getName());
 
-    /** The thread responsible for keeping the network connection up. */
-    private final ConnectionWorker connectionWorker;
+    /** How often to check for lost messages to ask for while any are missing, in milliseconds. */
+    private static final long NACK_TIMER_INTERVAL = MissingMessageTracker.NACK_MIN_DELAY_MS / 2;
 
-    /** The multicast message sender. */
-    private final MessageSender messageSender;
+    private static final Charset MESSAGE_CHARSET = Charset.forName(Constants.MESSAGE_CHARSET);
 
-    /** The multicast message receiver. */
-    private final MessageReceiver messageReceiver;
+    /** Messages used for discovering clients, that every client must be able to read. */
+    private static final Set<String> DISCOVERY_MESSAGE_TYPES = Collections.unmodifiableSet(new HashSet<>(Arrays.asList(
+            NetworkMessageType.LOGON, NetworkMessageType.EXPOSE, NetworkMessageType.EXPOSING,
+            NetworkMessageType.CLIENT, NetworkMessageType.LOGOFF, NetworkMessageType.NICKCRASH)));
 
-    /** The private message sender. */
-    private final UDPSender udpSender;
+    /** The controller, for checking what the other users support. */
+    private final Controller controller;
 
-    /** The private message receiver. */
-    private final UDPReceiver udpReceiver;
+    /** The application settings. */
+    private final Settings settings;
 
-    /** The network service for tcp connections. */
-    private final TCPNetworkService tcpNetworkService;
+    /** Moves the packets and tcp messages between the users. */
+    private final Transport transport;
+
+    /** Decodes the packets from the transport and gives the messages to the listeners. */
+    private final PacketReceiver packetReceiver;
 
     /** Proxy for deduplicating multicast and tcp messages. */
     private final MessageDeduplicator messageDeduplicator;
 
+    /** Encoder for sending messages as binary to users that support it. */
+    private final BinaryMessageEncoder binaryMessageEncoder;
+
+    /** Splits multicast messages that are too large for one packet, for users that support it. */
+    private final MessageFragmenter messageFragmenter;
+
+    /** Counters for the compressed messages sent and received. */
+    private final CompressionStatistics compressionStatistics;
+    private final LatencyStatistics latencyStatistics;
+    private final TrafficStatistics trafficStatistics;
+
+    /** Compresses large multicast messages, for users that support it. */
+    private final MessageCompressor messageCompressor;
+
+    /** Numbers the main chat messages, so users that support it can drop the second copy of each message. */
+    private final MessageSequencer messageSequencer;
+
+    /** Numbers the private messages, separately from the main chat messages. */
+    private final MessageSequencer privateMessageSequencer;
+
+    /** The last main chat messages sent, for retransmitting to users that lost them. */
+    private final RetransmitBuffer retransmitBuffer;
+
+    /** Finds lost main chat messages from other users. */
+    private final MissingMessageTracker missingMessageTracker;
+
+    /** Asks for lost messages at regular intervals while the network is up, and messages are missing. */
+    @Nullable
+    private Timer nackTimer;
+
+    /** If a check for lost messages is scheduled on the NACK timer. */
+    private boolean nackCheckScheduled;
+
     /** If private chat should be enabled. */
     private final boolean privateChatEnabled;
 
@@ -73,58 +128,113 @@ public class NetworkService implements NetworkConnectionListener {
      *
      * @param controller The controller to use.
      * @param settings The settings to use.
-     * @param errorHandler The error handler to use.
+     * @param transport The transport to send and receive messages with.
      */
-    public NetworkService(final Controller controller, final Settings settings, final ErrorHandler errorHandler) {
+    public NetworkService(final Controller controller, final Settings settings, final Transport transport) {
         Validate.notNull(controller, "Controller can not be null");
         Validate.notNull(settings, "Settings can not be null");
-        Validate.notNull(errorHandler, "Error handler can not be null");
+        Validate.notNull(transport, "Transport can not be null");
 
         LOG.fine("Initializing network");
 
+        this.controller = controller;
+        this.settings = settings;
+        this.transport = transport;
         privateChatEnabled = !settings.isNoPrivateChat();
 
-        messageReceiver = new MessageReceiver(errorHandler);
-        messageSender = new MessageSender(errorHandler);
-        connectionWorker = new ConnectionWorker(settings, errorHandler);
-        tcpNetworkService = new TCPNetworkService(controller, settings, errorHandler);
-        messageDeduplicator = new MessageDeduplicator(controller);
-
-        if (privateChatEnabled) {
-            udpReceiver = new UDPReceiver(settings, errorHandler);
-            udpSender = new UDPSender(errorHandler);
-        }
-
-        else {
+        compressionStatistics = new CompressionStatistics();
+        messageCompressor = new MessageCompressor(compressionStatistics);
+        latencyStatistics = new LatencyStatistics();
+        trafficStatistics = transport.getTrafficStatistics();
+        packetReceiver = new PacketReceiver(compressionStatistics, latencyStatistics, controller.getFlightRecorder());
+        missingMessageTracker = new MissingMessageTracker();
+        messageDeduplicator = new MessageDeduplicator(controller, missingMessageTracker, latencyStatistics, trafficStatistics);
+        binaryMessageEncoder = new BinaryMessageEncoder();
+        messageFragmenter = new MessageFragmenter();
+        messageSequencer = new MessageSequencer();
+        privateMessageSequencer = new MessageSequencer();
+        retransmitBuffer = new RetransmitBuffer(Constants.NETWORK_RETRANSMIT_BUFFER_SIZE);
+
+        messageDeduplicator.registerNackReceiverListener(new ReceiverListener() {
+            @Override
+            public void messageArrived(final String message, final String ipAddress) {
+                nackArrived(message);
+            }
+        });
+
+        missingMessageTracker.registerMissingMessageListener(new MissingMessageListener() {
+            @Override
+            public void messagesMissing() {
+                scheduleNackCheck();
+            }
+        });
+
+        if (!privateChatEnabled) {
             LOG.fine("Private chat is disabled");
-            udpReceiver = null;
-            udpSender = null;
         }
 
-        connectionWorker.registerNetworkConnectionListener(this);
+        transport.registerPacketListener(packetReceiver);
+        transport.registerNetworkConnectionListener(this);
     }
 
     /**
      * Starts the thread responsible for connecting to the network.
      */
     public void connect() {
-        connectionWorker.start();
+        transport.start();
     }
 
     /**
      * Stops the thread responsible for connecting to the network.
      */
     public void disconnect() {
-        connectionWorker.stop();
+        transport.stop();
     }
 
     /**
-     * Gets the connection worker.
+     * Gets the counters for the compressed messages sent and received.
      *
-     * @return The connection worker.
+     * @return The compression statistics.
      */
-    public ConnectionWorker getConnectionWorker() {
-        return connectionWorker;
+    public CompressionStatistics getCompressionStatistics() {
+        return compressionStatistics;
+    }
+
+    /**
+     * Gets the latencies of the chat messages received.
+     *
+     * @return The latency statistics.
+     */
+    public LatencyStatistics getLatencyStatistics() {
+        return latencyStatistics;
+    }
+
+    /**
+     * Gets the counters for the network traffic, and the messages handled by the network code.
+     *
+     * @return The traffic statistics.
+     */
+    public TrafficStatistics getTrafficStatistics() {
+        return trafficStatistics;
+    }
+
+    /**
+     * Checks if chat messages to all the users should have a send timestamp, for measuring the latency.
+     *
+     * @return If send timestamps are enabled, and supported by all the users.
+     */
+    public boolean isLatencyTimestampsEnabled() {
+        return settings.isLatencyTimestamps()
+                && controller.isCapabilitySupportedByAllUsers(NetworkCapabilities.LATENCY_TIMESTAMPS);
+    }
+
+    /**
+     * Gets the queues of tcp messages waiting to be sent to each user.
+     *
+     * @return The send queues, by user.
+     */
+    public Map<User, TCPSendQueue> getTcpSendQueues() {
+        return transport.getTcpSendQueues();
     }
 
     /**
@@ -133,7 +243,7 @@ public class NetworkService implements NetworkConnectionListener {
      * @return If the connection thread is alive.
      */
     public boolean isConnectionWorkerAlive() {
-        return connectionWorker.isAlive();
+        return transport.isAlive();
     }
 
     /**
@@ -142,7 +252,7 @@ public class NetworkService implements NetworkConnectionListener {
      * @return If the network is up.
      */
     public boolean isNetworkUp() {
-        return connectionWorker.isNetworkUp();
+        return transport.isNetworkUp();
     }
 
     /**
@@ -151,7 +261,7 @@ public class NetworkService implements NetworkConnectionListener {
      * @param listener The listener to register.
      */
     public void registerNetworkConnectionListener(final NetworkConnectionListener listener) {
-        connectionWorker.registerNetworkConnectionListener(listener);
+        transport.registerNetworkConnectionListener(listener);
     }
 
     /**
@@ -161,8 +271,18 @@ public class NetworkService implements NetworkConnectionListener {
      */
     public void registerMainChatMessageReceiverListener(final ReceiverListener listener) {
         messageDeduplicator.registerMainChatReceiverListener(listener);
-        messageReceiver.registerReceiverListener(messageDeduplicator);
-        tcpNetworkService.registerReceiverListener(messageDeduplicator);
+        packetReceiver.registerMainChatReceiverListener(messageDeduplicator);
+        transport.registerTcpReceiverListener(messageDeduplicator);
+    }
+
+    /**
+     * Register a listener for incoming binary main chat messages from the network.
+     *
+     * @param listener The listener to register.
+     */
+    public void registerMainChatBinaryReceiverListener(final BinaryReceiverListener listener) {
+        messageDeduplicator.registerMainChatBinaryReceiverListener(listener);
+        packetReceiver.registerMainChatBinaryReceiverListener(messageDeduplicator);
     }
 
     /**
@@ -173,32 +293,67 @@ public class NetworkService implements NetworkConnectionListener {
     public void registerPrivateChatReceiverListener(final ReceiverListener listener) {
         if (privateChatEnabled) {
             messageDeduplicator.registerPrivateChatReceiverListener(listener);
-            udpReceiver.registerReceiverListener(messageDeduplicator);
+            packetReceiver.registerPrivateChatReceiverListener(messageDeduplicator);
         }
     }
 
     /**
      * Send a message to all users.
      *
+     * <p>The multicast message is sent as binary if enabled in the settings, and all the users support it.
+     * It's combined with other waiting multicast messages in a single packet if all the users support it,
+     * unless it's a message used for discovering clients. Large messages are compressed if enabled in the settings,
+     * and a message that is too large for a single packet is split into fragments, if all the users support it.
+     * The tcp message is always sent as text. Both copies get the same sequence number if all the users
+     * support it, unless it's a message used for discovering clients. The last numbered messages are kept,
+     * so they can be retransmitted on multicast to users that lost them.</p>
+     *
      * @param message The message to send.
      * @return If the message was sent or not.
      */
     public boolean sendMessageToAllUsers(final String message) {
-        tcpNetworkService.sendMessageToAll(message);
-        return messageSender.send(message);
+        if (isDiscoveryMessage(message)) {
+            transport.sendTcpMessageToAll(message);
+            return transport.sendMessageToAll(message, false);
+        }
+
+        final int capabilities = controller.getCapabilitiesSupportedByAllUsers();
+
+        if (!isSupported(capabilities, NetworkCapabilities.SEQUENCED_MESSAGES)) {
+            transport.sendTcpMessageToAll(message);
+            return sendMessageToMulticast(message, false, 0, capabilities);
+        }
+
+        final int sequenceNumber = messageSequencer.nextSequenceNumber();
+        retransmitBuffer.add(sequenceNumber, message);
+        transport.sendTcpMessageToAll(messageSequencer.addSequenceNumber(message, sequenceNumber));
+
+        return sendMessageToMulticast(message, true, sequenceNumber, capabilities);
     }
 
     /**
      * Send a message to a single user.
      *
+     * <p>The message is sent with both tcp and udp. Both copies get the same sequence number
+     * if the user supports it.</p>
+     *
      * @param message The message to send.
      * @param user The user to send the message to.
      * @return If the message was sent or not.
      */
     public boolean sendMessageToUser(final String message, final User user) {
         if (privateChatEnabled) {
-            tcpNetworkService.sendMessageToUser(message, user);
-            return udpSender.send(message, user.getIpAddress(), user.getPrivateChatPort());
+            final String messageToSend;
+
+            if (user.hasCapability(NetworkCapabilities.SEQUENCED_MESSAGES)) {
+                final int sequenceNumber = privateMessageSequencer.nextSequenceNumber();
+                messageToSend = privateMessageSequencer.addSequenceNumber(message, sequenceNumber);
+            } else {
+                messageToSend = message;
+            }
+
+            transport.sendTcpMessageToUser(messageToSend, user);
+            return transport.sendMessageToUser(messageToSend, user);
         }
 
         else {
@@ -211,24 +366,17 @@ public class NetworkService implements NetworkConnectionListener {
      * network connection up.
      */
     public void checkNetwork() {
-        connectionWorker.checkNetwork();
+        transport.checkNetwork();
     }
 
     /**
-     * Stops all senders and receivers.
+     * Stops asking for lost messages.
      *
      * {@inheritDoc}
      */
     @Override
     public void networkWentDown(final boolean silent) {
-        if (privateChatEnabled) {
-            udpSender.stopSender();
-            udpReceiver.stopReceiver();
-        }
-
-        messageSender.stopSender();
-        messageReceiver.stopReceiver();
-        tcpNetworkService.stopService();
+        stopNackTimer();
     }
 
     @Override
@@ -237,20 +385,240 @@ public class NetworkService implements NetworkConnectionListener {
     }
 
     /**
-     * Starts all senders and receivers.
+     * Starts asking for lost messages.
      *
      * {@inheritDoc}
      */
     @Override
     public void networkCameUp(final boolean silent) {
-        if (privateChatEnabled) {
-            udpSender.startSender();
-            udpReceiver.startReceiver();
+        startNackTimer();
+    }
+
+    /**
+     * Sends a main chat message on multicast. Sequenced messages are sent with the sequence number
+     * in front of the text or binary message.
+     */
+    private boolean sendMessageToMulticast(final String message, final boolean sequence, final int sequenceNumber,
+                                           final int capabilities) {
+        final String textMessage = sequence ? messageSequencer.addSequenceNumber(message, sequenceNumber) : message;
+        final boolean combine = isSupported(capabilities, NetworkCapabilities.MULTI_MESSAGES);
+        byte[] binaryMessage = encodeBinaryMessage(message, capabilities);
+
+        if (binaryMessage != null && sequence) {
+            binaryMessage = messageSequencer.addSequenceNumber(binaryMessage, sequenceNumber);
+        }
+
+        final byte[] encodedMessage = binaryMessage != null ? binaryMessage : encodeLargeTextMessage(textMessage);
+
+        if (encodedMessage == null) {
+            return transport.sendMessageToAll(textMessage, combine);
+        }
+
+        final byte[] compressedMessage = compressMessage(encodedMessage, capabilities);
+        final byte[] messageToSend = compressedMessage != null ? compressedMessage : encodedMessage;
+
+        if (messageToSend.length > Constants.NETWORK_PACKET_SIZE
+                && isSupported(capabilities, NetworkCapabilities.FRAGMENTED_MESSAGES)) {
+            return sendFragmentsToAll(messageToSend, message);
+        }
+
+        if (messageToSend == binaryMessage || messageToSend == compressedMessage) {
+            return transport.sendBinaryMessageToAll(messageToSend, message, combine);
+        }
+
+        return transport.sendMessageToAll(textMessage, combine);
+    }
+
+    /**
+     * Retransmits the messages a user asked for, or waits for the retransmission if another user
+     * asked for messages this user also lost.
+     */
+    private void nackArrived(final String message) {
+        final NackMessage nackMessage = NackMessage.parse(message);
+        trafficStatistics.recordMessageType(NetworkMessageType.NACK);
+
+        if (nackMessage == null) {
+            LOG.log(Level.WARNING, "Invalid NACK message: " + message);
+            trafficStatistics.recordParseFailure();
+            return;
+        }
+
+        final long now = System.nanoTime();
+
+        if (nackMessage.getUserCode() != settings.getMe().getCode()) {
+            missingMessageTracker.nackArrived(nackMessage.getUserCode(), nackMessage.getSequenceNumbers(), now);
+            return;
+        }
+
+        final int capabilities = controller.getCapabilitiesSupportedByAllUsers();
+
+        for (final int sequenceNumber : nackMessage.getSequenceNumbers()) {
+            final String messageToRetransmit = retransmitBuffer.getMessageToRetransmit(sequenceNumber, now);
+
+            if (messageToRetransmit != null) {
+                LOG.fine("Retransmitting message " + sequenceNumber);
+                sendMessageToMulticast(messageToRetransmit, true, sequenceNumber, capabilities);
+            }
+        }
+    }
+
+    /**
+     * Asks the users that support it to retransmit messages that are still lost.
+     * NACKs are sent on multicast, so other users that lost the same messages can wait for the retransmission.
+     */
+    private void sendNacks() {
+        final Map<Integer, List<Integer>> dueNacks = missingMessageTracker.getDueNacks(System.nanoTime());
+        final boolean combine = controller.isCapabilitySupportedByAllUsers(NetworkCapabilities.MULTI_MESSAGES);
+
+        for (final Map.Entry<Integer, List<Integer>> dueNack : dueNacks.entrySet()) {
+            final User user = controller.getUser(dueNack.getKey());
+
+            // Lost own messages are not asked for, since they have already been sent to the others
+            if (user != null && !user.isMe() && user.hasCapability(NetworkCapabilities.RELIABLE_MULTICAST)) {
+                LOG.fine("Asking " + user.getNick() + " to retransmit " + dueNack.getValue());
+                final NackMessage nackMessage = new NackMessage(dueNack.getKey(), dueNack.getValue());
+                transport.sendMessageToAll(nackMessage.toMessage(settings.getMe()), combine);
+            }
+        }
+    }
+
+    private synchronized void startNackTimer() {
+        if (nackTimer != null) {
+            return;
+        }
+
+        nackTimer = new Timer("NackTimer", true);
+        nackCheckScheduled = false;
+
+        // Messages may have been found missing while the network was down
+        if (missingMessageTracker.getMissingMessages() > 0) {
+            scheduleNackCheck();
+        }
+    }
+
+    private synchronized void stopNackTimer() {
+        if (nackTimer != null) {
+            nackTimer.cancel();
+            nackTimer = null;
+        }
+    }
+
+    /**
+     * Schedules the next check for lost messages, unless one is scheduled already.
+     * The timer is idle while no messages are missing.
+     */
+    private synchronized void scheduleNackCheck() {
+        if (nackTimer == null || nackCheckScheduled) {
+            return;
+        }
+
+        nackCheckScheduled = true;
+
+        nackTimer.schedule(new TimerTask() {
+            @Override
+            public void run() {
+                try {
+                    sendNacks();
+                }
+
+                // Must not stop the timer
+                catch (final RuntimeException e) {
+                    LOG.log(Level.SEVERE, "Failed to send NACK messages", e);
+                }
+
+                nackCheckDone();
+            }
+        }, NACK_TIMER_INTERVAL);
+    }
+
+    /**
+     * Schedules the next check while messages are still missing. Messages found missing during the check
+     * are included, since the count is read after the check is marked as done.
+     */
+    private synchronized void nackCheckDone() {
+        nackCheckScheduled = false;
+
+        if (missingMessageTracker.getMissingMessages() > 0) {
+            scheduleNackCheck();
+        }
+    }
+
+    @Nullable
+    private byte[] encodeBinaryMessage(final String message, final int capabilities) {
+        if (!settings.isBinaryProtocol()) {
+            return null;
+        }
+
+        if (!isSupported(capabilities, NetworkCapabilities.BINARY_MESSAGES)) {
+            return null;
+        }
+
+        return binaryMessageEncoder.encode(message);
+    }
+
+    /**
+     * Encodes text messages that might be large enough to compress or split into fragments.
+     * An UTF-8 character is at most 3 bytes, so short messages don't need to be encoded to check the size.
+     */
+    @Nullable
+    private byte[] encodeLargeTextMessage(final String message) {
+        if (message.length() * 3 < MessageCompressor.COMPRESSION_THRESHOLD) {
+            return null;
+        }
+
+        return message.getBytes(MESSAGE_CHARSET);
+    }
+
+    @Nullable
+    private byte[] compressMessage(final byte[] encodedMessage, final int capabilities) {
+        if (!settings.isCompression() || encodedMessage.length < MessageCompressor.COMPRESSION_THRESHOLD) {
+            return null;
+        }
+
+        if (!isSupported(capabilities, NetworkCapabilities.COMPRESSED_MESSAGES)) {
+            return null;
+        }
+
+        return messageCompressor.compress(encodedMessage);
+    }
+
+    private boolean sendFragmentsToAll(final byte[] encodedMessage, final String message) {
+        if (encodedMessage.length > MessageFragmenter.MAX_MESSAGE_SIZE) {
+            LOG.warning("Message was " + encodedMessage.length + " bytes, which is too large to send: " + message);
+            return false;
+        }
+
+        final List<byte[]> fragments = messageFragmenter.split(encodedMessage, settings.getMe().getCode());
+
+        for (final byte[] fragment : fragments) {
+            if (!transport.sendBinaryMessageToAll(fragment, message, false)) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Checks if the feature is in the features supported by all the users, which are read once per message,
+     * so all the decisions for a message are made from the same set of users.
+     */
+    private static boolean isSupported(final int capabilities, final int capability) {
+        return (capabilities & capability) == capability;
+    }
+
+    /**
+     * Checks if the message is used for discovering clients, so it must be sent as plain text.
+     * Messages without a valid header are treated the same way.
+     */
+    private boolean isDiscoveryMessage(final String message) {
+        final int exclamation = message.indexOf('!');
+        final int hash = message.indexOf('#', exclamation + 1);
+
+        if (exclamation < 1 || hash < 0) {
+            return true;
         }
 
-        final NetworkInterface currentNetworkInterface = connectionWorker.getCurrentNetworkInterface();
-        messageSender.startSender(currentNetworkInterface);
-        messageReceiver.startReceiver(currentNetworkInterface);
-        tcpNetworkService.startService();
+        return DISCOVERY_MESSAGE_TYPES.contains(message.substring(exclamation + 1, hash));
     }
 }
@@ -0,0 +1,304 @@
+
+/***************************************************************************
+ *   Copyright 2006-2018 by Christian Ihle                                 *
+ *   contact@kouchat.net                                                   *
+ *                                                                         *
+ *   This file is part of KouChat.                                         *
+ *                                                                         *
+ *   KouChat is free software; you can redistribute it and/or modify       *
+ *   it under the terms of the GNU Lesser General Public License as        *
+ *   published by the Free Software Foundation, either version 3 of        *
+ *   the License, or (at your option) any later version.                   *
+ *                                                                         *
+ *   KouChat is distributed in the hope that it will be useful,            *
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of        *
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU      *
+ *   Lesser General Public License for more details.                       *
+ *                                                                         *
+ *   You should have received a copy of the GNU Lesser General Public      *
+ *   License along with KouChat.                                           *
+ *   If not, see <http://www.gnu.org/licenses/>.                           *
+ ***************************************************************************/
+
+package net.usikkert.kouchat.net;
+
+import java.nio.ByteBuffer;
+
+import net.usikkert.kouchat.event.BinaryReceiverListener;
+import net.usikkert.kouchat.event.ReceiverListener;
+import net.usikkert.kouchat.misc.FlightRecorder;
+import net.usikkert.kouchat.net.transport.PacketListener;
+import net.usikkert.kouchat.net.transport.TransportChannel;
+import net.usikkert.kouchat.util.HotPathProfiler;
+import net.usikkert.kouchat.util.HotPathProfiler.HotPath;
+import net.usikkert.kouchat.util.Logger;
+import net.usikkert.kouchat.util.Validate;
+
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Gives the messages in received udp packets to the listeners.
+ *
+ * <p>A packet can have a text message, a binary message, or several messages combined by
+ * {@link MulticastSendQueue}. Messages split into fragments by {@link MessageFragmenter} are put back
+ * together by a {@link MessageReassembler}, and messages compressed by {@link MessageCompressor} are
+ * decompressed, before the listeners get them. Only plain text messages are supported in private chat.</p>
+ *
+ * <p>A {@link MessageTrace} is started for each message given to the listeners.</p>
+ *
+ * <p>This class is not thread safe. The packets must be given to it by one thread at a time.</p>
+ *
+ * @author Christian Ihle
+ */
+public class PacketReceiver implements PacketListener {
+
+    private static final Logger LOG = Logger.getLogger(PacketReceiver.class);
+
+    /** Decoder for the received packets. */
+    private final MessageDecoder messageDecoder;
+
+    /** Decoder for messages put together from fragments or decompressed. */
+    private final MessageDecoder largeMessageDecoder;
+
+    /** Puts fragmented multicast messages back together. */
+    private final MessageReassembler messageReassembler;
+
+    /** Decompresses compressed multicast messages. */
+    private final MessageCompressor messageCompressor;
+
+    /** Where to record the time the messages spend in each stage of the receiving pipeline. */
+    private final LatencyStatistics latencyStatistics;
+
+    /** Where to record the arrival of each packet. */
+    private final FlightRecorder flightRecorder;
+
+    @Nullable
+    private ReceiverListener mainChatListener;
+
+    @Nullable
+    private ReceiverListener privateChatListener;
+
+    @Nullable
+    private BinaryReceiverListener mainChatBinaryListener;
+
+    /**
+     * Constructor.
+     *
+     * @param compressionStatistics The statistics to update when decompressing messages.
+     * @param latencyStatistics The statistics to update with the time spent receiving messages.
+     * @param flightRecorder Where to record the arrival of each packet.
+     */
+    public PacketReceiver(final CompressionStatistics compressionStatistics,
+                          final LatencyStatistics latencyStatistics,
+                          final FlightRecorder flightRecorder) {
+        Validate.notNull(compressionStatistics, "Compression statistics can not be null");
+        Validate.notNull(latencyStatistics, "Latency statistics can not be null");
+        Validate.notNull(flightRecorder, "Flight recorder can not be null");
+
+        this.messageDecoder = new MessageDecoder();
+        this.largeMessageDecoder = new MessageDecoder(MessageFragmenter.MAX_MESSAGE_SIZE);
+        this.messageReassembler = new MessageReassembler();
+        this.messageCompressor = new MessageCompressor(compressionStatistics);
+        this.latencyStatistics = latencyStatistics;
+        this.flightRecorder = flightRecorder;
+    }
+
+    /**
+     * Registers the listener for messages arriving in the main chat.
+     *
+     * @param listener The listener to register.
+     */
+    public void registerMainChatReceiverListener(final ReceiverListener listener) {
+        this.mainChatListener = listener;
+    }
+
+    /**
+     * Registers the listener for binary messages arriving in the main chat.
+     *
+     * @param listener The listener to register.
+     */
+    public void registerMainChatBinaryReceiverListener(final BinaryReceiverListener listener) {
+        this.mainChatBinaryListener = listener;
+    }
+
+    /**
+     * Registers the listener for messages arriving in private chat.
+     *
+     * @param listener The listener to register.
+     */
+    public void registerPrivateChatReceiverListener(final ReceiverListener listener) {
+        this.privateChatListener = listener;
+    }
+
+    /**
+     * Gives the messages in the packet to the listeners.
+     *
+     * {@inheritDoc}
+     */
+    @Override
+    public void packetArrived(final ByteBuffer packet, final boolean mainChat, final String ipAddress) {
+        final ReceiverListener listener = mainChat ? mainChatListener : privateChatListener;
+        flightRecorder.record(FlightRecorder.EventType.PACKET_RECEIVED, ipAddress);
+        final long start = HotPathProfiler.start();
+
+        try {
+            if (getFirstByte(packet) == MulticastSendQueue.MULTI_MESSAGE) {
+                receiveMultiMessagePacket(packet, mainChat, ipAddress, listener);
+            } else {
+                receiveMessage(packet, messageDecoder, mainChat, ipAddress, listener);
+            }
+        }
+
+        finally {
+            HotPathProfiler.end(mainChat ? HotPath.MULTICAST_RECEIVE : HotPath.PRIVATE_UDP_RECEIVE, start);
+        }
+    }
+
+    /**
+     * Gives each message in a packet from {@link MulticastSendQueue} to the listeners, one at a time,
+     * by limiting the packet to the bytes of that message.
+     */
+    private void receiveMultiMessagePacket(final ByteBuffer packet, final boolean mainChat, final String ipAddress,
+                                           @Nullable final ReceiverListener listener) {
+        // Multi message packets are only supported in the main chat
+        if (!mainChat) {
+            return;
+        }
+
+        final int packetEnd = packet.limit();
+        int position = packet.position() + 1;
+
+        while (position + MulticastSendQueue.LENGTH_SIZE <= packetEnd) {
+            final int messageStart = position + MulticastSendQueue.LENGTH_SIZE;
+            final int messageEnd = messageStart + (packet.getShort(position) & 0xFFFF);
+
+            if (messageEnd > packetEnd) {
+                LOG.warning("Multi message packet from %s was truncated", ipAddress);
+                return;
+            }
+
+            packet.limit(messageEnd).position(messageStart);
+            receiveMessage(packet, messageDecoder, mainChat, ipAddress, listener);
+            packet.limit(packetEnd);
+
+            position = messageEnd;
+        }
+    }
+
+    /**
+     * Gives a message to the listeners. The message can be a fragment or compressed.
+     */
+    private void receiveMessage(final ByteBuffer buffer, final MessageDecoder decoder, final boolean mainChat,
+                                final String ipAddress, @Nullable final ReceiverListener listener) {
+        final byte firstByte = getFirstByte(buffer);
+
+        if (firstByte == MessageFragmenter.FRAGMENT) {
+            receiveFragment(buffer, mainChat, ipAddress, listener);
+        } else if (firstByte == MessageCompressor.COMPRESSED) {
+            receiveCompressedMessage(buffer, mainChat, ipAddress, listener);
+        } else {
+            receivePlainMessage(buffer, decoder, mainChat, ipAddress, listener);
+        }
+    }
+
+    /**
+     * Gives a text or binary message to the listeners.
+     */
+    private void receivePlainMessage(final ByteBuffer buffer, final MessageDecoder decoder,
+                                     final boolean mainChat, final String ipAddress,
+                                     @Nullable final ReceiverListener listener) {
+        final byte firstByte = getFirstByte(buffer);
+
+        if (firstByte == BinaryMessageFormat.BINARY_MESSAGE || firstByte == MessageSequencer.SEQUENCED_BINARY) {
+            receiveBinaryMessage(buffer, mainChat, ipAddress);
+            return;
+        }
+
+        final String message = decoder.decode(buffer);
+        LOG.fine("Message arrived from %s: %s", ipAddress, message);
+
+        if (listener != null) {
+            MessageTrace.start(latencyStatistics, mainChat ? TransportChannel.MULTICAST : TransportChannel.PRIVATE_UDP);
+
+            try {
+                listener.messageArrived(message, ipAddress);
+            }
+
+            // Must not stop the only thread receiving messages
+            catch (final RuntimeException e) {
+                LOG.severe(e, "Failed to handle message from %s: %s", ipAddress, message);
+            }
+
+            MessageTrace.end();
+        }
+    }
+
+    private void receiveFragment(final ByteBuffer buffer, final boolean mainChat, final String ipAddress,
+                                 @Nullable final ReceiverListener listener) {
+        // Fragments are only supported in the main chat
+        if (!mainChat) {
+            return;
+        }
+
+        final byte[] message = messageReassembler.addFragment(buffer, ipAddress, System.nanoTime());
+
+        if (message == null) {
+            return;
+        }
+
+        LOG.fine("Fragmented message arrived from %s: %s bytes", ipAddress, message.length);
+        final ByteBuffer messageBuffer = ByteBuffer.wrap(message);
+
+        // Large messages are compressed before they are split, but fragments are never nested
+        if (getFirstByte(messageBuffer) == MessageCompressor.COMPRESSED) {
+            receiveCompressedMessage(messageBuffer, mainChat, ipAddress, listener);
+        } else {
+            receivePlainMessage(messageBuffer, largeMessageDecoder, mainChat, ipAddress, listener);
+        }
+    }
+
+    private void receiveCompressedMessage(final ByteBuffer buffer, final boolean mainChat,
+                                          final String ipAddress, @Nullable final ReceiverListener listener) {
+        // Compressed messages are only supported in the main chat
+        if (!mainChat) {
+            return;
+        }
+
+        final byte[] message = messageCompressor.decompress(buffer);
+
+        if (message == null) {
+            LOG.fine("Invalid compressed message from %s", ipAddress);
+            return;
+        }
+
+        LOG.fine("Compressed message arrived from %s: %s bytes", ipAddress, message.length);
+        receivePlainMessage(ByteBuffer.wrap(message), largeMessageDecoder, mainChat, ipAddress, listener);
+    }
+
+    private byte getFirstByte(final ByteBuffer buffer) {
+        return buffer.hasRemaining() ? buffer.get(buffer.position()) : 0;
+    }
+
+    private void receiveBinaryMessage(final ByteBuffer buffer, final boolean mainChat,
+                                      final String ipAddress) {
+        LOG.fine("Binary message arrived from %s: %s bytes", ipAddress, buffer.remaining());
+
+        // Binary messages are only supported in the main chat
+        if (!mainChat || mainChatBinaryListener == null) {
+            return;
+        }
+
+        MessageTrace.start(latencyStatistics, TransportChannel.MULTICAST);
+
+        try {
+            mainChatBinaryListener.messageArrived(buffer, ipAddress);
+        }
+
+        // Must not stop the only thread receiving messages
+        catch (final RuntimeException e) {
+            LOG.severe(e, "Failed to handle binary message from %s", ipAddress);
+        }
+
+        MessageTrace.end();
+    }
+}
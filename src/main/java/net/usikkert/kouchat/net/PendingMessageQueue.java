@@ -0,0 +1,159 @@
+
+/***************************************************************************
+ *   Copyright 2006-2018 by Christian Ihle                                 *
+ *   contact@kouchat.net                                                   *
+ *                                                                         *
+ *   This file is part of KouChat.                                         *
+ *                                                                         *
+ *   KouChat is free software; you can redistribute it and/or modify       *
+ *   it under the terms of the GNU Lesser General Public License as        *
+ *   published by the Free Software Foundation, either version 3 of        *
+ *   the License, or (at your option) any later version.                   *
+ *                                                                         *
+ *   KouChat is distributed in the hope that it will be useful,            *
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of        *
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU      *
+ *   Lesser General Public License for more details.                       *
+ *                                                                         *
+ *   You should have received a copy of the GNU Lesser General Public      *
+ *   License along with KouChat.                                           *
+ *   If not, see <http://www.gnu.org/licenses/>.                           *
+ ***************************************************************************/
+
+package net.usikkert.kouchat.net;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import net.usikkert.kouchat.util.IntObjectMap;
+import net.usikkert.kouchat.util.Logger;
+import net.usikkert.kouchat.util.Validate;
+
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Holds back messages from users that have not identified themselves yet.
+ *
+ * <p>The messages are kept in a queue for each user, and are handled in the order they arrived when
+ * the user has identified, using {@link #flush(int)}. If the user never identifies, the messages
+ * are handled anyway after a timeout. All the timeouts run on the same scheduled executor,
+ * so no threads are waiting for the users to identify.</p>
+ *
+ * <p>This class is thread safe.</p>
+ *
+ * @author Christian Ihle
+ */
+public class PendingMessageQueue {
+
+    private static final Logger LOG = Logger.getLogger(PendingMessageQueue.class);
+
+    /** Milliseconds to wait for a user to identify before handling the messages anyway. */
+    public static final long IDENTIFY_TIMEOUT = 2000;
+
+    private final ScheduledExecutorService timeoutExecutor;
+
+    /** The pending messages, by the code of the user that sent them. Guarded by this. */
+    private final IntObjectMap<PendingMessages> pendingMessagesByUser;
+
+    /**
+     * Constructor.
+     *
+     * @param timeoutExecutor The executor to schedule the timeouts with.
+     */
+    public PendingMessageQueue(final ScheduledExecutorService timeoutExecutor) {
+        Validate.notNull(timeoutExecutor, "Timeout executor can not be null");
+
+        this.timeoutExecutor = timeoutExecutor;
+        this.pendingMessagesByUser = new IntObjectMap<>();
+    }
+
+    /**
+     * Adds a message to the queue of the user. The message will be handled when the user
+     * has identified, or when the user has not identified within {@link #IDENTIFY_TIMEOUT}
+     * of the first message in the queue.
+     *
+     * @param userCode The unique code of the user that sent the message.
+     * @param message The code to run to handle the message.
+     */
+    public void add(final int userCode, final Runnable message) {
+        Validate.notNull(message, "Message can not be null");
+
+        synchronized (this) {
+            PendingMessages pendingMessages = pendingMessagesByUser.get(userCode);
+
+            if (pendingMessages == null) {
+                pendingMessages = new PendingMessages();
+                pendingMessagesByUser.put(userCode, pendingMessages);
+                pendingMessages.timeout = scheduleTimeout(userCode);
+            }
+
+            pendingMessages.messages.add(message);
+        }
+    }
+
+    /**
+     * Handles all the messages in the queue of the user, in the order they arrived.
+     * Does nothing if there are no messages from the user.
+     *
+     * @param userCode The unique code of the user.
+     */
+    public void flush(final int userCode) {
+        final PendingMessages pendingMessages;
+
+        synchronized (this) {
+            pendingMessages = pendingMessagesByUser.remove(userCode);
+        }
+
+        if (pendingMessages == null) {
+            return;
+        }
+
+        if (pendingMessages.timeout != null) {
+            pendingMessages.timeout.cancel(false);
+        }
+
+        for (final Runnable message : pendingMessages.messages) {
+            try {
+                message.run();
+            }
+
+            catch (final RuntimeException e) {
+                LOG.severe(e, "Failed to handle pending message from user %d", userCode);
+            }
+        }
+    }
+
+    /**
+     * Checks if there are messages waiting for the user to identify.
+     *
+     * @param userCode The unique code of the user.
+     * @return If there are messages in the queue of the user.
+     */
+    public synchronized boolean hasPendingMessages(final int userCode) {
+        return pendingMessagesByUser.containsKey(userCode);
+    }
+
+    private ScheduledFuture<?> scheduleTimeout(final int userCode) {
+        return timeoutExecutor.schedule(new Runnable() {
+            @Override
+            public void run() {
+                LOG.fine("User %d did not identify in time. Handling pending messages anyway.", userCode);
+                flush(userCode);
+            }
+        }, IDENTIFY_TIMEOUT, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * The messages from one user, and the timeout for handling them.
+     */
+    private static final class PendingMessages {
+
+        private final List<Runnable> messages = new ArrayList<>(1);
+
+        @Nullable
+        private ScheduledFuture<?> timeout;
+    }
+}
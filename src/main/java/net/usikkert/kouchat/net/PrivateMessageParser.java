@@ -28,8 +28,11 @@ import java.util.logging.Level;
 import java.util.logging.Logger;
 
 import net.usikkert.kouchat.event.ReceiverListener;
+import net.usikkert.kouchat.misc.FlightRecorder;
 import net.usikkert.kouchat.misc.User;
 import net.usikkert.kouchat.settings.Settings;
+import net.usikkert.kouchat.util.HotPathProfiler;
+import net.usikkert.kouchat.util.HotPathProfiler.HotPath;
 import net.usikkert.kouchat.util.Validate;
 
 /**
@@ -51,19 +54,38 @@ public class PrivateMessageParser implements ReceiverListener {
 
     private final Settings settings;
     private final PrivateMessageResponder privmsgResponder;
+    private final TrafficStatistics trafficStatistics;
+    private final FlightRecorder flightRecorder;
+
+    /** For reading the fields of the messages. One for each thread, since messages arrive from several threads. */
+    private final ThreadLocal<TextMessageReader> textMessageReader;
 
     /**
      * Constructor.
      *
      * @param privmsgResponder The private message responder.
      * @param settings The settings to use.
+     * @param trafficStatistics For counting the message types and parse failures.
+     * @param flightRecorder For recording the parsed messages.
      */
-    public PrivateMessageParser(final PrivateMessageResponder privmsgResponder, final Settings settings) {
+    public PrivateMessageParser(final PrivateMessageResponder privmsgResponder, final Settings settings,
+                                final TrafficStatistics trafficStatistics, final FlightRecorder flightRecorder) {
         Validate.notNull(privmsgResponder, "PrivateMessageResponder can not be null");
         Validate.notNull(settings, "Settings can not be null");
+        Validate.notNull(trafficStatistics, "Traffic statistics can not be null");
+        Validate.notNull(flightRecorder, "Flight recorder can not be null");
 
         this.privmsgResponder = privmsgResponder;
         this.settings = settings;
+        this.trafficStatistics = trafficStatistics;
+        this.flightRecorder = flightRecorder;
+
+        this.textMessageReader = new ThreadLocal<TextMessageReader>() {
+            @Override
+            protected TextMessageReader initialValue() {
+                return new TextMessageReader();
+            }
+        };
     }
 
     /**
@@ -74,28 +96,27 @@ public class PrivateMessageParser implements ReceiverListener {
      */
     @Override
     public void messageArrived(final String message, final String ipAddress) {
-        try {
-            final int exclamation = message.indexOf("!");
-            final int hash = message.indexOf("#");
-            final int colon = message.indexOf(":");
-
-            final int fromCode = Integer.parseInt(message.substring(0, exclamation));
+        final TextMessageReader reader = textMessageReader.get();
+        final long start = HotPathProfiler.start();
 
-            final String type = message.substring(exclamation + 1, hash);
-            final String msg = message.substring(colon + 1, message.length());
+        try {
+            reader.readHeader(message);
+            trafficStatistics.recordMessageType(reader.getType());
 
-            final int leftPara = msg.indexOf("(");
-            final int rightPara = msg.indexOf(")");
-            final int toCode = Integer.parseInt(msg.substring(leftPara + 1, rightPara));
+            final int fromCode = reader.getUserCode();
+            flightRecorder.record(FlightRecorder.EventType.MESSAGE_PARSED, fromCode, reader.getType());
+            final int toCode = reader.readInt('(', ')');
 
             final User tempme = settings.getMe();
 
             if (fromCode != tempme.getCode() && toCode == tempme.getCode()) {
-                if (type.equals(PRIVMSG)) {
-                    final int leftBracket = msg.indexOf("[");
-                    final int rightBracket = msg.indexOf("]");
-                    final int rgb = Integer.parseInt(msg.substring(leftBracket + 1, rightBracket));
-                    final String privmsg = msg.substring(rightBracket + 1, msg.length());
+                if (PRIVMSG.equals(reader.getType())) {
+                    final String colorField = reader.readString('[', ']');
+                    final int rgb = ColorField.readColor(colorField);
+                    final long sendTime = ColorField.readSendTime(colorField);
+                    final String privmsg = reader.readRest();
+
+                    MessageTrace.markParsed(sendTime);
 
                     privmsgResponder.messageArrived(fromCode, privmsg, rgb);
                 }
@@ -105,11 +126,17 @@ public class PrivateMessageParser implements ReceiverListener {
         // Just ignore, someone sent a badly formatted message
         catch (final StringIndexOutOfBoundsException e) {
             LOG.log(Level.SEVERE, "Failed to parse message. message=" + message + ", ipAddress=" + ipAddress, e);
+            trafficStatistics.recordParseFailure();
         }
 
         // Just ignore, someone sent a badly formatted message
         catch (final NumberFormatException e) {
             LOG.log(Level.SEVERE, "Failed to parse message. message=" + message + ", ipAddress=" + ipAddress, e);
+            trafficStatistics.recordParseFailure();
+        }
+
+        finally {
+            HotPathProfiler.end(HotPath.MESSAGE_PARSE, start);
         }
     }
 }
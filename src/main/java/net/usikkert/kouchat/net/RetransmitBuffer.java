@@ -0,0 +1,124 @@
+
+/***************************************************************************
+ *   Copyright 2006-2018 by Christian Ihle                                 *
+ *   contact@kouchat.net                                                   *
+ *                                                                         *
+ *   This file is part of KouChat.                                         *
+ *                                                                         *
+ *   KouChat is free software; you can redistribute it and/or modify       *
+ *   it under the terms of the GNU Lesser General Public License as        *
+ *   published by the Free Software Foundation, either version 3 of        *
+ *   the License, or (at your option) any later version.                   *
+ *                                                                         *
+ *   KouChat is distributed in the hope that it will be useful,            *
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of        *
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU      *
+ *   Lesser General Public License for more details.                       *
+ *                                                                         *
+ *   You should have received a copy of the GNU Lesser General Public      *
+ *   License along with KouChat.                                           *
+ *   If not, see <http://www.gnu.org/licenses/>.                           *
+ ***************************************************************************/
+
+package net.usikkert.kouchat.net;
+
+import java.util.concurrent.TimeUnit;
+
+import net.usikkert.kouchat.util.Validate;
+
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Keeps the last multicast messages sent, so they can be sent again to users that missed them.
+ *
+ * <p>The buffer is a ring with room for a fixed number of messages, where each new message replaces the
+ * oldest one. The messages are looked up by their sequence number from {@link MessageSequencer}.
+ * A message is retransmitted at most once per {@link #RETRANSMIT_INTERVAL_MS}, so a lot of users asking
+ * for the same message at once only gives one retransmission.</p>
+ *
+ * <p>This class is thread safe.</p>
+ *
+ * @author Christian Ihle
+ */
+public class RetransmitBuffer {
+
+    /** The shortest time in milliseconds between each retransmission of the same message. */
+    public static final int RETRANSMIT_INTERVAL_MS = 100;
+
+    private static final long RETRANSMIT_INTERVAL_NANOS = TimeUnit.MILLISECONDS.toNanos(RETRANSMIT_INTERVAL_MS);
+
+    private final String[] messages;
+    private final int[] sequenceNumbers;
+    private final boolean[] retransmitted;
+    private final long[] retransmitTimes;
+
+    /**
+     * Constructor.
+     *
+     * @param capacity The number of messages to keep.
+     */
+    public RetransmitBuffer(final int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Capacity must be larger than 0");
+        }
+
+        messages = new String[capacity];
+        sequenceNumbers = new int[capacity];
+        retransmitted = new boolean[capacity];
+        retransmitTimes = new long[capacity];
+    }
+
+    /**
+     * Adds a sent message, replacing the oldest message if the buffer is full.
+     *
+     * @param sequenceNumber The sequence number of the message.
+     * @param message The message, without the sequence number.
+     */
+    public synchronized void add(final int sequenceNumber, final String message) {
+        Validate.notNull(message, "Message can not be null");
+
+        final int slot = getSlot(sequenceNumber);
+
+        messages[slot] = message;
+        sequenceNumbers[slot] = sequenceNumber;
+        retransmitted[slot] = false;
+    }
+
+    /**
+     * Gets a message to retransmit, unless it's too old or was retransmitted recently.
+     *
+     * @param sequenceNumber The sequence number of the message.
+     * @param now The current time, from {@link System#nanoTime()}.
+     * @return The message to retransmit, or <code>null</code> if there is nothing to retransmit.
+     */
+    @Nullable
+    public synchronized String getMessageToRetransmit(final int sequenceNumber, final long now) {
+        final int slot = getSlot(sequenceNumber);
+
+        if (messages[slot] == null || sequenceNumbers[slot] != sequenceNumber) {
+            return null;
+        }
+
+        if (retransmitted[slot] && now - retransmitTimes[slot] < RETRANSMIT_INTERVAL_NANOS) {
+            return null;
+        }
+
+        retransmitted[slot] = true;
+        retransmitTimes[slot] = now;
+
+        return messages[slot];
+    }
+
+    /**
+     * Gets the number of messages the buffer can keep.
+     *
+     * @return The capacity.
+     */
+    public int getCapacity() {
+        return messages.length;
+    }
+
+    private int getSlot(final int sequenceNumber) {
+        return (sequenceNumber & Integer.MAX_VALUE) % messages.length;
+    }
+}
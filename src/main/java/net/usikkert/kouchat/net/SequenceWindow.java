@@ -0,0 +1,133 @@
+
+/***************************************************************************
+ *   Copyright 2006-2018 by Christian Ihle                                 *
+ *   contact@kouchat.net                                                   *
+ *                                                                         *
+ *   This file is part of KouChat.                                         *
+ *                                                                         *
+ *   KouChat is free software; you can redistribute it and/or modify       *
+ *   it under the terms of the GNU Lesser General Public License as        *
+ *   published by the Free Software Foundation, either version 3 of        *
+ *   the License, or (at your option) any later version.                   *
+ *                                                                         *
+ *   KouChat is distributed in the hope that it will be useful,            *
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of        *
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU      *
+ *   Lesser General Public License for more details.                       *
+ *                                                                         *
+ *   You should have received a copy of the GNU Lesser General Public      *
+ *   License along with KouChat.                                           *
+ *   If not, see <http://www.gnu.org/licenses/>.                           *
+ ***************************************************************************/
+
+package net.usikkert.kouchat.net;
+
+/**
+ * Remembers which sequence numbers have been seen from a single sender, to find duplicate messages.
+ *
+ * <p>The window is a bitmap of the last {@link #WINDOW_SIZE} sequence numbers, counting back from the highest
+ * number seen. A number is accepted the first time it's seen, and rejected after that. Numbers that are too old
+ * to fit in the window are rejected as well, since there is no way to know if they have been seen.
+ * Each check is constant time, except when the window moves, where each bit is cleared once.</p>
+ *
+ * <p>The numbers are compared with wrap around, so the window keeps working when the sender's
+ * counter overflows.</p>
+ *
+ * <p>This class is thread safe.</p>
+ *
+ * @author Christian Ihle
+ */
+public class SequenceWindow {
+
+    /** The number of sequence numbers to remember. Must be a power of 2. */
+    public static final int WINDOW_SIZE = 1024;
+
+    private final long[] seen = new long[WINDOW_SIZE / Long.SIZE];
+
+    private boolean started;
+    private int highest;
+
+    /**
+     * Checks if this is the first time the sequence number is seen, and remembers it.
+     *
+     * @param number The sequence number to check.
+     * @return If the number is new.
+     */
+    public synchronized boolean accept(final int number) {
+        if (!started) {
+            started = true;
+            highest = number;
+            markSeen(number);
+
+            return true;
+        }
+
+        final int distance = number - highest;
+
+        if (distance > 0) {
+            moveWindow(distance);
+            highest = number;
+            markSeen(number);
+
+            return true;
+        }
+
+        if (distance <= -WINDOW_SIZE || isSeen(number)) {
+            return false;
+        }
+
+        markSeen(number);
+
+        return true;
+    }
+
+    /**
+     * Checks if a sequence number older than the highest number seen is still missing.
+     *
+     * @param number The sequence number to check.
+     * @return If the number is inside the window, but not seen.
+     */
+    public synchronized boolean isMissing(final int number) {
+        final int distance = number - highest;
+
+        return started && distance < 0 && distance > -WINDOW_SIZE && !isSeen(number);
+    }
+
+    /**
+     * Gets the highest sequence number seen.
+     *
+     * @return The highest number, or <code>0</code> if nothing is seen yet.
+     */
+    public synchronized int getHighest() {
+        return highest;
+    }
+
+    private void moveWindow(final int distance) {
+        if (distance >= WINDOW_SIZE) {
+            for (int i = 0; i < seen.length; i++) {
+                seen[i] = 0;
+            }
+        }
+
+        else {
+            for (int i = 1; i <= distance; i++) {
+                clearSeen(highest + i);
+            }
+        }
+    }
+
+    private boolean isSeen(final int number) {
+        final int index = number & (WINDOW_SIZE - 1);
+        return (seen[index >>> 6] & (1L << index)) != 0;
+    }
+
+    private void markSeen(final int number) {
+        final int index = number & (WINDOW_SIZE - 1);
+        seen[index >>> 6] |= 1L << index;
+    }
+
+    private void clearSeen(final int number) {
+        final int index = number & (WINDOW_SIZE - 1);
+        seen[index >>> 6] &= ~(1L << index);
+    }
+}
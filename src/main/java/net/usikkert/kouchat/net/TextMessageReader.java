@@ -0,0 +1,325 @@
+
+/***************************************************************************
+ *   Copyright 2006-2018 by Christian Ihle                                 *
+ *   contact@kouchat.net                                                   *
+ *                                                                         *
+ *   This file is part of KouChat.                                         *
+ *                                                                         *
+ *   KouChat is free software; you can redistribute it and/or modify       *
+ *   it under the terms of the GNU Lesser General Public License as        *
+ *   published by the Free Software Foundation, either version 3 of        *
+ *   the License, or (at your option) any later version.                   *
+ *                                                                         *
+ *   KouChat is distributed in the hope that it will be useful,            *
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of        *
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU      *
+ *   Lesser General Public License for more details.                       *
+ *                                                                         *
+ *   You should have received a copy of the GNU Lesser General Public      *
+ *   License along with KouChat.                                           *
+ *   If not, see <http://www.gnu.org/licenses/>.                           *
+ ***************************************************************************/
+
+package net.usikkert.kouchat.net;
+
+import static net.usikkert.kouchat.net.NetworkMessageType.*;
+
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * A reusable cursor for reading text messages like <code>12345678!MSG#nick:[-15987646]hello</code>.
+ *
+ * <p>{@link #readHeader(String)} finds the user code, type, nick and start of the payload in a single
+ * pass, without creating any substrings. The type is looked up in a precomputed table of the known
+ * {@link NetworkMessageType}s, and returned as the constant from that interface, so it can be used in a
+ * <code>switch</code>. The fields of the payload are then read in order with the <code>read</code> methods.</p>
+ *
+ * <p>A badly formatted message gives the same exceptions as parsing with <code>indexOf</code> and
+ * <code>substring</code>: a {@link StringIndexOutOfBoundsException} if a delimiter is missing,
+ * or a {@link NumberFormatException} if a number is not valid.</p>
+ *
+ * <p>This class is not thread safe.</p>
+ *
+ * @author Christian Ihle
+ */
+public class TextMessageReader {
+
+    private static final String[] KNOWN_TYPES = {
+            MSG, LOGON, EXPOSING, LOGOFF, AWAY, BACK, EXPOSE, NICKCRASH, WRITING, STOPPEDWRITING,
+            GETTOPIC, TOPIC, NICK, IDLE, SENDFILEACCEPT, SENDFILEABORT, SENDFILE, CLIENT, PRIVMSG
+    };
+
+    /** Open addressing hash table with the known types. The size must be a power of two. */
+    private static final String[] TYPE_TABLE = new String[64];
+
+    static {
+        for (final String type : KNOWN_TYPES) {
+            int index = indexFor(type.hashCode());
+
+            while (TYPE_TABLE[index] != null) {
+                index = (index + 1) & (TYPE_TABLE.length - 1);
+            }
+
+            TYPE_TABLE[index] = type;
+        }
+    }
+
+    private String message;
+    private int userCode;
+
+    @Nullable
+    private String type;
+
+    private int nickStart;
+    private int nickEnd;
+    private int payloadStart;
+    private int position;
+
+    private int fieldStart;
+    private int fieldEnd;
+
+    public TextMessageReader() {
+        message = "";
+    }
+
+    /**
+     * Reads the header of a new message, and moves the cursor to the start of the payload.
+     *
+     * @param theMessage The message to read.
+     */
+    public void readHeader(final String theMessage) {
+        message = theMessage;
+
+        final int length = message.length();
+        int exclamation = -1;
+        int hash = -1;
+        int colon = -1;
+
+        for (int i = 0; i < length && colon == -1; i++) {
+            final char current = message.charAt(i);
+
+            if (exclamation == -1) {
+                if (current == '!') {
+                    exclamation = i;
+                }
+            }
+
+            else if (hash == -1) {
+                if (current == '#') {
+                    hash = i;
+                }
+            }
+
+            else if (current == ':') {
+                colon = i;
+            }
+        }
+
+        if (colon == -1) {
+            throw new StringIndexOutOfBoundsException(-1);
+        }
+
+        userCode = (int) parseNumber(0, exclamation, Integer.MIN_VALUE, Integer.MAX_VALUE);
+        type = lookupType(exclamation + 1, hash);
+        nickStart = hash + 1;
+        nickEnd = colon;
+        payloadStart = colon + 1;
+        position = payloadStart;
+    }
+
+    /**
+     * Gets the user code of the message sender.
+     *
+     * @return The user code.
+     */
+    public int getUserCode() {
+        return userCode;
+    }
+
+    /**
+     * Gets the type of the message.
+     *
+     * @return The type, as the constant from {@link NetworkMessageType}, or <code>null</code> if unknown.
+     */
+    @Nullable
+    public String getType() {
+        return type;
+    }
+
+    /**
+     * Gets the nick from the header of the message.
+     *
+     * @return The nick.
+     */
+    public String getNick() {
+        return message.substring(nickStart, nickEnd);
+    }
+
+    /**
+     * Checks if there is a field starting with <code>left</code> and ending with <code>right</code>
+     * after the cursor. Does not move the cursor.
+     *
+     * @param left The character before the field.
+     * @param right The character after the field.
+     * @return If the field was found.
+     */
+    public boolean hasField(final char left, final char right) {
+        final int leftIndex = message.indexOf(left, position);
+        return leftIndex != -1 && message.indexOf(right, leftIndex + 1) != -1;
+    }
+
+    /**
+     * Reads the next field between <code>left</code> and <code>right</code> as an int,
+     * and moves the cursor past the field.
+     *
+     * <p>The cursor is moved even if the number is not valid, so the next fields can still be read.</p>
+     *
+     * @param left The character before the field.
+     * @param right The character after the field.
+     * @return The number in the field.
+     */
+    public int readInt(final char left, final char right) {
+        findField(left, right);
+        return (int) parseNumber(fieldStart, fieldEnd, Integer.MIN_VALUE, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Reads the next field between <code>left</code> and <code>right</code> as a long,
+     * and moves the cursor past the field.
+     *
+     * @param left The character before the field.
+     * @param right The character after the field.
+     * @return The number in the field.
+     */
+    public long readLong(final char left, final char right) {
+        findField(left, right);
+        return parseNumber(fieldStart, fieldEnd, Long.MIN_VALUE, Long.MAX_VALUE);
+    }
+
+    /**
+     * Reads the next field between <code>left</code> and <code>right</code> as a string,
+     * and moves the cursor past the field.
+     *
+     * @param left The character before the field.
+     * @param right The character after the field.
+     * @return The field.
+     */
+    public String readString(final char left, final char right) {
+        findField(left, right);
+        return message.substring(fieldStart, fieldEnd);
+    }
+
+    /**
+     * Reads the rest of the message after the cursor.
+     *
+     * @return The rest of the message.
+     */
+    public String readRest() {
+        final String rest = message.substring(position);
+        position = message.length();
+
+        return rest;
+    }
+
+    /**
+     * Checks if there is anything left of the message after the cursor.
+     *
+     * @return If there is more to read.
+     */
+    public boolean hasRemaining() {
+        return position < message.length();
+    }
+
+    private void findField(final char left, final char right) {
+        final int leftIndex = message.indexOf(left, position);
+
+        if (leftIndex == -1) {
+            throw new StringIndexOutOfBoundsException(-1);
+        }
+
+        final int rightIndex = message.indexOf(right, leftIndex + 1);
+
+        if (rightIndex == -1) {
+            throw new StringIndexOutOfBoundsException(-1);
+        }
+
+        fieldStart = leftIndex + 1;
+        fieldEnd = rightIndex;
+        position = rightIndex + 1;
+    }
+
+    @Nullable
+    private String lookupType(final int start, final int end) {
+        int hashCode = 0;
+
+        for (int i = start; i < end; i++) {
+            hashCode = 31 * hashCode + message.charAt(i);
+        }
+
+        int index = indexFor(hashCode);
+        String candidate = TYPE_TABLE[index];
+
+        while (candidate != null) {
+            if (candidate.length() == end - start && message.regionMatches(start, candidate, 0, end - start)) {
+                return candidate;
+            }
+
+            index = (index + 1) & (TYPE_TABLE.length - 1);
+            candidate = TYPE_TABLE[index];
+        }
+
+        return null;
+    }
+
+    /**
+     * Parses the number like {@link Long#parseLong(String)}, without creating a substring.
+     */
+    private long parseNumber(final int start, final int end, final long min, final long max) {
+        if (start >= end) {
+            throw numberFormatException(start, end);
+        }
+
+        final char first = message.charAt(start);
+        final boolean negative = first == '-';
+        int i = start;
+
+        if (negative || first == '+') {
+            i++;
+
+            if (i == end) {
+                throw numberFormatException(start, end);
+            }
+        }
+
+        // Accumulates negatively, since the negative range is larger than the positive range
+        final long limit = negative ? min : -max;
+        final long multiplyLimit = limit / 10;
+        long result = 0;
+
+        for (; i < end; i++) {
+            final int digit = message.charAt(i) - '0';
+
+            if (digit < 0 || digit > 9 || result < multiplyLimit) {
+                throw numberFormatException(start, end);
+            }
+
+            result *= 10;
+
+            if (result < limit + digit) {
+                throw numberFormatException(start, end);
+            }
+
+            result -= digit;
+        }
+
+        return negative ? result : -result;
+    }
+
+    private NumberFormatException numberFormatException(final int start, final int end) {
+        return new NumberFormatException("For input string: \"" + message.substring(start, end) + "\"");
+    }
+
+    private static int indexFor(final int hashCode) {
+        return (hashCode ^ (hashCode >>> 16)) & (TYPE_TABLE.length - 1);
+    }
+}
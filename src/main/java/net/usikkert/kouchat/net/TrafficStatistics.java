@@ -0,0 +1,267 @@
+
+/***************************************************************************
+ *   Copyright 2006-2018 by Christian Ihle                                 *
+ *   contact@kouchat.net                                                   *
+ *                                                                         *
+ *   This file is part of KouChat.                                         *
+ *                                                                         *
+ *   KouChat is free software; you can redistribute it and/or modify       *
+ *   it under the terms of the GNU Lesser General Public License as        *
+ *   published by the Free Software Foundation, either version 3 of        *
+ *   the License, or (at your option) any later version.                   *
+ *                                                                         *
+ *   KouChat is distributed in the hope that it will be useful,            *
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of        *
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU      *
+ *   Lesser General Public License for more details.                       *
+ *                                                                         *
+ *   You should have received a copy of the GNU Lesser General Public      *
+ *   License along with KouChat.                                           *
+ *   If not, see <http://www.gnu.org/licenses/>.                           *
+ ***************************************************************************/
+
+package net.usikkert.kouchat.net;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import net.usikkert.kouchat.net.transport.Transport;
+import net.usikkert.kouchat.net.transport.TransportChannel;
+
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Counters for the network traffic of a {@link Transport}, and for the messages handled by the network code.
+ *
+ * <p>All the counters only grow, so tools can calculate rates from them. They are atomic counters in arrays and
+ * maps that never change after construction, so counting never locks or allocates memory.</p>
+ *
+ * <p>This class is thread safe.</p>
+ *
+ * @author Christian Ihle
+ */
+public class TrafficStatistics {
+
+    /** The name used for message types that are not in {@link NetworkMessageType}. */
+    public static final String OTHER_MESSAGE_TYPE = "OTHER";
+
+    /** All the message types, in the order they are shown. */
+    private static final String[] MESSAGE_TYPES = {
+            NetworkMessageType.MSG, NetworkMessageType.PRIVMSG, NetworkMessageType.LOGON, NetworkMessageType.LOGOFF,
+            NetworkMessageType.EXPOSE, NetworkMessageType.EXPOSING, NetworkMessageType.IDLE, NetworkMessageType.CLIENT,
+            NetworkMessageType.AWAY, NetworkMessageType.BACK, NetworkMessageType.WRITING, NetworkMessageType.STOPPEDWRITING,
+            NetworkMessageType.GETTOPIC, NetworkMessageType.TOPIC, NetworkMessageType.NICK, NetworkMessageType.NICKCRASH,
+            NetworkMessageType.SENDFILE, NetworkMessageType.SENDFILEACCEPT, NetworkMessageType.SENDFILEABORT,
+            NetworkMessageType.NACK, OTHER_MESSAGE_TYPE
+    };
+
+    private static final int PACKETS_IN = 0;
+    private static final int BYTES_IN = 1;
+    private static final int PACKETS_OUT = 2;
+    private static final int BYTES_OUT = 3;
+    private static final int COUNTERS_PER_CHANNEL = 4;
+
+    /** The packet and byte counters of each channel, with {@link #COUNTERS_PER_CHANNEL} for each channel. */
+    private final AtomicLongArray channelCounters;
+
+    /** The received messages of each type. The map never changes, only the counters. */
+    private final Map<String, AtomicLong> messageTypes;
+
+    private final AtomicLong otherMessageTypes;
+    private final AtomicLong parseFailures;
+    private final AtomicLong oversizedMessages;
+    private final AtomicLong duplicateMessages;
+    private final AtomicLong tcpReconnects;
+
+    /**
+     * Constructor.
+     */
+    public TrafficStatistics() {
+        channelCounters = new AtomicLongArray(TransportChannel.values().length * COUNTERS_PER_CHANNEL);
+
+        final Map<String, AtomicLong> types = new LinkedHashMap<>();
+
+        for (final String type : MESSAGE_TYPES) {
+            types.put(type, new AtomicLong());
+        }
+
+        messageTypes = Collections.unmodifiableMap(types);
+        otherMessageTypes = types.get(OTHER_MESSAGE_TYPE);
+        parseFailures = new AtomicLong();
+        oversizedMessages = new AtomicLong();
+        duplicateMessages = new AtomicLong();
+        tcpReconnects = new AtomicLong();
+    }
+
+    /**
+     * Records a packet, or a tcp message, that was received.
+     *
+     * @param channel The channel it arrived on.
+     * @param bytes The size, in bytes.
+     */
+    public void recordReceived(final TransportChannel channel, final int bytes) {
+        final int first = channel.ordinal() * COUNTERS_PER_CHANNEL;
+
+        channelCounters.incrementAndGet(first + PACKETS_IN);
+        channelCounters.addAndGet(first + BYTES_IN, bytes);
+    }
+
+    /**
+     * Records a packet, or a tcp message, that was sent.
+     *
+     * @param channel The channel it was sent on.
+     * @param bytes The size, in bytes.
+     */
+    public void recordSent(final TransportChannel channel, final int bytes) {
+        final int first = channel.ordinal() * COUNTERS_PER_CHANNEL;
+
+        channelCounters.incrementAndGet(first + PACKETS_OUT);
+        channelCounters.addAndGet(first + BYTES_OUT, bytes);
+    }
+
+    /**
+     * Records a received text message of a type from {@link NetworkMessageType}.
+     *
+     * @param type The message type, or <code>null</code> if unknown.
+     */
+    public void recordMessageType(@Nullable final String type) {
+        final AtomicLong counter = messageTypes.get(type);
+
+        if (counter != null) {
+            counter.incrementAndGet();
+        } else {
+            otherMessageTypes.incrementAndGet();
+        }
+    }
+
+    /**
+     * Records a received binary message of a type from {@link BinaryMessageFormat}.
+     *
+     * @param type The binary message type.
+     */
+    public void recordBinaryMessageType(final byte type) {
+        recordMessageType(BinaryMessageReader.toTextType(type));
+    }
+
+    /**
+     * Records a received message that could not be parsed.
+     */
+    public void recordParseFailure() {
+        parseFailures.incrementAndGet();
+    }
+
+    /**
+     * Records a message that was too large for a packet or tcp frame.
+     */
+    public void recordOversizedMessage() {
+        oversizedMessages.incrementAndGet();
+    }
+
+    /**
+     * Records a received message that was dropped, because it was a copy of a message that already arrived.
+     */
+    public void recordDuplicateMessage() {
+        duplicateMessages.incrementAndGet();
+    }
+
+    /**
+     * Records an attempt to reconnect to a user that lost all the tcp connections.
+     */
+    public void recordTcpReconnect() {
+        tcpReconnects.incrementAndGet();
+    }
+
+    /**
+     * Gets the number of packets, or tcp messages, received on the channel.
+     *
+     * @param channel The channel.
+     * @return The number of packets.
+     */
+    public long getPacketsIn(final TransportChannel channel) {
+        return channelCounters.get(channel.ordinal() * COUNTERS_PER_CHANNEL + PACKETS_IN);
+    }
+
+    /**
+     * Gets the number of bytes received on the channel.
+     *
+     * @param channel The channel.
+     * @return The number of bytes.
+     */
+    public long getBytesIn(final TransportChannel channel) {
+        return channelCounters.get(channel.ordinal() * COUNTERS_PER_CHANNEL + BYTES_IN);
+    }
+
+    /**
+     * Gets the number of packets, or tcp messages, sent on the channel.
+     *
+     * @param channel The channel.
+     * @return The number of packets.
+     */
+    public long getPacketsOut(final TransportChannel channel) {
+        return channelCounters.get(channel.ordinal() * COUNTERS_PER_CHANNEL + PACKETS_OUT);
+    }
+
+    /**
+     * Gets the number of bytes sent on the channel.
+     *
+     * @param channel The channel.
+     * @return The number of bytes.
+     */
+    public long getBytesOut(final TransportChannel channel) {
+        return channelCounters.get(channel.ordinal() * COUNTERS_PER_CHANNEL + BYTES_OUT);
+    }
+
+    /**
+     * Gets the number of received messages of each type.
+     *
+     * @return The number of messages, by message type, with {@link #OTHER_MESSAGE_TYPE} last.
+     */
+    public Map<String, Long> getMessageTypes() {
+        final Map<String, Long> counts = new LinkedHashMap<>();
+
+        for (final Map.Entry<String, AtomicLong> entry : messageTypes.entrySet()) {
+            counts.put(entry.getKey(), entry.getValue().get());
+        }
+
+        return counts;
+    }
+
+    /**
+     * Gets the number of received messages that could not be parsed.
+     *
+     * @return The number of parse failures.
+     */
+    public long getParseFailures() {
+        return parseFailures.get();
+    }
+
+    /**
+     * Gets the number of messages that were too large for a packet or tcp frame.
+     *
+     * @return The number of oversized messages.
+     */
+    public long getOversizedMessages() {
+        return oversizedMessages.get();
+    }
+
+    /**
+     * Gets the number of received messages dropped as copies of messages that already arrived.
+     *
+     * @return The number of duplicate messages.
+     */
+    public long getDuplicateMessages() {
+        return duplicateMessages.get();
+    }
+
+    /**
+     * Gets the number of attempts to reconnect to users that lost all the tcp connections.
+     *
+     * @return The number of tcp reconnects.
+     */
+    public long getTcpReconnects() {
+        return tcpReconnects.get();
+    }
+}
@@ -0,0 +1,700 @@
+
+/***************************************************************************
+ *   Copyright 2006-2018 by Christian Ihle                                 *
+ *   contact@kouchat.net                                                   *
+ *                                                                         *
+ *   This file is part of KouChat.                                         *
+ *                                                                         *
+ *   KouChat is free software; you can redistribute it and/or modify       *
+ *   it under the terms of the GNU Lesser General Public License as        *
+ *   published by the Free Software Foundation, either version 3 of        *
+ *   the License, or (at your option) any later version.                   *
+ *                                                                         *
+ *   KouChat is distributed in the hope that it will be useful,            *
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of        *
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU      *
+ *   Lesser General Public License for more details.                       *
+ *                                                                         *
+ *   You should have received a copy of the GNU Lesser General Public      *
+ *   License along with KouChat.                                           *
+ *   If not, see <http://www.gnu.org/licenses/>.                           *
+ ***************************************************************************/
+
+package net.usikkert.kouchat.net;
+
+import static net.usikkert.kouchat.net.NetworkUtils.IPTOS_RELIABILITY;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.NetworkInterface;
+import java.net.SocketAddress;
+import java.net.StandardProtocolFamily;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.MembershipKey;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.charset.Charset;
+import java.util.Iterator;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import net.usikkert.kouchat.Constants;
+import net.usikkert.kouchat.misc.ErrorHandler;
+import net.usikkert.kouchat.misc.User;
+import net.usikkert.kouchat.net.transport.PacketListener;
+import net.usikkert.kouchat.net.transport.TransportChannel;
+import net.usikkert.kouchat.settings.Settings;
+import net.usikkert.kouchat.util.Logger;
+import net.usikkert.kouchat.util.Validate;
+
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Sends and receives udp packets for both the main chat and private chat,
+ * using non-blocking channels on a single thread.
+ *
+ * <p>The main chat uses a multicast channel, and private chat uses a unicast channel.
+ * Both are registered with the same selector, and a single background thread waits
+ * for packets on either channel, and sends the packets queued by other threads.</p>
+ *
+ * <p>Packets are received into a direct buffer that is reused for every packet,
+ * and all the packets waiting on a channel are read each time it becomes readable.</p>
+ *
+ * <p>Multicast messages are sent through a {@link MulticastSendQueue}, which paces the packets
+ * at the rate from {@link Settings#getPacketRate()}, and combines waiting messages into
+ * a single packet when allowed.</p>
+ *
+ * <p>The received packets are given to the registered {@link PacketListener}.</p>
+ *
+ * @author Christian Ihle
+ */
+public class UDPNetworkService implements Runnable {
+
+    private static final Logger LOG = Logger.getLogger(UDPNetworkService.class);
+
+    /** Max number of private chat packets waiting to be sent. Sending fails if the queue is full. */
+    private static final int MAX_QUEUED_PACKETS = 1000;
+
+    /** Max number of packets to read from a channel before checking the other channel. */
+    private static final int MAX_PACKETS_PER_READ = 64;
+
+    /** Number of ports to try for private chat before giving up. */
+    private static final int MAX_PORT_ATTEMPTS = 50;
+
+    private static final Charset MESSAGE_CHARSET = Charset.forName(Constants.MESSAGE_CHARSET);
+
+    /** The multicast address and port of the main chat. */
+    private final InetSocketAddress multicastAddress;
+
+    /** The error handler for registering important messages. */
+    private final ErrorHandler errorHandler;
+
+    /** The application user. */
+    private final User me;
+
+    /** If private chat should be enabled. */
+    private final boolean privateChatEnabled;
+
+    /** The private chat packets waiting to be sent by the background thread. */
+    private final BlockingQueue<OutgoingPacket> sendQueue;
+
+    /** The main chat messages waiting to be sent by the background thread. */
+    private final MulticastSendQueue multicastQueue;
+
+    /** The counters for the sent and received packets. */
+    private final TrafficStatistics trafficStatistics;
+
+    /** The buffer to receive packets into, only used by the background thread. */
+    private final ByteBuffer receiveBuffer;
+
+    /** Receives the packets, only used by the background thread. */
+    @Nullable
+    private PacketListener packetListener;
+
+    @Nullable
+    private Selector selector;
+
+    @Nullable
+    private DatagramChannel multicastChannel;
+
+    @Nullable
+    private MembershipKey membershipKey;
+
+    @Nullable
+    private DatagramChannel unicastChannel;
+
+    @Nullable
+    private InetAddress lastAddress;
+
+    @Nullable
+    private String lastIPAddress;
+
+    /** If connected to the network or not. */
+    private volatile boolean connected;
+
+    /**
+     * Default constructor.
+     *
+     * <p>Uses the default multicast ip address and port.</p>
+     *
+     * @see Constants#NETWORK_IP
+     * @see Constants#NETWORK_CHAT_PORT
+     * @param settings The settings to use.
+     * @param errorHandler The error handler to use.
+     * @param privateChatEnabled If private chat should be enabled.
+     * @param trafficStatistics The counters for the sent and received packets.
+     */
+    public UDPNetworkService(final Settings settings, final ErrorHandler errorHandler,
+                             final boolean privateChatEnabled, final TrafficStatistics trafficStatistics) {
+        this(Constants.NETWORK_IP, Constants.NETWORK_CHAT_PORT, settings, errorHandler, privateChatEnabled,
+             trafficStatistics);
+    }
+
+    /**
+     * Alternative constructor.
+     *
+     * @param ipAddress Multicast ip address to use for the main chat.
+     * @param port Multicast port to use for the main chat.
+     * @param settings The settings to use.
+     * @param errorHandler The error handler to use.
+     * @param privateChatEnabled If private chat should be enabled.
+     * @param trafficStatistics The counters for the sent and received packets.
+     */
+    public UDPNetworkService(final String ipAddress, final int port, final Settings settings,
+                             final ErrorHandler errorHandler, final boolean privateChatEnabled,
+                             final TrafficStatistics trafficStatistics) {
+        Validate.notEmpty(ipAddress, "IP address can not be empty");
+        Validate.notNull(settings, "Settings can not be null");
+        Validate.notNull(errorHandler, "Error handler can not be null");
+        Validate.notNull(trafficStatistics, "Traffic statistics can not be null");
+
+        LOG.fine("Creating UDPNetworkService on %s:%s", ipAddress, port);
+
+        this.multicastAddress = new InetSocketAddress(ipAddress, port);
+        this.errorHandler = errorHandler;
+        this.me = settings.getMe();
+        this.privateChatEnabled = privateChatEnabled;
+        this.sendQueue = new LinkedBlockingQueue<>(MAX_QUEUED_PACKETS);
+        this.multicastQueue = new MulticastSendQueue(settings.getPacketRate());
+        this.trafficStatistics = trafficStatistics;
+        this.receiveBuffer = ByteBuffer.allocateDirect(Constants.NETWORK_PACKET_SIZE);
+
+        if (multicastAddress.isUnresolved()) {
+            LOG.severe("Could not resolve %s", ipAddress);
+
+            errorHandler.showCriticalError("Failed to initialize the network:\nUnknown host " + ipAddress + "\n" +
+                    Constants.APP_NAME + " will now shutdown.");
+
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Joins the multicast group on the given network interface, opens the private chat channel
+     * if enabled, and starts the background thread.
+     *
+     * <p>If <code>null</code> is given as the network interface, the first usable
+     * network interface is chosen.</p>
+     *
+     * @param networkInterface The network interface to use, or <code>null</code>.
+     * @return If connected to the network or not.
+     */
+    public synchronized boolean startService(@Nullable final NetworkInterface networkInterface) {
+        LOG.fine("Connecting to %s on %s", multicastAddress, networkInterface);
+
+        if (connected) {
+            LOG.fine("Already connected.");
+            return true;
+        }
+
+        try {
+            selector = Selector.open();
+            multicastChannel = openMulticastChannel(getUsableNetworkInterface(networkInterface));
+            multicastChannel.register(selector, SelectionKey.OP_READ);
+        }
+
+        catch (final IOException e) {
+            LOG.severe(e, "Could not start udp network service: %s", e.toString());
+            closeChannels();
+            return false;
+        }
+
+        if (privateChatEnabled) {
+            unicastChannel = openUnicastChannel();
+        }
+
+        connected = true;
+        new Thread(this, getClass().getSimpleName() + "Worker").start();
+
+        LOG.fine("Connected to %s", multicastAddress);
+
+        return true;
+    }
+
+    /**
+     * Leaves the multicast group, closes the channels, and stops the background thread.
+     *
+     * <p>Packets waiting to be sent are discarded.</p>
+     */
+    public synchronized void stopService() {
+        LOG.fine("Disconnecting from %s", multicastAddress);
+
+        if (!connected) {
+            LOG.fine("Not connected.");
+            return;
+        }
+
+        connected = false;
+        closeChannels();
+        sendQueue.clear();
+        multicastQueue.clear();
+
+        LOG.fine("Disconnected from %s", multicastAddress);
+    }
+
+    /**
+     * Waits for packets on the channels, and notifies the listeners when they arrive.
+     * Also sends the packets queued by {@link #sendMessageToAll(String, boolean)}
+     * and {@link #sendMessageToUser(String, String, int)}.
+     */
+    @Override
+    public void run() {
+        final Selector workerSelector = selector;
+        long selectTimeout = 0;
+
+        while (connected && workerSelector == selector) {
+            try {
+                // Wakes up when it's time for the next paced multicast packet, or never if 0
+                workerSelector.select(selectTimeout);
+
+                final Iterator<SelectionKey> selectedKeys = workerSelector.selectedKeys().iterator();
+
+                while (selectedKeys.hasNext()) {
+                    final SelectionKey key = selectedKeys.next();
+                    selectedKeys.remove();
+
+                    if (!key.isValid()) {
+                        continue;
+                    }
+
+                    if (key.isWritable()) {
+                        key.interestOps(SelectionKey.OP_READ);
+                    }
+
+                    if (key.isReadable()) {
+                        receivePackets((DatagramChannel) key.channel());
+                    }
+                }
+
+                sendQueuedPackets();
+                selectTimeout = sendQueuedMulticastPackets();
+            }
+
+            // Happens when the selector is closed, or network is down
+            catch (final ClosedSelectorException e) {
+                LOG.fine(e.toString());
+            }
+
+            catch (final IOException e) {
+                if (connected) {
+                    LOG.warning(e.toString());
+                } else {
+                    LOG.fine(e.toString());
+                }
+            }
+        }
+    }
+
+    /**
+     * Queues a multicast message for all the clients in the main chat.
+     *
+     * @param message The message to send.
+     * @param combine If the message can be sent in the same packet as other messages.
+     *                Only allowed when all the clients support {@link NetworkCapabilities#MULTI_MESSAGES}.
+     * @return If the message was queued for sending or not.
+     * @see Constants#MESSAGE_CHARSET
+     * @see Constants#NETWORK_PACKET_SIZE
+     */
+    public boolean sendMessageToAll(final String message, final boolean combine) {
+        return queueMulticastMessage(message.getBytes(MESSAGE_CHARSET), message, combine);
+    }
+
+    /**
+     * Queues a multicast binary message for all the clients in the main chat.
+     *
+     * @param binaryMessage The binary message to send.
+     * @param message The same message as text, for logging.
+     * @param combine If the message can be sent in the same packet as other messages.
+     *                Only allowed when all the clients support {@link NetworkCapabilities#MULTI_MESSAGES}.
+     * @return If the message was queued for sending or not.
+     * @see BinaryMessageFormat
+     */
+    public boolean sendBinaryMessageToAll(final byte[] binaryMessage, final String message, final boolean combine) {
+        return queueMulticastMessage(binaryMessage, message, combine);
+    }
+
+    /**
+     * Queues a packet with a private message to a single user.
+     *
+     * @param message The message to send in the packet.
+     * @param ipAddress The ip address of the user.
+     * @param port The private chat port of the user.
+     * @return If the message was queued for sending or not.
+     */
+    public boolean sendMessageToUser(final String message, final String ipAddress, final int port) {
+        if (!privateChatEnabled) {
+            return false;
+        }
+
+        final InetSocketAddress address = new InetSocketAddress(ipAddress, port);
+
+        if (address.isUnresolved()) {
+            LOG.warning("Could not send message to unknown address %s: %s", ipAddress, message);
+            return false;
+        }
+
+        return queuePacket(message.getBytes(MESSAGE_CHARSET), message, address);
+    }
+
+    /**
+     * Registers the listener for packets arriving on the multicast and private chat channels.
+     *
+     * @param listener The listener to register.
+     */
+    public void registerPacketListener(final PacketListener listener) {
+        this.packetListener = listener;
+    }
+
+    /**
+     * Checks if private chat is enabled.
+     *
+     * @return If private chat is enabled.
+     */
+    public boolean isPrivateChatEnabled() {
+        return privateChatEnabled;
+    }
+
+    private boolean queueMulticastMessage(final byte[] encodedMsg, final String message, final boolean combine) {
+        if (!connected) {
+            return false;
+        }
+
+        checkMessageSize(encodedMsg, message);
+
+        if (!multicastQueue.offer(encodedMsg, message, combine)) {
+            LOG.warning("Too many messages waiting to be sent. Dropped message: %s", message);
+            return false;
+        }
+
+        wakeupSelector();
+
+        return true;
+    }
+
+    private boolean queuePacket(final byte[] encodedMsg, final String message, final SocketAddress address) {
+        if (!connected) {
+            return false;
+        }
+
+        checkMessageSize(encodedMsg, message);
+
+        if (!sendQueue.offer(new OutgoingPacket(ByteBuffer.wrap(encodedMsg), address, message))) {
+            LOG.warning("Too many packets waiting to be sent. Dropped message: %s", message);
+            return false;
+        }
+
+        wakeupSelector();
+
+        return true;
+    }
+
+    private void checkMessageSize(final byte[] encodedMsg, final String message) {
+        if (encodedMsg.length > Constants.NETWORK_PACKET_SIZE) {
+            trafficStatistics.recordOversizedMessage();
+            LOG.warning("Message was %s bytes, which is too large.\n" +
+                    " The receiver might not get the complete message.\n'%s'", encodedMsg.length, message);
+        }
+    }
+
+    private void wakeupSelector() {
+        final Selector currentSelector = selector;
+
+        if (currentSelector != null) {
+            currentSelector.wakeup();
+        }
+    }
+
+    /**
+     * Sends the multicast packets the pace allows.
+     *
+     * @return Milliseconds until the next packet can be sent, or 0 if there is nothing to wait for.
+     */
+    private long sendQueuedMulticastPackets() {
+        final DatagramChannel channel = multicastChannel;
+        MulticastSendQueue.Packet packet = multicastQueue.peek(System.nanoTime());
+
+        while (packet != null && connected && channel != null) {
+            try {
+                final int sentBytes = channel.send(packet.getBuffer(), multicastAddress);
+
+                if (sentBytes == 0) {
+                    // The socket send buffer is full. Continue when the channel is writable.
+                    channel.keyFor(selector).interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+                    return 0;
+                }
+
+                trafficStatistics.recordSent(TransportChannel.MULTICAST, sentBytes);
+
+                LOG.fine("Sent message: %s to %s", packet.getMessages(), multicastAddress);
+            }
+
+            catch (final IOException e) {
+                LOG.warning("Could not send message: %s. %s", packet.getMessages(), e.toString());
+            }
+
+            multicastQueue.remove(System.nanoTime());
+            packet = multicastQueue.peek(System.nanoTime());
+        }
+
+        final long nanosUntilNextPacket = multicastQueue.getNanosUntilNextPacket(System.nanoTime());
+
+        // Rounds up, since a timeout of 0 means wait forever
+        return (nanosUntilNextPacket + TimeUnit.MILLISECONDS.toNanos(1) - 1) / TimeUnit.MILLISECONDS.toNanos(1);
+    }
+
+    private void sendQueuedPackets() {
+        OutgoingPacket packet = sendQueue.peek();
+
+        while (packet != null && connected) {
+            final DatagramChannel channel = unicastChannel;
+
+            if (channel != null) {
+                try {
+                    final int sentBytes = channel.send(packet.getBuffer(), packet.getAddress());
+
+                    if (sentBytes == 0) {
+                        // The socket send buffer is full. Continue when the channel is writable.
+                        channel.keyFor(selector).interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+                        return;
+                    }
+
+                    trafficStatistics.recordSent(TransportChannel.PRIVATE_UDP, sentBytes);
+
+                    LOG.fine("Sent message: %s to %s", packet.getMessage(), packet.getAddress());
+                }
+
+                catch (final IOException e) {
+                    LOG.warning("Could not send message: %s. %s", packet.getMessage(), e.toString());
+                }
+            }
+
+            sendQueue.poll();
+            packet = sendQueue.peek();
+        }
+    }
+
+    private void receivePackets(final DatagramChannel channel) throws IOException {
+        final boolean mainChat = channel == multicastChannel;
+        final TransportChannel transportChannel = mainChat ? TransportChannel.MULTICAST : TransportChannel.PRIVATE_UDP;
+
+        for (int i = 0; i < MAX_PACKETS_PER_READ; i++) {
+            receiveBuffer.clear();
+            final SocketAddress sender = channel.receive(receiveBuffer);
+
+            if (sender == null) {
+                return;
+            }
+
+            receiveBuffer.flip();
+            trafficStatistics.recordReceived(transportChannel, receiveBuffer.remaining());
+
+            if (packetListener != null) {
+                packetListener.packetArrived(receiveBuffer, mainChat, getIPAddress((InetSocketAddress) sender));
+            }
+        }
+    }
+
+    private String getIPAddress(final InetSocketAddress sender) {
+        final InetAddress address = sender.getAddress();
+
+        if (!address.equals(lastAddress)) {
+            lastAddress = address;
+            lastIPAddress = address.getHostAddress();
+        }
+
+        return lastIPAddress;
+    }
+
+    private DatagramChannel openMulticastChannel(final NetworkInterface networkInterface) throws IOException {
+        final DatagramChannel channel = DatagramChannel.open(StandardProtocolFamily.INET);
+
+        try {
+            channel.setOption(StandardSocketOptions.SO_REUSEADDR, true);
+            channel.bind(new InetSocketAddress(multicastAddress.getPort()));
+            channel.setOption(StandardSocketOptions.IP_MULTICAST_IF, networkInterface);
+            channel.setOption(StandardSocketOptions.IP_MULTICAST_TTL, 64);
+            channel.setOption(StandardSocketOptions.IP_MULTICAST_LOOP, true);
+            channel.setOption(StandardSocketOptions.IP_TOS, IPTOS_RELIABILITY);
+            channel.configureBlocking(false);
+
+            membershipKey = channel.join(multicastAddress.getAddress(), networkInterface);
+            LOG.fine("Joined %s on %s", multicastAddress.getAddress(), networkInterface.getName());
+
+            return channel;
+        }
+
+        catch (final IOException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Opens a channel for private chat, on the first available port from
+     * {@link Constants#NETWORK_PRIVCHAT_PORT}. If no ports are available the channel is only
+     * used for sending, and the user is told that private messages can not be received.
+     *
+     * @return The opened channel, or <code>null</code> if it could not be opened at all.
+     */
+    @Nullable
+    private DatagramChannel openUnicastChannel() {
+        int port = Constants.NETWORK_PRIVCHAT_PORT;
+
+        for (int portAttempt = 0; portAttempt < MAX_PORT_ATTEMPTS; portAttempt++, port++) {
+            try {
+                final DatagramChannel channel = openUnicastChannel(port);
+                channel.register(selector, SelectionKey.OP_READ);
+                me.setPrivateChatPort(port);
+                LOG.fine("Private chat connected to port %s", port);
+
+                return channel;
+            }
+
+            catch (final IOException e) {
+                LOG.severe("%s %s", e.toString(), port);
+                me.setPrivateChatPort(0);
+            }
+        }
+
+        final String error = "Failed to initialize udp network:" +
+                "\nNo available listening port between " + Constants.NETWORK_PRIVCHAT_PORT +
+                " and " + (port - 1) + "." +
+                "\n\nYou will not be able to receive private messages!";
+
+        LOG.severe(error);
+        errorHandler.showError(error);
+
+        try {
+            final DatagramChannel channel = openUnicastChannel(0);
+            channel.register(selector, 0);
+
+            return channel;
+        }
+
+        catch (final IOException e) {
+            LOG.severe(e, e.toString());
+            errorHandler.showError("Failed to initialize network:\n" + e +
+                    "\n\nYou will not be able to send private messages!");
+
+            return null;
+        }
+    }
+
+    private DatagramChannel openUnicastChannel(final int port) throws IOException {
+        final DatagramChannel channel = DatagramChannel.open(StandardProtocolFamily.INET);
+
+        try {
+            channel.bind(new InetSocketAddress(port));
+            channel.setOption(StandardSocketOptions.IP_TOS, IPTOS_RELIABILITY);
+            channel.configureBlocking(false);
+
+            return channel;
+        }
+
+        catch (final IOException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    private NetworkInterface getUsableNetworkInterface(@Nullable final NetworkInterface networkInterface)
+            throws IOException {
+        if (networkInterface != null) {
+            return networkInterface;
+        }
+
+        final NetworkInterface firstUsableNetworkInterface = new NetworkUtils().findFirstUsableNetworkInterface();
+
+        if (firstUsableNetworkInterface == null) {
+            throw new IOException("No usable network interface to join " + multicastAddress.getAddress() + " on");
+        }
+
+        return firstUsableNetworkInterface;
+    }
+
+    private void closeChannels() {
+        if (membershipKey != null) {
+            membershipKey.drop();
+            membershipKey = null;
+        }
+
+        multicastChannel = close(multicastChannel);
+        unicastChannel = close(unicastChannel);
+
+        if (selector != null) {
+            try {
+                selector.close();
+            } catch (final IOException e) {
+                LOG.warning(e.toString());
+            }
+
+            selector = null;
+        }
+    }
+
+    @Nullable
+    private DatagramChannel close(@Nullable final DatagramChannel channel) {
+        if (channel != null) {
+            try {
+                channel.close();
+            } catch (final IOException e) {
+                LOG.warning(e.toString());
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * A packet waiting to be sent.
+     */
+    private static class OutgoingPacket {
+
+        private final ByteBuffer buffer;
+        private final SocketAddress address;
+        private final String message;
+
+        OutgoingPacket(final ByteBuffer buffer, final SocketAddress address, final String message) {
+            this.buffer = buffer;
+            this.address = address;
+            this.message = message;
+        }
+
+        public ByteBuffer getBuffer() {
+            return buffer;
+        }
+
+        public SocketAddress getAddress() {
+            return address;
+        }
+
+        public String getMessage() {
+            return message;
+        }
+    }
+}
@@ -20,28 +20,23 @@
  *   If not, see <http://www.gnu.org/licenses/>.                           *
  ***************************************************************************/
 
-package net.usikkert.kouchat.net;
+package net.usikkert.kouchat.net.tcp;
 
-import net.usikkert.kouchat.junit.ExpectedException;
-
-import org.junit.Rule;
-import org.junit.Test;
+import java.nio.channels.SelectionKey;
 
 /**
- * Test of {@link UDPSender}.
+ * Handles the events from the {@link TCPSelector} for a registered channel.
  *
  * @author Christian Ihle
  */
-public class UDPSenderTest {
-
-    @Rule
-    public ExpectedException expectedException = ExpectedException.none();
-
-    @Test
-    public void constructorShouldThrowExceptionIfErrorHandlerIsNull() {
-        expectedException.expect(IllegalArgumentException.class);
-        expectedException.expectMessage("Error handler can not be null");
-
-        new UDPSender(null);
-    }
+public interface TCPChannelHandler {
+
+    /**
+     * The channel is ready for one or more of the operations it is registered for.
+     *
+     * <p>Called on the selector thread, so it must not block.</p>
+     *
+     * @param key The selection key of the channel, with the ready operations.
+     */
+    void channelReady(SelectionKey key);
 }
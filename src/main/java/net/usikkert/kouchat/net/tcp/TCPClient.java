@@ -20,13 +20,18 @@
  *   If not, see <http://www.gnu.org/licenses/>.                           *
  ***************************************************************************/
 
+
 package net.usikkert.kouchat.net.tcp;
 
-import java.io.DataInputStream;
-import java.io.DataOutputStream;
 import java.io.IOException;
-import java.net.Socket;
-
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.util.Collections;
+import java.util.List;
+
+import net.usikkert.kouchat.net.TrafficStatistics;
+import net.usikkert.kouchat.net.transport.TransportChannel;
 import net.usikkert.kouchat.util.Logger;
 import net.usikkert.kouchat.util.Validate;
 
@@ -35,104 +40,365 @@ import org.jetbrains.annotations.Nullable;
 /**
  * Client for communicating over a tcp socket.
  *
+ * <p>Messages are sent and received using one of two protocol versions. {@link #PROTOCOL_TEXT} is
+ * understood by all clients, while {@link #PROTOCOL_FRAMED} is only used after both sides
+ * have agreed on it during identification. See {@link TCPUserIdentifier}.</p>
+ *
+ * <p>The channel is non-blocking, and registered with the {@link TCPSelector}. Messages are read on the
+ * selector thread, and {@link TCPClientListener} is notified on that thread, so the listener must not
+ * do anything slow with them. Messages are written directly when the socket has room for them, and the rest
+ * is written by the selector thread when the socket is ready.
+ * Sending never waits. When too much data is waiting to be written, {@link #isReadyToSend()} returns <code>false</code>
+ * until the selector thread has written enough of it, and then {@link TCPClientListener#readyToSend(TCPClient)}
+ * is notified.</p>
+ *
  * @author Christian Ihle
  */
-public class TCPClient implements Runnable {
+public class TCPClient implements TCPChannelHandler {
+
+    /** Messages are sent with {@link java.io.DataOutputStream#writeUTF(String)}. */
+    public static final int PROTOCOL_TEXT = 1;
+
+    /** Messages are sent as length prefixed frames, encoded by {@link TCPFrameCodec}. */
+    public static final int PROTOCOL_FRAMED = 2;
 
     private static final Logger LOG = Logger.getLogger(TCPClient.class);
 
-    private final Socket socket;
+    private static final int INITIAL_BUFFER_SIZE = 8192;
 
-    @Nullable
-    private DataInputStream inputStream;
+    /** The largest buffer needed to read a whole frame, in any of the protocols. */
+    private static final int MAX_READ_BUFFER_SIZE = TCPFrameCodec.HEADER_SIZE + TCPFrameCodec.MAX_FRAME_SIZE;
+
+    /** Bytes waiting to be written before the client is no longer ready to send. */
+    private static final int MAX_PENDING_OUTPUT = 64 * 1024;
+
+    private final SocketChannel channel;
+    private final TCPSelector selector;
+    private final String ipAddress;
+    private final int port;
+    private final TCPFrameCodec frameCodec;
+    private final TrafficStatistics trafficStatistics;
+
+    /** Used on the selector thread only. */
+    private ByteBuffer readBuffer;
+
+    /** Data waiting to be written, in write mode. Guarded by outputLock. */
+    private ByteBuffer outputBuffer;
+    private final Object outputLock;
+
+    /** If more than {@link #MAX_PENDING_OUTPUT} bytes are waiting to be written. Guarded by outputLock. */
+    private boolean outputFull;
+
+    /** If the selector was last asked to tell when there is room to write more. Guarded by outputLock. */
+    private boolean writeInterest;
+
+    /** If writing failed, and the listener has not been notified yet. Guarded by outputLock. */
+    private boolean writeFailed;
 
     @Nullable
-    private DataOutputStream outputStream; // TODO how is this outside of Java?
+    private volatile SelectionKey selectionKey;
 
     @Nullable
-    private TCPClientListener clientListener;
+    private volatile TCPClientListener clientListener;
+
+    private volatile int readProtocol;
+    private volatile int writeProtocol;
+
+    private volatile boolean connected;
+    private volatile boolean disconnecting;
+
+    public TCPClient(final SocketChannel channel, final TCPSelector selector, final TrafficStatistics trafficStatistics) {
+        Validate.notNull(channel, "Channel can not be null");
+        Validate.notNull(selector, "Selector can not be null");
+        Validate.notNull(trafficStatistics, "Traffic statistics can not be null");
+
+        this.channel = channel;
+        this.selector = selector;
+        this.ipAddress = channel.socket().getInetAddress().getHostAddress();
+        this.port = channel.socket().getPort();
+        this.frameCodec = new TCPFrameCodec();
+        this.trafficStatistics = trafficStatistics;
+        this.readBuffer = ByteBuffer.allocate(INITIAL_BUFFER_SIZE);
+        this.outputBuffer = ByteBuffer.allocate(INITIAL_BUFFER_SIZE);
+        this.outputLock = new Object();
+        this.readProtocol = PROTOCOL_TEXT;
+        this.writeProtocol = PROTOCOL_TEXT;
+    }
 
-    private boolean connected;
-    private boolean disconnecting;
+    @Override
+    public void channelReady(final SelectionKey key) {
+        if (key.isReadable()) {
+            readMessages();
+        }
+
+        if (key.isValid() && key.isWritable()) {
+            final boolean readyToSend;
+            final boolean writeFailed;
+
+            synchronized (outputLock) {
+                readyToSend = writeOutput();
+                writeFailed = takeWriteFailure();
+            }
 
-    public TCPClient(final Socket socket) {
-        Validate.notNull(socket, "Socket can not be null");
-        this.socket = socket;
+            if (writeFailed) {
+                notifyDisconnected();
+            }
+
+            final TCPClientListener listener = clientListener;
+
+            // Notifying outside the lock, since the listener may send more right away
+            if (readyToSend && listener != null) {
+                listener.readyToSend(this);
+            }
+        }
     }
 
-    @Override
-    public void run() {
+    private void readMessages() {
         try {
-            while (connected && inputStream != null) {
-                final String message = inputStream.readUTF();
-                LOG.fine("Message arrived from %s: %s", getIPAddress(), message);
+            final int bytesRead = channel.read(readBuffer);
 
-                if (clientListener != null) {
-                    clientListener.messageArrived(message, this);
+            if (bytesRead < 0) {
+                throw new IOException("Connection closed by " + ipAddress);
+            }
+
+            readBuffer.flip();
+            int frameStart = readBuffer.position();
+            String message = frameCodec.decode(readBuffer, readProtocol);
+
+            while (message != null) {
+                LOG.fine("Message arrived from %s: %s", ipAddress, message);
+                trafficStatistics.recordReceived(TransportChannel.TCP, readBuffer.position() - frameStart);
+                frameStart = readBuffer.position();
+                final TCPClientListener listener = clientListener;
+
+                if (listener != null) {
+                    listener.messageArrived(message, this);
                 }
+
+                // The listener may have changed the protocol, or disconnected
+                message = connected ? frameCodec.decode(readBuffer, readProtocol) : null;
+            }
+
+            readBuffer.compact();
+
+            // The next frame is larger than the buffer
+            if (!readBuffer.hasRemaining() && readBuffer.capacity() < MAX_READ_BUFFER_SIZE) {
+                final ByteBuffer largerBuffer = ByteBuffer.allocate(Math.min(readBuffer.capacity() * 2, MAX_READ_BUFFER_SIZE));
+                readBuffer.flip();
+                largerBuffer.put(readBuffer);
+                readBuffer = largerBuffer;
             }
         }
 
         catch (final IOException e) {
             LOG.severe(e.toString());
-            connected = false;
+            connectionLost();
+        }
+    }
+
+    public void send(final String message) {
+        send(Collections.singletonList(message));
+    }
+
+    /**
+     * Sends the messages, and writes as much as possible to the socket at the end, so they can share packets.
+     * Never waits for the socket. What doesn't fit is written later by the selector thread.
+     *
+     * @param messages The messages to send.
+     */
+    public void send(final List<String> messages) {
+        final boolean writeFailed;
+
+        synchronized (outputLock) {
+            if (!connected) {
+                return;
+            }
 
-            if (clientListener != null) {
-                clientListener.disconnected(this);
+            for (final String message : messages) {
+                addToOutput(message);
             }
+
+            writeOutput();
+            writeFailed = takeWriteFailure();
+        }
+
+        // Notifying outside the lock, since the listener may do anything
+        if (writeFailed) {
+            notifyDisconnected();
         }
     }
 
-    public void send(final String message) {
-        if (!connected || outputStream == null) {
+    /**
+     * Checks if the data already waiting to be written is small enough to send more.
+     * Sending more is still possible when not ready, but it will only add to the waiting data.
+     *
+     * @return If ready to send more.
+     */
+    public boolean isReadyToSend() {
+        synchronized (outputLock) {
+            return connected && !outputFull;
+        }
+    }
+
+    private void addToOutput(final String message) {
+        final ByteBuffer frame = frameCodec.encode(message, writeProtocol);
+
+        if (frame == null) {
+            LOG.warning("Message to %s is too large to send: %s characters", ipAddress, message.length());
+            trafficStatistics.recordOversizedMessage();
             return;
         }
 
+        if (outputBuffer.remaining() < frame.remaining()) {
+            final ByteBuffer largerBuffer = ByteBuffer.allocate(
+                    Math.max(outputBuffer.capacity() * 2, outputBuffer.position() + frame.remaining()));
+            outputBuffer.flip();
+            largerBuffer.put(outputBuffer);
+            outputBuffer = largerBuffer;
+        }
+
+        trafficStatistics.recordSent(TransportChannel.TCP, frame.remaining());
+        outputBuffer.put(frame);
+        LOG.fine("Sent message: %s", message);
+    }
+
+    /**
+     * Writes as much of the waiting data as the socket has room for, and asks the selector
+     * to tell when there is room for more. Must hold outputLock. If writing fails, the connection
+     * is closed, and the failure is kept until {@link #takeWriteFailure()}, so the listener can be
+     * notified after the lock is released.
+     *
+     * @return If the waiting data was too large before writing, but not anymore.
+     */
+    private boolean writeOutput() {
+        if (outputBuffer.position() == 0) {
+            return false;
+        }
+
         try {
-            outputStream.writeUTF(message);
-            LOG.fine("Sent message: %s", message);
+            outputBuffer.flip();
+            channel.write(outputBuffer);
+            outputBuffer.compact();
         }
 
         catch (final IOException e) {
             LOG.severe(e.toString());
+            outputBuffer.clear();
+            outputFull = false;
+            writeFailed = connected;
             connected = false;
+            closeChannel();
+            return false;
+        }
+
+        final boolean wasFull = outputFull;
+        outputFull = outputBuffer.position() > MAX_PENDING_OUTPUT;
+        setWriteInterest(outputBuffer.position() > 0);
+
+        return wasFull && !outputFull;
+    }
+
+    /**
+     * Checks if writing failed since last time, and forgets it. Must hold outputLock.
+     *
+     * @return If writing failed while connected.
+     */
+    private boolean takeWriteFailure() {
+        final boolean failed = writeFailed;
+        writeFailed = false;
+
+        return failed;
+    }
 
-            if (clientListener != null) {
-                clientListener.disconnected(this);
+    /**
+     * Asks the selector to change the write interest, but only when it's different from last time,
+     * to avoid waking up the selector for every message. Must hold outputLock, so the changes
+     * reach the selector in the same order as they are made here.
+     *
+     * @param interested If the selector should tell when there is room to write more.
+     */
+    private void setWriteInterest(final boolean interested) {
+        final SelectionKey key = selectionKey;
+
+        if (key == null || interested == writeInterest) {
+            return;
+        }
+
+        writeInterest = interested;
+
+        selector.execute(new Runnable() {
+            @Override
+            public void run() {
+                if (!key.isValid()) {
+                    return;
+                }
+
+                if (interested) {
+                    key.interestOps(key.interestOps() | SelectionKey.OP_WRITE);
+                } else {
+                    key.interestOps(key.interestOps() & ~SelectionKey.OP_WRITE);
+                }
             }
+        });
+    }
+
+    private void connectionLost() {
+        final boolean wasConnected = connected;
+        connected = false;
+        closeChannel();
+
+        if (wasConnected) {
+            notifyDisconnected();
+        }
+    }
+
+    private void notifyDisconnected() {
+        final TCPClientListener listener = clientListener;
+
+        if (listener != null) {
+            listener.disconnected(this);
         }
     }
 
     public boolean connect() {
         try {
-            inputStream = new DataInputStream(socket.getInputStream());
-            outputStream = new DataOutputStream(socket.getOutputStream());
-
-            LOG.fine("Connected to %s:%s", getIPAddress(), socket.getPort());
+            // Messages are written as soon as they are sent, so there is nothing to gain from waiting for more
+            channel.socket().setTcpNoDelay(true);
+            channel.configureBlocking(false);
 
             connected = true;
-            new Thread(this, getClass().getSimpleName()).start();
+            selectionKey = selector.register(channel, SelectionKey.OP_READ, this);
+
+            LOG.fine("Connected to %s:%s", ipAddress, port);
 
             return true;
         }
 
         catch (final IOException e) {
             LOG.severe(e.getMessage());
+            connected = false;
+
             return false;
         }
     }
 
     public void disconnect() {
-        try {
-            LOG.fine("Disconnected from %s:%s", getIPAddress(), socket.getPort());
-            connected = false;
-            disconnecting = true;
+        LOG.fine("Disconnected from %s:%s", ipAddress, port);
+        connected = false;
+        disconnecting = true;
 
-            if (clientListener != null) {
-                clientListener.disconnected(this);
-            }
+        final TCPClientListener listener = clientListener;
+
+        if (listener != null) {
+            listener.disconnected(this);
+        }
 
-            socket.close();
+        closeChannel();
+    }
+
+    private void closeChannel() {
+        try {
+            channel.close();
         }
 
         catch (final IOException e) {
@@ -141,13 +407,53 @@ public class TCPClient implements Runnable {
     }
 
     public String getIPAddress() {
-        return socket.getInetAddress().getHostAddress();
+        return ipAddress;
     }
 
     public void registerClientListener(@Nullable final TCPClientListener theClientListener) {
         this.clientListener = theClientListener;
     }
 
+    /**
+     * Sets the protocol version to use for the messages received from now on.
+     *
+     * <p>When changed after connecting, this must be done from the thread receiving the messages,
+     * before the next message is read. That is the thread calling {@link TCPClientListener#messageArrived(String, TCPClient)}.</p>
+     *
+     * @param protocol {@link #PROTOCOL_TEXT} or {@link #PROTOCOL_FRAMED}.
+     */
+    public void setReadProtocol(final int protocol) {
+        validateProtocol(protocol);
+        readProtocol = protocol;
+    }
+
+    /**
+     * Sets the protocol version to use for the messages sent from now on.
+     *
+     * @param protocol {@link #PROTOCOL_TEXT} or {@link #PROTOCOL_FRAMED}.
+     */
+    public void setWriteProtocol(final int protocol) {
+        validateProtocol(protocol);
+
+        synchronized (outputLock) {
+            writeProtocol = protocol;
+        }
+    }
+
+    public int getReadProtocol() {
+        return readProtocol;
+    }
+
+    public int getWriteProtocol() {
+        return writeProtocol;
+    }
+
+    private void validateProtocol(final int protocol) {
+        if (protocol != PROTOCOL_TEXT && protocol != PROTOCOL_FRAMED) {
+            throw new IllegalArgumentException("Unknown protocol: " + protocol);
+        }
+    }
+
     public void setDisconnecting(final boolean isDisconnecting) {
         disconnecting = isDisconnecting;
     }
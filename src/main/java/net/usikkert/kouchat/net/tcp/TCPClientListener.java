@@ -33,4 +33,12 @@ public interface TCPClientListener {
 
     void disconnected(TCPClient client);
 
+    /**
+     * Called on the selector thread when enough of the waiting data has been written,
+     * after {@link TCPClient#isReadyToSend()} returned <code>false</code>.
+     *
+     * @param client The client that is ready to send more.
+     */
+    void readyToSend(TCPClient client);
+
 }
@@ -22,16 +22,29 @@
 
 package net.usikkert.kouchat.net.tcp;
 
-import java.net.Socket;
-import java.util.HashMap;
+import java.io.IOException;
+import java.nio.channels.SocketChannel;
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
 
+import net.usikkert.kouchat.Constants;
 import net.usikkert.kouchat.misc.Controller;
+import net.usikkert.kouchat.misc.FlightRecorder;
 import net.usikkert.kouchat.misc.User;
+import net.usikkert.kouchat.net.NetworkCapabilities;
+import net.usikkert.kouchat.net.TrafficStatistics;
 import net.usikkert.kouchat.settings.Settings;
 import net.usikkert.kouchat.util.Logger;
+import net.usikkert.kouchat.util.NamedThreadFactory;
 import net.usikkert.kouchat.util.Tools;
 import net.usikkert.kouchat.util.Validate;
 
@@ -49,33 +62,61 @@ public class TCPConnectionHandler implements TCPConnectionListener, TCPReceiverL
     private final Controller controller;
     private final Settings settings;
     private final ExecutorService executorService;
-    private final Map<User, TCPUserClient> userClients;
+    private final Executor sendExecutor;
+    private final ScheduledExecutorService sendRetryExecutor;
+    private final Executor receiveExecutor;
+    private final ConcurrentMap<User, TCPUserClient> userClients;
+    private final Set<User> retryUsers;
+    private final TCPSelector selector;
+    private final TrafficStatistics trafficStatistics;
+    private final FlightRecorder flightRecorder;
 
     @Nullable
     private TCPReceiverListener listener;
 
-    private boolean connected;
+    private volatile boolean connected;
 
-    public TCPConnectionHandler(final Controller controller, final Settings settings) {
+    public TCPConnectionHandler(final Controller controller, final Settings settings, final TCPSelector selector,
+                                final TrafficStatistics trafficStatistics) {
         Validate.notNull(controller, "Controller can not be null");
         Validate.notNull(settings, "Settings can not be null");
+        Validate.notNull(selector, "Selector can not be null");
+        Validate.notNull(trafficStatistics, "Traffic statistics can not be null");
 
         this.controller = controller;
         this.settings = settings;
-        this.executorService = Executors.newCachedThreadPool();
-        this.userClients = new HashMap<>();
+        this.executorService = controller.getThreadPools().getNetworkPool();
+        this.sendExecutor = controller.getThreadPools().getTcpSendPool();
+        this.sendRetryExecutor = new ScheduledThreadPoolExecutor(1, new NamedThreadFactory("TCPSendRetry"));
+        this.receiveExecutor = controller.getThreadPools().getTcpReceivePool();
+        this.userClients = new ConcurrentHashMap<>();
+        this.retryUsers = Collections.newSetFromMap(new ConcurrentHashMap<User, Boolean>());
+        this.selector = selector;
+        this.trafficStatistics = trafficStatistics;
+        this.flightRecorder = controller.getFlightRecorder();
 
         new Thread(this, TCPConnectionHandler.class.getSimpleName()).start();
     }
 
     @Override
-    public void socketAdded(final Socket socket) {
+    public void socketAdded(final SocketChannel socketChannel) {
+        try {
+            submitSocketAdded(socketChannel);
+        }
+
+        catch (final RejectedExecutionException e) {
+            LOG.warning("Unable to add socket. Closing. %s", e.getMessage());
+            closeSocketChannel(socketChannel);
+        }
+    }
+
+    private void submitSocketAdded(final SocketChannel socketChannel) {
         executorService.submit(new Runnable() {
             @Override
             public void run() {
                 LOG.fine("Add socket start");
 
-                final TCPClient client = new TCPClient(socket);
+                final TCPClient client = new TCPClient(socketChannel, selector, trafficStatistics);
                 final TCPUserIdentifier userIdentifier = new TCPUserIdentifier(controller, settings, client);
 
                 if (!client.connect()) {
@@ -100,6 +141,18 @@ public class TCPConnectionHandler implements TCPConnectionListener, TCPReceiverL
     }
 
     public void userAdded(final User user) {
+        try {
+            submitUserAdded(user);
+        }
+
+        catch (final RejectedExecutionException e) {
+            // Tried again by the connection handler thread
+            LOG.warning("Unable to add user=%s. Retrying later. %s", user.getNick(), e.getMessage());
+            retryUsers.add(user);
+        }
+    }
+
+    private void submitUserAdded(final User user) {
         executorService.submit(new Runnable() {
             @Override
             public void run() {
@@ -111,14 +164,20 @@ public class TCPConnectionHandler implements TCPConnectionListener, TCPReceiverL
                 }
 
                 final TCPConnector tcpConnector = new TCPConnector(user);
-                final Socket socket = tcpConnector.connect();
+                final SocketChannel socketChannel = tcpConnector.connect();
 
-                if (socket == null) {
+                if (socketChannel == null) {
                     LOG.warning("Add user done. Unable to connect using tcp. Giving up."); // Never tries again
                     return;
                 }
 
-                final TCPClient client = new TCPClient(socket);
+                final TCPClient client = new TCPClient(socketChannel, selector, trafficStatistics);
+                final boolean framed = user.hasCapability(NetworkCapabilities.FRAMED_TCP_MESSAGES);
+
+                // The other side only answers after the identification, using the same protocol
+                if (framed) {
+                    client.setReadProtocol(TCPClient.PROTOCOL_FRAMED);
+                }
 
                 if (!client.connect()) {
                     LOG.warning("Add user done. Connection failed. Giving up."); // Never tries again
@@ -126,8 +185,18 @@ public class TCPConnectionHandler implements TCPConnectionListener, TCPReceiverL
                     return;
                 }
 
+                // Identifying before adding the client, so no other message can be sent first
+                if (framed) {
+                    client.send("SYS-IDENTIFY:" + settings.getMe().getCode() + ":" + user.getCode() + ":" +
+                            TCPClient.PROTOCOL_FRAMED);
+                    client.setWriteProtocol(TCPClient.PROTOCOL_FRAMED);
+                }
+
+                else {
+                    client.send("SYS-IDENTIFY:" + settings.getMe().getCode() + ":" + user.getCode());
+                }
+
                 addClient(user, client);
-                client.send("SYS-IDENTIFY:" + settings.getMe().getCode() + ":" + user.getCode());
 
                 LOG.fine("Add user done for user=%s", user.getNick());
             }
@@ -135,6 +204,7 @@ public class TCPConnectionHandler implements TCPConnectionListener, TCPReceiverL
     }
 
     public void userRemoved(final User user) {
+        retryUsers.remove(user);
         final TCPUserClient userClient = userClients.remove(user);
 
         if (userClient != null) {
@@ -154,15 +224,35 @@ public class TCPConnectionHandler implements TCPConnectionListener, TCPReceiverL
         }
 
         userClients.clear();
+        retryUsers.clear();
+    }
+
+    private void closeSocketChannel(final SocketChannel socketChannel) {
+        try {
+            socketChannel.close();
+        }
+
+        catch (final IOException e) {
+            LOG.warning("Failed to close socket: %s", e.toString());
+        }
     }
 
     private void addClient(final User user, final TCPClient client) {
         final TCPUserClient userClient = userClients.get(user);
 
-        if (userClient == null) {
-            userClients.put(user, new TCPUserClient(client, user, this));
-        } else {
+        if (userClient != null) {
             userClient.add(client);
+            return;
+        }
+
+        final TCPSendQueue sendQueue = new TCPSendQueue(Constants.NETWORK_TCP_SEND_QUEUE_SIZE, settings.getTcpOverflowPolicy());
+        final TCPUserClient newUserClient = new TCPUserClient(client, user, this, sendQueue, sendExecutor, sendRetryExecutor,
+                                                              receiveExecutor, flightRecorder);
+        final TCPUserClient existingUserClient = userClients.putIfAbsent(user, newUserClient);
+
+        // Another thread added a client for the same user at the same time
+        if (existingUserClient != null) {
+            existingUserClient.add(client);
         }
     }
 
@@ -180,6 +270,21 @@ public class TCPConnectionHandler implements TCPConnectionListener, TCPReceiverL
         }
     }
 
+    /**
+     * Gets the queues of messages waiting to be sent to each user.
+     *
+     * @return The send queues, by user.
+     */
+    public Map<User, TCPSendQueue> getSendQueues() {
+        final Map<User, TCPSendQueue> sendQueues = new LinkedHashMap<>();
+
+        for (final Map.Entry<User, TCPUserClient> entry : userClients.entrySet()) {
+            sendQueues.put(entry.getKey(), entry.getValue().getSendQueue());
+        }
+
+        return sendQueues;
+    }
+
     public void registerReceiverListener(final TCPReceiverListener theListener) {
         this.listener = theListener;
     }
@@ -206,12 +311,16 @@ public class TCPConnectionHandler implements TCPConnectionListener, TCPReceiverL
                 continue;
             }
 
-            for (final User user : userClients.keySet()) {
-                final TCPUserClient userClient = userClients.get(user);
+            retryAddingUsers();
+
+            for (final Map.Entry<User, TCPUserClient> entry : userClients.entrySet()) {
+                final User user = entry.getKey();
+                final TCPUserClient userClient = entry.getValue();
                 final int clientCount = userClient.getClientCount();
 
                 if (clientCount == 0) {
                     LOG.warning("User %s has lost all tcp connections. Trying to reconnect.", user.getNick());
+                    trafficStatistics.recordTcpReconnect();
                     userAdded(user);
                 } else if (clientCount > 1) {
                     LOG.warning("User %s has too many (%d) tcp connections. Trying to close.",
@@ -221,4 +330,18 @@ public class TCPConnectionHandler implements TCPConnectionListener, TCPReceiverL
             }
         }
     }
+
+    /**
+     * Tries again to add the users that could not be added earlier, because the network pool was full.
+     */
+    void retryAddingUsers() {
+        for (final User user : retryUsers) {
+            retryUsers.remove(user);
+
+            if (!userAddedAndConnected(user)) {
+                LOG.fine("Retrying to add user=%s", user.getNick());
+                userAdded(user);
+            }
+        }
+    }
 }
@@ -22,7 +22,7 @@
 
 package net.usikkert.kouchat.net.tcp;
 
-import java.net.Socket;
+import java.nio.channels.SocketChannel;
 
 /**
  * Listener for tcp connections.
@@ -34,7 +34,9 @@ public interface TCPConnectionListener {
     /**
      * A tcp socket has been established and needs to be identified and handled.
      *
-     * @param socket The new unknown socket connection.
+     * <p>Called on the selector thread, so it must not block.</p>
+     *
+     * @param socketChannel The new unknown socket connection.
      */
-    void socketAdded(Socket socket);
+    void socketAdded(SocketChannel socketChannel);
 }
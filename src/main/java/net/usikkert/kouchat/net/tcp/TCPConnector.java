@@ -25,8 +25,8 @@ package net.usikkert.kouchat.net.tcp;
 import java.io.IOException;
 import java.net.InetAddress;
 import java.net.InetSocketAddress;
-import java.net.Socket;
 import java.net.SocketAddress;
+import java.nio.channels.SocketChannel;
 
 import net.usikkert.kouchat.misc.User;
 import net.usikkert.kouchat.util.Logger;
@@ -55,8 +55,13 @@ public class TCPConnector {
         this.sleeper = new Sleeper();
     }
 
+    /**
+     * Connects to the user, and waits until the connection is established or fails.
+     *
+     * @return The connected channel, in blocking mode, or <code>null</code> if connecting failed.
+     */
     @Nullable
-    public Socket connect() {
+    public SocketChannel connect() {
         LOG.fine("Connecting to user=%s", user.getNick());
 
         waitForPort();
@@ -66,23 +71,41 @@ public class TCPConnector {
             return null;
         }
 
+        SocketChannel channel = null;
+
         try {
             LOG.fine("Connecting to: %s@%s:%s", user.getNick(), user.getIpAddress(), user.getTcpChatPort());
-            final Socket socket = new Socket();
+            channel = SocketChannel.open();
             final SocketAddress address = new InetSocketAddress(InetAddress.getByName(user.getIpAddress()), user.getTcpChatPort());
-            socket.connect(address, SOCKET_CONNECT_TIMEOUT);
-            LOG.fine("Connected to: %s@%s:%s", user.getNick(), socket.getInetAddress().getHostAddress(), socket.getPort());
+            channel.socket().connect(address, SOCKET_CONNECT_TIMEOUT);
+            LOG.fine("Connected to: %s@%s:%s", user.getNick(), channel.socket().getInetAddress().getHostAddress(),
+                     channel.socket().getPort());
 
-            return socket;
+            return channel;
         }
 
         catch (final IOException e) {
             LOG.severe("Failed to connect to user=%s: %s", user.getNick(), e.getMessage());
+            closeChannel(channel);
         }
 
         return null;
     }
 
+    private void closeChannel(@Nullable final SocketChannel channel) {
+        if (channel == null) {
+            return;
+        }
+
+        try {
+            channel.close();
+        }
+
+        catch (final IOException e) {
+            LOG.warning("Failed to close channel: %s", e.getMessage());
+        }
+    }
+
     private void waitForPort() {
         int tries = 0;
 
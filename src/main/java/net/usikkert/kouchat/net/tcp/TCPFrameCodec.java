@@ -0,0 +1,285 @@
+
+/***************************************************************************
+ *   Copyright 2006-2018 by Christian Ihle                                 *
+ *   contact@kouchat.net                                                   *
+ *                                                                         *
+ *   This file is part of KouChat.                                         *
+ *                                                                         *
+ *   KouChat is free software; you can redistribute it and/or modify       *
+ *   it under the terms of the GNU Lesser General Public License as        *
+ *   published by the Free Software Foundation, either version 3 of        *
+ *   the License, or (at your option) any later version.                   *
+ *                                                                         *
+ *   KouChat is distributed in the hope that it will be useful,            *
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of        *
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU      *
+ *   Lesser General Public License for more details.                       *
+ *                                                                         *
+ *   You should have received a copy of the GNU Lesser General Public      *
+ *   License along with KouChat.                                           *
+ *   If not, see <http://www.gnu.org/licenses/>.                           *
+ ***************************************************************************/
+
+package net.usikkert.kouchat.net.tcp;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+
+import net.usikkert.kouchat.Constants;
+import net.usikkert.kouchat.util.Validate;
+
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Encodes and decodes tcp messages as length prefixed frames.
+ *
+ * <p>Supports both protocol versions:</p>
+ * <ul>
+ *   <li>{@link TCPClient#PROTOCOL_TEXT}: a 2 byte length followed by the message in modified UTF-8,
+ *       the same as {@link java.io.DataOutputStream#writeUTF(String)}. Limited to 65535 bytes.</li>
+ *   <li>{@link TCPClient#PROTOCOL_FRAMED}: a 4 byte length followed by the message in standard UTF-8.
+ *       Limited to {@link #MAX_FRAME_SIZE}.</li>
+ * </ul>
+ *
+ * <p>The buffers used for encoding and decoding are reused between messages, and grow as needed.
+ * Encoding and decoding can be done by different threads at the same time, but only one thread
+ * can encode, and only one thread can decode at a time.</p>
+ *
+ * @author Christian Ihle
+ */
+public class TCPFrameCodec {
+
+    /** The number of bytes used for the length of the message, in front of every framed message. */
+    public static final int HEADER_SIZE = 4;
+
+    /** The largest message in bytes a frame can contain. Larger frames are not sent, and not accepted. */
+    public static final int MAX_FRAME_SIZE = 256 * 1024;
+
+    /** The number of bytes used for the length of the message, in front of every text message. */
+    public static final int TEXT_HEADER_SIZE = 2;
+
+    /** The largest text message in bytes. */
+    public static final int MAX_TEXT_SIZE = 65535;
+
+    private static final int INITIAL_BUFFER_SIZE = 1024;
+
+    private final CharsetEncoder encoder;
+    private final CharsetDecoder decoder;
+    private final int maxBytesPerChar;
+
+    private ByteBuffer encodeBuffer;
+    private CharBuffer charBuffer;
+
+    public TCPFrameCodec() {
+        final Charset charset = Charset.forName(Constants.MESSAGE_CHARSET);
+
+        encoder = charset.newEncoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        decoder = charset.newDecoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        maxBytesPerChar = (int) Math.ceil(encoder.maxBytesPerChar());
+
+        encodeBuffer = ByteBuffer.allocate(INITIAL_BUFFER_SIZE);
+        charBuffer = CharBuffer.allocate(INITIAL_BUFFER_SIZE);
+    }
+
+    /**
+     * Encodes the message as a frame for the protocol.
+     *
+     * <p>The returned buffer is ready to be written, and is only valid until the next call to this method.</p>
+     *
+     * @param message The message to encode.
+     * @param protocol The protocol version to encode for.
+     * @return A buffer with the frame, or <code>null</code> if the message is too large for the protocol.
+     */
+    @Nullable
+    public ByteBuffer encode(final String message, final int protocol) {
+        Validate.notNull(message, "Message can not be null");
+
+        if (protocol == TCPClient.PROTOCOL_FRAMED) {
+            return encodeFramed(message);
+        }
+
+        return encodeText(message);
+    }
+
+    /**
+     * Decodes the next message from the input, if the whole frame has arrived.
+     *
+     * <p>The input must be a buffer with an array. If the whole frame is there, the position is moved
+     * to the end of the frame. If not, the position is left unchanged so decoding can be tried again
+     * when more data has arrived.</p>
+     *
+     * @param input The received data, ready to be read.
+     * @param protocol The protocol version to decode.
+     * @return The message, or <code>null</code> if the whole frame has not arrived yet.
+     * @throws IOException If the frame is invalid, or larger than the protocol allows.
+     */
+    @Nullable
+    public String decode(final ByteBuffer input, final int protocol) throws IOException {
+        Validate.notNull(input, "Input can not be null");
+
+        if (protocol == TCPClient.PROTOCOL_FRAMED) {
+            return decodeFramed(input);
+        }
+
+        return decodeText(input);
+    }
+
+    @Nullable
+    private ByteBuffer encodeFramed(final String message) {
+        final long maxMessageSize = Math.min((long) message.length() * maxBytesPerChar, MAX_FRAME_SIZE);
+        final int frameSize = HEADER_SIZE + (int) maxMessageSize;
+
+        prepareEncodeBuffer(frameSize, HEADER_SIZE);
+        encoder.reset();
+
+        CoderResult result = encoder.encode(CharBuffer.wrap(message), encodeBuffer, true);
+
+        if (!result.isOverflow()) {
+            result = encoder.flush(encodeBuffer);
+        }
+
+        if (result.isOverflow()) {
+            return null;
+        }
+
+        encodeBuffer.putInt(0, encodeBuffer.position() - HEADER_SIZE);
+        encodeBuffer.flip();
+
+        return encodeBuffer;
+    }
+
+    /**
+     * Encodes in modified UTF-8, where the null character and supplementary characters are encoded
+     * differently than in standard UTF-8.
+     */
+    @Nullable
+    private ByteBuffer encodeText(final String message) {
+        final int maxMessageSize = Math.min(message.length() * 3, MAX_TEXT_SIZE);
+
+        prepareEncodeBuffer(TEXT_HEADER_SIZE + maxMessageSize, TEXT_HEADER_SIZE);
+
+        for (int i = 0; i < message.length(); i++) {
+            final char c = message.charAt(i);
+
+            if (c >= 0x0001 && c <= 0x007F) {
+                if (encodeBuffer.remaining() < 1) {
+                    return null;
+                }
+
+                encodeBuffer.put((byte) c);
+            }
+
+            else if (c <= 0x07FF) {
+                if (encodeBuffer.remaining() < 2) {
+                    return null;
+                }
+
+                encodeBuffer.put((byte) (0xC0 | (c >> 6) & 0x1F));
+                encodeBuffer.put((byte) (0x80 | c & 0x3F));
+            }
+
+            else {
+                if (encodeBuffer.remaining() < 3) {
+                    return null;
+                }
+
+                encodeBuffer.put((byte) (0xE0 | (c >> 12) & 0x0F));
+                encodeBuffer.put((byte) (0x80 | (c >> 6) & 0x3F));
+                encodeBuffer.put((byte) (0x80 | c & 0x3F));
+            }
+        }
+
+        encodeBuffer.putShort(0, (short) (encodeBuffer.position() - TEXT_HEADER_SIZE));
+        encodeBuffer.flip();
+
+        return encodeBuffer;
+    }
+
+    private void prepareEncodeBuffer(final int frameSize, final int headerSize) {
+        if (encodeBuffer.capacity() < frameSize) {
+            encodeBuffer = ByteBuffer.allocate(frameSize);
+        }
+
+        encodeBuffer.clear();
+        encodeBuffer.limit(frameSize);
+        encodeBuffer.position(headerSize);
+    }
+
+    @Nullable
+    private String decodeFramed(final ByteBuffer input) throws IOException {
+        if (input.remaining() < HEADER_SIZE) {
+            return null;
+        }
+
+        final int start = input.position();
+        final int messageSize = input.getInt(start);
+
+        if (messageSize < 0 || messageSize > MAX_FRAME_SIZE) {
+            throw new IOException("Invalid frame size: " + messageSize);
+        }
+
+        if (input.remaining() < HEADER_SIZE + messageSize) {
+            return null;
+        }
+
+        final int limit = input.limit();
+        input.position(start + HEADER_SIZE);
+        input.limit(start + HEADER_SIZE + messageSize);
+
+        final String message = decodeUTF8(input);
+
+        input.limit(limit);
+        input.position(start + HEADER_SIZE + messageSize);
+
+        return message;
+    }
+
+    @Nullable
+    private String decodeText(final ByteBuffer input) throws IOException {
+        if (input.remaining() < TEXT_HEADER_SIZE) {
+            return null;
+        }
+
+        final int start = input.position();
+        final int messageSize = input.getShort(start) & 0xFFFF;
+
+        if (input.remaining() < TEXT_HEADER_SIZE + messageSize) {
+            return null;
+        }
+
+        final DataInputStream textInput = new DataInputStream(
+                new ByteArrayInputStream(input.array(), input.arrayOffset() + start, TEXT_HEADER_SIZE + messageSize));
+        final String message = textInput.readUTF();
+
+        input.position(start + TEXT_HEADER_SIZE + messageSize);
+
+        return message;
+    }
+
+    private String decodeUTF8(final ByteBuffer message) {
+        // A UTF-8 byte never becomes more than one char
+        if (charBuffer.capacity() < message.remaining()) {
+            charBuffer = CharBuffer.allocate(message.remaining());
+        }
+
+        charBuffer.clear();
+        decoder.reset();
+        decoder.decode(message, charBuffer, true);
+        decoder.flush(charBuffer);
+        charBuffer.flip();
+
+        return charBuffer.toString();
+    }
+}
@@ -22,37 +22,50 @@
 
 package net.usikkert.kouchat.net.tcp;
 
+import java.util.Map;
+
 import net.usikkert.kouchat.event.UserListListener;
 import net.usikkert.kouchat.misc.Controller;
 import net.usikkert.kouchat.misc.ErrorHandler;
 import net.usikkert.kouchat.misc.User;
+import net.usikkert.kouchat.net.TrafficStatistics;
 import net.usikkert.kouchat.settings.Settings;
 import net.usikkert.kouchat.util.Validate;
 
 /**
  * Network service for administration of tcp communication.
  *
+ * <p>All the tcp connections share one {@link TCPSelector} thread for accepting, reading and writing.
+ * Threads from the shared pools are only used for connecting, identifying users, and sending
+ * the queued messages.</p>
+ *
  * @author Christian Ihle
  */
 public class TCPNetworkService implements UserListListener {
 
+    private final TCPSelector tcpSelector;
     private final TCPConnectionHandler tcpConnectionHandler;
     private final TCPServer tcpServer;
 
     public TCPNetworkService(final Controller controller,
                              final Settings settings,
-                             final ErrorHandler errorHandler) {
+                             final ErrorHandler errorHandler,
+                             final TrafficStatistics trafficStatistics) {
         Validate.notNull(controller, "Controller can not be null");
         Validate.notNull(settings, "Settings can not be null");
         Validate.notNull(errorHandler, "Error handler can not be null");
+        Validate.notNull(trafficStatistics, "Traffic statistics can not be null");
 
-        this.tcpConnectionHandler = new TCPConnectionHandler(controller, settings);
-        this.tcpServer = new TCPServer(settings, errorHandler, tcpConnectionHandler);
+        this.tcpSelector = new TCPSelector();
+        this.tcpConnectionHandler = new TCPConnectionHandler(controller, settings, tcpSelector, trafficStatistics);
+        this.tcpServer = new TCPServer(settings, errorHandler, tcpConnectionHandler, tcpSelector);
 
         controller.getUserList().addUserListListener(this);
     }
 
     public void startService() {
+        // Keeps running when the service is stopped, and is reused when started again
+        tcpSelector.start();
         tcpServer.startServer();
         tcpConnectionHandler.connect();
     }
@@ -68,7 +81,7 @@ public class TCPNetworkService implements UserListListener {
     }
 
     @Override
-    public void userChanged(final int pos, final User user) {
+    public void userChanged(final int oldPos, final int newPos, final User user) {
 
     }
 
@@ -85,6 +98,15 @@ public class TCPNetworkService implements UserListListener {
         tcpConnectionHandler.sendMessageToUser(message, user);
     }
 
+    /**
+     * Gets the queues of messages waiting to be sent to each user.
+     *
+     * @return The send queues, by user.
+     */
+    public Map<User, TCPSendQueue> getSendQueues() {
+        return tcpConnectionHandler.getSendQueues();
+    }
+
     public void registerReceiverListener(final TCPReceiverListener listener) {
         tcpConnectionHandler.registerReceiverListener(listener);
     }
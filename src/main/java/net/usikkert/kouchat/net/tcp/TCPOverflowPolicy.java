@@ -0,0 +1,77 @@
+
+/***************************************************************************
+ *   Copyright 2006-2018 by Christian Ihle                                 *
+ *   contact@kouchat.net                                                   *
+ *                                                                         *
+ *   This file is part of KouChat.                                         *
+ *                                                                         *
+ *   KouChat is free software; you can redistribute it and/or modify       *
+ *   it under the terms of the GNU Lesser General Public License as        *
+ *   published by the Free Software Foundation, either version 3 of        *
+ *   the License, or (at your option) any later version.                   *
+ *                                                                         *
+ *   KouChat is distributed in the hope that it will be useful,            *
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of        *
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU      *
+ *   Lesser General Public License for more details.                       *
+ *                                                                         *
+ *   You should have received a copy of the GNU Lesser General Public      *
+ *   License along with KouChat.                                           *
+ *   If not, see <http://www.gnu.org/licenses/>.                           *
+ ***************************************************************************/
+
+package net.usikkert.kouchat.net.tcp;
+
+import org.jetbrains.annotations.NonNls;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * What to do when a user is too slow to receive tcp messages, and the {@link TCPSendQueue} is full.
+ *
+ * @author Christian Ihle
+ */
+public enum TCPOverflowPolicy {
+
+    /**
+     * Throws away the oldest message that is safe to lose, like the writing status or an idle message,
+     * since a newer one will replace it soon. Chat messages and other messages that change the state of the user
+     * are never thrown away. If none of the waiting messages are safe to lose, the new message is thrown away
+     * if it is safe to lose, or else the user is disconnected, like with {@link #DISCONNECT}.
+     */
+    DROP("drop"),
+
+    /** Disconnects the tcp connections to the user, and clears the queue. */
+    DISCONNECT("disconnect");
+
+    private final String name;
+
+    TCPOverflowPolicy(@NonNls final String name) {
+        this.name = name;
+    }
+
+    /**
+     * Gets the name of the policy, as used in the startup argument.
+     *
+     * @return The name of the policy.
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Finds the policy with the specified name, ignoring case.
+     *
+     * @param name The name of the policy.
+     * @return The policy, or <code>null</code> if no policy has that name.
+     */
+    @Nullable
+    public static TCPOverflowPolicy fromName(@Nullable final String name) {
+        for (final TCPOverflowPolicy policy : values()) {
+            if (policy.name.equalsIgnoreCase(name)) {
+                return policy;
+            }
+        }
+
+        return null;
+    }
+}
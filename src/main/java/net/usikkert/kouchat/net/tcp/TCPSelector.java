@@ -0,0 +1,239 @@
+
+/***************************************************************************
+ *   Copyright 2006-2018 by Christian Ihle                                 *
+ *   contact@kouchat.net                                                   *
+ *                                                                         *
+ *   This file is part of KouChat.                                         *
+ *                                                                         *
+ *   KouChat is free software; you can redistribute it and/or modify       *
+ *   it under the terms of the GNU Lesser General Public License as        *
+ *   published by the Free Software Foundation, either version 3 of        *
+ *   the License, or (at your option) any later version.                   *
+ *                                                                         *
+ *   KouChat is distributed in the hope that it will be useful,            *
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of        *
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU      *
+ *   Lesser General Public License for more details.                       *
+ *                                                                         *
+ *   You should have received a copy of the GNU Lesser General Public      *
+ *   License along with KouChat.                                           *
+ *   If not, see <http://www.gnu.org/licenses/>.                           *
+ ***************************************************************************/
+
+package net.usikkert.kouchat.net.tcp;
+
+import java.io.IOException;
+import java.nio.channels.CancelledKeyException;
+import java.nio.channels.SelectableChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import net.usikkert.kouchat.util.Logger;
+import net.usikkert.kouchat.util.Validate;
+
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * One thread that accepts, reads and writes for all the tcp channels, using a {@link Selector}.
+ *
+ * <p>The channels are registered with a {@link TCPChannelHandler}, which is notified on the selector thread
+ * when the channel is ready. Other threads can run small tasks on the selector thread with {@link #execute(Runnable)},
+ * like changing which operations a channel is interested in.</p>
+ *
+ * @author Christian Ihle
+ */
+public class TCPSelector implements Runnable {
+
+    private static final Logger LOG = Logger.getLogger(TCPSelector.class);
+
+    /** Held while registering a channel, so the selector thread waits before selecting again. */
+    private final Object registrationLock;
+    private final Queue<Runnable> tasks;
+
+    @Nullable
+    private volatile Selector selector;
+
+    @Nullable
+    private volatile Thread selectorThread;
+
+    public TCPSelector() {
+        registrationLock = new Object();
+        tasks = new ConcurrentLinkedQueue<>();
+    }
+
+    /**
+     * Opens the selector and starts the selector thread, unless already started.
+     *
+     * @return If the selector is running.
+     */
+    public synchronized boolean start() {
+        if (selectorThread != null) {
+            return true;
+        }
+
+        try {
+            selector = Selector.open();
+        }
+
+        catch (final IOException e) {
+            LOG.severe("Failed to open selector: %s", e.toString());
+            return false;
+        }
+
+        selectorThread = new Thread(this, getClass().getSimpleName());
+        selectorThread.setDaemon(true);
+        selectorThread.start();
+
+        return true;
+    }
+
+    /**
+     * Stops the selector thread, and closes the selector. Channels that are still registered are not closed.
+     */
+    public synchronized void stop() {
+        final Thread thread = selectorThread;
+        final Selector currentSelector = selector;
+
+        if (thread == null || currentSelector == null) {
+            return;
+        }
+
+        selectorThread = null;
+        currentSelector.wakeup();
+    }
+
+    @Override
+    public void run() {
+        final Selector currentSelector = selector;
+
+        while (selectorThread == Thread.currentThread() && currentSelector != null) {
+            try {
+                currentSelector.select();
+            }
+
+            catch (final IOException e) {
+                LOG.severe("Select failed: %s", e.toString());
+            }
+
+            // Lets a thread registering a channel finish before selecting again
+            synchronized (registrationLock) {
+                runTasks();
+            }
+
+            handleSelectedKeys(currentSelector);
+        }
+
+        closeSelector(currentSelector);
+    }
+
+    /**
+     * Registers the channel with the selector. The channel must be in non-blocking mode.
+     *
+     * @param channel The channel to register.
+     * @param operations The operations to select, like {@link SelectionKey#OP_READ}.
+     * @param handler The handler to notify when the channel is ready.
+     * @return The selection key of the channel.
+     * @throws IOException If the selector is not running, or the channel could not be registered.
+     */
+    public SelectionKey register(final SelectableChannel channel, final int operations, final TCPChannelHandler handler)
+            throws IOException {
+        Validate.notNull(channel, "Channel can not be null");
+        Validate.notNull(handler, "Channel handler can not be null");
+
+        final Selector currentSelector = selector;
+
+        if (selectorThread == null || currentSelector == null) {
+            throw new IOException("Selector is not running");
+        }
+
+        synchronized (registrationLock) {
+            currentSelector.wakeup();
+            return channel.register(currentSelector, operations, handler);
+        }
+    }
+
+    /**
+     * Runs the task on the selector thread, as soon as possible.
+     *
+     * @param task The task to run.
+     */
+    public void execute(final Runnable task) {
+        Validate.notNull(task, "Task can not be null");
+
+        tasks.add(task);
+
+        final Selector currentSelector = selector;
+
+        if (currentSelector != null) {
+            currentSelector.wakeup();
+        }
+    }
+
+    /**
+     * Checks if this is the selector thread. Code running on the selector thread must never block.
+     *
+     * @return If the current thread is the selector thread.
+     */
+    public boolean isSelectorThread() {
+        return Thread.currentThread() == selectorThread;
+    }
+
+    private void runTasks() {
+        Runnable task = tasks.poll();
+
+        while (task != null) {
+            try {
+                task.run();
+            }
+
+            catch (final RuntimeException e) {
+                LOG.severe(e, "Task on selector thread failed");
+            }
+
+            task = tasks.poll();
+        }
+    }
+
+    private void handleSelectedKeys(final Selector currentSelector) {
+        final Iterator<SelectionKey> keys = currentSelector.selectedKeys().iterator();
+
+        while (keys.hasNext()) {
+            final SelectionKey key = keys.next();
+            keys.remove();
+
+            if (!key.isValid()) {
+                continue;
+            }
+
+            try {
+                ((TCPChannelHandler) key.attachment()).channelReady(key);
+            }
+
+            // The channel was closed by another thread
+            catch (final CancelledKeyException e) {
+                LOG.fine("Channel closed while handling it: %s", e.toString());
+            }
+
+            catch (final RuntimeException e) {
+                LOG.severe(e, "Failed to handle channel");
+            }
+        }
+    }
+
+    private void closeSelector(final Selector currentSelector) {
+        if (currentSelector == null) {
+            return;
+        }
+
+        try {
+            currentSelector.close();
+        }
+
+        catch (final IOException e) {
+            LOG.warning("Failed to close selector: %s", e.toString());
+        }
+    }
+}
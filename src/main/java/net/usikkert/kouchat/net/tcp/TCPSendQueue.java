@@ -0,0 +1,201 @@
+
+/***************************************************************************
+ *   Copyright 2006-2018 by Christian Ihle                                 *
+ *   contact@kouchat.net                                                   *
+ *                                                                         *
+ *   This file is part of KouChat.                                         *
+ *                                                                         *
+ *   KouChat is free software; you can redistribute it and/or modify       *
+ *   it under the terms of the GNU Lesser General Public License as        *
+ *   published by the Free Software Foundation, either version 3 of        *
+ *   the License, or (at your option) any later version.                   *
+ *                                                                         *
+ *   KouChat is distributed in the hope that it will be useful,            *
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of        *
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU      *
+ *   Lesser General Public License for more details.                       *
+ *                                                                         *
+ *   You should have received a copy of the GNU Lesser General Public      *
+ *   License along with KouChat.                                           *
+ *   If not, see <http://www.gnu.org/licenses/>.                           *
+ ***************************************************************************/
+
+package net.usikkert.kouchat.net.tcp;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+import net.usikkert.kouchat.net.NetworkMessageType;
+import net.usikkert.kouchat.util.Validate;
+
+/**
+ * A queue of tcp messages waiting to be sent to a user.
+ *
+ * <p>The queue has a limited size, so a user that is too slow to receive can't use up all the memory.
+ * When the queue is full, the {@link TCPOverflowPolicy} decides what happens.</p>
+ *
+ * <p>This class is thread safe.</p>
+ *
+ * @author Christian Ihle
+ */
+public class TCPSendQueue {
+
+    private final ArrayDeque<String> messages;
+    private final int capacity;
+    private final TCPOverflowPolicy overflowPolicy;
+
+    private int maxSize;
+    private long sentMessages;
+    private long droppedMessages;
+
+    /**
+     * Constructor.
+     *
+     * @param capacity The max number of messages in the queue.
+     * @param overflowPolicy What to do when the queue is full.
+     */
+    public TCPSendQueue(final int capacity, final TCPOverflowPolicy overflowPolicy) {
+        Validate.notNull(overflowPolicy, "Overflow policy can not be null");
+
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Capacity must be larger than 0");
+        }
+
+        this.messages = new ArrayDeque<>(Math.min(capacity, 64));
+        this.capacity = capacity;
+        this.overflowPolicy = overflowPolicy;
+    }
+
+    /**
+     * Adds a message to the end of the queue.
+     *
+     * <p>If the queue is full and the policy is {@link TCPOverflowPolicy#DROP}, the oldest message that is
+     * safe to lose is thrown away to make room. If there are none, the new message is thrown away if it is
+     * safe to lose. Otherwise the message is not added, and the user should be disconnected.
+     * If the policy is {@link TCPOverflowPolicy#DISCONNECT}, the message is never added to a full queue.</p>
+     *
+     * @param message The message to add.
+     * @return If the message was added, or safely thrown away. <code>false</code> if the user should be disconnected.
+     */
+    public synchronized boolean add(final String message) {
+        Validate.notNull(message, "Message can not be null");
+
+        if (messages.size() >= capacity) {
+            if (overflowPolicy == TCPOverflowPolicy.DISCONNECT) {
+                droppedMessages++;
+                return false;
+            }
+
+            if (!removeOldestReplaceableMessage()) {
+                droppedMessages++;
+                return isReplaceableMessage(message);
+            }
+        }
+
+        messages.addLast(message);
+        maxSize = Math.max(maxSize, messages.size());
+
+        return true;
+    }
+
+    /**
+     * Removes all the messages from the queue.
+     *
+     * @return The messages that were in the queue, oldest first. Empty if there were none.
+     */
+    public synchronized List<String> removeAll() {
+        final List<String> waitingMessages = new ArrayList<>(messages);
+
+        sentMessages += waitingMessages.size();
+        messages.clear();
+
+        return waitingMessages;
+    }
+
+    /**
+     * Throws away all the waiting messages.
+     */
+    public synchronized void clear() {
+        droppedMessages += messages.size();
+        messages.clear();
+    }
+
+    /**
+     * Gets the number of messages waiting in the queue.
+     *
+     * @return The number of messages.
+     */
+    public synchronized int size() {
+        return messages.size();
+    }
+
+    /**
+     * Gets the max number of messages the queue can hold.
+     *
+     * @return The capacity of the queue.
+     */
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * Gets the largest number of messages that has been waiting in the queue at the same time.
+     *
+     * @return The max size so far.
+     */
+    public synchronized int getMaxSize() {
+        return maxSize;
+    }
+
+    /**
+     * Gets the number of messages that has been taken out of the queue to be sent.
+     *
+     * @return The number of sent messages.
+     */
+    public synchronized long getSentMessages() {
+        return sentMessages;
+    }
+
+    /**
+     * Gets the number of messages thrown away because the queue was full, or cleared.
+     *
+     * @return The number of dropped messages.
+     */
+    public synchronized long getDroppedMessages() {
+        return droppedMessages;
+    }
+
+    private boolean removeOldestReplaceableMessage() {
+        final Iterator<String> iterator = messages.iterator();
+
+        while (iterator.hasNext()) {
+            if (isReplaceableMessage(iterator.next())) {
+                iterator.remove();
+                droppedMessages++;
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * Checks if the message is safe to lose, because a newer message of the same type replaces it.
+     * The type of the message is found from the format <code>code!TYPE#nick:...</code>.
+     */
+    private boolean isReplaceableMessage(final String message) {
+        final int typeStart = message.indexOf('!') + 1;
+        final int typeEnd = message.indexOf('#', typeStart);
+
+        if (typeStart <= 0 || typeEnd < 0) {
+            return false;
+        }
+
+        final String type = message.substring(typeStart, typeEnd);
+
+        return type.equals(NetworkMessageType.WRITING) || type.equals(NetworkMessageType.STOPPEDWRITING) ||
+                type.equals(NetworkMessageType.IDLE);
+    }
+}
@@ -23,7 +23,10 @@
 package net.usikkert.kouchat.net.tcp;
 
 import java.io.IOException;
-import java.net.ServerSocket;
+import java.net.InetSocketAddress;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
 
 import net.usikkert.kouchat.Constants;
 import net.usikkert.kouchat.misc.ErrorHandler;
@@ -37,9 +40,12 @@ import org.jetbrains.annotations.Nullable;
 /**
  * Server listening for tcp connections from users.
  *
+ * <p>The server channel is registered with the {@link TCPSelector}, so new connections are accepted
+ * on the selector thread.</p>
+ *
  * @author Christian Ihle
  */
-public class TCPServer implements Runnable {
+public class TCPServer implements TCPChannelHandler {
 
     private static final Logger LOG = Logger.getLogger(TCPServer.class);
 
@@ -48,39 +54,47 @@ public class TCPServer implements Runnable {
     private final User me;
     private final ErrorHandler errorHandler;
     private final TCPConnectionListener tcpConnectionListener;
+    private final TCPSelector selector;
 
     private boolean connected;
 
     @Nullable
-    private ServerSocket serverSocket;
+    private ServerSocketChannel serverChannel;
 
     public TCPServer(final Settings settings, final ErrorHandler errorHandler,
-                     final TCPConnectionListener tcpConnectionListener) {
+                     final TCPConnectionListener tcpConnectionListener, final TCPSelector selector) {
         Validate.notNull(settings, "Settings can not be null");
         Validate.notNull(errorHandler, "Error handler can not be null");
         Validate.notNull(tcpConnectionListener, "TCP connection listener can not be null");
+        Validate.notNull(selector, "Selector can not be null");
 
         this.me = settings.getMe();
         this.errorHandler = errorHandler;
         this.tcpConnectionListener = tcpConnectionListener;
+        this.selector = selector;
     }
 
     @Override
-    public void run() {
-        while (connected && serverSocket != null) {
-            try {
-                tcpConnectionListener.socketAdded(serverSocket.accept());
+    public void channelReady(final SelectionKey key) {
+        final ServerSocketChannel channel = (ServerSocketChannel) key.channel();
+
+        try {
+            SocketChannel socketChannel = channel.accept();
+
+            while (socketChannel != null) {
+                tcpConnectionListener.socketAdded(socketChannel);
+                socketChannel = channel.accept();
             }
+        }
 
-            // Happens when server socket is closed, or network is down
-            catch (final IOException e) {
-                if (connected) {
-                    LOG.warning(e.toString());
-                }
+        // Happens when server socket is closed, or network is down
+        catch (final IOException e) {
+            if (connected) {
+                LOG.warning(e.toString());
+            }
 
-                else {
-                    LOG.fine(e.toString());
-                }
+            else {
+                LOG.fine(e.toString());
             }
         }
     }
@@ -98,13 +112,9 @@ public class TCPServer implements Runnable {
 
         while (portAttempt < MAX_PORT_ATTEMPTS && !connected) {
             try {
-                serverSocket = new ServerSocket(port);
+                serverChannel = openServerChannel(port);
                 connected = true;
 
-                // The background thread watching for connections from the network.
-                final Thread worker = new Thread(this, getClass().getSimpleName());
-                worker.start();
-
                 me.setTcpChatPort(port);
                 LOG.fine("Connected to port: %s", port);
             }
@@ -129,6 +139,24 @@ public class TCPServer implements Runnable {
         }
     }
 
+    private ServerSocketChannel openServerChannel(final int port) throws IOException {
+        final ServerSocketChannel channel = ServerSocketChannel.open();
+
+        try {
+            channel.socket().setReuseAddress(true);
+            channel.socket().bind(new InetSocketAddress(port));
+            channel.configureBlocking(false);
+            selector.register(channel, SelectionKey.OP_ACCEPT, this);
+
+            return channel;
+        }
+
+        catch (final IOException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
     public void stopServer() {
         LOG.fine("Disconnecting...");
 
@@ -139,9 +167,9 @@ public class TCPServer implements Runnable {
 
         connected = false;
 
-        if (serverSocket != null && !serverSocket.isClosed()) {
+        if (serverChannel != null && serverChannel.isOpen()) {
             try {
-                serverSocket.close();
+                serverChannel.close();
             } catch (final IOException e) {
                 LOG.severe(e.toString());
             }
@@ -22,17 +22,43 @@
 
 package net.usikkert.kouchat.net.tcp;
 
-import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 
+import net.usikkert.kouchat.misc.FlightRecorder;
 import net.usikkert.kouchat.misc.User;
+import net.usikkert.kouchat.util.HotPathProfiler;
+import net.usikkert.kouchat.util.HotPathProfiler.HotPath;
 import net.usikkert.kouchat.util.Logger;
+import net.usikkert.kouchat.util.SerialExecutor;
 import net.usikkert.kouchat.util.Tools;
 import net.usikkert.kouchat.util.Validate;
 
+import org.jetbrains.annotations.Nullable;
+
 /**
  * Maps one or more tcp clients to a user.
  *
+ * <p>Messages to the user are added to a {@link TCPSendQueue}, and sent by a writer task running in the executor.
+ * That way a user that is slow to receive only delays the messages to that user, and not the thread sending them.
+ * There is at most one writer task per user, and it only runs while there are messages waiting.</p>
+ *
+ * <p>The writer never waits for a slow user. It stops when the {@link TCPClient} is not ready to send more,
+ * and is started again when the client is ready. Meanwhile the messages wait in the send queue,
+ * where the overflow policy applies to this user only.</p>
+ *
+ * <p>If the executor is too busy to start the writer, starting it is tried again after a short delay,
+ * so the waiting messages are not left behind.</p>
+ *
+ * <p>Received messages are handed to the listener from the receive executor, one at a time in the order
+ * they arrived, so a slow listener only delays the messages from this user, and never the reading
+ * and writing of the other tcp connections.</p>
+ *
  * @author Christian Ihle
  */
 public class TCPUserClient implements TCPClientListener {
@@ -40,18 +66,50 @@ public class TCPUserClient implements TCPClientListener {
     private static final Logger LOG = Logger.getLogger(TCPUserClient.class);
     private static final String MESSAGE_DISCONNECT_ADDITIONAL = "SYS-DISCONNECT-ADDITIONAL";
 
+    /** Milliseconds to wait before trying to start the writer again, when the executor was too busy. */
+    private static final long WRITER_RETRY_DELAY_MS = 100;
+
     private final List<TCPClient> clients;
     private final User user;
     private final TCPReceiverListener listener;
+    private final TCPSendQueue sendQueue;
+    private final Executor executor;
+    private final ScheduledExecutorService retryExecutor;
+    private final SerialExecutor receiveExecutor;
+    private final FlightRecorder flightRecorder;
+    private final AtomicBoolean writerRunning;
+    private final AtomicBoolean retryScheduled;
+    private final Runnable writer;
 
-    public TCPUserClient(final TCPClient client, final User user, final TCPReceiverListener listener) {
+    public TCPUserClient(final TCPClient client, final User user, final TCPReceiverListener listener,
+                         final TCPSendQueue sendQueue, final Executor executor,
+                         final ScheduledExecutorService retryExecutor, final Executor receiveExecutor,
+                         final FlightRecorder flightRecorder) {
         Validate.notNull(client, "Client can not be null");
         Validate.notNull(user, "User can not be null");
         Validate.notNull(listener, "TCP message listener can not be null");
+        Validate.notNull(sendQueue, "Send queue can not be null");
+        Validate.notNull(executor, "Executor can not be null");
+        Validate.notNull(retryExecutor, "Retry executor can not be null");
+        Validate.notNull(receiveExecutor, "Receive executor can not be null");
+        Validate.notNull(flightRecorder, "Flight recorder can not be null");
 
-        this.clients = new ArrayList<>();
+        this.clients = new CopyOnWriteArrayList<>();
         this.user = user;
         this.listener = listener;
+        this.sendQueue = sendQueue;
+        this.executor = executor;
+        this.retryExecutor = retryExecutor;
+        this.receiveExecutor = new SerialExecutor(receiveExecutor);
+        this.flightRecorder = flightRecorder;
+        this.writerRunning = new AtomicBoolean();
+        this.retryScheduled = new AtomicBoolean();
+        this.writer = new Runnable() {
+            @Override
+            public void run() {
+                writeMessages();
+            }
+        };
 
         add(client);
     }
@@ -60,14 +118,17 @@ public class TCPUserClient implements TCPClientListener {
         clients.add(client);
         client.registerClientListener(this);
         user.setTcpEnabled(true);
+        flightRecorder.record(FlightRecorder.EventType.TCP_CONNECTED, user.getCode(), client.getIPAddress());
     }
 
     public void disconnect() {
         user.setTcpEnabled(false);
+        sendQueue.clear();
 
         for (final TCPClient client : clients) {
             client.registerClientListener(null);
             client.disconnect();
+            flightRecorder.record(FlightRecorder.EventType.TCP_DISCONNECTED, user.getCode(), client.getIPAddress());
         }
 
         clients.clear();
@@ -77,12 +138,20 @@ public class TCPUserClient implements TCPClientListener {
     public void disconnected(final TCPClient client) {
         client.registerClientListener(null);
         clients.remove(client);
+        flightRecorder.record(FlightRecorder.EventType.TCP_DISCONNECTED, user.getCode(), client.getIPAddress());
 
         if (clients.isEmpty()) {
             user.setTcpEnabled(false);
         }
     }
 
+    @Override
+    public void readyToSend(final TCPClient client) {
+        if (sendQueue.size() > 0) {
+            startWriter();
+        }
+    }
+
     @Override
     public void messageArrived(final String message, final TCPClient client) {
         if (message.equals(MESSAGE_DISCONNECT_ADDITIONAL)) {
@@ -104,17 +173,154 @@ public class TCPUserClient implements TCPClientListener {
         }
 
         else {
-            listener.messageArrived(message, client.getIPAddress(), user);
+            handleMessage(message, client.getIPAddress());
         }
     }
 
+    private void handleMessage(final String message, final String ipAddress) {
+        final Runnable messageHandler = new Runnable() {
+            @Override
+            public void run() {
+                final long start = HotPathProfiler.start();
+                listener.messageArrived(message, ipAddress, user);
+                HotPathProfiler.end(HotPath.TCP_RECEIVE, start);
+            }
+        };
+
+        try {
+            receiveExecutor.execute(messageHandler);
+        }
+
+        // Nothing is waiting from this user when rejected, so handling it here keeps the order
+        catch (final RejectedExecutionException e) {
+            LOG.warning("Unable to handle message from %s in the background. %s", user.getNick(), e.getMessage());
+            messageHandler.run();
+        }
+    }
+
+    /**
+     * Adds the message to the send queue, and returns without waiting for it to be sent.
+     *
+     * @param message The message to send.
+     */
     public void send(final String message) {
+        if (!sendQueue.add(message)) {
+            LOG.warning("Too many messages waiting to be sent to %s. Disconnecting.", user.getNick());
+            disconnect();
+            return;
+        }
+
+        startWriter();
+    }
+
+    private void startWriter() {
+        if (!writerRunning.compareAndSet(false, true)) {
+            return;
+        }
+
+        try {
+            executor.execute(writer);
+        }
+
+        catch (final RejectedExecutionException e) {
+            // The messages are still in the queue, and sent when the writer is started the next time
+            writerRunning.set(false);
+            LOG.warning("Unable to start sending to %s. Trying again later. %s", user.getNick(), e.getMessage());
+            scheduleWriterRetry();
+        }
+    }
+
+    /**
+     * Tries to start the writer again after a short delay, unless a retry is already scheduled.
+     */
+    private void scheduleWriterRetry() {
+        if (!retryScheduled.compareAndSet(false, true)) {
+            return;
+        }
+
+        try {
+            retryExecutor.schedule(new Runnable() {
+                @Override
+                public void run() {
+                    retryScheduled.set(false);
+
+                    if (sendQueue.size() > 0) {
+                        startWriter();
+                    }
+                }
+            }, WRITER_RETRY_DELAY_MS, TimeUnit.MILLISECONDS);
+        }
+
+        catch (final RejectedExecutionException e) {
+            retryScheduled.set(false);
+            LOG.warning("Unable to schedule sending to %s again. %s", user.getNick(), e.getMessage());
+        }
+    }
+
+    /**
+     * Sends the waiting messages until the queue is empty, or the client is not ready to send more.
+     * Messages added while sending are sent in the next round, together in one batch.
+     */
+    private void writeMessages() {
+        while (true) {
+            final TCPClient client = getClientForSending();
+
+            if (client == null || client.isReadyToSend()) {
+                final List<String> messages = sendQueue.removeAll();
+
+                if (!messages.isEmpty()) {
+                    sendToClient(client, messages);
+                    continue;
+                }
+            }
+
+            writerRunning.set(false);
+
+            // A message may have been added, or the client may have become ready, after checking,
+            // but before the writer was marked as stopped
+            if (!readyToWrite() || !writerRunning.compareAndSet(false, true)) {
+                return;
+            }
+        }
+    }
+
+    private boolean readyToWrite() {
+        if (sendQueue.size() == 0) {
+            return false;
+        }
+
+        final TCPClient client = getClientForSending();
+
+        return client == null || client.isReadyToSend();
+    }
+
+    @Nullable
+    private TCPClient getClientForSending() {
         for (final TCPClient client : clients) {
             if (!client.isDisconnecting()) {
-                client.send(message);
-                return;
+                return client;
             }
         }
+
+        return null;
+    }
+
+    private void sendToClient(@Nullable final TCPClient client, final List<String> messages) {
+        if (client == null) {
+            LOG.fine("No client to send %d messages to %s", messages.size(), user.getNick());
+            return;
+        }
+
+        client.send(messages);
+    }
+
+    /**
+     * Gets the queue of messages waiting to be sent to this user.
+     *
+     * @return The send queue.
+     */
+    public TCPSendQueue getSendQueue() {
+        return sendQueue;
     }
 
     public int getClientCount() {
@@ -38,6 +38,10 @@ import org.jetbrains.annotations.Nullable;
  * Message listener for a client that will identify the user on the other side
  * if that user sends its user code as the first message.
  *
+ * <p>Clients that support {@link TCPClient#PROTOCOL_FRAMED} add the protocol version at the end
+ * of the identification, and only to users that have said they support it. Both sides switch
+ * to that version right after the identification.</p>
+ *
  * @author Christian Ihle
  */
 public class TCPUserIdentifier implements TCPClientListener {
@@ -48,8 +52,9 @@ public class TCPUserIdentifier implements TCPClientListener {
      * Identification format consisting of both the user sending the message and the user expected
      * to receive the message. This is to avoid issues where client is restarted but one side hasn't
      * noticed yet, and connects to both on the same ip and port. This makes sure only one of the connections succeed.
+     * The optional protocol version at the end is the version the sender will use after this message.
      */
-    private final Pattern messagePattern = Pattern.compile("^SYS-IDENTIFY:(\\d+):(\\d+)$");
+    private final Pattern messagePattern = Pattern.compile("^SYS-IDENTIFY:(\\d+):(\\d+)(?::(\\d+))?$");
 
     private final Controller controller;
     private final Settings settings;
@@ -77,14 +82,42 @@ public class TCPUserIdentifier implements TCPClientListener {
         client.registerClientListener(null);
         LOG.fine("Received message: %s", theMessage);
 
+        switchProtocol(theMessage);
         this.message = theMessage;
     }
 
+    /**
+     * Switches to the protocol version in the identification, if any. This is done here, on the thread
+     * reading the messages, since the next message from the other side will already be using that version.
+     */
+    private void switchProtocol(final String theMessage) {
+        final Matcher messageMatcher = messagePattern.matcher(theMessage);
+
+        if (!messageMatcher.matches() || messageMatcher.group(3) == null) {
+            return;
+        }
+
+        if (messageMatcher.group(3).equals(String.valueOf(TCPClient.PROTOCOL_FRAMED))) {
+            client.setReadProtocol(TCPClient.PROTOCOL_FRAMED);
+            client.setWriteProtocol(TCPClient.PROTOCOL_FRAMED);
+        }
+
+        else {
+            LOG.warning("Unsupported protocol version in identification. message=%s, clientIP=%s",
+                    theMessage, client.getIPAddress());
+        }
+    }
+
     @Override
     public void disconnected(final TCPClient theClient) {
 
     }
 
+    @Override
+    public void readyToSend(final TCPClient theClient) {
+
+    }
+
     @Nullable
     public User waitForUser() {
         waitForMessage();
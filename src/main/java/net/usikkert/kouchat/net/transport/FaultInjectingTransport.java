@@ -0,0 +1,471 @@
+
+/***************************************************************************
+ *   Copyright 2006-2018 by Christian Ihle                                 *
+ *   contact@kouchat.net                                                   *
+ *                                                                         *
+ *   This file is part of KouChat.                                         *
+ *                                                                         *
+ *   KouChat is free software; you can redistribute it and/or modify       *
+ *   it under the terms of the GNU Lesser General Public License as        *
+ *   published by the Free Software Foundation, either version 3 of        *
+ *   the License, or (at your option) any later version.                   *
+ *                                                                         *
+ *   KouChat is distributed in the hope that it will be useful,            *
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of        *
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU      *
+ *   Lesser General Public License for more details.                       *
+ *                                                                         *
+ *   You should have received a copy of the GNU Lesser General Public      *
+ *   License along with KouChat.                                           *
+ *   If not, see <http://www.gnu.org/licenses/>.                           *
+ ***************************************************************************/
+
+package net.usikkert.kouchat.net.transport;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import net.usikkert.kouchat.event.NetworkConnectionListener;
+import net.usikkert.kouchat.misc.User;
+import net.usikkert.kouchat.net.TrafficStatistics;
+import net.usikkert.kouchat.net.tcp.TCPReceiverListener;
+import net.usikkert.kouchat.net.tcp.TCPSendQueue;
+import net.usikkert.kouchat.util.Logger;
+import net.usikkert.kouchat.util.NamedThreadFactory;
+import net.usikkert.kouchat.util.Validate;
+
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * A transport that emulates a bad network on top of another transport, for testing and benchmarking.
+ *
+ * <p>The problems are added to the packets and tcp messages arriving from each of the other clients,
+ * so every link from a sender to this client gets its own loss, delay, duplicates and reordering,
+ * like on a busy wireless network. The links use the default {@link NetworkConditions},
+ * unless other conditions are set for the ip address of the sender.</p>
+ *
+ * <p>Tcp messages are only delayed, and always arrive in order, since tcp retransmits lost packets
+ * by itself. Messages that are sent pass through unchanged, so the problems are not added twice
+ * when both sides use fault injection.</p>
+ *
+ * <p>The random choices for each link come from a random generator seeded with the seed and the
+ * ip address of the sender, so the same packets from the same sender get the same problems every run.</p>
+ *
+ * @author Christian Ihle
+ */
+public class FaultInjectingTransport implements Transport {
+
+    private static final Logger LOG = Logger.getLogger(FaultInjectingTransport.class);
+
+    /** The transport to add network problems to. */
+    private final Transport transport;
+
+    /** The conditions for links without conditions of their own. */
+    private final NetworkConditions defaultConditions;
+
+    /** Seed for the random generators of the links. */
+    private final long seed;
+
+    /** Conditions for specific links, by the ip address of the sender. */
+    private final Map<String, NetworkConditions> linkConditions;
+
+    /** The state of each link, by the ip address of the sender. */
+    private final ConcurrentMap<String, Link> links;
+
+    private final AtomicLong droppedPackets;
+    private final AtomicLong duplicatedPackets;
+    private final AtomicLong delayedMessages;
+
+    /** Delivers the delayed packets and tcp messages while started. */
+    @Nullable
+    private volatile ScheduledThreadPoolExecutor scheduler;
+
+    /**
+     * Constructor.
+     *
+     * @param transport The transport to add network problems to.
+     * @param defaultConditions The conditions for all the links, unless set for a specific link.
+     * @param seed Seed for the random network problems. The same seed gives the same problems.
+     */
+    public FaultInjectingTransport(final Transport transport, final NetworkConditions defaultConditions,
+                                   final long seed) {
+        Validate.notNull(transport, "Transport can not be null");
+        Validate.notNull(defaultConditions, "Default conditions can not be null");
+
+        this.transport = transport;
+        this.defaultConditions = defaultConditions;
+        this.seed = seed;
+
+        linkConditions = new ConcurrentHashMap<>();
+        links = new ConcurrentHashMap<>();
+        droppedPackets = new AtomicLong();
+        duplicatedPackets = new AtomicLong();
+        delayedMessages = new AtomicLong();
+    }
+
+    /**
+     * Sets the conditions for the link from the sender with the ip address to this client.
+     *
+     * @param ipAddress The ip address of the sender.
+     * @param conditions The conditions to use for the link.
+     */
+    public void setLinkConditions(final String ipAddress, final NetworkConditions conditions) {
+        Validate.notEmpty(ipAddress, "Ip address can not be empty");
+        Validate.notNull(conditions, "Conditions can not be null");
+
+        linkConditions.put(ipAddress, conditions);
+    }
+
+    /**
+     * Gets the conditions for the link from the sender with the ip address to this client.
+     *
+     * @param ipAddress The ip address of the sender.
+     * @return The conditions for the link.
+     */
+    public NetworkConditions getLinkConditions(final String ipAddress) {
+        final NetworkConditions conditions = linkConditions.get(ipAddress);
+        return conditions != null ? conditions : defaultConditions;
+    }
+
+    /**
+     * Gets the number of packets dropped to emulate packet loss.
+     *
+     * @return The number of dropped packets.
+     */
+    public long getDroppedPackets() {
+        return droppedPackets.get();
+    }
+
+    /**
+     * Gets the number of packets delivered an extra time.
+     *
+     * @return The number of duplicated packets.
+     */
+    public long getDuplicatedPackets() {
+        return duplicatedPackets.get();
+    }
+
+    /**
+     * Gets the number of packets and tcp messages delivered after a delay.
+     *
+     * @return The number of delayed packets and tcp messages.
+     */
+    public long getDelayedMessages() {
+        return delayedMessages.get();
+    }
+
+    /**
+     * Starts the background thread for delayed delivery, and then the transport.
+     */
+    @Override
+    public void start() {
+        synchronized (this) {
+            if (scheduler == null) {
+                scheduler = new ScheduledThreadPoolExecutor(1, new NamedThreadFactory(getClass().getSimpleName()));
+            }
+        }
+
+        transport.start();
+    }
+
+    /**
+     * Stops the transport, and drops the packets and tcp messages waiting to be delivered.
+     */
+    @Override
+    public void stop() {
+        transport.stop();
+
+        synchronized (this) {
+            if (scheduler != null) {
+                scheduler.shutdownNow();
+                scheduler = null;
+            }
+        }
+
+        for (final Link link : links.values()) {
+            synchronized (link) {
+                link.tcpDeliveries.clear();
+                link.tcpDeliveryPlanned = false;
+            }
+        }
+    }
+
+    @Override
+    public boolean isAlive() {
+        return transport.isAlive();
+    }
+
+    @Override
+    public boolean isNetworkUp() {
+        return transport.isNetworkUp();
+    }
+
+    @Override
+    public void checkNetwork() {
+        transport.checkNetwork();
+    }
+
+    @Override
+    public void registerNetworkConnectionListener(final NetworkConnectionListener listener) {
+        transport.registerNetworkConnectionListener(listener);
+    }
+
+    @Override
+    public void registerPacketListener(final PacketListener listener) {
+        Validate.notNull(listener, "Listener can not be null");
+
+        transport.registerPacketListener(new PacketListener() {
+            @Override
+            public void packetArrived(final ByteBuffer packet, final boolean mainChat, final String ipAddress) {
+                injectPacketFaults(listener, packet, mainChat, ipAddress);
+            }
+        });
+    }
+
+    @Override
+    public void registerTcpReceiverListener(final TCPReceiverListener listener) {
+        Validate.notNull(listener, "Listener can not be null");
+
+        transport.registerTcpReceiverListener(new TCPReceiverListener() {
+            @Override
+            public void messageArrived(final String message, final String ipAddress, final User user) {
+                injectTcpFaults(listener, message, ipAddress, user);
+            }
+        });
+    }
+
+    @Override
+    public boolean sendMessageToAll(final String message, final boolean combine) {
+        return transport.sendMessageToAll(message, combine);
+    }
+
+    @Override
+    public boolean sendBinaryMessageToAll(final byte[] binaryMessage, final String message, final boolean combine) {
+        return transport.sendBinaryMessageToAll(binaryMessage, message, combine);
+    }
+
+    @Override
+    public boolean sendMessageToUser(final String message, final User user) {
+        return transport.sendMessageToUser(message, user);
+    }
+
+    @Override
+    public void sendTcpMessageToAll(final String message) {
+        transport.sendTcpMessageToAll(message);
+    }
+
+    @Override
+    public void sendTcpMessageToUser(final String message, final User user) {
+        transport.sendTcpMessageToUser(message, user);
+    }
+
+    @Override
+    public Map<User, TCPSendQueue> getTcpSendQueues() {
+        return transport.getTcpSendQueues();
+    }
+
+    /**
+     * Gets the traffic statistics of the wrapped transport, where the traffic is counted
+     * before the faults are injected.
+     *
+     * {@inheritDoc}
+     */
+    @Override
+    public TrafficStatistics getTrafficStatistics() {
+        return transport.getTrafficStatistics();
+    }
+
+    private void injectPacketFaults(final PacketListener listener, final ByteBuffer packet, final boolean mainChat,
+                                    final String ipAddress) {
+        final Link link = getLink(ipAddress);
+        final NetworkConditions conditions = getLinkConditions(ipAddress);
+        final long[] delays;
+
+        synchronized (link) {
+            if (conditions.isLost(link.random)) {
+                droppedPackets.incrementAndGet();
+                return;
+            }
+
+            final boolean duplicated = conditions.isDuplicated(link.random);
+            delays = new long[duplicated ? 2 : 1];
+
+            for (int i = 0; i < delays.length; i++) {
+                delays[i] = conditions.nextDelay(link.random, true);
+            }
+        }
+
+        if (delays.length > 1) {
+            duplicatedPackets.incrementAndGet();
+        }
+
+        for (final long delay : delays) {
+            if (delay == 0) {
+                listener.packetArrived(packet.duplicate(), mainChat, ipAddress);
+            } else {
+                // The buffer may be reused for the next packet, so the delayed packet needs a copy
+                final byte[] copy = new byte[packet.remaining()];
+                packet.duplicate().get(copy);
+
+                schedule(new Runnable() {
+                    @Override
+                    public void run() {
+                        listener.packetArrived(ByteBuffer.wrap(copy), mainChat, ipAddress);
+                    }
+                }, delay);
+            }
+        }
+    }
+
+    private void injectTcpFaults(final TCPReceiverListener listener, final String message, final String ipAddress,
+                                 final User user) {
+        final Link link = getLink(ipAddress);
+        final NetworkConditions conditions = getLinkConditions(ipAddress);
+
+        synchronized (link) {
+            // Never before the previous message from the same user, since tcp keeps the order
+            final long now = System.nanoTime();
+            long deliveryTime = now + conditions.nextDelay(link.random, false);
+
+            // Comparing the difference, since nano time may overflow
+            if (link.tcpDeliveryPlanned && link.lastTcpDeliveryTime - deliveryTime > 0) {
+                deliveryTime = link.lastTcpDeliveryTime;
+            }
+
+            final long delay = deliveryTime - now;
+
+            link.lastTcpDeliveryTime = deliveryTime;
+            link.tcpDeliveryPlanned = true;
+
+            if (delay <= 0 && link.tcpDeliveries.isEmpty()) {
+                listener.messageArrived(message, ipAddress, user);
+            }
+
+            // The scheduled tasks may run in a different order, so each task delivers the oldest message
+            else if (schedule(createNextTcpDelivery(link), delay)) {
+                link.tcpDeliveries.add(new Runnable() {
+                    @Override
+                    public void run() {
+                        listener.messageArrived(message, ipAddress, user);
+                    }
+                });
+            }
+
+            // Stopped, so there is no one to deliver it later
+            else {
+                listener.messageArrived(message, ipAddress, user);
+            }
+        }
+    }
+
+    private Runnable createNextTcpDelivery(final Link link) {
+        return new Runnable() {
+            @Override
+            public void run() {
+                final Runnable delivery;
+
+                synchronized (link) {
+                    delivery = link.tcpDeliveries.peek();
+                }
+
+                if (delivery == null) {
+                    return;
+                }
+
+                // Removed after delivery, so new messages are not delivered directly in the meantime
+                try {
+                    delivery.run();
+                }
+
+                finally {
+                    synchronized (link) {
+                        link.tcpDeliveries.poll();
+                    }
+                }
+            }
+        };
+    }
+
+    /**
+     * Delivers later, unless the transport is stopped first.
+     *
+     * @return If the delivery was scheduled.
+     */
+    private boolean schedule(final Runnable delivery, final long delay) {
+        final ScheduledThreadPoolExecutor currentScheduler = scheduler;
+
+        if (currentScheduler == null) {
+            return false;
+        }
+
+        try {
+            currentScheduler.schedule(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        delivery.run();
+                    }
+
+                    // Must not stop the delivery of the other messages
+                    catch (final RuntimeException e) {
+                        LOG.severe(e, "Failed to deliver delayed message");
+                    }
+                }
+            }, delay, TimeUnit.NANOSECONDS);
+        }
+
+        // Stopped after getting the scheduler
+        catch (final RejectedExecutionException e) {
+            return false;
+        }
+
+        delayedMessages.incrementAndGet();
+
+        return true;
+    }
+
+    private Link getLink(final String ipAddress) {
+        final Link link = links.get(ipAddress);
+
+        if (link != null) {
+            return link;
+        }
+
+        final Link newLink = new Link(new Random(seed * 31 + ipAddress.hashCode()));
+        final Link existingLink = links.putIfAbsent(ipAddress, newLink);
+
+        return existingLink != null ? existingLink : newLink;
+    }
+
+    /**
+     * The state of the link from one sender to this client.
+     */
+    private static final class Link {
+
+        /** The random choices for the link, in the order the messages arrive. */
+        private final Random random;
+
+        /** When the last tcp message from the sender will be delivered, from {@link System#nanoTime()}. */
+        private long lastTcpDeliveryTime;
+
+        /** If {@link #lastTcpDeliveryTime} is set. There is no delivery time to wait for before the first message. */
+        private boolean tcpDeliveryPlanned;
+
+        /** The delayed tcp messages from the sender, in the order they arrived. */
+        private final Queue<Runnable> tcpDeliveries;
+
+        private Link(final Random random) {
+            this.random = random;
+            this.tcpDeliveries = new ArrayDeque<>();
+        }
+    }
+}
@@ -0,0 +1,339 @@
+
+/***************************************************************************
+ *   Copyright 2006-2018 by Christian Ihle                                 *
+ *   contact@kouchat.net                                                   *
+ *                                                                         *
+ *   This file is part of KouChat.                                         *
+ *                                                                         *
+ *   KouChat is free software; you can redistribute it and/or modify       *
+ *   it under the terms of the GNU Lesser General Public License as        *
+ *   published by the Free Software Foundation, either version 3 of        *
+ *   the License, or (at your option) any later version.                   *
+ *                                                                         *
+ *   KouChat is distributed in the hope that it will be useful,            *
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of        *
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU      *
+ *   Lesser General Public License for more details.                       *
+ *                                                                         *
+ *   You should have received a copy of the GNU Lesser General Public      *
+ *   License along with KouChat.                                           *
+ *   If not, see <http://www.gnu.org/licenses/>.                           *
+ ***************************************************************************/
+
+package net.usikkert.kouchat.net.transport;
+
+import java.nio.ByteBuffer;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import net.usikkert.kouchat.util.Logger;
+import net.usikkert.kouchat.util.Validate;
+
+/**
+ * Connects {@link LoopbackTransport}s in the same JVM, without using the network.
+ *
+ * <p>Each connected transport gets a unique fake ip address. Broadcast packets are delivered to
+ * all the connected transports, including the sender, like multicast with loopback enabled.
+ * Unicast packets are delivered to the transport with the ip address of the user.</p>
+ *
+ * <p>The packets are delivered by a few background threads. Each transport always gets its packets
+ * from the same thread, in the order they were sent. Nothing is lost, delayed or paced, so the hub
+ * can be used to test and benchmark the protocol code without the noise of a real network.</p>
+ *
+ * @author Christian Ihle
+ */
+public class LoopbackHub {
+
+    private static final Logger LOG = Logger.getLogger(LoopbackHub.class);
+
+    /** The connected transports, by ip address. */
+    private final Map<String, LoopbackTransport> transports;
+
+    /** The packets waiting to be delivered by each background thread. */
+    private final BlockingQueue<Delivery>[] deliveryQueues;
+
+    /** The number of packets sent, but not yet delivered. A broadcast counts once per receiver. */
+    private final AtomicInteger pendingDeliveries;
+
+    /** The number of packets delivered to a transport. A broadcast counts once per receiver. */
+    private final AtomicLong deliveredPackets;
+
+    /** Used for creating unique ip addresses. */
+    private final AtomicInteger addressCounter;
+
+    /** Signals the background threads to stop. */
+    private volatile boolean shutdown;
+
+    /**
+     * Constructor. Starts one background thread for delivering packets for each available processor.
+     */
+    public LoopbackHub() {
+        this(Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Constructor. Starts the background threads for delivering packets.
+     *
+     * @param deliveryThreads The number of threads to deliver packets with.
+     */
+    @SuppressWarnings("unchecked")
+    public LoopbackHub(final int deliveryThreads) {
+        if (deliveryThreads < 1) {
+            throw new IllegalArgumentException("Delivery threads must be larger than 0");
+        }
+
+        transports = new ConcurrentHashMap<>();
+        deliveryQueues = new BlockingQueue[deliveryThreads];
+        pendingDeliveries = new AtomicInteger();
+        deliveredPackets = new AtomicLong();
+        addressCounter = new AtomicInteger();
+
+        for (int i = 0; i < deliveryThreads; i++) {
+            deliveryQueues[i] = new LinkedBlockingQueue<>();
+
+            final Thread thread = new Thread(new DeliveryWorker(deliveryQueues[i]), getClass().getSimpleName() + "Worker" + i);
+            thread.setDaemon(true);
+            thread.start();
+        }
+    }
+
+    /**
+     * Creates a new unique ip address for a transport.
+     *
+     * @return The new ip address.
+     */
+    String createIpAddress() {
+        final int number = addressCounter.incrementAndGet();
+        return "127." + ((number >> 16) & 255) + "." + ((number >> 8) & 255) + "." + (number & 255);
+    }
+
+    /**
+     * Connects the transport, so it can send and receive packets.
+     *
+     * @param transport The transport to connect.
+     */
+    void connect(final LoopbackTransport transport) {
+        Validate.notNull(transport, "Transport can not be null");
+        transports.put(transport.getIpAddress(), transport);
+    }
+
+    /**
+     * Disconnects the transport. Packets sent to the transport after this are dropped.
+     *
+     * @param transport The transport to disconnect.
+     */
+    void disconnect(final LoopbackTransport transport) {
+        Validate.notNull(transport, "Transport can not be null");
+        transports.remove(transport.getIpAddress());
+    }
+
+    /**
+     * Checks if the transport is connected.
+     *
+     * @param transport The transport to check.
+     * @return If the transport is connected.
+     */
+    boolean isConnected(final LoopbackTransport transport) {
+        return transports.get(transport.getIpAddress()) == transport;
+    }
+
+    /**
+     * Sends a packet to all the connected transports, including the sender.
+     *
+     * @param packet The packet to send.
+     * @param senderIpAddress The ip address of the sending transport.
+     * @return If the packet was accepted for delivery.
+     */
+    boolean broadcast(final byte[] packet, final String senderIpAddress) {
+        if (shutdown) {
+            return false;
+        }
+
+        for (final LoopbackTransport receiver : transports.values()) {
+            addDelivery(new Delivery(packet, true, senderIpAddress, receiver));
+        }
+
+        return true;
+    }
+
+    /**
+     * Sends a packet to the transport with the ip address. The packet is dropped if there is no
+     * transport with the ip address.
+     *
+     * @param packet The packet to send.
+     * @param senderIpAddress The ip address of the sending transport.
+     * @param receiverIpAddress The ip address of the receiving transport.
+     * @return If the packet was accepted for delivery.
+     */
+    boolean unicast(final byte[] packet, final String senderIpAddress, final String receiverIpAddress) {
+        Validate.notNull(receiverIpAddress, "Receiver ip address can not be null");
+
+        if (shutdown) {
+            return false;
+        }
+
+        final LoopbackTransport receiver = transports.get(receiverIpAddress);
+
+        if (receiver != null) {
+            addDelivery(new Delivery(packet, false, senderIpAddress, receiver));
+        }
+
+        return true;
+    }
+
+    /**
+     * Waits until all the packets sent so far are delivered, or the hub is shut down.
+     * The packets that are not delivered when the hub is shut down are dropped, so there is nothing left to wait for.
+     *
+     * @param timeout The maximum time to wait, in milliseconds.
+     * @return If all the packets were delivered or dropped before the timeout.
+     * @throws InterruptedException If interrupted while waiting.
+     */
+    public boolean awaitIdle(final long timeout) throws InterruptedException {
+        final long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeout);
+
+        synchronized (pendingDeliveries) {
+            while (pendingDeliveries.get() > 0 && !shutdown) {
+                final long remaining = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+
+                if (remaining <= 0) {
+                    return false;
+                }
+
+                pendingDeliveries.wait(remaining);
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Gets the number of packets delivered to a transport since the hub was created.
+     * A broadcast packet counts once for each transport that received it.
+     *
+     * @return The number of delivered packets.
+     */
+    public long getDeliveredPackets() {
+        return deliveredPackets.get();
+    }
+
+    /**
+     * Stops the background threads. Packets that are not delivered yet are dropped.
+     */
+    public void shutdown() {
+        shutdown = true;
+
+        for (final BlockingQueue<Delivery> deliveryQueue : deliveryQueues) {
+            deliveryQueue.offer(Delivery.SHUTDOWN);
+        }
+
+        // Wakes up anyone waiting for the dropped packets
+        synchronized (pendingDeliveries) {
+            pendingDeliveries.notifyAll();
+        }
+    }
+
+    /**
+     * Checks if the hub is shut down.
+     *
+     * @return If the hub is shut down.
+     */
+    public boolean isShutdown() {
+        return shutdown;
+    }
+
+    /**
+     * Queues the delivery on the thread used for the receiver, so the receiver gets the packets in order.
+     */
+    private void addDelivery(final Delivery delivery) {
+        final int thread = (delivery.receiver.getIpAddress().hashCode() & Integer.MAX_VALUE) % deliveryQueues.length;
+
+        pendingDeliveries.incrementAndGet();
+        deliveryQueues[thread].offer(delivery);
+    }
+
+    private void deliver(final Delivery delivery) {
+        final LoopbackTransport receiver = delivery.receiver;
+
+        // The receiver may have disconnected after the packet was sent
+        if (!isConnected(receiver)) {
+            return;
+        }
+
+        try {
+            receiver.packetArrived(ByteBuffer.wrap(delivery.packet), delivery.mainChat, delivery.senderIpAddress);
+            deliveredPackets.incrementAndGet();
+        }
+
+        // Must not stop the delivery of the other packets
+        catch (final RuntimeException e) {
+            LOG.severe(e, "Failed to deliver packet to %s", receiver.getIpAddress());
+        }
+    }
+
+    private void deliveryFinished() {
+        if (pendingDeliveries.decrementAndGet() == 0) {
+            synchronized (pendingDeliveries) {
+                pendingDeliveries.notifyAll();
+            }
+        }
+    }
+
+    /**
+     * Delivers the packets from one queue in the order they were sent, until the hub is shut down.
+     */
+    private final class DeliveryWorker implements Runnable {
+
+        private final BlockingQueue<Delivery> deliveryQueue;
+
+        private DeliveryWorker(final BlockingQueue<Delivery> deliveryQueue) {
+            this.deliveryQueue = deliveryQueue;
+        }
+
+        @Override
+        public void run() {
+            while (!shutdown) {
+                try {
+                    final Delivery delivery = deliveryQueue.take();
+
+                    if (delivery != Delivery.SHUTDOWN) {
+                        deliver(delivery);
+                        deliveryFinished();
+                    }
+                }
+
+                catch (final InterruptedException e) {
+                    LOG.severe(e, "Interrupted while waiting for packets to deliver");
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * A packet waiting to be delivered to a transport.
+     */
+    private static final class Delivery {
+
+        /** Tells the background thread to stop waiting for packets. */
+        private static final Delivery SHUTDOWN = new Delivery(new byte[0], true, "", null);
+
+        private final byte[] packet;
+        private final boolean mainChat;
+        private final String senderIpAddress;
+        private final LoopbackTransport receiver;
+
+        private Delivery(final byte[] packet, final boolean mainChat, final String senderIpAddress,
+                         final LoopbackTransport receiver) {
+            this.packet = packet;
+            this.mainChat = mainChat;
+            this.senderIpAddress = senderIpAddress;
+            this.receiver = receiver;
+        }
+    }
+}
@@ -0,0 +1,270 @@
+
+/***************************************************************************
+ *   Copyright 2006-2018 by Christian Ihle                                 *
+ *   contact@kouchat.net                                                   *
+ *                                                                         *
+ *   This file is part of KouChat.                                         *
+ *                                                                         *
+ *   KouChat is free software; you can redistribute it and/or modify       *
+ *   it under the terms of the GNU Lesser General Public License as        *
+ *   published by the Free Software Foundation, either version 3 of        *
+ *   the License, or (at your option) any later version.                   *
+ *                                                                         *
+ *   KouChat is distributed in the hope that it will be useful,            *
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of        *
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU      *
+ *   Lesser General Public License for more details.                       *
+ *                                                                         *
+ *   You should have received a copy of the GNU Lesser General Public      *
+ *   License along with KouChat.                                           *
+ *   If not, see <http://www.gnu.org/licenses/>.                           *
+ ***************************************************************************/
+
+package net.usikkert.kouchat.net.transport;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import net.usikkert.kouchat.Constants;
+import net.usikkert.kouchat.event.NetworkConnectionListener;
+import net.usikkert.kouchat.misc.User;
+import net.usikkert.kouchat.net.TrafficStatistics;
+import net.usikkert.kouchat.net.tcp.TCPReceiverListener;
+import net.usikkert.kouchat.net.tcp.TCPSendQueue;
+import net.usikkert.kouchat.util.Validate;
+
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * A transport that sends the packets through a {@link LoopbackHub} in the same JVM, instead of the network.
+ *
+ * <p>The network is up from the transport is started until it's stopped. Every message is sent
+ * in a packet of its own, and there are no tcp connections, so the tcp messages are dropped.</p>
+ *
+ * @author Christian Ihle
+ */
+public class LoopbackTransport implements Transport {
+
+    private static final Charset MESSAGE_CHARSET = Charset.forName(Constants.MESSAGE_CHARSET);
+
+    /** The hub connecting this transport to the others. */
+    private final LoopbackHub hub;
+
+    /** The unique fake ip address of this transport. */
+    private final String ipAddress;
+
+    /** A list of connection listeners. */
+    private final List<NetworkConnectionListener> listeners;
+
+    /** The counters for the packets through the hub. */
+    private final TrafficStatistics trafficStatistics;
+
+    @Nullable
+    private PacketListener packetListener;
+
+    /**
+     * Constructor.
+     *
+     * @param hub The hub to connect to when started.
+     */
+    public LoopbackTransport(final LoopbackHub hub) {
+        Validate.notNull(hub, "Hub can not be null");
+
+        this.hub = hub;
+        this.ipAddress = hub.createIpAddress();
+        this.listeners = new ArrayList<>();
+        this.trafficStatistics = new TrafficStatistics();
+    }
+
+    /**
+     * Gets the fake ip address other transports see as the sender of the packets from this transport.
+     *
+     * @return The ip address.
+     */
+    public String getIpAddress() {
+        return ipAddress;
+    }
+
+    /**
+     * Connects to the hub, and notifies the listeners that the network is up.
+     */
+    @Override
+    public synchronized void start() {
+        if (hub.isConnected(this)) {
+            return;
+        }
+
+        for (final NetworkConnectionListener listener : listeners) {
+            listener.beforeNetworkCameUp();
+        }
+
+        hub.connect(this);
+
+        for (final NetworkConnectionListener listener : listeners) {
+            listener.networkCameUp(false);
+        }
+    }
+
+    /**
+     * Disconnects from the hub, and notifies the listeners that the network is down.
+     */
+    @Override
+    public synchronized void stop() {
+        if (!hub.isConnected(this)) {
+            return;
+        }
+
+        hub.disconnect(this);
+
+        for (final NetworkConnectionListener listener : listeners) {
+            listener.networkWentDown(false);
+        }
+    }
+
+    @Override
+    public boolean isAlive() {
+        return hub.isConnected(this);
+    }
+
+    @Override
+    public boolean isNetworkUp() {
+        return hub.isConnected(this);
+    }
+
+    /**
+     * Does nothing, as the network is always up when connected to the hub.
+     */
+    @Override
+    public void checkNetwork() {
+        // Nothing to check
+    }
+
+    @Override
+    public synchronized void registerNetworkConnectionListener(final NetworkConnectionListener listener) {
+        Validate.notNull(listener, "Listener can not be null");
+        listeners.add(listener);
+    }
+
+    @Override
+    public void registerPacketListener(final PacketListener listener) {
+        Validate.notNull(listener, "Listener can not be null");
+        this.packetListener = listener;
+    }
+
+    /**
+     * Does nothing, as there are no tcp connections.
+     *
+     * {@inheritDoc}
+     */
+    @Override
+    public void registerTcpReceiverListener(final TCPReceiverListener listener) {
+        // No tcp connections
+    }
+
+    /**
+     * Broadcasts the message in a packet of its own.
+     *
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean sendMessageToAll(final String message, final boolean combine) {
+        Validate.notNull(message, "Message can not be null");
+
+        if (!isNetworkUp()) {
+            return false;
+        }
+
+        final byte[] packet = message.getBytes(MESSAGE_CHARSET);
+        trafficStatistics.recordSent(TransportChannel.MULTICAST, packet.length);
+
+        return hub.broadcast(packet, ipAddress);
+    }
+
+    /**
+     * Broadcasts the binary message in a packet of its own.
+     *
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean sendBinaryMessageToAll(final byte[] binaryMessage, final String message, final boolean combine) {
+        Validate.notNull(binaryMessage, "Binary message can not be null");
+
+        if (!isNetworkUp()) {
+            return false;
+        }
+
+        trafficStatistics.recordSent(TransportChannel.MULTICAST, binaryMessage.length);
+
+        return hub.broadcast(binaryMessage.clone(), ipAddress);
+    }
+
+    @Override
+    public boolean sendMessageToUser(final String message, final User user) {
+        Validate.notNull(message, "Message can not be null");
+        Validate.notNull(user, "User can not be null");
+
+        if (!isNetworkUp()) {
+            return false;
+        }
+
+        final byte[] packet = message.getBytes(MESSAGE_CHARSET);
+        trafficStatistics.recordSent(TransportChannel.PRIVATE_UDP, packet.length);
+
+        return hub.unicast(packet, ipAddress, user.getIpAddress());
+    }
+
+    /**
+     * Does nothing, as there are no tcp connections.
+     *
+     * {@inheritDoc}
+     */
+    @Override
+    public void sendTcpMessageToAll(final String message) {
+        // No tcp connections
+    }
+
+    /**
+     * Does nothing, as there are no tcp connections.
+     *
+     * {@inheritDoc}
+     */
+    @Override
+    public void sendTcpMessageToUser(final String message, final User user) {
+        // No tcp connections
+    }
+
+    /**
+     * Gets an empty map, as there are no tcp connections.
+     *
+     * {@inheritDoc}
+     */
+    @Override
+    public Map<User, TCPSendQueue> getTcpSendQueues() {
+        return Collections.emptyMap();
+    }
+
+    @Override
+    public TrafficStatistics getTrafficStatistics() {
+        return trafficStatistics;
+    }
+
+    /**
+     * Gives a packet from the hub to the packet listener.
+     *
+     * @param packet The packet that arrived.
+     * @param mainChat If the packet arrived in the main chat, or in private chat.
+     * @param senderIpAddress The ip address of the transport that sent the packet.
+     */
+    void packetArrived(final ByteBuffer packet, final boolean mainChat, final String senderIpAddress) {
+        trafficStatistics.recordReceived(mainChat ? TransportChannel.MULTICAST : TransportChannel.PRIVATE_UDP,
+                                         packet.remaining());
+
+        if (packetListener != null) {
+            packetListener.packetArrived(packet, mainChat, senderIpAddress);
+        }
+    }
+}
@@ -0,0 +1,310 @@
+
+/***************************************************************************
+ *   Copyright 2006-2018 by Christian Ihle                                 *
+ *   contact@kouchat.net                                                   *
+ *                                                                         *
+ *   This file is part of KouChat.                                         *
+ *                                                                         *
+ *   KouChat is free software; you can redistribute it and/or modify       *
+ *   it under the terms of the GNU Lesser General Public License as        *
+ *   published by the Free Software Foundation, either version 3 of        *
+ *   the License, or (at your option) any later version.                   *
+ *                                                                         *
+ *   KouChat is distributed in the hope that it will be useful,            *
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of        *
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU      *
+ *   Lesser General Public License for more details.                       *
+ *                                                                         *
+ *   You should have received a copy of the GNU Lesser General Public      *
+ *   License along with KouChat.                                           *
+ *   If not, see <http://www.gnu.org/licenses/>.                           *
+ ***************************************************************************/
+
+package net.usikkert.kouchat.net.transport;
+
+import java.util.Locale;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import net.usikkert.kouchat.util.Validate;
+
+import org.jetbrains.annotations.NonNls;
+
+/**
+ * The network problems a {@link FaultInjectingTransport} emulates on a link between two clients.
+ *
+ * <p>The conditions are written as a comma separated list of name=value pairs, like
+ * <code>loss=5,delay=50,jitter=20,distribution=normal,duplicate=1,reorder=2</code>.
+ * Conditions that are left out have no effect.</p>
+ *
+ * <ul>
+ *   <li>loss: percent of the packets to drop.</li>
+ *   <li>delay: milliseconds to delay each packet and tcp message.</li>
+ *   <li>jitter: milliseconds to vary the delay with, using the distribution.</li>
+ *   <li>distribution: how the jitter is spread. See {@link DelayDistribution}.</li>
+ *   <li>duplicate: percent of the packets to deliver twice.</li>
+ *   <li>reorder: percent of the packets to hold back, so later packets arrive first.</li>
+ * </ul>
+ *
+ * @author Christian Ihle
+ */
+public final class NetworkConditions {
+
+    /** A perfect network, without any problems. */
+    public static final NetworkConditions NONE = new NetworkConditions(0, 0, 0, DelayDistribution.UNIFORM, 0, 0);
+
+    /** The shortest time a packet is held back when reordered, in milliseconds. */
+    private static final int MIN_REORDER_DELAY = 10;
+
+    /**
+     * How the jitter is spread around the delay.
+     */
+    public enum DelayDistribution {
+
+        /** Anywhere from delay - jitter to delay + jitter, with the same probability. */
+        UNIFORM("uniform"),
+
+        /** Bell shaped around the delay, with the jitter as the standard deviation. */
+        NORMAL("normal"),
+
+        /** At least the delay, with a long tail. The jitter is the average extra delay. */
+        EXPONENTIAL("exponential");
+
+        private final String name;
+
+        DelayDistribution(@NonNls final String name) {
+            this.name = name;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        /**
+         * Finds the distribution with the specified name, ignoring case.
+         *
+         * @param name The name of the distribution.
+         * @return The distribution.
+         * @throws IllegalArgumentException If no distribution has that name.
+         */
+        public static DelayDistribution fromName(final String name) {
+            for (final DelayDistribution distribution : values()) {
+                if (distribution.name.equalsIgnoreCase(name)) {
+                    return distribution;
+                }
+            }
+
+            throw new IllegalArgumentException("Unknown delay distribution: " + name);
+        }
+    }
+
+    private final double lossPercent;
+    private final int delay;
+    private final int jitter;
+    private final DelayDistribution distribution;
+    private final double duplicatePercent;
+    private final double reorderPercent;
+
+    /**
+     * Constructor.
+     *
+     * @param lossPercent Percent of the packets to drop.
+     * @param delay Milliseconds to delay each packet and tcp message.
+     * @param jitter Milliseconds to vary the delay with.
+     * @param distribution How the jitter is spread around the delay.
+     * @param duplicatePercent Percent of the packets to deliver twice.
+     * @param reorderPercent Percent of the packets to hold back, so later packets arrive first.
+     */
+    public NetworkConditions(final double lossPercent, final int delay, final int jitter,
+                             final DelayDistribution distribution, final double duplicatePercent,
+                             final double reorderPercent) {
+        validatePercent(lossPercent, "Loss");
+        validatePercent(duplicatePercent, "Duplicate");
+        validatePercent(reorderPercent, "Reorder");
+        Validate.notNull(distribution, "Distribution can not be null");
+
+        if (delay < 0) {
+            throw new IllegalArgumentException("Delay can not be negative");
+        }
+
+        if (jitter < 0) {
+            throw new IllegalArgumentException("Jitter can not be negative");
+        }
+
+        this.lossPercent = lossPercent;
+        this.delay = delay;
+        this.jitter = jitter;
+        this.distribution = distribution;
+        this.duplicatePercent = duplicatePercent;
+        this.reorderPercent = reorderPercent;
+    }
+
+    /**
+     * Parses network conditions from a comma separated list of name=value pairs.
+     *
+     * @param conditions The conditions to parse, like <code>loss=5,delay=50</code>.
+     * @return The parsed network conditions.
+     * @throws IllegalArgumentException If a condition is unknown or has an invalid value.
+     */
+    public static NetworkConditions parse(final String conditions) {
+        Validate.notEmpty(conditions, "Network conditions can not be empty");
+
+        double lossPercent = 0;
+        int delay = 0;
+        int jitter = 0;
+        DelayDistribution distribution = DelayDistribution.UNIFORM;
+        double duplicatePercent = 0;
+        double reorderPercent = 0;
+
+        for (final String condition : conditions.split(",")) {
+            final int equals = condition.indexOf('=');
+
+            if (equals < 0) {
+                throw new IllegalArgumentException("Invalid network condition: " + condition);
+            }
+
+            final String name = condition.substring(0, equals).trim();
+            final String value = condition.substring(equals + 1).trim();
+
+            switch (name) {
+                case "loss":
+                    lossPercent = parseNumber(name, value);
+                    break;
+
+                case "delay":
+                    delay = (int) parseNumber(name, value);
+                    break;
+
+                case "jitter":
+                    jitter = (int) parseNumber(name, value);
+                    break;
+
+                case "distribution":
+                    distribution = DelayDistribution.fromName(value);
+                    break;
+
+                case "duplicate":
+                    duplicatePercent = parseNumber(name, value);
+                    break;
+
+                case "reorder":
+                    reorderPercent = parseNumber(name, value);
+                    break;
+
+                default:
+                    throw new IllegalArgumentException("Unknown network condition: " + name);
+            }
+        }
+
+        return new NetworkConditions(lossPercent, delay, jitter, distribution, duplicatePercent, reorderPercent);
+    }
+
+    public double getLossPercent() {
+        return lossPercent;
+    }
+
+    public int getDelay() {
+        return delay;
+    }
+
+    public int getJitter() {
+        return jitter;
+    }
+
+    public DelayDistribution getDistribution() {
+        return distribution;
+    }
+
+    public double getDuplicatePercent() {
+        return duplicatePercent;
+    }
+
+    public double getReorderPercent() {
+        return reorderPercent;
+    }
+
+    /**
+     * Decides if the next packet should be dropped.
+     *
+     * @param random The source of randomness for the link.
+     * @return If the packet should be dropped.
+     */
+    boolean isLost(final Random random) {
+        return happens(lossPercent, random);
+    }
+
+    /**
+     * Decides if the next packet should be delivered twice.
+     *
+     * @param random The source of randomness for the link.
+     * @return If the packet should be duplicated.
+     */
+    boolean isDuplicated(final Random random) {
+        return happens(duplicatePercent, random);
+    }
+
+    /**
+     * Decides how long to delay the next packet. Reordered packets are held back for twice the
+     * delay plus jitter, and at least {@value #MIN_REORDER_DELAY} ms extra.
+     *
+     * @param random The source of randomness for the link.
+     * @param mayReorder If the packet is allowed to be held back.
+     * @return The delay, in nanoseconds.
+     */
+    long nextDelay(final Random random, final boolean mayReorder) {
+        double nextDelay = delay;
+
+        if (jitter > 0) {
+            switch (distribution) {
+                case NORMAL:
+                    nextDelay += random.nextGaussian() * jitter;
+                    break;
+
+                case EXPONENTIAL:
+                    nextDelay += -Math.log(1 - random.nextDouble()) * jitter;
+                    break;
+
+                default:
+                    nextDelay += (random.nextDouble() * 2 - 1) * jitter;
+                    break;
+            }
+        }
+
+        if (mayReorder && happens(reorderPercent, random)) {
+            nextDelay += Math.max(2 * (delay + jitter), MIN_REORDER_DELAY);
+        }
+
+        return (long) (Math.max(nextDelay, 0) * TimeUnit.MILLISECONDS.toNanos(1));
+    }
+
+    /**
+     * Formats the conditions the same way they are parsed.
+     *
+     * @return The conditions as a string.
+     */
+    @Override
+    public String toString() {
+        return String.format(Locale.US, "loss=%s,delay=%d,jitter=%d,distribution=%s,duplicate=%s,reorder=%s",
+                             lossPercent, delay, jitter, distribution.getName(), duplicatePercent, reorderPercent);
+    }
+
+    private static boolean happens(final double percent, final Random random) {
+        return percent > 0 && random.nextDouble() * 100 < percent;
+    }
+
+    private static double parseNumber(final String name, final String value) {
+        try {
+            return Double.parseDouble(value);
+        }
+
+        catch (final NumberFormatException e) {
+            throw new IllegalArgumentException("Network condition " + name + " must be a number: " + value);
+        }
+    }
+
+    private static void validatePercent(final double percent, final String name) {
+        if (Double.isNaN(percent) || percent < 0 || percent > 100) {
+            throw new IllegalArgumentException(name + " must be from 0 to 100 percent");
+        }
+    }
+}
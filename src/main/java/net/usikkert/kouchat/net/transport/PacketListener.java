@@ -0,0 +1,45 @@
+
+/***************************************************************************
+ *   Copyright 2006-2018 by Christian Ihle                                 *
+ *   contact@kouchat.net                                                   *
+ *                                                                         *
+ *   This file is part of KouChat.                                         *
+ *                                                                         *
+ *   KouChat is free software; you can redistribute it and/or modify       *
+ *   it under the terms of the GNU Lesser General Public License as        *
+ *   published by the Free Software Foundation, either version 3 of        *
+ *   the License, or (at your option) any later version.                   *
+ *                                                                         *
+ *   KouChat is distributed in the hope that it will be useful,            *
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of        *
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU      *
+ *   Lesser General Public License for more details.                       *
+ *                                                                         *
+ *   You should have received a copy of the GNU Lesser General Public      *
+ *   License along with KouChat.                                           *
+ *   If not, see <http://www.gnu.org/licenses/>.                           *
+ ***************************************************************************/
+
+package net.usikkert.kouchat.net.transport;
+
+import java.nio.ByteBuffer;
+
+/**
+ * This interface can be used to listen for packets arriving from a {@link Transport}.
+ *
+ * @author Christian Ihle
+ */
+public interface PacketListener {
+
+    /**
+     * Called when a new packet arrives.
+     *
+     * <p>The buffer may be reused for the next packet, so the packet must be
+     * read before returning.</p>
+     *
+     * @param packet The packet that arrived, from the position to the limit of the buffer.
+     * @param mainChat If the packet arrived in the main chat, or in private chat.
+     * @param ipAddress The ip address of the user that sent the packet.
+     */
+    void packetArrived(ByteBuffer packet, boolean mainChat, String ipAddress);
+}
@@ -0,0 +1,209 @@
+
+/***************************************************************************
+ *   Copyright 2006-2018 by Christian Ihle                                 *
+ *   contact@kouchat.net                                                   *
+ *                                                                         *
+ *   This file is part of KouChat.                                         *
+ *                                                                         *
+ *   KouChat is free software; you can redistribute it and/or modify       *
+ *   it under the terms of the GNU Lesser General Public License as        *
+ *   published by the Free Software Foundation, either version 3 of        *
+ *   the License, or (at your option) any later version.                   *
+ *                                                                         *
+ *   KouChat is distributed in the hope that it will be useful,            *
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of        *
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU      *
+ *   Lesser General Public License for more details.                       *
+ *                                                                         *
+ *   You should have received a copy of the GNU Lesser General Public      *
+ *   License along with KouChat.                                           *
+ *   If not, see <http://www.gnu.org/licenses/>.                           *
+ ***************************************************************************/
+
+package net.usikkert.kouchat.net.transport;
+
+import java.util.Map;
+
+import net.usikkert.kouchat.event.NetworkConnectionListener;
+import net.usikkert.kouchat.misc.Controller;
+import net.usikkert.kouchat.misc.ErrorHandler;
+import net.usikkert.kouchat.misc.User;
+import net.usikkert.kouchat.net.ConnectionWorker;
+import net.usikkert.kouchat.net.TrafficStatistics;
+import net.usikkert.kouchat.net.UDPNetworkService;
+import net.usikkert.kouchat.net.tcp.TCPNetworkService;
+import net.usikkert.kouchat.net.tcp.TCPReceiverListener;
+import net.usikkert.kouchat.net.tcp.TCPSendQueue;
+import net.usikkert.kouchat.settings.Settings;
+import net.usikkert.kouchat.util.Validate;
+
+/**
+ * The transport used by the real application, with udp multicast for the main chat, udp unicast for
+ * private chat, and tcp connections to each user.
+ *
+ * <p>The {@link ConnectionWorker} keeps the network connection up, and starts and stops
+ * the udp and tcp services when the network goes up or down.</p>
+ *
+ * @author Christian Ihle
+ */
+public class SocketTransport implements Transport, NetworkConnectionListener {
+
+    /** The thread responsible for keeping the network connection up. */
+    private final ConnectionWorker connectionWorker;
+
+    /** The network service for multicast and private udp messages. */
+    private final UDPNetworkService udpNetworkService;
+
+    /** The network service for tcp connections. */
+    private final TCPNetworkService tcpNetworkService;
+
+    /** The counters for the traffic through both network services. */
+    private final TrafficStatistics trafficStatistics;
+
+    /**
+     * Constructor.
+     *
+     * @param controller The controller to use.
+     * @param settings The settings to use.
+     * @param errorHandler The error handler to use.
+     */
+    public SocketTransport(final Controller controller, final Settings settings, final ErrorHandler errorHandler) {
+        Validate.notNull(controller, "Controller can not be null");
+        Validate.notNull(settings, "Settings can not be null");
+        Validate.notNull(errorHandler, "Error handler can not be null");
+
+        trafficStatistics = new TrafficStatistics();
+        udpNetworkService = new UDPNetworkService(settings, errorHandler, !settings.isNoPrivateChat(), trafficStatistics);
+        connectionWorker = new ConnectionWorker(settings, errorHandler);
+        tcpNetworkService = new TCPNetworkService(controller, settings, errorHandler, trafficStatistics);
+
+        // Must be the first listener, so the services are ready before the other listeners are notified
+        connectionWorker.registerNetworkConnectionListener(this);
+    }
+
+    /**
+     * Gets the connection worker.
+     *
+     * @return The connection worker.
+     */
+    public ConnectionWorker getConnectionWorker() {
+        return connectionWorker;
+    }
+
+    /**
+     * Checks if private chat is enabled.
+     *
+     * @return If private chat is enabled.
+     */
+    public boolean isPrivateChatEnabled() {
+        return udpNetworkService.isPrivateChatEnabled();
+    }
+
+    /**
+     * Starts the thread responsible for connecting to the network.
+     */
+    @Override
+    public void start() {
+        connectionWorker.start();
+    }
+
+    /**
+     * Stops the thread responsible for connecting to the network.
+     */
+    @Override
+    public void stop() {
+        connectionWorker.stop();
+    }
+
+    @Override
+    public boolean isAlive() {
+        return connectionWorker.isAlive();
+    }
+
+    @Override
+    public boolean isNetworkUp() {
+        return connectionWorker.isNetworkUp();
+    }
+
+    @Override
+    public void checkNetwork() {
+        connectionWorker.checkNetwork();
+    }
+
+    @Override
+    public void registerNetworkConnectionListener(final NetworkConnectionListener listener) {
+        connectionWorker.registerNetworkConnectionListener(listener);
+    }
+
+    @Override
+    public void registerPacketListener(final PacketListener listener) {
+        udpNetworkService.registerPacketListener(listener);
+    }
+
+    @Override
+    public void registerTcpReceiverListener(final TCPReceiverListener listener) {
+        tcpNetworkService.registerReceiverListener(listener);
+    }
+
+    @Override
+    public boolean sendMessageToAll(final String message, final boolean combine) {
+        return udpNetworkService.sendMessageToAll(message, combine);
+    }
+
+    @Override
+    public boolean sendBinaryMessageToAll(final byte[] binaryMessage, final String message, final boolean combine) {
+        return udpNetworkService.sendBinaryMessageToAll(binaryMessage, message, combine);
+    }
+
+    @Override
+    public boolean sendMessageToUser(final String message, final User user) {
+        return udpNetworkService.sendMessageToUser(message, user.getIpAddress(), user.getPrivateChatPort());
+    }
+
+    @Override
+    public void sendTcpMessageToAll(final String message) {
+        tcpNetworkService.sendMessageToAll(message);
+    }
+
+    @Override
+    public void sendTcpMessageToUser(final String message, final User user) {
+        tcpNetworkService.sendMessageToUser(message, user);
+    }
+
+    @Override
+    public Map<User, TCPSendQueue> getTcpSendQueues() {
+        return tcpNetworkService.getSendQueues();
+    }
+
+    @Override
+    public TrafficStatistics getTrafficStatistics() {
+        return trafficStatistics;
+    }
+
+    /**
+     * Stops the udp and tcp services.
+     *
+     * {@inheritDoc}
+     */
+    @Override
+    public void networkWentDown(final boolean silent) {
+        udpNetworkService.stopService();
+        tcpNetworkService.stopService();
+    }
+
+    @Override
+    public void beforeNetworkCameUp() {
+        // Nothing to do here
+    }
+
+    /**
+     * Starts the udp and tcp services.
+     *
+     * {@inheritDoc}
+     */
+    @Override
+    public void networkCameUp(final boolean silent) {
+        udpNetworkService.startService(connectionWorker.getCurrentNetworkInterface());
+        tcpNetworkService.startService();
+    }
+}
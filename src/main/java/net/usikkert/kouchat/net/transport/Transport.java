@@ -0,0 +1,157 @@
+
+/***************************************************************************
+ *   Copyright 2006-2018 by Christian Ihle                                 *
+ *   contact@kouchat.net                                                   *
+ *                                                                         *
+ *   This file is part of KouChat.                                         *
+ *                                                                         *
+ *   KouChat is free software; you can redistribute it and/or modify       *
+ *   it under the terms of the GNU Lesser General Public License as        *
+ *   published by the Free Software Foundation, either version 3 of        *
+ *   the License, or (at your option) any later version.                   *
+ *                                                                         *
+ *   KouChat is distributed in the hope that it will be useful,            *
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of        *
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU      *
+ *   Lesser General Public License for more details.                       *
+ *                                                                         *
+ *   You should have received a copy of the GNU Lesser General Public      *
+ *   License along with KouChat.                                           *
+ *   If not, see <http://www.gnu.org/licenses/>.                           *
+ ***************************************************************************/
+
+package net.usikkert.kouchat.net.transport;
+
+import java.util.Map;
+
+import net.usikkert.kouchat.event.NetworkConnectionListener;
+import net.usikkert.kouchat.misc.User;
+import net.usikkert.kouchat.net.NetworkService;
+import net.usikkert.kouchat.net.TrafficStatistics;
+import net.usikkert.kouchat.net.tcp.TCPReceiverListener;
+import net.usikkert.kouchat.net.tcp.TCPSendQueue;
+
+/**
+ * Moves messages between the clients for the {@link NetworkService}.
+ *
+ * <p>A transport has a broadcast channel for the main chat, a unicast channel for private chat,
+ * and optionally a direct tcp connection to each user. The network service decides what to send
+ * on each channel, and how to encode it. The transport only delivers the packets to the
+ * {@link PacketListener} and the tcp messages to the {@link TCPReceiverListener} of the other clients,
+ * and tells the {@link NetworkConnectionListener}s when it goes up or down.</p>
+ *
+ * <p>{@link SocketTransport} uses real sockets, and {@link LoopbackTransport} connects clients
+ * in the same JVM through a {@link LoopbackHub}. {@link FaultInjectingTransport} adds network
+ * problems to any of them.</p>
+ *
+ * @author Christian Ihle
+ */
+public interface Transport {
+
+    /**
+     * Starts connecting to the network. The connection listeners are notified when the network is up.
+     */
+    void start();
+
+    /**
+     * Disconnects from the network. The connection listeners are notified when the network is down.
+     */
+    void stop();
+
+    /**
+     * Checks if the transport is started.
+     *
+     * @return If the transport is started.
+     */
+    boolean isAlive();
+
+    /**
+     * Checks if the network is up.
+     *
+     * @return If the network is up.
+     */
+    boolean isNetworkUp();
+
+    /**
+     * Asks the transport to check the network now, to detect loss of network connectivity.
+     */
+    void checkNetwork();
+
+    /**
+     * Registers a listener for when the network goes up or down.
+     *
+     * @param listener The listener to register.
+     */
+    void registerNetworkConnectionListener(NetworkConnectionListener listener);
+
+    /**
+     * Registers the listener for packets arriving in the main chat and in private chat.
+     *
+     * @param listener The listener to register.
+     */
+    void registerPacketListener(PacketListener listener);
+
+    /**
+     * Registers the listener for messages arriving on the tcp connections.
+     *
+     * @param listener The listener to register.
+     */
+    void registerTcpReceiverListener(TCPReceiverListener listener);
+
+    /**
+     * Broadcasts a text message to all the clients in the main chat.
+     *
+     * @param message The message to send.
+     * @param combine If the message can be sent in the same packet as other messages.
+     * @return If the message was accepted for sending.
+     */
+    boolean sendMessageToAll(String message, boolean combine);
+
+    /**
+     * Broadcasts a binary message to all the clients in the main chat.
+     *
+     * @param binaryMessage The binary message to send.
+     * @param message The same message as text, for logging.
+     * @param combine If the message can be sent in the same packet as other messages.
+     * @return If the message was accepted for sending.
+     */
+    boolean sendBinaryMessageToAll(byte[] binaryMessage, String message, boolean combine);
+
+    /**
+     * Sends a private chat message to a single user.
+     *
+     * @param message The message to send.
+     * @param user The user to send the message to.
+     * @return If the message was accepted for sending.
+     */
+    boolean sendMessageToUser(String message, User user);
+
+    /**
+     * Sends a message to all the users with a tcp connection.
+     *
+     * @param message The message to send.
+     */
+    void sendTcpMessageToAll(String message);
+
+    /**
+     * Sends a message to a single user, if the user has a tcp connection.
+     *
+     * @param message The message to send.
+     * @param user The user to send the message to.
+     */
+    void sendTcpMessageToUser(String message, User user);
+
+    /**
+     * Gets the queues of tcp messages waiting to be sent to each user.
+     *
+     * @return The send queues, by user.
+     */
+    Map<User, TCPSendQueue> getTcpSendQueues();
+
+    /**
+     * Gets the counters for the traffic through this transport.
+     *
+     * @return The traffic statistics.
+     */
+    TrafficStatistics getTrafficStatistics();
+}
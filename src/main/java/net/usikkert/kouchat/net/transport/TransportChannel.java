@@ -0,0 +1,55 @@
+
+/***************************************************************************
+ *   Copyright 2006-2018 by Christian Ihle                                 *
+ *   contact@kouchat.net                                                   *
+ *                                                                         *
+ *   This file is part of KouChat.                                         *
+ *                                                                         *
+ *   KouChat is free software; you can redistribute it and/or modify       *
+ *   it under the terms of the GNU Lesser General Public License as        *
+ *   published by the Free Software Foundation, either version 3 of        *
+ *   the License, or (at your option) any later version.                   *
+ *                                                                         *
+ *   KouChat is distributed in the hope that it will be useful,            *
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of        *
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU      *
+ *   Lesser General Public License for more details.                       *
+ *                                                                         *
+ *   You should have received a copy of the GNU Lesser General Public      *
+ *   License along with KouChat.                                           *
+ *   If not, see <http://www.gnu.org/licenses/>.                           *
+ ***************************************************************************/
+
+package net.usikkert.kouchat.net.transport;
+
+/**
+ * The ways a {@link Transport} moves messages between the clients.
+ *
+ * @author Christian Ihle
+ */
+public enum TransportChannel {
+
+    /** The broadcast channel of the main chat. */
+    MULTICAST("Multicast"),
+
+    /** The unicast channel of private chat. */
+    PRIVATE_UDP("Private udp"),
+
+    /** The direct connections to each user. */
+    TCP("Tcp");
+
+    private final String name;
+
+    TransportChannel(final String name) {
+        this.name = name;
+    }
+
+    /**
+     * Gets the name of the channel, for showing to the user.
+     *
+     * @return The name.
+     */
+    public String getName() {
+        return name;
+    }
+}
@@ -28,9 +28,12 @@ import java.util.List;
 import net.usikkert.kouchat.Constants;
 import net.usikkert.kouchat.event.SettingsListener;
 import net.usikkert.kouchat.misc.User;
+import net.usikkert.kouchat.net.tcp.TCPOverflowPolicy;
+import net.usikkert.kouchat.net.transport.NetworkConditions;
 import net.usikkert.kouchat.util.Tools;
 
 import org.jetbrains.annotations.NonNls;
+import org.jetbrains.annotations.Nullable;
 
 /**
  * This class contains all the application settings.
@@ -88,6 +91,28 @@ public class Settings {
     /** The location to store logs. */
     private String logLocation;
 
+    /** If binary messages should be sent to users that support them. */
+    private boolean binaryProtocol;
+
+    /** Max number of multicast packets to send per second. */
+    private int packetRate;
+
+    /** If large messages should be compressed for users that support it. */
+    private boolean compression;
+
+    /** What to do when a user is too slow to receive tcp messages. */
+    private TCPOverflowPolicy tcpOverflowPolicy;
+
+    /** The network problems to emulate, or <code>null</code> to use the network as it is. */
+    @Nullable
+    private NetworkConditions networkEmulation;
+
+    /** Seed for the random network problems. */
+    private long networkSeed;
+
+    /** If chat messages should have a send timestamp, for measuring latency, when the users support it. */
+    private boolean latencyTimestamps;
+
     /**
      * Constructor.
      *
@@ -107,6 +132,8 @@ public class Settings {
         smileys = true;
         systemTray = true;
         lookAndFeel = "";
+        packetRate = Constants.NETWORK_PACKET_RATE;
+        tcpOverflowPolicy = TCPOverflowPolicy.DROP;
     }
 
     /**
@@ -310,6 +337,133 @@ public class Settings {
         this.noPrivateChat = noPrivateChat;
     }
 
+    /**
+     * If binary messages should be sent when all the users support them.
+     *
+     * @return If binary messages should be sent.
+     */
+    public boolean isBinaryProtocol() {
+        return binaryProtocol;
+    }
+
+    /**
+     * Sets if binary messages should be sent when all the users support them.
+     *
+     * @param binaryProtocol If binary messages should be sent.
+     */
+    public void setBinaryProtocol(final boolean binaryProtocol) {
+        this.binaryProtocol = binaryProtocol;
+    }
+
+    /**
+     * Gets the max number of multicast packets to send per second.
+     *
+     * @return Max number of packets per second, or 0 for no limit.
+     */
+    public int getPacketRate() {
+        return packetRate;
+    }
+
+    /**
+     * Sets the max number of multicast packets to send per second.
+     *
+     * @param packetRate Max number of packets per second, or 0 for no limit.
+     */
+    public void setPacketRate(final int packetRate) {
+        this.packetRate = packetRate;
+    }
+
+    /**
+     * If large messages should be compressed when all the users support it.
+     *
+     * @return If messages should be compressed.
+     */
+    public boolean isCompression() {
+        return compression;
+    }
+
+    /**
+     * Sets if large messages should be compressed when all the users support it.
+     *
+     * @param compression If messages should be compressed.
+     */
+    public void setCompression(final boolean compression) {
+        this.compression = compression;
+    }
+
+    /**
+     * Gets what to do when a user is too slow to receive tcp messages.
+     *
+     * @return The overflow policy.
+     */
+    public TCPOverflowPolicy getTcpOverflowPolicy() {
+        return tcpOverflowPolicy;
+    }
+
+    /**
+     * Sets what to do when a user is too slow to receive tcp messages.
+     *
+     * @param tcpOverflowPolicy The overflow policy.
+     */
+    public void setTcpOverflowPolicy(final TCPOverflowPolicy tcpOverflowPolicy) {
+        this.tcpOverflowPolicy = tcpOverflowPolicy;
+    }
+
+    /**
+     * Gets the network problems to emulate on the links from the other users, for testing.
+     *
+     * @return The network conditions to emulate, or <code>null</code> to use the network as it is.
+     */
+    @Nullable
+    public NetworkConditions getNetworkEmulation() {
+        return networkEmulation;
+    }
+
+    /**
+     * Sets the network problems to emulate on the links from the other users, for testing.
+     *
+     * @param networkEmulation The network conditions to emulate, or <code>null</code> to use the network as it is.
+     */
+    public void setNetworkEmulation(@Nullable final NetworkConditions networkEmulation) {
+        this.networkEmulation = networkEmulation;
+    }
+
+    /**
+     * Gets the seed for the random network problems. The same seed gives the same problems.
+     *
+     * @return The seed.
+     */
+    public long getNetworkSeed() {
+        return networkSeed;
+    }
+
+    /**
+     * Sets the seed for the random network problems. The same seed gives the same problems.
+     *
+     * @param networkSeed The seed.
+     */
+    public void setNetworkSeed(final long networkSeed) {
+        this.networkSeed = networkSeed;
+    }
+
+    /**
+     * If chat messages should have a send timestamp, for measuring latency, when the users support it.
+     *
+     * @return If chat messages should have a send timestamp.
+     */
+    public boolean isLatencyTimestamps() {
+        return latencyTimestamps;
+    }
+
+    /**
+     * Sets if chat messages should have a send timestamp, for measuring latency, when the users support it.
+     *
+     * @param latencyTimestamps If chat messages should have a send timestamp.
+     */
+    public void setLatencyTimestamps(final boolean latencyTimestamps) {
+        this.latencyTimestamps = latencyTimestamps;
+    }
+
     /**
      * If logging is always enabled.
      *
@@ -55,6 +55,7 @@ import net.usikkert.kouchat.Constants;
 import net.usikkert.kouchat.autocomplete.AutoCompleter;
 import net.usikkert.kouchat.misc.CommandHistory;
 import net.usikkert.kouchat.misc.ErrorHandler;
+import net.usikkert.kouchat.net.MessageTrace;
 import net.usikkert.kouchat.settings.Settings;
 import net.usikkert.kouchat.ui.ChatWindow;
 import net.usikkert.kouchat.ui.swing.messages.SwingMessages;
@@ -132,7 +133,8 @@ public class MainPanel extends JPanel implements ActionListener, CaretListener,
                 new HashSet<AWTKeyStroke>());
 
         final AbstractDocument msgDoc = (AbstractDocument) msgTF.getDocument();
-        msgDoc.setDocumentFilter(new SizeDocumentFilter(Constants.MESSAGE_MAX_BYTES));
+        // The controller checks if the other users can receive messages this large when sending
+        msgDoc.setDocumentFilter(new SizeDocumentFilter(Constants.MESSAGE_MAX_FRAGMENTED_BYTES));
 
         add(chatSP, BorderLayout.CENTER);
         add(sideP, BorderLayout.EAST);
@@ -171,6 +173,8 @@ public class MainPanel extends JPanel implements ActionListener, CaretListener,
      */
     @Override
     public void appendToChat(final String message, final int color) {
+        final MessageTrace trace = MessageTrace.defer();
+
         SwingUtilities.invokeLater(new Runnable() {
             @Override
             public void run() {
@@ -183,6 +187,10 @@ public class MainPanel extends JPanel implements ActionListener, CaretListener,
                 catch (final BadLocationException e) {
                     LOG.log(Level.SEVERE, e.toString(), e);
                 }
+
+                if (trace != null) {
+                    trace.appended();
+                }
             }
         });
     }
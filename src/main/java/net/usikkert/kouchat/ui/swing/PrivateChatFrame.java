@@ -65,6 +65,7 @@ import net.usikkert.kouchat.Constants;
 import net.usikkert.kouchat.misc.CommandHistory;
 import net.usikkert.kouchat.misc.ErrorHandler;
 import net.usikkert.kouchat.misc.User;
+import net.usikkert.kouchat.net.MessageTrace;
 import net.usikkert.kouchat.settings.Settings;
 import net.usikkert.kouchat.ui.PrivateChatWindow;
 import net.usikkert.kouchat.ui.swing.messages.SwingMessages;
@@ -252,6 +253,8 @@ public class PrivateChatFrame extends JFrame implements ActionListener, KeyListe
      */
     @Override
     public void appendToPrivateChat(final String message, final int color) {
+        final MessageTrace trace = MessageTrace.defer();
+
         uiTools.invokeLater(new Runnable() {
             @Override
             public void run() {
@@ -264,6 +267,10 @@ public class PrivateChatFrame extends JFrame implements ActionListener, KeyListe
                 catch (final BadLocationException e) {
                     LOG.log(Level.SEVERE, e.toString(), e);
                 }
+
+                if (trace != null) {
+                    trace.appended();
+                }
             }
         });
     }
@@ -38,7 +38,6 @@ import net.usikkert.kouchat.misc.MessageController;
 import net.usikkert.kouchat.misc.SoundBeeper;
 import net.usikkert.kouchat.misc.Topic;
 import net.usikkert.kouchat.misc.User;
-import net.usikkert.kouchat.misc.UserList;
 import net.usikkert.kouchat.net.FileReceiver;
 import net.usikkert.kouchat.net.FileSender;
 import net.usikkert.kouchat.net.FileToSend;
@@ -800,11 +799,7 @@ public class SwingMediator implements Mediator, UserInterface {
      * @param away If the user is away.
      */
     private void updateAwayInPrivChats(final boolean away) {
-        final UserList list = controller.getUserList();
-
-        for (int i = 0; i < list.size(); i++) {
-            final User user = list.get(i);
-
+        for (final User user : controller.getUserList().getUsers()) {
             if (user.getPrivchat() != null) {
                 user.getPrivchat().updateAwayState();
 
@@ -145,7 +145,7 @@ public class URLDocumentFilter extends DocumentFilter {
      * @return The position of the first character in the url, or -1
      * if no url was found.
      */
-    private int findURLPos(final String text, final int offset) {
+    protected int findURLPos(final String text, final int offset) {
         int prot = text.indexOf(PROTOCOL, offset);
         int www = text.indexOf(WWW, offset);
         int ftp = text.indexOf(FTP, offset);
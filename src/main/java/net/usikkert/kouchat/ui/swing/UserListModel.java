@@ -87,16 +87,17 @@ public class UserListModel extends AbstractListModel implements UserListListener
     }
 
     /**
-     * Sends a fireContentsChanged() event.
+     * Sends a fireContentsChanged() event, for the range of positions
+     * between the old and the new position of the user.
      *
      * {@inheritDoc}
      */
     @Override
-    public void userChanged(final int pos, final User user) {
+    public void userChanged(final int oldPos, final int newPos, final User user) {
         SwingUtilities.invokeLater(new Runnable() {
             @Override
             public void run() {
-                fireContentsChanged(this, pos, pos);
+                fireContentsChanged(this, Math.min(oldPos, newPos), Math.max(oldPos, newPos));
             }
         });
     }
@@ -0,0 +1,167 @@
+
+/***************************************************************************
+ *   Copyright 2006-2018 by Christian Ihle                                 *
+ *   contact@kouchat.net                                                   *
+ *                                                                         *
+ *   This file is part of KouChat.                                         *
+ *                                                                         *
+ *   KouChat is free software; you can redistribute it and/or modify       *
+ *   it under the terms of the GNU Lesser General Public License as        *
+ *   published by the Free Software Foundation, either version 3 of        *
+ *   the License, or (at your option) any later version.                   *
+ *                                                                         *
+ *   KouChat is distributed in the hope that it will be useful,            *
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of        *
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU      *
+ *   Lesser General Public License for more details.                       *
+ *                                                                         *
+ *   You should have received a copy of the GNU Lesser General Public      *
+ *   License along with KouChat.                                           *
+ *   If not, see <http://www.gnu.org/licenses/>.                           *
+ ***************************************************************************/
+
+package net.usikkert.kouchat.util;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A thread pool with a limit on both the number of threads and the number of waiting tasks.
+ *
+ * <p>New threads are started until the limit is reached, and after that the tasks wait in the queue.
+ * When the queue is full too, the task is rejected using the {@link RejectionPolicy} of the pool.
+ * Idle threads stop after a minute, so an unused pool has no threads.</p>
+ *
+ * <p>The threads are named after the pool, using a {@link NamedThreadFactory}.</p>
+ *
+ * @author Christian Ihle
+ */
+public class BoundedThreadPool extends ThreadPoolExecutor {
+
+    private static final Logger LOG = Logger.getLogger(BoundedThreadPool.class);
+
+    /** Seconds an idle thread waits for new tasks before it stops. */
+    private static final long KEEP_ALIVE_SECONDS = 60;
+
+    /**
+     * What to do with a task when all the threads are busy, and the queue is full.
+     */
+    public enum RejectionPolicy {
+
+        /** Logs a warning and throws away the task. */
+        DISCARD,
+
+        /** Runs the task in the thread that tried to add it, which slows down new tasks. */
+        CALLER_RUNS,
+
+        /** Logs a warning and throws a {@link RejectedExecutionException}, so the caller can clean up after the task. */
+        ABORT
+    }
+
+    private final String name;
+    private final int queueCapacity;
+    private final AtomicLong rejectedTaskCount;
+
+    /**
+     * Constructor.
+     *
+     * @param name The name of the pool, used for naming the threads.
+     * @param maxThreads The maximum number of threads in the pool.
+     * @param queueCapacity The maximum number of tasks waiting for a free thread.
+     * @param rejectionPolicy What to do with tasks that don't fit in the queue.
+     */
+    public BoundedThreadPool(final String name, final int maxThreads, final int queueCapacity,
+                             final RejectionPolicy rejectionPolicy) {
+        super(maxThreads, maxThreads, KEEP_ALIVE_SECONDS, TimeUnit.SECONDS,
+              new ArrayBlockingQueue<Runnable>(queueCapacity), new NamedThreadFactory(name));
+
+        Validate.notNull(rejectionPolicy, "Rejection policy can not be null");
+
+        this.name = name;
+        this.queueCapacity = queueCapacity;
+        this.rejectedTaskCount = new AtomicLong();
+
+        allowCoreThreadTimeOut(true);
+        setRejectedExecutionHandler(new CountingRejectionHandler(rejectionPolicy));
+    }
+
+    /**
+     * Gets the name of the pool.
+     *
+     * @return The name of the pool.
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Gets the number of tasks waiting in the queue for a free thread.
+     *
+     * @return The number of waiting tasks.
+     */
+    public int getQueuedTaskCount() {
+        return getQueue().size();
+    }
+
+    /**
+     * Gets the maximum number of tasks that can wait in the queue.
+     *
+     * @return The capacity of the queue.
+     */
+    public int getQueueCapacity() {
+        return queueCapacity;
+    }
+
+    /**
+     * Gets the number of tasks rejected because the pool and the queue were full.
+     *
+     * @return The number of rejected tasks.
+     */
+    public long getRejectedTaskCount() {
+        return rejectedTaskCount.get();
+    }
+
+    /**
+     * Counts the rejected tasks before handling them as specified by the {@link RejectionPolicy}.
+     */
+    private final class CountingRejectionHandler implements RejectedExecutionHandler {
+
+        private final RejectionPolicy rejectionPolicy;
+
+        private CountingRejectionHandler(final RejectionPolicy rejectionPolicy) {
+            this.rejectionPolicy = rejectionPolicy;
+        }
+
+        @Override
+        public void rejectedExecution(final Runnable task, final ThreadPoolExecutor executor) {
+            rejectedTaskCount.incrementAndGet();
+
+            if (rejectionPolicy == RejectionPolicy.ABORT) {
+                if (executor.isShutdown()) {
+                    throw new RejectedExecutionException("Pool " + name + " is shut down");
+                }
+
+                LOG.warning("Pool %s is full with %d threads and %d waiting tasks. Rejecting task.",
+                            name, executor.getMaximumPoolSize(), queueCapacity);
+                throw new RejectedExecutionException("Pool " + name + " is full");
+            }
+
+            if (executor.isShutdown()) {
+                LOG.fine("Pool %s is shut down. Discarding task.", name);
+                return;
+            }
+
+            if (rejectionPolicy == RejectionPolicy.CALLER_RUNS) {
+                LOG.fine("Pool %s is full. Running task in the calling thread.", name);
+                task.run();
+            } else {
+                LOG.warning("Pool %s is full with %d threads and %d waiting tasks. Discarding task.",
+                            name, executor.getMaximumPoolSize(), queueCapacity);
+            }
+        }
+    }
+}
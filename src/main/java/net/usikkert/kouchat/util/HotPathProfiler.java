@@ -0,0 +1,268 @@
+
+/***************************************************************************
+ *   Copyright 2006-2018 by Christian Ihle                                 *
+ *   contact@kouchat.net                                                   *
+ *                                                                         *
+ *   This file is part of KouChat.                                         *
+ *                                                                         *
+ *   KouChat is free software; you can redistribute it and/or modify       *
+ *   it under the terms of the GNU Lesser General Public License as        *
+ *   published by the Free Software Foundation, either version 3 of        *
+ *   the License, or (at your option) any later version.                   *
+ *                                                                         *
+ *   KouChat is distributed in the hope that it will be useful,            *
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of        *
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU      *
+ *   Lesser General Public License for more details.                       *
+ *                                                                         *
+ *   You should have received a copy of the GNU Lesser General Public      *
+ *   License along with KouChat.                                           *
+ *   If not, see <http://www.gnu.org/licenses/>.                           *
+ ***************************************************************************/
+
+package net.usikkert.kouchat.util;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Measures the time spent in the hot paths of the application, to see where the time goes
+ * in a running client without a special build or detailed logging.
+ *
+ * <p>Profiling is off by default, and is started and stopped while the application is running,
+ * from the Profiler JMX bean. When off, measuring a hot path only reads a volatile field.
+ * When on, each call updates a few counters without locking.</p>
+ *
+ * <p>Use it like this:</p>
+ *
+ * <pre>
+ * final long start = HotPathProfiler.start();
+ *
+ * try {
+ *     // The hot path
+ * }
+ *
+ * finally {
+ *     HotPathProfiler.end(HotPath.MESSAGE_PARSE, start);
+ * }
+ * </pre>
+ *
+ * <p>Hot paths can be nested. Receiving a packet includes parsing the messages in it, which includes
+ * responding to them, and so on.</p>
+ *
+ * @author Christian Ihle
+ */
+public final class HotPathProfiler {
+
+    /**
+     * The measured hot paths, with how long a call can take before it's counted as slow.
+     */
+    public enum HotPath {
+
+        /** Receiving a packet from the main chat, including handling all the messages in it. */
+        MULTICAST_RECEIVE(10),
+
+        /** Receiving a private chat packet, including handling the message in it. */
+        PRIVATE_UDP_RECEIVE(10),
+
+        /** Handling a message received over tcp. */
+        TCP_RECEIVE(10),
+
+        /** Parsing a message, and giving it to the responder. */
+        MESSAGE_PARSE(10),
+
+        /** Responding to a chat message, idle message or writing message. */
+        MESSAGE_RESPONSE(10),
+
+        /** Showing a message in the main chat or a private chat, and logging it. */
+        MESSAGE_APPEND(20),
+
+        /** Writing a line to a chat log file. */
+        CHAT_LOG_APPEND(20),
+
+        /** Reading a chunk of a file and sending it to the user. */
+        FILE_SEND_CHUNK(50),
+
+        /** Receiving a chunk of a file from the user and writing it to disk. */
+        FILE_RECEIVE_CHUNK(50),
+
+        /** Adding, removing or moving a user in the user list, including notifying the listeners. */
+        USER_LIST_CHANGE(5);
+
+        private final long slowTime;
+
+        HotPath(final int slowTimeMillis) {
+            this.slowTime = TimeUnit.MILLISECONDS.toNanos(slowTimeMillis);
+        }
+
+        /**
+         * Gets the time a call can take before it's counted as slow.
+         *
+         * @return The time in nanoseconds.
+         */
+        public long getSlowTime() {
+            return slowTime;
+        }
+    }
+
+    /** Returned from {@link #start()} when not profiling. */
+    public static final long NOT_STARTED = Long.MIN_VALUE;
+
+    private static final int COUNT = 0;
+    private static final int TOTAL_TIME = 1;
+    private static final int MAX_TIME = 2;
+    private static final int SLOW_COUNT = 3;
+    private static final int FIELDS = 4;
+
+    /** The measurements of each hot path, by the ordinal of the hot path times the number of fields. */
+    private static final AtomicLongArray MEASUREMENTS = new AtomicLongArray(HotPath.values().length * FIELDS);
+
+    private static volatile boolean profiling;
+
+    private HotPathProfiler() {
+        // Only static methods
+    }
+
+    /**
+     * Starts measuring a call to a hot path.
+     *
+     * @return The start time to give to {@link #end(HotPath, long)}, or {@link #NOT_STARTED} if not profiling.
+     */
+    public static long start() {
+        if (profiling) {
+            return System.nanoTime();
+        } else {
+            return NOT_STARTED;
+        }
+    }
+
+    /**
+     * Ends measuring a call to a hot path, and records the time spent.
+     *
+     * @param hotPath The hot path that was called.
+     * @param start The start time from {@link #start()}.
+     */
+    public static void end(final HotPath hotPath, final long start) {
+        if (start == NOT_STARTED) {
+            return;
+        }
+
+        final long time = System.nanoTime() - start;
+        final int index = hotPath.ordinal() * FIELDS;
+
+        MEASUREMENTS.incrementAndGet(index + COUNT);
+        MEASUREMENTS.addAndGet(index + TOTAL_TIME, time);
+
+        long maxTime = MEASUREMENTS.get(index + MAX_TIME);
+
+        while (time > maxTime && !MEASUREMENTS.compareAndSet(index + MAX_TIME, maxTime, time)) {
+            maxTime = MEASUREMENTS.get(index + MAX_TIME);
+        }
+
+        if (time > hotPath.getSlowTime()) {
+            MEASUREMENTS.incrementAndGet(index + SLOW_COUNT);
+        }
+    }
+
+    /**
+     * Starts measuring the hot paths. The measurements from earlier are kept.
+     */
+    public static void startProfiling() {
+        profiling = true;
+    }
+
+    /**
+     * Stops measuring the hot paths. The measurements are kept until {@link #reset()}.
+     */
+    public static void stopProfiling() {
+        profiling = false;
+    }
+
+    public static boolean isProfiling() {
+        return profiling;
+    }
+
+    /**
+     * Removes all the measurements.
+     */
+    public static void reset() {
+        for (int i = 0; i < MEASUREMENTS.length(); i++) {
+            MEASUREMENTS.set(i, 0);
+        }
+    }
+
+    /**
+     * Gets the measurements of a hot path.
+     *
+     * @param hotPath The hot path to get the measurements of.
+     * @return A copy of the measurements.
+     */
+    public static Measurement getMeasurement(final HotPath hotPath) {
+        final int index = hotPath.ordinal() * FIELDS;
+
+        return new Measurement(hotPath,
+                               MEASUREMENTS.get(index + COUNT),
+                               MEASUREMENTS.get(index + TOTAL_TIME),
+                               MEASUREMENTS.get(index + MAX_TIME),
+                               MEASUREMENTS.get(index + SLOW_COUNT));
+    }
+
+    /**
+     * The measurements of a hot path. The times are in nanoseconds.
+     */
+    public static final class Measurement {
+
+        private final HotPath hotPath;
+        private final long count;
+        private final long totalTime;
+        private final long maxTime;
+        private final long slowCount;
+
+        Measurement(final HotPath hotPath, final long count, final long totalTime, final long maxTime,
+                    final long slowCount) {
+            this.hotPath = hotPath;
+            this.count = count;
+            this.totalTime = totalTime;
+            this.maxTime = maxTime;
+            this.slowCount = slowCount;
+        }
+
+        public HotPath getHotPath() {
+            return hotPath;
+        }
+
+        public long getCount() {
+            return count;
+        }
+
+        public long getTotalTime() {
+            return totalTime;
+        }
+
+        public long getMaxTime() {
+            return maxTime;
+        }
+
+        /**
+         * Gets the number of calls that took longer than {@link HotPath#getSlowTime()}.
+         *
+         * @return The number of slow calls.
+         */
+        public long getSlowCount() {
+            return slowCount;
+        }
+
+        /**
+         * Gets the average time of the calls.
+         *
+         * @return The average time, or 0 if there were no calls.
+         */
+        public long getAverageTime() {
+            if (count == 0) {
+                return 0;
+            }
+
+            return totalTime / count;
+        }
+    }
+}
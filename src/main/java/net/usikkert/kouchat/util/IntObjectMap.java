@@ -0,0 +1,245 @@
+
+/***************************************************************************
+ *   Copyright 2006-2018 by Christian Ihle                                 *
+ *   contact@kouchat.net                                                   *
+ *                                                                         *
+ *   This file is part of KouChat.                                         *
+ *                                                                         *
+ *   KouChat is free software; you can redistribute it and/or modify       *
+ *   it under the terms of the GNU Lesser General Public License as        *
+ *   published by the Free Software Foundation, either version 3 of        *
+ *   the License, or (at your option) any later version.                   *
+ *                                                                         *
+ *   KouChat is distributed in the hope that it will be useful,            *
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of        *
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU      *
+ *   Lesser General Public License for more details.                       *
+ *                                                                         *
+ *   You should have received a copy of the GNU Lesser General Public      *
+ *   License along with KouChat.                                           *
+ *   If not, see <http://www.gnu.org/licenses/>.                           *
+ ***************************************************************************/
+
+package net.usikkert.kouchat.util;
+
+import java.util.Arrays;
+
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * A hash map from primitive <code>int</code> keys to objects.
+ *
+ * <p>Works like a {@link java.util.HashMap} with integer keys, but avoids boxing the keys and
+ * creating an entry object for each mapping. The keys and values are kept in two arrays,
+ * using open addressing with linear probing.</p>
+ *
+ * <p>Null values are not supported. This class is not thread safe.</p>
+ *
+ * @author Christian Ihle
+ * @param <V> The type of the values in the map.
+ */
+public class IntObjectMap<V> {
+
+    /** The initial number of slots. Must be a power of two. */
+    private static final int INITIAL_CAPACITY = 16;
+
+    /** The keys of the map. A slot is only in use if the value in the same slot is not <code>null</code>. */
+    private int[] keys;
+
+    /** The values of the map. <code>null</code> marks a free slot. */
+    private Object[] values;
+
+    /** The number of mappings in the map. */
+    private int size;
+
+    /**
+     * Constructor.
+     */
+    public IntObjectMap() {
+        keys = new int[INITIAL_CAPACITY];
+        values = new Object[INITIAL_CAPACITY];
+    }
+
+    /**
+     * Gets the value mapped to the key.
+     *
+     * @param key The key to get the value for.
+     * @return The value, or <code>null</code> if the key is not in the map.
+     */
+    @Nullable
+    @SuppressWarnings("unchecked")
+    public V get(final int key) {
+        final int mask = values.length - 1;
+        int slot = slotOf(key, mask);
+
+        while (values[slot] != null) {
+            if (keys[slot] == key) {
+                return (V) values[slot];
+            }
+
+            slot = (slot + 1) & mask;
+        }
+
+        return null;
+    }
+
+    /**
+     * Checks if the key is in the map.
+     *
+     * @param key The key to check.
+     * @return If the key is mapped to a value.
+     */
+    public boolean containsKey(final int key) {
+        return get(key) != null;
+    }
+
+    /**
+     * Maps the key to the value, replacing any previous value of the key.
+     *
+     * @param key The key to map the value to.
+     * @param value The value to map. Can not be <code>null</code>.
+     * @return The previous value of the key, or <code>null</code> if the key was not in the map.
+     */
+    @Nullable
+    @SuppressWarnings("unchecked")
+    public V put(final int key, final V value) {
+        Validate.notNull(value, "Value can not be null");
+
+        final int mask = values.length - 1;
+        int slot = slotOf(key, mask);
+
+        while (values[slot] != null) {
+            if (keys[slot] == key) {
+                final V oldValue = (V) values[slot];
+                values[slot] = value;
+
+                return oldValue;
+            }
+
+            slot = (slot + 1) & mask;
+        }
+
+        keys[slot] = key;
+        values[slot] = value;
+        size++;
+
+        // Keep the load factor at or below 0.5, so the probe sequences stay short
+        if (size * 2 > values.length) {
+            resize(values.length * 2);
+        }
+
+        return null;
+    }
+
+    /**
+     * Removes the key from the map.
+     *
+     * @param key The key to remove.
+     * @return The value of the removed key, or <code>null</code> if the key was not in the map.
+     */
+    @Nullable
+    @SuppressWarnings("unchecked")
+    public V remove(final int key) {
+        final int mask = values.length - 1;
+        int slot = slotOf(key, mask);
+
+        while (values[slot] != null) {
+            if (keys[slot] == key) {
+                final V oldValue = (V) values[slot];
+                values[slot] = null;
+                size--;
+                closeGap(slot, mask);
+
+                return oldValue;
+            }
+
+            slot = (slot + 1) & mask;
+        }
+
+        return null;
+    }
+
+    /**
+     * Gets the number of mappings in the map.
+     *
+     * @return The number of mappings.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Checks if the map is empty.
+     *
+     * @return If there are no mappings in the map.
+     */
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Removes all the mappings from the map.
+     */
+    public void clear() {
+        Arrays.fill(values, null);
+        size = 0;
+    }
+
+    /**
+     * Moves the mappings following a removed slot back into the gap, so every mapping can still
+     * be found by probing from its own slot without any marker of removed slots.
+     *
+     * @param removedSlot The slot that was just freed.
+     * @param mask The mask for wrapping around the arrays.
+     */
+    private void closeGap(final int removedSlot, final int mask) {
+        int gap = removedSlot;
+        int slot = (gap + 1) & mask;
+
+        while (values[slot] != null) {
+            final int home = slotOf(keys[slot], mask);
+
+            // Move the mapping if its home slot is not between the gap and its current slot
+            if (((slot - home) & mask) >= ((slot - gap) & mask)) {
+                keys[gap] = keys[slot];
+                values[gap] = values[slot];
+                values[slot] = null;
+                gap = slot;
+            }
+
+            slot = (slot + 1) & mask;
+        }
+    }
+
+    private void resize(final int newCapacity) {
+        final int[] oldKeys = keys;
+        final Object[] oldValues = values;
+        final int mask = newCapacity - 1;
+
+        keys = new int[newCapacity];
+        values = new Object[newCapacity];
+
+        for (int i = 0; i < oldValues.length; i++) {
+            if (oldValues[i] != null) {
+                int slot = slotOf(oldKeys[i], mask);
+
+                while (values[slot] != null) {
+                    slot = (slot + 1) & mask;
+                }
+
+                keys[slot] = oldKeys[i];
+                values[slot] = oldValues[i];
+            }
+        }
+    }
+
+    /**
+     * Finds the home slot of the key. The bits of the key are mixed first, since
+     * keys with a pattern, like sequential numbers, would otherwise cluster together.
+     */
+    private static int slotOf(final int key, final int mask) {
+        final int hash = key * 0x9E3779B9;
+
+        return (hash ^ (hash >>> 16)) & mask;
+    }
+}
@@ -0,0 +1,202 @@
+
+/***************************************************************************
+ *   Copyright 2006-2018 by Christian Ihle                                 *
+ *   contact@kouchat.net                                                   *
+ *                                                                         *
+ *   This file is part of KouChat.                                         *
+ *                                                                         *
+ *   KouChat is free software; you can redistribute it and/or modify       *
+ *   it under the terms of the GNU Lesser General Public License as        *
+ *   published by the Free Software Foundation, either version 3 of        *
+ *   the License, or (at your option) any later version.                   *
+ *                                                                         *
+ *   KouChat is distributed in the hope that it will be useful,            *
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of        *
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU      *
+ *   Lesser General Public License for more details.                       *
+ *                                                                         *
+ *   You should have received a copy of the GNU Lesser General Public      *
+ *   License along with KouChat.                                           *
+ *   If not, see <http://www.gnu.org/licenses/>.                           *
+ ***************************************************************************/
+
+package net.usikkert.kouchat.util;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Counts recorded values, like latencies, in buckets, to find percentiles without keeping each value.
+ *
+ * <p>The values from 0 to 7 get a bucket each. Larger values are split into 8 buckets for each power of two,
+ * so a percentile is never more than 12.5% larger than the real value. Recording a value is a few atomic
+ * increments, and does not allocate memory.</p>
+ *
+ * <p>This class is thread safe.</p>
+ *
+ * @author Christian Ihle
+ */
+public class LatencyHistogram {
+
+    /** The number of bits used to split each power of two into smaller buckets. */
+    private static final int SUB_BUCKET_BITS = 3;
+
+    /** The number of buckets for each power of two. */
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+
+    /** Enough buckets for every positive long. */
+    private static final int BUCKETS = SUB_BUCKETS + (Long.SIZE - 1 - SUB_BUCKET_BITS) * SUB_BUCKETS;
+
+    private final AtomicLongArray buckets;
+    private final AtomicLong count;
+    private final AtomicLong sum;
+    private final AtomicLong max;
+
+    /**
+     * Constructor.
+     */
+    public LatencyHistogram() {
+        buckets = new AtomicLongArray(BUCKETS);
+        count = new AtomicLong();
+        sum = new AtomicLong();
+        max = new AtomicLong();
+    }
+
+    /**
+     * Records a value. Negative values are recorded as 0.
+     *
+     * @param value The value to record.
+     */
+    public void record(final long value) {
+        final long positiveValue = Math.max(0, value);
+
+        buckets.incrementAndGet(getBucket(positiveValue));
+        count.incrementAndGet();
+        sum.addAndGet(positiveValue);
+
+        long currentMax = max.get();
+
+        while (positiveValue > currentMax && !max.compareAndSet(currentMax, positiveValue)) {
+            currentMax = max.get();
+        }
+    }
+
+    /**
+     * Gets the number of recorded values.
+     *
+     * @return The number of values.
+     */
+    public long getCount() {
+        return count.get();
+    }
+
+    /**
+     * Gets the largest recorded value.
+     *
+     * @return The largest value, or 0 if nothing has been recorded.
+     */
+    public long getMax() {
+        return max.get();
+    }
+
+    /**
+     * Gets the average of the recorded values.
+     *
+     * @return The average, or 0 if nothing has been recorded.
+     */
+    public double getMean() {
+        final long currentCount = count.get();
+
+        if (currentCount == 0) {
+            return 0;
+        }
+
+        return (double) sum.get() / currentCount;
+    }
+
+    /**
+     * Gets the value that the given percent of the recorded values are smaller than or equal to.
+     *
+     * <p>The value is the largest value of the bucket the percentile is in, but never larger than
+     * the largest recorded value.</p>
+     *
+     * @param percentile The percentile to find, from 0 to 100.
+     * @return The value at the percentile, or 0 if nothing has been recorded.
+     */
+    public long getPercentile(final double percentile) {
+        if (percentile < 0 || percentile > 100) {
+            throw new IllegalArgumentException("Percentile must be between 0 and 100");
+        }
+
+        final long[] counts = new long[BUCKETS];
+        long total = 0;
+
+        for (int i = 0; i < BUCKETS; i++) {
+            counts[i] = buckets.get(i);
+            total += counts[i];
+        }
+
+        if (total == 0) {
+            return 0;
+        }
+
+        final long rank = Math.max(1, (long) Math.ceil(percentile / 100 * total));
+        long seen = 0;
+
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += counts[i];
+
+            if (seen >= rank) {
+                return Math.min(getBucketEnd(i), max.get());
+            }
+        }
+
+        return max.get();
+    }
+
+    /**
+     * Removes all the recorded values.
+     */
+    public void reset() {
+        for (int i = 0; i < BUCKETS; i++) {
+            buckets.set(i, 0);
+        }
+
+        count.set(0);
+        sum.set(0);
+        max.set(0);
+    }
+
+    /**
+     * Finds the bucket for a value that is 0 or larger.
+     */
+    static int getBucket(final long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+
+        final int highestBit = Long.SIZE - 1 - Long.numberOfLeadingZeros(value);
+        final int shift = highestBit - SUB_BUCKET_BITS;
+        final int subBucket = (int) (value >>> shift) & (SUB_BUCKETS - 1);
+
+        return SUB_BUCKETS + shift * SUB_BUCKETS + subBucket;
+    }
+
+    /**
+     * Finds the largest value that belongs in the bucket.
+     */
+    static long getBucketEnd(final int bucket) {
+        if (bucket < SUB_BUCKETS) {
+            return bucket;
+        }
+
+        final int shift = (bucket - SUB_BUCKETS) / SUB_BUCKETS;
+        final long subBucket = SUB_BUCKETS + (bucket - SUB_BUCKETS) % SUB_BUCKETS;
+
+        if (shift + SUB_BUCKET_BITS == Long.SIZE - 2 && subBucket == 2 * SUB_BUCKETS - 1) {
+            return Long.MAX_VALUE;
+        }
+
+        return ((subBucket + 1) << shift) - 1;
+    }
+}
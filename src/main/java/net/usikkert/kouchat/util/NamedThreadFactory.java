@@ -0,0 +1,65 @@
+
+/***************************************************************************
+ *   Copyright 2006-2018 by Christian Ihle                                 *
+ *   contact@kouchat.net                                                   *
+ *                                                                         *
+ *   This file is part of KouChat.                                         *
+ *                                                                         *
+ *   KouChat is free software; you can redistribute it and/or modify       *
+ *   it under the terms of the GNU Lesser General Public License as        *
+ *   published by the Free Software Foundation, either version 3 of        *
+ *   the License, or (at your option) any later version.                   *
+ *                                                                         *
+ *   KouChat is distributed in the hope that it will be useful,            *
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of        *
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU      *
+ *   Lesser General Public License for more details.                       *
+ *                                                                         *
+ *   You should have received a copy of the GNU Lesser General Public      *
+ *   License along with KouChat.                                           *
+ *   If not, see <http://www.gnu.org/licenses/>.                           *
+ ***************************************************************************/
+
+package net.usikkert.kouchat.util;
+
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A thread factory that gives the threads a name, to make them easy to recognize
+ * in thread dumps and logs.
+ *
+ * <p>The threads are daemon threads, so they don't keep the application running.</p>
+ *
+ * @author Christian Ihle
+ */
+public class NamedThreadFactory implements ThreadFactory {
+
+    private final String name;
+    private final AtomicInteger threadNumber;
+
+    /**
+     * Constructor.
+     *
+     * @param name The name of the threads. Each thread gets a number after the name.
+     */
+    public NamedThreadFactory(final String name) {
+        Validate.notEmpty(name, "Name can not be empty");
+
+        this.name = name;
+        this.threadNumber = new AtomicInteger();
+    }
+
+    /**
+     * Creates a new daemon thread named after the factory, with a unique number.
+     *
+     * {@inheritDoc}
+     */
+    @Override
+    public Thread newThread(final Runnable runnable) {
+        final Thread thread = new Thread(runnable, name + "-" + threadNumber.incrementAndGet());
+        thread.setDaemon(true);
+
+        return thread;
+    }
+}
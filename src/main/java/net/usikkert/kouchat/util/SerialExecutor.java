@@ -0,0 +1,140 @@
+
+/***************************************************************************
+ *   Copyright 2006-2018 by Christian Ihle                                 *
+ *   contact@kouchat.net                                                   *
+ *                                                                         *
+ *   This file is part of KouChat.                                         *
+ *                                                                         *
+ *   KouChat is free software; you can redistribute it and/or modify       *
+ *   it under the terms of the GNU Lesser General Public License as        *
+ *   published by the Free Software Foundation, either version 3 of        *
+ *   the License, or (at your option) any later version.                   *
+ *                                                                         *
+ *   KouChat is distributed in the hope that it will be useful,            *
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of        *
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU      *
+ *   Lesser General Public License for more details.                       *
+ *                                                                         *
+ *   You should have received a copy of the GNU Lesser General Public      *
+ *   License along with KouChat.                                           *
+ *   If not, see <http://www.gnu.org/licenses/>.                           *
+ ***************************************************************************/
+
+package net.usikkert.kouchat.util;
+
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * An executor that runs the tasks one at a time, in the order they were added, using a thread
+ * from another executor. Several serial executors can share the same thread pool, while each
+ * of them keeps its own order.
+ *
+ * <p>A thread from the other executor is only used while there are tasks waiting.</p>
+ *
+ * <p>This class is thread safe.</p>
+ *
+ * @author Christian Ihle
+ */
+public class SerialExecutor implements Executor {
+
+    private static final Logger LOG = Logger.getLogger(SerialExecutor.class);
+
+    private final Executor executor;
+    private final Queue<Runnable> tasks;
+    private final Runnable taskRunner;
+
+    /** If a task runner is running, or waiting to run, in the other executor. Guarded by tasks. */
+    private boolean running;
+
+    /**
+     * Constructor.
+     *
+     * @param executor The executor to run the tasks with.
+     */
+    public SerialExecutor(final Executor executor) {
+        Validate.notNull(executor, "Executor can not be null");
+
+        this.executor = executor;
+        this.tasks = new ArrayDeque<>();
+        this.taskRunner = new Runnable() {
+            @Override
+            public void run() {
+                runTasks();
+            }
+        };
+    }
+
+    /**
+     * Adds the task to the end of the queue, and starts running the tasks if they are not running already.
+     *
+     * @param task The task to run.
+     * @throws RejectedExecutionException If the other executor could not run the tasks.
+     *                                    The task is not added in that case.
+     */
+    @Override
+    public void execute(final Runnable task) {
+        Validate.notNull(task, "Task can not be null");
+
+        synchronized (tasks) {
+            tasks.add(task);
+
+            if (running) {
+                return;
+            }
+
+            running = true;
+        }
+
+        try {
+            executor.execute(taskRunner);
+        }
+
+        catch (final RejectedExecutionException e) {
+            // Nothing was running, so this is the only task in the queue
+            synchronized (tasks) {
+                tasks.clear();
+                running = false;
+            }
+
+            throw e;
+        }
+    }
+
+    /**
+     * Gets the number of tasks waiting to run.
+     *
+     * @return The number of waiting tasks.
+     */
+    public int getWaitingTasks() {
+        synchronized (tasks) {
+            return tasks.size();
+        }
+    }
+
+    private void runTasks() {
+        while (true) {
+            final Runnable task;
+
+            synchronized (tasks) {
+                task = tasks.poll();
+
+                if (task == null) {
+                    running = false;
+                    return;
+                }
+            }
+
+            try {
+                task.run();
+            }
+
+            // Must not stop the tasks after this one
+            catch (final RuntimeException e) {
+                LOG.severe(e, "Failed to run task");
+            }
+        }
+    }
+}
@@ -166,6 +166,13 @@ public class ArgumentParserTest {
         assertContainsArgument(parser, "--version", Argument.VERSION);
     }
 
+    @Test
+    public void shouldParseValueContainingEqualSigns() {
+        final ArgumentParser parser = new ArgumentParser(new String[] {"--bad-network=loss=5,delay=50"});
+
+        assertOneArgument(parser, "--bad-network=loss=5,delay=50", Argument.BAD_NETWORK, "loss=5,delay=50");
+    }
+
     @Test
     public void getUnknownArgumentsShouldReturnAllUnknownArguments() {
         final ArgumentParser parser = new ArgumentParser(new String[] {"--help", "-x", "--yyyy", "-z"});
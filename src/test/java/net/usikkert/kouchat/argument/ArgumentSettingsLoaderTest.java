@@ -27,6 +27,8 @@ import static org.junit.Assert.*;
 import java.io.File;
 
 import net.usikkert.kouchat.Constants;
+import net.usikkert.kouchat.net.tcp.TCPOverflowPolicy;
+import net.usikkert.kouchat.net.transport.NetworkConditions;
 import net.usikkert.kouchat.settings.Settings;
 
 import org.junit.Before;
@@ -57,6 +59,12 @@ public class ArgumentSettingsLoaderTest {
 
         assertFalse(settings.isAlwaysLog());
         assertFalse(settings.isNoPrivateChat());
+        assertFalse(settings.isBinaryProtocol());
+        assertFalse(settings.isCompression());
+        assertEquals(Constants.NETWORK_PACKET_RATE, settings.getPacketRate());
+        assertEquals(TCPOverflowPolicy.DROP, settings.getTcpOverflowPolicy());
+        assertNull(settings.getNetworkEmulation());
+        assertEquals(0, settings.getNetworkSeed());
         assertEquals(Constants.APP_LOG_FOLDER, settings.getLogLocation());
     }
 
@@ -72,6 +80,8 @@ public class ArgumentSettingsLoaderTest {
 
         assertFalse(settings.isAlwaysLog());
         assertFalse(settings.isNoPrivateChat());
+        assertFalse(settings.isBinaryProtocol());
+        assertFalse(settings.isCompression());
         assertEquals(Constants.APP_LOG_FOLDER, settings.getLogLocation());
     }
 
@@ -84,6 +94,8 @@ public class ArgumentSettingsLoaderTest {
 
         assertTrue(settings.isAlwaysLog());
         assertFalse(settings.isNoPrivateChat());
+        assertFalse(settings.isBinaryProtocol());
+        assertFalse(settings.isCompression());
         assertEquals(Constants.APP_LOG_FOLDER, settings.getLogLocation());
     }
 
@@ -96,6 +108,138 @@ public class ArgumentSettingsLoaderTest {
 
         assertFalse(settings.isAlwaysLog());
         assertTrue(settings.isNoPrivateChat());
+        assertFalse(settings.isBinaryProtocol());
+        assertFalse(settings.isCompression());
+        assertEquals(Constants.APP_LOG_FOLDER, settings.getLogLocation());
+    }
+
+    @Test
+    public void loadSettingsWithCompressionArgumentShouldSetCompressionInTheSettings() {
+        final ArgumentParser argumentParser = argumentParserWithArguments(
+                Argument.COMPRESSION.getFullArgumentName());
+
+        loader.loadSettings(argumentParser, settings);
+
+        assertTrue(settings.isCompression());
+        assertFalse(settings.isBinaryProtocol());
+        assertFalse(settings.isAlwaysLog());
+        assertFalse(settings.isNoPrivateChat());
+    }
+
+    @Test
+    public void loadSettingsWithLatencyTimestampsArgumentShouldSetLatencyTimestampsInTheSettings() {
+        final ArgumentParser argumentParser = argumentParserWithArguments(
+                Argument.LATENCY_TIMESTAMPS.getFullArgumentName());
+
+        loader.loadSettings(argumentParser, settings);
+
+        assertTrue(settings.isLatencyTimestamps());
+        assertFalse(settings.isCompression());
+        assertFalse(settings.isBinaryProtocol());
+    }
+
+    @Test
+    public void loadSettingsWithPacketRateArgumentShouldSetPacketRateInTheSettings() {
+        final ArgumentParser argumentParser = argumentParserWithArguments(
+                Argument.PACKET_RATE.getFullArgumentName() + "=20");
+
+        loader.loadSettings(argumentParser, settings);
+
+        assertEquals(20, settings.getPacketRate());
+        assertFalse(settings.isBinaryProtocol());
+        assertFalse(settings.isCompression());
+    }
+
+    @Test
+    public void loadSettingsWithPacketRateArgumentShouldAllowZero() {
+        final ArgumentParser argumentParser = argumentParserWithArguments(
+                Argument.PACKET_RATE.getFullArgumentName() + "=0");
+
+        loader.loadSettings(argumentParser, settings);
+
+        assertEquals(0, settings.getPacketRate());
+    }
+
+    @Test
+    public void loadSettingsWithInvalidPacketRateArgumentShouldKeepDefaultPacketRate() {
+        loader.loadSettings(argumentParserWithArguments(Argument.PACKET_RATE.getFullArgumentName() + "=fast"), settings);
+        assertEquals(Constants.NETWORK_PACKET_RATE, settings.getPacketRate());
+
+        loader.loadSettings(argumentParserWithArguments(Argument.PACKET_RATE.getFullArgumentName() + "=-5"), settings);
+        assertEquals(Constants.NETWORK_PACKET_RATE, settings.getPacketRate());
+    }
+
+    @Test
+    public void loadSettingsWithTcpOverflowArgumentShouldSetTcpOverflowPolicyInTheSettings() {
+        final ArgumentParser argumentParser = argumentParserWithArguments(
+                Argument.TCP_OVERFLOW.getFullArgumentName() + "=disconnect");
+
+        loader.loadSettings(argumentParser, settings);
+
+        assertEquals(TCPOverflowPolicy.DISCONNECT, settings.getTcpOverflowPolicy());
+        assertFalse(settings.isCompression());
+    }
+
+    @Test
+    public void loadSettingsWithTcpOverflowArgumentShouldIgnoreCase() {
+        loader.loadSettings(argumentParserWithArguments(Argument.TCP_OVERFLOW.getFullArgumentName() + "=DISCONNECT"), settings);
+        assertEquals(TCPOverflowPolicy.DISCONNECT, settings.getTcpOverflowPolicy());
+
+        loader.loadSettings(argumentParserWithArguments(Argument.TCP_OVERFLOW.getFullArgumentName() + "=Drop"), settings);
+        assertEquals(TCPOverflowPolicy.DROP, settings.getTcpOverflowPolicy());
+    }
+
+    @Test
+    public void loadSettingsWithInvalidTcpOverflowArgumentShouldKeepDefaultPolicy() {
+        loader.loadSettings(argumentParserWithArguments(Argument.TCP_OVERFLOW.getFullArgumentName() + "=block"), settings);
+
+        assertEquals(TCPOverflowPolicy.DROP, settings.getTcpOverflowPolicy());
+    }
+
+    @Test
+    public void loadSettingsWithBadNetworkArgumentShouldSetNetworkEmulationInTheSettings() {
+        loader.loadSettings(argumentParserWithArguments(Argument.BAD_NETWORK.getFullArgumentName() + "=loss=5,delay=50"), settings);
+
+        final NetworkConditions networkEmulation = settings.getNetworkEmulation();
+        assertNotNull(networkEmulation);
+        assertEquals(5.0, networkEmulation.getLossPercent(), 0.0);
+        assertEquals(50, networkEmulation.getDelay());
+    }
+
+    @Test
+    public void loadSettingsWithInvalidBadNetworkArgumentShouldNotEmulateNetwork() {
+        loader.loadSettings(argumentParserWithArguments(Argument.BAD_NETWORK.getFullArgumentName() + "=loss=lots"), settings);
+        assertNull(settings.getNetworkEmulation());
+
+        loader.loadSettings(argumentParserWithArguments(Argument.BAD_NETWORK.getFullArgumentName() + "=loss=500"), settings);
+        assertNull(settings.getNetworkEmulation());
+    }
+
+    @Test
+    public void loadSettingsWithNetworkSeedArgumentShouldSetNetworkSeedInTheSettings() {
+        loader.loadSettings(argumentParserWithArguments(Argument.NETWORK_SEED.getFullArgumentName() + "=-42"), settings);
+
+        assertEquals(-42, settings.getNetworkSeed());
+    }
+
+    @Test
+    public void loadSettingsWithInvalidNetworkSeedArgumentShouldKeepDefaultSeed() {
+        loader.loadSettings(argumentParserWithArguments(Argument.NETWORK_SEED.getFullArgumentName() + "=random"), settings);
+
+        assertEquals(0, settings.getNetworkSeed());
+    }
+
+    @Test
+    public void loadSettingsWithBinaryProtocolArgumentShouldSetBinaryProtocolInTheSettings() {
+        final ArgumentParser argumentParser = argumentParserWithArguments(
+                Argument.BINARY_PROTOCOL.getFullArgumentName());
+
+        loader.loadSettings(argumentParser, settings);
+
+        assertFalse(settings.isAlwaysLog());
+        assertFalse(settings.isNoPrivateChat());
+        assertTrue(settings.isBinaryProtocol());
+        assertFalse(settings.isCompression());
         assertEquals(Constants.APP_LOG_FOLDER, settings.getLogLocation());
     }
 
@@ -108,6 +252,8 @@ public class ArgumentSettingsLoaderTest {
 
         assertFalse(settings.isAlwaysLog());
         assertFalse(settings.isNoPrivateChat());
+        assertFalse(settings.isBinaryProtocol());
+        assertFalse(settings.isCompression());
 
         // It appends missing slash or backslash, depending on the OS
         assertEquals("/home/user/logs" + File.separator, settings.getLogLocation());
@@ -118,12 +264,20 @@ public class ArgumentSettingsLoaderTest {
         final ArgumentParser argumentParser = argumentParserWithArguments(
                 Argument.ALWAYS_LOG.getFullArgumentName(),
                 Argument.NO_PRIVATE_CHAT.getFullArgumentName(),
-                Argument.LOG_LOCATION.getFullArgumentName() + "=/home/user/logs");
+                Argument.LOG_LOCATION.getFullArgumentName() + "=/home/user/logs",
+                Argument.BINARY_PROTOCOL.getFullArgumentName(),
+                Argument.PACKET_RATE.getFullArgumentName() + "=20",
+                Argument.COMPRESSION.getFullArgumentName(),
+                Argument.TCP_OVERFLOW.getFullArgumentName() + "=disconnect");
 
         loader.loadSettings(argumentParser, settings);
 
         assertTrue(settings.isAlwaysLog());
         assertTrue(settings.isNoPrivateChat());
+        assertTrue(settings.isBinaryProtocol());
+        assertEquals(20, settings.getPacketRate());
+        assertTrue(settings.isCompression());
+        assertEquals(TCPOverflowPolicy.DISCONNECT, settings.getTcpOverflowPolicy());
         assertEquals("/home/user/logs" + File.separator, settings.getLogLocation());
     }
 
@@ -37,7 +37,7 @@ public class ArgumentTest {
     public void getValidArgumentsShouldReturnAllArgumentsExceptUnknown() {
         final Argument[] validArguments = Argument.getValidArguments();
 
-        assertEquals(8, validArguments.length);
+        assertEquals(15, validArguments.length);
 
         assertEquals(Argument.CONSOLE, validArguments[0]);
         assertEquals(Argument.MINIMIZED, validArguments[1]);
@@ -47,6 +47,13 @@ public class ArgumentTest {
         assertEquals(Argument.NO_PRIVATE_CHAT, validArguments[5]);
         assertEquals(Argument.ALWAYS_LOG, validArguments[6]);
         assertEquals(Argument.LOG_LOCATION, validArguments[7]);
+        assertEquals(Argument.BINARY_PROTOCOL, validArguments[8]);
+        assertEquals(Argument.PACKET_RATE, validArguments[9]);
+        assertEquals(Argument.COMPRESSION, validArguments[10]);
+        assertEquals(Argument.TCP_OVERFLOW, validArguments[11]);
+        assertEquals(Argument.BAD_NETWORK, validArguments[12]);
+        assertEquals(Argument.NETWORK_SEED, validArguments[13]);
+        assertEquals(Argument.LATENCY_TIMESTAMPS, validArguments[14]);
     }
 
     @Test
@@ -59,6 +66,13 @@ public class ArgumentTest {
         assertEquals("--no-private-chat", Argument.NO_PRIVATE_CHAT.getFullArgumentName());
         assertEquals("--always-log", Argument.ALWAYS_LOG.getFullArgumentName());
         assertEquals("--log-location", Argument.LOG_LOCATION.getFullArgumentName());
+        assertEquals("--binary-protocol", Argument.BINARY_PROTOCOL.getFullArgumentName());
+        assertEquals("--packet-rate", Argument.PACKET_RATE.getFullArgumentName());
+        assertEquals("--compression", Argument.COMPRESSION.getFullArgumentName());
+        assertEquals("--tcp-overflow", Argument.TCP_OVERFLOW.getFullArgumentName());
+        assertEquals("--bad-network", Argument.BAD_NETWORK.getFullArgumentName());
+        assertEquals("--network-seed", Argument.NETWORK_SEED.getFullArgumentName());
+        assertEquals("--latency-timestamps", Argument.LATENCY_TIMESTAMPS.getFullArgumentName());
     }
 
     @Test
@@ -73,7 +87,14 @@ public class ArgumentTest {
                 " --version (-v)          Shows version information.\n" +
                 " --no-private-chat       Disables private chat.\n" +
                 " --always-log            Enables logging, without option to disable.\n" +
-                " --log-location=<value>  Location to store log files.";
+                " --log-location=<value>  Location to store log files.\n" +
+                " --binary-protocol       Sends compact binary messages when all users support it.\n" +
+                " --packet-rate=<value>   Max multicast packets to send per second. 0 for no limit.\n" +
+                " --compression           Compresses large messages when all users support it.\n" +
+                " --tcp-overflow=<value>  What to do when a user is too slow to receive: drop or disconnect.\n" +
+                " --bad-network=<value>   Emulates a bad network, like loss=5,delay=50,jitter=20.\n" +
+                " --network-seed=<value>  Seed for the emulated network, to repeat the same problems.\n" +
+                " --latency-timestamps    Sends chat messages with a timestamp, to measure latency.";
 
         assertEquals(expected, argumentsAsString);
     }
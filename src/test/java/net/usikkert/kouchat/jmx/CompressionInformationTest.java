@@ -0,0 +1,88 @@
+
+/***************************************************************************
+ *   Copyright 2006-2018 by Christian Ihle                                 *
+ *   contact@kouchat.net                                                   *
+ *                                                                         *
+ *   This file is part of KouChat.                                         *
+ *                                                                         *
+ *   KouChat is free software; you can redistribute it and/or modify       *
+ *   it under the terms of the GNU Lesser General Public License as        *
+ *   published by the Free Software Foundation, either version 3 of        *
+ *   the License, or (at your option) any later version.                   *
+ *                                                                         *
+ *   KouChat is distributed in the hope that it will be useful,            *
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of        *
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU      *
+ *   Lesser General Public License for more details.                       *
+ *                                                                         *
+ *   You should have received a copy of the GNU Lesser General Public      *
+ *   License along with KouChat.                                           *
+ *   If not, see <http://www.gnu.org/licenses/>.                           *
+ ***************************************************************************/
+
+package net.usikkert.kouchat.jmx;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+
+import net.usikkert.kouchat.junit.ExpectedException;
+import net.usikkert.kouchat.net.CompressionStatistics;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+
+/**
+ * Test of {@link CompressionInformation}.
+ *
+ * @author Christian Ihle
+ */
+@SuppressWarnings("HardCodedStringLiteral")
+public class CompressionInformationTest {
+
+    @Rule
+    public ExpectedException expectedException = ExpectedException.none();
+
+    private CompressionInformation information;
+    private CompressionStatistics statistics;
+
+    @Before
+    public void setUp() {
+        statistics = mock(CompressionStatistics.class);
+        information = new CompressionInformation(statistics);
+    }
+
+    @Test
+    public void constructorShouldThrowExceptionIfStatisticsIsNull() {
+        expectedException.expect(IllegalArgumentException.class);
+        expectedException.expectMessage("Compression statistics can not be null");
+
+        new CompressionInformation(null);
+    }
+
+    @Test
+    public void gettersShouldReturnValuesFromStatistics() {
+        when(statistics.getCompressedMessages()).thenReturn(10L);
+        when(statistics.getSkippedMessages()).thenReturn(2L);
+        when(statistics.getBytesBeforeCompression()).thenReturn(4000L);
+        when(statistics.getBytesAfterCompression()).thenReturn(1000L);
+        when(statistics.getCompressionRatio()).thenReturn(0.25);
+        when(statistics.getCompressionTimeMillis()).thenReturn(5L);
+        when(statistics.getDecompressedMessages()).thenReturn(20L);
+        when(statistics.getDecompressionTimeMillis()).thenReturn(3L);
+
+        assertEquals(10, information.getCompressedMessages());
+        assertEquals(2, information.getSkippedMessages());
+        assertEquals(4000, information.getBytesBeforeCompression());
+        assertEquals(1000, information.getBytesAfterCompression());
+        assertEquals(0.25, information.getCompressionRatio(), 0.0);
+        assertEquals(5, information.getCompressionTimeMillis());
+        assertEquals(20, information.getDecompressedMessages());
+        assertEquals(3, information.getDecompressionTimeMillis());
+    }
+
+    @Test
+    public void getBeanNameShouldReturnCompression() {
+        assertEquals("Compression", information.getBeanName());
+    }
+}
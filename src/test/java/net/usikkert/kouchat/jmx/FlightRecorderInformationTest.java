@@ -0,0 +1,121 @@
+
+/***************************************************************************
+ *   Copyright 2006-2018 by Christian Ihle                                 *
+ *   contact@kouchat.net                                                   *
+ *                                                                         *
+ *   This file is part of KouChat.                                         *
+ *                                                                         *
+ *   KouChat is free software; you can redistribute it and/or modify       *
+ *   it under the terms of the GNU Lesser General Public License as        *
+ *   published by the Free Software Foundation, either version 3 of        *
+ *   the License, or (at your option) any later version.                   *
+ *                                                                         *
+ *   KouChat is distributed in the hope that it will be useful,            *
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of        *
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU      *
+ *   Lesser General Public License for more details.                       *
+ *                                                                         *
+ *   You should have received a copy of the GNU Lesser General Public      *
+ *   License along with KouChat.                                           *
+ *   If not, see <http://www.gnu.org/licenses/>.                           *
+ ***************************************************************************/
+
+package net.usikkert.kouchat.jmx;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+
+import net.usikkert.kouchat.junit.ExpectedException;
+import net.usikkert.kouchat.misc.FlightRecorder;
+import net.usikkert.kouchat.settings.Settings;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Test of {@link FlightRecorderInformation}.
+ *
+ * @author Christian Ihle
+ */
+@SuppressWarnings("HardCodedStringLiteral")
+public class FlightRecorderInformationTest {
+
+    @Rule
+    public ExpectedException expectedException = ExpectedException.none();
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private FlightRecorderInformation information;
+    private FlightRecorder flightRecorder;
+    private Settings settings;
+
+    @Before
+    public void setUp() {
+        flightRecorder = new FlightRecorder(8);
+        settings = new Settings();
+        information = new FlightRecorderInformation(flightRecorder, settings);
+    }
+
+    @Test
+    public void constructorShouldThrowExceptionIfFlightRecorderIsNull() {
+        expectedException.expect(IllegalArgumentException.class);
+        expectedException.expectMessage("Flight recorder can not be null");
+
+        new FlightRecorderInformation(null, settings);
+    }
+
+    @Test
+    public void constructorShouldThrowExceptionIfSettingsIsNull() {
+        expectedException.expect(IllegalArgumentException.class);
+        expectedException.expectMessage("Settings can not be null");
+
+        new FlightRecorderInformation(flightRecorder, null);
+    }
+
+    @Test
+    public void getCapacityAndRecordedEventsShouldComeFromTheFlightRecorder() {
+        flightRecorder.record(FlightRecorder.EventType.NETWORK_UP, null);
+
+        assertEquals(8, information.getCapacity());
+        assertEquals(1, information.getRecordedEvents());
+    }
+
+    @Test
+    public void showLatestEventsShouldShowTheNewestEventsOldestFirst() {
+        flightRecorder.record(FlightRecorder.EventType.NETWORK_UP, null);
+        flightRecorder.record(FlightRecorder.EventType.USER_ADDED, 1234, "Niles");
+        flightRecorder.record(FlightRecorder.EventType.USER_REMOVED, 1234, "Niles");
+
+        assertArrayEquals(new String[] {"USER_ADDED user=1234 Niles", "USER_REMOVED user=1234 Niles"},
+                          information.showLatestEvents(2));
+    }
+
+    @Test
+    public void showLatestEventsShouldShowAllEventsIfCountIsLarger() {
+        flightRecorder.record(FlightRecorder.EventType.NETWORK_UP, null);
+
+        assertArrayEquals(new String[] {"NETWORK_UP"}, information.showLatestEvents(10));
+        assertArrayEquals(new String[0], information.showLatestEvents(-1));
+    }
+
+    @Test
+    public void dumpEventsShouldSaveToTheLogFolder() throws IOException {
+        settings.setLogLocation(temporaryFolder.getRoot().getAbsolutePath());
+        flightRecorder.record(FlightRecorder.EventType.NETWORK_UP, null);
+
+        final File file = new File(information.dumpEvents());
+
+        assertTrue(file.exists());
+        assertEquals(temporaryFolder.getRoot(), file.getParentFile());
+    }
+
+    @Test
+    public void getBeanNameShouldReturnFlightRecorder() {
+        assertEquals("FlightRecorder", information.getBeanName());
+    }
+}
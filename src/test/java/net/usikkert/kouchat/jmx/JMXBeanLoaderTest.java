@@ -30,7 +30,12 @@ import java.util.List;
 import net.usikkert.kouchat.junit.ExpectedException;
 import net.usikkert.kouchat.misc.Controller;
 import net.usikkert.kouchat.misc.ErrorHandler;
+import net.usikkert.kouchat.misc.FlightRecorder;
+import net.usikkert.kouchat.misc.ThreadPools;
+import net.usikkert.kouchat.net.CompressionStatistics;
 import net.usikkert.kouchat.net.ConnectionWorker;
+import net.usikkert.kouchat.net.LatencyStatistics;
+import net.usikkert.kouchat.net.TrafficStatistics;
 import net.usikkert.kouchat.settings.Settings;
 
 import org.junit.Before;
@@ -57,6 +62,12 @@ public class JMXBeanLoaderTest {
         connectionWorker = mock(ConnectionWorker.class);
         settings = mock(Settings.class);
         errorHandler = mock(ErrorHandler.class);
+
+        when(controller.getThreadPools()).thenReturn(mock(ThreadPools.class));
+        when(controller.getCompressionStatistics()).thenReturn(new CompressionStatistics());
+        when(controller.getLatencyStatistics()).thenReturn(new LatencyStatistics());
+        when(controller.getTrafficStatistics()).thenReturn(new TrafficStatistics());
+        when(controller.getFlightRecorder()).thenReturn(new FlightRecorder(16));
     }
 
     @Test
@@ -92,16 +103,22 @@ public class JMXBeanLoaderTest {
     }
 
     @Test
-    public void getJMXBeansShouldIncludeThreeBeans() {
+    public void getJMXBeansShouldIncludeFiveBeans() {
         final JMXBeanLoader beanLoader = new JMXBeanLoader(controller, connectionWorker, settings, errorHandler);
 
         final List<JMXBean> jmxBeans = beanLoader.getJMXBeans();
         assertNotNull(jmxBeans);
 
-        assertEquals(3, jmxBeans.size());
+        assertEquals(10, jmxBeans.size());
         assertTrue(containsBeanOfType(jmxBeans, NetworkInformation.class));
         assertTrue(containsBeanOfType(jmxBeans, ControllerInformation.class));
         assertTrue(containsBeanOfType(jmxBeans, GeneralInformation.class));
+        assertTrue(containsBeanOfType(jmxBeans, ThreadPoolInformation.class));
+        assertTrue(containsBeanOfType(jmxBeans, CompressionInformation.class));
+        assertTrue(containsBeanOfType(jmxBeans, LatencyInformation.class));
+        assertTrue(containsBeanOfType(jmxBeans, FlightRecorderInformation.class));
+        assertTrue(containsBeanOfType(jmxBeans, ProfilerInformation.class));
+        assertTrue(containsBeanOfType(jmxBeans, TCPSendQueueInformation.class));
     }
 
     private boolean containsBeanOfType(final List<JMXBean> jmxBeans, final Class<?> theClass) {
@@ -0,0 +1,121 @@
+
+/***************************************************************************
+ *   Copyright 2006-2018 by Christian Ihle                                 *
+ *   contact@kouchat.net                                                   *
+ *                                                                         *
+ *   This file is part of KouChat.                                         *
+ *                                                                         *
+ *   KouChat is free software; you can redistribute it and/or modify       *
+ *   it under the terms of the GNU Lesser General Public License as        *
+ *   published by the Free Software Foundation, either version 3 of        *
+ *   the License, or (at your option) any later version.                   *
+ *                                                                         *
+ *   KouChat is distributed in the hope that it will be useful,            *
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of        *
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU      *
+ *   Lesser General Public License for more details.                       *
+ *                                                                         *
+ *   You should have received a copy of the GNU Lesser General Public      *
+ *   License along with KouChat.                                           *
+ *   If not, see <http://www.gnu.org/licenses/>.                           *
+ ***************************************************************************/
+
+package net.usikkert.kouchat.jmx;
+
+import static org.junit.Assert.*;
+
+import net.usikkert.kouchat.junit.ExpectedException;
+import net.usikkert.kouchat.net.LatencyStatistics;
+import net.usikkert.kouchat.net.LatencyStatistics.Stage;
+import net.usikkert.kouchat.net.transport.TransportChannel;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+
+/**
+ * Test of {@link LatencyInformation}.
+ *
+ * @author Christian Ihle
+ */
+@SuppressWarnings("HardCodedStringLiteral")
+public class LatencyInformationTest {
+
+    @Rule
+    public ExpectedException expectedException = ExpectedException.none();
+
+    private LatencyInformation information;
+    private LatencyStatistics statistics;
+
+    @Before
+    public void setUp() {
+        statistics = new LatencyStatistics();
+        information = new LatencyInformation(statistics);
+    }
+
+    @Test
+    public void constructorShouldThrowExceptionIfStatisticsIsNull() {
+        expectedException.expect(IllegalArgumentException.class);
+        expectedException.expectMessage("Latency statistics can not be null");
+
+        new LatencyInformation(null);
+    }
+
+    @Test
+    public void gettersShouldReturnValuesFromStatistics() {
+        statistics.recordEndToEndLatency(TransportChannel.MULTICAST, 2000);
+        statistics.recordEndToEndLatency(TransportChannel.PRIVATE_UDP, 3000);
+        statistics.recordEndToEndLatency(TransportChannel.TCP, 4000);
+        statistics.recordLocalLatency(500);
+
+        assertEquals(3, information.getTimestampedMessages());
+        assertEquals(1, information.getTracedMessages());
+        assertEquals(2.0, information.getMulticastLatencyP99Millis(), 0.0);
+        assertEquals(3.0, information.getPrivateUdpLatencyP99Millis(), 0.0);
+        assertEquals(4.0, information.getTcpLatencyP99Millis(), 0.0);
+        assertEquals(0.5, information.getLocalLatencyP99Millis(), 0.0);
+    }
+
+    @Test
+    public void showEndToEndLatencyShouldShowEachChannel() {
+        statistics.recordEndToEndLatency(TransportChannel.TCP, 1500);
+
+        final String[] latency = information.showEndToEndLatency();
+
+        assertEquals(3, latency.length);
+        assertEquals("Multicast: messages=0, p50=0.0ms, p90=0.0ms, p99=0.0ms, p99.9=0.0ms, max=0.0ms", latency[0]);
+        assertEquals("Private udp: messages=0, p50=0.0ms, p90=0.0ms, p99=0.0ms, p99.9=0.0ms, max=0.0ms", latency[1]);
+        assertEquals("Tcp: messages=1, p50=1.5ms, p90=1.5ms, p99=1.5ms, p99.9=1.5ms, max=1.5ms", latency[2]);
+    }
+
+    @Test
+    public void showStageLatencyShouldShowEachStageAndTotal() {
+        statistics.recordStageLatency(Stage.APPEND, 250);
+        statistics.recordLocalLatency(250);
+
+        final String[] latency = information.showStageLatency();
+
+        assertEquals(5, latency.length);
+        assertTrue(latency[0].startsWith("Deduplicate: messages=0"));
+        assertTrue(latency[1].startsWith("Parse: messages=0"));
+        assertTrue(latency[2].startsWith("Respond: messages=0"));
+        assertEquals("Append: messages=1, p50=0.25ms, p90=0.25ms, p99=0.25ms, p99.9=0.25ms, max=0.25ms", latency[3]);
+        assertTrue(latency[4].startsWith("Total: messages=1"));
+    }
+
+    @Test
+    public void resetLatencyShouldRemoveAllLatencies() {
+        statistics.recordEndToEndLatency(TransportChannel.MULTICAST, 2000);
+        statistics.recordLocalLatency(500);
+
+        information.resetLatency();
+
+        assertEquals(0, information.getTimestampedMessages());
+        assertEquals(0, information.getTracedMessages());
+    }
+
+    @Test
+    public void getBeanNameShouldReturnLatency() {
+        assertEquals("Latency", information.getBeanName());
+    }
+}
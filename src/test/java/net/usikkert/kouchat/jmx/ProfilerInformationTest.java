@@ -0,0 +1,98 @@
+
+/***************************************************************************
+ *   Copyright 2006-2018 by Christian Ihle                                 *
+ *   contact@kouchat.net                                                   *
+ *                                                                         *
+ *   This file is part of KouChat.                                         *
+ *                                                                         *
+ *   KouChat is free software; you can redistribute it and/or modify       *
+ *   it under the terms of the GNU Lesser General Public License as        *
+ *   published by the Free Software Foundation, either version 3 of        *
+ *   the License, or (at your option) any later version.                   *
+ *                                                                         *
+ *   KouChat is distributed in the hope that it will be useful,            *
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of        *
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU      *
+ *   Lesser General Public License for more details.                       *
+ *                                                                         *
+ *   You should have received a copy of the GNU Lesser General Public      *
+ *   License along with KouChat.                                           *
+ *   If not, see <http://www.gnu.org/licenses/>.                           *
+ ***************************************************************************/
+
+package net.usikkert.kouchat.jmx;
+
+import static org.junit.Assert.*;
+
+import java.util.concurrent.TimeUnit;
+
+import net.usikkert.kouchat.util.HotPathProfiler;
+import net.usikkert.kouchat.util.HotPathProfiler.HotPath;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Test of {@link ProfilerInformation}.
+ *
+ * @author Christian Ihle
+ */
+@SuppressWarnings("HardCodedStringLiteral")
+public class ProfilerInformationTest {
+
+    private ProfilerInformation information;
+
+    @Before
+    public void setUp() {
+        information = new ProfilerInformation();
+        HotPathProfiler.reset();
+    }
+
+    @After
+    public void tearDown() {
+        HotPathProfiler.stopProfiling();
+        HotPathProfiler.reset();
+    }
+
+    @Test
+    public void startAndStopProfilingShouldChangeTheProfiler() {
+        assertFalse(information.isProfiling());
+
+        information.startProfiling();
+        assertTrue(information.isProfiling());
+        assertTrue(HotPathProfiler.isProfiling());
+
+        information.stopProfiling();
+        assertFalse(information.isProfiling());
+    }
+
+    @Test
+    public void showHotPathsShouldShowOneLineForEachHotPath() {
+        information.startProfiling();
+        HotPathProfiler.end(HotPath.MULTICAST_RECEIVE, System.nanoTime() - TimeUnit.MILLISECONDS.toNanos(20));
+
+        final String[] lines = information.showHotPaths();
+
+        assertEquals(HotPath.values().length, lines.length);
+        assertTrue(lines[0], lines[0].startsWith("MULTICAST_RECEIVE: calls=1, average="));
+        assertTrue(lines[0], lines[0].endsWith(", slow=1 (over 10.0ms)"));
+        assertEquals("USER_LIST_CHANGE: calls=0, average=0.0ms, max=0.0ms, total=0.0ms, slow=0 (over 5.0ms)",
+                     lines[lines.length - 1]);
+    }
+
+    @Test
+    public void resetProfilingShouldRemoveMeasurements() {
+        information.startProfiling();
+        HotPathProfiler.end(HotPath.MULTICAST_RECEIVE, HotPathProfiler.start());
+
+        information.resetProfiling();
+
+        assertEquals(0, HotPathProfiler.getMeasurement(HotPath.MULTICAST_RECEIVE).getCount());
+    }
+
+    @Test
+    public void getBeanNameShouldReturnProfiler() {
+        assertEquals("Profiler", information.getBeanName());
+    }
+}
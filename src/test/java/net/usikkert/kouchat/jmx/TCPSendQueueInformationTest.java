@@ -0,0 +1,109 @@
+
+/***************************************************************************
+ *   Copyright 2006-2018 by Christian Ihle                                 *
+ *   contact@kouchat.net                                                   *
+ *                                                                         *
+ *   This file is part of KouChat.                                         *
+ *                                                                         *
+ *   KouChat is free software; you can redistribute it and/or modify       *
+ *   it under the terms of the GNU Lesser General Public License as        *
+ *   published by the Free Software Foundation, either version 3 of        *
+ *   the License, or (at your option) any later version.                   *
+ *                                                                         *
+ *   KouChat is distributed in the hope that it will be useful,            *
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of        *
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU      *
+ *   Lesser General Public License for more details.                       *
+ *                                                                         *
+ *   You should have received a copy of the GNU Lesser General Public      *
+ *   License along with KouChat.                                           *
+ *   If not, see <http://www.gnu.org/licenses/>.                           *
+ ***************************************************************************/
+
+package net.usikkert.kouchat.jmx;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import net.usikkert.kouchat.junit.ExpectedException;
+import net.usikkert.kouchat.misc.Controller;
+import net.usikkert.kouchat.misc.User;
+import net.usikkert.kouchat.net.tcp.TCPOverflowPolicy;
+import net.usikkert.kouchat.net.tcp.TCPSendQueue;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+
+/**
+ * Test of {@link TCPSendQueueInformation}.
+ *
+ * @author Christian Ihle
+ */
+@SuppressWarnings("HardCodedStringLiteral")
+public class TCPSendQueueInformationTest {
+
+    @Rule
+    public ExpectedException expectedException = ExpectedException.none();
+
+    private TCPSendQueueInformation information;
+
+    private TCPSendQueue nilesQueue;
+    private TCPSendQueue frasierQueue;
+
+    @Before
+    public void setUp() {
+        final Controller controller = mock(Controller.class);
+        final Map<User, TCPSendQueue> sendQueues = new LinkedHashMap<>();
+
+        nilesQueue = new TCPSendQueue(2, TCPOverflowPolicy.DROP);
+        frasierQueue = new TCPSendQueue(500, TCPOverflowPolicy.DROP);
+
+        sendQueues.put(new User("Niles", 1234), nilesQueue);
+        sendQueues.put(new User("Frasier", 1235), frasierQueue);
+        when(controller.getTcpSendQueues()).thenReturn(sendQueues);
+
+        information = new TCPSendQueueInformation(controller);
+    }
+
+    @Test
+    public void constructorShouldThrowExceptionIfControllerIsNull() {
+        expectedException.expect(IllegalArgumentException.class);
+        expectedException.expectMessage("Controller can not be null");
+
+        new TCPSendQueueInformation(null);
+    }
+
+    @Test
+    public void gettersShouldSummarizeAllQueues() {
+        nilesQueue.add("message 1");
+        nilesQueue.add("message 2");
+        nilesQueue.add("message 3");
+        frasierQueue.add("message 4");
+
+        assertEquals(3, information.getQueuedMessages());
+        assertEquals(2, information.getMaxQueueSize());
+        assertEquals(1, information.getDroppedMessages());
+    }
+
+    @Test
+    public void showSendQueuesShouldShowStatusOfEachQueue() {
+        nilesQueue.add("message 1");
+        nilesQueue.removeAll();
+        frasierQueue.add("message 2");
+
+        final String[] status = information.showSendQueues();
+
+        assertEquals(2, status.length);
+        assertEquals("Niles: queued=0/2, max=1, sent=1, dropped=0", status[0]);
+        assertEquals("Frasier: queued=1/500, max=1, sent=0, dropped=0", status[1]);
+    }
+
+    @Test
+    public void getBeanNameShouldReturnTCPSendQueues() {
+        assertEquals("TCPSendQueues", information.getBeanName());
+    }
+}
@@ -0,0 +1,124 @@
+
+/***************************************************************************
+ *   Copyright 2006-2018 by Christian Ihle                                 *
+ *   contact@kouchat.net                                                   *
+ *                                                                         *
+ *   This file is part of KouChat.                                         *
+ *                                                                         *
+ *   KouChat is free software; you can redistribute it and/or modify       *
+ *   it under the terms of the GNU Lesser General Public License as        *
+ *   published by the Free Software Foundation, either version 3 of        *
+ *   the License, or (at your option) any later version.                   *
+ *                                                                         *
+ *   KouChat is distributed in the hope that it will be useful,            *
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of        *
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU      *
+ *   Lesser General Public License for more details.                       *
+ *                                                                         *
+ *   You should have received a copy of the GNU Lesser General Public      *
+ *   License along with KouChat.                                           *
+ *   If not, see <http://www.gnu.org/licenses/>.                           *
+ ***************************************************************************/
+
+package net.usikkert.kouchat.jmx;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+
+import java.util.Arrays;
+
+import net.usikkert.kouchat.junit.ExpectedException;
+import net.usikkert.kouchat.misc.ThreadPools;
+import net.usikkert.kouchat.util.BoundedThreadPool;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+
+/**
+ * Test of {@link ThreadPoolInformation}.
+ *
+ * @author Christian Ihle
+ */
+@SuppressWarnings("HardCodedStringLiteral")
+public class ThreadPoolInformationTest {
+
+    @Rule
+    public ExpectedException expectedException = ExpectedException.none();
+
+    private ThreadPoolInformation information;
+
+    private BoundedThreadPool networkPool;
+    private BoundedThreadPool fileTransferPool;
+
+    @Before
+    public void setUp() {
+        final ThreadPools threadPools = mock(ThreadPools.class);
+        networkPool = mock(BoundedThreadPool.class);
+        fileTransferPool = mock(BoundedThreadPool.class);
+
+        when(threadPools.getNetworkPool()).thenReturn(networkPool);
+        when(threadPools.getFileTransferPool()).thenReturn(fileTransferPool);
+        when(threadPools.getPools()).thenReturn(Arrays.asList(networkPool, fileTransferPool));
+
+        information = new ThreadPoolInformation(threadPools);
+    }
+
+    @Test
+    public void constructorShouldThrowExceptionIfThreadPoolsIsNull() {
+        expectedException.expect(IllegalArgumentException.class);
+        expectedException.expectMessage("Thread pools can not be null");
+
+        new ThreadPoolInformation(null);
+    }
+
+    @Test
+    public void getBeanNameShouldReturnThreadPools() {
+        assertEquals("ThreadPools", information.getBeanName());
+    }
+
+    @Test
+    public void networkCountsShouldComeFromTheNetworkPool() {
+        when(networkPool.getActiveCount()).thenReturn(3);
+        when(networkPool.getQueuedTaskCount()).thenReturn(5);
+        when(networkPool.getCompletedTaskCount()).thenReturn(100L);
+        when(networkPool.getRejectedTaskCount()).thenReturn(2L);
+
+        assertEquals(3, information.getNetworkActiveThreads());
+        assertEquals(5, information.getNetworkQueuedTasks());
+        assertEquals(100, information.getNetworkCompletedTasks());
+        assertEquals(2, information.getNetworkRejectedTasks());
+    }
+
+    @Test
+    public void fileTransferCountsShouldComeFromTheFileTransferPool() {
+        when(fileTransferPool.getActiveCount()).thenReturn(1);
+        when(fileTransferPool.getQueuedTaskCount()).thenReturn(4);
+        when(fileTransferPool.getCompletedTaskCount()).thenReturn(10L);
+        when(fileTransferPool.getRejectedTaskCount()).thenReturn(7L);
+
+        assertEquals(1, information.getFileTransferActiveThreads());
+        assertEquals(4, information.getFileTransferQueuedTasks());
+        assertEquals(10, information.getFileTransferCompletedTasks());
+        assertEquals(7, information.getFileTransferRejectedTasks());
+    }
+
+    @Test
+    public void showThreadPoolsShouldShowStatusOfEachPool() {
+        when(networkPool.getName()).thenReturn("Network");
+        when(networkPool.getPoolSize()).thenReturn(2);
+        when(networkPool.getMaximumPoolSize()).thenReturn(16);
+        when(networkPool.getActiveCount()).thenReturn(1);
+        when(networkPool.getQueuedTaskCount()).thenReturn(0);
+        when(networkPool.getQueueCapacity()).thenReturn(256);
+        when(networkPool.getCompletedTaskCount()).thenReturn(20L);
+        when(networkPool.getRejectedTaskCount()).thenReturn(0L);
+        when(fileTransferPool.getName()).thenReturn("FileTransfer");
+
+        final String[] status = information.showThreadPools();
+
+        assertEquals(2, status.length);
+        assertEquals("Network: threads=2/16, active=1, queued=0/256, completed=20, rejected=0", status[0]);
+        assertTrue(status[1].startsWith("FileTransfer: "));
+    }
+}
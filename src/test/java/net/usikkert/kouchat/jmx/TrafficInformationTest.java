@@ -0,0 +1,171 @@
+
+/***************************************************************************
+ *   Copyright 2006-2018 by Christian Ihle                                 *
+ *   contact@kouchat.net                                                   *
+ *                                                                         *
+ *   This file is part of KouChat.                                         *
+ *                                                                         *
+ *   KouChat is free software; you can redistribute it and/or modify       *
+ *   it under the terms of the GNU Lesser General Public License as        *
+ *   published by the Free Software Foundation, either version 3 of        *
+ *   the License, or (at your option) any later version.                   *
+ *                                                                         *
+ *   KouChat is distributed in the hope that it will be useful,            *
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of        *
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU      *
+ *   Lesser General Public License for more details.                       *
+ *                                                                         *
+ *   You should have received a copy of the GNU Lesser General Public      *
+ *   License along with KouChat.                                           *
+ *   If not, see <http://www.gnu.org/licenses/>.                           *
+ ***************************************************************************/
+
+package net.usikkert.kouchat.jmx;
+
+import static org.junit.Assert.*;
+
+import java.util.concurrent.TimeUnit;
+
+import net.usikkert.kouchat.junit.ExpectedException;
+import net.usikkert.kouchat.net.NetworkMessageType;
+import net.usikkert.kouchat.net.TrafficStatistics;
+import net.usikkert.kouchat.net.transport.TransportChannel;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+
+/**
+ * Test of {@link TrafficInformation}.
+ *
+ * @author Christian Ihle
+ */
+@SuppressWarnings("HardCodedStringLiteral")
+public class TrafficInformationTest {
+
+    @Rule
+    public ExpectedException expectedException = ExpectedException.none();
+
+    private TrafficInformation information;
+    private TrafficStatistics statistics;
+
+    @Before
+    public void setUp() {
+        statistics = new TrafficStatistics();
+        information = new TrafficInformation(statistics);
+    }
+
+    @Test
+    public void constructorShouldThrowExceptionIfStatisticsIsNull() {
+        expectedException.expect(IllegalArgumentException.class);
+        expectedException.expectMessage("Traffic statistics can not be null");
+
+        new TrafficInformation(null);
+    }
+
+    @Test
+    public void totalsShouldBeTheSumOfAllChannels() {
+        statistics.recordReceived(TransportChannel.MULTICAST, 100);
+        statistics.recordReceived(TransportChannel.TCP, 20);
+        statistics.recordSent(TransportChannel.PRIVATE_UDP, 50);
+        statistics.recordSent(TransportChannel.TCP, 5);
+        statistics.recordSent(TransportChannel.TCP, 5);
+
+        assertEquals(2, information.getPacketsIn());
+        assertEquals(120, information.getBytesIn());
+        assertEquals(3, information.getPacketsOut());
+        assertEquals(60, information.getBytesOut());
+    }
+
+    @Test
+    public void gettersShouldReturnValuesFromStatistics() {
+        statistics.recordParseFailure();
+        statistics.recordOversizedMessage();
+        statistics.recordOversizedMessage();
+        statistics.recordDuplicateMessage();
+        statistics.recordDuplicateMessage();
+        statistics.recordDuplicateMessage();
+        statistics.recordTcpReconnect();
+
+        assertEquals(1, information.getParseFailures());
+        assertEquals(2, information.getOversizedMessages());
+        assertEquals(3, information.getDuplicateMessages());
+        assertEquals(1, information.getTcpReconnects());
+    }
+
+    @Test
+    public void ratesShouldBeZeroBeforeASecondHasPassed() {
+        statistics.recordReceived(TransportChannel.MULTICAST, 100);
+        statistics.recordMessageType(NetworkMessageType.MSG);
+
+        assertEquals(0.0, information.getPacketsInPerSecond(), 0.0);
+        assertEquals(0.0, information.getBytesInPerSecond(), 0.0);
+        assertEquals(0.0, information.getMessagesPerSecond(), 0.0);
+    }
+
+    @Test
+    public void ratesShouldBeTheChangeSinceLastCalculationPerSecond() {
+        statistics.recordReceived(TransportChannel.MULTICAST, 100);
+        statistics.recordReceived(TransportChannel.TCP, 300);
+        statistics.recordSent(TransportChannel.PRIVATE_UDP, 50);
+        statistics.recordMessageType(NetworkMessageType.MSG);
+        statistics.recordBinaryMessageType((byte) 1);
+
+        // Far enough ahead that reading the rates does not calculate them again
+        information.updateRates(System.nanoTime() + TimeUnit.SECONDS.toNanos(2));
+
+        assertEquals(1.0, information.getPacketsInPerSecond(), 0.1);
+        assertEquals(200.0, information.getBytesInPerSecond(), 20.0);
+        assertEquals(0.5, information.getPacketsOutPerSecond(), 0.1);
+        assertEquals(25.0, information.getBytesOutPerSecond(), 3.0);
+        assertEquals(1.0, information.getMessagesPerSecond(), 0.1);
+    }
+
+    @Test
+    public void updateRatesShouldNotCalculateAgainBeforeASecondHasPassed() {
+        final long now = System.nanoTime() + TimeUnit.SECONDS.toNanos(2);
+        statistics.recordReceived(TransportChannel.MULTICAST, 100);
+        information.updateRates(now);
+        final double packetsInPerSecond = information.getPacketsInPerSecond();
+
+        statistics.recordReceived(TransportChannel.MULTICAST, 100);
+        information.updateRates(now + TimeUnit.MILLISECONDS.toNanos(500));
+
+        assertEquals(packetsInPerSecond, information.getPacketsInPerSecond(), 0.0);
+
+        information.updateRates(now + TimeUnit.SECONDS.toNanos(1));
+
+        assertEquals(1.0, information.getPacketsInPerSecond(), 0.0);
+    }
+
+    @Test
+    public void showChannelsShouldShowCountersOfEachChannel() {
+        statistics.recordReceived(TransportChannel.MULTICAST, 100);
+        statistics.recordSent(TransportChannel.TCP, 25);
+
+        final String[] channels = information.showChannels();
+
+        assertEquals(3, channels.length);
+        assertEquals("Multicast: packetsIn=1, bytesIn=100, packetsOut=0, bytesOut=0", channels[0]);
+        assertEquals("Private udp: packetsIn=0, bytesIn=0, packetsOut=0, bytesOut=0", channels[1]);
+        assertEquals("Tcp: packetsIn=0, bytesIn=0, packetsOut=1, bytesOut=25", channels[2]);
+    }
+
+    @Test
+    public void showMessageTypesShouldShowCountOfEachType() {
+        statistics.recordMessageType(NetworkMessageType.MSG);
+        statistics.recordMessageType(NetworkMessageType.MSG);
+        statistics.recordMessageType("SOMETHING");
+
+        final String[] messageTypes = information.showMessageTypes();
+
+        assertEquals(21, messageTypes.length);
+        assertEquals("MSG: 2", messageTypes[0]);
+        assertEquals("OTHER: 1", messageTypes[20]);
+    }
+
+    @Test
+    public void getBeanNameShouldReturnTraffic() {
+        assertEquals("Traffic", information.getBeanName());
+    }
+}
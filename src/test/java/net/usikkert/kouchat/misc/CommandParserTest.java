@@ -26,6 +26,7 @@ import static org.junit.Assert.*;
 import static org.mockito.Mockito.*;
 
 import java.io.File;
+import java.io.IOException;
 import java.util.Arrays;
 import java.util.Date;
 import java.util.Locale;
@@ -662,6 +663,34 @@ public class CommandParserTest {
         verify(userInterface).clearChat();
     }
 
+    /*
+     * /dump
+     */
+
+    @Test
+    public void dumpShouldSaveEventsToLogFolderAndShowTheFile() throws IOException {
+        final FlightRecorder flightRecorder = mock(FlightRecorder.class);
+        when(controller.getFlightRecorder()).thenReturn(flightRecorder);
+        final File file = new File("events.log");
+        when(flightRecorder.dumpToFolder(settings.getLogLocation())).thenReturn(file);
+
+        parser.parse("/dump");
+
+        verify(flightRecorder).dumpToFolder(settings.getLogLocation());
+        verify(messageController).showSystemMessage("Saved the latest events to " + file.getAbsolutePath());
+    }
+
+    @Test
+    public void dumpShouldShowErrorIfSavingFailed() throws IOException {
+        final FlightRecorder flightRecorder = mock(FlightRecorder.class);
+        when(controller.getFlightRecorder()).thenReturn(flightRecorder);
+        when(flightRecorder.dumpToFolder(anyString())).thenThrow(new IOException("Disk full"));
+
+        parser.parse("/dump");
+
+        verify(messageController).showSystemMessage("/dump - failed to save the events: Disk full");
+    }
+
     /*
      * /about
      */
@@ -691,6 +720,7 @@ public class CommandParserTest {
                         "/back - set status to not away\n" +
                         "/cancel <nick> <id> - cancel an ongoing file transfer with a user\n" +
                         "/clear - clear all the text from the chat\n" +
+                        "/dump - save the latest network and user list events to a file in the log folder\n" +
                         "/help - show this help message\n" +
                         "/msg <nick> <msg> - send a private message to a user\n" +
                         "/nick <new nick> - changes your nick name\n" +
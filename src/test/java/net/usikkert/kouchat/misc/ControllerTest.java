@@ -34,9 +34,14 @@ import net.usikkert.kouchat.message.CoreMessages;
 import net.usikkert.kouchat.net.FileReceiver;
 import net.usikkert.kouchat.net.FileSender;
 import net.usikkert.kouchat.net.FileToSend;
+import net.usikkert.kouchat.net.NetworkCapabilities;
 import net.usikkert.kouchat.net.NetworkMessages;
 import net.usikkert.kouchat.net.NetworkService;
+import net.usikkert.kouchat.net.TrafficStatistics;
 import net.usikkert.kouchat.net.TransferList;
+import net.usikkert.kouchat.net.transport.FaultInjectingTransport;
+import net.usikkert.kouchat.net.transport.NetworkConditions;
+import net.usikkert.kouchat.net.transport.Transport;
 import net.usikkert.kouchat.settings.Settings;
 import net.usikkert.kouchat.settings.SettingsSaver;
 import net.usikkert.kouchat.ui.PrivateChatWindow;
@@ -118,8 +123,7 @@ public class ControllerTest {
         timerTools = TestUtils.setFieldValueWithMock(controller, "timerTools", TimerTools.class);
 
         // The shutdown hook makes tests fail randomly, because it sometimes runs in parallel...
-        final Thread shutdownHook = TestUtils.getFieldValue(controller, Thread.class, "shutdownHook");
-        Runtime.getRuntime().removeShutdownHook(shutdownHook);
+        removeShutdownHook(controller);
     }
 
     @Test
@@ -162,6 +166,58 @@ public class ControllerTest {
         new Controller(ui, settings, settingsSaver, coreMessages, null);
     }
 
+    @Test
+    public void constructorWithTransportShouldUseTransportForNetwork() {
+        final Transport transport = createTransport();
+
+        final Controller controllerWithTransport =
+                new Controller(ui, settings, settingsSaver, coreMessages, errorHandler, transport);
+        removeShutdownHook(controllerWithTransport);
+
+        verify(transport).registerNetworkConnectionListener(controllerWithTransport);
+
+        controllerWithTransport.logOn();
+        verify(transport).start();
+    }
+
+    @Test
+    public void constructorShouldUseTransportDirectlyWithoutNetworkEmulation() {
+        final Transport transport = createTransport();
+
+        final Controller controllerWithTransport =
+                new Controller(ui, settings, settingsSaver, coreMessages, errorHandler, transport);
+        removeShutdownHook(controllerWithTransport);
+
+        assertSame(transport, getNetworkServiceTransport(controllerWithTransport));
+    }
+
+    @Test
+    public void constructorShouldAddNetworkEmulationToTransportFromSettings() {
+        final Transport transport = createTransport();
+        final NetworkConditions networkEmulation = NetworkConditions.parse("loss=5");
+        settings.setNetworkEmulation(networkEmulation);
+
+        final Controller controllerWithTransport =
+                new Controller(ui, settings, settingsSaver, coreMessages, errorHandler, transport);
+        removeShutdownHook(controllerWithTransport);
+
+        final Transport networkServiceTransport = getNetworkServiceTransport(controllerWithTransport);
+        assertTrue(networkServiceTransport instanceof FaultInjectingTransport);
+        assertSame(networkEmulation, ((FaultInjectingTransport) networkServiceTransport).getLinkConditions("10.0.0.1"));
+    }
+
+    @Test
+    public void createJMXBeanLoaderShouldThrowExceptionWhenNotUsingNetworkSockets() {
+        final Controller controllerWithTransport =
+                new Controller(ui, settings, settingsSaver, coreMessages, errorHandler, createTransport());
+        removeShutdownHook(controllerWithTransport);
+
+        expectedException.expect(IllegalStateException.class);
+        expectedException.expectMessage("JMX beans are only available when using the network sockets");
+
+        controllerWithTransport.createJMXBeanLoader();
+    }
+
     @Test
     public void updateMeWritingShouldUpdateMeAndNotifyOthersOnlyWhenStateChanges() {
         assertFalse(me.isWriting());
@@ -677,10 +733,33 @@ public class ControllerTest {
         expectedException.expectMessage("You can not send a chat message with more than 450 bytes");
 
         doReturn(true).when(controller).isConnected();
+        doReturn(false).when(controller).isCapabilitySupportedByAllUsers(NetworkCapabilities.FRAGMENTED_MESSAGES);
 
         controller.sendChatMessage(createStringOfSize(451));
     }
 
+    @Test
+    public void sendChatMessageShouldAllowLargerMessagesWhenAllUsersSupportFragments() throws CommandException {
+        doReturn(true).when(controller).isConnected();
+        doReturn(true).when(controller).isCapabilitySupportedByAllUsers(NetworkCapabilities.FRAGMENTED_MESSAGES);
+
+        final String message = createStringOfSize(8000);
+        controller.sendChatMessage(message);
+
+        verify(networkMessages).sendChatMessage(message);
+    }
+
+    @Test
+    public void sendChatMessageShouldThrowExceptionIfMessageIsTooLongForFragments() throws CommandException {
+        expectedException.expect(CommandException.class);
+        expectedException.expectMessage("You can not send a chat message with more than 8000 bytes");
+
+        doReturn(true).when(controller).isConnected();
+        doReturn(true).when(controller).isCapabilitySupportedByAllUsers(NetworkCapabilities.FRAGMENTED_MESSAGES);
+
+        controller.sendChatMessage(createStringOfSize(8001));
+    }
+
     @Test
     public void sendChatMessageShouldSendMessageUsingNetworkMessages() throws CommandException {
         doReturn(true).when(controller).isConnected();
@@ -947,4 +1026,21 @@ public class ControllerTest {
 
         return sb.toString();
     }
+
+    private Transport createTransport() {
+        final Transport transport = mock(Transport.class);
+        when(transport.getTrafficStatistics()).thenReturn(new TrafficStatistics());
+
+        return transport;
+    }
+
+    private Transport getNetworkServiceTransport(final Controller controllerToCheck) {
+        final NetworkService networkService = TestUtils.getFieldValue(controllerToCheck, NetworkService.class, "networkService");
+        return TestUtils.getFieldValue(networkService, Transport.class, "transport");
+    }
+
+    private void removeShutdownHook(final Controller controllerToClean) {
+        final Thread shutdownHook = TestUtils.getFieldValue(controllerToClean, Thread.class, "shutdownHook");
+        Runtime.getRuntime().removeShutdownHook(shutdownHook);
+    }
 }
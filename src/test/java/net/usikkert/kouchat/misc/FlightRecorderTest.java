@@ -0,0 +1,188 @@
+
+/***************************************************************************
+ *   Copyright 2006-2018 by Christian Ihle                                 *
+ *   contact@kouchat.net                                                   *
+ *                                                                         *
+ *   This file is part of KouChat.                                         *
+ *                                                                         *
+ *   KouChat is free software; you can redistribute it and/or modify       *
+ *   it under the terms of the GNU Lesser General Public License as        *
+ *   published by the Free Software Foundation, either version 3 of        *
+ *   the License, or (at your option) any later version.                   *
+ *                                                                         *
+ *   KouChat is distributed in the hope that it will be useful,            *
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of        *
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU      *
+ *   Lesser General Public License for more details.                       *
+ *                                                                         *
+ *   You should have received a copy of the GNU Lesser General Public      *
+ *   License along with KouChat.                                           *
+ *   If not, see <http://www.gnu.org/licenses/>.                           *
+ ***************************************************************************/
+
+package net.usikkert.kouchat.misc;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.util.List;
+
+import net.usikkert.kouchat.junit.ExpectedException;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Test of {@link FlightRecorder}.
+ *
+ * @author Christian Ihle
+ */
+@SuppressWarnings("HardCodedStringLiteral")
+public class FlightRecorderTest {
+
+    @Rule
+    public ExpectedException expectedException = ExpectedException.none();
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private FlightRecorder flightRecorder;
+
+    @Before
+    public void setUp() {
+        flightRecorder = new FlightRecorder(4);
+    }
+
+    @Test
+    public void constructorShouldThrowExceptionIfCapacityIsNotPowerOfTwo() {
+        expectedException.expect(IllegalArgumentException.class);
+        expectedException.expectMessage("Capacity must be a power of two");
+
+        new FlightRecorder(5);
+    }
+
+    @Test
+    public void constructorShouldThrowExceptionIfCapacityIsZero() {
+        expectedException.expect(IllegalArgumentException.class);
+        expectedException.expectMessage("Capacity must be a power of two");
+
+        new FlightRecorder(0);
+    }
+
+    @Test
+    public void getEventsShouldBeEmptyBeforeAnythingIsRecorded() {
+        assertTrue(flightRecorder.getEvents().isEmpty());
+        assertEquals(0, flightRecorder.getRecordedEvents());
+        assertEquals(4, flightRecorder.getCapacity());
+    }
+
+    @Test
+    public void getEventsShouldReturnEventsOldestFirst() {
+        flightRecorder.record(FlightRecorder.EventType.NETWORK_UP, null);
+        flightRecorder.record(FlightRecorder.EventType.USER_ADDED, 1234, "Niles");
+
+        final List<FlightRecorder.Event> events = flightRecorder.getEvents();
+
+        assertEquals(2, events.size());
+        assertEquals(FlightRecorder.EventType.NETWORK_UP, events.get(0).getType());
+        assertEquals(FlightRecorder.NO_USER, events.get(0).getUserCode());
+        assertNull(events.get(0).getDetail());
+        assertEquals(FlightRecorder.EventType.USER_ADDED, events.get(1).getType());
+        assertEquals(1234, events.get(1).getUserCode());
+        assertEquals("Niles", events.get(1).getDetail());
+        assertTrue(events.get(0).getTime() <= events.get(1).getTime());
+    }
+
+    @Test
+    public void getEventsShouldOnlyKeepTheLatestEventsWhenFull() {
+        for (int i = 0; i < 6; i++) {
+            flightRecorder.record(FlightRecorder.EventType.PACKET_RECEIVED, "packet " + i);
+        }
+
+        final List<FlightRecorder.Event> events = flightRecorder.getEvents();
+
+        assertEquals(6, flightRecorder.getRecordedEvents());
+        assertEquals(4, events.size());
+        assertEquals("packet 2", events.get(0).getDetail());
+        assertEquals(2, events.get(0).getSequence());
+        assertEquals("packet 5", events.get(3).getDetail());
+        assertEquals(5, events.get(3).getSequence());
+    }
+
+    @Test
+    public void eventToStringShouldIncludeUserAndDetailWhenSet() {
+        flightRecorder.record(FlightRecorder.EventType.NETWORK_DOWN, null);
+        flightRecorder.record(FlightRecorder.EventType.MESSAGE_PARSED, "MSG");
+        flightRecorder.record(FlightRecorder.EventType.USER_TIMED_OUT, 1234, "Niles");
+
+        final List<FlightRecorder.Event> events = flightRecorder.getEvents();
+
+        assertEquals("NETWORK_DOWN", events.get(0).toString());
+        assertEquals("MESSAGE_PARSED MSG", events.get(1).toString());
+        assertEquals("USER_TIMED_OUT user=1234 Niles", events.get(2).toString());
+    }
+
+    @Test
+    public void dumpShouldWriteHeaderAndOneLineForEachEvent() throws IOException {
+        for (int i = 0; i < 5; i++) {
+            flightRecorder.record(FlightRecorder.EventType.TCP_CONNECTED, 1234, "192.168.1.2");
+        }
+
+        final StringWriter writer = new StringWriter();
+
+        assertEquals(4, flightRecorder.dump(writer));
+
+        final String[] lines = writer.toString().split("\n");
+        assertEquals(5, lines.length);
+        assertTrue(lines[0].endsWith(" - 4 of 5 events"));
+        assertTrue(lines[1].matches("\\d{4}-\\d{2}-\\d{2} \\d{2}:\\d{2}:\\d{2}\\.\\d{9} TCP_CONNECTED user=1234 192.168.1.2"));
+    }
+
+    @Test
+    public void dumpToFolderShouldCreateFolderAndSaveEvents() throws IOException {
+        flightRecorder.record(FlightRecorder.EventType.USER_REMOVED, 1234, "Niles");
+        final String folder = temporaryFolder.getRoot().getAbsolutePath() + File.separator + "logs" + File.separator;
+
+        final File file = flightRecorder.dumpToFolder(folder);
+
+        assertTrue(file.exists());
+        assertTrue(file.getName().startsWith("kouchat-events-"));
+        assertEquals(folder, file.getParent() + File.separator);
+
+        final List<String> lines = Files.readAllLines(file.toPath(), Charset.forName("UTF-8"));
+        assertEquals(2, lines.size());
+        assertTrue(lines.get(1).endsWith("USER_REMOVED user=1234 Niles"));
+    }
+
+    @Test
+    public void recordShouldNotLoseEventsFromSeveralThreads() throws InterruptedException {
+        final FlightRecorder recorder = new FlightRecorder(1024);
+        final Thread[] threads = new Thread[4];
+
+        for (int i = 0; i < threads.length; i++) {
+            threads[i] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    for (int j = 0; j < 100; j++) {
+                        recorder.record(FlightRecorder.EventType.PACKET_RECEIVED, null);
+                    }
+                }
+            });
+
+            threads[i].start();
+        }
+
+        for (final Thread thread : threads) {
+            thread.join();
+        }
+
+        assertEquals(400, recorder.getRecordedEvents());
+        assertEquals(400, recorder.getEvents().size());
+    }
+}
@@ -29,7 +29,10 @@ import java.util.List;
 
 import net.usikkert.kouchat.event.UserListListener;
 import net.usikkert.kouchat.junit.ExpectedException;
+import net.usikkert.kouchat.util.HotPathProfiler;
+import net.usikkert.kouchat.util.HotPathProfiler.HotPath;
 
+import org.junit.After;
 import org.junit.Before;
 import org.junit.Rule;
 import org.junit.Test;
@@ -66,6 +69,12 @@ public class SortedUserListTest {
         annie = new User("Annie", 4);
     }
 
+    @After
+    public void tearDown() {
+        HotPathProfiler.stopProfiling();
+        HotPathProfiler.reset();
+    }
+
     @Test
     public void addShouldThrowExceptionIfUserIsNull() {
         expectedException.expect(IllegalArgumentException.class);
@@ -88,6 +97,20 @@ public class SortedUserListTest {
         assertEquals(3, userList.size());
     }
 
+    @Test
+    public void changesShouldBeProfiledWhenProfiling() {
+        HotPathProfiler.reset();
+        HotPathProfiler.startProfiling();
+
+        userList.add(niles);
+        userList.update(niles);
+        userList.set(0, niles);
+        userList.remove(niles);
+        userList.get(0);
+
+        assertEquals(4, HotPathProfiler.getMeasurement(HotPath.USER_LIST_CHANGE).getCount());
+    }
+
     @Test
     public void addShouldSortUsersByName() {
         addAllUsers();
@@ -265,7 +288,103 @@ public class SortedUserListTest {
 
         userList.set(0, test1);
 
-        verify(listener).userChanged(3, test1);
+        verify(listener).userChanged(0, 3, test1);
+    }
+
+    @Test
+    public void setShouldNotMoveUserWhenNickNameIsUnchanged() {
+        addAllUsers();
+
+        lenny.setAway(true);
+        userList.set(2, lenny);
+
+        assertSame(annie, userList.get(0));
+        assertSame(john, userList.get(1));
+        assertSame(lenny, userList.get(2));
+        assertSame(niles, userList.get(3));
+        verify(listener).userChanged(2, 2, lenny);
+    }
+
+    @Test
+    public void setShouldNotMoveUserWhenNewNickNameSortsAtTheSamePosition() {
+        addAllUsers();
+
+        john.setNick("Kenny");
+        userList.set(1, john);
+
+        assertSame(john, userList.get(1));
+        verify(listener).userChanged(1, 1, john);
+    }
+
+    @Test
+    public void setShouldMoveUserToTheEndWhenNickNameSortsLast() {
+        addAllUsers();
+
+        annie.setNick("Zed");
+        userList.set(userList.indexOf(annie), annie);
+
+        assertSame(john, userList.get(0));
+        assertSame(lenny, userList.get(1));
+        assertSame(niles, userList.get(2));
+        assertSame(annie, userList.get(3));
+        verify(listener).userChanged(0, 3, annie);
+    }
+
+    @Test
+    public void setShouldMoveUserToTheStartWhenNickNameSortsFirst() {
+        addAllUsers();
+
+        niles.setNick("Adam");
+        userList.set(userList.indexOf(niles), niles);
+
+        assertSame(niles, userList.get(0));
+        assertSame(annie, userList.get(1));
+        assertSame(john, userList.get(2));
+        assertSame(lenny, userList.get(3));
+        verify(listener).userChanged(3, 0, niles);
+    }
+
+    @Test
+    public void indexOfShouldFindUserWithChangedNickNameBeforeSet() {
+        addAllUsers();
+
+        lenny.setNick("Adam");
+
+        assertEquals(2, userList.indexOf(lenny));
+        assertEquals(0, userList.indexOf(annie));
+        assertEquals(3, userList.indexOf(niles));
+    }
+
+    @Test
+    public void indexOfShouldFindUserWithSameCodeAsUserInList() {
+        addAllUsers();
+
+        assertEquals(1, userList.indexOf(new User("Someone", 2)));
+    }
+
+    @Test
+    public void addShouldPutUserAfterUsersWithTheSameNickName() {
+        addAllUsers();
+        final User john2 = new User("JOHN", 10);
+
+        userList.add(john2);
+
+        assertSame(john, userList.get(1));
+        assertSame(john2, userList.get(2));
+        verify(listener).userAdded(2, john2);
+    }
+
+    @Test
+    public void addShouldKeepListSortedWhenAddingManyUsers() {
+        final String[] nicks = {"Zoe", "bob", "Carl", "alice", "Xena", "dave", "Bob", "eve", "carl", "Ann"};
+
+        for (int i = 0; i < nicks.length; i++) {
+            userList.add(new User(nicks[i], i + 10));
+        }
+
+        for (int i = 1; i < userList.size(); i++) {
+            assertTrue(userList.get(i - 1).compareTo(userList.get(i)) <= 0);
+        }
     }
 
     @Test
@@ -276,6 +395,221 @@ public class SortedUserListTest {
         userList.set(0, new User("Test1", 10));
     }
 
+    @Test
+    public void getUserByCodeShouldReturnNullIfUserDoesNotExist() {
+        addAllUsers();
+
+        assertNull(userList.getUser(10));
+    }
+
+    @Test
+    public void getUserByCodeShouldReturnTheUserWithTheCode() {
+        addAllUsers();
+
+        assertSame(niles, userList.getUser(1));
+        assertSame(john, userList.getUser(2));
+        assertSame(lenny, userList.getUser(3));
+        assertSame(annie, userList.getUser(4));
+    }
+
+    @Test
+    public void getUserByCodeShouldReturnNullAfterUserIsRemoved() {
+        addAllUsers();
+
+        userList.remove(lenny);
+
+        assertNull(userList.getUser(3));
+    }
+
+    @Test
+    public void getUserByCodeShouldReturnTheNewUserAfterSet() {
+        addAllUsers();
+        final User test1 = new User("Test1", 10);
+
+        userList.set(0, test1);
+
+        assertSame(test1, userList.getUser(10));
+        assertNull(userList.getUser(4));
+    }
+
+    @Test
+    public void getUsersShouldThrowExceptionIfNickNameIsNull() {
+        expectedException.expect(IllegalArgumentException.class);
+        expectedException.expectMessage("Nick name can not be null");
+
+        userList.getUsers(null);
+    }
+
+    @Test
+    public void getUsersShouldReturnEmptyListIfNoUsersHaveTheNickName() {
+        addAllUsers();
+
+        assertTrue(userList.getUsers("Test1").isEmpty());
+    }
+
+    @Test
+    public void getUsersShouldIgnoreCase() {
+        addAllUsers();
+
+        final List<User> users = userList.getUsers("nILES");
+
+        assertEquals(1, users.size());
+        assertSame(niles, users.get(0));
+    }
+
+    @Test
+    public void getUsersShouldReturnAllUsersWithTheSameNickName() {
+        addAllUsers();
+        final User niles2 = new User("niles", 10);
+        userList.add(niles2);
+
+        final List<User> users = userList.getUsers("Niles");
+
+        assertEquals(2, users.size());
+        assertTrue(users.contains(niles));
+        assertTrue(users.contains(niles2));
+    }
+
+    @Test
+    public void getUsersShouldFindUserByNewNickNameAfterSet() {
+        addAllUsers();
+
+        john.setNick("Johnny");
+        userList.set(userList.indexOf(john), john);
+
+        assertTrue(userList.getUsers("John").isEmpty());
+        assertSame(john, userList.getUsers("Johnny").get(0));
+    }
+
+    @Test
+    public void getUsersShouldReturnEmptyListAfterUserIsRemoved() {
+        addAllUsers();
+
+        userList.remove(annie);
+
+        assertTrue(userList.getUsers("Annie").isEmpty());
+    }
+
+    @Test
+    public void getUsersShouldReturnImmutableList() {
+        expectedException.expect(UnsupportedOperationException.class); // No message
+
+        addAllUsers();
+
+        userList.getUsers("Annie").add(john);
+    }
+
+    @Test
+    public void updateShouldThrowExceptionIfUserIsNull() {
+        expectedException.expect(IllegalArgumentException.class);
+        expectedException.expectMessage("User can not be null");
+
+        userList.update(null);
+    }
+
+    @Test
+    public void updateShouldReturnFalseIfUserDoesNotExist() {
+        addAllUsers();
+
+        assertFalse(userList.update(new User("Test1", 10)));
+        verify(listener, never()).userChanged(anyInt(), anyInt(), any(User.class));
+    }
+
+    @Test
+    public void updateShouldMoveUserWithChangedNickNameAndNotifyListeners() {
+        addAllUsers();
+
+        john.setNick("Olivia");
+
+        assertTrue(userList.update(john));
+
+        assertSame(annie, userList.get(0));
+        assertSame(lenny, userList.get(1));
+        assertSame(niles, userList.get(2));
+        assertSame(john, userList.get(3));
+        verify(listener).userChanged(1, 3, john);
+    }
+
+    @Test
+    public void getUsersShouldReturnTheUsersInSortedOrder() {
+        addAllUsers();
+
+        final List<User> users = userList.getUsers();
+
+        assertEquals(4, users.size());
+        assertSame(annie, users.get(0));
+        assertSame(john, users.get(1));
+        assertSame(lenny, users.get(2));
+        assertSame(niles, users.get(3));
+    }
+
+    @Test
+    public void getUsersShouldReturnSnapshotThatDoesNotChangeWithTheList() {
+        addAllUsers();
+
+        final List<User> users = userList.getUsers();
+        userList.remove(john);
+        userList.add(new User("Test1", 10));
+
+        assertEquals(4, users.size());
+        assertSame(john, users.get(1));
+    }
+
+    @Test
+    public void getUsersShouldReturnImmutableSnapshot() {
+        expectedException.expect(UnsupportedOperationException.class); // No message
+
+        userList.getUsers().add(john);
+    }
+
+    @Test
+    public void listShouldStaySortedAndIndexedWhenChangedFromSeveralThreads() throws InterruptedException {
+        final int threadCount = 4;
+        final int usersPerThread = 250;
+        final Thread[] threads = new Thread[threadCount];
+
+        for (int t = 0; t < threadCount; t++) {
+            final int firstCode = t * usersPerThread;
+
+            threads[t] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    for (int code = firstCode; code < firstCode + usersPerThread; code++) {
+                        final User user = new User("User" + (code * 7919 % 1000), code);
+                        userList.add(user);
+
+                        user.setNick("Changed" + code);
+                        userList.update(user);
+
+                        if (code % 2 == 0) {
+                            userList.remove(user);
+                        }
+                    }
+                }
+            });
+
+            threads[t].start();
+        }
+
+        for (final Thread thread : threads) {
+            thread.join();
+        }
+
+        assertEquals(threadCount * usersPerThread / 2, userList.size());
+
+        final List<User> users = userList.getUsers();
+
+        for (int i = 1; i < users.size(); i++) {
+            assertTrue(users.get(i - 1).compareTo(users.get(i)) <= 0);
+        }
+
+        for (final User user : users) {
+            assertEquals(1, user.getCode() % 2);
+            assertSame(user, userList.getUser(user.getCode()));
+            assertSame(user, userList.getUsers(user.getNick()).get(0));
+        }
+    }
+
     @Test
     public void getListenersShouldReturnImmutableList() {
         expectedException.expect(UnsupportedOperationException.class); // No message
@@ -0,0 +1,122 @@
+
+/***************************************************************************
+ *   Copyright 2006-2018 by Christian Ihle                                 *
+ *   contact@kouchat.net                                                   *
+ *                                                                         *
+ *   This file is part of KouChat.                                         *
+ *                                                                         *
+ *   KouChat is free software; you can redistribute it and/or modify       *
+ *   it under the terms of the GNU Lesser General Public License as        *
+ *   published by the Free Software Foundation, either version 3 of        *
+ *   the License, or (at your option) any later version.                   *
+ *                                                                         *
+ *   KouChat is distributed in the hope that it will be useful,            *
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of        *
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU      *
+ *   Lesser General Public License for more details.                       *
+ *                                                                         *
+ *   You should have received a copy of the GNU Lesser General Public      *
+ *   License along with KouChat.                                           *
+ *   If not, see <http://www.gnu.org/licenses/>.                           *
+ ***************************************************************************/
+
+package net.usikkert.kouchat.misc;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+
+import net.usikkert.kouchat.net.NetworkCapabilities;
+import net.usikkert.kouchat.settings.Settings;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Test of {@link UserListController}.
+ *
+ * @author Christian Ihle
+ */
+@SuppressWarnings("HardCodedStringLiteral")
+public class UserListControllerTest {
+
+    private UserListController userListController;
+    private User me;
+
+    @Before
+    public void setUp() {
+        me = new User("Christian", 100);
+        me.setMe(true);
+
+        final Settings settings = mock(Settings.class);
+        when(settings.getMe()).thenReturn(me);
+
+        userListController = new UserListController(settings);
+    }
+
+    @Test
+    public void capabilitiesShouldAllBeSupportedWhenThereAreNoOtherUsers() {
+        assertEquals(~0, userListController.getCapabilitiesSupportedByAllUsers());
+        assertTrue(userListController.isCapabilitySupportedByAllUsers(NetworkCapabilities.BINARY_MESSAGES));
+    }
+
+    @Test
+    public void capabilitiesOfMeShouldNotCount() {
+        userListController.changeCapabilities(100, NetworkCapabilities.BINARY_MESSAGES);
+
+        assertEquals(~0, userListController.getCapabilitiesSupportedByAllUsers());
+    }
+
+    @Test
+    public void capabilitiesShouldOnlyIncludeWhatAllTheOtherUsersSupport() {
+        final int nilesCapabilities = NetworkCapabilities.BINARY_MESSAGES | NetworkCapabilities.MULTI_MESSAGES;
+        final int pennyCapabilities = NetworkCapabilities.MULTI_MESSAGES | NetworkCapabilities.SEQUENCED_MESSAGES;
+        userListController.getUserList().add(createUser("Niles", 200, nilesCapabilities));
+        userListController.getUserList().add(createUser("Penny", 300, pennyCapabilities));
+
+        assertEquals(NetworkCapabilities.MULTI_MESSAGES, userListController.getCapabilitiesSupportedByAllUsers());
+        assertTrue(userListController.isCapabilitySupportedByAllUsers(NetworkCapabilities.MULTI_MESSAGES));
+        assertFalse(userListController.isCapabilitySupportedByAllUsers(NetworkCapabilities.BINARY_MESSAGES));
+        assertFalse(userListController.isCapabilitySupportedByAllUsers(NetworkCapabilities.SEQUENCED_MESSAGES));
+    }
+
+    @Test
+    public void capabilitiesShouldBeUpdatedWhenUserIsRemoved() {
+        final User niles = createUser("Niles", 200, NetworkCapabilities.BINARY_MESSAGES);
+        userListController.getUserList().add(niles);
+        userListController.getUserList().add(createUser("Penny", 300, 0));
+        assertFalse(userListController.isCapabilitySupportedByAllUsers(NetworkCapabilities.BINARY_MESSAGES));
+
+        userListController.getUserList().remove(userListController.getUser(300));
+
+        assertTrue(userListController.isCapabilitySupportedByAllUsers(NetworkCapabilities.BINARY_MESSAGES));
+
+        userListController.getUserList().remove(niles);
+
+        assertEquals(~0, userListController.getCapabilitiesSupportedByAllUsers());
+    }
+
+    @Test
+    public void capabilitiesShouldBeUpdatedWhenTheCapabilitiesOfUserChange() {
+        userListController.getUserList().add(createUser("Niles", 200, 0));
+        assertFalse(userListController.isCapabilitySupportedByAllUsers(NetworkCapabilities.COMPRESSED_MESSAGES));
+
+        userListController.changeCapabilities(200, NetworkCapabilities.COMPRESSED_MESSAGES);
+
+        assertEquals(NetworkCapabilities.COMPRESSED_MESSAGES, userListController.getUser(200).getCapabilities());
+        assertTrue(userListController.isCapabilitySupportedByAllUsers(NetworkCapabilities.COMPRESSED_MESSAGES));
+    }
+
+    @Test
+    public void changeCapabilitiesShouldDoNothingOnUnknownUser() {
+        userListController.changeCapabilities(200, 0);
+
+        assertEquals(~0, userListController.getCapabilitiesSupportedByAllUsers());
+    }
+
+    private User createUser(final String nick, final int code, final int capabilities) {
+        final User user = new User(nick, code);
+        user.setCapabilities(capabilities);
+
+        return user;
+    }
+}
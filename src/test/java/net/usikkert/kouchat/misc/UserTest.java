@@ -63,4 +63,17 @@ public class UserTest {
         assertFalse(test1.equals(null));
         assertFalse(test1.equals("No user"));
     }
+
+    @Test
+    public void hasCapabilityShouldCheckTheCapabilityBits() {
+        final User test1 = new User("Test1", 123);
+        assertFalse(test1.hasCapability(1));
+
+        test1.setCapabilities(5);
+
+        assertTrue(test1.hasCapability(1));
+        assertTrue(test1.hasCapability(4));
+        assertFalse(test1.hasCapability(2));
+        assertFalse(test1.hasCapability(3));
+    }
 }
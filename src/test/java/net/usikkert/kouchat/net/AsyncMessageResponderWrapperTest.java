@@ -25,18 +25,22 @@ package net.usikkert.kouchat.net;
 import static org.mockito.Mockito.*;
 
 import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
 
 import net.usikkert.kouchat.junit.ExpectedException;
 import net.usikkert.kouchat.misc.Controller;
+import net.usikkert.kouchat.misc.MessageController;
+import net.usikkert.kouchat.misc.ThreadPools;
 import net.usikkert.kouchat.misc.User;
 import net.usikkert.kouchat.misc.WaitingList;
-import net.usikkert.kouchat.util.Sleeper;
+import net.usikkert.kouchat.ui.UserInterface;
 import net.usikkert.kouchat.util.TestUtils;
 
 import org.junit.Before;
 import org.junit.Rule;
 import org.junit.Test;
 import org.mockito.ArgumentCaptor;
+import org.mockito.InOrder;
 
 /**
  * Test of {@link AsyncMessageResponderWrapper}.
@@ -53,9 +57,13 @@ public class AsyncMessageResponderWrapperTest {
 
     private MessageResponder messageResponder;
     private Controller controller;
-    private ExecutorService executorService;
-    private Sleeper sleeper;
+    private ExecutorService fileOfferExecutor;
+    private ExecutorService fileTransferExecutor;
+    private PendingMessageQueue pendingMessages;
     private WaitingList waitingList;
+    private UserInterface ui;
+    private MessageController messageController;
+    private TransferList transferList;
 
     @Before
     public void setUp() {
@@ -63,11 +71,18 @@ public class AsyncMessageResponderWrapperTest {
         controller = mock(Controller.class);
         waitingList = mock(WaitingList.class);
         when(controller.getWaitingList()).thenReturn(waitingList);
+        when(controller.getThreadPools()).thenReturn(new ThreadPools());
+        transferList = mock(TransferList.class);
+        when(controller.getTransferList()).thenReturn(transferList);
+        ui = mock(UserInterface.class);
+        messageController = mock(MessageController.class);
+        when(ui.getMessageController()).thenReturn(messageController);
 
-        wrapper = spy(new AsyncMessageResponderWrapper(messageResponder, controller));
+        wrapper = spy(new AsyncMessageResponderWrapper(messageResponder, controller, ui));
 
-        executorService = TestUtils.setFieldValueWithMock(wrapper, "executorService", ExecutorService.class);
-        sleeper = TestUtils.setFieldValueWithMock(wrapper, "sleeper", Sleeper.class);
+        fileOfferExecutor = TestUtils.setFieldValueWithMock(wrapper, "fileOfferExecutor", ExecutorService.class);
+        fileTransferExecutor = TestUtils.setFieldValueWithMock(wrapper, "fileTransferExecutor", ExecutorService.class);
+        pendingMessages = TestUtils.setFieldValueWithMock(wrapper, "pendingMessages", PendingMessageQueue.class);
     }
 
     @Test
@@ -75,7 +90,7 @@ public class AsyncMessageResponderWrapperTest {
         expectedException.expect(IllegalArgumentException.class);
         expectedException.expectMessage("MessageResponder can not be null");
 
-        new AsyncMessageResponderWrapper(null, controller);
+        new AsyncMessageResponderWrapper(null, controller, ui);
     }
 
     @Test
@@ -83,7 +98,15 @@ public class AsyncMessageResponderWrapperTest {
         expectedException.expect(IllegalArgumentException.class);
         expectedException.expectMessage("Controller can not be null");
 
-        new AsyncMessageResponderWrapper(messageResponder, null);
+        new AsyncMessageResponderWrapper(messageResponder, null, ui);
+    }
+
+    @Test
+    public void constructorShouldThrowExceptionIfUserInterfaceIsNull() {
+        expectedException.expect(IllegalArgumentException.class);
+        expectedException.expectMessage("UserInterface can not be null");
+
+        new AsyncMessageResponderWrapper(messageResponder, controller, null);
     }
 
     @Test
@@ -93,9 +116,8 @@ public class AsyncMessageResponderWrapperTest {
         wrapper.messageArrived(100, "msg", 200);
 
         verify(messageResponder).messageArrived(100, "msg", 200);
-        verifyZeroInteractions(executorService);
+        verifyZeroInteractions(fileOfferExecutor, pendingMessages);
         verify(wrapper, never()).askUserToIdentify(anyInt());
-        verify(wrapper, never()).waitForUserToIdentify(anyInt());
     }
 
     @Test
@@ -108,20 +130,18 @@ public class AsyncMessageResponderWrapperTest {
     }
 
     @Test
-    public void messageArrivedShouldWaitForUserToIdentifyAndPassThroughUsingExecutorIfNewUser() {
+    public void messageArrivedShouldAddToPendingMessagesAndPassThroughWhenHandledIfNewUser() {
         when(controller.isNewUser(100)).thenReturn(true);
 
         wrapper.messageArrived(100, "msg", 200);
 
         final ArgumentCaptor<Runnable> runnableCaptor = ArgumentCaptor.forClass(Runnable.class);
 
-        verifyZeroInteractions(messageResponder);
-        verify(wrapper, never()).waitForUserToIdentify(anyInt());
+        verifyZeroInteractions(messageResponder, fileOfferExecutor);
 
-        verify(executorService).execute(runnableCaptor.capture());
+        verify(pendingMessages).add(eq(100), runnableCaptor.capture());
         runnableCaptor.getValue().run();
 
-        verify(wrapper).waitForUserToIdentify(100);
         verify(messageResponder).messageArrived(100, "msg", 200);
     }
 
@@ -215,6 +235,17 @@ public class AsyncMessageResponderWrapperTest {
         verify(messageResponder).userLogOn(user);
     }
 
+    @Test
+    public void userLogOnShouldFlushPendingMessagesAfterPassingThrough() {
+        final User user = new User("User", 123);
+
+        wrapper.userLogOn(user);
+
+        final InOrder inOrder = inOrder(messageResponder, pendingMessages);
+        inOrder.verify(messageResponder).userLogOn(user);
+        inOrder.verify(pendingMessages).flush(123);
+    }
+
     @Test
     public void userLogOffShouldPassThrough() {
         wrapper.userLogOff(100);
@@ -231,6 +262,17 @@ public class AsyncMessageResponderWrapperTest {
         verify(messageResponder).userExposing(user);
     }
 
+    @Test
+    public void userExposingShouldFlushPendingMessagesAfterPassingThrough() {
+        final User user = new User("User", 123);
+
+        wrapper.userExposing(user);
+
+        final InOrder inOrder = inOrder(messageResponder, pendingMessages);
+        inOrder.verify(messageResponder).userExposing(user);
+        inOrder.verify(pendingMessages).flush(123);
+    }
+
     @Test
     public void exposeRequestedShouldPassThrough() {
         wrapper.exposeRequested();
@@ -291,21 +333,58 @@ public class AsyncMessageResponderWrapperTest {
     }
 
     @Test
-    public void fileSendShouldWaitForUserToIdentifyAndPassThroughUsingExecutor() {
+    public void fileSendShouldPassThroughUsingExecutorIfExistingUser() {
+        when(controller.isNewUser(100)).thenReturn(false);
+
         wrapper.fileSend(100, 3000, "fileName", "user", 98765);
 
         final ArgumentCaptor<Runnable> runnableCaptor = ArgumentCaptor.forClass(Runnable.class);
 
-        verifyZeroInteractions(messageResponder);
-        verify(wrapper, never()).waitForUserToIdentify(anyInt());
+        verifyZeroInteractions(messageResponder, pendingMessages);
 
-        verify(executorService).execute(runnableCaptor.capture());
+        verify(fileOfferExecutor).execute(runnableCaptor.capture());
         runnableCaptor.getValue().run();
 
-        verify(wrapper).waitForUserToIdentify(100);
         verify(messageResponder).fileSend(100, 3000, "fileName", "user", 98765);
     }
 
+    @Test
+    public void fileSendShouldAddToPendingMessagesAndPassThroughUsingExecutorWhenHandledIfNewUser() {
+        when(controller.isNewUser(100)).thenReturn(true);
+
+        wrapper.fileSend(100, 3000, "fileName", "user", 98765);
+
+        final ArgumentCaptor<Runnable> pendingCaptor = ArgumentCaptor.forClass(Runnable.class);
+        final ArgumentCaptor<Runnable> executorCaptor = ArgumentCaptor.forClass(Runnable.class);
+
+        verifyZeroInteractions(messageResponder, fileOfferExecutor);
+
+        verify(pendingMessages).add(eq(100), pendingCaptor.capture());
+        pendingCaptor.getValue().run();
+
+        verifyZeroInteractions(messageResponder);
+
+        verify(fileOfferExecutor).execute(executorCaptor.capture());
+        executorCaptor.getValue().run();
+
+        verify(messageResponder).fileSend(100, 3000, "fileName", "user", 98765);
+    }
+
+    @Test
+    public void fileSendShouldDeclineAndNotifyUserIfRejected() {
+        final User user = new User("Niles", 100);
+        when(controller.isNewUser(100)).thenReturn(false);
+        when(controller.getUser(100)).thenReturn(user);
+        doThrow(new RejectedExecutionException("Pool is full")).when(fileOfferExecutor).execute(any(Runnable.class));
+
+        wrapper.fileSend(100, 3000, "fileName", "user", 98765);
+
+        verifyZeroInteractions(messageResponder, fileTransferExecutor);
+        verify(controller).sendFileAbort(user, 98765, "fileName");
+        verify(messageController).showSystemMessage(
+                "Niles is trying to send the file fileName, but too many files are waiting already. Declined.");
+    }
+
     @Test
     public void fileSendAbortedShouldPassThrough() {
         wrapper.fileSendAborted(100, "fileName", 98765);
@@ -319,21 +398,39 @@ public class AsyncMessageResponderWrapperTest {
 
         final ArgumentCaptor<Runnable> runnableCaptor = ArgumentCaptor.forClass(Runnable.class);
 
-        verifyZeroInteractions(messageResponder);
+        verifyZeroInteractions(messageResponder, fileOfferExecutor);
 
-        verify(executorService).execute(runnableCaptor.capture());
+        verify(fileTransferExecutor).execute(runnableCaptor.capture());
         runnableCaptor.getValue().run();
 
         verify(messageResponder).fileSendAccepted(100, "fileName", 98765, 1050);
     }
 
+    @Test
+    public void fileSendAcceptedShouldAbortTransferAndNotifyUserIfRejected() {
+        final User user = new User("Niles", 100);
+        final FileSender fileSender = mock(FileSender.class);
+        when(controller.getUser(100)).thenReturn(user);
+        when(transferList.getFileSender(user, "fileName", 98765)).thenReturn(fileSender);
+        doThrow(new RejectedExecutionException("Pool is full")).when(fileTransferExecutor).execute(any(Runnable.class));
+
+        wrapper.fileSendAccepted(100, "fileName", 98765, 1050);
+
+        verifyZeroInteractions(messageResponder);
+        verify(fileSender).cancel();
+        verify(transferList).removeFileSender(fileSender);
+        verify(controller).sendFileAbort(user, 98765, "fileName");
+        verify(messageController).showSystemMessage(
+                "Failed to send fileName to Niles, because too many files are being sent already");
+    }
+
     @Test
     public void clientInfoShouldPassThrough() {
         wrapper.clientInfo(100, "client", 70000, "os",
-                           4500, 6000);
+                           4500, 6000, 1);
 
         verify(messageResponder).clientInfo(100, "client", 70000, "os",
-                                            4500, 6000);
+                                            4500, 6000, 1);
     }
 
     @Test
@@ -344,34 +441,4 @@ public class AsyncMessageResponderWrapperTest {
         verify(controller).sendExposeMessage();
         verify(controller).sendGetTopicMessage();
     }
-
-    @Test
-    public void waitForUserToIdentifyShouldAbortAfter40SleepsIfUserNeverIdentifies() {
-        when(waitingList.isWaitingUser(100)).thenReturn(true);
-
-        wrapper.waitForUserToIdentify(100);
-
-        verify(sleeper, times(40)).sleep(50);
-        verify(waitingList, times(41)).isWaitingUser(100);
-    }
-
-    @Test
-    public void waitForUserToIdentifyShouldAbortWhenUserHasIdentified() {
-        when(waitingList.isWaitingUser(100)).thenReturn(true, true, true, false);
-
-        wrapper.waitForUserToIdentify(100);
-
-        verify(sleeper, times(3)).sleep(50);
-        verify(waitingList, times(4)).isWaitingUser(100);
-    }
-
-    @Test
-    public void waitForUserToIdentifyShouldNeverSleepIfUserIsIdentified() {
-        when(waitingList.isWaitingUser(100)).thenReturn(false);
-
-        wrapper.waitForUserToIdentify(100);
-
-        verifyZeroInteractions(sleeper);
-        verify(waitingList).isWaitingUser(100);
-    }
 }
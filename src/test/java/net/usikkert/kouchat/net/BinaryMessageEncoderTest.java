@@ -0,0 +1,139 @@
+
+/***************************************************************************
+ *   Copyright 2006-2018 by Christian Ihle                                 *
+ *   contact@kouchat.net                                                   *
+ *                                                                         *
+ *   This file is part of KouChat.                                         *
+ *                                                                         *
+ *   KouChat is free software; you can redistribute it and/or modify       *
+ *   it under the terms of the GNU Lesser General Public License as        *
+ *   published by the Free Software Foundation, either version 3 of        *
+ *   the License, or (at your option) any later version.                   *
+ *                                                                         *
+ *   KouChat is distributed in the hope that it will be useful,            *
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of        *
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU      *
+ *   Lesser General Public License for more details.                       *
+ *                                                                         *
+ *   You should have received a copy of the GNU Lesser General Public      *
+ *   License along with KouChat.                                           *
+ *   If not, see <http://www.gnu.org/licenses/>.                           *
+ ***************************************************************************/
+
+package net.usikkert.kouchat.net;
+
+import static org.junit.Assert.*;
+
+import java.nio.ByteBuffer;
+
+import net.usikkert.kouchat.junit.ExpectedException;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+
+/**
+ * Test of {@link BinaryMessageEncoder}.
+ *
+ * @author Christian Ihle
+ */
+@SuppressWarnings("HardCodedStringLiteral")
+public class BinaryMessageEncoderTest {
+
+    @Rule
+    public ExpectedException expectedException = ExpectedException.none();
+
+    private BinaryMessageEncoder encoder;
+    private BinaryMessageReader reader;
+
+    @Before
+    public void setUp() {
+        encoder = new BinaryMessageEncoder();
+        reader = new BinaryMessageReader();
+    }
+
+    @Test
+    public void encodeShouldWriteTypeUserCodeAndFields() {
+        final ByteBuffer message = encode("16320462!MSG#Christian:[-15987646]Hello there!");
+
+        assertEquals(BinaryMessageFormat.BINARY_MESSAGE, message.get(0));
+        assertEquals(BinaryMessageFormat.MSG, reader.readType(message));
+        assertEquals(16320462, reader.readVarInt(message));
+        assertEquals(-15987646, reader.readSignedVarInt(message));
+        assertEquals("Hello there!", reader.readString(message));
+        assertFalse(message.hasRemaining());
+    }
+
+    @Test
+    public void encodeShouldCreateSmallerMessageThanText() {
+        final String text = "16320462!MSG#Christian:[-15987646]Hello there!";
+
+        // Marker, type, 4 bytes user code, 4 bytes color, length and the 12 bytes of the message
+        assertEquals(46, text.length());
+        assertEquals(23, encode(text).remaining());
+    }
+
+    @Test
+    public void encodeShouldSupportUnicode() {
+        final ByteBuffer message = encode("16320462!AWAY#Christian:Gått på lunsj ☺");
+
+        assertEquals(BinaryMessageFormat.AWAY, reader.readType(message));
+        assertEquals(16320462, reader.readVarInt(message));
+        assertEquals("Gått på lunsj ☺", reader.readString(message));
+    }
+
+    @Test
+    public void encodeShouldSupportLargeAndNegativeNumbers() {
+        final ByteBuffer message = encode("16320462!SENDFILE#Christian:(1234)[9223372036854775807]{-2147483648}file");
+
+        assertEquals(BinaryMessageFormat.SENDFILE, reader.readType(message));
+        assertEquals(16320462, reader.readVarInt(message));
+        assertEquals(1234, reader.readVarInt(message));
+        assertEquals(Long.MAX_VALUE, reader.readVarLong(message));
+        assertEquals(Integer.MIN_VALUE, reader.readSignedVarInt(message));
+        assertEquals("file", reader.readString(message));
+        assertEquals("Christian", reader.readString(message));
+    }
+
+    @Test
+    public void encodeShouldReturnNullForMessagesThatMustBeSentAsText() {
+        assertNull(encoder.encode("16320462!LOGON#Christian:"));
+        assertNull(encoder.encode("16320462!LOGOFF#Christian:"));
+        assertNull(encoder.encode("16320462!EXPOSE#Christian:"));
+        assertNull(encoder.encode("16320462!EXPOSING#Christian:"));
+        assertNull(encoder.encode("16320462!NICKCRASH#Christian:Harry"));
+        assertNull(encoder.encode("16320462!CLIENT#Christian:(KouChat)[1753]{Linux}<40656>/40657\\|1|"));
+        assertNull(encoder.encode("16320462!PRIVMSG#Christian:(1234)[-15987646]Hello"));
+    }
+
+    @Test
+    public void encodeShouldReturnNullForInvalidMessages() {
+        assertNull(encoder.encode("Error"));
+        assertNull(encoder.encode("a16320462!MSG#Christian:[-15987646]Hello"));
+        assertNull(encoder.encode("16320462!MSG#Christian:[color]Hello"));
+        assertNull(encoder.encode("16320462!TOPIC#Christian:The topic"));
+    }
+
+    @Test
+    public void peekUserCodeShouldNotMoveThePosition() {
+        final ByteBuffer message = encode("16320462!IDLE#Christian:");
+
+        assertEquals(16320462, reader.peekUserCode(message));
+        assertEquals(0, message.position());
+    }
+
+    @Test
+    public void readTypeShouldThrowExceptionIfNotBinaryMessage() {
+        expectedException.expect(IllegalArgumentException.class);
+        expectedException.expectMessage("Not a binary message");
+
+        reader.readType(ByteBuffer.wrap("16320462!IDLE#Christian:".getBytes()));
+    }
+
+    private ByteBuffer encode(final String message) {
+        final byte[] binaryMessage = encoder.encode(message);
+        assertNotNull(binaryMessage);
+
+        return ByteBuffer.wrap(binaryMessage);
+    }
+}
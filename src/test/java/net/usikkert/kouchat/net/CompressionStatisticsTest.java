@@ -0,0 +1,92 @@
+
+/***************************************************************************
+ *   Copyright 2006-2018 by Christian Ihle                                 *
+ *   contact@kouchat.net                                                   *
+ *                                                                         *
+ *   This file is part of KouChat.                                         *
+ *                                                                         *
+ *   KouChat is free software; you can redistribute it and/or modify       *
+ *   it under the terms of the GNU Lesser General Public License as        *
+ *   published by the Free Software Foundation, either version 3 of        *
+ *   the License, or (at your option) any later version.                   *
+ *                                                                         *
+ *   KouChat is distributed in the hope that it will be useful,            *
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of        *
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU      *
+ *   Lesser General Public License for more details.                       *
+ *                                                                         *
+ *   You should have received a copy of the GNU Lesser General Public      *
+ *   License along with KouChat.                                           *
+ *   If not, see <http://www.gnu.org/licenses/>.                           *
+ ***************************************************************************/
+
+package net.usikkert.kouchat.net;
+
+import static org.junit.Assert.*;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Test of {@link CompressionStatistics}.
+ *
+ * @author Christian Ihle
+ */
+public class CompressionStatisticsTest {
+
+    private CompressionStatistics statistics;
+
+    @Before
+    public void setUp() {
+        statistics = new CompressionStatistics();
+    }
+
+    @Test
+    public void allCountersShouldBeZeroAtStart() {
+        assertEquals(0, statistics.getCompressedMessages());
+        assertEquals(0, statistics.getSkippedMessages());
+        assertEquals(0, statistics.getBytesBeforeCompression());
+        assertEquals(0, statistics.getBytesAfterCompression());
+        assertEquals(0, statistics.getCompressionTimeMillis());
+        assertEquals(0, statistics.getDecompressedMessages());
+        assertEquals(0, statistics.getDecompressionTimeMillis());
+    }
+
+    @Test
+    public void getCompressionRatioShouldReturnOneWhenNothingIsCompressed() {
+        assertEquals(1.0, statistics.getCompressionRatio(), 0.0);
+    }
+
+    @Test
+    public void recordCompressionShouldAddToCounters() {
+        statistics.recordCompression(400, 100, TimeUnit.MILLISECONDS.toNanos(2));
+        statistics.recordCompression(600, 400, TimeUnit.MILLISECONDS.toNanos(3));
+
+        assertEquals(2, statistics.getCompressedMessages());
+        assertEquals(1000, statistics.getBytesBeforeCompression());
+        assertEquals(500, statistics.getBytesAfterCompression());
+        assertEquals(0.5, statistics.getCompressionRatio(), 0.0);
+        assertEquals(5, statistics.getCompressionTimeMillis());
+    }
+
+    @Test
+    public void recordSkippedCompressionShouldOnlyAddToSkippedMessagesAndTime() {
+        statistics.recordSkippedCompression(TimeUnit.MILLISECONDS.toNanos(4));
+
+        assertEquals(1, statistics.getSkippedMessages());
+        assertEquals(0, statistics.getCompressedMessages());
+        assertEquals(0, statistics.getBytesBeforeCompression());
+        assertEquals(4, statistics.getCompressionTimeMillis());
+    }
+
+    @Test
+    public void recordDecompressionShouldAddToCounters() {
+        statistics.recordDecompression(TimeUnit.MILLISECONDS.toNanos(1));
+        statistics.recordDecompression(TimeUnit.MILLISECONDS.toNanos(2));
+
+        assertEquals(2, statistics.getDecompressedMessages());
+        assertEquals(3, statistics.getDecompressionTimeMillis());
+    }
+}
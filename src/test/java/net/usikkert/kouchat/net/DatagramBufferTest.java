@@ -0,0 +1,134 @@
+
+/***************************************************************************
+ *   Copyright 2006-2018 by Christian Ihle                                 *
+ *   contact@kouchat.net                                                   *
+ *                                                                         *
+ *   This file is part of KouChat.                                         *
+ *                                                                         *
+ *   KouChat is free software; you can redistribute it and/or modify       *
+ *   it under the terms of the GNU Lesser General Public License as        *
+ *   published by the Free Software Foundation, either version 3 of        *
+ *   the License, or (at your option) any later version.                   *
+ *                                                                         *
+ *   KouChat is distributed in the hope that it will be useful,            *
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of        *
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU      *
+ *   Lesser General Public License for more details.                       *
+ *                                                                         *
+ *   You should have received a copy of the GNU Lesser General Public      *
+ *   License along with KouChat.                                           *
+ *   If not, see <http://www.gnu.org/licenses/>.                           *
+ ***************************************************************************/
+
+package net.usikkert.kouchat.net;
+
+import static org.junit.Assert.*;
+
+import java.net.DatagramPacket;
+import java.net.InetAddress;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Test of {@link DatagramBuffer}.
+ *
+ * @author Christian Ihle
+ */
+@SuppressWarnings("HardCodedStringLiteral")
+public class DatagramBufferTest {
+
+    private DatagramBuffer buffer;
+
+    @Before
+    public void setUp() {
+        buffer = new DatagramBuffer();
+    }
+
+    @Test
+    public void getPacketShouldReturnTheSamePacketEveryTime() {
+        assertSame(buffer.getPacket(), buffer.getPacket());
+    }
+
+    @Test
+    public void getPacketShouldResetLengthToFullSize() {
+        receive("a short message", "192.168.1.1");
+
+        final DatagramPacket packet = buffer.getPacket();
+        assertEquals(512, packet.getLength());
+        assertEquals(0, packet.getOffset());
+    }
+
+    @Test
+    public void getMessageShouldOnlyDecodeTheReceivedBytes() {
+        receive("12345!MSG#Christian:[-15987646]a longer message than the next one", "192.168.1.1");
+        assertEquals("12345!MSG#Christian:[-15987646]a longer message than the next one", buffer.getMessage());
+
+        receive("12345!IDLE#Christian:", "192.168.1.1");
+        assertEquals("12345!IDLE#Christian:", buffer.getMessage());
+    }
+
+    @Test
+    public void getMessageShouldTrimWhitespace() {
+        receive("  12345!AWAY#Christian:lunch \n\t", "192.168.1.1");
+
+        assertEquals("12345!AWAY#Christian:lunch", buffer.getMessage());
+    }
+
+    @Test
+    public void getMessageShouldReturnEmptyStringForEmptyPacket() {
+        receive("", "192.168.1.1");
+
+        assertEquals("", buffer.getMessage());
+    }
+
+    @Test
+    public void getMessageShouldDecodeMultiByteCharacters() {
+        receive("12345!MSG#Christian:[-15987646]blåbærsyltetøy ☺", "192.168.1.1");
+
+        assertEquals("12345!MSG#Christian:[-15987646]blåbærsyltetøy ☺", buffer.getMessage());
+    }
+
+    @Test
+    public void getMessageShouldReplaceMalformedInput() {
+        final DatagramPacket packet = buffer.getPacket();
+        packet.getData()[0] = 'a';
+        packet.getData()[1] = (byte) 0xC3; // First half of a two byte character
+        packet.setLength(2);
+
+        assertEquals("a�", buffer.getMessage());
+    }
+
+    @Test
+    public void getIPAddressShouldReturnAddressOfLastPacket() {
+        receive("message", "192.168.1.1");
+        assertEquals("192.168.1.1", buffer.getIPAddress());
+
+        receive("message", "192.168.1.2");
+        assertEquals("192.168.1.2", buffer.getIPAddress());
+    }
+
+    @Test
+    public void getIPAddressShouldReuseTheStringForTheSameSender() {
+        receive("message", "192.168.1.1");
+        final String firstIPAddress = buffer.getIPAddress();
+
+        receive("message", "192.168.1.1");
+        assertSame(firstIPAddress, buffer.getIPAddress());
+    }
+
+    private void receive(final String message, final String ipAddress) {
+        try {
+            final byte[] bytes = message.getBytes("UTF-8");
+            final DatagramPacket packet = buffer.getPacket();
+
+            System.arraycopy(bytes, 0, packet.getData(), 0, bytes.length);
+            packet.setLength(bytes.length);
+            packet.setAddress(InetAddress.getByName(ipAddress));
+        }
+
+        catch (final Exception e) {
+            throw new RuntimeException(e);
+        }
+    }
+}
@@ -361,7 +361,7 @@ public class DefaultMessageResponderTest {
         setUpExistingUser();
 
         responder.clientInfo(100, "swing", 150, "linux",
-                             4000, 5000);
+                             4000, 5000, 1);
 
         final long logonTime = System.currentTimeMillis() - 150;
         // Allow some slack to avoid flaky test
@@ -371,6 +371,7 @@ public class DefaultMessageResponderTest {
         assertEquals("linux", user.getOperatingSystem());
         assertEquals(4000, user.getPrivateChatPort());
         assertEquals(5000, user.getTcpChatPort());
+        verify(controller).changeCapabilities(100, 1);
     }
 
     @Test
@@ -378,13 +379,14 @@ public class DefaultMessageResponderTest {
         setUpUnknownUser();
 
         responder.clientInfo(100, "swing", 150, "linux",
-                             4000, 5000);
+                             4000, 5000, 1);
 
         assertEquals(0, user.getLogonTime());
         assertEquals("<unknown>", user.getClient());
         assertEquals("<unknown>", user.getOperatingSystem());
         assertEquals(0, user.getPrivateChatPort());
         assertEquals(0, user.getTcpChatPort());
+        verify(controller, never()).changeCapabilities(anyInt(), anyInt());
     }
 
     private void verifyTopic(final Topic topic, final String expectedTopic, final String expectedNick,
@@ -0,0 +1,202 @@
+
+/***************************************************************************
+ *   Copyright 2006-2018 by Christian Ihle                                 *
+ *   contact@kouchat.net                                                   *
+ *                                                                         *
+ *   This file is part of KouChat.                                         *
+ *                                                                         *
+ *   KouChat is free software; you can redistribute it and/or modify       *
+ *   it under the terms of the GNU Lesser General Public License as        *
+ *   published by the Free Software Foundation, either version 3 of        *
+ *   the License, or (at your option) any later version.                   *
+ *                                                                         *
+ *   KouChat is distributed in the hope that it will be useful,            *
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of        *
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU      *
+ *   Lesser General Public License for more details.                       *
+ *                                                                         *
+ *   You should have received a copy of the GNU Lesser General Public      *
+ *   License along with KouChat.                                           *
+ *   If not, see <http://www.gnu.org/licenses/>.                           *
+ ***************************************************************************/
+
+package net.usikkert.kouchat.net;
+
+import static org.junit.Assert.*;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.zip.Deflater;
+
+import net.usikkert.kouchat.Constants;
+import net.usikkert.kouchat.junit.ExpectedException;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+
+/**
+ * Test of {@link MessageCompressor}.
+ *
+ * @author Christian Ihle
+ */
+@SuppressWarnings("HardCodedStringLiteral")
+public class MessageCompressorTest {
+
+    private static final Charset CHARSET = Charset.forName(Constants.MESSAGE_CHARSET);
+
+    @Rule
+    public ExpectedException expectedException = ExpectedException.none();
+
+    private CompressionStatistics statistics;
+    private MessageCompressor compressor;
+
+    @Before
+    public void setUp() {
+        statistics = new CompressionStatistics();
+        compressor = new MessageCompressor(statistics);
+    }
+
+    @Test
+    public void constructorShouldThrowExceptionIfStatisticsIsNull() {
+        expectedException.expect(IllegalArgumentException.class);
+        expectedException.expectMessage("Compression statistics can not be null");
+
+        new MessageCompressor(null);
+    }
+
+    @Test
+    public void compressShouldThrowExceptionIfMessageIsNull() {
+        expectedException.expect(IllegalArgumentException.class);
+        expectedException.expectMessage("Message can not be null");
+
+        compressor.compress(null);
+    }
+
+    @Test
+    public void decompressShouldThrowExceptionIfMessageIsNull() {
+        expectedException.expect(IllegalArgumentException.class);
+        expectedException.expectMessage("Message can not be null");
+
+        compressor.decompress(null);
+    }
+
+    @Test
+    public void compressShouldNotCompressMessagesBelowThreshold() {
+        final byte[] message = new byte[MessageCompressor.COMPRESSION_THRESHOLD - 1];
+
+        assertNull(compressor.compress(message));
+        assertEquals(0, statistics.getCompressedMessages());
+        assertEquals(0, statistics.getSkippedMessages());
+    }
+
+    @Test
+    public void compressShouldReturnSmallerMessageThatCanBeDecompressed() {
+        final byte[] message = bytes("16320462!MSG#Christian:[-15987646]What do you think about the topic, " +
+                "and what are you having for lunch today? I think the topic is good, and that lunch is late.");
+
+        final byte[] compressed = compressor.compress(message);
+
+        assertNotNull(compressed);
+        assertEquals(MessageCompressor.COMPRESSED, compressed[0]);
+        assertTrue(compressed.length < message.length);
+
+        final ByteBuffer buffer = ByteBuffer.wrap(compressed);
+        assertTrue(Arrays.equals(message, compressor.decompress(buffer)));
+        assertFalse(buffer.hasRemaining());
+    }
+
+    @Test
+    public void compressShouldNotCompressMessagesThatDoNotGetSmaller() {
+        final byte[] message = new byte[MessageCompressor.COMPRESSION_THRESHOLD];
+
+        for (int i = 0; i < message.length; i++) {
+            message[i] = (byte) (i * 7919 >>> 3 ^ i * 31);
+        }
+
+        assertNull(compressor.compress(message));
+        assertEquals(1, statistics.getSkippedMessages());
+        assertEquals(0, statistics.getCompressedMessages());
+    }
+
+    @Test
+    public void compressShouldUpdateStatistics() {
+        final byte[] message = bytes(repeat("16320462!AWAY#Christian:Gone for lunch. ", 10));
+
+        final byte[] compressed = compressor.compress(message);
+        compressor.decompress(ByteBuffer.wrap(compressed));
+
+        assertEquals(1, statistics.getCompressedMessages());
+        assertEquals(message.length, statistics.getBytesBeforeCompression());
+        assertEquals(compressed.length, statistics.getBytesAfterCompression());
+        assertTrue(statistics.getCompressionRatio() < 1);
+        assertEquals(1, statistics.getDecompressedMessages());
+    }
+
+    @Test
+    public void compressShouldWorkWithSameCompressorManyTimes() {
+        for (int i = 0; i < 10; i++) {
+            final byte[] message = bytes(repeat("16320462!TOPIC#Christian:(Christian)[1234]Topic number " + i, 4));
+            final byte[] compressed = compressor.compress(message);
+
+            assertTrue(Arrays.equals(message, compressor.decompress(ByteBuffer.wrap(compressed))));
+        }
+    }
+
+    @Test
+    public void decompressShouldReturnNullForMessageWithoutMarker() {
+        assertNull(compressor.decompress(ByteBuffer.wrap(bytes("16320462!MSG#Christian:[-15987646]Hello"))));
+    }
+
+    @Test
+    public void decompressShouldReturnNullForInvalidData() {
+        final ByteBuffer buffer = ByteBuffer.wrap(new byte[] {MessageCompressor.COMPRESSED, 1, 2, 3, 4, 5});
+
+        assertNull(compressor.decompress(buffer));
+        assertFalse(buffer.hasRemaining());
+    }
+
+    @Test
+    public void decompressShouldReturnNullForIncompleteMessage() {
+        final byte[] compressed = compressor.compress(bytes(repeat("16320462!MSG#Christian:[-15987646]Hello ", 10)));
+
+        assertNull(compressor.decompress(ByteBuffer.wrap(Arrays.copyOf(compressed, compressed.length / 2))));
+    }
+
+    @Test
+    public void decompressShouldReturnNullForMessageLargerThanMax() {
+        final Deflater deflater = new Deflater(Deflater.BEST_COMPRESSION, true);
+        deflater.setInput(new byte[MessageCompressor.MAX_MESSAGE_SIZE + 1]);
+        deflater.finish();
+
+        final byte[] compressed = new byte[1000];
+        compressed[0] = MessageCompressor.COMPRESSED;
+        final int length = 1 + deflater.deflate(compressed, 1, compressed.length - 1);
+
+        assertNull(compressor.decompress(ByteBuffer.wrap(compressed, 0, length)));
+    }
+
+    @Test
+    public void decompressShouldHandleMessageOfMaxSize() {
+        final byte[] message = bytes(repeat("x", MessageCompressor.MAX_MESSAGE_SIZE));
+
+        final byte[] compressed = compressor.compress(message);
+
+        assertTrue(Arrays.equals(message, compressor.decompress(ByteBuffer.wrap(compressed))));
+    }
+
+    private byte[] bytes(final String message) {
+        return message.getBytes(CHARSET);
+    }
+
+    private String repeat(final String text, final int times) {
+        final StringBuilder builder = new StringBuilder();
+
+        for (int i = 0; i < times; i++) {
+            builder.append(text);
+        }
+
+        return builder.toString();
+    }
+}
@@ -0,0 +1,78 @@
+
+/***************************************************************************
+ *   Copyright 2006-2018 by Christian Ihle                                 *
+ *   contact@kouchat.net                                                   *
+ *                                                                         *
+ *   This file is part of KouChat.                                         *
+ *                                                                         *
+ *   KouChat is free software; you can redistribute it and/or modify       *
+ *   it under the terms of the GNU Lesser General Public License as        *
+ *   published by the Free Software Foundation, either version 3 of        *
+ *   the License, or (at your option) any later version.                   *
+ *                                                                         *
+ *   KouChat is distributed in the hope that it will be useful,            *
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of        *
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU      *
+ *   Lesser General Public License for more details.                       *
+ *                                                                         *
+ *   You should have received a copy of the GNU Lesser General Public      *
+ *   License along with KouChat.                                           *
+ *   If not, see <http://www.gnu.org/licenses/>.                           *
+ ***************************************************************************/
+
+package net.usikkert.kouchat.net;
+
+import static org.junit.Assert.*;
+
+import java.nio.ByteBuffer;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Test of {@link MessageDecoder}.
+ *
+ * @author Christian Ihle
+ */
+@SuppressWarnings("HardCodedStringLiteral")
+public class MessageDecoderTest {
+
+    private MessageDecoder decoder;
+
+    @Before
+    public void setUp() {
+        decoder = new MessageDecoder();
+    }
+
+    @Test
+    public void decodeShouldDecodeRemainingBytesOfHeapBuffer() throws Exception {
+        final ByteBuffer bytes = ByteBuffer.wrap("xx12345!IDLE#Test:xx".getBytes("UTF-8"));
+        bytes.position(2);
+        bytes.limit(18);
+
+        assertEquals("12345!IDLE#Test:", decoder.decode(bytes));
+        assertFalse(bytes.hasRemaining());
+    }
+
+    @Test
+    public void decodeShouldDecodeDirectBuffer() throws Exception {
+        final ByteBuffer bytes = ByteBuffer.allocateDirect(512);
+        bytes.put("12345!MSG#Test:[-1]æøå".getBytes("UTF-8"));
+        bytes.flip();
+
+        assertEquals("12345!MSG#Test:[-1]æøå", decoder.decode(bytes));
+    }
+
+    @Test
+    public void decodeShouldTrimAndNotKeepCharactersFromPreviousMessage() throws Exception {
+        assertEquals("a long message", decoder.decode(ByteBuffer.wrap(" a long message ".getBytes("UTF-8"))));
+        assertEquals("short", decoder.decode(ByteBuffer.wrap("short\u0000\u0000".getBytes("UTF-8"))));
+    }
+
+    @Test
+    public void decodeShouldIgnoreBytesBeyondMaxSize() throws Exception {
+        final MessageDecoder smallDecoder = new MessageDecoder(5);
+
+        assertEquals("12345", smallDecoder.decode(ByteBuffer.wrap("1234567890".getBytes("UTF-8"))));
+    }
+}
@@ -0,0 +1,360 @@
+
+/***************************************************************************
+ *   Copyright 2006-2018 by Christian Ihle                                 *
+ *   contact@kouchat.net                                                   *
+ *                                                                         *
+ *   This file is part of KouChat.                                         *
+ *                                                                         *
+ *   KouChat is free software; you can redistribute it and/or modify       *
+ *   it under the terms of the GNU Lesser General Public License as        *
+ *   published by the Free Software Foundation, either version 3 of        *
+ *   the License, or (at your option) any later version.                   *
+ *                                                                         *
+ *   KouChat is distributed in the hope that it will be useful,            *
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of        *
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU      *
+ *   Lesser General Public License for more details.                       *
+ *                                                                         *
+ *   You should have received a copy of the GNU Lesser General Public      *
+ *   License along with KouChat.                                           *
+ *   If not, see <http://www.gnu.org/licenses/>.                           *
+ ***************************************************************************/
+
+package net.usikkert.kouchat.net;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+
+import java.nio.ByteBuffer;
+
+import net.usikkert.kouchat.event.BinaryReceiverListener;
+import net.usikkert.kouchat.event.ReceiverListener;
+import net.usikkert.kouchat.junit.ExpectedException;
+import net.usikkert.kouchat.misc.Controller;
+import net.usikkert.kouchat.misc.User;
+import net.usikkert.kouchat.net.transport.TransportChannel;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+/**
+ * Test of {@link MessageDeduplicator}.
+ *
+ * @author Christian Ihle
+ */
+@SuppressWarnings("HardCodedStringLiteral")
+public class MessageDeduplicatorTest {
+
+    @Rule
+    public ExpectedException expectedException = ExpectedException.none();
+
+    private MessageDeduplicator deduplicator;
+
+    private Controller controller;
+    private ReceiverListener mainChatListener;
+    private ReceiverListener privateChatListener;
+    private BinaryReceiverListener binaryListener;
+    private ReceiverListener nackListener;
+    private MissingMessageTracker missingMessageTracker;
+    private LatencyStatistics latencyStatistics;
+    private TrafficStatistics trafficStatistics;
+    private User tcpUser;
+    private User udpUser;
+
+    @Before
+    public void setUp() {
+        controller = mock(Controller.class);
+        mainChatListener = mock(ReceiverListener.class);
+        privateChatListener = mock(ReceiverListener.class);
+        binaryListener = mock(BinaryReceiverListener.class);
+        nackListener = mock(ReceiverListener.class);
+        missingMessageTracker = mock(MissingMessageTracker.class);
+        latencyStatistics = new LatencyStatistics();
+        trafficStatistics = new TrafficStatistics();
+
+        tcpUser = new User("Tcp", 12345);
+        tcpUser.setTcpEnabled(true);
+        udpUser = new User("Udp", 67890);
+
+        when(controller.getUser(12345)).thenReturn(tcpUser);
+        when(controller.getUser(67890)).thenReturn(udpUser);
+
+        deduplicator = new MessageDeduplicator(controller, missingMessageTracker, latencyStatistics, trafficStatistics);
+        deduplicator.registerMainChatReceiverListener(mainChatListener);
+        deduplicator.registerPrivateChatReceiverListener(privateChatListener);
+        deduplicator.registerMainChatBinaryReceiverListener(binaryListener);
+        deduplicator.registerNackReceiverListener(nackListener);
+    }
+
+    @Test
+    public void constructorShouldThrowExceptionIfControllerIsNull() {
+        expectedException.expect(IllegalArgumentException.class);
+        expectedException.expectMessage("Controller can not be null");
+
+        new MessageDeduplicator(null, missingMessageTracker, latencyStatistics, trafficStatistics);
+    }
+
+    @Test
+    public void constructorShouldThrowExceptionIfMissingMessageTrackerIsNull() {
+        expectedException.expect(IllegalArgumentException.class);
+        expectedException.expectMessage("Missing message tracker can not be null");
+
+        new MessageDeduplicator(controller, null, latencyStatistics, trafficStatistics);
+    }
+
+    @Test
+    public void constructorShouldThrowExceptionIfLatencyStatisticsIsNull() {
+        expectedException.expect(IllegalArgumentException.class);
+        expectedException.expectMessage("Latency statistics can not be null");
+
+        new MessageDeduplicator(controller, missingMessageTracker, null, trafficStatistics);
+    }
+
+    @Test
+    public void constructorShouldThrowExceptionIfTrafficStatisticsIsNull() {
+        expectedException.expect(IllegalArgumentException.class);
+        expectedException.expectMessage("Traffic statistics can not be null");
+
+        new MessageDeduplicator(controller, missingMessageTracker, latencyStatistics, null);
+    }
+
+    @Test
+    public void nackMessagesShouldOnlyBeForwardedToNackListener() {
+        deduplicator.messageArrived("12345!NACK#Tcp:67890:4,5", "192.168.1.1");
+
+        verify(nackListener).messageArrived("12345!NACK#Tcp:67890:4,5", "192.168.1.1");
+        verifyZeroInteractions(mainChatListener, privateChatListener);
+    }
+
+    @Test
+    public void sequencedMainChatMessagesShouldBeGivenToMissingMessageTrackerOnce() {
+        deduplicator.messageArrived("~4~67890!MSG#Udp:[-15987646]Hello", "192.168.1.2");
+        deduplicator.messageArrived("~4~67890!MSG#Udp:[-15987646]Hello", "192.168.1.2", udpUser);
+        deduplicator.messageArrived(createSequencedBinaryMessage(5, 67890), "192.168.1.2");
+
+        verify(missingMessageTracker).messageArrived(eq(67890), eq(4), any(SequenceWindow.class), anyLong());
+        verify(missingMessageTracker).messageArrived(eq(67890), eq(5), any(SequenceWindow.class), anyLong());
+        verifyNoMoreInteractions(missingMessageTracker);
+    }
+
+    @Test
+    public void sequencedPrivateMessagesShouldBeNumberedSeparatelyFromMainChat() {
+        deduplicator.messageArrived("~1~67890!MSG#Udp:[-15987646]Hello", "192.168.1.2");
+        deduplicator.messageArrived("~1~67890!PRIVMSG#Udp:12345:[-15987646]Hello", "192.168.1.2");
+
+        verify(mainChatListener).messageArrived("67890!MSG#Udp:[-15987646]Hello", "192.168.1.2");
+        verify(privateChatListener).messageArrived("67890!PRIVMSG#Udp:12345:[-15987646]Hello", "192.168.1.2");
+        verify(missingMessageTracker, times(1)).messageArrived(anyInt(), anyInt(), any(SequenceWindow.class), anyLong());
+    }
+
+    @Test
+    public void unsequencedMessageFromTcpUserShouldOnlyBeForwardedFromTcp() {
+        deduplicator.messageArrived("12345!MSG#Tcp:[-15987646]Hello", "192.168.1.1");
+        verifyZeroInteractions(mainChatListener);
+        assertEquals(1, trafficStatistics.getDuplicateMessages());
+
+        deduplicator.messageArrived("12345!MSG#Tcp:[-15987646]Hello", "192.168.1.1", tcpUser);
+        verify(mainChatListener).messageArrived("12345!MSG#Tcp:[-15987646]Hello", "192.168.1.1");
+        assertEquals(1, trafficStatistics.getDuplicateMessages());
+    }
+
+    @Test
+    public void unsequencedMessageFromUdpUserShouldOnlyBeForwardedFromMulticast() {
+        deduplicator.messageArrived("67890!MSG#Udp:[-15987646]Hello", "192.168.1.2", udpUser);
+        verifyZeroInteractions(mainChatListener);
+        assertEquals(1, trafficStatistics.getDuplicateMessages());
+
+        deduplicator.messageArrived("67890!MSG#Udp:[-15987646]Hello", "192.168.1.2");
+        verify(mainChatListener).messageArrived("67890!MSG#Udp:[-15987646]Hello", "192.168.1.2");
+    }
+
+    @Test
+    public void unsequencedMessageFromUnknownUserShouldBeForwardedFromMulticast() {
+        deduplicator.messageArrived("11111!LOGON#New:", "192.168.1.3");
+
+        verify(mainChatListener).messageArrived("11111!LOGON#New:", "192.168.1.3");
+    }
+
+    @Test
+    public void messageWithoutUserCodeShouldBeForwardedToMainChat() {
+        deduplicator.messageArrived("garbage", "192.168.1.3");
+        deduplicator.messageArrived("!PRIVMSG#garbage", "192.168.1.3");
+
+        verify(mainChatListener).messageArrived("garbage", "192.168.1.3");
+        verify(mainChatListener).messageArrived("!PRIVMSG#garbage", "192.168.1.3");
+        verifyZeroInteractions(privateChatListener);
+    }
+
+    @Test
+    public void privateMessagesShouldBeForwardedToPrivateChat() {
+        deduplicator.messageArrived("67890!PRIVMSG#Udp:12345:[-15987646]Hello", "192.168.1.2");
+
+        verify(privateChatListener).messageArrived("67890!PRIVMSG#Udp:12345:[-15987646]Hello", "192.168.1.2");
+        verifyZeroInteractions(mainChatListener);
+    }
+
+    @Test
+    public void privateMessageWithoutContentShouldBeForwardedToMainChat() {
+        deduplicator.messageArrived("67890!PRIVMSG#", "192.168.1.2");
+
+        verify(mainChatListener).messageArrived("67890!PRIVMSG#", "192.168.1.2");
+        verifyZeroInteractions(privateChatListener);
+    }
+
+    @Test
+    public void sequencedMessageShouldBeForwardedOnceFromTheFastestSource() {
+        deduplicator.messageArrived("~1~12345!MSG#Tcp:[-15987646]Hello", "192.168.1.1");
+        deduplicator.messageArrived("~1~12345!MSG#Tcp:[-15987646]Hello", "192.168.1.1", tcpUser);
+
+        verify(mainChatListener).messageArrived("12345!MSG#Tcp:[-15987646]Hello", "192.168.1.1");
+        assertEquals(1, trafficStatistics.getDuplicateMessages());
+    }
+
+    @Test
+    public void tcpMessageShouldBeTracedAsTcp() {
+        doAnswer(withChatMessageShown()).when(mainChatListener).messageArrived(anyString(), anyString());
+
+        deduplicator.messageArrived("~1~12345!MSG#Tcp:[-15987646;1]Hello", "192.168.1.1", tcpUser);
+
+        assertEquals(1, latencyStatistics.getEndToEndLatency(TransportChannel.TCP).getCount());
+        assertEquals(1, latencyStatistics.getStageLatency(LatencyStatistics.Stage.DEDUPLICATE).getCount());
+    }
+
+    @Test
+    public void sequencedMessageShouldBeForwardedFromTcpWhenMulticastIsLost() {
+        deduplicator.messageArrived("~1~67890!MSG#Udp:[-15987646]Hello", "192.168.1.2", udpUser);
+        deduplicator.messageArrived("~2~67890!MSG#Udp:[-15987646]Again", "192.168.1.2");
+        deduplicator.messageArrived("~2~67890!MSG#Udp:[-15987646]Again", "192.168.1.2", udpUser);
+
+        verify(mainChatListener).messageArrived("67890!MSG#Udp:[-15987646]Hello", "192.168.1.2");
+        verify(mainChatListener).messageArrived("67890!MSG#Udp:[-15987646]Again", "192.168.1.2");
+        verifyNoMoreInteractions(mainChatListener);
+    }
+
+    @Test
+    public void sequencedMessagesShouldBeTrackedPerUser() {
+        deduplicator.messageArrived("~1~12345!MSG#Tcp:[-15987646]Hello", "192.168.1.1");
+        deduplicator.messageArrived("~1~67890!MSG#Udp:[-15987646]Hello", "192.168.1.2");
+
+        verify(mainChatListener).messageArrived("12345!MSG#Tcp:[-15987646]Hello", "192.168.1.1");
+        verify(mainChatListener).messageArrived("67890!MSG#Udp:[-15987646]Hello", "192.168.1.2");
+    }
+
+    @Test
+    public void sequencedPrivateMessageShouldBeForwardedOnceToPrivateChat() {
+        deduplicator.messageArrived("~7~12345!PRIVMSG#Tcp:67890:[-15987646]Hello", "192.168.1.1", tcpUser);
+        deduplicator.messageArrived("~7~12345!PRIVMSG#Tcp:67890:[-15987646]Hello", "192.168.1.1");
+
+        verify(privateChatListener).messageArrived("12345!PRIVMSG#Tcp:67890:[-15987646]Hello", "192.168.1.1");
+        verifyZeroInteractions(mainChatListener);
+    }
+
+    @Test
+    public void sequencedMessageWithInvalidNumberShouldBeDropped() {
+        deduplicator.messageArrived("~x~12345!MSG#Tcp:[-15987646]Hello", "192.168.1.1");
+        deduplicator.messageArrived("~12345!MSG#Tcp:[-15987646]Hello", "192.168.1.1");
+
+        verifyZeroInteractions(mainChatListener, privateChatListener);
+    }
+
+    @Test
+    public void sequencedMessageWithoutUserCodeShouldBeDropped() {
+        deduplicator.messageArrived("~1~MSG#Tcp:[-15987646]Hello", "192.168.1.1");
+
+        verifyZeroInteractions(mainChatListener, privateChatListener);
+    }
+
+    @Test
+    public void unsequencedBinaryMessageFromTcpUserShouldBeIgnored() {
+        deduplicator.messageArrived(createBinaryMessage(12345), "192.168.1.1");
+
+        verifyZeroInteractions(binaryListener);
+        assertEquals(1, trafficStatistics.getDuplicateMessages());
+    }
+
+    @Test
+    public void unsequencedBinaryMessageFromUdpUserShouldBeForwarded() {
+        final ByteBuffer message = createBinaryMessage(67890);
+
+        deduplicator.messageArrived(message, "192.168.1.2");
+
+        verify(binaryListener).messageArrived(message, "192.168.1.2");
+    }
+
+    @Test
+    public void sequencedBinaryMessageShouldBeForwardedWithoutHeaderWhenTcpCopyIsLate() {
+        final ByteBuffer message = createSequencedBinaryMessage(3, 12345);
+
+        deduplicator.messageArrived(message, "192.168.1.1");
+        deduplicator.messageArrived("~3~12345!IDLE#Tcp:", "192.168.1.1", tcpUser);
+
+        verify(binaryListener).messageArrived(message, "192.168.1.1");
+        verifyZeroInteractions(mainChatListener);
+    }
+
+    @Test
+    public void sequencedBinaryMessageShouldBeDroppedWhenTcpCopyArrivedFirst() {
+        deduplicator.messageArrived("~3~12345!IDLE#Tcp:", "192.168.1.1", tcpUser);
+        deduplicator.messageArrived(createSequencedBinaryMessage(3, 12345), "192.168.1.1");
+
+        verify(mainChatListener).messageArrived("12345!IDLE#Tcp:", "192.168.1.1");
+        verifyZeroInteractions(binaryListener);
+    }
+
+    @Test
+    public void sequencedBinaryMessageThatIsTooShortShouldBeDropped() {
+        deduplicator.messageArrived(ByteBuffer.wrap(new byte[] {MessageSequencer.SEQUENCED_BINARY, 0, 0, 0, 1}), "192.168.1.1");
+
+        verifyZeroInteractions(binaryListener);
+    }
+
+    @Test
+    public void tcpMessageShouldEndTheTraceWhenListenerFails() {
+        doAnswer(new Answer<Void>() {
+            @Override
+            public Void answer(final InvocationOnMock invocation) {
+                MessageTrace.markParsed(System.currentTimeMillis());
+                MessageTrace.markResponded();
+
+                throw new IllegalStateException("Failed");
+            }
+        }).when(mainChatListener).messageArrived(anyString(), anyString());
+
+        try {
+            deduplicator.messageArrived("12345!MSG#Tcp:[-15987646]Hello", "192.168.1.1", tcpUser);
+            fail("Should have failed");
+        }
+
+        catch (final IllegalStateException e) {
+            assertEquals("Failed", e.getMessage());
+        }
+
+        assertNull(MessageTrace.defer());
+    }
+
+    private Answer<Void> withChatMessageShown() {
+        return new Answer<Void>() {
+            @Override
+            public Void answer(final InvocationOnMock invocation) {
+                MessageTrace.markParsed(System.currentTimeMillis());
+                MessageTrace.markResponded();
+                MessageTrace.markAppended();
+
+                return null;
+            }
+        };
+    }
+
+    private ByteBuffer createBinaryMessage(final int userCode) {
+        return ByteBuffer.wrap(new BinaryMessageEncoder().encode(userCode + "!IDLE#User:"));
+    }
+
+    private ByteBuffer createSequencedBinaryMessage(final int sequenceNumber, final int userCode) {
+        final byte[] binaryMessage = new BinaryMessageEncoder().encode(userCode + "!IDLE#User:");
+
+        return ByteBuffer.wrap(new MessageSequencer().addSequenceNumber(binaryMessage, sequenceNumber));
+    }
+}
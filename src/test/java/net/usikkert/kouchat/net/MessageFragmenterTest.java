@@ -0,0 +1,137 @@
+
+/***************************************************************************
+ *   Copyright 2006-2018 by Christian Ihle                                 *
+ *   contact@kouchat.net                                                   *
+ *                                                                         *
+ *   This file is part of KouChat.                                         *
+ *                                                                         *
+ *   KouChat is free software; you can redistribute it and/or modify       *
+ *   it under the terms of the GNU Lesser General Public License as        *
+ *   published by the Free Software Foundation, either version 3 of        *
+ *   the License, or (at your option) any later version.                   *
+ *                                                                         *
+ *   KouChat is distributed in the hope that it will be useful,            *
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of        *
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU      *
+ *   Lesser General Public License for more details.                       *
+ *                                                                         *
+ *   You should have received a copy of the GNU Lesser General Public      *
+ *   License along with KouChat.                                           *
+ *   If not, see <http://www.gnu.org/licenses/>.                           *
+ ***************************************************************************/
+
+package net.usikkert.kouchat.net;
+
+import static org.junit.Assert.*;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.List;
+
+import net.usikkert.kouchat.Constants;
+import net.usikkert.kouchat.junit.ExpectedException;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+
+/**
+ * Test of {@link MessageFragmenter}.
+ *
+ * @author Christian Ihle
+ */
+@SuppressWarnings("HardCodedStringLiteral")
+public class MessageFragmenterTest {
+
+    @Rule
+    public ExpectedException expectedException = ExpectedException.none();
+
+    private MessageFragmenter fragmenter;
+
+    @Before
+    public void setUp() {
+        fragmenter = new MessageFragmenter();
+    }
+
+    @Test
+    public void splitShouldThrowExceptionIfMessageIsNull() {
+        expectedException.expect(IllegalArgumentException.class);
+        expectedException.expectMessage("Message can not be null");
+
+        fragmenter.split(null, 1234);
+    }
+
+    @Test
+    public void splitShouldThrowExceptionIfMessageIsTooLarge() {
+        expectedException.expect(IllegalArgumentException.class);
+        expectedException.expectMessage("Message is too large to split: 16033 bytes");
+
+        fragmenter.split(new byte[MessageFragmenter.MAX_MESSAGE_SIZE + 1], 1234);
+    }
+
+    @Test
+    public void splitShouldCreateFragmentsThatFitInOnePacket() {
+        final byte[] message = createMessage(1200);
+
+        final List<byte[]> fragments = fragmenter.split(message, 1234);
+
+        assertEquals(3, fragments.size());
+        assertEquals(Constants.NETWORK_PACKET_SIZE, fragments.get(0).length);
+        assertEquals(Constants.NETWORK_PACKET_SIZE, fragments.get(1).length);
+        assertEquals(MessageFragmenter.HEADER_SIZE + 1200 - 2 * MessageFragmenter.MAX_FRAGMENT_SIZE,
+                     fragments.get(2).length);
+    }
+
+    @Test
+    public void splitShouldWriteHeaderAndPartOfMessageInEachFragment() {
+        final byte[] message = createMessage(600);
+
+        final List<byte[]> fragments = fragmenter.split(message, 1234);
+        final ByteBuffer first = ByteBuffer.wrap(fragments.get(0));
+        final ByteBuffer second = ByteBuffer.wrap(fragments.get(1));
+
+        assertEquals(MessageFragmenter.FRAGMENT, first.get());
+        assertEquals(1234, first.getInt());
+        final int messageId = first.getInt();
+        assertEquals(0, first.get());
+        assertEquals(2, first.get());
+
+        assertEquals(MessageFragmenter.FRAGMENT, second.get());
+        assertEquals(1234, second.getInt());
+        assertEquals(messageId, second.getInt());
+        assertEquals(1, second.get());
+        assertEquals(2, second.get());
+
+        final byte[] joined = new byte[600];
+        first.get(joined, 0, first.remaining());
+        second.get(joined, MessageFragmenter.MAX_FRAGMENT_SIZE, second.remaining());
+
+        assertTrue(Arrays.equals(message, joined));
+    }
+
+    @Test
+    public void splitShouldUseNewMessageIdForEachMessage() {
+        final int firstId = ByteBuffer.wrap(fragmenter.split(createMessage(10), 1234).get(0)).getInt(5);
+        final int secondId = ByteBuffer.wrap(fragmenter.split(createMessage(10), 1234).get(0)).getInt(5);
+
+        assertEquals(firstId + 1, secondId);
+    }
+
+    @Test
+    public void splitShouldHandleMessageOfMaxSize() {
+        final List<byte[]> fragments = fragmenter.split(createMessage(MessageFragmenter.MAX_MESSAGE_SIZE), 1234);
+
+        assertEquals(MessageFragmenter.MAX_FRAGMENTS, fragments.size());
+        assertEquals(MessageFragmenter.MAX_FRAGMENTS, fragments.get(0)[10] & 0xFF);
+    }
+
+    private byte[] createMessage(final int size) {
+        final byte[] message = new byte[size];
+
+        for (int i = 0; i < size; i++) {
+            message[i] = (byte) i;
+        }
+
+        return message;
+    }
+}
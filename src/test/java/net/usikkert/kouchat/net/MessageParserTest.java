@@ -25,9 +25,11 @@ package net.usikkert.kouchat.net;
 import static org.junit.Assert.*;
 import static org.mockito.Mockito.*;
 
+import java.nio.ByteBuffer;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
+import net.usikkert.kouchat.misc.FlightRecorder;
 import net.usikkert.kouchat.misc.User;
 import net.usikkert.kouchat.settings.Settings;
 import net.usikkert.kouchat.util.TestUtils;
@@ -48,6 +50,8 @@ public class MessageParserTest {
 
     private Logger log;
     private MessageResponder responder;
+    private TrafficStatistics trafficStatistics;
+    private FlightRecorder flightRecorder;
 
     @Before
     public void setUp() {
@@ -55,7 +59,9 @@ public class MessageParserTest {
         when(settings.getMe()).thenReturn(new User("Test", 1234));
 
         responder = mock(MessageResponder.class);
-        messageParser = new MessageParser(responder, settings);
+        trafficStatistics = new TrafficStatistics();
+        flightRecorder = new FlightRecorder(16);
+        messageParser = new MessageParser(responder, settings, trafficStatistics, flightRecorder);
 
         TestUtils.setFieldValue(messageParser, "loggedOn", true);
         log = TestUtils.setFieldValueWithMock(messageParser, "LOG", Logger.class);
@@ -72,6 +78,7 @@ public class MessageParserTest {
                         exceptionCaptor.capture());
 
         checkException(exceptionCaptor, StringIndexOutOfBoundsException.class, "String index out of range: -1");
+        assertEquals(1, trafficStatistics.getParseFailures());
     }
 
     @Test
@@ -109,7 +116,7 @@ public class MessageParserTest {
                                      "192.168.1.1");
 
         verify(responder).clientInfo(19879835, "KouChat v1.3.0 Swing", 1854,
-                                     "Linux", 40656, 0);
+                                     "Linux", 40656, 0, 0);
     }
 
     @Test
@@ -118,7 +125,35 @@ public class MessageParserTest {
                                      "192.168.1.1");
 
         verify(responder).clientInfo(10066122, "KouChat v1.4.0 Swing", 1753,
-                                     "Linux", 40656, 40657);
+                                     "Linux", 40656, 40657, 0);
+    }
+
+    @Test
+    public void messageArrivedShouldParseClientWithCapabilities() {
+        messageParser.messageArrived("10066122!CLIENT#Christian:(KouChat v1.5.0 Swing)[1753]{Linux}<40656>/40657\\|1|",
+                                     "192.168.1.1");
+
+        verify(responder).clientInfo(10066122, "KouChat v1.5.0 Swing", 1753,
+                                     "Linux", 40656, 40657, 1);
+    }
+
+    @Test
+    public void messageArrivedShouldLogIfCapabilitiesCouldNotBeParsed() {
+        messageParser.messageArrived("10066122!CLIENT#Christian:(KouChat v1.5.0 Swing)[1753]{Linux}<40656>/40657\\|c|",
+                                     "192.168.1.1");
+
+        final ArgumentCaptor<Exception> exceptionCaptor = ArgumentCaptor.forClass(Exception.class);
+
+        verify(log).log(eq(Level.WARNING),
+                        eq("Failed to parse capabilities. " +
+                                   "message=10066122!CLIENT#Christian:(KouChat v1.5.0 Swing)[1753]{Linux}<40656>/40657\\|c|, " +
+                                   "ipAddress=192.168.1.1"),
+                        exceptionCaptor.capture());
+
+        checkException(exceptionCaptor, NumberFormatException.class, "For input string: \"c\"");
+
+        verify(responder).clientInfo(10066122, "KouChat v1.5.0 Swing", 1753,
+                                     "Linux", 40656, 40657, 0);
     }
 
     @Test
@@ -153,6 +188,130 @@ public class MessageParserTest {
         checkException(exceptionCaptor, NumberFormatException.class, "For input string: \"a2688\"");
     }
 
+    @Test
+    public void messageArrivedShouldParseMessage() {
+        messageParser.messageArrived("16320462!MSG#Christian:[-15987646]Hello there!", "192.168.1.1");
+
+        verify(responder).messageArrived(16320462, "Hello there!", -15987646);
+        assertEquals(Long.valueOf(1), trafficStatistics.getMessageTypes().get(NetworkMessageType.MSG));
+        assertEquals(0, trafficStatistics.getParseFailures());
+        assertEquals("MESSAGE_PARSED user=16320462 MSG", flightRecorder.getEvents().get(0).toString());
+    }
+
+    @Test
+    public void messageArrivedShouldParseMessageWithSendTimestamp() {
+        messageParser.messageArrived("16320462!MSG#Christian:[-15987646;1356994800000]Hello [there]!", "192.168.1.1");
+
+        verify(responder).messageArrived(16320462, "Hello [there]!", -15987646);
+    }
+
+    @Test
+    public void messageArrivedShouldLogIfSendTimestampCouldNotBeParsed() {
+        messageParser.messageArrived("16320462!MSG#Christian:[-15987646;soon]Hello there!", "192.168.1.1");
+
+        verifyZeroInteractions(responder);
+        verify(log).log(eq(Level.SEVERE), anyString(), any(NumberFormatException.class));
+    }
+
+    @Test
+    public void binaryMessageArrivedShouldParseMessage() {
+        messageParser.messageArrived(binaryMessage("16320462!MSG#Christian:[-15987646]Hello there!"), "192.168.1.1");
+
+        verify(responder).messageArrived(16320462, "Hello there!", -15987646);
+        assertEquals(Long.valueOf(1), trafficStatistics.getMessageTypes().get(NetworkMessageType.MSG));
+        assertEquals("MESSAGE_PARSED user=16320462 MSG", flightRecorder.getEvents().get(0).toString());
+    }
+
+    @Test
+    public void binaryMessageArrivedShouldParseAwayAndBack() {
+        messageParser.messageArrived(binaryMessage("16320462!AWAY#Christian:Gone for lunch"), "192.168.1.1");
+        messageParser.messageArrived(binaryMessage("16320462!BACK#Christian:"), "192.168.1.1");
+
+        verify(responder).awayChanged(16320462, true, "Gone for lunch");
+        verify(responder).awayChanged(16320462, false, "");
+    }
+
+    @Test
+    public void binaryMessageArrivedShouldParseTopic() {
+        messageParser.messageArrived(binaryMessage("16320462!TOPIC#Christian:(Harry)[1525170000000]The topic"),
+                                     "192.168.1.1");
+
+        verify(responder).topicChanged(16320462, "The topic", "Harry", 1525170000000L);
+    }
+
+    @Test
+    public void binaryMessageArrivedShouldParseEmptyTopicAsNull() {
+        messageParser.messageArrived(binaryMessage("16320462!TOPIC#Christian:(Harry)[1525170000000]"), "192.168.1.1");
+
+        verify(responder).topicChanged(16320462, null, "Harry", 1525170000000L);
+    }
+
+    @Test
+    public void binaryMessageArrivedShouldParseNick() {
+        messageParser.messageArrived(binaryMessage("16320462!NICK#Harry:"), "192.168.1.1");
+
+        verify(responder).nickChanged(16320462, "Harry");
+    }
+
+    @Test
+    public void binaryMessageArrivedShouldParseFileSendToMe() {
+        messageParser.messageArrived(binaryMessage("16320462!SENDFILE#Christian:(1234)[5000000000]{-12345}file (1).txt"),
+                                     "192.168.1.1");
+
+        verify(responder).fileSend(16320462, 5000000000L, "file (1).txt", "Christian", -12345);
+    }
+
+    @Test
+    public void binaryMessageArrivedShouldIgnoreFileSendToOtherUser() {
+        messageParser.messageArrived(binaryMessage("16320462!SENDFILE#Christian:(4321)[5000]{-12345}file.txt"),
+                                     "192.168.1.1");
+
+        verifyZeroInteractions(responder);
+    }
+
+    @Test
+    public void binaryMessageArrivedShouldParseFileSendAcceptedAndAborted() {
+        messageParser.messageArrived(binaryMessage("16320462!SENDFILEACCEPT#Christian:(1234)[40660]{98765}file.txt"),
+                                     "192.168.1.1");
+        messageParser.messageArrived(binaryMessage("16320462!SENDFILEABORT#Christian:(1234){98765}file.txt"),
+                                     "192.168.1.1");
+
+        verify(responder).fileSendAccepted(16320462, "file.txt", 98765, 40660);
+        verify(responder).fileSendAborted(16320462, "file.txt", 98765);
+    }
+
+    @Test
+    public void binaryMessageArrivedShouldParseIdleFromMe() {
+        messageParser.messageArrived(binaryMessage("1234!IDLE#Test:"), "192.168.1.2");
+
+        verify(responder).meIdle("192.168.1.2");
+    }
+
+    @Test
+    public void binaryMessageArrivedShouldLogIfMessageIsTruncated() {
+        final ByteBuffer message = binaryMessage("16320462!MSG#Christian:[-15987646]Hello there!");
+        message.limit(message.limit() - 3);
+
+        messageParser.messageArrived(message, "192.168.1.1");
+
+        final ArgumentCaptor<Exception> exceptionCaptor = ArgumentCaptor.forClass(Exception.class);
+
+        verify(log).log(eq(Level.SEVERE),
+                        eq("Failed to parse binary message. ipAddress=192.168.1.1"),
+                        exceptionCaptor.capture());
+
+        checkException(exceptionCaptor, IllegalArgumentException.class, "Invalid string length: 12");
+        verifyZeroInteractions(responder);
+        assertEquals(1, trafficStatistics.getParseFailures());
+    }
+
+    private ByteBuffer binaryMessage(final String message) {
+        final byte[] binaryMessage = new BinaryMessageEncoder().encode(message);
+        assertNotNull(binaryMessage);
+
+        return ByteBuffer.wrap(binaryMessage);
+    }
+
     @SuppressWarnings("ThrowableResultOfMethodCallIgnored")
     private void checkException(final ArgumentCaptor<Exception> exceptionCaptor,
                                 final Class<? extends Exception> expectedException,
@@ -0,0 +1,228 @@
+
+/***************************************************************************
+ *   Copyright 2006-2018 by Christian Ihle                                 *
+ *   contact@kouchat.net                                                   *
+ *                                                                         *
+ *   This file is part of KouChat.                                         *
+ *                                                                         *
+ *   KouChat is free software; you can redistribute it and/or modify       *
+ *   it under the terms of the GNU Lesser General Public License as        *
+ *   published by the Free Software Foundation, either version 3 of        *
+ *   the License, or (at your option) any later version.                   *
+ *                                                                         *
+ *   KouChat is distributed in the hope that it will be useful,            *
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of        *
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU      *
+ *   Lesser General Public License for more details.                       *
+ *                                                                         *
+ *   You should have received a copy of the GNU Lesser General Public      *
+ *   License along with KouChat.                                           *
+ *   If not, see <http://www.gnu.org/licenses/>.                           *
+ ***************************************************************************/
+
+package net.usikkert.kouchat.net;
+
+import static org.junit.Assert.*;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import net.usikkert.kouchat.junit.ExpectedException;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+
+/**
+ * Test of {@link MessageReassembler}.
+ *
+ * @author Christian Ihle
+ */
+@SuppressWarnings("HardCodedStringLiteral")
+public class MessageReassemblerTest {
+
+    private static final long MILLIS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    @Rule
+    public ExpectedException expectedException = ExpectedException.none();
+
+    private MessageFragmenter fragmenter;
+    private MessageReassembler reassembler;
+
+    @Before
+    public void setUp() {
+        fragmenter = new MessageFragmenter();
+        reassembler = new MessageReassembler();
+    }
+
+    @Test
+    public void addFragmentShouldThrowExceptionIfFragmentIsNull() {
+        expectedException.expect(IllegalArgumentException.class);
+        expectedException.expectMessage("Fragment can not be null");
+
+        reassembler.addFragment(null, "192.168.1.2", 0);
+    }
+
+    @Test
+    public void addFragmentShouldThrowExceptionIfIpAddressIsNull() {
+        expectedException.expect(IllegalArgumentException.class);
+        expectedException.expectMessage("IP address can not be null");
+
+        reassembler.addFragment(ByteBuffer.allocate(0), null, 0);
+    }
+
+    @Test
+    public void addFragmentShouldReturnMessageWhenAllFragmentsHaveArrived() {
+        final byte[] message = createMessage(1200);
+        final List<byte[]> fragments = fragmenter.split(message, 1234);
+
+        assertNull(add(fragments.get(0), "192.168.1.2", 0));
+        assertNull(add(fragments.get(1), "192.168.1.2", 0));
+        assertTrue(Arrays.equals(message, add(fragments.get(2), "192.168.1.2", 0)));
+
+        assertEquals(0, reassembler.getPartialMessageCount());
+    }
+
+    @Test
+    public void addFragmentShouldHandleFragmentsInAnyOrderAndIgnoreDuplicates() {
+        final byte[] message = createMessage(1200);
+        final List<byte[]> fragments = fragmenter.split(message, 1234);
+
+        assertNull(add(fragments.get(2), "192.168.1.2", 0));
+        assertNull(add(fragments.get(0), "192.168.1.2", 0));
+        assertNull(add(fragments.get(2), "192.168.1.2", 0));
+        assertTrue(Arrays.equals(message, add(fragments.get(1), "192.168.1.2", 0)));
+    }
+
+    @Test
+    public void addFragmentShouldReturnMessageWithSingleFragmentRightAway() {
+        final byte[] message = createMessage(100);
+
+        assertTrue(Arrays.equals(message, add(fragmenter.split(message, 1234).get(0), "192.168.1.2", 0)));
+        assertEquals(0, reassembler.getPartialMessageCount());
+    }
+
+    @Test
+    public void addFragmentShouldKeepMessagesFromDifferentSendersApart() {
+        final byte[] message1 = createMessage(600);
+        final byte[] message2 = createMessage(700);
+        final List<byte[]> fragments1 = fragmenter.split(message1, 1234);
+        final List<byte[]> fragments2 = fragmenter.split(message2, 1234);
+
+        // Same message id from a different address
+        assertNull(add(fragments1.get(0), "192.168.1.2", 0));
+        assertNull(add(fragments1.get(1), "192.168.1.3", 0));
+        assertNull(add(fragments2.get(0), "192.168.1.2", 0));
+
+        assertEquals(3, reassembler.getPartialMessageCount());
+
+        assertTrue(Arrays.equals(message1, add(fragments1.get(1), "192.168.1.2", 0)));
+        assertTrue(Arrays.equals(message2, add(fragments2.get(1), "192.168.1.2", 0)));
+    }
+
+    @Test
+    public void addFragmentShouldRemoveMessagesThatTimeOut() {
+        final List<byte[]> fragments = fragmenter.split(createMessage(600), 1234);
+
+        assertNull(add(fragments.get(0), "192.168.1.2", 0));
+        assertEquals(1, reassembler.getPartialMessageCount());
+
+        final long afterTimeout = MessageReassembler.FRAGMENT_TIMEOUT * MILLIS;
+
+        // Starts a new message with only the second fragment
+        assertNull(add(fragments.get(1), "192.168.1.2", afterTimeout));
+        assertEquals(1, reassembler.getPartialMessageCount());
+    }
+
+    @Test
+    public void addFragmentShouldNotRemoveMessagesBeforeTimeout() {
+        final byte[] message = createMessage(600);
+        final List<byte[]> fragments = fragmenter.split(message, 1234);
+
+        assertNull(add(fragments.get(0), "192.168.1.2", 0));
+
+        final long beforeTimeout = (MessageReassembler.FRAGMENT_TIMEOUT - 1) * MILLIS;
+        assertTrue(Arrays.equals(message, add(fragments.get(1), "192.168.1.2", beforeTimeout)));
+    }
+
+    @Test
+    public void addFragmentShouldRemoveOldestMessageWhenFull() {
+        final List<byte[]> oldest = fragmenter.split(createMessage(600), 1234);
+        assertNull(add(oldest.get(0), "192.168.1.2", 0));
+
+        for (int i = 1; i < MessageReassembler.MAX_PARTIAL_MESSAGES; i++) {
+            assertNull(add(fragmenter.split(createMessage(600), 1234).get(0), "192.168.1.2", 0));
+        }
+
+        assertEquals(MessageReassembler.MAX_PARTIAL_MESSAGES, reassembler.getPartialMessageCount());
+
+        assertNull(add(fragmenter.split(createMessage(600), 1234).get(0), "192.168.1.2", 0));
+        assertEquals(MessageReassembler.MAX_PARTIAL_MESSAGES, reassembler.getPartialMessageCount());
+
+        // The first fragment of the oldest message is gone, so this starts a new message
+        assertNull(add(oldest.get(1), "192.168.1.2", 0));
+    }
+
+    @Test
+    public void addFragmentShouldIgnoreInvalidFragments() {
+        final byte[] fragment = fragmenter.split(createMessage(600), 1234).get(0);
+
+        assertNull(add(Arrays.copyOf(fragment, 5), "192.168.1.2", 0));
+
+        final byte[] wrongMarker = fragment.clone();
+        wrongMarker[0] = 0x01;
+        assertNull(add(wrongMarker, "192.168.1.2", 0));
+
+        final byte[] indexTooHigh = fragment.clone();
+        indexTooHigh[9] = 2;
+        assertNull(add(indexTooHigh, "192.168.1.2", 0));
+
+        final byte[] tooManyFragments = fragment.clone();
+        tooManyFragments[10] = (byte) (MessageFragmenter.MAX_FRAGMENTS + 1);
+        assertNull(add(tooManyFragments, "192.168.1.2", 0));
+
+        // Only the last fragment can be shorter than the max
+        assertNull(add(Arrays.copyOf(fragment, fragment.length - 1), "192.168.1.2", 0));
+
+        assertEquals(0, reassembler.getPartialMessageCount());
+    }
+
+    @Test
+    public void addFragmentShouldIgnoreFragmentWithDifferentFragmentCount() {
+        final byte[] message = createMessage(600);
+        final List<byte[]> fragments = fragmenter.split(message, 1234);
+
+        assertNull(add(fragments.get(0), "192.168.1.2", 0));
+
+        final byte[] wrongCount = fragments.get(1).clone();
+        wrongCount[10] = 3;
+        assertNull(add(wrongCount, "192.168.1.2", 0));
+
+        assertTrue(Arrays.equals(message, add(fragments.get(1), "192.168.1.2", 0)));
+    }
+
+    @Test
+    public void addFragmentShouldMoveBufferPositionToLimit() {
+        final ByteBuffer buffer = ByteBuffer.wrap(fragmenter.split(createMessage(600), 1234).get(0));
+
+        reassembler.addFragment(buffer, "192.168.1.2", 0);
+
+        assertFalse(buffer.hasRemaining());
+    }
+
+    private byte[] add(final byte[] fragment, final String ipAddress, final long now) {
+        return reassembler.addFragment(ByteBuffer.wrap(fragment), ipAddress, now);
+    }
+
+    private byte[] createMessage(final int size) {
+        final byte[] message = new byte[size];
+
+        for (int i = 0; i < size; i++) {
+            message[i] = (byte) (i * 7);
+        }
+
+        return message;
+    }
+}
@@ -0,0 +1,125 @@
+
+/***************************************************************************
+ *   Copyright 2006-2018 by Christian Ihle                                 *
+ *   contact@kouchat.net                                                   *
+ *                                                                         *
+ *   This file is part of KouChat.                                         *
+ *                                                                         *
+ *   KouChat is free software; you can redistribute it and/or modify       *
+ *   it under the terms of the GNU Lesser General Public License as        *
+ *   published by the Free Software Foundation, either version 3 of        *
+ *   the License, or (at your option) any later version.                   *
+ *                                                                         *
+ *   KouChat is distributed in the hope that it will be useful,            *
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of        *
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU      *
+ *   Lesser General Public License for more details.                       *
+ *                                                                         *
+ *   You should have received a copy of the GNU Lesser General Public      *
+ *   License along with KouChat.                                           *
+ *   If not, see <http://www.gnu.org/licenses/>.                           *
+ ***************************************************************************/
+
+package net.usikkert.kouchat.net;
+
+import static org.junit.Assert.*;
+
+import java.nio.ByteBuffer;
+
+import net.usikkert.kouchat.junit.ExpectedException;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+
+/**
+ * Test of {@link MessageSequencer}.
+ *
+ * @author Christian Ihle
+ */
+@SuppressWarnings("HardCodedStringLiteral")
+public class MessageSequencerTest {
+
+    @Rule
+    public ExpectedException expectedException = ExpectedException.none();
+
+    private MessageSequencer sequencer;
+
+    @Before
+    public void setUp() {
+        sequencer = new MessageSequencer();
+    }
+
+    @Test
+    public void nextSequenceNumberShouldCountFromOne() {
+        assertEquals(1, sequencer.nextSequenceNumber());
+        assertEquals(2, sequencer.nextSequenceNumber());
+        assertEquals(3, sequencer.nextSequenceNumber());
+    }
+
+    @Test
+    public void addSequenceNumberToTextShouldThrowExceptionIfMessageIsNull() {
+        expectedException.expect(IllegalArgumentException.class);
+        expectedException.expectMessage("Message can not be null");
+
+        sequencer.addSequenceNumber((String) null, 1);
+    }
+
+    @Test
+    public void addSequenceNumberToTextShouldAddNumberBetweenMarkers() {
+        assertEquals("~15~12345!MSG#Christian:[-15987646]Hello", sequencer.addSequenceNumber("12345!MSG#Christian:[-15987646]Hello", 15));
+        assertEquals("~-8~12345!IDLE#Christian:", sequencer.addSequenceNumber("12345!IDLE#Christian:", -8));
+    }
+
+    @Test
+    public void addSequenceNumberToBinaryShouldThrowExceptionIfMessageIsNull() {
+        expectedException.expect(IllegalArgumentException.class);
+        expectedException.expectMessage("Message can not be null");
+
+        sequencer.addSequenceNumber((byte[]) null, 1);
+    }
+
+    @Test
+    public void addSequenceNumberToBinaryShouldAddHeader() {
+        final byte[] message = sequencer.addSequenceNumber(new byte[] {1, 2, 3}, 300);
+
+        final ByteBuffer buffer = ByteBuffer.wrap(message);
+        assertEquals(8, message.length);
+        assertEquals(MessageSequencer.SEQUENCED_BINARY, buffer.get());
+        assertEquals(300, buffer.getInt());
+        assertEquals(1, buffer.get());
+        assertEquals(2, buffer.get());
+        assertEquals(3, buffer.get());
+    }
+
+    @Test
+    public void isSequencedShouldCheckFirstCharacter() {
+        assertTrue(MessageSequencer.isSequenced("~1~12345!IDLE#Christian:"));
+        assertFalse(MessageSequencer.isSequenced("12345!IDLE#Christian:"));
+        assertFalse(MessageSequencer.isSequenced(""));
+    }
+
+    @Test
+    public void findSequenceEndShouldFindSecondMarker() {
+        assertEquals(2, MessageSequencer.findSequenceEnd("~1~12345!IDLE#Christian:"));
+        assertEquals(12, MessageSequencer.findSequenceEnd("~-2147483648~12345!IDLE#Christian:"));
+    }
+
+    @Test
+    public void findSequenceEndShouldReturnMinusOneIfNumberIsMissingOrTooLong() {
+        assertEquals(-1, MessageSequencer.findSequenceEnd("~~12345!IDLE#Christian:"));
+        assertEquals(-1, MessageSequencer.findSequenceEnd("~12345!IDLE#Christian:"));
+        assertEquals(-1, MessageSequencer.findSequenceEnd("~123456789012~12345!IDLE#Christian:"));
+    }
+
+    @Test
+    public void readSequenceNumberShouldReadNumber() {
+        assertEquals(Integer.valueOf(123), MessageSequencer.readSequenceNumber("~123~12345!IDLE#Christian:", 4));
+        assertEquals(Integer.valueOf(-5), MessageSequencer.readSequenceNumber("~-5~12345!IDLE#Christian:", 3));
+    }
+
+    @Test
+    public void readSequenceNumberShouldReturnNullIfNotANumber() {
+        assertNull(MessageSequencer.readSequenceNumber("~1x3~12345!IDLE#Christian:", 4));
+    }
+}
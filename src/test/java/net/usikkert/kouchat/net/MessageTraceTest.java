@@ -0,0 +1,155 @@
+
+/***************************************************************************
+ *   Copyright 2006-2018 by Christian Ihle                                 *
+ *   contact@kouchat.net                                                   *
+ *                                                                         *
+ *   This file is part of KouChat.                                         *
+ *                                                                         *
+ *   KouChat is free software; you can redistribute it and/or modify       *
+ *   it under the terms of the GNU Lesser General Public License as        *
+ *   published by the Free Software Foundation, either version 3 of        *
+ *   the License, or (at your option) any later version.                   *
+ *                                                                         *
+ *   KouChat is distributed in the hope that it will be useful,            *
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of        *
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU      *
+ *   Lesser General Public License for more details.                       *
+ *                                                                         *
+ *   You should have received a copy of the GNU Lesser General Public      *
+ *   License along with KouChat.                                           *
+ *   If not, see <http://www.gnu.org/licenses/>.                           *
+ ***************************************************************************/
+
+package net.usikkert.kouchat.net;
+
+import static org.junit.Assert.*;
+
+import net.usikkert.kouchat.net.LatencyStatistics.Stage;
+import net.usikkert.kouchat.net.transport.TransportChannel;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Test of {@link MessageTrace}.
+ *
+ * @author Christian Ihle
+ */
+@SuppressWarnings("HardCodedStringLiteral")
+public class MessageTraceTest {
+
+    private LatencyStatistics statistics;
+
+    @Before
+    public void setUp() {
+        statistics = new LatencyStatistics();
+    }
+
+    @After
+    public void tearDown() {
+        MessageTrace.end();
+    }
+
+    @Test
+    public void chatMessageShouldBeRecordedWhenAppended() {
+        MessageTrace.start(statistics, TransportChannel.MULTICAST);
+        MessageTrace.markDeduplicated();
+        MessageTrace.markParsed(-1);
+        MessageTrace.markResponded();
+        MessageTrace.markAppended();
+
+        for (final Stage stage : Stage.values()) {
+            assertEquals(1, statistics.getStageLatency(stage).getCount());
+        }
+
+        assertEquals(1, statistics.getLocalLatency().getCount());
+        assertEquals(0, statistics.getEndToEndLatency(TransportChannel.MULTICAST).getCount());
+    }
+
+    @Test
+    public void chatMessageWithSendTimestampShouldRecordEndToEndLatencyOfTheChannel() {
+        MessageTrace.start(statistics, TransportChannel.TCP);
+        MessageTrace.markParsed(System.currentTimeMillis() - 50);
+        MessageTrace.markResponded();
+        MessageTrace.markAppended();
+
+        assertEquals(1, statistics.getEndToEndLatency(TransportChannel.TCP).getCount());
+        assertTrue(statistics.getEndToEndLatency(TransportChannel.TCP).getMax() >= 50000);
+        assertEquals(0, statistics.getEndToEndLatency(TransportChannel.MULTICAST).getCount());
+    }
+
+    @Test
+    public void skippedStagesShouldTakeNoTime() {
+        MessageTrace.start(statistics, TransportChannel.PRIVATE_UDP);
+        MessageTrace.markParsed(-1);
+        MessageTrace.markResponded();
+        MessageTrace.markAppended();
+
+        assertEquals(1, statistics.getStageLatency(Stage.DEDUPLICATE).getCount());
+        assertEquals(0, statistics.getStageLatency(Stage.PARSE).getMax());
+    }
+
+    @Test
+    public void otherMessagesShouldNotBeRecorded() {
+        MessageTrace.start(statistics, TransportChannel.MULTICAST);
+        MessageTrace.markDeduplicated();
+        MessageTrace.markResponded();
+        MessageTrace.markAppended();
+
+        assertEquals(0, statistics.getLocalLatency().getCount());
+        assertNull(MessageTrace.defer());
+    }
+
+    @Test
+    public void nothingShouldHappenWithoutTrace() {
+        MessageTrace.markDeduplicated();
+        MessageTrace.markParsed(1);
+        MessageTrace.markResponded();
+        MessageTrace.markAppended();
+
+        assertNull(MessageTrace.defer());
+        assertEquals(0, statistics.getLocalLatency().getCount());
+    }
+
+    @Test
+    public void endShouldRemoveTrace() {
+        MessageTrace.start(statistics, TransportChannel.MULTICAST);
+        MessageTrace.end();
+
+        MessageTrace.markParsed(-1);
+        MessageTrace.markResponded();
+        MessageTrace.markAppended();
+
+        assertEquals(0, statistics.getLocalLatency().getCount());
+    }
+
+    @Test
+    public void deferredTraceShouldBeRecordedWhenAppendedLater() {
+        MessageTrace.start(statistics, TransportChannel.MULTICAST);
+        MessageTrace.markParsed(-1);
+        MessageTrace.markResponded();
+
+        final MessageTrace trace = MessageTrace.defer();
+        assertNotNull(trace);
+
+        MessageTrace.markAppended();
+        assertEquals(0, statistics.getLocalLatency().getCount());
+
+        trace.appended();
+        assertEquals(1, statistics.getLocalLatency().getCount());
+    }
+
+    @Test
+    public void deferShouldOnlyReturnTraceOfChatMessageBeingShown() {
+        MessageTrace.start(statistics, TransportChannel.MULTICAST);
+        MessageTrace.markParsed(-1);
+
+        assertNull(MessageTrace.defer());
+
+        MessageTrace.markResponded();
+
+        assertNotNull(MessageTrace.defer());
+        assertNull(MessageTrace.defer());
+    }
+}
@@ -0,0 +1,221 @@
+
+/***************************************************************************
+ *   Copyright 2006-2018 by Christian Ihle                                 *
+ *   contact@kouchat.net                                                   *
+ *                                                                         *
+ *   This file is part of KouChat.                                         *
+ *                                                                         *
+ *   KouChat is free software; you can redistribute it and/or modify       *
+ *   it under the terms of the GNU Lesser General Public License as        *
+ *   published by the Free Software Foundation, either version 3 of        *
+ *   the License, or (at your option) any later version.                   *
+ *                                                                         *
+ *   KouChat is distributed in the hope that it will be useful,            *
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of        *
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU      *
+ *   Lesser General Public License for more details.                       *
+ *                                                                         *
+ *   You should have received a copy of the GNU Lesser General Public      *
+ *   License along with KouChat.                                           *
+ *   If not, see <http://www.gnu.org/licenses/>.                           *
+ ***************************************************************************/
+
+package net.usikkert.kouchat.net;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import net.usikkert.kouchat.event.MissingMessageListener;
+import net.usikkert.kouchat.junit.ExpectedException;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+
+/**
+ * Test of {@link MissingMessageTracker}.
+ *
+ * @author Christian Ihle
+ */
+@SuppressWarnings("HardCodedStringLiteral")
+public class MissingMessageTrackerTest {
+
+    private static final long MILLIS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    private static final long AFTER_FIRST_DELAY = MissingMessageTracker.NACK_MAX_DELAY_MS * MILLIS;
+    private static final long BEFORE_FIRST_DELAY = MissingMessageTracker.NACK_MIN_DELAY_MS * MILLIS - 1;
+    private static final long AFTER_RETRY_DELAY =
+            (MissingMessageTracker.NACK_RETRY_DELAY_MS + MissingMessageTracker.NACK_MAX_DELAY_MS) * MILLIS;
+
+    @Rule
+    public ExpectedException expectedException = ExpectedException.none();
+
+    private MissingMessageTracker tracker;
+    private SequenceWindow window;
+
+    @Before
+    public void setUp() {
+        tracker = new MissingMessageTracker();
+        window = new SequenceWindow();
+    }
+
+    @Test
+    public void messageArrivedShouldThrowExceptionIfWindowIsNull() {
+        expectedException.expect(IllegalArgumentException.class);
+        expectedException.expectMessage("Sequence window can not be null");
+
+        tracker.messageArrived(12345, 1, null, 0);
+    }
+
+    @Test
+    public void nackArrivedShouldThrowExceptionIfSequenceNumbersIsNull() {
+        expectedException.expect(IllegalArgumentException.class);
+        expectedException.expectMessage("Sequence numbers can not be null");
+
+        tracker.nackArrived(12345, null, 0);
+    }
+
+    @Test
+    public void messagesInOrderShouldNotBeMissing() {
+        arrive(1, 0);
+        arrive(2, 0);
+        arrive(3, 0);
+
+        assertEquals(0, tracker.getMissingMessages());
+        assertTrue(tracker.getDueNacks(AFTER_FIRST_DELAY).isEmpty());
+    }
+
+    @Test
+    public void skippedMessagesShouldBeAskedForAfterRandomDelay() {
+        arrive(1, 0);
+        arrive(4, 0);
+
+        assertEquals(2, tracker.getMissingMessages());
+        assertTrue(tracker.getDueNacks(BEFORE_FIRST_DELAY).isEmpty());
+
+        final Map<Integer, List<Integer>> dueNacks = tracker.getDueNacks(AFTER_FIRST_DELAY);
+        assertEquals(1, dueNacks.size());
+        assertEquals(Arrays.asList(2, 3), dueNacks.get(12345));
+    }
+
+    @Test
+    public void messagesThatArriveLateShouldNotBeAskedFor() {
+        arrive(1, 0);
+        arrive(4, 0);
+        arrive(3, 0);
+
+        assertEquals(Arrays.asList(2), tracker.getDueNacks(AFTER_FIRST_DELAY).get(12345));
+        assertEquals(1, tracker.getMissingMessages());
+    }
+
+    @Test
+    public void messagesThatArriveOnAnotherTransportShouldNotBeAskedFor() {
+        arrive(1, 0);
+        arrive(3, 0);
+        window.accept(2);
+
+        assertTrue(tracker.getDueNacks(AFTER_FIRST_DELAY).isEmpty());
+        assertEquals(0, tracker.getMissingMessages());
+    }
+
+    @Test
+    public void missingMessageShouldBeAskedForAgainAfterRetryDelay() {
+        arrive(1, 0);
+        arrive(3, 0);
+
+        assertEquals(1, tracker.getDueNacks(AFTER_FIRST_DELAY).size());
+        assertTrue(tracker.getDueNacks(AFTER_FIRST_DELAY + 1).isEmpty());
+        assertEquals(1, tracker.getDueNacks(AFTER_FIRST_DELAY + AFTER_RETRY_DELAY).size());
+    }
+
+    @Test
+    public void missingMessageShouldBeForgottenAfterMaxAttempts() {
+        arrive(1, 0);
+        arrive(3, 0);
+
+        long now = AFTER_FIRST_DELAY;
+
+        for (int i = 0; i < MissingMessageTracker.MAX_ATTEMPTS; i++) {
+            assertEquals(Arrays.asList(2), tracker.getDueNacks(now).get(12345));
+            now += AFTER_RETRY_DELAY;
+        }
+
+        assertTrue(tracker.getDueNacks(now).isEmpty());
+        assertEquals(0, tracker.getMissingMessages());
+    }
+
+    @Test
+    public void nackFromAnotherUserShouldSuppressNack() {
+        arrive(1, 0);
+        arrive(4, 0);
+
+        tracker.nackArrived(12345, Arrays.asList(2), MILLIS);
+
+        assertEquals(Arrays.asList(3), tracker.getDueNacks(AFTER_FIRST_DELAY).get(12345));
+        assertEquals(Arrays.asList(2), tracker.getDueNacks(MILLIS + AFTER_RETRY_DELAY).get(12345));
+    }
+
+    @Test
+    public void nackForUnknownUserShouldBeIgnored() {
+        tracker.nackArrived(99999, Collections.singletonList(1), 0);
+
+        assertEquals(0, tracker.getMissingMessages());
+    }
+
+    @Test
+    public void onlyTheLastMissingMessagesShouldBeTracked() {
+        arrive(1, 0);
+        arrive(1000, 0);
+
+        assertEquals(MissingMessageTracker.MAX_MISSING_MESSAGES, tracker.getMissingMessages());
+
+        final List<Integer> dueNacks = tracker.getDueNacks(AFTER_FIRST_DELAY).get(12345);
+        assertEquals(MissingMessageTracker.MAX_MISSING_MESSAGES, dueNacks.size());
+        assertEquals(Integer.valueOf(1000 - MissingMessageTracker.MAX_MISSING_MESSAGES), dueNacks.get(0));
+        assertEquals(Integer.valueOf(999), dueNacks.get(dueNacks.size() - 1));
+    }
+
+    @Test
+    public void missingMessagesShouldBeTrackedPerUser() {
+        final SequenceWindow otherWindow = new SequenceWindow();
+
+        arrive(1, 0);
+        arrive(3, 0);
+        otherWindow.accept(10);
+        tracker.messageArrived(67890, 10, otherWindow, 0);
+        otherWindow.accept(12);
+        tracker.messageArrived(67890, 12, otherWindow, 0);
+
+        final Map<Integer, List<Integer>> dueNacks = tracker.getDueNacks(AFTER_FIRST_DELAY);
+        assertEquals(Arrays.asList(2), dueNacks.get(12345));
+        assertEquals(Arrays.asList(11), dueNacks.get(67890));
+    }
+
+    @Test
+    public void listenerShouldOnlyBeNotifiedWhenMessagesAreSkipped() {
+        final MissingMessageListener listener = mock(MissingMessageListener.class);
+        tracker.registerMissingMessageListener(listener);
+
+        arrive(1, 0);
+        arrive(2, 0);
+        arrive(2, 0);
+        verify(listener, never()).messagesMissing();
+
+        arrive(5, 0);
+        verify(listener).messagesMissing();
+
+        arrive(3, 0);
+        verify(listener).messagesMissing();
+    }
+
+    private void arrive(final int sequenceNumber, final long now) {
+        window.accept(sequenceNumber);
+        tracker.messageArrived(12345, sequenceNumber, window, now);
+    }
+}
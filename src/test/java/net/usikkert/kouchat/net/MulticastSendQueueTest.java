@@ -0,0 +1,282 @@
+
+/***************************************************************************
+ *   Copyright 2006-2018 by Christian Ihle                                 *
+ *   contact@kouchat.net                                                   *
+ *                                                                         *
+ *   This file is part of KouChat.                                         *
+ *                                                                         *
+ *   KouChat is free software; you can redistribute it and/or modify       *
+ *   it under the terms of the GNU Lesser General Public License as        *
+ *   published by the Free Software Foundation, either version 3 of        *
+ *   the License, or (at your option) any later version.                   *
+ *                                                                         *
+ *   KouChat is distributed in the hope that it will be useful,            *
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of        *
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU      *
+ *   Lesser General Public License for more details.                       *
+ *                                                                         *
+ *   You should have received a copy of the GNU Lesser General Public      *
+ *   License along with KouChat.                                           *
+ *   If not, see <http://www.gnu.org/licenses/>.                           *
+ ***************************************************************************/
+
+package net.usikkert.kouchat.net;
+
+import static org.junit.Assert.*;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+import net.usikkert.kouchat.Constants;
+import net.usikkert.kouchat.junit.ExpectedException;
+
+import org.junit.Rule;
+import org.junit.Test;
+
+/**
+ * Test of {@link MulticastSendQueue}.
+ *
+ * @author Christian Ihle
+ */
+@SuppressWarnings("HardCodedStringLiteral")
+public class MulticastSendQueueTest {
+
+    private static final Charset CHARSET = Charset.forName(Constants.MESSAGE_CHARSET);
+
+    private static final long MILLIS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    @Rule
+    public ExpectedException expectedException = ExpectedException.none();
+
+    @Test
+    public void constructorShouldThrowExceptionIfPacketsPerSecondIsNegative() {
+        expectedException.expect(IllegalArgumentException.class);
+        expectedException.expectMessage("Packets per second can not be negative");
+
+        new MulticastSendQueue(-1);
+    }
+
+    @Test
+    public void offerShouldThrowExceptionIfEncodedMessageIsNull() {
+        expectedException.expect(IllegalArgumentException.class);
+        expectedException.expectMessage("Encoded message can not be null");
+
+        new MulticastSendQueue(0).offer(null, "message", true);
+    }
+
+    @Test
+    public void peekShouldReturnNullWhenEmpty() {
+        final MulticastSendQueue queue = new MulticastSendQueue(0);
+
+        assertNull(queue.peek(0));
+        assertEquals(0, queue.getNanosUntilNextPacket(0));
+    }
+
+    @Test
+    public void peekShouldReturnSingleMessageUnchanged() {
+        final MulticastSendQueue queue = new MulticastSendQueue(0);
+        queue.offer(bytes("123!WRITING#Tester:"), "123!WRITING#Tester:", true);
+
+        final MulticastSendQueue.Packet packet = queue.peek(0);
+
+        assertEquals("123!WRITING#Tester:", string(packet.getBuffer()));
+        assertEquals(Arrays.asList("123!WRITING#Tester:"), packet.getMessages());
+    }
+
+    @Test
+    public void peekShouldCombineWaitingMessages() {
+        final MulticastSendQueue queue = new MulticastSendQueue(0);
+        queue.offer(bytes("123!WRITING#Tester:"), "123!WRITING#Tester:", true);
+        queue.offer(bytes("123!AWAY#Tester:Lunch"), "123!AWAY#Tester:Lunch", true);
+
+        final MulticastSendQueue.Packet packet = queue.peek(0);
+        final ByteBuffer buffer = packet.getBuffer();
+
+        assertEquals(Arrays.asList("123!WRITING#Tester:", "123!AWAY#Tester:Lunch"), packet.getMessages());
+        assertEquals(1 + 2 + 19 + 2 + 21, buffer.remaining());
+
+        assertEquals(MulticastSendQueue.MULTI_MESSAGE, buffer.get());
+        assertEquals("123!WRITING#Tester:", readMessage(buffer));
+        assertEquals("123!AWAY#Tester:Lunch", readMessage(buffer));
+        assertFalse(buffer.hasRemaining());
+
+        queue.remove(0);
+        assertNull(queue.peek(0));
+    }
+
+    @Test
+    public void peekShouldNotCombineMessagesThatAreNotCombinable() {
+        final MulticastSendQueue queue = new MulticastSendQueue(0);
+        queue.offer(bytes("123!WRITING#Tester:"), "123!WRITING#Tester:", true);
+        queue.offer(bytes("123!LOGON#Tester:"), "123!LOGON#Tester:", false);
+        queue.offer(bytes("123!IDLE#Tester:"), "123!IDLE#Tester:", true);
+
+        assertEquals(Arrays.asList("123!WRITING#Tester:"), queue.peek(0).getMessages());
+        queue.remove(0);
+
+        final MulticastSendQueue.Packet packet = queue.peek(0);
+        assertEquals(Arrays.asList("123!LOGON#Tester:"), packet.getMessages());
+        assertEquals("123!LOGON#Tester:", string(packet.getBuffer()));
+        queue.remove(0);
+
+        assertEquals(Arrays.asList("123!IDLE#Tester:"), queue.peek(0).getMessages());
+    }
+
+    @Test
+    public void peekShouldOnlyCombineMessagesThatFitInOnePacket() {
+        final MulticastSendQueue queue = new MulticastSendQueue(0);
+        final byte[] message = new byte[200];
+
+        queue.offer(message, "1", true);
+        queue.offer(message, "2", true);
+        queue.offer(message, "3", true);
+
+        final MulticastSendQueue.Packet packet = queue.peek(0);
+        assertEquals(Arrays.asList("1", "2"), packet.getMessages());
+        assertTrue(packet.getBuffer().remaining() <= Constants.NETWORK_PACKET_SIZE);
+        queue.remove(0);
+
+        assertEquals(Arrays.asList("3"), queue.peek(0).getMessages());
+    }
+
+    @Test
+    public void peekShouldReturnSamePacketUntilRemoved() {
+        final MulticastSendQueue queue = new MulticastSendQueue(0);
+        queue.offer(bytes("1"), "1", true);
+
+        final MulticastSendQueue.Packet packet = queue.peek(0);
+        queue.offer(bytes("2"), "2", true);
+
+        assertSame(packet, queue.peek(0));
+        assertEquals(2, queue.size());
+
+        queue.remove(0);
+
+        assertEquals(Arrays.asList("2"), queue.peek(0).getMessages());
+    }
+
+    @Test
+    public void peekShouldPacePackets() {
+        // 10 packets per second gives a burst of 2 packets, and then one every 100 ms
+        final MulticastSendQueue queue = new MulticastSendQueue(10);
+
+        for (int i = 0; i < 5; i++) {
+            queue.offer(bytes("" + i), "" + i, false);
+        }
+
+        final long start = 1000 * MILLIS;
+
+        assertNotNull(queue.peek(start));
+        queue.remove(start);
+        assertNotNull(queue.peek(start));
+        queue.remove(start);
+
+        assertNull(queue.peek(start));
+        assertEquals(100 * MILLIS, queue.getNanosUntilNextPacket(start));
+        assertNull(queue.peek(start + 99 * MILLIS));
+
+        assertEquals(Arrays.asList("2"), queue.peek(start + 100 * MILLIS).getMessages());
+        queue.remove(start + 100 * MILLIS);
+
+        assertNull(queue.peek(start + 150 * MILLIS));
+        assertEquals(50 * MILLIS, queue.getNanosUntilNextPacket(start + 150 * MILLIS));
+    }
+
+    @Test
+    public void peekShouldAllowNewBurstAfterBeingIdle() {
+        final MulticastSendQueue queue = new MulticastSendQueue(10);
+
+        for (int i = 0; i < 4; i++) {
+            queue.offer(bytes("" + i), "" + i, false);
+        }
+
+        final long start = -5000 * MILLIS;
+
+        queue.peek(start);
+        queue.remove(start);
+        queue.peek(start);
+        queue.remove(start);
+
+        final long later = start + 10000 * MILLIS;
+
+        assertNotNull(queue.peek(later));
+        queue.remove(later);
+        assertNotNull(queue.peek(later));
+        queue.remove(later);
+        assertNull(queue.peek(later));
+    }
+
+    @Test
+    public void peekShouldNeverPacePacketsWhenPacketsPerSecondIsZero() {
+        final MulticastSendQueue queue = new MulticastSendQueue(0);
+
+        for (int i = 0; i < 100; i++) {
+            queue.offer(bytes("" + i), "" + i, false);
+        }
+
+        for (int i = 0; i < 100; i++) {
+            assertEquals(Arrays.asList("" + i), queue.peek(0).getMessages());
+            queue.remove(0);
+            assertEquals(0, queue.getNanosUntilNextPacket(0));
+        }
+
+        assertNull(queue.peek(0));
+    }
+
+    @Test
+    public void getNanosUntilNextPacketShouldReturnZeroWhenEmptyEvenIfPaced() {
+        final MulticastSendQueue queue = new MulticastSendQueue(1);
+        queue.offer(bytes("1"), "1", false);
+
+        queue.peek(0);
+        queue.remove(0);
+
+        assertEquals(0, queue.getNanosUntilNextPacket(0));
+
+        queue.offer(bytes("2"), "2", false);
+
+        assertEquals(TimeUnit.SECONDS.toNanos(1), queue.getNanosUntilNextPacket(0));
+    }
+
+    @Test
+    public void offerShouldReturnFalseWhenQueueIsFull() {
+        final MulticastSendQueue queue = new MulticastSendQueue(0);
+
+        for (int i = 0; i < 1000; i++) {
+            assertTrue(queue.offer(bytes("1"), "1", false));
+        }
+
+        assertFalse(queue.offer(bytes("1"), "1", false));
+        assertEquals(1000, queue.size());
+    }
+
+    @Test
+    public void clearShouldRemoveAllMessages() {
+        final MulticastSendQueue queue = new MulticastSendQueue(0);
+        queue.offer(bytes("1"), "1", true);
+        queue.peek(0);
+        queue.offer(bytes("2"), "2", true);
+
+        queue.clear();
+
+        assertEquals(0, queue.size());
+        assertNull(queue.peek(0));
+    }
+
+    private byte[] bytes(final String message) {
+        return message.getBytes(CHARSET);
+    }
+
+    private String string(final ByteBuffer buffer) {
+        return CHARSET.decode(buffer.duplicate()).toString();
+    }
+
+    private String readMessage(final ByteBuffer buffer) {
+        final byte[] message = new byte[buffer.getShort() & 0xFFFF];
+        buffer.get(message);
+
+        return new String(message, CHARSET);
+    }
+}
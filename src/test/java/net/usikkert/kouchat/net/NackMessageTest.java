@@ -0,0 +1,93 @@
+
+/***************************************************************************
+ *   Copyright 2006-2018 by Christian Ihle                                 *
+ *   contact@kouchat.net                                                   *
+ *                                                                         *
+ *   This file is part of KouChat.                                         *
+ *                                                                         *
+ *   KouChat is free software; you can redistribute it and/or modify       *
+ *   it under the terms of the GNU Lesser General Public License as        *
+ *   published by the Free Software Foundation, either version 3 of        *
+ *   the License, or (at your option) any later version.                   *
+ *                                                                         *
+ *   KouChat is distributed in the hope that it will be useful,            *
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of        *
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU      *
+ *   Lesser General Public License for more details.                       *
+ *                                                                         *
+ *   You should have received a copy of the GNU Lesser General Public      *
+ *   License along with KouChat.                                           *
+ *   If not, see <http://www.gnu.org/licenses/>.                           *
+ ***************************************************************************/
+
+package net.usikkert.kouchat.net;
+
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+
+import net.usikkert.kouchat.junit.ExpectedException;
+import net.usikkert.kouchat.misc.User;
+
+import org.junit.Rule;
+import org.junit.Test;
+
+/**
+ * Test of {@link NackMessage}.
+ *
+ * @author Christian Ihle
+ */
+@SuppressWarnings("HardCodedStringLiteral")
+public class NackMessageTest {
+
+    @Rule
+    public ExpectedException expectedException = ExpectedException.none();
+
+    @Test
+    public void constructorShouldThrowExceptionIfSequenceNumbersIsNull() {
+        expectedException.expect(IllegalArgumentException.class);
+        expectedException.expectMessage("Sequence numbers can not be null");
+
+        new NackMessage(12345, null);
+    }
+
+    @Test
+    public void toMessageShouldThrowExceptionIfMeIsNull() {
+        expectedException.expect(IllegalArgumentException.class);
+        expectedException.expectMessage("Me can not be null");
+
+        new NackMessage(12345, Arrays.asList(1)).toMessage(null);
+    }
+
+    @Test
+    public void toMessageShouldIncludeUserCodeAndSequenceNumbers() {
+        final NackMessage nackMessage = new NackMessage(67890, Arrays.asList(4, 5, -6));
+
+        assertEquals("12345!NACK#Christian:67890:4,5,-6", nackMessage.toMessage(new User("Christian", 12345)));
+    }
+
+    @Test
+    public void parseShouldReadUserCodeAndSequenceNumbers() {
+        final NackMessage nackMessage = NackMessage.parse("12345!NACK#Christian:67890:4,5,-6");
+
+        assertNotNull(nackMessage);
+        assertEquals(67890, nackMessage.getUserCode());
+        assertEquals(Arrays.asList(4, 5, -6), nackMessage.getSequenceNumbers());
+    }
+
+    @Test
+    public void parseShouldReturnNullForInvalidMessages() {
+        assertNull(NackMessage.parse("12345!NACK#Christian:67890:"));
+        assertNull(NackMessage.parse("12345!NACK#Christian:67890:4,x"));
+        assertNull(NackMessage.parse("12345!NACK#Christian:4,5"));
+        assertNull(NackMessage.parse("12345!MSG#Christian:67890:4,5"));
+        assertNull(NackMessage.parse(""));
+    }
+
+    @Test
+    public void getSequenceNumbersShouldNotBeModifiable() {
+        expectedException.expect(UnsupportedOperationException.class);
+
+        new NackMessage(67890, Arrays.asList(1)).getSequenceNumbers().add(2);
+    }
+}
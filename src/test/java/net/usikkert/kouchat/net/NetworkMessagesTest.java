@@ -104,16 +104,34 @@ public class NetworkMessagesTest {
         verify(service).sendMessageToAllUsers(createMessage("MSG") + "[" + settings.getOwnColor() + "]" + msg);
     }
 
+    /**
+     * Tests sendChatMessage() with latency timestamps enabled.
+     *
+     * Expects: 16899115!MSG#Christian:[-15987646;1356994800000]Some chat message
+     *
+     * @throws CommandException In case the message could not be sent.
+     */
+    @Test
+    public void testSendChatMessageWithLatencyTimestamp() throws CommandException {
+        when(service.isLatencyTimestampsEnabled()).thenReturn(true);
+
+        final String msg = "Some chat message";
+        messages.sendChatMessage(msg);
+
+        verify(service).sendMessageToAllUsers(
+                matches(createMessage("MSG") + "\\[" + settings.getOwnColor() + ";\\d+\\]" + msg));
+    }
+
     /**
      * Tests sendClient().
      *
-     * Expects: 13132531!CLIENT#Christian:(KouChat v0.9.9-dev null)[134]{Linux}<2222>/4444\
+     * Expects: 13132531!CLIENT#Christian:(KouChat v0.9.9-dev null)[134]{Linux}<2222>/4444\|255|
      */
     @Test
     public void testSendClientMessage() {
         final String startsWith = "(" + me.getClient() + ")[";
         final String middle = ".+\\)\\[\\d+\\]\\{.+"; // like:)[134[{
-        final String endsWidth = "]{" + me.getOperatingSystem() + "}<2222>/4444\\";
+        final String endsWidth = "]{" + me.getOperatingSystem() + "}<2222>/4444\\|255|";
 
         messages.sendClient();
 
@@ -313,6 +331,26 @@ public class NetworkMessagesTest {
         verify(service).sendMessageToUser(createMessage("PRIVMSG") + message, user);
     }
 
+    /**
+     * Tests sendPrivateMessage() with latency timestamps enabled, to a user that supports them.
+     *
+     * Expects: 10897608!PRIVMSG#Christian:(435435)[-15987646;1356994800000]this is a private message
+     *
+     * @throws CommandException In case the message could not be sent.
+     */
+    @Test
+    public void testSendPrivateMessageWithLatencyTimestamp() throws CommandException {
+        when(settings.isLatencyTimestamps()).thenReturn(true);
+
+        final User user = new User("TestUser", 435435);
+        user.setCapabilities(NetworkCapabilities.LATENCY_TIMESTAMPS);
+
+        messages.sendPrivateMessage("this is a private message", user);
+
+        verify(service).sendMessageToUser(
+                matches(".+\\(435435\\)\\[" + settings.getOwnColor() + ";\\d+\\]this is a private message"), eq(user));
+    }
+
     /**
      * Tests sendStoppedWritingMessage().
      *
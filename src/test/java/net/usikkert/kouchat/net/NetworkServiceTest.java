@@ -25,17 +25,25 @@ package net.usikkert.kouchat.net;
 import static org.junit.Assert.*;
 import static org.mockito.Mockito.*;
 
+import java.nio.ByteBuffer;
+
+import net.usikkert.kouchat.event.NetworkConnectionListener;
+import net.usikkert.kouchat.event.ReceiverListener;
 import net.usikkert.kouchat.junit.ExpectedException;
 import net.usikkert.kouchat.misc.Controller;
-import net.usikkert.kouchat.misc.ErrorHandler;
+import net.usikkert.kouchat.misc.FlightRecorder;
+import net.usikkert.kouchat.misc.ThreadPools;
 import net.usikkert.kouchat.misc.User;
 import net.usikkert.kouchat.misc.UserList;
+import net.usikkert.kouchat.net.transport.PacketListener;
+import net.usikkert.kouchat.net.transport.Transport;
 import net.usikkert.kouchat.settings.Settings;
 import net.usikkert.kouchat.util.TestUtils;
 
 import org.junit.Before;
 import org.junit.Rule;
 import org.junit.Test;
+import org.mockito.ArgumentCaptor;
 
 /**
  * Test of {@link NetworkService}.
@@ -49,17 +57,20 @@ public class NetworkServiceTest {
     public ExpectedException expectedException = ExpectedException.none();
 
     private Settings settings;
-    private ErrorHandler errorHandler;
+    private Transport transport;
     private Controller controller;
 
     @Before
     public void setUp() {
         settings = mock(Settings.class);
-        errorHandler = mock(ErrorHandler.class);
+        transport = mock(Transport.class);
+        when(transport.getTrafficStatistics()).thenReturn(new TrafficStatistics());
         controller = mock(Controller.class);
 
         when(settings.getMe()).thenReturn(mock(User.class));
         when(controller.getUserList()).thenReturn(mock(UserList.class));
+        when(controller.getThreadPools()).thenReturn(new ThreadPools());
+        when(controller.getFlightRecorder()).thenReturn(new FlightRecorder(16));
     }
 
     @Test
@@ -67,7 +78,7 @@ public class NetworkServiceTest {
         expectedException.expect(IllegalArgumentException.class);
         expectedException.expectMessage("Controller can not be null");
 
-        new NetworkService(null, settings, errorHandler);
+        new NetworkService(null, settings, transport);
     }
 
     @Test
@@ -75,49 +86,67 @@ public class NetworkServiceTest {
         expectedException.expect(IllegalArgumentException.class);
         expectedException.expectMessage("Settings can not be null");
 
-        new NetworkService(controller, null, errorHandler);
+        new NetworkService(controller, null, transport);
     }
 
     @Test
-    public void constructorShouldThrowExceptionIfErrorHandlerIsNull() {
+    public void constructorShouldThrowExceptionIfTransportIsNull() {
         expectedException.expect(IllegalArgumentException.class);
-        expectedException.expectMessage("Error handler can not be null");
+        expectedException.expectMessage("Transport can not be null");
 
         new NetworkService(controller, settings, null);
     }
 
     @Test
-    public void networkServiceShouldLoadPrivateChatObjectsWhenEnabled() {
-        when(settings.isNoPrivateChat()).thenReturn(false);
+    public void constructorShouldRegisterAsListenerOnTransport() {
+        final NetworkService networkService = new NetworkService(controller, settings, transport);
+
+        verify(transport).registerPacketListener(any(PacketListener.class));
+        verify(transport).registerNetworkConnectionListener(networkService);
+    }
+
+    @Test
+    public void connectAndDisconnectShouldStartAndStopTransport() {
+        final NetworkService networkService = new NetworkService(controller, settings, transport);
 
-        final NetworkService networkService = new NetworkService(controller, settings, errorHandler);
+        networkService.connect();
+        verify(transport).start();
 
-        assertNotNull(TestUtils.getFieldValue(networkService, UDPReceiver.class, "udpReceiver"));
-        assertNotNull(TestUtils.getFieldValue(networkService, UDPSender.class, "udpSender"));
+        networkService.disconnect();
+        verify(transport).stop();
     }
 
     @Test
-    public void networkServiceShouldNotLoadPrivateChatObjectsWhenDisabled() {
-        when(settings.isNoPrivateChat()).thenReturn(true);
+    public void registerMainChatMessageReceiverListenerShouldRegisterForTcpMessages() {
+        final NetworkService networkService = new NetworkService(controller, settings, transport);
 
-        final NetworkService networkService = new NetworkService(controller, settings, errorHandler);
+        networkService.registerMainChatMessageReceiverListener(mock(ReceiverListener.class));
 
-        assertNull(TestUtils.getFieldValue(networkService, UDPReceiver.class, "udpReceiver"));
-        assertNull(TestUtils.getFieldValue(networkService, UDPSender.class, "udpSender"));
+        verify(transport).registerTcpReceiverListener(any(MessageDeduplicator.class));
+    }
+
+    @Test
+    public void registerNetworkConnectionListenerShouldRegisterOnTransport() {
+        final NetworkService networkService = new NetworkService(controller, settings, transport);
+        final NetworkConnectionListener listener = mock(NetworkConnectionListener.class);
+
+        networkService.registerNetworkConnectionListener(listener);
+
+        verify(transport).registerNetworkConnectionListener(listener);
     }
 
     @Test
     public void registerPrivateChatReceiverListenerShouldNotFailWhenPrivateChatDisabled() {
         when(settings.isNoPrivateChat()).thenReturn(true);
 
-        final NetworkService networkService = new NetworkService(controller, settings, errorHandler);
+        final NetworkService networkService = new NetworkService(controller, settings, transport);
 
         networkService.registerPrivateChatReceiverListener(null);
     }
 
     @Test
     public void beforeNetworkCameUpShouldDoNothing() {
-        final NetworkService networkService = new NetworkService(controller, settings, errorHandler);
+        final NetworkService networkService = new NetworkService(controller, settings, transport);
 
         networkService.beforeNetworkCameUp();
     }
@@ -126,16 +155,17 @@ public class NetworkServiceTest {
     public void networkCameUpShouldNotFailWhenPrivateChatDisabled() {
         when(settings.isNoPrivateChat()).thenReturn(true);
 
-        final NetworkService networkService = new NetworkService(controller, settings, errorHandler);
+        final NetworkService networkService = new NetworkService(controller, settings, transport);
 
         networkService.networkCameUp(false);
+        networkService.networkWentDown(false);
     }
 
     @Test
     public void networkWentDownShouldNotFailWhenPrivateChatDisabled() {
         when(settings.isNoPrivateChat()).thenReturn(true);
 
-        final NetworkService networkService = new NetworkService(controller, settings, errorHandler);
+        final NetworkService networkService = new NetworkService(controller, settings, transport);
 
         networkService.networkWentDown(false);
     }
@@ -145,9 +175,392 @@ public class NetworkServiceTest {
         when(settings.isNoPrivateChat()).thenReturn(true);
         final User user = new User("User", 111);
 
-        final NetworkService networkService = new NetworkService(controller, settings, errorHandler);
+        final NetworkService networkService = new NetworkService(controller, settings, transport);
 
         final boolean messageSent = networkService.sendMessageToUser("Nothing", user);
         assertFalse(messageSent);
     }
+
+    @Test
+    public void sendMessageToAllUsersShouldSendTextWhenBinaryProtocolIsDisabled() {
+        when(controller.getCapabilitiesSupportedByAllUsers()).thenReturn(NetworkCapabilities.BINARY_MESSAGES);
+
+        final NetworkService networkService = new NetworkService(controller, settings, transport);
+
+        networkService.sendMessageToAllUsers("16320462!IDLE#Christian:");
+
+        verify(transport).sendMessageToAll("16320462!IDLE#Christian:", false);
+        verify(transport, never()).sendBinaryMessageToAll(any(byte[].class), anyString(), anyBoolean());
+    }
+
+    @Test
+    public void sendMessageToAllUsersShouldSendTextWhenSomeUsersDoNotSupportBinaryMessages() {
+        when(settings.isBinaryProtocol()).thenReturn(true);
+        when(controller.getCapabilitiesSupportedByAllUsers()).thenReturn(0);
+
+        final NetworkService networkService = new NetworkService(controller, settings, transport);
+
+        networkService.sendMessageToAllUsers("16320462!IDLE#Christian:");
+
+        verify(transport).sendMessageToAll("16320462!IDLE#Christian:", false);
+        verify(transport, never()).sendBinaryMessageToAll(any(byte[].class), anyString(), anyBoolean());
+    }
+
+    @Test
+    public void sendMessageToAllUsersShouldSendBinaryWhenEnabledAndSupportedByAllUsers() {
+        when(settings.isBinaryProtocol()).thenReturn(true);
+        when(controller.getCapabilitiesSupportedByAllUsers()).thenReturn(NetworkCapabilities.BINARY_MESSAGES);
+
+        final NetworkService networkService = new NetworkService(controller, settings, transport);
+
+        networkService.sendMessageToAllUsers("16320462!IDLE#Christian:");
+
+        verify(transport).sendBinaryMessageToAll(any(byte[].class), eq("16320462!IDLE#Christian:"), eq(false));
+        verify(transport, never()).sendMessageToAll(anyString(), anyBoolean());
+        verify(transport).sendTcpMessageToAll("16320462!IDLE#Christian:");
+    }
+
+    @Test
+    public void sendMessageToAllUsersShouldSendTextWhenMessageTypeIsNotSupportedAsBinary() {
+        when(settings.isBinaryProtocol()).thenReturn(true);
+        when(controller.getCapabilitiesSupportedByAllUsers()).thenReturn(NetworkCapabilities.BINARY_MESSAGES);
+
+        final NetworkService networkService = new NetworkService(controller, settings, transport);
+
+        networkService.sendMessageToAllUsers("16320462!LOGON#Christian:");
+
+        verify(transport).sendMessageToAll("16320462!LOGON#Christian:", false);
+        verify(transport, never()).sendBinaryMessageToAll(any(byte[].class), anyString(), anyBoolean());
+    }
+
+    @Test
+    public void sendMessageToAllUsersShouldCombineMessagesWhenSupportedByAllUsers() {
+        when(controller.getCapabilitiesSupportedByAllUsers()).thenReturn(NetworkCapabilities.MULTI_MESSAGES);
+
+        final NetworkService networkService = new NetworkService(controller, settings, transport);
+
+        networkService.sendMessageToAllUsers("16320462!WRITING#Christian:");
+
+        verify(transport).sendMessageToAll("16320462!WRITING#Christian:", true);
+    }
+
+    @Test
+    public void sendMessageToAllUsersShouldNotCombineMessagesWhenSomeUsersDoNotSupportIt() {
+        when(controller.getCapabilitiesSupportedByAllUsers()).thenReturn(0);
+
+        final NetworkService networkService = new NetworkService(controller, settings, transport);
+
+        networkService.sendMessageToAllUsers("16320462!WRITING#Christian:");
+
+        verify(transport).sendMessageToAll("16320462!WRITING#Christian:", false);
+    }
+
+    @Test
+    public void sendMessageToAllUsersShouldNotCombineDiscoveryMessages() {
+        when(controller.getCapabilitiesSupportedByAllUsers()).thenReturn(NetworkCapabilities.MULTI_MESSAGES);
+
+        final NetworkService networkService = new NetworkService(controller, settings, transport);
+
+        networkService.sendMessageToAllUsers("16320462!LOGON#Christian:");
+        networkService.sendMessageToAllUsers("16320462!EXPOSING#Christian:");
+        networkService.sendMessageToAllUsers("16320462!CLIENT#Christian:(KouChat)[1753]{Linux}<40656>/40657\\|3|");
+
+        verify(transport).sendMessageToAll("16320462!LOGON#Christian:", false);
+        verify(transport).sendMessageToAll("16320462!EXPOSING#Christian:", false);
+        verify(transport).sendMessageToAll("16320462!CLIENT#Christian:(KouChat)[1753]{Linux}<40656>/40657\\|3|", false);
+    }
+
+    @Test
+    public void sendMessageToAllUsersShouldCombineBinaryMessagesWhenSupportedByAllUsers() {
+        when(settings.isBinaryProtocol()).thenReturn(true);
+        when(controller.getCapabilitiesSupportedByAllUsers())
+                .thenReturn(NetworkCapabilities.BINARY_MESSAGES | NetworkCapabilities.MULTI_MESSAGES);
+
+        final NetworkService networkService = new NetworkService(controller, settings, transport);
+
+        networkService.sendMessageToAllUsers("16320462!STOPPEDWRITING#Christian:");
+
+        verify(transport).sendBinaryMessageToAll(any(byte[].class), eq("16320462!STOPPEDWRITING#Christian:"),
+                                                         eq(true));
+    }
+
+    @Test
+    public void sendMessageToAllUsersShouldSplitLargeMessagesWhenSupportedByAllUsers() {
+        when(settings.getMe()).thenReturn(new User("Christian", 16320462));
+        when(controller.getCapabilitiesSupportedByAllUsers()).thenReturn(NetworkCapabilities.FRAGMENTED_MESSAGES);
+
+        final NetworkService networkService = new NetworkService(controller, settings, transport);
+        when(transport.sendBinaryMessageToAll(any(byte[].class), anyString(), anyBoolean())).thenReturn(true);
+
+        final String message = "16320462!MSG#Christian:[-15987646]" + createStringOfSize(1000);
+        assertTrue(networkService.sendMessageToAllUsers(message));
+
+        verify(transport, times(3)).sendBinaryMessageToAll(any(byte[].class), eq(message), eq(false));
+        verify(transport, never()).sendMessageToAll(anyString(), anyBoolean());
+    }
+
+    @Test
+    public void sendMessageToAllUsersShouldNotSplitLargeMessagesWhenSomeUsersDoNotSupportIt() {
+        when(controller.getCapabilitiesSupportedByAllUsers()).thenReturn(0);
+
+        final NetworkService networkService = new NetworkService(controller, settings, transport);
+
+        final String message = "16320462!MSG#Christian:[-15987646]" + createStringOfSize(1000);
+        networkService.sendMessageToAllUsers(message);
+
+        verify(transport).sendMessageToAll(message, false);
+        verify(transport, never()).sendBinaryMessageToAll(any(byte[].class), anyString(), anyBoolean());
+    }
+
+    @Test
+    public void sendMessageToAllUsersShouldNotSplitMessagesThatFitInOnePacket() {
+        when(controller.getCapabilitiesSupportedByAllUsers()).thenReturn(NetworkCapabilities.FRAGMENTED_MESSAGES);
+
+        final NetworkService networkService = new NetworkService(controller, settings, transport);
+
+        final String message = "16320462!MSG#Christian:[-15987646]" + createStringOfSize(400);
+        networkService.sendMessageToAllUsers(message);
+
+        verify(transport).sendMessageToAll(message, false);
+        verify(transport, never()).sendBinaryMessageToAll(any(byte[].class), anyString(), anyBoolean());
+    }
+
+    @Test
+    public void sendMessageToAllUsersShouldSplitLargeBinaryMessagesWhenSupportedByAllUsers() {
+        when(settings.getMe()).thenReturn(new User("Christian", 16320462));
+        when(settings.isBinaryProtocol()).thenReturn(true);
+        when(controller.getCapabilitiesSupportedByAllUsers())
+                .thenReturn(NetworkCapabilities.BINARY_MESSAGES | NetworkCapabilities.FRAGMENTED_MESSAGES);
+
+        final NetworkService networkService = new NetworkService(controller, settings, transport);
+        when(transport.sendBinaryMessageToAll(any(byte[].class), anyString(), anyBoolean())).thenReturn(true);
+
+        final String message = "16320462!MSG#Christian:[-15987646]" + createStringOfSize(600);
+        assertTrue(networkService.sendMessageToAllUsers(message));
+
+        verify(transport, times(2)).sendBinaryMessageToAll(any(byte[].class), eq(message), eq(false));
+    }
+
+    @Test
+    public void sendMessageToAllUsersShouldCompressLargeMessagesWhenEnabledAndSupportedByAllUsers() {
+        when(settings.isCompression()).thenReturn(true);
+        when(controller.getCapabilitiesSupportedByAllUsers()).thenReturn(NetworkCapabilities.COMPRESSED_MESSAGES);
+
+        final NetworkService networkService = new NetworkService(controller, settings, transport);
+
+        final String message = "16320462!MSG#Christian:[-15987646]" + createStringOfSize(1000);
+        networkService.sendMessageToAllUsers(message);
+
+        final ArgumentCaptor<byte[]> captor = ArgumentCaptor.forClass(byte[].class);
+        verify(transport).sendBinaryMessageToAll(captor.capture(), eq(message), eq(false));
+        assertEquals(MessageCompressor.COMPRESSED, captor.getValue()[0]);
+        assertTrue(captor.getValue().length < 100);
+
+        assertEquals(1, networkService.getCompressionStatistics().getCompressedMessages());
+    }
+
+    @Test
+    public void sendMessageToAllUsersShouldNotCompressWhenDisabled() {
+        when(controller.getCapabilitiesSupportedByAllUsers()).thenReturn(NetworkCapabilities.COMPRESSED_MESSAGES);
+
+        final NetworkService networkService = new NetworkService(controller, settings, transport);
+
+        final String message = "16320462!MSG#Christian:[-15987646]" + createStringOfSize(300);
+        networkService.sendMessageToAllUsers(message);
+
+        verify(transport).sendMessageToAll(message, false);
+        verify(transport, never()).sendBinaryMessageToAll(any(byte[].class), anyString(), anyBoolean());
+    }
+
+    @Test
+    public void sendMessageToAllUsersShouldNotCompressWhenSomeUsersDoNotSupportIt() {
+        when(settings.isCompression()).thenReturn(true);
+        when(controller.getCapabilitiesSupportedByAllUsers()).thenReturn(0);
+
+        final NetworkService networkService = new NetworkService(controller, settings, transport);
+
+        final String message = "16320462!MSG#Christian:[-15987646]" + createStringOfSize(300);
+        networkService.sendMessageToAllUsers(message);
+
+        verify(transport).sendMessageToAll(message, false);
+        verify(transport, never()).sendBinaryMessageToAll(any(byte[].class), anyString(), anyBoolean());
+    }
+
+    @Test
+    public void sendMessageToAllUsersShouldNotCompressDiscoveryMessages() {
+        when(settings.isCompression()).thenReturn(true);
+        when(controller.getCapabilitiesSupportedByAllUsers()).thenReturn(NetworkCapabilities.SUPPORTED);
+
+        final NetworkService networkService = new NetworkService(controller, settings, transport);
+
+        final String message = "16320462!CLIENT#Christian:(" + createStringOfSize(200) + ")[1753]{Linux}<40656>/40657\\|15|";
+        networkService.sendMessageToAllUsers(message);
+
+        verify(transport).sendMessageToAll(message, false);
+        verify(transport, never()).sendBinaryMessageToAll(any(byte[].class), anyString(), anyBoolean());
+    }
+
+    @Test
+    public void sendMessageToAllUsersShouldOnlyGetTheCapabilitiesOfTheUsersOnce() {
+        when(settings.isBinaryProtocol()).thenReturn(true);
+        when(settings.isCompression()).thenReturn(true);
+        when(controller.getCapabilitiesSupportedByAllUsers()).thenReturn(NetworkCapabilities.SUPPORTED);
+
+        final NetworkService networkService = new NetworkService(controller, settings, transport);
+
+        networkService.sendMessageToAllUsers("16320462!MSG#Christian:[-15987646]" + createStringOfSize(2000));
+
+        verify(controller, times(1)).getCapabilitiesSupportedByAllUsers();
+        verify(controller, never()).isCapabilitySupportedByAllUsers(anyInt());
+    }
+
+    @Test
+    public void sendMessageToAllUsersShouldAddSameSequenceNumberToTcpAndMulticastWhenSupportedByAllUsers() {
+        when(controller.getCapabilitiesSupportedByAllUsers()).thenReturn(NetworkCapabilities.SEQUENCED_MESSAGES);
+
+        final NetworkService networkService = new NetworkService(controller, settings, transport);
+
+        networkService.sendMessageToAllUsers("16320462!IDLE#Christian:");
+        networkService.sendMessageToAllUsers("16320462!BACK#Christian:");
+
+        verify(transport).sendTcpMessageToAll("~1~16320462!IDLE#Christian:");
+        verify(transport).sendMessageToAll("~1~16320462!IDLE#Christian:", false);
+        verify(transport).sendTcpMessageToAll("~2~16320462!BACK#Christian:");
+        verify(transport).sendMessageToAll("~2~16320462!BACK#Christian:", false);
+    }
+
+    @Test
+    public void sendMessageToAllUsersShouldNotAddSequenceNumberWhenSomeUsersDoNotSupportIt() {
+        when(controller.getCapabilitiesSupportedByAllUsers()).thenReturn(0);
+
+        final NetworkService networkService = new NetworkService(controller, settings, transport);
+
+        networkService.sendMessageToAllUsers("16320462!IDLE#Christian:");
+
+        verify(transport).sendTcpMessageToAll("16320462!IDLE#Christian:");
+        verify(transport).sendMessageToAll("16320462!IDLE#Christian:", false);
+    }
+
+    @Test
+    public void sendMessageToAllUsersShouldNotAddSequenceNumberToDiscoveryMessages() {
+        when(controller.getCapabilitiesSupportedByAllUsers()).thenReturn(NetworkCapabilities.SEQUENCED_MESSAGES);
+
+        final NetworkService networkService = new NetworkService(controller, settings, transport);
+
+        networkService.sendMessageToAllUsers("16320462!LOGON#Christian:");
+
+        verify(transport).sendTcpMessageToAll("16320462!LOGON#Christian:");
+        verify(transport).sendMessageToAll("16320462!LOGON#Christian:", false);
+    }
+
+    @Test
+    public void sendMessageToAllUsersShouldAddSequenceNumberToBinaryMessages() {
+        when(settings.isBinaryProtocol()).thenReturn(true);
+        when(controller.getCapabilitiesSupportedByAllUsers())
+                .thenReturn(NetworkCapabilities.BINARY_MESSAGES | NetworkCapabilities.SEQUENCED_MESSAGES);
+
+        final NetworkService networkService = new NetworkService(controller, settings, transport);
+
+        networkService.sendMessageToAllUsers("16320462!IDLE#Christian:");
+
+        final ArgumentCaptor<byte[]> binaryMessage = ArgumentCaptor.forClass(byte[].class);
+        verify(transport).sendBinaryMessageToAll(binaryMessage.capture(), eq("16320462!IDLE#Christian:"), eq(false));
+        verify(transport).sendTcpMessageToAll("~1~16320462!IDLE#Christian:");
+
+        final ByteBuffer buffer = ByteBuffer.wrap(binaryMessage.getValue());
+        assertEquals(MessageSequencer.SEQUENCED_BINARY, buffer.get());
+        assertEquals(1, buffer.getInt());
+        assertEquals(BinaryMessageFormat.BINARY_MESSAGE, buffer.get());
+    }
+
+    @Test
+    public void sendMessageToUserShouldAddSameSequenceNumberToTcpAndUdpWhenSupportedByUser() {
+        final User user = new User("User", 111);
+        user.setIpAddress("192.168.1.2");
+        user.setPrivateChatPort(4444);
+        user.setCapabilities(NetworkCapabilities.SEQUENCED_MESSAGES);
+
+        final NetworkService networkService = new NetworkService(controller, settings, transport);
+
+        networkService.sendMessageToUser("16320462!PRIVMSG#Christian:111:[-15987646]Hello", user);
+
+        verify(transport).sendTcpMessageToUser("~1~16320462!PRIVMSG#Christian:111:[-15987646]Hello", user);
+        verify(transport).sendMessageToUser("~1~16320462!PRIVMSG#Christian:111:[-15987646]Hello", user);
+    }
+
+    @Test
+    public void sendMessageToUserShouldNotAddSequenceNumberWhenNotSupportedByUser() {
+        final User user = new User("User", 111);
+        user.setIpAddress("192.168.1.2");
+        user.setPrivateChatPort(4444);
+
+        final NetworkService networkService = new NetworkService(controller, settings, transport);
+
+        networkService.sendMessageToUser("16320462!PRIVMSG#Christian:111:[-15987646]Hello", user);
+
+        verify(transport).sendTcpMessageToUser("16320462!PRIVMSG#Christian:111:[-15987646]Hello", user);
+        verify(transport).sendMessageToUser("16320462!PRIVMSG#Christian:111:[-15987646]Hello", user);
+    }
+
+    @Test
+    public void nackForMyMessageShouldRetransmitItOnMulticastWithSameSequenceNumber() {
+        final User me = new User("Christian", 16320462);
+        when(settings.getMe()).thenReturn(me);
+        when(controller.getCapabilitiesSupportedByAllUsers()).thenReturn(NetworkCapabilities.SEQUENCED_MESSAGES);
+
+        final NetworkService networkService = new NetworkService(controller, settings, transport);
+        final MessageDeduplicator messageDeduplicator =
+                TestUtils.getFieldValue(networkService, MessageDeduplicator.class, "messageDeduplicator");
+
+        networkService.sendMessageToAllUsers("16320462!MSG#Christian:[-15987646]One");
+        networkService.sendMessageToAllUsers("16320462!MSG#Christian:[-15987646]Two");
+
+        messageDeduplicator.messageArrived("11111!NACK#Niles:16320462:1", "192.168.1.3");
+
+        verify(transport, times(2)).sendMessageToAll("~1~16320462!MSG#Christian:[-15987646]One", false);
+        verify(transport, times(1)).sendMessageToAll("~2~16320462!MSG#Christian:[-15987646]Two", false);
+    }
+
+    @Test
+    public void nackForAnotherUsersMessageShouldNotRetransmitAnything() {
+        final User me = new User("Christian", 16320462);
+        when(settings.getMe()).thenReturn(me);
+        when(controller.getCapabilitiesSupportedByAllUsers()).thenReturn(NetworkCapabilities.SEQUENCED_MESSAGES);
+
+        final NetworkService networkService = new NetworkService(controller, settings, transport);
+        final MessageDeduplicator messageDeduplicator =
+                TestUtils.getFieldValue(networkService, MessageDeduplicator.class, "messageDeduplicator");
+
+        networkService.sendMessageToAllUsers("16320462!MSG#Christian:[-15987646]One");
+
+        messageDeduplicator.messageArrived("11111!NACK#Niles:22222:1", "192.168.1.3");
+
+        verify(transport, times(1)).sendMessageToAll("~1~16320462!MSG#Christian:[-15987646]One", false);
+    }
+
+    @Test
+    public void nackForUnsequencedMessageShouldNotRetransmitAnything() {
+        final User me = new User("Christian", 16320462);
+        when(settings.getMe()).thenReturn(me);
+
+        final NetworkService networkService = new NetworkService(controller, settings, transport);
+        final MessageDeduplicator messageDeduplicator =
+                TestUtils.getFieldValue(networkService, MessageDeduplicator.class, "messageDeduplicator");
+
+        networkService.sendMessageToAllUsers("16320462!MSG#Christian:[-15987646]One");
+
+        messageDeduplicator.messageArrived("11111!NACK#Niles:16320462:1", "192.168.1.3");
+
+        verify(transport, times(1)).sendMessageToAll("16320462!MSG#Christian:[-15987646]One", false);
+    }
+
+    private String createStringOfSize(final int size) {
+        final StringBuilder builder = new StringBuilder(size);
+
+        for (int i = 0; i < size; i++) {
+            builder.append("x");
+        }
+
+        return builder.toString();
+    }
 }
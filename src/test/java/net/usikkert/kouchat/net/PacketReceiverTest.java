@@ -0,0 +1,257 @@
+
+/***************************************************************************
+ *   Copyright 2006-2018 by Christian Ihle                                 *
+ *   contact@kouchat.net                                                   *
+ *                                                                         *
+ *   This file is part of KouChat.                                         *
+ *                                                                         *
+ *   KouChat is free software; you can redistribute it and/or modify       *
+ *   it under the terms of the GNU Lesser General Public License as        *
+ *   published by the Free Software Foundation, either version 3 of        *
+ *   the License, or (at your option) any later version.                   *
+ *                                                                         *
+ *   KouChat is distributed in the hope that it will be useful,            *
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of        *
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU      *
+ *   Lesser General Public License for more details.                       *
+ *                                                                         *
+ *   You should have received a copy of the GNU Lesser General Public      *
+ *   License along with KouChat.                                           *
+ *   If not, see <http://www.gnu.org/licenses/>.                           *
+ ***************************************************************************/
+
+package net.usikkert.kouchat.net;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.List;
+
+import net.usikkert.kouchat.event.BinaryReceiverListener;
+import net.usikkert.kouchat.event.ReceiverListener;
+import net.usikkert.kouchat.junit.ExpectedException;
+import net.usikkert.kouchat.misc.FlightRecorder;
+import net.usikkert.kouchat.net.transport.TransportChannel;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+/**
+ * Test of {@link PacketReceiver}.
+ *
+ * @author Christian Ihle
+ */
+@SuppressWarnings("HardCodedStringLiteral")
+public class PacketReceiverTest {
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    @Rule
+    public ExpectedException expectedException = ExpectedException.none();
+
+    private PacketReceiver packetReceiver;
+
+    private ReceiverListener mainChatListener;
+    private BinaryReceiverListener mainChatBinaryListener;
+    private ReceiverListener privateChatListener;
+    private LatencyStatistics latencyStatistics;
+    private FlightRecorder flightRecorder;
+
+    @Before
+    public void setUp() {
+        latencyStatistics = new LatencyStatistics();
+        flightRecorder = new FlightRecorder(16);
+        packetReceiver = new PacketReceiver(new CompressionStatistics(), latencyStatistics, flightRecorder);
+
+        mainChatListener = mock(ReceiverListener.class);
+        mainChatBinaryListener = mock(BinaryReceiverListener.class);
+        privateChatListener = mock(ReceiverListener.class);
+
+        packetReceiver.registerMainChatReceiverListener(mainChatListener);
+        packetReceiver.registerMainChatBinaryReceiverListener(mainChatBinaryListener);
+        packetReceiver.registerPrivateChatReceiverListener(privateChatListener);
+    }
+
+    @Test
+    public void constructorShouldThrowExceptionIfCompressionStatisticsIsNull() {
+        expectedException.expect(IllegalArgumentException.class);
+        expectedException.expectMessage("Compression statistics can not be null");
+
+        new PacketReceiver(null, latencyStatistics, flightRecorder);
+    }
+
+    @Test
+    public void constructorShouldThrowExceptionIfLatencyStatisticsIsNull() {
+        expectedException.expect(IllegalArgumentException.class);
+        expectedException.expectMessage("Latency statistics can not be null");
+
+        new PacketReceiver(new CompressionStatistics(), null, flightRecorder);
+    }
+
+    @Test
+    public void constructorShouldThrowExceptionIfFlightRecorderIsNull() {
+        expectedException.expect(IllegalArgumentException.class);
+        expectedException.expectMessage("Flight recorder can not be null");
+
+        new PacketReceiver(new CompressionStatistics(), latencyStatistics, null);
+    }
+
+    @Test
+    public void packetArrivedShouldRecordThePacket() {
+        packetReceiver.packetArrived(wrap("12345!IDLE#Test:"), true, "192.168.1.2");
+
+        final List<FlightRecorder.Event> events = flightRecorder.getEvents();
+        assertEquals(1, events.size());
+        assertEquals("PACKET_RECEIVED 192.168.1.2", events.get(0).toString());
+    }
+
+    @Test
+    public void packetArrivedShouldGiveMainChatTextMessageToMainChatListener() {
+        packetReceiver.packetArrived(wrap("12345!IDLE#Test:"), true, "192.168.1.2");
+
+        verify(mainChatListener).messageArrived("12345!IDLE#Test:", "192.168.1.2");
+        verifyZeroInteractions(privateChatListener, mainChatBinaryListener);
+    }
+
+    @Test
+    public void packetArrivedShouldGivePrivateChatTextMessageToPrivateChatListener() {
+        packetReceiver.packetArrived(wrap("12345!PRIVMSG#Test:"), false, "192.168.1.2");
+
+        verify(privateChatListener).messageArrived("12345!PRIVMSG#Test:", "192.168.1.2");
+        verifyZeroInteractions(mainChatListener, mainChatBinaryListener);
+    }
+
+    @Test
+    public void packetArrivedShouldGiveMainChatBinaryMessageToBinaryListener() {
+        final byte[] binaryMessage = new BinaryMessageEncoder().encode("12345!IDLE#Test:");
+
+        packetReceiver.packetArrived(ByteBuffer.wrap(binaryMessage), true, "192.168.1.2");
+
+        verify(mainChatBinaryListener).messageArrived(any(ByteBuffer.class), eq("192.168.1.2"));
+        verifyZeroInteractions(mainChatListener, privateChatListener);
+    }
+
+    @Test
+    public void packetArrivedShouldIgnoreBinaryMessageInPrivateChat() {
+        final byte[] binaryMessage = new BinaryMessageEncoder().encode("12345!IDLE#Test:");
+
+        packetReceiver.packetArrived(ByteBuffer.wrap(binaryMessage), false, "192.168.1.2");
+
+        verifyZeroInteractions(mainChatListener, mainChatBinaryListener, privateChatListener);
+    }
+
+    @Test
+    public void packetArrivedShouldGiveEachMessageInMultiMessagePacketToListener() {
+        final byte[] first = "12345!IDLE#Test:".getBytes(UTF8);
+        final byte[] second = "12345!BACK#Test:".getBytes(UTF8);
+
+        final ByteBuffer packet = ByteBuffer.allocate(1 + 2 + first.length + 2 + second.length);
+        packet.put(MulticastSendQueue.MULTI_MESSAGE);
+        packet.putShort((short) first.length).put(first);
+        packet.putShort((short) second.length).put(second);
+        packet.flip();
+
+        packetReceiver.packetArrived(packet, true, "192.168.1.2");
+
+        verify(mainChatListener).messageArrived("12345!IDLE#Test:", "192.168.1.2");
+        verify(mainChatListener).messageArrived("12345!BACK#Test:", "192.168.1.2");
+    }
+
+    @Test
+    public void packetArrivedShouldDecompressCompressedMessage() {
+        final String message = "12345!MSG#Test:[-15987646]" + createStringOfSize(500);
+        final CompressionStatistics statistics = new CompressionStatistics();
+        final byte[] compressedMessage = new MessageCompressor(statistics).compress(message.getBytes(UTF8));
+
+        packetReceiver.packetArrived(ByteBuffer.wrap(compressedMessage), true, "192.168.1.2");
+
+        verify(mainChatListener).messageArrived(message, "192.168.1.2");
+    }
+
+    @Test
+    public void packetArrivedShouldReassembleFragmentsBeforeGivingMessageToListener() {
+        final String message = "12345!MSG#Test:[-15987646]" + createStringOfSize(1000);
+        final List<byte[]> fragments = new MessageFragmenter().split(message.getBytes(UTF8), 12345);
+        assertEquals(3, fragments.size());
+
+        for (final byte[] fragment : fragments) {
+            packetReceiver.packetArrived(ByteBuffer.wrap(fragment), true, "192.168.1.2");
+        }
+
+        final ArgumentCaptor<String> captor = ArgumentCaptor.forClass(String.class);
+        verify(mainChatListener).messageArrived(captor.capture(), eq("192.168.1.2"));
+        assertEquals(message, captor.getValue());
+    }
+
+    @Test
+    public void packetArrivedShouldNotFailWithoutListeners() {
+        final PacketReceiver receiver = new PacketReceiver(new CompressionStatistics(), latencyStatistics, flightRecorder);
+
+        receiver.packetArrived(wrap("12345!IDLE#Test:"), true, "192.168.1.2");
+        receiver.packetArrived(wrap("12345!PRIVMSG#Test:"), false, "192.168.1.2");
+    }
+
+    @Test
+    public void packetArrivedShouldNotFailWhenListenerThrowsException() {
+        doThrow(new RuntimeException("Failed")).when(mainChatListener).messageArrived(anyString(), anyString());
+
+        packetReceiver.packetArrived(wrap("12345!IDLE#Test:"), true, "192.168.1.2");
+
+        verify(mainChatListener).messageArrived("12345!IDLE#Test:", "192.168.1.2");
+    }
+
+    @Test
+    public void packetArrivedShouldTraceChatMessagesUntilTheyAreShown() {
+        doAnswer(withChatMessageShown()).when(privateChatListener).messageArrived(anyString(), anyString());
+
+        packetReceiver.packetArrived(wrap("12345!PRIVMSG#Test:(67890)[-1;1]Hello"), false, "192.168.1.2");
+
+        assertEquals(1, latencyStatistics.getLocalLatency().getCount());
+        assertEquals(1, latencyStatistics.getEndToEndLatency(TransportChannel.PRIVATE_UDP).getCount());
+        assertEquals(0, latencyStatistics.getEndToEndLatency(TransportChannel.MULTICAST).getCount());
+    }
+
+    @Test
+    public void packetArrivedShouldEndTraceWhenMessageIsHandled() {
+        packetReceiver.packetArrived(wrap("12345!IDLE#Test:"), true, "192.168.1.2");
+
+        MessageTrace.markParsed(System.currentTimeMillis());
+        MessageTrace.markResponded();
+        MessageTrace.markAppended();
+
+        assertEquals(0, latencyStatistics.getLocalLatency().getCount());
+    }
+
+    private Answer<Void> withChatMessageShown() {
+        return new Answer<Void>() {
+            @Override
+            public Void answer(final InvocationOnMock invocation) {
+                MessageTrace.markParsed(System.currentTimeMillis());
+                MessageTrace.markResponded();
+                MessageTrace.markAppended();
+
+                return null;
+            }
+        };
+    }
+
+    private ByteBuffer wrap(final String message) {
+        return ByteBuffer.wrap(message.getBytes(UTF8));
+    }
+
+    private String createStringOfSize(final int size) {
+        final StringBuilder builder = new StringBuilder(size);
+
+        for (int i = 0; i < size; i++) {
+            builder.append("x");
+        }
+
+        return builder.toString();
+    }
+}
@@ -0,0 +1,188 @@
+
+/***************************************************************************
+ *   Copyright 2006-2018 by Christian Ihle                                 *
+ *   contact@kouchat.net                                                   *
+ *                                                                         *
+ *   This file is part of KouChat.                                         *
+ *                                                                         *
+ *   KouChat is free software; you can redistribute it and/or modify       *
+ *   it under the terms of the GNU Lesser General Public License as        *
+ *   published by the Free Software Foundation, either version 3 of        *
+ *   the License, or (at your option) any later version.                   *
+ *                                                                         *
+ *   KouChat is distributed in the hope that it will be useful,            *
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of        *
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU      *
+ *   Lesser General Public License for more details.                       *
+ *                                                                         *
+ *   You should have received a copy of the GNU Lesser General Public      *
+ *   License along with KouChat.                                           *
+ *   If not, see <http://www.gnu.org/licenses/>.                           *
+ ***************************************************************************/
+
+package net.usikkert.kouchat.net;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import net.usikkert.kouchat.junit.ExpectedException;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InOrder;
+
+/**
+ * Test of {@link PendingMessageQueue}.
+ *
+ * @author Christian Ihle
+ */
+@SuppressWarnings("HardCodedStringLiteral")
+public class PendingMessageQueueTest {
+
+    @Rule
+    public ExpectedException expectedException = ExpectedException.none();
+
+    private PendingMessageQueue queue;
+
+    private ScheduledExecutorService timeoutExecutor;
+    private ScheduledFuture timeout;
+
+    @Before
+    public void setUp() {
+        timeoutExecutor = mock(ScheduledExecutorService.class);
+        timeout = mock(ScheduledFuture.class);
+
+        when(timeoutExecutor.schedule(any(Runnable.class), anyLong(), any(TimeUnit.class))).thenReturn(timeout);
+
+        queue = new PendingMessageQueue(timeoutExecutor);
+    }
+
+    @Test
+    public void constructorShouldThrowExceptionIfTimeoutExecutorIsNull() {
+        expectedException.expect(IllegalArgumentException.class);
+        expectedException.expectMessage("Timeout executor can not be null");
+
+        new PendingMessageQueue(null);
+    }
+
+    @Test
+    public void addShouldThrowExceptionIfMessageIsNull() {
+        expectedException.expect(IllegalArgumentException.class);
+        expectedException.expectMessage("Message can not be null");
+
+        queue.add(100, null);
+    }
+
+    @Test
+    public void addShouldNotRunTheMessage() {
+        final Runnable message = mock(Runnable.class);
+
+        queue.add(100, message);
+
+        verifyZeroInteractions(message);
+        assertTrue(queue.hasPendingMessages(100));
+        assertFalse(queue.hasPendingMessages(101));
+    }
+
+    @Test
+    public void addShouldScheduleOneTimeoutForEachUser() {
+        queue.add(100, mock(Runnable.class));
+        queue.add(100, mock(Runnable.class));
+        queue.add(101, mock(Runnable.class));
+
+        verify(timeoutExecutor, times(2)).schedule(any(Runnable.class), eq(2000L), eq(TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    public void flushShouldRunTheMessagesOfTheUserInOrder() {
+        final Runnable message1 = mock(Runnable.class);
+        final Runnable message2 = mock(Runnable.class);
+        final Runnable otherUserMessage = mock(Runnable.class);
+
+        queue.add(100, message1);
+        queue.add(101, otherUserMessage);
+        queue.add(100, message2);
+
+        queue.flush(100);
+
+        final InOrder inOrder = inOrder(message1, message2);
+        inOrder.verify(message1).run();
+        inOrder.verify(message2).run();
+        verifyZeroInteractions(otherUserMessage);
+
+        assertFalse(queue.hasPendingMessages(100));
+        assertTrue(queue.hasPendingMessages(101));
+    }
+
+    @Test
+    public void flushShouldCancelTheTimeout() {
+        queue.add(100, mock(Runnable.class));
+
+        queue.flush(100);
+
+        verify(timeout).cancel(false);
+    }
+
+    @Test
+    public void flushShouldOnlyRunTheMessagesOnce() {
+        final Runnable message = mock(Runnable.class);
+        queue.add(100, message);
+
+        queue.flush(100);
+        queue.flush(100);
+
+        verify(message, times(1)).run();
+    }
+
+    @Test
+    public void flushShouldDoNothingIfNoMessagesFromUser() {
+        queue.flush(100);
+
+        verifyZeroInteractions(timeoutExecutor);
+    }
+
+    @Test
+    public void flushShouldRunTheRemainingMessagesIfOneFails() {
+        final Runnable message1 = mock(Runnable.class);
+        final Runnable message2 = mock(Runnable.class);
+        doThrow(new IllegalStateException("Failed")).when(message1).run();
+
+        queue.add(100, message1);
+        queue.add(100, message2);
+
+        queue.flush(100);
+
+        verify(message2).run();
+    }
+
+    @Test
+    public void timeoutShouldRunTheMessagesOfTheUser() {
+        final Runnable message = mock(Runnable.class);
+        queue.add(100, message);
+
+        final ArgumentCaptor<Runnable> timeoutCaptor = ArgumentCaptor.forClass(Runnable.class);
+        verify(timeoutExecutor).schedule(timeoutCaptor.capture(), anyLong(), any(TimeUnit.class));
+
+        timeoutCaptor.getValue().run();
+
+        verify(message).run();
+        assertFalse(queue.hasPendingMessages(100));
+    }
+
+    @Test
+    public void addAfterFlushShouldScheduleNewTimeout() {
+        queue.add(100, mock(Runnable.class));
+        queue.flush(100);
+
+        queue.add(100, mock(Runnable.class));
+
+        verify(timeoutExecutor, times(2)).schedule(any(Runnable.class), anyLong(), any(TimeUnit.class));
+        assertTrue(queue.hasPendingMessages(100));
+    }
+}
@@ -28,6 +28,7 @@ import static org.mockito.Mockito.*;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
+import net.usikkert.kouchat.misc.FlightRecorder;
 import net.usikkert.kouchat.misc.User;
 import net.usikkert.kouchat.settings.Settings;
 import net.usikkert.kouchat.util.TestUtils;
@@ -45,6 +46,9 @@ import org.mockito.ArgumentCaptor;
 public class PrivateMessageParserTest {
 
     private PrivateMessageParser privateMessageParser;
+    private PrivateMessageResponder privmsgResponder;
+    private TrafficStatistics trafficStatistics;
+    private FlightRecorder flightRecorder;
 
     private Logger log;
 
@@ -53,11 +57,31 @@ public class PrivateMessageParserTest {
         final Settings settings = mock(Settings.class);
         when(settings.getMe()).thenReturn(new User("Test", 1234));
 
-        privateMessageParser = new PrivateMessageParser(mock(PrivateMessageResponder.class), settings);
+        privmsgResponder = mock(PrivateMessageResponder.class);
+        trafficStatistics = new TrafficStatistics();
+        flightRecorder = new FlightRecorder(16);
+        privateMessageParser = new PrivateMessageParser(privmsgResponder, settings, trafficStatistics, flightRecorder);
 
         log = TestUtils.setFieldValueWithMock(privateMessageParser, "LOG", Logger.class);
     }
 
+    @Test
+    public void messageArrivedShouldParsePrivateMessage() {
+        privateMessageParser.messageArrived("12516938!PRIVMSG#Christian:(1234)[-6750208]hello", "192.168.1.2");
+
+        verify(privmsgResponder).messageArrived(12516938, "hello", -6750208);
+        assertEquals(Long.valueOf(1), trafficStatistics.getMessageTypes().get(NetworkMessageType.PRIVMSG));
+        assertEquals("MESSAGE_PARSED user=12516938 PRIVMSG", flightRecorder.getEvents().get(0).toString());
+    }
+
+    @Test
+    public void messageArrivedShouldParsePrivateMessageWithSendTimestamp() {
+        privateMessageParser.messageArrived("12516938!PRIVMSG#Christian:(1234)[-6750208;1356994800000]hello",
+                                            "192.168.1.2");
+
+        verify(privmsgResponder).messageArrived(12516938, "hello", -6750208);
+    }
+
     @Test
     public void messageArrivedShouldLogIfUnableToFindNecessaryDetailsInMessage() {
         privateMessageParser.messageArrived("Error", "192.168.1.2");
@@ -69,6 +93,7 @@ public class PrivateMessageParserTest {
                         exceptionCaptor.capture());
 
         checkException(exceptionCaptor, StringIndexOutOfBoundsException.class, "String index out of range: -1");
+        assertEquals(1, trafficStatistics.getParseFailures());
     }
 
     @Test
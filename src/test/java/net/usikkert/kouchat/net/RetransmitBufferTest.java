@@ -0,0 +1,126 @@
+
+/***************************************************************************
+ *   Copyright 2006-2018 by Christian Ihle                                 *
+ *   contact@kouchat.net                                                   *
+ *                                                                         *
+ *   This file is part of KouChat.                                         *
+ *                                                                         *
+ *   KouChat is free software; you can redistribute it and/or modify       *
+ *   it under the terms of the GNU Lesser General Public License as        *
+ *   published by the Free Software Foundation, either version 3 of        *
+ *   the License, or (at your option) any later version.                   *
+ *                                                                         *
+ *   KouChat is distributed in the hope that it will be useful,            *
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of        *
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU      *
+ *   Lesser General Public License for more details.                       *
+ *                                                                         *
+ *   You should have received a copy of the GNU Lesser General Public      *
+ *   License along with KouChat.                                           *
+ *   If not, see <http://www.gnu.org/licenses/>.                           *
+ ***************************************************************************/
+
+package net.usikkert.kouchat.net;
+
+import static org.junit.Assert.*;
+
+import java.util.concurrent.TimeUnit;
+
+import net.usikkert.kouchat.junit.ExpectedException;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+
+/**
+ * Test of {@link RetransmitBuffer}.
+ *
+ * @author Christian Ihle
+ */
+@SuppressWarnings("HardCodedStringLiteral")
+public class RetransmitBufferTest {
+
+    private static final long MILLIS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    @Rule
+    public ExpectedException expectedException = ExpectedException.none();
+
+    private RetransmitBuffer buffer;
+
+    @Before
+    public void setUp() {
+        buffer = new RetransmitBuffer(4);
+    }
+
+    @Test
+    public void constructorShouldThrowExceptionIfCapacityIsZero() {
+        expectedException.expect(IllegalArgumentException.class);
+        expectedException.expectMessage("Capacity must be larger than 0");
+
+        new RetransmitBuffer(0);
+    }
+
+    @Test
+    public void addShouldThrowExceptionIfMessageIsNull() {
+        expectedException.expect(IllegalArgumentException.class);
+        expectedException.expectMessage("Message can not be null");
+
+        buffer.add(1, null);
+    }
+
+    @Test
+    public void getCapacityShouldReturnCapacityFromConstructor() {
+        assertEquals(4, buffer.getCapacity());
+    }
+
+    @Test
+    public void getMessageToRetransmitShouldReturnNullWhenEmpty() {
+        assertNull(buffer.getMessageToRetransmit(1, 0));
+    }
+
+    @Test
+    public void getMessageToRetransmitShouldReturnMessageWithSequenceNumber() {
+        buffer.add(1, "12345!MSG#Christian:[-15987646]One");
+        buffer.add(2, "12345!MSG#Christian:[-15987646]Two");
+
+        assertEquals("12345!MSG#Christian:[-15987646]Two", buffer.getMessageToRetransmit(2, 0));
+        assertEquals("12345!MSG#Christian:[-15987646]One", buffer.getMessageToRetransmit(1, 0));
+        assertNull(buffer.getMessageToRetransmit(3, 0));
+    }
+
+    @Test
+    public void getMessageToRetransmitShouldReturnNullWhenMessageIsReplaced() {
+        for (int i = 1; i <= 5; i++) {
+            buffer.add(i, "Message " + i);
+        }
+
+        assertNull(buffer.getMessageToRetransmit(1, 0));
+        assertEquals("Message 2", buffer.getMessageToRetransmit(2, 0));
+        assertEquals("Message 5", buffer.getMessageToRetransmit(5, 0));
+    }
+
+    @Test
+    public void getMessageToRetransmitShouldNotReturnSameMessageAgainWithinInterval() {
+        buffer.add(1, "Message 1");
+
+        assertEquals("Message 1", buffer.getMessageToRetransmit(1, 1000 * MILLIS));
+        assertNull(buffer.getMessageToRetransmit(1, 1000 * MILLIS + RetransmitBuffer.RETRANSMIT_INTERVAL_MS * MILLIS - 1));
+        assertEquals("Message 1", buffer.getMessageToRetransmit(1, 1000 * MILLIS + RetransmitBuffer.RETRANSMIT_INTERVAL_MS * MILLIS));
+    }
+
+    @Test
+    public void addShouldResetRetransmitIntervalForNewMessageInSameSlot() {
+        buffer.add(1, "Message 1");
+        assertEquals("Message 1", buffer.getMessageToRetransmit(1, 0));
+
+        buffer.add(5, "Message 5");
+        assertEquals("Message 5", buffer.getMessageToRetransmit(5, 0));
+    }
+
+    @Test
+    public void getMessageToRetransmitShouldHandleNegativeSequenceNumbers() {
+        buffer.add(Integer.MIN_VALUE, "Message");
+
+        assertEquals("Message", buffer.getMessageToRetransmit(Integer.MIN_VALUE, 0));
+    }
+}
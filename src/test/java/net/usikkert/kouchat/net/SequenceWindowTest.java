@@ -0,0 +1,147 @@
+
+/***************************************************************************
+ *   Copyright 2006-2018 by Christian Ihle                                 *
+ *   contact@kouchat.net                                                   *
+ *                                                                         *
+ *   This file is part of KouChat.                                         *
+ *                                                                         *
+ *   KouChat is free software; you can redistribute it and/or modify       *
+ *   it under the terms of the GNU Lesser General Public License as        *
+ *   published by the Free Software Foundation, either version 3 of        *
+ *   the License, or (at your option) any later version.                   *
+ *                                                                         *
+ *   KouChat is distributed in the hope that it will be useful,            *
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of        *
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU      *
+ *   Lesser General Public License for more details.                       *
+ *                                                                         *
+ *   You should have received a copy of the GNU Lesser General Public      *
+ *   License along with KouChat.                                           *
+ *   If not, see <http://www.gnu.org/licenses/>.                           *
+ ***************************************************************************/
+
+package net.usikkert.kouchat.net;
+
+import static org.junit.Assert.*;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Test of {@link SequenceWindow}.
+ *
+ * @author Christian Ihle
+ */
+public class SequenceWindowTest {
+
+    private SequenceWindow window;
+
+    @Before
+    public void setUp() {
+        window = new SequenceWindow();
+    }
+
+    @Test
+    public void acceptShouldAcceptFirstNumber() {
+        assertTrue(window.accept(100));
+        assertEquals(100, window.getHighest());
+    }
+
+    @Test
+    public void acceptShouldRejectSameNumberTwice() {
+        assertTrue(window.accept(5));
+        assertFalse(window.accept(5));
+    }
+
+    @Test
+    public void acceptShouldAcceptNumbersInOrderOnce() {
+        for (int i = 1; i <= 3000; i++) {
+            assertTrue(window.accept(i));
+            assertFalse(window.accept(i));
+        }
+
+        assertEquals(3000, window.getHighest());
+    }
+
+    @Test
+    public void acceptShouldAcceptOlderNumbersThatAreNotSeen() {
+        assertTrue(window.accept(10));
+        assertTrue(window.accept(8));
+        assertTrue(window.accept(9));
+
+        assertFalse(window.accept(8));
+        assertFalse(window.accept(9));
+        assertFalse(window.accept(10));
+        assertEquals(10, window.getHighest());
+    }
+
+    @Test
+    public void acceptShouldAcceptNumbersSkippedWhenWindowMoved() {
+        assertTrue(window.accept(1));
+        assertTrue(window.accept(500));
+
+        assertTrue(window.accept(250));
+        assertFalse(window.accept(250));
+        assertFalse(window.accept(1));
+    }
+
+    @Test
+    public void acceptShouldRejectNumbersOlderThanWindow() {
+        assertTrue(window.accept(SequenceWindow.WINDOW_SIZE + 10));
+
+        assertFalse(window.accept(10));
+        assertTrue(window.accept(11));
+    }
+
+    @Test
+    public void acceptShouldForgetNumbersWhenWindowMovesFurtherThanItsSize() {
+        assertTrue(window.accept(1));
+        assertTrue(window.accept(2));
+        assertTrue(window.accept(SequenceWindow.WINDOW_SIZE * 3));
+
+        assertTrue(window.accept(SequenceWindow.WINDOW_SIZE * 3 - 1));
+        assertTrue(window.accept(SequenceWindow.WINDOW_SIZE * 2 + 2));
+    }
+
+    @Test
+    public void acceptShouldClearBitsOfReusedPositionsWhenWindowMoves() {
+        assertTrue(window.accept(1));
+        assertTrue(window.accept(2));
+
+        assertTrue(window.accept(SequenceWindow.WINDOW_SIZE + 1));
+        assertTrue(window.accept(SequenceWindow.WINDOW_SIZE + 2));
+
+        assertFalse(window.accept(SequenceWindow.WINDOW_SIZE + 2));
+        assertFalse(window.accept(2));
+    }
+
+    @Test
+    public void acceptShouldHandleWrapAround() {
+        assertTrue(window.accept(Integer.MAX_VALUE - 1));
+        assertTrue(window.accept(Integer.MAX_VALUE));
+        assertTrue(window.accept(Integer.MIN_VALUE));
+        assertTrue(window.accept(Integer.MIN_VALUE + 1));
+
+        assertFalse(window.accept(Integer.MAX_VALUE));
+        assertFalse(window.accept(Integer.MIN_VALUE));
+        assertEquals(Integer.MIN_VALUE + 1, window.getHighest());
+    }
+
+    @Test
+    public void isMissingShouldBeFalseBeforeAnythingIsSeen() {
+        assertFalse(window.isMissing(1));
+    }
+
+    @Test
+    public void isMissingShouldOnlyBeTrueForSkippedNumbersInsideWindow() {
+        window.accept(SequenceWindow.WINDOW_SIZE + 10);
+        window.accept(SequenceWindow.WINDOW_SIZE + 8);
+
+        assertTrue(window.isMissing(SequenceWindow.WINDOW_SIZE + 9));
+        assertTrue(window.isMissing(11));
+        assertFalse(window.isMissing(10));
+        assertFalse(window.isMissing(SequenceWindow.WINDOW_SIZE + 8));
+        assertFalse(window.isMissing(SequenceWindow.WINDOW_SIZE + 10));
+        assertFalse(window.isMissing(SequenceWindow.WINDOW_SIZE + 11));
+    }
+}
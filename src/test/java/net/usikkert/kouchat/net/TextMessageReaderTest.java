@@ -0,0 +1,187 @@
+
+/***************************************************************************
+ *   Copyright 2006-2018 by Christian Ihle                                 *
+ *   contact@kouchat.net                                                   *
+ *                                                                         *
+ *   This file is part of KouChat.                                         *
+ *                                                                         *
+ *   KouChat is free software; you can redistribute it and/or modify       *
+ *   it under the terms of the GNU Lesser General Public License as        *
+ *   published by the Free Software Foundation, either version 3 of        *
+ *   the License, or (at your option) any later version.                   *
+ *                                                                         *
+ *   KouChat is distributed in the hope that it will be useful,            *
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of        *
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU      *
+ *   Lesser General Public License for more details.                       *
+ *                                                                         *
+ *   You should have received a copy of the GNU Lesser General Public      *
+ *   License along with KouChat.                                           *
+ *   If not, see <http://www.gnu.org/licenses/>.                           *
+ ***************************************************************************/
+
+package net.usikkert.kouchat.net;
+
+import static org.junit.Assert.*;
+
+import net.usikkert.kouchat.junit.ExpectedException;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+
+/**
+ * Test of {@link TextMessageReader}.
+ *
+ * @author Christian Ihle
+ */
+@SuppressWarnings("HardCodedStringLiteral")
+public class TextMessageReaderTest {
+
+    @Rule
+    public ExpectedException expectedException = ExpectedException.none();
+
+    private TextMessageReader reader;
+
+    @Before
+    public void setUp() {
+        reader = new TextMessageReader();
+    }
+
+    @Test
+    public void readHeaderShouldFindUserCodeTypeAndNick() {
+        reader.readHeader("16320462!LOGON#Christian:");
+
+        assertEquals(16320462, reader.getUserCode());
+        assertEquals("LOGON", reader.getType());
+        assertEquals("Christian", reader.getNick());
+        assertFalse(reader.hasRemaining());
+    }
+
+    @Test
+    public void readHeaderShouldReturnTheTypeConstant() {
+        reader.readHeader("16320462!" + new String("STOPPEDWRITING") + "#Christian:");
+
+        assertSame(NetworkMessageType.STOPPEDWRITING, reader.getType());
+    }
+
+    @Test
+    public void readHeaderShouldFindAllKnownTypes() {
+        final String[] types = {"MSG", "LOGON", "EXPOSING", "LOGOFF", "AWAY", "BACK", "EXPOSE", "NICKCRASH", "WRITING",
+                "STOPPEDWRITING", "GETTOPIC", "TOPIC", "NICK", "IDLE", "SENDFILEACCEPT", "SENDFILEABORT", "SENDFILE",
+                "CLIENT", "PRIVMSG"};
+
+        for (final String type : types) {
+            reader.readHeader("16320462!" + type + "#Christian:");
+            assertEquals(type, reader.getType());
+        }
+    }
+
+    @Test
+    public void readHeaderShouldReturnNullTypeIfUnknown() {
+        reader.readHeader("16320462!SOMETHING#Christian:");
+
+        assertNull(reader.getType());
+
+        reader.readHeader("16320462!MS#Christian:");
+
+        assertNull(reader.getType());
+    }
+
+    @Test
+    public void readHeaderShouldThrowExceptionIfDelimiterIsMissing() {
+        expectedException.expect(StringIndexOutOfBoundsException.class);
+        expectedException.expectMessage("String index out of range: -1");
+
+        reader.readHeader("16320462!LOGON#Christian");
+    }
+
+    @Test
+    public void readHeaderShouldThrowExceptionIfUserCodeIsInvalid() {
+        expectedException.expect(NumberFormatException.class);
+        expectedException.expectMessage("For input string: \"a16320462\"");
+
+        reader.readHeader("a16320462!LOGON#Christian:");
+    }
+
+    @Test
+    public void readHeaderShouldThrowExceptionIfUserCodeIsTooLarge() {
+        expectedException.expect(NumberFormatException.class);
+        expectedException.expectMessage("For input string: \"2147483648\"");
+
+        reader.readHeader("2147483648!LOGON#Christian:");
+    }
+
+    @Test
+    public void readFieldsShouldReadInOrder() {
+        reader.readHeader("16320462!SENDFILE#Christian:(1234)[-9223372036854775808]{-2147483648}file (1) [2].txt");
+
+        assertEquals(1234, reader.readInt('(', ')'));
+        assertEquals(Long.MIN_VALUE, reader.readLong('[', ']'));
+        assertEquals(Integer.MIN_VALUE, reader.readInt('{', '}'));
+        assertTrue(reader.hasRemaining());
+        assertEquals("file (1) [2].txt", reader.readRest());
+        assertFalse(reader.hasRemaining());
+    }
+
+    @Test
+    public void readStringShouldSupportDelimitersInEarlierFields() {
+        reader.readHeader("16320462!CLIENT#Christian:(KouChat)[1753]{GNU/Linux}<40656>/40657\\|1|");
+
+        assertEquals("KouChat", reader.readString('(', ')'));
+        assertEquals(1753, reader.readLong('[', ']'));
+        assertEquals("GNU/Linux", reader.readString('{', '}'));
+        assertEquals(40656, reader.readInt('<', '>'));
+        assertTrue(reader.hasField('/', '\\'));
+        assertEquals(40657, reader.readInt('/', '\\'));
+        assertTrue(reader.hasField('|', '|'));
+        assertEquals(1, reader.readInt('|', '|'));
+        assertFalse(reader.hasField('|', '|'));
+    }
+
+    @Test
+    public void readIntShouldMoveCursorEvenIfNumberIsInvalid() {
+        reader.readHeader("16320462!CLIENT#Christian:<a40656>/40657\\");
+
+        try {
+            reader.readInt('<', '>');
+            fail("Should throw exception");
+        }
+
+        catch (final NumberFormatException e) {
+            assertEquals("For input string: \"a40656\"", e.getMessage());
+        }
+
+        assertEquals(40657, reader.readInt('/', '\\'));
+    }
+
+    @Test
+    public void readIntShouldThrowExceptionIfFieldIsMissing() {
+        reader.readHeader("16320462!MSG#Christian:[-15987646hello");
+
+        expectedException.expect(StringIndexOutOfBoundsException.class);
+        expectedException.expectMessage("String index out of range: -1");
+
+        reader.readInt('[', ']');
+    }
+
+    @Test
+    public void readIntShouldThrowExceptionIfFieldIsEmpty() {
+        reader.readHeader("16320462!MSG#Christian:[]hello");
+
+        expectedException.expect(NumberFormatException.class);
+        expectedException.expectMessage("For input string: \"\"");
+
+        reader.readInt('[', ']');
+    }
+
+    @Test
+    public void readIntShouldThrowExceptionIfOnlySign() {
+        reader.readHeader("16320462!MSG#Christian:[-]hello");
+
+        expectedException.expect(NumberFormatException.class);
+        expectedException.expectMessage("For input string: \"-\"");
+
+        reader.readInt('[', ']');
+    }
+}
@@ -0,0 +1,165 @@
+
+/***************************************************************************
+ *   Copyright 2006-2018 by Christian Ihle                                 *
+ *   contact@kouchat.net                                                   *
+ *                                                                         *
+ *   This file is part of KouChat.                                         *
+ *                                                                         *
+ *   KouChat is free software; you can redistribute it and/or modify       *
+ *   it under the terms of the GNU Lesser General Public License as        *
+ *   published by the Free Software Foundation, either version 3 of        *
+ *   the License, or (at your option) any later version.                   *
+ *                                                                         *
+ *   KouChat is distributed in the hope that it will be useful,            *
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of        *
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU      *
+ *   Lesser General Public License for more details.                       *
+ *                                                                         *
+ *   You should have received a copy of the GNU Lesser General Public      *
+ *   License along with KouChat.                                           *
+ *   If not, see <http://www.gnu.org/licenses/>.                           *
+ ***************************************************************************/
+
+package net.usikkert.kouchat.net;
+
+import static org.junit.Assert.*;
+
+import java.util.Map;
+
+import net.usikkert.kouchat.net.transport.TransportChannel;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Test of {@link TrafficStatistics}.
+ *
+ * @author Christian Ihle
+ */
+@SuppressWarnings("HardCodedStringLiteral")
+public class TrafficStatisticsTest {
+
+    private TrafficStatistics statistics;
+
+    @Before
+    public void setUp() {
+        statistics = new TrafficStatistics();
+    }
+
+    @Test
+    public void allCountersShouldBeZeroAtStart() {
+        for (final TransportChannel channel : TransportChannel.values()) {
+            assertEquals(0, statistics.getPacketsIn(channel));
+            assertEquals(0, statistics.getBytesIn(channel));
+            assertEquals(0, statistics.getPacketsOut(channel));
+            assertEquals(0, statistics.getBytesOut(channel));
+        }
+
+        for (final Long count : statistics.getMessageTypes().values()) {
+            assertEquals(Long.valueOf(0), count);
+        }
+
+        assertEquals(0, statistics.getParseFailures());
+        assertEquals(0, statistics.getOversizedMessages());
+        assertEquals(0, statistics.getDuplicateMessages());
+        assertEquals(0, statistics.getTcpReconnects());
+    }
+
+    @Test
+    public void recordReceivedShouldOnlyAddToReceivedCountersOfChannel() {
+        statistics.recordReceived(TransportChannel.MULTICAST, 100);
+        statistics.recordReceived(TransportChannel.MULTICAST, 50);
+        statistics.recordReceived(TransportChannel.TCP, 10);
+
+        assertEquals(2, statistics.getPacketsIn(TransportChannel.MULTICAST));
+        assertEquals(150, statistics.getBytesIn(TransportChannel.MULTICAST));
+        assertEquals(1, statistics.getPacketsIn(TransportChannel.TCP));
+        assertEquals(10, statistics.getBytesIn(TransportChannel.TCP));
+        assertEquals(0, statistics.getPacketsIn(TransportChannel.PRIVATE_UDP));
+        assertEquals(0, statistics.getPacketsOut(TransportChannel.MULTICAST));
+        assertEquals(0, statistics.getBytesOut(TransportChannel.MULTICAST));
+    }
+
+    @Test
+    public void recordSentShouldOnlyAddToSentCountersOfChannel() {
+        statistics.recordSent(TransportChannel.PRIVATE_UDP, 200);
+        statistics.recordSent(TransportChannel.PRIVATE_UDP, 20);
+
+        assertEquals(2, statistics.getPacketsOut(TransportChannel.PRIVATE_UDP));
+        assertEquals(220, statistics.getBytesOut(TransportChannel.PRIVATE_UDP));
+        assertEquals(0, statistics.getPacketsIn(TransportChannel.PRIVATE_UDP));
+        assertEquals(0, statistics.getPacketsOut(TransportChannel.TCP));
+    }
+
+    @Test
+    public void getMessageTypesShouldHaveAllTypesWithOtherLast() {
+        final Map<String, Long> messageTypes = statistics.getMessageTypes();
+
+        assertEquals(21, messageTypes.size());
+        assertTrue(messageTypes.containsKey(NetworkMessageType.MSG));
+        assertTrue(messageTypes.containsKey(NetworkMessageType.EXPOSING));
+        assertTrue(messageTypes.containsKey(NetworkMessageType.NACK));
+
+        final String[] types = messageTypes.keySet().toArray(new String[messageTypes.size()]);
+        assertEquals(TrafficStatistics.OTHER_MESSAGE_TYPE, types[types.length - 1]);
+    }
+
+    @Test
+    public void recordMessageTypeShouldCountKnownTypes() {
+        statistics.recordMessageType(NetworkMessageType.IDLE);
+        statistics.recordMessageType(NetworkMessageType.IDLE);
+        statistics.recordMessageType(NetworkMessageType.WRITING);
+
+        final Map<String, Long> messageTypes = statistics.getMessageTypes();
+        assertEquals(Long.valueOf(2), messageTypes.get(NetworkMessageType.IDLE));
+        assertEquals(Long.valueOf(1), messageTypes.get(NetworkMessageType.WRITING));
+        assertEquals(Long.valueOf(0), messageTypes.get(TrafficStatistics.OTHER_MESSAGE_TYPE));
+    }
+
+    @Test
+    public void recordMessageTypeShouldCountUnknownAndMissingTypesAsOther() {
+        statistics.recordMessageType("SOMETHING");
+        statistics.recordMessageType(null);
+
+        assertEquals(Long.valueOf(2), statistics.getMessageTypes().get(TrafficStatistics.OTHER_MESSAGE_TYPE));
+    }
+
+    @Test
+    public void recordBinaryMessageTypeShouldCountAsTheSameTypeAsText() {
+        statistics.recordBinaryMessageType(BinaryMessageFormat.MSG);
+        statistics.recordBinaryMessageType(BinaryMessageFormat.IDLE);
+        statistics.recordBinaryMessageType(BinaryMessageFormat.SENDFILE);
+
+        final Map<String, Long> messageTypes = statistics.getMessageTypes();
+        assertEquals(Long.valueOf(1), messageTypes.get(NetworkMessageType.MSG));
+        assertEquals(Long.valueOf(1), messageTypes.get(NetworkMessageType.IDLE));
+        assertEquals(Long.valueOf(1), messageTypes.get(NetworkMessageType.SENDFILE));
+        assertEquals(Long.valueOf(0), messageTypes.get(TrafficStatistics.OTHER_MESSAGE_TYPE));
+    }
+
+    @Test
+    public void recordBinaryMessageTypeShouldCountUnknownTypesAsOther() {
+        statistics.recordBinaryMessageType((byte) 0);
+        statistics.recordBinaryMessageType((byte) 13);
+        statistics.recordBinaryMessageType((byte) -1);
+
+        assertEquals(Long.valueOf(3), statistics.getMessageTypes().get(TrafficStatistics.OTHER_MESSAGE_TYPE));
+    }
+
+    @Test
+    public void otherCountersShouldOnlyCountTheirOwnEvents() {
+        statistics.recordParseFailure();
+        statistics.recordOversizedMessage();
+        statistics.recordOversizedMessage();
+        statistics.recordDuplicateMessage();
+        statistics.recordDuplicateMessage();
+        statistics.recordDuplicateMessage();
+        statistics.recordTcpReconnect();
+
+        assertEquals(1, statistics.getParseFailures());
+        assertEquals(2, statistics.getOversizedMessages());
+        assertEquals(3, statistics.getDuplicateMessages());
+        assertEquals(1, statistics.getTcpReconnects());
+        assertEquals(Long.valueOf(0), statistics.getMessageTypes().get(NetworkMessageType.MSG));
+    }
+}
@@ -0,0 +1,134 @@
+
+/***************************************************************************
+ *   Copyright 2006-2018 by Christian Ihle                                 *
+ *   contact@kouchat.net                                                   *
+ *                                                                         *
+ *   This file is part of KouChat.                                         *
+ *                                                                         *
+ *   KouChat is free software; you can redistribute it and/or modify       *
+ *   it under the terms of the GNU Lesser General Public License as        *
+ *   published by the Free Software Foundation, either version 3 of        *
+ *   the License, or (at your option) any later version.                   *
+ *                                                                         *
+ *   KouChat is distributed in the hope that it will be useful,            *
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of        *
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU      *
+ *   Lesser General Public License for more details.                       *
+ *                                                                         *
+ *   You should have received a copy of the GNU Lesser General Public      *
+ *   License along with KouChat.                                           *
+ *   If not, see <http://www.gnu.org/licenses/>.                           *
+ ***************************************************************************/
+
+package net.usikkert.kouchat.net;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+
+import net.usikkert.kouchat.junit.ExpectedException;
+import net.usikkert.kouchat.misc.ErrorHandler;
+import net.usikkert.kouchat.misc.User;
+import net.usikkert.kouchat.settings.Settings;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+
+/**
+ * Test of {@link UDPNetworkService}.
+ *
+ * @author Christian Ihle
+ */
+@SuppressWarnings("HardCodedStringLiteral")
+public class UDPNetworkServiceTest {
+
+    @Rule
+    public ExpectedException expectedException = ExpectedException.none();
+
+    private Settings settings;
+    private ErrorHandler errorHandler;
+    private TrafficStatistics trafficStatistics;
+
+    @Before
+    public void setUp() {
+        settings = mock(Settings.class);
+        errorHandler = mock(ErrorHandler.class);
+        trafficStatistics = new TrafficStatistics();
+
+        when(settings.getMe()).thenReturn(new User("Test", 1234));
+    }
+
+    @Test
+    public void constructor1ShouldThrowExceptionIfSettingsIsNull() {
+        expectedException.expect(IllegalArgumentException.class);
+        expectedException.expectMessage("Settings can not be null");
+
+        new UDPNetworkService(null, errorHandler, true, trafficStatistics);
+    }
+
+    @Test
+    public void constructor1ShouldThrowExceptionIfErrorHandlerIsNull() {
+        expectedException.expect(IllegalArgumentException.class);
+        expectedException.expectMessage("Error handler can not be null");
+
+        new UDPNetworkService(settings, null, true, trafficStatistics);
+    }
+
+    @Test
+    public void constructor2ShouldThrowExceptionIfIpAddressIsNull() {
+        expectedException.expect(IllegalArgumentException.class);
+        expectedException.expectMessage("IP address can not be empty");
+
+        new UDPNetworkService(null, 0, settings, errorHandler, true, trafficStatistics);
+    }
+
+    @Test
+    public void constructor2ShouldThrowExceptionIfIpAddressIsEmpty() {
+        expectedException.expect(IllegalArgumentException.class);
+        expectedException.expectMessage("IP address can not be empty");
+
+        new UDPNetworkService(" ", 0, settings, errorHandler, true, trafficStatistics);
+    }
+
+    @Test
+    public void constructor2ShouldThrowExceptionIfTrafficStatisticsIsNull() {
+        expectedException.expect(IllegalArgumentException.class);
+        expectedException.expectMessage("Traffic statistics can not be null");
+
+        new UDPNetworkService("224.168.5.1", 0, settings, errorHandler, true, null);
+    }
+
+    @Test
+    public void isPrivateChatEnabledShouldReturnValueFromConstructor() {
+        assertTrue(new UDPNetworkService(settings, errorHandler, true, trafficStatistics).isPrivateChatEnabled());
+        assertFalse(new UDPNetworkService(settings, errorHandler, false, trafficStatistics).isPrivateChatEnabled());
+    }
+
+    @Test
+    public void sendMessageToAllShouldReturnFalseWhenNotConnected() {
+        final UDPNetworkService udpNetworkService = new UDPNetworkService(settings, errorHandler, true, trafficStatistics);
+
+        assertFalse(udpNetworkService.sendMessageToAll("12345!IDLE#Test:", true));
+    }
+
+    @Test
+    public void sendMessageToUserShouldReturnFalseWhenNotConnected() {
+        final UDPNetworkService udpNetworkService = new UDPNetworkService(settings, errorHandler, true, trafficStatistics);
+
+        assertFalse(udpNetworkService.sendMessageToUser("12345!PRIVMSG#Test:(100)[-1]Hello", "127.0.0.1", 40656));
+    }
+
+    @Test
+    public void sendMessageToUserShouldReturnFalseWhenPrivateChatIsDisabled() {
+        final UDPNetworkService udpNetworkService = new UDPNetworkService(settings, errorHandler, false, trafficStatistics);
+
+        assertFalse(udpNetworkService.sendMessageToUser("12345!PRIVMSG#Test:(100)[-1]Hello", "127.0.0.1", 40656));
+    }
+
+    @Test
+    public void stopServiceShouldDoNothingWhenNotConnected() {
+        final UDPNetworkService udpNetworkService = new UDPNetworkService(settings, errorHandler, true, trafficStatistics);
+
+        udpNetworkService.stopService();
+    }
+}
@@ -0,0 +1,452 @@
+
+/***************************************************************************
+ *   Copyright 2006-2018 by Christian Ihle                                 *
+ *   contact@kouchat.net                                                   *
+ *                                                                         *
+ *   This file is part of KouChat.                                         *
+ *                                                                         *
+ *   KouChat is free software; you can redistribute it and/or modify       *
+ *   it under the terms of the GNU Lesser General Public License as        *
+ *   published by the Free Software Foundation, either version 3 of        *
+ *   the License, or (at your option) any later version.                   *
+ *                                                                         *
+ *   KouChat is distributed in the hope that it will be useful,            *
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of        *
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU      *
+ *   Lesser General Public License for more details.                       *
+ *                                                                         *
+ *   You should have received a copy of the GNU Lesser General Public      *
+ *   License along with KouChat.                                           *
+ *   If not, see <http://www.gnu.org/licenses/>.                           *
+ ***************************************************************************/
+
+package net.usikkert.kouchat.net.tcp;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import net.usikkert.kouchat.junit.ExpectedException;
+import net.usikkert.kouchat.net.TrafficStatistics;
+import net.usikkert.kouchat.net.transport.TransportChannel;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+
+/**
+ * Test of {@link TCPClient}.
+ *
+ * <p>Uses real sockets on the loopback interface, and a real selector.</p>
+ *
+ * @author Christian Ihle
+ */
+@SuppressWarnings("HardCodedStringLiteral")
+public class TCPClientTest {
+
+    @Rule
+    public ExpectedException expectedException = ExpectedException.none();
+
+    private TCPSelector selector;
+
+    private SocketChannel senderChannel;
+    private SocketChannel receiverChannel;
+
+    private TCPClient sender;
+    private TCPClient receiver;
+
+    private TrafficStatistics senderStatistics;
+    private TrafficStatistics receiverStatistics;
+
+    private BlockingQueue<String> receivedMessages;
+
+    @Before
+    public void setUp() throws IOException {
+        selector = new TCPSelector();
+        assertTrue(selector.start());
+
+        try (final ServerSocketChannel serverChannel = ServerSocketChannel.open()) {
+            serverChannel.socket().bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+            senderChannel = SocketChannel.open(serverChannel.socket().getLocalSocketAddress());
+            receiverChannel = serverChannel.accept();
+        }
+
+        senderStatistics = new TrafficStatistics();
+        receiverStatistics = new TrafficStatistics();
+        sender = new TCPClient(senderChannel, selector, senderStatistics);
+        receiver = new TCPClient(receiverChannel, selector, receiverStatistics);
+        receivedMessages = new LinkedBlockingQueue<>();
+    }
+
+    @After
+    public void tearDown() {
+        sender.disconnect();
+        receiver.disconnect();
+        selector.stop();
+    }
+
+    @Test
+    public void constructorShouldThrowExceptionIfChannelIsNull() {
+        expectedException.expect(IllegalArgumentException.class);
+        expectedException.expectMessage("Channel can not be null");
+
+        new TCPClient(null, selector, senderStatistics);
+    }
+
+    @Test
+    public void constructorShouldThrowExceptionIfSelectorIsNull() {
+        expectedException.expect(IllegalArgumentException.class);
+        expectedException.expectMessage("Selector can not be null");
+
+        new TCPClient(senderChannel, null, senderStatistics);
+    }
+
+    @Test
+    public void constructorShouldThrowExceptionIfTrafficStatisticsIsNull() {
+        expectedException.expect(IllegalArgumentException.class);
+        expectedException.expectMessage("Traffic statistics can not be null");
+
+        new TCPClient(senderChannel, selector, null);
+    }
+
+    @Test
+    public void getIPAddressShouldReturnAddressOfOtherSide() {
+        assertEquals(InetAddress.getLoopbackAddress().getHostAddress(), sender.getIPAddress());
+    }
+
+    @Test
+    public void connectShouldFailIfSelectorIsNotRunning() {
+        selector.stop();
+
+        assertFalse(sender.connect());
+        assertFalse(sender.isConnected());
+    }
+
+    @Test
+    public void protocolShouldBeTextByDefault() {
+        assertEquals(TCPClient.PROTOCOL_TEXT, sender.getReadProtocol());
+        assertEquals(TCPClient.PROTOCOL_TEXT, sender.getWriteProtocol());
+    }
+
+    @Test
+    public void setReadProtocolShouldThrowExceptionIfProtocolIsUnknown() {
+        expectedException.expect(IllegalArgumentException.class);
+        expectedException.expectMessage("Unknown protocol: 3");
+
+        sender.setReadProtocol(3);
+    }
+
+    @Test
+    public void setWriteProtocolShouldThrowExceptionIfProtocolIsUnknown() {
+        expectedException.expect(IllegalArgumentException.class);
+        expectedException.expectMessage("Unknown protocol: 0");
+
+        sender.setWriteProtocol(0);
+    }
+
+    @Test
+    public void connectShouldEnableTcpNoDelayAndNonBlockingMode() throws IOException {
+        assertTrue(sender.connect());
+
+        assertTrue(senderChannel.socket().getTcpNoDelay());
+        assertFalse(senderChannel.isBlocking());
+    }
+
+    @Test
+    public void sendShouldDeliverTextMessages() throws InterruptedException {
+        connect();
+
+        sender.send("Hello");
+        sender.send("Hei på deg");
+
+        assertEquals("Hello", receivedMessages.poll(5, TimeUnit.SECONDS));
+        assertEquals("Hei på deg", receivedMessages.poll(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void sendShouldCountTheMessagesAndBytesOnBothSides() throws InterruptedException {
+        connect();
+
+        sender.send("Hello");
+        sender.send("Hei");
+
+        assertEquals("Hello", receivedMessages.poll(5, TimeUnit.SECONDS));
+        assertEquals("Hei", receivedMessages.poll(5, TimeUnit.SECONDS));
+
+        // Each text message has a length of 2 bytes first
+        assertEquals(2, senderStatistics.getPacketsOut(TransportChannel.TCP));
+        assertEquals(12, senderStatistics.getBytesOut(TransportChannel.TCP));
+        assertEquals(2, receiverStatistics.getPacketsIn(TransportChannel.TCP));
+        assertEquals(12, receiverStatistics.getBytesIn(TransportChannel.TCP));
+
+        assertEquals(0, senderStatistics.getPacketsIn(TransportChannel.TCP));
+        assertEquals(0, receiverStatistics.getPacketsOut(TransportChannel.TCP));
+    }
+
+    @Test
+    public void sendShouldDeliverFramedMessagesLargerThanTextMessagesSupport() throws InterruptedException {
+        sender.setWriteProtocol(TCPClient.PROTOCOL_FRAMED);
+        receiver.setReadProtocol(TCPClient.PROTOCOL_FRAMED);
+        connect();
+
+        final String largeMessage = createMessage(100_000);
+        sender.send("Hello");
+        sender.send(largeMessage);
+
+        assertEquals("Hello", receivedMessages.poll(5, TimeUnit.SECONDS));
+        assertEquals(largeMessage, receivedMessages.poll(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void sendShouldSkipFramedMessagesThatAreTooLarge() throws InterruptedException {
+        sender.setWriteProtocol(TCPClient.PROTOCOL_FRAMED);
+        receiver.setReadProtocol(TCPClient.PROTOCOL_FRAMED);
+        connect();
+
+        sender.send(createMessage(TCPFrameCodec.MAX_FRAME_SIZE + 1));
+        sender.send("Still connected");
+
+        assertEquals("Still connected", receivedMessages.poll(5, TimeUnit.SECONDS));
+        assertTrue(sender.isConnected());
+        assertEquals(1, senderStatistics.getOversizedMessages());
+        assertEquals(1, senderStatistics.getPacketsOut(TransportChannel.TCP));
+    }
+
+    @Test
+    public void sendShouldDeliverManyMessagesInOrder() throws InterruptedException {
+        sender.setWriteProtocol(TCPClient.PROTOCOL_FRAMED);
+        receiver.setReadProtocol(TCPClient.PROTOCOL_FRAMED);
+        connect();
+
+        // Much more than the socket buffers, so some of it has to wait for the selector
+        final String message = createMessage(10_000);
+
+        for (int i = 0; i < 200; i++) {
+            sender.send(i + message);
+        }
+
+        for (int i = 0; i < 200; i++) {
+            assertEquals(i + message, receivedMessages.poll(5, TimeUnit.SECONDS));
+        }
+    }
+
+    @Test
+    public void sendShouldDeliverBatchOfMessages() throws InterruptedException {
+        connect();
+
+        sender.send(Arrays.asList("message 1", "message 2", "message 3"));
+
+        assertEquals("message 1", receivedMessages.poll(5, TimeUnit.SECONDS));
+        assertEquals("message 2", receivedMessages.poll(5, TimeUnit.SECONDS));
+        assertEquals("message 3", receivedMessages.poll(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void sendShouldNotWaitWhenTooMuchIsWaitingAndNotifyWhenReadyAgain() throws InterruptedException {
+        final CountDownLatch readyToSend = new CountDownLatch(1);
+
+        sender.registerClientListener(new TCPClientListener() {
+            @Override
+            public void messageArrived(final String message, final TCPClient client) {
+
+            }
+
+            @Override
+            public void disconnected(final TCPClient client) {
+
+            }
+
+            @Override
+            public void readyToSend(final TCPClient client) {
+                readyToSend.countDown();
+            }
+        });
+
+        connect();
+        assertTrue(sender.isReadyToSend());
+
+        // Much more than the socket buffers, in one batch, so most of it has to wait for the selector
+        final String message = createMessage(30_000);
+        final List<String> messages = new ArrayList<>();
+
+        for (int i = 0; i < 400; i++) {
+            messages.add(message);
+        }
+
+        sender.send(messages);
+        assertFalse(sender.isReadyToSend());
+
+        assertTrue(readyToSend.await(10, TimeUnit.SECONDS));
+        assertTrue(sender.isReadyToSend());
+    }
+
+    @Test
+    public void sendShouldOnlyAskSelectorToWatchForWritingWhenTheWriteInterestChanges() throws IOException {
+        final TCPSelector mockSelector = mock(TCPSelector.class);
+        when(mockSelector.register(any(SocketChannel.class), anyInt(), any(TCPChannelHandler.class)))
+                .thenReturn(mock(SelectionKey.class));
+        final TCPClient client = new TCPClient(senderChannel, mockSelector, senderStatistics);
+        assertTrue(client.connect());
+
+        // Fits in the socket buffers, so nothing is waiting
+        client.send("message 1");
+        client.send("message 2");
+        verify(mockSelector, never()).execute(any(Runnable.class));
+
+        // Much more than the socket buffers, so there is always something waiting after this
+        final String message = createMessage(30_000);
+        final List<String> messages = new ArrayList<>();
+
+        for (int i = 0; i < 400; i++) {
+            messages.add(message);
+        }
+
+        client.send(messages);
+        client.send("message 3");
+        client.send("message 4");
+
+        verify(mockSelector, times(1)).execute(any(Runnable.class));
+    }
+
+    @Test
+    public void sendShouldNotifyListenerOutsideTheLockWhenWritingFails() throws IOException, InterruptedException {
+        final BlockingQueue<Boolean> otherThreadFinished = new LinkedBlockingQueue<>();
+
+        sender.registerClientListener(new TCPClientListener() {
+            @Override
+            public void messageArrived(final String message, final TCPClient client) {
+
+            }
+
+            @Override
+            public void disconnected(final TCPClient client) {
+                // Can't finish while the lock is still held by the sending thread
+                final Thread otherThread = new Thread(new Runnable() {
+                    @Override
+                    public void run() {
+                        client.isReadyToSend();
+                    }
+                });
+
+                otherThread.start();
+
+                try {
+                    otherThread.join(5000);
+                }
+
+                catch (final InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+
+                otherThreadFinished.add(!otherThread.isAlive());
+            }
+
+            @Override
+            public void readyToSend(final TCPClient client) {
+
+            }
+        });
+
+        connect();
+        senderChannel.close();
+
+        sender.send("Hello");
+
+        assertEquals(Boolean.TRUE, otherThreadFinished.poll(10, TimeUnit.SECONDS));
+        assertFalse(sender.isConnected());
+    }
+
+    @Test
+    public void receiverShouldNotifyListenerWhenOtherSideDisconnects() throws InterruptedException {
+        connect();
+
+        sender.disconnect();
+
+        assertEquals("Disconnected", receivedMessages.poll(5, TimeUnit.SECONDS));
+        assertFalse(receiver.isConnected());
+    }
+
+    @Test
+    public void sendShouldDoNothingWhenNotConnected() {
+        sender.send("Hello");
+
+        assertFalse(sender.isConnected());
+    }
+
+    @Test
+    public void receiverShouldBeAbleToSwitchProtocolWhenMessageArrives() throws InterruptedException {
+        receiver.registerClientListener(new TCPClientListener() {
+            @Override
+            public void messageArrived(final String message, final TCPClient client) {
+                if (message.equals("Switch")) {
+                    client.setReadProtocol(TCPClient.PROTOCOL_FRAMED);
+                }
+
+                receivedMessages.add(message);
+            }
+
+            @Override
+            public void disconnected(final TCPClient client) {
+                receivedMessages.add("Disconnected");
+            }
+
+            @Override
+            public void readyToSend(final TCPClient client) {
+
+            }
+        });
+
+        assertTrue(receiver.connect());
+        assertTrue(sender.connect());
+
+        sender.send("Switch");
+        sender.setWriteProtocol(TCPClient.PROTOCOL_FRAMED);
+        sender.send("Framed");
+
+        assertEquals("Switch", receivedMessages.poll(5, TimeUnit.SECONDS));
+        assertEquals("Framed", receivedMessages.poll(5, TimeUnit.SECONDS));
+    }
+
+    private void connect() {
+        receiver.registerClientListener(new TCPClientListener() {
+            @Override
+            public void messageArrived(final String message, final TCPClient client) {
+                receivedMessages.add(message);
+            }
+
+            @Override
+            public void disconnected(final TCPClient client) {
+                receivedMessages.add("Disconnected");
+            }
+
+            @Override
+            public void readyToSend(final TCPClient client) {
+
+            }
+        });
+
+        assertTrue(receiver.connect());
+        assertTrue(sender.connect());
+    }
+
+    private String createMessage(final int length) {
+        final char[] chars = new char[length];
+        Arrays.fill(chars, 'b');
+
+        return new String(chars);
+    }
+}
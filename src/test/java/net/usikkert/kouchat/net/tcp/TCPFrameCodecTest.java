@@ -0,0 +1,230 @@
+
+/***************************************************************************
+ *   Copyright 2006-2018 by Christian Ihle                                 *
+ *   contact@kouchat.net                                                   *
+ *                                                                         *
+ *   This file is part of KouChat.                                         *
+ *                                                                         *
+ *   KouChat is free software; you can redistribute it and/or modify       *
+ *   it under the terms of the GNU Lesser General Public License as        *
+ *   published by the Free Software Foundation, either version 3 of        *
+ *   the License, or (at your option) any later version.                   *
+ *                                                                         *
+ *   KouChat is distributed in the hope that it will be useful,            *
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of        *
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU      *
+ *   Lesser General Public License for more details.                       *
+ *                                                                         *
+ *   You should have received a copy of the GNU Lesser General Public      *
+ *   License along with KouChat.                                           *
+ *   If not, see <http://www.gnu.org/licenses/>.                           *
+ ***************************************************************************/
+
+package net.usikkert.kouchat.net.tcp;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import net.usikkert.kouchat.junit.ExpectedException;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+
+/**
+ * Test of {@link TCPFrameCodec}.
+ *
+ * @author Christian Ihle
+ */
+@SuppressWarnings("HardCodedStringLiteral")
+public class TCPFrameCodecTest {
+
+    @Rule
+    public ExpectedException expectedException = ExpectedException.none();
+
+    private TCPFrameCodec codec;
+
+    @Before
+    public void setUp() {
+        codec = new TCPFrameCodec();
+    }
+
+    @Test
+    public void encodeShouldThrowExceptionIfMessageIsNull() {
+        expectedException.expect(IllegalArgumentException.class);
+        expectedException.expectMessage("Message can not be null");
+
+        codec.encode(null, TCPClient.PROTOCOL_FRAMED);
+    }
+
+    @Test
+    public void decodeShouldThrowExceptionIfInputIsNull() throws IOException {
+        expectedException.expect(IllegalArgumentException.class);
+        expectedException.expectMessage("Input can not be null");
+
+        codec.decode(null, TCPClient.PROTOCOL_FRAMED);
+    }
+
+    @Test
+    public void encodeFramedShouldAddLengthInFrontOfUTF8Message() {
+        final ByteBuffer frame = codec.encode("Hei på deg", TCPClient.PROTOCOL_FRAMED);
+
+        assertEquals(TCPFrameCodec.HEADER_SIZE + 11, frame.remaining());
+        assertEquals(11, frame.getInt(0));
+        assertEquals('H', frame.get(4));
+        assertEquals((byte) 0xC3, frame.get(9));
+        assertEquals((byte) 0xA5, frame.get(10));
+    }
+
+    @Test
+    public void encodeFramedShouldHandleEmptyMessage() {
+        final ByteBuffer frame = codec.encode("", TCPClient.PROTOCOL_FRAMED);
+
+        assertEquals(TCPFrameCodec.HEADER_SIZE, frame.remaining());
+        assertEquals(0, frame.getInt(0));
+    }
+
+    @Test
+    public void encodeFramedShouldReturnNullIfMessageIsTooLarge() {
+        assertNull(codec.encode(createMessage(TCPFrameCodec.MAX_FRAME_SIZE + 1), TCPClient.PROTOCOL_FRAMED));
+    }
+
+    @Test
+    public void encodeFramedShouldHandleMessageOfMaxSize() {
+        final ByteBuffer frame = codec.encode(createMessage(TCPFrameCodec.MAX_FRAME_SIZE), TCPClient.PROTOCOL_FRAMED);
+
+        assertEquals(TCPFrameCodec.MAX_FRAME_SIZE, frame.getInt(0));
+    }
+
+    @Test
+    public void encodeTextShouldGiveSameBytesAsWriteUTF() throws IOException {
+        final String message = "Hei på deg \u0000 \u20AC \uD83D\uDE00";
+        final ByteArrayOutputStream expected = new ByteArrayOutputStream();
+        new DataOutputStream(expected).writeUTF(message);
+
+        assertArrayEquals(expected.toByteArray(), copy(codec.encode(message, TCPClient.PROTOCOL_TEXT)));
+    }
+
+    @Test
+    public void encodeTextShouldReturnNullIfMessageIsTooLarge() {
+        assertNull(codec.encode(createMessage(TCPFrameCodec.MAX_TEXT_SIZE + 1), TCPClient.PROTOCOL_TEXT));
+        assertNotNull(codec.encode(createMessage(TCPFrameCodec.MAX_TEXT_SIZE), TCPClient.PROTOCOL_TEXT));
+    }
+
+    @Test
+    public void decodeFramedShouldDecodeEncodedMessages() throws IOException {
+        final String largeMessage = createMessage(70_000);
+        final ByteBuffer input = createInput(TCPClient.PROTOCOL_FRAMED, "Hello", "Hei på deg", largeMessage, "", "Bye");
+
+        assertEquals("Hello", codec.decode(input, TCPClient.PROTOCOL_FRAMED));
+        assertEquals("Hei på deg", codec.decode(input, TCPClient.PROTOCOL_FRAMED));
+        assertEquals(largeMessage, codec.decode(input, TCPClient.PROTOCOL_FRAMED));
+        assertEquals("", codec.decode(input, TCPClient.PROTOCOL_FRAMED));
+        assertEquals("Bye", codec.decode(input, TCPClient.PROTOCOL_FRAMED));
+        assertNull(codec.decode(input, TCPClient.PROTOCOL_FRAMED));
+    }
+
+    @Test
+    public void decodeTextShouldDecodeEncodedMessages() throws IOException {
+        final String message = "Hei på deg \u0000 \u20AC \uD83D\uDE00";
+        final ByteBuffer input = createInput(TCPClient.PROTOCOL_TEXT, "Hello", message, "");
+
+        assertEquals("Hello", codec.decode(input, TCPClient.PROTOCOL_TEXT));
+        assertEquals(message, codec.decode(input, TCPClient.PROTOCOL_TEXT));
+        assertEquals("", codec.decode(input, TCPClient.PROTOCOL_TEXT));
+        assertNull(codec.decode(input, TCPClient.PROTOCOL_TEXT));
+    }
+
+    @Test
+    public void decodeShouldHandleMessagesWithDifferentProtocols() throws IOException {
+        final ByteBuffer input = ByteBuffer.allocate(100);
+        input.put(copy(codec.encode("SYS-IDENTIFY:1:2:2", TCPClient.PROTOCOL_TEXT)));
+        input.put(copy(codec.encode("Framed", TCPClient.PROTOCOL_FRAMED)));
+        input.flip();
+
+        assertEquals("SYS-IDENTIFY:1:2:2", codec.decode(input, TCPClient.PROTOCOL_TEXT));
+        assertEquals("Framed", codec.decode(input, TCPClient.PROTOCOL_FRAMED));
+    }
+
+    @Test
+    public void decodeShouldReturnNullAndKeepPositionIfFrameIsIncomplete() throws IOException {
+        final byte[] frame = copy(codec.encode("Hello", TCPClient.PROTOCOL_FRAMED));
+
+        for (int length = 0; length < frame.length; length++) {
+            final ByteBuffer input = ByteBuffer.wrap(Arrays.copyOf(frame, length));
+
+            assertNull(codec.decode(input, TCPClient.PROTOCOL_FRAMED));
+            assertEquals(0, input.position());
+        }
+    }
+
+    @Test
+    public void decodeTextShouldReturnNullAndKeepPositionIfFrameIsIncomplete() throws IOException {
+        final byte[] frame = copy(codec.encode("Hello", TCPClient.PROTOCOL_TEXT));
+
+        for (int length = 0; length < frame.length; length++) {
+            final ByteBuffer input = ByteBuffer.wrap(Arrays.copyOf(frame, length));
+
+            assertNull(codec.decode(input, TCPClient.PROTOCOL_TEXT));
+            assertEquals(0, input.position());
+        }
+    }
+
+    @Test
+    public void decodeShouldRespectPositionAndLimitOfInput() throws IOException {
+        final byte[] frame = copy(codec.encode("Hello", TCPClient.PROTOCOL_FRAMED));
+        final ByteBuffer input = ByteBuffer.allocate(frame.length + 10);
+        input.position(3);
+        input.put(frame);
+        input.put((byte) 99);
+        input.flip();
+        input.position(3);
+
+        assertEquals("Hello", codec.decode(input, TCPClient.PROTOCOL_FRAMED));
+        assertEquals(1, input.remaining());
+    }
+
+    @Test
+    public void decodeShouldThrowExceptionIfFrameIsTooLarge() throws IOException {
+        expectedException.expect(IOException.class);
+        expectedException.expectMessage("Invalid frame size: " + (TCPFrameCodec.MAX_FRAME_SIZE + 1));
+
+        codec.decode(ByteBuffer.allocate(4).putInt(0, TCPFrameCodec.MAX_FRAME_SIZE + 1), TCPClient.PROTOCOL_FRAMED);
+    }
+
+    @Test
+    public void decodeShouldThrowExceptionIfFrameSizeIsNegative() throws IOException {
+        expectedException.expect(IOException.class);
+        expectedException.expectMessage("Invalid frame size: -1");
+
+        codec.decode(ByteBuffer.allocate(4).putInt(0, -1), TCPClient.PROTOCOL_FRAMED);
+    }
+
+    private byte[] copy(final ByteBuffer frame) {
+        return Arrays.copyOfRange(frame.array(), frame.position(), frame.limit());
+    }
+
+    private ByteBuffer createInput(final int protocol, final String... messages) {
+        final ByteBuffer buffer = ByteBuffer.allocate(100_000);
+
+        for (final String message : messages) {
+            buffer.put(codec.encode(message, protocol));
+        }
+
+        buffer.flip();
+
+        return buffer;
+    }
+
+    private String createMessage(final int length) {
+        final char[] chars = new char[length];
+        Arrays.fill(chars, 'a');
+
+        return new String(chars);
+    }
+}
@@ -0,0 +1,181 @@
+
+/***************************************************************************
+ *   Copyright 2006-2018 by Christian Ihle                                 *
+ *   contact@kouchat.net                                                   *
+ *                                                                         *
+ *   This file is part of KouChat.                                         *
+ *                                                                         *
+ *   KouChat is free software; you can redistribute it and/or modify       *
+ *   it under the terms of the GNU Lesser General Public License as        *
+ *   published by the Free Software Foundation, either version 3 of        *
+ *   the License, or (at your option) any later version.                   *
+ *                                                                         *
+ *   KouChat is distributed in the hope that it will be useful,            *
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of        *
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU      *
+ *   Lesser General Public License for more details.                       *
+ *                                                                         *
+ *   You should have received a copy of the GNU Lesser General Public      *
+ *   License along with KouChat.                                           *
+ *   If not, see <http://www.gnu.org/licenses/>.                           *
+ ***************************************************************************/
+
+package net.usikkert.kouchat.net.tcp;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Pipe;
+import java.nio.channels.SelectableChannel;
+import java.nio.channels.SelectionKey;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import net.usikkert.kouchat.junit.ExpectedException;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+
+/**
+ * Test of {@link TCPSelector}.
+ *
+ * @author Christian Ihle
+ */
+@SuppressWarnings("HardCodedStringLiteral")
+public class TCPSelectorTest {
+
+    @Rule
+    public ExpectedException expectedException = ExpectedException.none();
+
+    private TCPSelector selector;
+
+    @Before
+    public void setUp() {
+        selector = new TCPSelector();
+    }
+
+    @After
+    public void tearDown() {
+        selector.stop();
+    }
+
+    @Test
+    public void startShouldOnlyStartOnce() {
+        assertTrue(selector.start());
+        assertTrue(selector.start());
+    }
+
+    @Test
+    public void registerShouldThrowExceptionIfChannelIsNull() throws IOException {
+        expectedException.expect(IllegalArgumentException.class);
+        expectedException.expectMessage("Channel can not be null");
+
+        selector.register(null, SelectionKey.OP_READ, mock(TCPChannelHandler.class));
+    }
+
+    @Test
+    public void registerShouldThrowExceptionIfHandlerIsNull() throws IOException {
+        expectedException.expect(IllegalArgumentException.class);
+        expectedException.expectMessage("Channel handler can not be null");
+
+        selector.register(mock(SelectableChannel.class), SelectionKey.OP_READ, null);
+    }
+
+    @Test
+    public void registerShouldThrowExceptionIfNotStarted() throws IOException {
+        expectedException.expect(IOException.class);
+        expectedException.expectMessage("Selector is not running");
+
+        selector.register(mock(SelectableChannel.class), SelectionKey.OP_READ, mock(TCPChannelHandler.class));
+    }
+
+    @Test
+    public void executeShouldThrowExceptionIfTaskIsNull() {
+        expectedException.expect(IllegalArgumentException.class);
+        expectedException.expectMessage("Task can not be null");
+
+        selector.execute(null);
+    }
+
+    @Test
+    public void executeShouldRunTaskOnSelectorThread() throws InterruptedException {
+        selector.start();
+
+        final CountDownLatch latch = new CountDownLatch(1);
+        final AtomicBoolean onSelectorThread = new AtomicBoolean();
+
+        selector.execute(new Runnable() {
+            @Override
+            public void run() {
+                onSelectorThread.set(selector.isSelectorThread());
+                latch.countDown();
+            }
+        });
+
+        assertTrue(latch.await(5, TimeUnit.SECONDS));
+        assertTrue(onSelectorThread.get());
+        assertFalse(selector.isSelectorThread());
+    }
+
+    @Test
+    public void registeredHandlerShouldBeNotifiedWhenChannelIsReady() throws IOException, InterruptedException {
+        selector.start();
+
+        final Pipe pipe = Pipe.open();
+        pipe.source().configureBlocking(false);
+        final CountDownLatch latch = new CountDownLatch(1);
+
+        final SelectionKey key = selector.register(pipe.source(), SelectionKey.OP_READ, new TCPChannelHandler() {
+            @Override
+            public void channelReady(final SelectionKey readyKey) {
+                readyKey.cancel();
+                latch.countDown();
+            }
+        });
+
+        assertTrue(key.isValid());
+        pipe.sink().write(ByteBuffer.wrap(new byte[] {1}));
+
+        assertTrue(latch.await(5, TimeUnit.SECONDS));
+
+        pipe.sink().close();
+        pipe.source().close();
+    }
+
+    @Test
+    public void selectorShouldKeepRunningWhenHandlerFails() throws IOException, InterruptedException {
+        selector.start();
+
+        final Pipe pipe = Pipe.open();
+        pipe.source().configureBlocking(false);
+
+        selector.register(pipe.source(), SelectionKey.OP_READ, new TCPChannelHandler() {
+            @Override
+            public void channelReady(final SelectionKey readyKey) {
+                readyKey.cancel();
+                throw new IllegalStateException("Failed");
+            }
+        });
+
+        pipe.sink().write(ByteBuffer.wrap(new byte[] {1}));
+
+        final CountDownLatch latch = new CountDownLatch(1);
+
+        selector.execute(new Runnable() {
+            @Override
+            public void run() {
+                latch.countDown();
+            }
+        });
+
+        assertTrue(latch.await(5, TimeUnit.SECONDS));
+
+        pipe.sink().close();
+        pipe.source().close();
+    }
+}
@@ -0,0 +1,195 @@
+
+/***************************************************************************
+ *   Copyright 2006-2018 by Christian Ihle                                 *
+ *   contact@kouchat.net                                                   *
+ *                                                                         *
+ *   This file is part of KouChat.                                         *
+ *                                                                         *
+ *   KouChat is free software; you can redistribute it and/or modify       *
+ *   it under the terms of the GNU Lesser General Public License as        *
+ *   published by the Free Software Foundation, either version 3 of        *
+ *   the License, or (at your option) any later version.                   *
+ *                                                                         *
+ *   KouChat is distributed in the hope that it will be useful,            *
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of        *
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU      *
+ *   Lesser General Public License for more details.                       *
+ *                                                                         *
+ *   You should have received a copy of the GNU Lesser General Public      *
+ *   License along with KouChat.                                           *
+ *   If not, see <http://www.gnu.org/licenses/>.                           *
+ ***************************************************************************/
+
+package net.usikkert.kouchat.net.tcp;
+
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import net.usikkert.kouchat.junit.ExpectedException;
+
+import org.junit.Rule;
+import org.junit.Test;
+
+/**
+ * Test of {@link TCPSendQueue}.
+ *
+ * @author Christian Ihle
+ */
+@SuppressWarnings("HardCodedStringLiteral")
+public class TCPSendQueueTest {
+
+    private static final String CHAT_1 = "12345678!MSG#Christian:[-15987646]Hello";
+    private static final String CHAT_2 = "12345678!MSG#Christian:[-15987646]Anyone there?";
+    private static final String PRIVATE_CHAT = "12345678!PRIVMSG#Christian:(435435)[-15987646]Hi";
+    private static final String WRITING = "12345678!WRITING#Christian:";
+    private static final String STOPPED_WRITING = "12345678!STOPPEDWRITING#Christian:";
+    private static final String IDLE = "12345678!IDLE#Christian:(1)[0]{0}<10.0.0.1>";
+    private static final String NICK = "12345678!NICK#Christian:";
+
+    @Rule
+    public ExpectedException expectedException = ExpectedException.none();
+
+    @Test
+    public void constructorShouldThrowExceptionIfOverflowPolicyIsNull() {
+        expectedException.expect(IllegalArgumentException.class);
+        expectedException.expectMessage("Overflow policy can not be null");
+
+        new TCPSendQueue(10, null);
+    }
+
+    @Test
+    public void constructorShouldThrowExceptionIfCapacityIsZero() {
+        expectedException.expect(IllegalArgumentException.class);
+        expectedException.expectMessage("Capacity must be larger than 0");
+
+        new TCPSendQueue(0, TCPOverflowPolicy.DROP);
+    }
+
+    @Test
+    public void addShouldThrowExceptionIfMessageIsNull() {
+        expectedException.expect(IllegalArgumentException.class);
+        expectedException.expectMessage("Message can not be null");
+
+        new TCPSendQueue(10, TCPOverflowPolicy.DROP).add(null);
+    }
+
+    @Test
+    public void removeAllShouldReturnMessagesInOrderAndEmptyTheQueue() {
+        final TCPSendQueue queue = new TCPSendQueue(10, TCPOverflowPolicy.DROP);
+
+        assertTrue(queue.add(CHAT_1));
+        assertTrue(queue.add(WRITING));
+        assertEquals(2, queue.size());
+
+        assertEquals(Arrays.asList(CHAT_1, WRITING), queue.removeAll());
+        assertEquals(0, queue.size());
+        assertEquals(Collections.<String>emptyList(), queue.removeAll());
+        assertEquals(2, queue.getSentMessages());
+    }
+
+    @Test
+    public void addShouldDropOldestReplaceableMessageWhenFullWithDropPolicy() {
+        final TCPSendQueue queue = new TCPSendQueue(4, TCPOverflowPolicy.DROP);
+
+        queue.add(CHAT_1);
+        queue.add(NICK);
+        queue.add(WRITING);
+        queue.add(STOPPED_WRITING);
+
+        assertTrue(queue.add(CHAT_2));
+
+        assertEquals(Arrays.asList(CHAT_1, NICK, STOPPED_WRITING, CHAT_2), queue.removeAll());
+        assertEquals(1, queue.getDroppedMessages());
+    }
+
+    @Test
+    public void addShouldDropIdleMessageWhenFullWithDropPolicy() {
+        final TCPSendQueue queue = new TCPSendQueue(2, TCPOverflowPolicy.DROP);
+
+        queue.add(IDLE);
+        queue.add(CHAT_1);
+
+        assertTrue(queue.add(CHAT_2));
+
+        assertEquals(Arrays.asList(CHAT_1, CHAT_2), queue.removeAll());
+    }
+
+    @Test
+    public void addShouldRejectChatMessageWhenFullOfMessagesThatCanNotBeLostWithDropPolicy() {
+        final TCPSendQueue queue = new TCPSendQueue(2, TCPOverflowPolicy.DROP);
+
+        queue.add(CHAT_1);
+        queue.add(PRIVATE_CHAT);
+
+        assertFalse(queue.add(CHAT_2));
+
+        assertEquals(Arrays.asList(CHAT_1, PRIVATE_CHAT), queue.removeAll());
+        assertEquals(1, queue.getDroppedMessages());
+    }
+
+    @Test
+    public void addShouldDropNewReplaceableMessageWhenFullOfMessagesThatCanNotBeLostWithDropPolicy() {
+        final TCPSendQueue queue = new TCPSendQueue(2, TCPOverflowPolicy.DROP);
+
+        queue.add(CHAT_1);
+        queue.add(NICK);
+
+        assertTrue(queue.add(WRITING));
+
+        assertEquals(Arrays.asList(CHAT_1, NICK), queue.removeAll());
+        assertEquals(1, queue.getDroppedMessages());
+    }
+
+    @Test
+    public void addShouldNeverDropMessagesOfUnknownFormatWithDropPolicy() {
+        final TCPSendQueue queue = new TCPSendQueue(2, TCPOverflowPolicy.DROP);
+
+        queue.add(CHAT_1);
+        queue.add("SYS-DISCONNECT-ADDITIONAL");
+
+        assertFalse(queue.add(CHAT_2));
+
+        assertEquals(Arrays.asList(CHAT_1, "SYS-DISCONNECT-ADDITIONAL"), queue.removeAll());
+    }
+
+    @Test
+    public void addShouldRejectMessageWhenFullWithDisconnectPolicy() {
+        final TCPSendQueue queue = new TCPSendQueue(2, TCPOverflowPolicy.DISCONNECT);
+
+        assertTrue(queue.add(WRITING));
+        assertTrue(queue.add(CHAT_1));
+        assertFalse(queue.add(CHAT_2));
+
+        assertEquals(Arrays.asList(WRITING, CHAT_1), queue.removeAll());
+        assertEquals(1, queue.getDroppedMessages());
+    }
+
+    @Test
+    public void getMaxSizeShouldRememberLargestSize() {
+        final TCPSendQueue queue = new TCPSendQueue(10, TCPOverflowPolicy.DROP);
+
+        queue.add(CHAT_1);
+        queue.add(CHAT_2);
+        queue.add(WRITING);
+        queue.removeAll();
+        queue.add(CHAT_1);
+
+        assertEquals(3, queue.getMaxSize());
+        assertEquals(10, queue.getCapacity());
+    }
+
+    @Test
+    public void clearShouldCountWaitingMessagesAsDropped() {
+        final TCPSendQueue queue = new TCPSendQueue(10, TCPOverflowPolicy.DROP);
+
+        queue.add(CHAT_1);
+        queue.add(WRITING);
+        queue.clear();
+
+        assertEquals(0, queue.size());
+        assertEquals(2, queue.getDroppedMessages());
+        assertEquals(0, queue.getSentMessages());
+    }
+}
@@ -22,10 +22,17 @@
 
 package net.usikkert.kouchat.net.tcp;
 
-import static org.mockito.Mockito.mock;
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.channels.SocketChannel;
 
 import net.usikkert.kouchat.junit.ExpectedException;
 import net.usikkert.kouchat.misc.ErrorHandler;
+import net.usikkert.kouchat.misc.User;
 import net.usikkert.kouchat.settings.Settings;
 
 import org.junit.Rule;
@@ -36,6 +43,7 @@ import org.junit.Test;
  *
  * @author Christian Ihle
  */
+@SuppressWarnings("HardCodedStringLiteral")
 public class TCPServerTest {
 
     @Rule
@@ -46,7 +54,7 @@ public class TCPServerTest {
         expectedException.expect(IllegalArgumentException.class);
         expectedException.expectMessage("Settings can not be null");
 
-        new TCPServer(null, mock(ErrorHandler.class), mock(TCPConnectionListener.class));
+        new TCPServer(null, mock(ErrorHandler.class), mock(TCPConnectionListener.class), new TCPSelector());
     }
 
     @Test
@@ -54,7 +62,7 @@ public class TCPServerTest {
         expectedException.expect(IllegalArgumentException.class);
         expectedException.expectMessage("Error handler can not be null");
 
-        new TCPServer(mock(Settings.class), null, mock(TCPConnectionListener.class));
+        new TCPServer(mock(Settings.class), null, mock(TCPConnectionListener.class), new TCPSelector());
     }
 
     @Test
@@ -62,6 +70,38 @@ public class TCPServerTest {
         expectedException.expect(IllegalArgumentException.class);
         expectedException.expectMessage("TCP connection listener can not be null");
 
-        new TCPServer(mock(Settings.class), mock(ErrorHandler.class), null);
+        new TCPServer(mock(Settings.class), mock(ErrorHandler.class), null, new TCPSelector());
+    }
+
+    @Test
+    public void constructorShouldThrowExceptionIfSelectorIsNull() {
+        expectedException.expect(IllegalArgumentException.class);
+        expectedException.expectMessage("Selector can not be null");
+
+        new TCPServer(mock(Settings.class), mock(ErrorHandler.class), mock(TCPConnectionListener.class), null);
+    }
+
+    @Test
+    public void serverShouldAcceptConnectionsOnSelectorThread() throws IOException {
+        final Settings settings = mock(Settings.class);
+        final User me = new User("Christian", 1234);
+        when(settings.getMe()).thenReturn(me);
+
+        final TCPSelector selector = new TCPSelector();
+        final TCPConnectionListener listener = mock(TCPConnectionListener.class);
+        final TCPServer server = new TCPServer(settings, mock(ErrorHandler.class), listener, selector);
+
+        selector.start();
+        server.startServer();
+
+        try (final Socket socket = new Socket(InetAddress.getLoopbackAddress(), me.getTcpChatPort())) {
+            assertTrue(socket.isConnected());
+            verify(listener, timeout(5000)).socketAdded(any(SocketChannel.class));
+        }
+
+        finally {
+            server.stopServer();
+            selector.stop();
+        }
     }
 }
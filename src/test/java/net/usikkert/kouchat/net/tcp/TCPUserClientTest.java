@@ -0,0 +1,376 @@
+
+/***************************************************************************
+ *   Copyright 2006-2018 by Christian Ihle                                 *
+ *   contact@kouchat.net                                                   *
+ *                                                                         *
+ *   This file is part of KouChat.                                         *
+ *                                                                         *
+ *   KouChat is free software; you can redistribute it and/or modify       *
+ *   it under the terms of the GNU Lesser General Public License as        *
+ *   published by the Free Software Foundation, either version 3 of        *
+ *   the License, or (at your option) any later version.                   *
+ *                                                                         *
+ *   KouChat is distributed in the hope that it will be useful,            *
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of        *
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU      *
+ *   Lesser General Public License for more details.                       *
+ *                                                                         *
+ *   You should have received a copy of the GNU Lesser General Public      *
+ *   License along with KouChat.                                           *
+ *   If not, see <http://www.gnu.org/licenses/>.                           *
+ ***************************************************************************/
+
+package net.usikkert.kouchat.net.tcp;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import net.usikkert.kouchat.junit.ExpectedException;
+import net.usikkert.kouchat.misc.FlightRecorder;
+import net.usikkert.kouchat.misc.User;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InOrder;
+
+/**
+ * Test of {@link TCPUserClient}.
+ *
+ * @author Christian Ihle
+ */
+@SuppressWarnings("HardCodedStringLiteral")
+public class TCPUserClientTest {
+
+    @Rule
+    public ExpectedException expectedException = ExpectedException.none();
+
+    private TCPClient client;
+    private User user;
+    private TCPReceiverListener listener;
+    private TCPSendQueue sendQueue;
+    private List<Runnable> tasks;
+    private Executor executor;
+    private ScheduledExecutorService retryExecutor;
+    private List<Runnable> receivedTasks;
+    private Executor receiveExecutor;
+    private FlightRecorder flightRecorder;
+
+    @Before
+    public void setUp() {
+        client = mock(TCPClient.class);
+        when(client.isReadyToSend()).thenReturn(true);
+        user = new User("Niles", 1234);
+        listener = mock(TCPReceiverListener.class);
+        sendQueue = new TCPSendQueue(3, TCPOverflowPolicy.DISCONNECT);
+        tasks = new ArrayList<>();
+        flightRecorder = new FlightRecorder(16);
+        retryExecutor = mock(ScheduledExecutorService.class);
+
+        executor = new Executor() {
+            @Override
+            public void execute(final Runnable command) {
+                tasks.add(command);
+            }
+        };
+
+        receivedTasks = new ArrayList<>();
+
+        receiveExecutor = new Executor() {
+            @Override
+            public void execute(final Runnable command) {
+                receivedTasks.add(command);
+            }
+        };
+    }
+
+    @Test
+    public void constructorShouldThrowExceptionIfSendQueueIsNull() {
+        expectedException.expect(IllegalArgumentException.class);
+        expectedException.expectMessage("Send queue can not be null");
+
+        new TCPUserClient(client, user, listener, null, executor, retryExecutor, receiveExecutor, flightRecorder);
+    }
+
+    @Test
+    public void constructorShouldThrowExceptionIfExecutorIsNull() {
+        expectedException.expect(IllegalArgumentException.class);
+        expectedException.expectMessage("Executor can not be null");
+
+        new TCPUserClient(client, user, listener, sendQueue, null, retryExecutor, receiveExecutor, flightRecorder);
+    }
+
+    @Test
+    public void constructorShouldThrowExceptionIfRetryExecutorIsNull() {
+        expectedException.expect(IllegalArgumentException.class);
+        expectedException.expectMessage("Retry executor can not be null");
+
+        new TCPUserClient(client, user, listener, sendQueue, executor, null, receiveExecutor, flightRecorder);
+    }
+
+    @Test
+    public void constructorShouldThrowExceptionIfReceiveExecutorIsNull() {
+        expectedException.expect(IllegalArgumentException.class);
+        expectedException.expectMessage("Receive executor can not be null");
+
+        new TCPUserClient(client, user, listener, sendQueue, executor, retryExecutor, null, flightRecorder);
+    }
+
+    @Test
+    public void constructorShouldThrowExceptionIfFlightRecorderIsNull() {
+        expectedException.expect(IllegalArgumentException.class);
+        expectedException.expectMessage("Flight recorder can not be null");
+
+        new TCPUserClient(client, user, listener, sendQueue, executor, retryExecutor, receiveExecutor, null);
+    }
+
+    @Test
+    public void constructorShouldEnableTcpForUser() {
+        new TCPUserClient(client, user, listener, sendQueue, executor, retryExecutor, receiveExecutor, flightRecorder);
+
+        assertTrue(user.isTcpEnabled());
+        verify(client).registerClientListener(any(TCPUserClient.class));
+    }
+
+    @Test
+    public void sendShouldQueueMessageAndStartOneWriter() {
+        final TCPUserClient userClient =
+                new TCPUserClient(client, user, listener, sendQueue, executor, retryExecutor, receiveExecutor, flightRecorder);
+
+        userClient.send("message 1");
+        userClient.send("message 2");
+
+        verify(client, never()).send(anyListOf(String.class));
+        assertEquals(2, sendQueue.size());
+        assertEquals(1, tasks.size());
+    }
+
+    @Test
+    public void writerShouldSendAllWaitingMessagesInOneBatch() {
+        final TCPUserClient userClient =
+                new TCPUserClient(client, user, listener, sendQueue, executor, retryExecutor, receiveExecutor, flightRecorder);
+
+        userClient.send("message 1");
+        userClient.send("message 2");
+        tasks.get(0).run();
+
+        verify(client).send(Arrays.asList("message 1", "message 2"));
+        assertEquals(0, sendQueue.size());
+    }
+
+    @Test
+    public void sendShouldStartNewWriterAfterPreviousWriterIsDone() {
+        final TCPUserClient userClient =
+                new TCPUserClient(client, user, listener, sendQueue, executor, retryExecutor, receiveExecutor, flightRecorder);
+
+        userClient.send("message 1");
+        tasks.get(0).run();
+        userClient.send("message 2");
+
+        assertEquals(2, tasks.size());
+        tasks.get(1).run();
+
+        verify(client).send(Arrays.asList("message 1"));
+        verify(client).send(Arrays.asList("message 2"));
+    }
+
+    @Test
+    public void writerShouldSkipClientThatIsDisconnecting() {
+        final TCPClient otherClient = mock(TCPClient.class);
+        when(otherClient.isReadyToSend()).thenReturn(true);
+        final TCPUserClient userClient =
+                new TCPUserClient(client, user, listener, sendQueue, executor, retryExecutor, receiveExecutor, flightRecorder);
+        userClient.add(otherClient);
+        when(client.isDisconnecting()).thenReturn(true);
+
+        userClient.send("message");
+        tasks.get(0).run();
+
+        verify(client, never()).send(anyListOf(String.class));
+        verify(otherClient).send(Arrays.asList("message"));
+    }
+
+    @Test
+    public void writerShouldStopWithoutSendingWhenClientIsNotReady() {
+        final TCPUserClient userClient =
+                new TCPUserClient(client, user, listener, sendQueue, executor, retryExecutor, receiveExecutor, flightRecorder);
+        when(client.isReadyToSend()).thenReturn(false);
+
+        userClient.send("message 1");
+        tasks.get(0).run();
+        userClient.send("message 2");
+
+        verify(client, never()).send(anyListOf(String.class));
+        assertEquals(2, sendQueue.size());
+        assertEquals(2, tasks.size());
+    }
+
+    @Test
+    public void readyToSendShouldStartWriterForWaitingMessages() {
+        final TCPUserClient userClient =
+                new TCPUserClient(client, user, listener, sendQueue, executor, retryExecutor, receiveExecutor, flightRecorder);
+        when(client.isReadyToSend()).thenReturn(false);
+
+        userClient.send("message 1");
+        tasks.get(0).run();
+        when(client.isReadyToSend()).thenReturn(true);
+        userClient.readyToSend(client);
+
+        assertEquals(2, tasks.size());
+        tasks.get(1).run();
+
+        verify(client).send(Arrays.asList("message 1"));
+        assertEquals(0, sendQueue.size());
+    }
+
+    @Test
+    public void readyToSendShouldNotStartWriterWhenNoMessagesAreWaiting() {
+        final TCPUserClient userClient =
+                new TCPUserClient(client, user, listener, sendQueue, executor, retryExecutor, receiveExecutor, flightRecorder);
+
+        userClient.readyToSend(client);
+
+        assertEquals(0, tasks.size());
+    }
+
+    @Test
+    public void sendShouldKeepMessagesAndStartWriterLaterWhenExecutorRejects() {
+        final Executor rejectingExecutor = mock(Executor.class);
+        doThrow(new RejectedExecutionException("Pool is full")).doNothing().when(rejectingExecutor).execute(any(Runnable.class));
+        final TCPUserClient userClient =
+                new TCPUserClient(client, user, listener, sendQueue, rejectingExecutor, retryExecutor, receiveExecutor, flightRecorder);
+
+        userClient.send("message 1");
+        userClient.send("message 2");
+
+        verify(rejectingExecutor, times(2)).execute(any(Runnable.class));
+        assertEquals(2, sendQueue.size());
+    }
+
+    @Test
+    public void writerShouldBeStartedAgainByRetryWhenExecutorRejectsAndNothingMoreIsSent() {
+        final Executor rejectingOnceExecutor = new Executor() {
+            private boolean rejected;
+
+            @Override
+            public void execute(final Runnable command) {
+                if (!rejected) {
+                    rejected = true;
+                    throw new RejectedExecutionException("Pool is full");
+                }
+
+                tasks.add(command);
+            }
+        };
+
+        final TCPUserClient userClient =
+                new TCPUserClient(client, user, listener, sendQueue, rejectingOnceExecutor, retryExecutor, receiveExecutor, flightRecorder);
+
+        userClient.send("message 1");
+        assertEquals(0, tasks.size());
+
+        final ArgumentCaptor<Runnable> retryCaptor = ArgumentCaptor.forClass(Runnable.class);
+        verify(retryExecutor).schedule(retryCaptor.capture(), eq(100L), eq(TimeUnit.MILLISECONDS));
+        retryCaptor.getValue().run();
+
+        assertEquals(1, tasks.size());
+        tasks.get(0).run();
+
+        verify(client).send(Arrays.asList("message 1"));
+        assertEquals(0, sendQueue.size());
+    }
+
+    @Test
+    public void retryShouldOnlyBeScheduledOnceWhileWaiting() {
+        final Executor rejectingExecutor = mock(Executor.class);
+        doThrow(new RejectedExecutionException("Pool is full")).when(rejectingExecutor).execute(any(Runnable.class));
+        final TCPUserClient userClient =
+                new TCPUserClient(client, user, listener, sendQueue, rejectingExecutor, retryExecutor, receiveExecutor, flightRecorder);
+
+        userClient.send("message 1");
+        userClient.send("message 2");
+
+        verify(retryExecutor, times(1)).schedule(any(Runnable.class), anyLong(), any(TimeUnit.class));
+    }
+
+    @Test
+    public void sendShouldDisconnectWhenQueueIsFullWithDisconnectPolicy() {
+        final TCPUserClient userClient =
+                new TCPUserClient(client, user, listener, sendQueue, executor, retryExecutor, receiveExecutor, flightRecorder);
+
+        userClient.send("message 1");
+        userClient.send("message 2");
+        userClient.send("message 3");
+        verify(client, never()).disconnect();
+
+        userClient.send("message 4");
+
+        verify(client).disconnect();
+        assertFalse(user.isTcpEnabled());
+        assertEquals(0, userClient.getClientCount());
+        assertEquals(0, sendQueue.size());
+    }
+
+    @Test
+    public void getSendQueueShouldReturnTheQueue() {
+        final TCPUserClient userClient =
+                new TCPUserClient(client, user, listener, sendQueue, executor, retryExecutor, receiveExecutor, flightRecorder);
+
+        assertSame(sendQueue, userClient.getSendQueue());
+    }
+
+    @Test
+    public void connectAndDisconnectShouldBeRecorded() {
+        when(client.getIPAddress()).thenReturn("192.168.1.2");
+        final TCPUserClient userClient =
+                new TCPUserClient(client, user, listener, sendQueue, executor, retryExecutor, receiveExecutor, flightRecorder);
+
+        userClient.disconnected(client);
+
+        final List<FlightRecorder.Event> events = flightRecorder.getEvents();
+        assertEquals(2, events.size());
+        assertEquals("TCP_CONNECTED user=1234 192.168.1.2", events.get(0).toString());
+        assertEquals("TCP_DISCONNECTED user=1234 192.168.1.2", events.get(1).toString());
+    }
+
+    @Test
+    public void messageArrivedShouldBeHandledByTheReceiveExecutorInOrder() {
+        when(client.getIPAddress()).thenReturn("192.168.1.2");
+        final TCPUserClient userClient =
+                new TCPUserClient(client, user, listener, sendQueue, executor, retryExecutor, receiveExecutor, flightRecorder);
+
+        userClient.messageArrived("message 1", client);
+        userClient.messageArrived("message 2", client);
+
+        verifyZeroInteractions(listener);
+        assertEquals(1, receivedTasks.size());
+
+        receivedTasks.get(0).run();
+
+        final InOrder inOrder = inOrder(listener);
+        inOrder.verify(listener).messageArrived("message 1", "192.168.1.2", user);
+        inOrder.verify(listener).messageArrived("message 2", "192.168.1.2", user);
+    }
+
+    @Test
+    public void messageArrivedShouldBeHandledDirectlyWhenReceiveExecutorRejects() {
+        when(client.getIPAddress()).thenReturn("192.168.1.2");
+        final Executor rejectingExecutor = mock(Executor.class);
+        doThrow(new RejectedExecutionException("Pool is full")).when(rejectingExecutor).execute(any(Runnable.class));
+        final TCPUserClient userClient =
+                new TCPUserClient(client, user, listener, sendQueue, executor, retryExecutor, rejectingExecutor, flightRecorder);
+
+        userClient.messageArrived("message 1", client);
+
+        verify(listener).messageArrived("message 1", "192.168.1.2", user);
+    }
+}
@@ -0,0 +1,110 @@
+
+/***************************************************************************
+ *   Copyright 2006-2018 by Christian Ihle                                 *
+ *   contact@kouchat.net                                                   *
+ *                                                                         *
+ *   This file is part of KouChat.                                         *
+ *                                                                         *
+ *   KouChat is free software; you can redistribute it and/or modify       *
+ *   it under the terms of the GNU Lesser General Public License as        *
+ *   published by the Free Software Foundation, either version 3 of        *
+ *   the License, or (at your option) any later version.                   *
+ *                                                                         *
+ *   KouChat is distributed in the hope that it will be useful,            *
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of        *
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU      *
+ *   Lesser General Public License for more details.                       *
+ *                                                                         *
+ *   You should have received a copy of the GNU Lesser General Public      *
+ *   License along with KouChat.                                           *
+ *   If not, see <http://www.gnu.org/licenses/>.                           *
+ ***************************************************************************/
+
+package net.usikkert.kouchat.net.tcp;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+
+import net.usikkert.kouchat.misc.Controller;
+import net.usikkert.kouchat.misc.User;
+import net.usikkert.kouchat.settings.Settings;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Test of {@link TCPUserIdentifier}.
+ *
+ * @author Christian Ihle
+ */
+@SuppressWarnings("HardCodedStringLiteral")
+public class TCPUserIdentifierTest {
+
+    private TCPUserIdentifier userIdentifier;
+
+    private TCPClient client;
+    private User user;
+
+    @Before
+    public void setUp() {
+        final Controller controller = mock(Controller.class);
+        final Settings settings = mock(Settings.class);
+        client = mock(TCPClient.class);
+        user = new User("Niles", 1234);
+
+        user.setIpAddress("192.168.1.2");
+        when(settings.getMe()).thenReturn(new User("Christian", 5678));
+        when(controller.getUser(1234)).thenReturn(user);
+        when(client.getIPAddress()).thenReturn("192.168.1.2");
+
+        userIdentifier = new TCPUserIdentifier(controller, settings, client);
+    }
+
+    @Test
+    public void constructorShouldRegisterAsClientListener() {
+        verify(client).registerClientListener(userIdentifier);
+    }
+
+    @Test
+    public void waitForUserShouldFindUserWithoutChangingProtocol() {
+        userIdentifier.messageArrived("SYS-IDENTIFY:1234:5678", client);
+
+        assertSame(user, userIdentifier.waitForUser());
+
+        verify(client, never()).setReadProtocol(anyInt());
+        verify(client, never()).setWriteProtocol(anyInt());
+    }
+
+    @Test
+    public void messageArrivedShouldSwitchToFramedProtocolWhenIdentificationAsksForIt() {
+        userIdentifier.messageArrived("SYS-IDENTIFY:1234:5678:2", client);
+
+        verify(client).setReadProtocol(TCPClient.PROTOCOL_FRAMED);
+        verify(client).setWriteProtocol(TCPClient.PROTOCOL_FRAMED);
+
+        assertSame(user, userIdentifier.waitForUser());
+    }
+
+    @Test
+    public void messageArrivedShouldNotSwitchToUnknownProtocol() {
+        userIdentifier.messageArrived("SYS-IDENTIFY:1234:5678:9", client);
+
+        verify(client, never()).setReadProtocol(anyInt());
+        verify(client, never()).setWriteProtocol(anyInt());
+    }
+
+    @Test
+    public void messageArrivedShouldNotSwitchProtocolForOtherMessages() {
+        userIdentifier.messageArrived("SYS-IDENTIFY:1234:5678:2:extra", client);
+
+        verify(client, never()).setReadProtocol(anyInt());
+        assertNull(userIdentifier.waitForUser());
+    }
+
+    @Test
+    public void waitForUserShouldReturnNullIfRecipientIsWrong() {
+        userIdentifier.messageArrived("SYS-IDENTIFY:1234:1111:2", client);
+
+        assertNull(userIdentifier.waitForUser());
+    }
+}
@@ -0,0 +1,381 @@
+
+/***************************************************************************
+ *   Copyright 2006-2018 by Christian Ihle                                 *
+ *   contact@kouchat.net                                                   *
+ *                                                                         *
+ *   This file is part of KouChat.                                         *
+ *                                                                         *
+ *   KouChat is free software; you can redistribute it and/or modify       *
+ *   it under the terms of the GNU Lesser General Public License as        *
+ *   published by the Free Software Foundation, either version 3 of        *
+ *   the License, or (at your option) any later version.                   *
+ *                                                                         *
+ *   KouChat is distributed in the hope that it will be useful,            *
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of        *
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU      *
+ *   Lesser General Public License for more details.                       *
+ *                                                                         *
+ *   You should have received a copy of the GNU Lesser General Public      *
+ *   License along with KouChat.                                           *
+ *   If not, see <http://www.gnu.org/licenses/>.                           *
+ ***************************************************************************/
+
+package net.usikkert.kouchat.net.transport;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import net.usikkert.kouchat.event.NetworkConnectionListener;
+import net.usikkert.kouchat.junit.ExpectedException;
+import net.usikkert.kouchat.misc.User;
+import net.usikkert.kouchat.net.TrafficStatistics;
+import net.usikkert.kouchat.net.tcp.TCPReceiverListener;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+
+/**
+ * Test of {@link FaultInjectingTransport}.
+ *
+ * @author Christian Ihle
+ */
+@SuppressWarnings("HardCodedStringLiteral")
+public class FaultInjectingTransportTest {
+
+    @Rule
+    public ExpectedException expectedException = ExpectedException.none();
+
+    private Transport transport;
+    private FaultInjectingTransport faultInjectingTransport;
+    private List<String> received;
+
+    @Before
+    public void setUp() {
+        transport = mock(Transport.class);
+        received = Collections.synchronizedList(new ArrayList<String>());
+    }
+
+    @After
+    public void tearDown() {
+        if (faultInjectingTransport != null) {
+            faultInjectingTransport.stop();
+        }
+    }
+
+    @Test
+    public void constructorShouldThrowExceptionIfTransportIsNull() {
+        expectedException.expect(IllegalArgumentException.class);
+        expectedException.expectMessage("Transport can not be null");
+
+        new FaultInjectingTransport(null, NetworkConditions.NONE, 0);
+    }
+
+    @Test
+    public void constructorShouldThrowExceptionIfDefaultConditionsIsNull() {
+        expectedException.expect(IllegalArgumentException.class);
+        expectedException.expectMessage("Default conditions can not be null");
+
+        new FaultInjectingTransport(transport, null, 0);
+    }
+
+    @Test
+    public void sendingShouldPassThroughUnchanged() {
+        faultInjectingTransport = new FaultInjectingTransport(transport, NetworkConditions.parse("loss=100"), 0);
+        final User user = new User("Test", 123);
+        final byte[] binaryMessage = {1, 2};
+
+        when(transport.sendMessageToAll("msg", true)).thenReturn(true);
+        when(transport.sendBinaryMessageToAll(binaryMessage, "msg", false)).thenReturn(true);
+        when(transport.sendMessageToUser("msg", user)).thenReturn(true);
+
+        assertTrue(faultInjectingTransport.sendMessageToAll("msg", true));
+        assertTrue(faultInjectingTransport.sendBinaryMessageToAll(binaryMessage, "msg", false));
+        assertTrue(faultInjectingTransport.sendMessageToUser("msg", user));
+        faultInjectingTransport.sendTcpMessageToAll("tcp");
+        faultInjectingTransport.sendTcpMessageToUser("tcp", user);
+
+        verify(transport).sendTcpMessageToAll("tcp");
+        verify(transport).sendTcpMessageToUser("tcp", user);
+    }
+
+    @Test
+    public void getTrafficStatisticsShouldUseTransport() {
+        faultInjectingTransport = new FaultInjectingTransport(transport, NetworkConditions.NONE, 0);
+        final TrafficStatistics trafficStatistics = new TrafficStatistics();
+        when(transport.getTrafficStatistics()).thenReturn(trafficStatistics);
+
+        assertSame(trafficStatistics, faultInjectingTransport.getTrafficStatistics());
+    }
+
+    @Test
+    public void startAndStopShouldUseTransport() {
+        faultInjectingTransport = new FaultInjectingTransport(transport, NetworkConditions.NONE, 0);
+        final NetworkConnectionListener listener = mock(NetworkConnectionListener.class);
+
+        faultInjectingTransport.registerNetworkConnectionListener(listener);
+        faultInjectingTransport.start();
+        faultInjectingTransport.checkNetwork();
+        faultInjectingTransport.stop();
+
+        verify(transport).registerNetworkConnectionListener(listener);
+        verify(transport).start();
+        verify(transport).checkNetwork();
+        verify(transport).stop();
+    }
+
+    @Test
+    public void packetsShouldArriveUnchangedWithoutProblems() {
+        faultInjectingTransport = new FaultInjectingTransport(transport, NetworkConditions.NONE, 0);
+        final PacketListener listener = registerPacketListener();
+
+        for (int i = 0; i < 100; i++) {
+            listener.packetArrived(createPacket(i), true, "10.0.0.1");
+        }
+
+        assertEquals(100, received.size());
+        assertEquals("0:true:10.0.0.1", received.get(0));
+        assertEquals("99:true:10.0.0.1", received.get(99));
+        assertEquals(0, faultInjectingTransport.getDroppedPackets());
+        assertEquals(0, faultInjectingTransport.getDuplicatedPackets());
+        assertEquals(0, faultInjectingTransport.getDelayedMessages());
+    }
+
+    @Test
+    public void packetsShouldBeDroppedWithFullLoss() {
+        faultInjectingTransport = new FaultInjectingTransport(transport, NetworkConditions.parse("loss=100"), 0);
+        final PacketListener listener = registerPacketListener();
+
+        listener.packetArrived(createPacket(1), false, "10.0.0.1");
+        listener.packetArrived(createPacket(2), false, "10.0.0.1");
+
+        assertTrue(received.isEmpty());
+        assertEquals(2, faultInjectingTransport.getDroppedPackets());
+    }
+
+    @Test
+    public void packetsShouldArriveTwiceWithFullDuplication() {
+        faultInjectingTransport = new FaultInjectingTransport(transport, NetworkConditions.parse("duplicate=100"), 0);
+        final PacketListener listener = registerPacketListener();
+
+        listener.packetArrived(createPacket(5), true, "10.0.0.1");
+
+        assertEquals(2, received.size());
+        assertEquals("5:true:10.0.0.1", received.get(0));
+        assertEquals("5:true:10.0.0.1", received.get(1));
+        assertEquals(1, faultInjectingTransport.getDuplicatedPackets());
+    }
+
+    @Test
+    public void linkConditionsShouldOnlyApplyToThatSender() {
+        faultInjectingTransport = new FaultInjectingTransport(transport, NetworkConditions.NONE, 0);
+        faultInjectingTransport.setLinkConditions("10.0.0.2", NetworkConditions.parse("loss=100"));
+        final PacketListener listener = registerPacketListener();
+
+        listener.packetArrived(createPacket(1), true, "10.0.0.1");
+        listener.packetArrived(createPacket(2), true, "10.0.0.2");
+
+        assertEquals(1, received.size());
+        assertEquals("1:true:10.0.0.1", received.get(0));
+        assertSame(NetworkConditions.NONE, faultInjectingTransport.getLinkConditions("10.0.0.1"));
+    }
+
+    @Test
+    public void delayedPacketsShouldArriveLaterWithACopyOfThePacket() throws InterruptedException {
+        faultInjectingTransport = new FaultInjectingTransport(transport, NetworkConditions.parse("delay=50"), 0);
+        final PacketListener listener = registerPacketListener();
+        faultInjectingTransport.start();
+
+        final ByteBuffer packet = createPacket(7);
+        listener.packetArrived(packet, true, "10.0.0.1");
+
+        // The buffer is reused for the next packet
+        packet.put(0, (byte) 8);
+        assertTrue(received.isEmpty());
+
+        waitForReceived(1);
+        assertEquals("7:true:10.0.0.1", received.get(0));
+        assertEquals(1, faultInjectingTransport.getDelayedMessages());
+    }
+
+    @Test
+    public void delayedPacketsShouldBeDroppedWhenStopped() throws InterruptedException {
+        faultInjectingTransport = new FaultInjectingTransport(transport, NetworkConditions.parse("delay=50"), 0);
+        final PacketListener listener = registerPacketListener();
+        faultInjectingTransport.start();
+
+        listener.packetArrived(createPacket(1), true, "10.0.0.1");
+        faultInjectingTransport.stop();
+        listener.packetArrived(createPacket(2), true, "10.0.0.1");
+
+        Thread.sleep(150);
+        assertTrue(received.isEmpty());
+    }
+
+    @Test
+    public void reorderingShouldLetLaterPacketsArriveFirst() throws InterruptedException {
+        faultInjectingTransport = new FaultInjectingTransport(transport, NetworkConditions.NONE, 0);
+        faultInjectingTransport.setLinkConditions("10.0.0.1", NetworkConditions.parse("reorder=100"));
+        final PacketListener listener = registerPacketListener();
+        faultInjectingTransport.start();
+
+        listener.packetArrived(createPacket(1), true, "10.0.0.1");
+        listener.packetArrived(createPacket(2), true, "10.0.0.2");
+
+        waitForReceived(2);
+        assertEquals("2:true:10.0.0.2", received.get(0));
+        assertEquals("1:true:10.0.0.1", received.get(1));
+    }
+
+    @Test
+    public void sameSeedShouldLoseTheSamePackets() {
+        final NetworkConditions conditions = NetworkConditions.parse("loss=50");
+
+        faultInjectingTransport = new FaultInjectingTransport(transport, conditions, 1234);
+        sendPackets(registerPacketListener(), 100);
+        final List<String> firstRun = new ArrayList<>(received);
+
+        received.clear();
+        transport = mock(Transport.class);
+        faultInjectingTransport = new FaultInjectingTransport(transport, conditions, 1234);
+        sendPackets(registerPacketListener(), 100);
+
+        assertEquals(firstRun, received);
+        assertTrue(firstRun.size() > 25 && firstRun.size() < 75);
+    }
+
+    @Test
+    public void differentSeedsShouldLoseDifferentPackets() {
+        final NetworkConditions conditions = NetworkConditions.parse("loss=50");
+
+        faultInjectingTransport = new FaultInjectingTransport(transport, conditions, 1);
+        sendPackets(registerPacketListener(), 100);
+        final List<String> firstRun = new ArrayList<>(received);
+
+        received.clear();
+        transport = mock(Transport.class);
+        faultInjectingTransport = new FaultInjectingTransport(transport, conditions, 2);
+        sendPackets(registerPacketListener(), 100);
+
+        assertNotEquals(firstRun, received);
+    }
+
+    @Test
+    public void tcpMessagesShouldNeverBeLostOrDuplicated() {
+        faultInjectingTransport = new FaultInjectingTransport(transport, NetworkConditions.parse("loss=100,duplicate=100"), 0);
+        final TCPReceiverListener listener = registerTcpReceiverListener();
+        final User user = new User("Test", 123);
+
+        listener.messageArrived("msg1", "10.0.0.1", user);
+        listener.messageArrived("msg2", "10.0.0.1", user);
+
+        assertEquals(2, received.size());
+        assertEquals("msg1:10.0.0.1", received.get(0));
+        assertEquals("msg2:10.0.0.1", received.get(1));
+    }
+
+    @Test
+    public void delayedTcpMessagesShouldArriveInOrder() throws InterruptedException {
+        faultInjectingTransport = new FaultInjectingTransport(transport, NetworkConditions.parse("delay=20,jitter=20"), 0);
+        final TCPReceiverListener listener = registerTcpReceiverListener();
+        final User user = new User("Test", 123);
+        faultInjectingTransport.start();
+
+        for (int i = 0; i < 50; i++) {
+            listener.messageArrived("msg" + i, "10.0.0.1", user);
+        }
+
+        waitForReceived(50);
+
+        for (int i = 0; i < 50; i++) {
+            assertEquals("msg" + i + ":10.0.0.1", received.get(i));
+        }
+    }
+
+    @Test
+    public void delayedTcpMessagesShouldBeDroppedWhenStoppedAndNewMessagesArriveAfterRestart() throws InterruptedException {
+        faultInjectingTransport = new FaultInjectingTransport(transport, NetworkConditions.parse("delay=50"), 0);
+        final TCPReceiverListener listener = registerTcpReceiverListener();
+        final User user = new User("Test", 123);
+
+        faultInjectingTransport.start();
+        listener.messageArrived("msg1", "10.0.0.1", user);
+        faultInjectingTransport.stop();
+
+        faultInjectingTransport.start();
+        listener.messageArrived("msg2", "10.0.0.1", user);
+
+        waitForReceived(1);
+        Thread.sleep(100);
+
+        assertEquals(1, received.size());
+        assertEquals("msg2:10.0.0.1", received.get(0));
+    }
+
+    @Test
+    public void delayedTcpMessagesShouldArriveDirectlyWhenNotStarted() {
+        faultInjectingTransport = new FaultInjectingTransport(transport, NetworkConditions.parse("delay=50"), 0);
+        final TCPReceiverListener listener = registerTcpReceiverListener();
+        final User user = new User("Test", 123);
+
+        listener.messageArrived("msg1", "10.0.0.1", user);
+        listener.messageArrived("msg2", "10.0.0.1", user);
+
+        assertEquals(2, received.size());
+        assertEquals("msg1:10.0.0.1", received.get(0));
+        assertEquals("msg2:10.0.0.1", received.get(1));
+    }
+
+    private PacketListener registerPacketListener() {
+        faultInjectingTransport.registerPacketListener(new PacketListener() {
+            @Override
+            public void packetArrived(final ByteBuffer packet, final boolean mainChat, final String ipAddress) {
+                received.add(packet.get() + ":" + mainChat + ":" + ipAddress);
+            }
+        });
+
+        final ArgumentCaptor<PacketListener> captor = ArgumentCaptor.forClass(PacketListener.class);
+        verify(transport).registerPacketListener(captor.capture());
+
+        return captor.getValue();
+    }
+
+    private TCPReceiverListener registerTcpReceiverListener() {
+        faultInjectingTransport.registerTcpReceiverListener(new TCPReceiverListener() {
+            @Override
+            public void messageArrived(final String message, final String ipAddress, final User user) {
+                received.add(message + ":" + ipAddress);
+            }
+        });
+
+        final ArgumentCaptor<TCPReceiverListener> captor = ArgumentCaptor.forClass(TCPReceiverListener.class);
+        verify(transport).registerTcpReceiverListener(captor.capture());
+
+        return captor.getValue();
+    }
+
+    private void sendPackets(final PacketListener listener, final int count) {
+        for (int i = 0; i < count; i++) {
+            listener.packetArrived(createPacket(i), true, "10.0.0.1");
+        }
+    }
+
+    private ByteBuffer createPacket(final int value) {
+        return ByteBuffer.wrap(new byte[] {(byte) value});
+    }
+
+    private void waitForReceived(final int count) throws InterruptedException {
+        for (int i = 0; i < 100 && received.size() < count; i++) {
+            Thread.sleep(10);
+        }
+
+        assertEquals(count, received.size());
+    }
+}
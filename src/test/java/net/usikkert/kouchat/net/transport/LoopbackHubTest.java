@@ -0,0 +1,290 @@
+
+/***************************************************************************
+ *   Copyright 2006-2018 by Christian Ihle                                 *
+ *   contact@kouchat.net                                                   *
+ *                                                                         *
+ *   This file is part of KouChat.                                         *
+ *                                                                         *
+ *   KouChat is free software; you can redistribute it and/or modify       *
+ *   it under the terms of the GNU Lesser General Public License as        *
+ *   published by the Free Software Foundation, either version 3 of        *
+ *   the License, or (at your option) any later version.                   *
+ *                                                                         *
+ *   KouChat is distributed in the hope that it will be useful,            *
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of        *
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU      *
+ *   Lesser General Public License for more details.                       *
+ *                                                                         *
+ *   You should have received a copy of the GNU Lesser General Public      *
+ *   License along with KouChat.                                           *
+ *   If not, see <http://www.gnu.org/licenses/>.                           *
+ ***************************************************************************/
+
+package net.usikkert.kouchat.net.transport;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import net.usikkert.kouchat.junit.ExpectedException;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+/**
+ * Test of {@link LoopbackHub}.
+ *
+ * @author Christian Ihle
+ */
+@SuppressWarnings("HardCodedStringLiteral")
+public class LoopbackHubTest {
+
+    @Rule
+    public ExpectedException expectedException = ExpectedException.none();
+
+    private LoopbackHub hub;
+
+    private LoopbackTransport transport1;
+    private LoopbackTransport transport2;
+    private LoopbackTransport transport3;
+
+    private PacketListener listener1;
+    private PacketListener listener2;
+    private PacketListener listener3;
+
+    @Before
+    public void setUp() {
+        hub = new LoopbackHub();
+
+        transport1 = new LoopbackTransport(hub);
+        transport2 = new LoopbackTransport(hub);
+        transport3 = new LoopbackTransport(hub);
+
+        listener1 = mock(PacketListener.class);
+        listener2 = mock(PacketListener.class);
+        listener3 = mock(PacketListener.class);
+
+        transport1.registerPacketListener(listener1);
+        transport2.registerPacketListener(listener2);
+        transport3.registerPacketListener(listener3);
+
+        hub.connect(transport1);
+        hub.connect(transport2);
+        hub.connect(transport3);
+    }
+
+    @After
+    public void tearDown() {
+        hub.shutdown();
+    }
+
+    @Test
+    public void createIpAddressShouldCreateUniqueAddresses() {
+        assertEquals("127.0.0.1", transport1.getIpAddress());
+        assertEquals("127.0.0.2", transport2.getIpAddress());
+        assertEquals("127.0.0.3", transport3.getIpAddress());
+        assertEquals("127.0.0.4", hub.createIpAddress());
+    }
+
+    @Test
+    public void createIpAddressShouldUseAllThreeLastParts() {
+        for (int i = 0; i < 252; i++) {
+            hub.createIpAddress();
+        }
+
+        assertEquals("127.0.1.0", hub.createIpAddress());
+    }
+
+    @Test
+    public void connectShouldThrowExceptionIfTransportIsNull() {
+        expectedException.expect(IllegalArgumentException.class);
+        expectedException.expectMessage("Transport can not be null");
+
+        hub.connect(null);
+    }
+
+    @Test
+    public void broadcastShouldDeliverToAllTransportsIncludingSender() throws InterruptedException {
+        assertTrue(hub.broadcast(new byte[] {1, 2, 3}, transport1.getIpAddress()));
+        assertTrue(hub.awaitIdle(1000));
+
+        verify(listener1).packetArrived(any(ByteBuffer.class), eq(true), eq("127.0.0.1"));
+        verify(listener2).packetArrived(any(ByteBuffer.class), eq(true), eq("127.0.0.1"));
+        verify(listener3).packetArrived(any(ByteBuffer.class), eq(true), eq("127.0.0.1"));
+
+        assertEquals(3, hub.getDeliveredPackets());
+    }
+
+    @Test
+    public void unicastShouldOnlyDeliverToReceiver() throws InterruptedException {
+        assertTrue(hub.unicast(new byte[] {1, 2, 3}, transport1.getIpAddress(), transport2.getIpAddress()));
+        assertTrue(hub.awaitIdle(1000));
+
+        final ArgumentCaptor<ByteBuffer> captor = ArgumentCaptor.forClass(ByteBuffer.class);
+        verify(listener2).packetArrived(captor.capture(), eq(false), eq("127.0.0.1"));
+        verifyZeroInteractions(listener1, listener3);
+
+        assertEquals(3, captor.getValue().remaining());
+        assertEquals(1, hub.getDeliveredPackets());
+    }
+
+    @Test
+    public void unicastShouldThrowExceptionIfReceiverIpAddressIsNull() {
+        expectedException.expect(IllegalArgumentException.class);
+        expectedException.expectMessage("Receiver ip address can not be null");
+
+        hub.unicast(new byte[] {1}, transport1.getIpAddress(), null);
+    }
+
+    @Test
+    public void unicastToUnknownIpAddressShouldBeDropped() throws InterruptedException {
+        assertTrue(hub.unicast(new byte[] {1}, transport1.getIpAddress(), "10.0.0.1"));
+        assertTrue(hub.awaitIdle(1000));
+
+        verifyZeroInteractions(listener1, listener2, listener3);
+        assertEquals(0, hub.getDeliveredPackets());
+    }
+
+    @Test
+    public void disconnectedTransportShouldNotReceivePackets() throws InterruptedException {
+        hub.disconnect(transport3);
+        assertFalse(hub.isConnected(transport3));
+
+        hub.broadcast(new byte[] {1}, transport1.getIpAddress());
+        assertTrue(hub.awaitIdle(1000));
+
+        verify(listener1).packetArrived(any(ByteBuffer.class), eq(true), anyString());
+        verify(listener2).packetArrived(any(ByteBuffer.class), eq(true), anyString());
+        verifyZeroInteractions(listener3);
+    }
+
+    @Test
+    public void packetsShouldBeDeliveredInOrder() throws InterruptedException {
+        final StringBuilder received = new StringBuilder();
+
+        transport2.registerPacketListener(new PacketListener() {
+            @Override
+            public void packetArrived(final ByteBuffer packet, final boolean mainChat, final String ipAddress) {
+                received.append(packet.get());
+            }
+        });
+
+        for (byte i = 0; i < 10; i++) {
+            hub.unicast(new byte[] {i}, transport1.getIpAddress(), transport2.getIpAddress());
+        }
+
+        assertTrue(hub.awaitIdle(1000));
+        assertEquals("0123456789", received.toString());
+    }
+
+    @Test
+    public void exceptionInListenerShouldNotStopDeliveryToOtherTransports() throws InterruptedException {
+        doThrow(new RuntimeException("Failed"))
+                .when(listener1).packetArrived(any(ByteBuffer.class), anyBoolean(), anyString());
+
+        hub.broadcast(new byte[] {1}, transport1.getIpAddress());
+        hub.broadcast(new byte[] {2}, transport1.getIpAddress());
+        assertTrue(hub.awaitIdle(1000));
+
+        verify(listener2, times(2)).packetArrived(any(ByteBuffer.class), eq(true), anyString());
+        verify(listener3, times(2)).packetArrived(any(ByteBuffer.class), eq(true), anyString());
+        assertEquals(4, hub.getDeliveredPackets());
+    }
+
+    @Test
+    public void awaitIdleShouldReturnTrueWhenNothingIsSent() throws InterruptedException {
+        assertTrue(hub.awaitIdle(0));
+    }
+
+    @Test
+    public void shutdownShouldStopAcceptingPackets() {
+        hub.shutdown();
+
+        assertTrue(hub.isShutdown());
+        assertFalse(hub.broadcast(new byte[] {1}, transport1.getIpAddress()));
+        assertFalse(hub.unicast(new byte[] {1}, transport1.getIpAddress(), transport2.getIpAddress()));
+    }
+
+    @Test
+    public void awaitIdleShouldReturnTrueAfterShutdownWithPacketsLeft() throws InterruptedException {
+        final CountDownLatch deliveryStarted = new CountDownLatch(1);
+        final CountDownLatch releaseDelivery = new CountDownLatch(1);
+
+        doAnswer(new Answer<Void>() {
+            @Override
+            public Void answer(final InvocationOnMock invocation) throws InterruptedException {
+                deliveryStarted.countDown();
+                releaseDelivery.await(5, TimeUnit.SECONDS);
+
+                return null;
+            }
+        }).when(listener1).packetArrived(any(ByteBuffer.class), anyBoolean(), anyString());
+
+        try {
+            hub.unicast(new byte[] {1}, transport2.getIpAddress(), transport1.getIpAddress());
+            hub.unicast(new byte[] {2}, transport2.getIpAddress(), transport1.getIpAddress());
+            assertTrue(deliveryStarted.await(5, TimeUnit.SECONDS));
+            assertFalse(hub.awaitIdle(0));
+
+            hub.shutdown();
+
+            assertTrue(hub.awaitIdle(1000));
+        }
+
+        finally {
+            releaseDelivery.countDown();
+        }
+    }
+
+    @Test
+    public void constructorShouldThrowExceptionIfDeliveryThreadsIsLessThanOne() {
+        expectedException.expect(IllegalArgumentException.class);
+        expectedException.expectMessage("Delivery threads must be larger than 0");
+
+        new LoopbackHub(0);
+    }
+
+    @Test
+    public void packetsShouldBeDeliveredInOrderToEachTransportWithSeveralDeliveryThreads() throws InterruptedException {
+        hub.shutdown();
+        hub = new LoopbackHub(4);
+
+        final List<StringBuilder> received = new ArrayList<>();
+
+        for (int i = 0; i < 8; i++) {
+            final StringBuilder packets = new StringBuilder();
+            received.add(packets);
+
+            final LoopbackTransport transport = new LoopbackTransport(hub);
+            transport.registerPacketListener(new PacketListener() {
+                @Override
+                public void packetArrived(final ByteBuffer packet, final boolean mainChat, final String ipAddress) {
+                    packets.append(packet.get());
+                }
+            });
+
+            hub.connect(transport);
+        }
+
+        for (byte i = 0; i < 10; i++) {
+            hub.broadcast(new byte[] {i}, "127.0.0.1");
+        }
+
+        assertTrue(hub.awaitIdle(1000));
+        assertEquals(80, hub.getDeliveredPackets());
+
+        for (final StringBuilder packets : received) {
+            assertEquals("0123456789", packets.toString());
+        }
+    }
+}
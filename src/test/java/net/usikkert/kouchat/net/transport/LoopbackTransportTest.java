@@ -0,0 +1,271 @@
+
+/***************************************************************************
+ *   Copyright 2006-2018 by Christian Ihle                                 *
+ *   contact@kouchat.net                                                   *
+ *                                                                         *
+ *   This file is part of KouChat.                                         *
+ *                                                                         *
+ *   KouChat is free software; you can redistribute it and/or modify       *
+ *   it under the terms of the GNU Lesser General Public License as        *
+ *   published by the Free Software Foundation, either version 3 of        *
+ *   the License, or (at your option) any later version.                   *
+ *                                                                         *
+ *   KouChat is distributed in the hope that it will be useful,            *
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of        *
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU      *
+ *   Lesser General Public License for more details.                       *
+ *                                                                         *
+ *   You should have received a copy of the GNU Lesser General Public      *
+ *   License along with KouChat.                                           *
+ *   If not, see <http://www.gnu.org/licenses/>.                           *
+ ***************************************************************************/
+
+package net.usikkert.kouchat.net.transport;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+
+import java.nio.ByteBuffer;
+
+import net.usikkert.kouchat.event.NetworkConnectionListener;
+import net.usikkert.kouchat.event.ReceiverListener;
+import net.usikkert.kouchat.junit.ExpectedException;
+import net.usikkert.kouchat.misc.Controller;
+import net.usikkert.kouchat.misc.FlightRecorder;
+import net.usikkert.kouchat.misc.ThreadPools;
+import net.usikkert.kouchat.misc.User;
+import net.usikkert.kouchat.misc.UserList;
+import net.usikkert.kouchat.net.NetworkService;
+import net.usikkert.kouchat.net.TrafficStatistics;
+import net.usikkert.kouchat.settings.Settings;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.mockito.InOrder;
+
+/**
+ * Test of {@link LoopbackTransport}.
+ *
+ * @author Christian Ihle
+ */
+@SuppressWarnings("HardCodedStringLiteral")
+public class LoopbackTransportTest {
+
+    @Rule
+    public ExpectedException expectedException = ExpectedException.none();
+
+    private LoopbackHub hub;
+    private LoopbackTransport transport;
+
+    @Before
+    public void setUp() {
+        hub = new LoopbackHub();
+        transport = new LoopbackTransport(hub);
+    }
+
+    @After
+    public void tearDown() {
+        hub.shutdown();
+    }
+
+    @Test
+    public void constructorShouldThrowExceptionIfHubIsNull() {
+        expectedException.expect(IllegalArgumentException.class);
+        expectedException.expectMessage("Hub can not be null");
+
+        new LoopbackTransport(null);
+    }
+
+    @Test
+    public void startShouldConnectToHubAndNotifyListeners() {
+        final NetworkConnectionListener listener = mock(NetworkConnectionListener.class);
+        transport.registerNetworkConnectionListener(listener);
+
+        assertFalse(transport.isAlive());
+        assertFalse(transport.isNetworkUp());
+
+        transport.start();
+
+        assertTrue(transport.isAlive());
+        assertTrue(transport.isNetworkUp());
+        assertTrue(hub.isConnected(transport));
+
+        final InOrder inOrder = inOrder(listener);
+        inOrder.verify(listener).beforeNetworkCameUp();
+        inOrder.verify(listener).networkCameUp(false);
+    }
+
+    @Test
+    public void startShouldDoNothingWhenAlreadyStarted() {
+        final NetworkConnectionListener listener = mock(NetworkConnectionListener.class);
+        transport.registerNetworkConnectionListener(listener);
+
+        transport.start();
+        transport.start();
+
+        verify(listener, times(1)).networkCameUp(false);
+    }
+
+    @Test
+    public void stopShouldDisconnectFromHubAndNotifyListeners() {
+        final NetworkConnectionListener listener = mock(NetworkConnectionListener.class);
+        transport.registerNetworkConnectionListener(listener);
+
+        transport.stop();
+        verify(listener, never()).networkWentDown(anyBoolean());
+
+        transport.start();
+        transport.stop();
+
+        assertFalse(transport.isNetworkUp());
+        assertFalse(hub.isConnected(transport));
+        verify(listener).networkWentDown(false);
+    }
+
+    @Test
+    public void sendShouldReturnFalseWhenNotStarted() {
+        final User user = new User("User", 111);
+        user.setIpAddress("127.0.0.2");
+
+        assertFalse(transport.sendMessageToAll("12345!IDLE#Test:", true));
+        assertFalse(transport.sendBinaryMessageToAll(new byte[] {1}, "12345!IDLE#Test:", true));
+        assertFalse(transport.sendMessageToUser("12345!PRIVMSG#Test:", user));
+    }
+
+    @Test
+    public void sendMessageToAllShouldDeliverTextPacketToAllTransports() throws InterruptedException {
+        final LoopbackTransport otherTransport = new LoopbackTransport(hub);
+        final PacketListener listener = mock(PacketListener.class);
+        final PacketListener otherListener = mock(PacketListener.class);
+
+        transport.registerPacketListener(listener);
+        otherTransport.registerPacketListener(otherListener);
+        transport.start();
+        otherTransport.start();
+
+        assertTrue(transport.sendMessageToAll("12345!IDLE#Test:", true));
+        assertTrue(hub.awaitIdle(1000));
+
+        verify(listener).packetArrived(ByteBuffer.wrap("12345!IDLE#Test:".getBytes()), true, transport.getIpAddress());
+        verify(otherListener).packetArrived(ByteBuffer.wrap("12345!IDLE#Test:".getBytes()), true, transport.getIpAddress());
+    }
+
+    @Test
+    public void sendMessageToUserShouldDeliverPacketToTransportWithIpAddressOfUser() throws InterruptedException {
+        final LoopbackTransport otherTransport = new LoopbackTransport(hub);
+        final PacketListener listener = mock(PacketListener.class);
+        final PacketListener otherListener = mock(PacketListener.class);
+
+        transport.registerPacketListener(listener);
+        otherTransport.registerPacketListener(otherListener);
+        transport.start();
+        otherTransport.start();
+
+        final User user = new User("User", 111);
+        user.setIpAddress(otherTransport.getIpAddress());
+
+        assertTrue(transport.sendMessageToUser("12345!PRIVMSG#Test:", user));
+        assertTrue(hub.awaitIdle(1000));
+
+        verify(otherListener).packetArrived(ByteBuffer.wrap("12345!PRIVMSG#Test:".getBytes()), false,
+                                            transport.getIpAddress());
+        verifyZeroInteractions(listener);
+    }
+
+    @Test
+    public void sentAndReceivedPacketsShouldBeCountedPerChannel() throws InterruptedException {
+        final LoopbackTransport otherTransport = new LoopbackTransport(hub);
+        transport.start();
+        otherTransport.start();
+
+        final User user = new User("User", 111);
+        user.setIpAddress(otherTransport.getIpAddress());
+
+        assertTrue(transport.sendMessageToAll("12345!IDLE#Test:", true));
+        assertTrue(transport.sendMessageToUser("12345!PRIVMSG#Test:", user));
+        assertTrue(hub.awaitIdle(1000));
+
+        final TrafficStatistics statistics = transport.getTrafficStatistics();
+        assertEquals(1, statistics.getPacketsOut(TransportChannel.MULTICAST));
+        assertEquals(16, statistics.getBytesOut(TransportChannel.MULTICAST));
+        assertEquals(1, statistics.getPacketsOut(TransportChannel.PRIVATE_UDP));
+        assertEquals(19, statistics.getBytesOut(TransportChannel.PRIVATE_UDP));
+        assertEquals(1, statistics.getPacketsIn(TransportChannel.MULTICAST));
+
+        final TrafficStatistics otherStatistics = otherTransport.getTrafficStatistics();
+        assertEquals(1, otherStatistics.getPacketsIn(TransportChannel.MULTICAST));
+        assertEquals(16, otherStatistics.getBytesIn(TransportChannel.MULTICAST));
+        assertEquals(1, otherStatistics.getPacketsIn(TransportChannel.PRIVATE_UDP));
+        assertEquals(19, otherStatistics.getBytesIn(TransportChannel.PRIVATE_UDP));
+        assertEquals(0, otherStatistics.getPacketsOut(TransportChannel.MULTICAST));
+    }
+
+    @Test
+    public void tcpMessagesShouldBeDropped() {
+        transport.start();
+
+        transport.sendTcpMessageToAll("12345!IDLE#Test:");
+        transport.sendTcpMessageToUser("12345!IDLE#Test:", new User("User", 111));
+
+        assertTrue(transport.getTcpSendQueues().isEmpty());
+        assertEquals(0, hub.getDeliveredPackets());
+    }
+
+    @Test
+    public void networkServicesShouldExchangeMessagesThroughTheHub() throws InterruptedException {
+        final LoopbackTransport otherTransport = new LoopbackTransport(hub);
+
+        final NetworkService networkService = new NetworkService(createController(), createSettings(12345), transport);
+        final NetworkService otherNetworkService =
+                new NetworkService(createController(), createSettings(54321), otherTransport);
+
+        final ReceiverListener listener = mock(ReceiverListener.class);
+        final ReceiverListener otherListener = mock(ReceiverListener.class);
+        final ReceiverListener otherPrivateListener = mock(ReceiverListener.class);
+
+        networkService.registerMainChatMessageReceiverListener(listener);
+        otherNetworkService.registerMainChatMessageReceiverListener(otherListener);
+        otherNetworkService.registerPrivateChatReceiverListener(otherPrivateListener);
+
+        networkService.connect();
+        otherNetworkService.connect();
+
+        assertTrue(networkService.isNetworkUp());
+        assertTrue(otherNetworkService.isConnectionWorkerAlive());
+
+        final User otherUser = new User("Other", 54321);
+        otherUser.setIpAddress(otherTransport.getIpAddress());
+
+        assertTrue(networkService.sendMessageToAllUsers("12345!MSG#Test:[-15987646]Hello"));
+        assertTrue(networkService.sendMessageToUser("12345!PRIVMSG#Test:54321:[-15987646]Hi", otherUser));
+        assertTrue(hub.awaitIdle(1000));
+
+        verify(listener).messageArrived("12345!MSG#Test:[-15987646]Hello", transport.getIpAddress());
+        verify(otherListener).messageArrived("12345!MSG#Test:[-15987646]Hello", transport.getIpAddress());
+        verify(otherPrivateListener).messageArrived("12345!PRIVMSG#Test:54321:[-15987646]Hi", transport.getIpAddress());
+
+        networkService.disconnect();
+        otherNetworkService.disconnect();
+
+        assertFalse(networkService.isNetworkUp());
+    }
+
+    private Controller createController() {
+        final Controller controller = mock(Controller.class);
+
+        when(controller.getUserList()).thenReturn(mock(UserList.class));
+        when(controller.getThreadPools()).thenReturn(new ThreadPools());
+        when(controller.getFlightRecorder()).thenReturn(new FlightRecorder(16));
+
+        return controller;
+    }
+
+    private Settings createSettings(final int userCode) {
+        final Settings settings = mock(Settings.class);
+        when(settings.getMe()).thenReturn(new User("Test", userCode));
+
+        return settings;
+    }
+}
@@ -0,0 +1,234 @@
+
+/***************************************************************************
+ *   Copyright 2006-2018 by Christian Ihle                                 *
+ *   contact@kouchat.net                                                   *
+ *                                                                         *
+ *   This file is part of KouChat.                                         *
+ *                                                                         *
+ *   KouChat is free software; you can redistribute it and/or modify       *
+ *   it under the terms of the GNU Lesser General Public License as        *
+ *   published by the Free Software Foundation, either version 3 of        *
+ *   the License, or (at your option) any later version.                   *
+ *                                                                         *
+ *   KouChat is distributed in the hope that it will be useful,            *
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of        *
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU      *
+ *   Lesser General Public License for more details.                       *
+ *                                                                         *
+ *   You should have received a copy of the GNU Lesser General Public      *
+ *   License along with KouChat.                                           *
+ *   If not, see <http://www.gnu.org/licenses/>.                           *
+ ***************************************************************************/
+
+package net.usikkert.kouchat.net.transport;
+
+import static org.junit.Assert.*;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import net.usikkert.kouchat.junit.ExpectedException;
+import net.usikkert.kouchat.net.transport.NetworkConditions.DelayDistribution;
+
+import org.junit.Rule;
+import org.junit.Test;
+
+/**
+ * Test of {@link NetworkConditions}.
+ *
+ * @author Christian Ihle
+ */
+@SuppressWarnings("HardCodedStringLiteral")
+public class NetworkConditionsTest {
+
+    @Rule
+    public ExpectedException expectedException = ExpectedException.none();
+
+    @Test
+    public void parseShouldSetAllConditions() {
+        final NetworkConditions conditions =
+                NetworkConditions.parse("loss=5.5,delay=50,jitter=20,distribution=normal,duplicate=1,reorder=2");
+
+        assertEquals(5.5, conditions.getLossPercent(), 0.0);
+        assertEquals(50, conditions.getDelay());
+        assertEquals(20, conditions.getJitter());
+        assertEquals(DelayDistribution.NORMAL, conditions.getDistribution());
+        assertEquals(1.0, conditions.getDuplicatePercent(), 0.0);
+        assertEquals(2.0, conditions.getReorderPercent(), 0.0);
+    }
+
+    @Test
+    public void parseShouldUseNoProblemsForConditionsLeftOut() {
+        final NetworkConditions conditions = NetworkConditions.parse("loss=10");
+
+        assertEquals(10.0, conditions.getLossPercent(), 0.0);
+        assertEquals(0, conditions.getDelay());
+        assertEquals(0, conditions.getJitter());
+        assertEquals(DelayDistribution.UNIFORM, conditions.getDistribution());
+        assertEquals(0.0, conditions.getDuplicatePercent(), 0.0);
+        assertEquals(0.0, conditions.getReorderPercent(), 0.0);
+    }
+
+    @Test
+    public void parseShouldParseToString() {
+        final NetworkConditions conditions =
+                NetworkConditions.parse("loss=5,delay=50,jitter=20,distribution=exponential,duplicate=1,reorder=2");
+
+        assertEquals("loss=5.0,delay=50,jitter=20,distribution=exponential,duplicate=1.0,reorder=2.0",
+                     conditions.toString());
+        assertEquals(conditions.toString(), NetworkConditions.parse(conditions.toString()).toString());
+    }
+
+    @Test
+    public void parseShouldThrowExceptionIfEmpty() {
+        expectedException.expect(IllegalArgumentException.class);
+        expectedException.expectMessage("Network conditions can not be empty");
+
+        NetworkConditions.parse(" ");
+    }
+
+    @Test
+    public void parseShouldThrowExceptionForUnknownCondition() {
+        expectedException.expect(IllegalArgumentException.class);
+        expectedException.expectMessage("Unknown network condition: corrupt");
+
+        NetworkConditions.parse("loss=5,corrupt=1");
+    }
+
+    @Test
+    public void parseShouldThrowExceptionForConditionWithoutValue() {
+        expectedException.expect(IllegalArgumentException.class);
+        expectedException.expectMessage("Invalid network condition: loss");
+
+        NetworkConditions.parse("loss");
+    }
+
+    @Test
+    public void parseShouldThrowExceptionIfValueIsNotANumber() {
+        expectedException.expect(IllegalArgumentException.class);
+        expectedException.expectMessage("Network condition delay must be a number: slow");
+
+        NetworkConditions.parse("delay=slow");
+    }
+
+    @Test
+    public void parseShouldThrowExceptionForUnknownDistribution() {
+        expectedException.expect(IllegalArgumentException.class);
+        expectedException.expectMessage("Unknown delay distribution: pareto");
+
+        NetworkConditions.parse("jitter=5,distribution=pareto");
+    }
+
+    @Test
+    public void constructorShouldThrowExceptionIfLossIsAbove100() {
+        expectedException.expect(IllegalArgumentException.class);
+        expectedException.expectMessage("Loss must be from 0 to 100 percent");
+
+        new NetworkConditions(101, 0, 0, DelayDistribution.UNIFORM, 0, 0);
+    }
+
+    @Test
+    public void constructorShouldThrowExceptionIfLossIsNotANumber() {
+        expectedException.expect(IllegalArgumentException.class);
+        expectedException.expectMessage("Loss must be from 0 to 100 percent");
+
+        new NetworkConditions(Double.NaN, 0, 0, DelayDistribution.UNIFORM, 0, 0);
+    }
+
+    @Test
+    public void constructorShouldThrowExceptionIfDelayIsNegative() {
+        expectedException.expect(IllegalArgumentException.class);
+        expectedException.expectMessage("Delay can not be negative");
+
+        new NetworkConditions(0, -1, 0, DelayDistribution.UNIFORM, 0, 0);
+    }
+
+    @Test
+    public void constructorShouldThrowExceptionIfDistributionIsNull() {
+        expectedException.expect(IllegalArgumentException.class);
+        expectedException.expectMessage("Distribution can not be null");
+
+        new NetworkConditions(0, 0, 0, null, 0, 0);
+    }
+
+    @Test
+    public void noneShouldNeverLoseDuplicateOrDelay() {
+        final Random random = new Random(1);
+
+        for (int i = 0; i < 1000; i++) {
+            assertFalse(NetworkConditions.NONE.isLost(random));
+            assertFalse(NetworkConditions.NONE.isDuplicated(random));
+            assertEquals(0, NetworkConditions.NONE.nextDelay(random, true));
+        }
+    }
+
+    @Test
+    public void isLostShouldLoseAboutThePercentOfThePackets() {
+        final NetworkConditions conditions = NetworkConditions.parse("loss=10");
+        final Random random = new Random(1);
+        int lost = 0;
+
+        for (int i = 0; i < 10000; i++) {
+            if (conditions.isLost(random)) {
+                lost++;
+            }
+        }
+
+        assertTrue(String.valueOf(lost), lost > 900 && lost < 1100);
+    }
+
+    @Test
+    public void nextDelayShouldStayWithinTheJitterWithUniformDistribution() {
+        final NetworkConditions conditions = NetworkConditions.parse("delay=50,jitter=20");
+        final Random random = new Random(1);
+
+        for (int i = 0; i < 1000; i++) {
+            final long delay = conditions.nextDelay(random, true);
+
+            assertTrue(delay >= TimeUnit.MILLISECONDS.toNanos(30));
+            assertTrue(delay <= TimeUnit.MILLISECONDS.toNanos(70));
+        }
+    }
+
+    @Test
+    public void nextDelayShouldNeverBeNegative() {
+        final NetworkConditions conditions = NetworkConditions.parse("delay=5,jitter=50,distribution=normal");
+        final Random random = new Random(1);
+
+        for (int i = 0; i < 1000; i++) {
+            assertTrue(conditions.nextDelay(random, true) >= 0);
+        }
+    }
+
+    @Test
+    public void nextDelayShouldNeverBeLessThanTheDelayWithExponentialDistribution() {
+        final NetworkConditions conditions = NetworkConditions.parse("delay=20,jitter=10,distribution=exponential");
+        final Random random = new Random(1);
+
+        for (int i = 0; i < 1000; i++) {
+            assertTrue(conditions.nextDelay(random, true) >= TimeUnit.MILLISECONDS.toNanos(20));
+        }
+    }
+
+    @Test
+    public void nextDelayShouldHoldBackReorderedPacketsOnlyWhenAllowed() {
+        final NetworkConditions conditions = NetworkConditions.parse("reorder=100");
+        final Random random = new Random(1);
+
+        assertEquals(TimeUnit.MILLISECONDS.toNanos(10), conditions.nextDelay(random, true));
+        assertEquals(0, conditions.nextDelay(random, false));
+    }
+
+    @Test
+    public void sameSeedShouldGiveSameProblems() {
+        final NetworkConditions conditions = NetworkConditions.parse("loss=30,delay=20,jitter=10,duplicate=10");
+        final Random random1 = new Random(42);
+        final Random random2 = new Random(42);
+
+        for (int i = 0; i < 100; i++) {
+            assertEquals(conditions.isLost(random1), conditions.isLost(random2));
+            assertEquals(conditions.isDuplicated(random1), conditions.isDuplicated(random2));
+            assertEquals(conditions.nextDelay(random1, true), conditions.nextDelay(random2, true));
+        }
+    }
+}
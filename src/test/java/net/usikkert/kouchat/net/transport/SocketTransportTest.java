@@ -0,0 +1,159 @@
+
+/***************************************************************************
+ *   Copyright 2006-2018 by Christian Ihle                                 *
+ *   contact@kouchat.net                                                   *
+ *                                                                         *
+ *   This file is part of KouChat.                                         *
+ *                                                                         *
+ *   KouChat is free software; you can redistribute it and/or modify       *
+ *   it under the terms of the GNU Lesser General Public License as        *
+ *   published by the Free Software Foundation, either version 3 of        *
+ *   the License, or (at your option) any later version.                   *
+ *                                                                         *
+ *   KouChat is distributed in the hope that it will be useful,            *
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of        *
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU      *
+ *   Lesser General Public License for more details.                       *
+ *                                                                         *
+ *   You should have received a copy of the GNU Lesser General Public      *
+ *   License along with KouChat.                                           *
+ *   If not, see <http://www.gnu.org/licenses/>.                           *
+ ***************************************************************************/
+
+package net.usikkert.kouchat.net.transport;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+
+import net.usikkert.kouchat.junit.ExpectedException;
+import net.usikkert.kouchat.misc.Controller;
+import net.usikkert.kouchat.misc.ErrorHandler;
+import net.usikkert.kouchat.misc.ThreadPools;
+import net.usikkert.kouchat.misc.User;
+import net.usikkert.kouchat.misc.UserList;
+import net.usikkert.kouchat.net.UDPNetworkService;
+import net.usikkert.kouchat.net.tcp.TCPNetworkService;
+import net.usikkert.kouchat.settings.Settings;
+import net.usikkert.kouchat.util.TestUtils;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+
+/**
+ * Test of {@link SocketTransport}.
+ *
+ * @author Christian Ihle
+ */
+@SuppressWarnings("HardCodedStringLiteral")
+public class SocketTransportTest {
+
+    @Rule
+    public ExpectedException expectedException = ExpectedException.none();
+
+    private Controller controller;
+    private Settings settings;
+    private ErrorHandler errorHandler;
+
+    @Before
+    public void setUp() {
+        controller = mock(Controller.class);
+        settings = mock(Settings.class);
+        errorHandler = mock(ErrorHandler.class);
+
+        when(settings.getMe()).thenReturn(mock(User.class));
+        when(controller.getUserList()).thenReturn(mock(UserList.class));
+        when(controller.getThreadPools()).thenReturn(new ThreadPools());
+    }
+
+    @Test
+    public void constructorShouldThrowExceptionIfControllerIsNull() {
+        expectedException.expect(IllegalArgumentException.class);
+        expectedException.expectMessage("Controller can not be null");
+
+        new SocketTransport(null, settings, errorHandler);
+    }
+
+    @Test
+    public void constructorShouldThrowExceptionIfSettingsIsNull() {
+        expectedException.expect(IllegalArgumentException.class);
+        expectedException.expectMessage("Settings can not be null");
+
+        new SocketTransport(controller, null, errorHandler);
+    }
+
+    @Test
+    public void constructorShouldThrowExceptionIfErrorHandlerIsNull() {
+        expectedException.expect(IllegalArgumentException.class);
+        expectedException.expectMessage("Error handler can not be null");
+
+        new SocketTransport(controller, settings, null);
+    }
+
+    @Test
+    public void socketTransportShouldEnablePrivateChatWhenEnabled() {
+        when(settings.isNoPrivateChat()).thenReturn(false);
+
+        final SocketTransport socketTransport = new SocketTransport(controller, settings, errorHandler);
+
+        assertTrue(socketTransport.isPrivateChatEnabled());
+    }
+
+    @Test
+    public void socketTransportShouldNotEnablePrivateChatWhenDisabled() {
+        when(settings.isNoPrivateChat()).thenReturn(true);
+
+        final SocketTransport socketTransport = new SocketTransport(controller, settings, errorHandler);
+
+        assertFalse(socketTransport.isPrivateChatEnabled());
+    }
+
+    @Test
+    public void sendMessageToUserShouldSendToIpAddressAndPrivateChatPortOfUser() {
+        final User user = new User("User", 111);
+        user.setIpAddress("192.168.1.2");
+        user.setPrivateChatPort(4444);
+
+        final SocketTransport socketTransport = new SocketTransport(controller, settings, errorHandler);
+        final UDPNetworkService udpNetworkService =
+                TestUtils.setFieldValueWithMock(socketTransport, "udpNetworkService", UDPNetworkService.class);
+
+        socketTransport.sendMessageToUser("16320462!PRIVMSG#Christian:111:[-15987646]Hello", user);
+
+        verify(udpNetworkService).sendMessageToUser("16320462!PRIVMSG#Christian:111:[-15987646]Hello", "192.168.1.2", 4444);
+    }
+
+    @Test
+    public void sendTcpMessagesShouldUseTcpNetworkService() {
+        final User user = new User("User", 111);
+
+        final SocketTransport socketTransport = new SocketTransport(controller, settings, errorHandler);
+        final TCPNetworkService tcpNetworkService =
+                TestUtils.setFieldValueWithMock(socketTransport, "tcpNetworkService", TCPNetworkService.class);
+
+        socketTransport.sendTcpMessageToAll("16320462!IDLE#Christian:");
+        socketTransport.sendTcpMessageToUser("16320462!PRIVMSG#Christian:111:[-15987646]Hello", user);
+
+        verify(tcpNetworkService).sendMessageToAll("16320462!IDLE#Christian:");
+        verify(tcpNetworkService).sendMessageToUser("16320462!PRIVMSG#Christian:111:[-15987646]Hello", user);
+    }
+
+    @Test
+    public void networkCameUpAndWentDownShouldStartAndStopServices() {
+        final SocketTransport socketTransport = new SocketTransport(controller, settings, errorHandler);
+        final UDPNetworkService udpNetworkService =
+                TestUtils.setFieldValueWithMock(socketTransport, "udpNetworkService", UDPNetworkService.class);
+        final TCPNetworkService tcpNetworkService =
+                TestUtils.setFieldValueWithMock(socketTransport, "tcpNetworkService", TCPNetworkService.class);
+
+        socketTransport.networkCameUp(false);
+
+        verify(udpNetworkService).startService(null);
+        verify(tcpNetworkService).startService();
+
+        socketTransport.networkWentDown(false);
+
+        verify(udpNetworkService).stopService();
+        verify(tcpNetworkService).stopService();
+    }
+}
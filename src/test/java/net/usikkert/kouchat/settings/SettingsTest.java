@@ -28,6 +28,7 @@ import static org.mockito.Mockito.*;
 import net.usikkert.kouchat.Constants;
 import net.usikkert.kouchat.event.SettingsListener;
 import net.usikkert.kouchat.misc.User;
+import net.usikkert.kouchat.net.tcp.TCPOverflowPolicy;
 
 import org.junit.Before;
 import org.junit.Rule;
@@ -191,6 +192,13 @@ public class SettingsTest {
 
         assertFalse(settings.isNoPrivateChat());
         assertFalse(settings.isAlwaysLog());
+        assertFalse(settings.isBinaryProtocol());
+        assertEquals(Constants.NETWORK_PACKET_RATE, settings.getPacketRate());
+        assertFalse(settings.isCompression());
+        assertEquals(TCPOverflowPolicy.DROP, settings.getTcpOverflowPolicy());
+        assertNull(settings.getNetworkEmulation());
+        assertEquals(0, settings.getNetworkSeed());
+        assertFalse(settings.isLatencyTimestamps());
         assertEquals(Constants.APP_LOG_FOLDER, settings.getLogLocation());
     }
 }
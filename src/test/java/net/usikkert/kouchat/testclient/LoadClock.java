@@ -0,0 +1,54 @@
+
+/***************************************************************************
+ *   Copyright 2006-2018 by Christian Ihle                                 *
+ *   contact@kouchat.net                                                   *
+ *                                                                         *
+ *   This file is part of KouChat.                                         *
+ *                                                                         *
+ *   KouChat is free software; you can redistribute it and/or modify       *
+ *   it under the terms of the GNU Lesser General Public License as        *
+ *   published by the Free Software Foundation, either version 3 of        *
+ *   the License, or (at your option) any later version.                   *
+ *                                                                         *
+ *   KouChat is distributed in the hope that it will be useful,            *
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of        *
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU      *
+ *   Lesser General Public License for more details.                       *
+ *                                                                         *
+ *   You should have received a copy of the GNU Lesser General Public      *
+ *   License along with KouChat.                                           *
+ *   If not, see <http://www.gnu.org/licenses/>.                           *
+ ***************************************************************************/
+
+package net.usikkert.kouchat.testclient;
+
+/**
+ * The clock used for the timestamps in load messages.
+ *
+ * @author Christian Ihle
+ */
+public enum LoadClock {
+
+    /** Precise, but only comparable between clients in the same JVM. */
+    NANO_TIME {
+        @Override
+        public long currentTimeMicros() {
+            return System.nanoTime() / 1000;
+        }
+    },
+
+    /** Comparable between JVMs on machines with synchronized clocks, but only precise to the millisecond. */
+    WALL_CLOCK {
+        @Override
+        public long currentTimeMicros() {
+            return System.currentTimeMillis() * 1000;
+        }
+    };
+
+    /**
+     * Gets the current time.
+     *
+     * @return The current time, in microseconds.
+     */
+    public abstract long currentTimeMicros();
+}
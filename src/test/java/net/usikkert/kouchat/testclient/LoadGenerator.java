@@ -0,0 +1,573 @@
+
+/***************************************************************************
+ *   Copyright 2006-2018 by Christian Ihle                                 *
+ *   contact@kouchat.net                                                   *
+ *                                                                         *
+ *   This file is part of KouChat.                                         *
+ *                                                                         *
+ *   KouChat is free software; you can redistribute it and/or modify       *
+ *   it under the terms of the GNU Lesser General Public License as        *
+ *   published by the Free Software Foundation, either version 3 of        *
+ *   the License, or (at your option) any later version.                   *
+ *                                                                         *
+ *   KouChat is distributed in the hope that it will be useful,            *
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of        *
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU      *
+ *   Lesser General Public License for more details.                       *
+ *                                                                         *
+ *   You should have received a copy of the GNU Lesser General Public      *
+ *   License along with KouChat.                                           *
+ *   If not, see <http://www.gnu.org/licenses/>.                           *
+ ***************************************************************************/
+
+package net.usikkert.kouchat.testclient;
+
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.OperatingSystemMXBean;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+import net.usikkert.kouchat.misc.User;
+import net.usikkert.kouchat.net.transport.FaultInjectingTransport;
+import net.usikkert.kouchat.net.transport.LoopbackHub;
+import net.usikkert.kouchat.net.transport.LoopbackTransport;
+import net.usikkert.kouchat.net.transport.NetworkConditions;
+import net.usikkert.kouchat.net.transport.Transport;
+import net.usikkert.kouchat.util.Tools;
+import net.usikkert.kouchat.util.Validate;
+
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Starts many headless {@link TestClient}s in one JVM, and replays {@link LoadScenario}s on them.
+ *
+ * <p>With the loopback transport all the clients talk through a {@link LoopbackHub}, so the results
+ * show the cost of the chat itself. With the socket transport the clients use the real network,
+ * and the same command can be started in several JVMs or on several machines, with
+ * <code>--expected-users</code> set to the total number of clients. Each JVM then reports what
+ * its own clients received. Latency between JVMs depends on synchronized clocks.</p>
+ *
+ * <p>The clients share the JVM, so CPU time and heap are reported as averages per client.</p>
+ *
+ * @author Christian Ihle
+ */
+public class LoadGenerator {
+
+    /** How often to check if the clients are done. */
+    private static final int POLL_INTERVAL = 50;
+
+    /** The size of the offered files, which are never sent. */
+    private static final long OFFERED_FILE_SIZE = 1024;
+
+    /** The suffix added to the nick names of the clients in every other round of nick changes. */
+    private static final String NICK_SUFFIX = "n";
+
+    /** Number of threads used for logging off the clients. */
+    private static final int LOGOFF_THREADS = 32;
+
+    private final LoadGeneratorOptions options;
+    private final PrintStream out;
+    private final LoadClock clock;
+    private final List<TestClient> clients;
+    private final List<FaultInjectingTransport> faultInjectingTransports;
+
+    @Nullable
+    private final LoopbackHub hub;
+
+    /** The statistics of the running scenario, or <code>null</code> between scenarios. */
+    @Nullable
+    private volatile LoadStatistics statistics;
+
+    private long nextOperationTime;
+
+    /**
+     * Constructor.
+     *
+     * @param options The options to use.
+     * @param out Where to print the results.
+     */
+    public LoadGenerator(final LoadGeneratorOptions options, final PrintStream out) {
+        Validate.notNull(options, "Options can not be null");
+        Validate.notNull(out, "Output can not be null");
+
+        this.options = options;
+        this.out = out;
+        this.clock = options.isLoopback() ? LoadClock.NANO_TIME : LoadClock.WALL_CLOCK;
+        this.hub = options.isLoopback() ? new LoopbackHub() : null;
+        this.clients = new ArrayList<>();
+        this.faultInjectingTransports = new ArrayList<>();
+    }
+
+    /**
+     * Runs the load generator with the options in the arguments, and exits when done.
+     *
+     * @param args The options. See {@link LoadGeneratorOptions#USAGE}.
+     */
+    public static void main(final String[] args) {
+        final LoadGeneratorOptions options;
+
+        try {
+            options = LoadGeneratorOptions.parse(args);
+        }
+
+        catch (final IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.err.print(LoadGeneratorOptions.USAGE);
+            System.exit(1);
+            return;
+        }
+
+        new LoadGenerator(options, System.out).run();
+        System.exit(0);
+    }
+
+    /**
+     * Starts the clients, runs the logon storm and the other scenarios, and logs off the clients.
+     *
+     * @return The statistics of each scenario that was run, in order.
+     */
+    public List<LoadStatistics> run() {
+        final List<LoadStatistics> results = new ArrayList<>();
+        final long heapBefore = getUsedHeap();
+
+        createClients();
+        out.printf("Started %d clients using %s%n", clients.size(), options.isLoopback() ? "loopback" : "sockets");
+
+        try {
+            results.add(runScenario(LoadScenario.LOGON_STORM));
+            out.printf("heap: %d KB per client%n", (getUsedHeap() - heapBefore) / clients.size() / 1024);
+
+            for (final LoadScenario scenario : options.getScenarios()) {
+                if (scenario == LoadScenario.FILE_OFFERS && clients.size() < 2) {
+                    out.printf("%s: skipped, needs at least 2 clients%n", scenario.getName());
+                } else {
+                    results.add(runScenario(scenario));
+                }
+            }
+        }
+
+        finally {
+            printNetworkProblems();
+            logoffClients();
+
+            if (hub != null) {
+                hub.shutdown();
+            }
+        }
+
+        return results;
+    }
+
+    private void createClients() {
+        final String nickPrefix = createNickPrefix();
+
+        for (int i = 1; i <= options.getClients(); i++) {
+            final TestClient client = new TestClient(nickPrefix + i, 0, 0, createTransport(i));
+
+            client.setRecordMessages(false);
+            client.setAcceptFileOffers(false);
+            client.setMessageListener(createMessageListener(client));
+
+            clients.add(client);
+        }
+    }
+
+    /**
+     * Creates the loopback transport for a client, with the network problems to emulate, if any.
+     * Each client gets its own seed, so the links do not all lose the same packets.
+     *
+     * @return The transport, or <code>null</code> to use the network sockets.
+     */
+    @Nullable
+    private Transport createTransport(final int clientNumber) {
+        if (hub == null) {
+            return null;
+        }
+
+        final NetworkConditions network = options.getNetwork();
+        final LoopbackTransport transport = new LoopbackTransport(hub);
+
+        if (network == null) {
+            return transport;
+        }
+
+        final FaultInjectingTransport faultInjectingTransport =
+                new FaultInjectingTransport(transport, network, options.getSeed() + clientNumber);
+        faultInjectingTransports.add(faultInjectingTransport);
+
+        return faultInjectingTransport;
+    }
+
+    /**
+     * Creates a unique prefix for the nick names of the clients in this JVM, of a fixed length,
+     * so clients from different JVMs never get the same nick name.
+     */
+    private String createNickPrefix() {
+        final String tag = Integer.toString(new Random().nextInt(36 * 36), 36);
+        return "L" + (tag.length() == 1 ? "0" + tag : tag);
+    }
+
+    private TestClientMessageListener createMessageListener(final TestClient client) {
+        return new TestClientMessageListener() {
+            @Override
+            public void messageArrived(final User user, final String message) {
+                recordReceived(LoadScenario.CHAT_BURST, user.getCode(), LoadMessage.parseChatMessage(message));
+            }
+
+            @Override
+            public void fileOfferArrived(final String nickName, final String fileName) {
+                // The nick name is from the sender, so it may be new to a client that lost a nick change
+                final int senderCode = client.knowsUser(nickName) ? client.getUser(nickName).getCode() : 0;
+                recordReceived(LoadScenario.FILE_OFFERS, senderCode, LoadMessage.parseFileName(fileName));
+            }
+        };
+    }
+
+    /**
+     * Records the message in the statistics of the running scenario, unless it's a late message
+     * from an earlier scenario.
+     */
+    private void recordReceived(final LoadScenario scenario, final int senderCode, @Nullable final LoadMessage loadMessage) {
+        final LoadStatistics currentStatistics = statistics;
+
+        if (currentStatistics != null && currentStatistics.getScenario() == scenario && loadMessage != null) {
+            final long latency = clock.currentTimeMicros() - loadMessage.getTimestamp();
+            currentStatistics.recordReceived(senderCode, loadMessage.getSequenceNumber(), latency);
+        }
+    }
+
+    private LoadStatistics runScenario(final LoadScenario scenario) {
+        final LoadStatistics scenarioStatistics = new LoadStatistics(scenario, clients.size());
+        final long cpuTimeBefore = getProcessCpuTime();
+
+        statistics = scenarioStatistics;
+        nextOperationTime = System.nanoTime();
+        scenarioStatistics.start();
+
+        switch (scenario) {
+            case LOGON_STORM:
+                logonClients(scenarioStatistics);
+                scenarioStatistics.setConverged(waitForLogon());
+                break;
+
+            case CHAT_BURST:
+                sendChatMessages(scenarioStatistics);
+                waitForDeliveries(scenarioStatistics);
+                break;
+
+            case NICK_CHANGES:
+                changeNickNames(scenarioStatistics);
+                scenarioStatistics.setConverged(waitForNickNames());
+                break;
+
+            case TYPING:
+                sendTypingIndicators(scenarioStatistics);
+                break;
+
+            case FILE_OFFERS:
+                offerFiles(scenarioStatistics);
+                waitForDeliveries(scenarioStatistics);
+                break;
+
+            default:
+                throw new IllegalArgumentException("Unknown scenario: " + scenario);
+        }
+
+        scenarioStatistics.stop();
+        waitForHub();
+        statistics = null;
+
+        out.print(scenarioStatistics.createReport());
+        printCpuTime(getProcessCpuTime() - cpuTimeBefore, scenarioStatistics.getElapsedTime(), cpuTimeBefore);
+
+        return scenarioStatistics;
+    }
+
+    private void logonClients(final LoadStatistics scenarioStatistics) {
+        for (final TestClient client : clients) {
+            waitForNextOperation();
+            client.startLogon();
+            scenarioStatistics.recordSent(client.getUserCode(), 1);
+        }
+    }
+
+    private boolean waitForLogon() {
+        final long deadline = getDeadline();
+
+        while (System.nanoTime() < deadline) {
+            if (allClientsLoggedOn()) {
+                return true;
+            }
+
+            Tools.sleep(POLL_INTERVAL);
+        }
+
+        return false;
+    }
+
+    private boolean allClientsLoggedOn() {
+        for (final TestClient client : clients) {
+            if (!client.isLoggedOn() || client.getNumberOfUsers() < options.getExpectedUsers()) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    private void sendChatMessages(final LoadStatistics scenarioStatistics) {
+        for (int round = 1; round <= options.getMessages(); round++) {
+            for (final TestClient client : clients) {
+                waitForNextOperation();
+                client.sendChatMessage(new LoadMessage(round, clock.currentTimeMicros()).toChatMessage());
+                scenarioStatistics.recordSent(client.getUserCode(), round);
+            }
+        }
+    }
+
+    private void changeNickNames(final LoadStatistics scenarioStatistics) {
+        for (int round = 1; round <= options.getMessages(); round++) {
+            for (final TestClient client : clients) {
+                waitForNextOperation();
+                final String nickName = client.getNickName();
+                final boolean addSuffix = !nickName.endsWith(NICK_SUFFIX);
+                client.changeNickName(addSuffix ? nickName + NICK_SUFFIX
+                                                : nickName.substring(0, nickName.length() - NICK_SUFFIX.length()));
+                scenarioStatistics.recordSent(client.getUserCode(), round);
+            }
+        }
+    }
+
+    private boolean waitForNickNames() {
+        final long deadline = getDeadline();
+
+        while (System.nanoTime() < deadline) {
+            if (allClientsKnowNickNames()) {
+                return true;
+            }
+
+            Tools.sleep(POLL_INTERVAL);
+        }
+
+        return false;
+    }
+
+    private boolean allClientsKnowNickNames() {
+        for (final TestClient client : clients) {
+            for (final TestClient otherClient : clients) {
+                if (!client.knowsUser(otherClient.getNickName())) {
+                    return false;
+                }
+            }
+        }
+
+        return true;
+    }
+
+    private void sendTypingIndicators(final LoadStatistics scenarioStatistics) {
+        int sequenceNumber = 0;
+
+        for (int round = 1; round <= options.getMessages(); round++) {
+            sequenceNumber++;
+
+            for (final TestClient client : clients) {
+                waitForNextOperation();
+                client.startWriting();
+                scenarioStatistics.recordSent(client.getUserCode(), sequenceNumber);
+            }
+
+            sequenceNumber++;
+
+            for (final TestClient client : clients) {
+                waitForNextOperation();
+                client.stopWriting();
+                scenarioStatistics.recordSent(client.getUserCode(), sequenceNumber);
+            }
+        }
+    }
+
+    /**
+     * Every client offers files to the next client, which rejects them right away.
+     */
+    private void offerFiles(final LoadStatistics scenarioStatistics) {
+        for (int round = 1; round <= options.getMessages(); round++) {
+            for (int i = 0; i < clients.size(); i++) {
+                final TestClient client = clients.get(i);
+                final TestClient receiver = clients.get((i + 1) % clients.size());
+
+                waitForNextOperation();
+                final String fileName = new LoadMessage(round, clock.currentTimeMicros()).toFileName();
+                final User receiverUser = client.findUser(receiver.getUserCode());
+
+                // The offer is counted as lost if the client never learned about the receiver
+                if (receiverUser != null) {
+                    client.offerFile(receiverUser, fileName, OFFERED_FILE_SIZE);
+                }
+
+                scenarioStatistics.recordSent(client.getUserCode(), round);
+            }
+        }
+    }
+
+    /**
+     * Waits until the expected messages have arrived, or no more messages have arrived during the settle time.
+     * Messages from clients in other JVMs can increase the expected number of messages,
+     * so only the settle time is used when using sockets. With loopback the settle time
+     * only starts when the hub has nothing more to deliver.
+     */
+    private void waitForDeliveries(final LoadStatistics scenarioStatistics) {
+        final long deadline = getDeadline();
+        final long settleTime = TimeUnit.MILLISECONDS.toNanos(options.getSettleTime());
+
+        int lastReceived = -1;
+        long lastChange = System.nanoTime();
+
+        while (System.nanoTime() < deadline) {
+            final int received = scenarioStatistics.getReceived();
+
+            if (hub != null && received >= scenarioStatistics.getExpected()) {
+                return;
+            }
+
+            if (received != lastReceived || !isHubIdle()) {
+                lastReceived = received;
+                lastChange = System.nanoTime();
+            } else if (System.nanoTime() - lastChange >= settleTime) {
+                return;
+            }
+
+            Tools.sleep(POLL_INTERVAL);
+        }
+    }
+
+    private boolean isHubIdle() {
+        if (hub == null) {
+            return true;
+        }
+
+        try {
+            return hub.awaitIdle(0);
+        }
+
+        catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return true;
+        }
+    }
+
+    /**
+     * Waits until the hub has delivered everything, so the next scenario is not measured
+     * while the clients are still busy with the previous one.
+     */
+    private void waitForHub() {
+        if (hub == null) {
+            return;
+        }
+
+        try {
+            hub.awaitIdle(TimeUnit.SECONDS.toMillis(options.getTimeout()));
+        }
+
+        catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Spreads the operations evenly over time, when limited by the rate option.
+     */
+    private void waitForNextOperation() {
+        if (options.getRate() == 0) {
+            return;
+        }
+
+        nextOperationTime += TimeUnit.SECONDS.toNanos(1) / options.getRate();
+        final long waitTime = nextOperationTime - System.nanoTime();
+
+        if (waitTime > 0) {
+            LockSupport.parkNanos(waitTime);
+        }
+    }
+
+    private long getDeadline() {
+        return System.nanoTime() + TimeUnit.SECONDS.toNanos(options.getTimeout());
+    }
+
+    private void printNetworkProblems() {
+        if (faultInjectingTransports.isEmpty()) {
+            return;
+        }
+
+        long dropped = 0;
+        long duplicated = 0;
+        long delayed = 0;
+
+        for (final FaultInjectingTransport transport : faultInjectingTransports) {
+            dropped += transport.getDroppedPackets();
+            duplicated += transport.getDuplicatedPackets();
+            delayed += transport.getDelayedMessages();
+        }
+
+        out.printf("network: %s, seed %d%n", options.getNetwork(), options.getSeed());
+        out.printf("  dropped %d, duplicated %d, delayed %d%n", dropped, duplicated, delayed);
+    }
+
+    private void logoffClients() {
+        final ExecutorService executor = Executors.newFixedThreadPool(Math.min(clients.size(), LOGOFF_THREADS));
+
+        for (final TestClient client : clients) {
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    client.logoff();
+                }
+            });
+        }
+
+        executor.shutdown();
+
+        try {
+            executor.awaitTermination(options.getTimeout(), TimeUnit.SECONDS);
+        }
+
+        catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void printCpuTime(final long cpuTime, final long elapsedTime, final long cpuTimeBefore) {
+        if (cpuTimeBefore < 0 || elapsedTime <= 0) {
+            return;
+        }
+
+        final double cpuTimePerClient = cpuTime / 1000000.0 / clients.size();
+        out.printf("  cpu: %.2f ms per client, %.2f%% of one core per client%n",
+                   cpuTimePerClient, cpuTimePerClient * 100 / elapsedTime);
+    }
+
+    /**
+     * Gets the cpu time used by the whole JVM, when supported by the JVM.
+     *
+     * @return The cpu time in nanoseconds, or <code>-1</code> if not supported.
+     */
+    private long getProcessCpuTime() {
+        final OperatingSystemMXBean operatingSystem = ManagementFactory.getOperatingSystemMXBean();
+
+        if (operatingSystem instanceof com.sun.management.OperatingSystemMXBean) {
+            return ((com.sun.management.OperatingSystemMXBean) operatingSystem).getProcessCpuTime();
+        }
+
+        return -1;
+    }
+
+    private long getUsedHeap() {
+        System.gc();
+        return ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+    }
+}
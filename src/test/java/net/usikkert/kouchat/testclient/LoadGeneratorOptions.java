@@ -0,0 +1,287 @@
+
+/***************************************************************************
+ *   Copyright 2006-2018 by Christian Ihle                                 *
+ *   contact@kouchat.net                                                   *
+ *                                                                         *
+ *   This file is part of KouChat.                                         *
+ *                                                                         *
+ *   KouChat is free software; you can redistribute it and/or modify       *
+ *   it under the terms of the GNU Lesser General Public License as        *
+ *   published by the Free Software Foundation, either version 3 of        *
+ *   the License, or (at your option) any later version.                   *
+ *                                                                         *
+ *   KouChat is distributed in the hope that it will be useful,            *
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of        *
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU      *
+ *   Lesser General Public License for more details.                       *
+ *                                                                         *
+ *   You should have received a copy of the GNU Lesser General Public      *
+ *   License along with KouChat.                                           *
+ *   If not, see <http://www.gnu.org/licenses/>.                           *
+ ***************************************************************************/
+
+package net.usikkert.kouchat.testclient;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import net.usikkert.kouchat.net.transport.NetworkConditions;
+
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Options for the {@link LoadGenerator}, parsed from arguments like <code>--clients=200</code>.
+ *
+ * @author Christian Ihle
+ */
+public class LoadGeneratorOptions {
+
+    /** How the options are used. */
+    public static final String USAGE =
+            "Options:\n" +
+            "  --clients=50            Number of clients to start in this JVM\n" +
+            "  --scenarios=chat,files  Scenarios to run after the logon storm: chat, nick, typing, files\n" +
+            "  --messages=10           Messages, nick changes, indicators or file offers per client\n" +
+            "  --rate=0                Operations per second, for all the clients together. 0 is unlimited\n" +
+            "  --transport=loopback    loopback for one JVM, or socket for the real network and several JVMs\n" +
+            "  --expected-users=50     Users each client should see after logon, when using several JVMs\n" +
+            "  --timeout=60            Seconds to wait for each scenario to finish\n" +
+            "  --settle-time=500       Milliseconds without new deliveries before a scenario is done\n" +
+            "  --network=loss=5        Network problems to emulate with loopback, like loss=5,delay=50,jitter=20\n" +
+            "  --seed=0                Seed for the emulated network problems\n";
+
+    private int clients = 50;
+    private List<LoadScenario> scenarios = Arrays.asList(
+            LoadScenario.CHAT_BURST, LoadScenario.NICK_CHANGES, LoadScenario.TYPING, LoadScenario.FILE_OFFERS);
+    private int messages = 10;
+    private int rate;
+    private boolean loopback = true;
+    private int expectedUsers;
+    private int timeout = 60;
+    private int settleTime = 500;
+
+    @Nullable
+    private NetworkConditions network;
+
+    private long seed;
+
+    /**
+     * Parses the arguments into options. Options that are not specified use the default value.
+     *
+     * @param args The arguments to parse.
+     * @return The parsed options.
+     * @throws IllegalArgumentException If an argument is unknown or has an invalid value.
+     */
+    public static LoadGeneratorOptions parse(final String[] args) {
+        final LoadGeneratorOptions options = new LoadGeneratorOptions();
+
+        for (final String arg : args) {
+            final int equals = arg.indexOf('=');
+
+            if (!arg.startsWith("--") || equals < 0) {
+                throw new IllegalArgumentException("Invalid argument: " + arg);
+            }
+
+            options.setOption(arg.substring(2, equals), arg.substring(equals + 1));
+        }
+
+        if (options.network != null && !options.loopback) {
+            throw new IllegalArgumentException("Option network is only supported with the loopback transport");
+        }
+
+        if (options.expectedUsers == 0) {
+            options.expectedUsers = options.clients;
+        }
+
+        return options;
+    }
+
+    public int getClients() {
+        return clients;
+    }
+
+    /**
+     * Gets the scenarios to run after the logon storm, in order.
+     *
+     * @return The scenarios.
+     */
+    public List<LoadScenario> getScenarios() {
+        return scenarios;
+    }
+
+    public int getMessages() {
+        return messages;
+    }
+
+    /**
+     * Gets the number of operations per second, for all the clients together.
+     *
+     * @return The rate, or <code>0</code> for no limit.
+     */
+    public int getRate() {
+        return rate;
+    }
+
+    /**
+     * Checks if the clients should use a loopback transport, instead of the network sockets.
+     *
+     * @return If loopback should be used.
+     */
+    public boolean isLoopback() {
+        return loopback;
+    }
+
+    public int getExpectedUsers() {
+        return expectedUsers;
+    }
+
+    /**
+     * Gets how long to wait for each scenario to finish.
+     *
+     * @return The timeout, in seconds.
+     */
+    public int getTimeout() {
+        return timeout;
+    }
+
+    /**
+     * Gets how long to wait without new deliveries before a scenario is done.
+     *
+     * @return The settle time, in milliseconds.
+     */
+    public int getSettleTime() {
+        return settleTime;
+    }
+
+    /**
+     * Gets the network problems to emulate on the links between the clients.
+     *
+     * @return The network conditions, or <code>null</code> for a perfect network.
+     */
+    @Nullable
+    public NetworkConditions getNetwork() {
+        return network;
+    }
+
+    /**
+     * Gets the seed for the emulated network problems. Each client adds its number to the seed.
+     *
+     * @return The seed.
+     */
+    public long getSeed() {
+        return seed;
+    }
+
+    private void setOption(final String name, final String value) {
+        switch (name) {
+            case "clients":
+                clients = parsePositive(name, value);
+                break;
+
+            case "scenarios":
+                scenarios = parseScenarios(value);
+                break;
+
+            case "messages":
+                messages = parsePositive(name, value);
+                break;
+
+            case "rate":
+                rate = parseNumber(name, value);
+                break;
+
+            case "transport":
+                loopback = parseTransport(value);
+                break;
+
+            case "expected-users":
+                expectedUsers = parsePositive(name, value);
+                break;
+
+            case "timeout":
+                timeout = parsePositive(name, value);
+                break;
+
+            case "settle-time":
+                settleTime = parseNumber(name, value);
+                break;
+
+            case "network":
+                network = NetworkConditions.parse(value);
+                break;
+
+            case "seed":
+                seed = parseSeed(value);
+                break;
+
+            default:
+                throw new IllegalArgumentException("Unknown option: " + name);
+        }
+    }
+
+    private List<LoadScenario> parseScenarios(final String value) {
+        final List<LoadScenario> parsedScenarios = new ArrayList<>();
+
+        for (final String name : value.split(",")) {
+            final LoadScenario scenario = LoadScenario.fromName(name);
+
+            // The logon storm always runs first, since the clients must log on before anything else
+            if (scenario != LoadScenario.LOGON_STORM && !parsedScenarios.contains(scenario)) {
+                parsedScenarios.add(scenario);
+            }
+        }
+
+        return Collections.unmodifiableList(parsedScenarios);
+    }
+
+    private boolean parseTransport(final String value) {
+        switch (value) {
+            case "loopback":
+                return true;
+
+            case "socket":
+                return false;
+
+            default:
+                throw new IllegalArgumentException("Unknown transport: " + value);
+        }
+    }
+
+    private long parseSeed(final String value) {
+        try {
+            return Long.parseLong(value);
+        }
+
+        catch (final NumberFormatException e) {
+            throw new IllegalArgumentException("Option seed must be a number: " + value);
+        }
+    }
+
+    private int parsePositive(final String name, final String value) {
+        final int number = parseNumber(name, value);
+
+        if (number == 0) {
+            throw new IllegalArgumentException("Option " + name + " must be larger than 0");
+        }
+
+        return number;
+    }
+
+    private int parseNumber(final String name, final String value) {
+        try {
+            final int number = Integer.parseInt(value);
+
+            if (number < 0) {
+                throw new IllegalArgumentException("Option " + name + " can not be negative");
+            }
+
+            return number;
+        }
+
+        catch (final NumberFormatException e) {
+            throw new IllegalArgumentException("Option " + name + " must be a number: " + value);
+        }
+    }
+}
@@ -0,0 +1,176 @@
+
+/***************************************************************************
+ *   Copyright 2006-2018 by Christian Ihle                                 *
+ *   contact@kouchat.net                                                   *
+ *                                                                         *
+ *   This file is part of KouChat.                                         *
+ *                                                                         *
+ *   KouChat is free software; you can redistribute it and/or modify       *
+ *   it under the terms of the GNU Lesser General Public License as        *
+ *   published by the Free Software Foundation, either version 3 of        *
+ *   the License, or (at your option) any later version.                   *
+ *                                                                         *
+ *   KouChat is distributed in the hope that it will be useful,            *
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of        *
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU      *
+ *   Lesser General Public License for more details.                       *
+ *                                                                         *
+ *   You should have received a copy of the GNU Lesser General Public      *
+ *   License along with KouChat.                                           *
+ *   If not, see <http://www.gnu.org/licenses/>.                           *
+ ***************************************************************************/
+
+package net.usikkert.kouchat.testclient;
+
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+
+import net.usikkert.kouchat.junit.ExpectedException;
+import net.usikkert.kouchat.net.transport.NetworkConditions;
+
+import org.junit.Rule;
+import org.junit.Test;
+
+/**
+ * Test of {@link LoadGeneratorOptions}.
+ *
+ * @author Christian Ihle
+ */
+@SuppressWarnings("HardCodedStringLiteral")
+public class LoadGeneratorOptionsTest {
+
+    @Rule
+    public ExpectedException expectedException = ExpectedException.none();
+
+    @Test
+    public void parseShouldUseDefaultsWithoutArguments() {
+        final LoadGeneratorOptions options = LoadGeneratorOptions.parse(new String[0]);
+
+        assertEquals(50, options.getClients());
+        assertEquals(Arrays.asList(LoadScenario.CHAT_BURST, LoadScenario.NICK_CHANGES,
+                                   LoadScenario.TYPING, LoadScenario.FILE_OFFERS), options.getScenarios());
+        assertEquals(10, options.getMessages());
+        assertEquals(0, options.getRate());
+        assertTrue(options.isLoopback());
+        assertEquals(50, options.getExpectedUsers());
+        assertEquals(60, options.getTimeout());
+        assertEquals(500, options.getSettleTime());
+        assertNull(options.getNetwork());
+        assertEquals(0, options.getSeed());
+    }
+
+    @Test
+    public void parseShouldSetAllOptions() {
+        final LoadGeneratorOptions options = LoadGeneratorOptions.parse(new String[] {
+                "--clients=200", "--scenarios=files,chat", "--messages=5", "--rate=1000", "--transport=socket",
+                "--expected-users=400", "--timeout=30", "--settle-time=0"});
+
+        assertEquals(200, options.getClients());
+        assertEquals(Arrays.asList(LoadScenario.FILE_OFFERS, LoadScenario.CHAT_BURST), options.getScenarios());
+        assertEquals(5, options.getMessages());
+        assertEquals(1000, options.getRate());
+        assertFalse(options.isLoopback());
+        assertEquals(400, options.getExpectedUsers());
+        assertEquals(30, options.getTimeout());
+        assertEquals(0, options.getSettleTime());
+    }
+
+    @Test
+    public void parseShouldUseClientsAsDefaultExpectedUsers() {
+        final LoadGeneratorOptions options = LoadGeneratorOptions.parse(new String[] {"--clients=20"});
+
+        assertEquals(20, options.getExpectedUsers());
+    }
+
+    @Test
+    public void parseShouldSkipLogonAndDuplicateScenarios() {
+        final LoadGeneratorOptions options = LoadGeneratorOptions.parse(new String[] {"--scenarios=logon,chat,chat"});
+
+        assertEquals(Arrays.asList(LoadScenario.CHAT_BURST), options.getScenarios());
+    }
+
+    @Test
+    public void parseShouldThrowExceptionForUnknownScenario() {
+        expectedException.expect(IllegalArgumentException.class);
+        expectedException.expectMessage("Unknown scenario: dance");
+
+        LoadGeneratorOptions.parse(new String[] {"--scenarios=chat,dance"});
+    }
+
+    @Test
+    public void parseShouldThrowExceptionForUnknownOption() {
+        expectedException.expect(IllegalArgumentException.class);
+        expectedException.expectMessage("Unknown option: speed");
+
+        LoadGeneratorOptions.parse(new String[] {"--speed=10"});
+    }
+
+    @Test
+    public void parseShouldThrowExceptionForArgumentWithoutValue() {
+        expectedException.expect(IllegalArgumentException.class);
+        expectedException.expectMessage("Invalid argument: --clients");
+
+        LoadGeneratorOptions.parse(new String[] {"--clients"});
+    }
+
+    @Test
+    public void parseShouldThrowExceptionForUnknownTransport() {
+        expectedException.expect(IllegalArgumentException.class);
+        expectedException.expectMessage("Unknown transport: pigeon");
+
+        LoadGeneratorOptions.parse(new String[] {"--transport=pigeon"});
+    }
+
+    @Test
+    public void parseShouldThrowExceptionIfClientsIsZero() {
+        expectedException.expect(IllegalArgumentException.class);
+        expectedException.expectMessage("Option clients must be larger than 0");
+
+        LoadGeneratorOptions.parse(new String[] {"--clients=0"});
+    }
+
+    @Test
+    public void parseShouldThrowExceptionIfRateIsNegative() {
+        expectedException.expect(IllegalArgumentException.class);
+        expectedException.expectMessage("Option rate can not be negative");
+
+        LoadGeneratorOptions.parse(new String[] {"--rate=-1"});
+    }
+
+    @Test
+    public void parseShouldThrowExceptionIfValueIsNotANumber() {
+        expectedException.expect(IllegalArgumentException.class);
+        expectedException.expectMessage("Option messages must be a number: ten");
+
+        LoadGeneratorOptions.parse(new String[] {"--messages=ten"});
+    }
+
+    @Test
+    public void parseShouldSetNetworkAndSeed() {
+        final LoadGeneratorOptions options = LoadGeneratorOptions.parse(new String[] {
+                "--network=loss=5,delay=50", "--seed=42"});
+
+        final NetworkConditions network = options.getNetwork();
+        assertNotNull(network);
+        assertEquals(5.0, network.getLossPercent(), 0.0);
+        assertEquals(50, network.getDelay());
+        assertEquals(42, options.getSeed());
+    }
+
+    @Test
+    public void parseShouldThrowExceptionForNetworkWithSockets() {
+        expectedException.expect(IllegalArgumentException.class);
+        expectedException.expectMessage("Option network is only supported with the loopback transport");
+
+        LoadGeneratorOptions.parse(new String[] {"--network=loss=5", "--transport=socket"});
+    }
+
+    @Test
+    public void parseShouldThrowExceptionIfSeedIsNotANumber() {
+        expectedException.expect(IllegalArgumentException.class);
+        expectedException.expectMessage("Option seed must be a number: x");
+
+        LoadGeneratorOptions.parse(new String[] {"--seed=x"});
+    }
+}
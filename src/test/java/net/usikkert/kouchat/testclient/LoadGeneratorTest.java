@@ -0,0 +1,94 @@
+
+/***************************************************************************
+ *   Copyright 2006-2018 by Christian Ihle                                 *
+ *   contact@kouchat.net                                                   *
+ *                                                                         *
+ *   This file is part of KouChat.                                         *
+ *                                                                         *
+ *   KouChat is free software; you can redistribute it and/or modify       *
+ *   it under the terms of the GNU Lesser General Public License as        *
+ *   published by the Free Software Foundation, either version 3 of        *
+ *   the License, or (at your option) any later version.                   *
+ *                                                                         *
+ *   KouChat is distributed in the hope that it will be useful,            *
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of        *
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU      *
+ *   Lesser General Public License for more details.                       *
+ *                                                                         *
+ *   You should have received a copy of the GNU Lesser General Public      *
+ *   License along with KouChat.                                           *
+ *   If not, see <http://www.gnu.org/licenses/>.                           *
+ ***************************************************************************/
+
+package net.usikkert.kouchat.testclient;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.util.List;
+
+import net.usikkert.kouchat.junit.ExpectedException;
+
+import org.junit.Rule;
+import org.junit.Test;
+
+/**
+ * Test of {@link LoadGenerator}.
+ *
+ * @author Christian Ihle
+ */
+@SuppressWarnings("HardCodedStringLiteral")
+public class LoadGeneratorTest {
+
+    @Rule
+    public ExpectedException expectedException = ExpectedException.none();
+
+    @Test
+    public void constructorShouldThrowExceptionIfOptionsIsNull() {
+        expectedException.expect(IllegalArgumentException.class);
+        expectedException.expectMessage("Options can not be null");
+
+        new LoadGenerator(null, System.out);
+    }
+
+    @Test
+    public void constructorShouldThrowExceptionIfOutputIsNull() {
+        expectedException.expect(IllegalArgumentException.class);
+        expectedException.expectMessage("Output can not be null");
+
+        new LoadGenerator(LoadGeneratorOptions.parse(new String[0]), null);
+    }
+
+    @Test
+    public void runShouldDeliverEverythingUsingLoopback() {
+        final ByteArrayOutputStream output = new ByteArrayOutputStream();
+        final LoadGeneratorOptions options = LoadGeneratorOptions.parse(new String[] {
+                "--clients=3", "--messages=2", "--scenarios=chat,nick,files", "--timeout=10"});
+
+        final List<LoadStatistics> results = new LoadGenerator(options, new PrintStream(output)).run();
+
+        assertEquals(4, results.size());
+
+        final LoadStatistics logon = results.get(0);
+        assertEquals(LoadScenario.LOGON_STORM, logon.getScenario());
+        assertTrue(logon.isConverged());
+
+        final LoadStatistics chat = results.get(1);
+        assertEquals(LoadScenario.CHAT_BURST, chat.getScenario());
+        assertEquals(6, chat.getSentMessages());
+        assertEquals(12, chat.getExpected());
+        assertEquals(0, chat.getLost());
+
+        final LoadStatistics nick = results.get(2);
+        assertEquals(LoadScenario.NICK_CHANGES, nick.getScenario());
+        assertTrue(nick.isConverged());
+
+        final LoadStatistics files = results.get(3);
+        assertEquals(LoadScenario.FILE_OFFERS, files.getScenario());
+        assertEquals(6, files.getExpected());
+        assertEquals(0, files.getLost());
+
+        assertTrue(output.toString().contains("Started 3 clients using loopback"));
+    }
+}
@@ -0,0 +1,148 @@
+
+/***************************************************************************
+ *   Copyright 2006-2018 by Christian Ihle                                 *
+ *   contact@kouchat.net                                                   *
+ *                                                                         *
+ *   This file is part of KouChat.                                         *
+ *                                                                         *
+ *   KouChat is free software; you can redistribute it and/or modify       *
+ *   it under the terms of the GNU Lesser General Public License as        *
+ *   published by the Free Software Foundation, either version 3 of        *
+ *   the License, or (at your option) any later version.                   *
+ *                                                                         *
+ *   KouChat is distributed in the hope that it will be useful,            *
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of        *
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU      *
+ *   Lesser General Public License for more details.                       *
+ *                                                                         *
+ *   You should have received a copy of the GNU Lesser General Public      *
+ *   License along with KouChat.                                           *
+ *   If not, see <http://www.gnu.org/licenses/>.                           *
+ ***************************************************************************/
+
+package net.usikkert.kouchat.testclient;
+
+import net.usikkert.kouchat.util.Validate;
+
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * A chat message or file name sent by the {@link LoadGenerator}, with the sequence number
+ * of the message from the sender, and the time it was sent.
+ *
+ * <p>Chat messages look like <code>load:12:1400000000</code>, and file names
+ * like <code>load-12-1400000000.txt</code>.</p>
+ *
+ * @author Christian Ihle
+ */
+public final class LoadMessage {
+
+    private static final String MESSAGE_PREFIX = "load:";
+    private static final char MESSAGE_SEPARATOR = ':';
+
+    private static final String FILE_PREFIX = "load-";
+    private static final char FILE_SEPARATOR = '-';
+    private static final String FILE_SUFFIX = ".txt";
+
+    private final int sequenceNumber;
+    private final long timestamp;
+
+    /**
+     * Constructor.
+     *
+     * @param sequenceNumber The sequence number of the message from the sender, starting at 1.
+     * @param timestamp The time the message was sent, in microseconds.
+     */
+    public LoadMessage(final int sequenceNumber, final long timestamp) {
+        if (sequenceNumber < 1) {
+            throw new IllegalArgumentException("Sequence number must be larger than 0");
+        }
+
+        this.sequenceNumber = sequenceNumber;
+        this.timestamp = timestamp;
+    }
+
+    public int getSequenceNumber() {
+        return sequenceNumber;
+    }
+
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    /**
+     * Formats the load message as a chat message.
+     *
+     * @return The chat message.
+     */
+    public String toChatMessage() {
+        return MESSAGE_PREFIX + sequenceNumber + MESSAGE_SEPARATOR + timestamp;
+    }
+
+    /**
+     * Formats the load message as a file name.
+     *
+     * @return The file name.
+     */
+    public String toFileName() {
+        return FILE_PREFIX + sequenceNumber + FILE_SEPARATOR + timestamp + FILE_SUFFIX;
+    }
+
+    /**
+     * Parses a chat message from {@link #toChatMessage()}.
+     *
+     * @param message The chat message to parse.
+     * @return The load message, or <code>null</code> if the chat message is not a load message.
+     */
+    @Nullable
+    public static LoadMessage parseChatMessage(final String message) {
+        Validate.notNull(message, "Message can not be null");
+
+        if (!message.startsWith(MESSAGE_PREFIX)) {
+            return null;
+        }
+
+        return parse(message, MESSAGE_PREFIX.length(), message.length(), MESSAGE_SEPARATOR);
+    }
+
+    /**
+     * Parses a file name from {@link #toFileName()}.
+     *
+     * @param fileName The file name to parse.
+     * @return The load message, or <code>null</code> if the file name is not from a load message.
+     */
+    @Nullable
+    public static LoadMessage parseFileName(final String fileName) {
+        Validate.notNull(fileName, "File name can not be null");
+
+        if (!fileName.startsWith(FILE_PREFIX) || !fileName.endsWith(FILE_SUFFIX)) {
+            return null;
+        }
+
+        return parse(fileName, FILE_PREFIX.length(), fileName.length() - FILE_SUFFIX.length(), FILE_SEPARATOR);
+    }
+
+    @Nullable
+    private static LoadMessage parse(final String text, final int start, final int end, final char separator) {
+        final int separatorIndex = text.indexOf(separator, start);
+
+        if (separatorIndex < 0 || separatorIndex >= end) {
+            return null;
+        }
+
+        try {
+            final int sequenceNumber = Integer.parseInt(text.substring(start, separatorIndex));
+            final long timestamp = Long.parseLong(text.substring(separatorIndex + 1, end));
+
+            if (sequenceNumber < 1) {
+                return null;
+            }
+
+            return new LoadMessage(sequenceNumber, timestamp);
+        }
+
+        catch (final NumberFormatException e) {
+            return null;
+        }
+    }
+}
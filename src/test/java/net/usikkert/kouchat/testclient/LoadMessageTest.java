@@ -0,0 +1,110 @@
+
+/***************************************************************************
+ *   Copyright 2006-2018 by Christian Ihle                                 *
+ *   contact@kouchat.net                                                   *
+ *                                                                         *
+ *   This file is part of KouChat.                                         *
+ *                                                                         *
+ *   KouChat is free software; you can redistribute it and/or modify       *
+ *   it under the terms of the GNU Lesser General Public License as        *
+ *   published by the Free Software Foundation, either version 3 of        *
+ *   the License, or (at your option) any later version.                   *
+ *                                                                         *
+ *   KouChat is distributed in the hope that it will be useful,            *
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of        *
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU      *
+ *   Lesser General Public License for more details.                       *
+ *                                                                         *
+ *   You should have received a copy of the GNU Lesser General Public      *
+ *   License along with KouChat.                                           *
+ *   If not, see <http://www.gnu.org/licenses/>.                           *
+ ***************************************************************************/
+
+package net.usikkert.kouchat.testclient;
+
+import static org.junit.Assert.*;
+
+import net.usikkert.kouchat.junit.ExpectedException;
+
+import org.junit.Rule;
+import org.junit.Test;
+
+/**
+ * Test of {@link LoadMessage}.
+ *
+ * @author Christian Ihle
+ */
+@SuppressWarnings("HardCodedStringLiteral")
+public class LoadMessageTest {
+
+    @Rule
+    public ExpectedException expectedException = ExpectedException.none();
+
+    @Test
+    public void constructorShouldThrowExceptionIfSequenceNumberIsLessThanOne() {
+        expectedException.expect(IllegalArgumentException.class);
+        expectedException.expectMessage("Sequence number must be larger than 0");
+
+        new LoadMessage(0, 100);
+    }
+
+    @Test
+    public void toChatMessageShouldIncludeSequenceNumberAndTimestamp() {
+        assertEquals("load:5:123456", new LoadMessage(5, 123456).toChatMessage());
+    }
+
+    @Test
+    public void toFileNameShouldIncludeSequenceNumberAndTimestamp() {
+        assertEquals("load-5-123456.txt", new LoadMessage(5, 123456).toFileName());
+    }
+
+    @Test
+    public void parseChatMessageShouldReturnMessageFromToChatMessage() {
+        final LoadMessage message = LoadMessage.parseChatMessage(new LoadMessage(12, 987654321L).toChatMessage());
+
+        assertNotNull(message);
+        assertEquals(12, message.getSequenceNumber());
+        assertEquals(987654321L, message.getTimestamp());
+    }
+
+    @Test
+    public void parseChatMessageShouldReturnNullForOtherMessages() {
+        assertNull(LoadMessage.parseChatMessage("Hello"));
+        assertNull(LoadMessage.parseChatMessage("load:"));
+        assertNull(LoadMessage.parseChatMessage("load:5"));
+        assertNull(LoadMessage.parseChatMessage("load:a:123"));
+        assertNull(LoadMessage.parseChatMessage("load:0:123"));
+    }
+
+    @Test
+    public void parseChatMessageShouldThrowExceptionIfMessageIsNull() {
+        expectedException.expect(IllegalArgumentException.class);
+        expectedException.expectMessage("Message can not be null");
+
+        LoadMessage.parseChatMessage(null);
+    }
+
+    @Test
+    public void parseFileNameShouldReturnMessageFromToFileName() {
+        final LoadMessage message = LoadMessage.parseFileName(new LoadMessage(3, 42).toFileName());
+
+        assertNotNull(message);
+        assertEquals(3, message.getSequenceNumber());
+        assertEquals(42, message.getTimestamp());
+    }
+
+    @Test
+    public void parseFileNameShouldReturnNullForOtherFiles() {
+        assertNull(LoadMessage.parseFileName("picture.png"));
+        assertNull(LoadMessage.parseFileName("load-5-123.png"));
+        assertNull(LoadMessage.parseFileName("load-5.txt"));
+    }
+
+    @Test
+    public void parseFileNameShouldThrowExceptionIfFileNameIsNull() {
+        expectedException.expect(IllegalArgumentException.class);
+        expectedException.expectMessage("File name can not be null");
+
+        LoadMessage.parseFileName(null);
+    }
+}
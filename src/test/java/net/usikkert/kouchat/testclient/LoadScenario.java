@@ -0,0 +1,106 @@
+
+/***************************************************************************
+ *   Copyright 2006-2018 by Christian Ihle                                 *
+ *   contact@kouchat.net                                                   *
+ *                                                                         *
+ *   This file is part of KouChat.                                         *
+ *                                                                         *
+ *   KouChat is free software; you can redistribute it and/or modify       *
+ *   it under the terms of the GNU Lesser General Public License as        *
+ *   published by the Free Software Foundation, either version 3 of        *
+ *   the License, or (at your option) any later version.                   *
+ *                                                                         *
+ *   KouChat is distributed in the hope that it will be useful,            *
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of        *
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU      *
+ *   Lesser General Public License for more details.                       *
+ *                                                                         *
+ *   You should have received a copy of the GNU Lesser General Public      *
+ *   License along with KouChat.                                           *
+ *   If not, see <http://www.gnu.org/licenses/>.                           *
+ ***************************************************************************/
+
+package net.usikkert.kouchat.testclient;
+
+import net.usikkert.kouchat.util.Validate;
+
+/**
+ * The scenarios the {@link LoadGenerator} can replay.
+ *
+ * @author Christian Ihle
+ */
+public enum LoadScenario {
+
+    /** All the clients log on at the same time. Measures the time until every client sees all the users. */
+    LOGON_STORM("logon", Delivery.CONVERGENCE),
+
+    /** Every client sends chat messages to the main chat. Measures latency and loss for every receiver. */
+    CHAT_BURST("chat", Delivery.ALL_USERS),
+
+    /** Every client changes nick name. Measures the time until every client sees all the new nick names. */
+    NICK_CHANGES("nick", Delivery.CONVERGENCE),
+
+    /** Every client starts and stops writing. Only measures the rate the indicators are sent. */
+    TYPING("typing", Delivery.NONE),
+
+    /** Every client offers a file to the next client, which rejects it. Measures latency and loss of the offers. */
+    FILE_OFFERS("files", Delivery.ONE_USER);
+
+    /**
+     * What the scenario measures on the receiving side.
+     */
+    public enum Delivery {
+
+        /** Nothing is measured on the receiving side. */
+        NONE,
+
+        /** Every message should arrive at all the other clients. */
+        ALL_USERS,
+
+        /** Every message should arrive at one other client. */
+        ONE_USER,
+
+        /** The clients should agree on the same state. */
+        CONVERGENCE
+    }
+
+    private final String name;
+    private final Delivery delivery;
+
+    LoadScenario(final String name, final Delivery delivery) {
+        this.name = name;
+        this.delivery = delivery;
+    }
+
+    /**
+     * Gets the name used for the scenario in the options of the load generator.
+     *
+     * @return The name of the scenario.
+     */
+    public String getName() {
+        return name;
+    }
+
+    public Delivery getDelivery() {
+        return delivery;
+    }
+
+    /**
+     * Finds the scenario with the name.
+     *
+     * @param name The name of the scenario.
+     * @return The scenario.
+     * @throws IllegalArgumentException If there is no scenario with the name.
+     */
+    public static LoadScenario fromName(final String name) {
+        Validate.notEmpty(name, "Scenario name can not be empty");
+
+        for (final LoadScenario scenario : values()) {
+            if (scenario.name.equals(name.trim())) {
+                return scenario;
+            }
+        }
+
+        throw new IllegalArgumentException("Unknown scenario: " + name);
+    }
+}
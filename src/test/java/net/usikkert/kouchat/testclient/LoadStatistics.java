@@ -0,0 +1,315 @@
+
+/***************************************************************************
+ *   Copyright 2006-2018 by Christian Ihle                                 *
+ *   contact@kouchat.net                                                   *
+ *                                                                         *
+ *   This file is part of KouChat.                                         *
+ *                                                                         *
+ *   KouChat is free software; you can redistribute it and/or modify       *
+ *   it under the terms of the GNU Lesser General Public License as        *
+ *   published by the Free Software Foundation, either version 3 of        *
+ *   the License, or (at your option) any later version.                   *
+ *                                                                         *
+ *   KouChat is distributed in the hope that it will be useful,            *
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of        *
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU      *
+ *   Lesser General Public License for more details.                       *
+ *                                                                         *
+ *   You should have received a copy of the GNU Lesser General Public      *
+ *   License along with KouChat.                                           *
+ *   If not, see <http://www.gnu.org/licenses/>.                           *
+ ***************************************************************************/
+
+package net.usikkert.kouchat.testclient;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import net.usikkert.kouchat.util.Validate;
+
+/**
+ * The results of one {@link LoadScenario}, seen from the clients running in this JVM.
+ *
+ * <p>The expected number of deliveries is based on the highest sequence number sent or seen
+ * from each sender, so messages from clients in other JVMs are counted as well. A message lost
+ * by every local client after the last one seen from a remote sender is not detected.</p>
+ *
+ * @author Christian Ihle
+ */
+public class LoadStatistics {
+
+    private final LoadScenario scenario;
+    private final int localClients;
+
+    /** The highest sequence number sent by each local sender. */
+    private final Map<Integer, Integer> sent;
+
+    /** The highest sequence number received from each sender. */
+    private final Map<Integer, Integer> seen;
+
+    private long[] latencies;
+    private int received;
+    private int sentMessages;
+
+    private long startTime;
+    private long stopTime;
+    private long lastReceivedTime;
+    private boolean converged;
+
+    /**
+     * Constructor.
+     *
+     * @param scenario The scenario the statistics are for.
+     * @param localClients The number of clients running in this JVM.
+     */
+    public LoadStatistics(final LoadScenario scenario, final int localClients) {
+        Validate.notNull(scenario, "Scenario can not be null");
+
+        if (localClients < 1) {
+            throw new IllegalArgumentException("Local clients must be larger than 0");
+        }
+
+        this.scenario = scenario;
+        this.localClients = localClients;
+
+        sent = new HashMap<>();
+        seen = new HashMap<>();
+        latencies = new long[1024];
+    }
+
+    public LoadScenario getScenario() {
+        return scenario;
+    }
+
+    /**
+     * Starts measuring the elapsed time.
+     */
+    public synchronized void start() {
+        startTime = System.nanoTime();
+        stopTime = 0;
+    }
+
+    /**
+     * Stops measuring the elapsed time.
+     */
+    public synchronized void stop() {
+        stopTime = System.nanoTime();
+    }
+
+    /**
+     * Gets the time from {@link #start()} until the last message arrived, for scenarios that measure deliveries.
+     * Otherwise the time until {@link #stop()}, or until now if not stopped.
+     *
+     * @return The elapsed time, in milliseconds.
+     */
+    public synchronized long getElapsedTime() {
+        final long end;
+
+        if (received > 0) {
+            end = lastReceivedTime;
+        } else if (stopTime != 0) {
+            end = stopTime;
+        } else {
+            end = System.nanoTime();
+        }
+
+        return (end - startTime) / 1000000;
+    }
+
+    /**
+     * Records a message sent by a local client.
+     *
+     * @param senderCode The user code of the sender.
+     * @param sequenceNumber The sequence number of the message from the sender.
+     */
+    public synchronized void recordSent(final int senderCode, final int sequenceNumber) {
+        sentMessages++;
+        updateHighest(sent, senderCode, sequenceNumber);
+    }
+
+    /**
+     * Records a message arriving at a local client.
+     *
+     * @param senderCode The user code of the sender.
+     * @param sequenceNumber The sequence number of the message from the sender.
+     * @param latency The time from the message was sent until it arrived, in microseconds.
+     */
+    public synchronized void recordReceived(final int senderCode, final int sequenceNumber, final long latency) {
+        if (received == latencies.length) {
+            latencies = Arrays.copyOf(latencies, latencies.length * 2);
+        }
+
+        latencies[received] = latency;
+        received++;
+        lastReceivedTime = System.nanoTime();
+        updateHighest(seen, senderCode, sequenceNumber);
+    }
+
+    public synchronized void setConverged(final boolean converged) {
+        this.converged = converged;
+    }
+
+    public synchronized boolean isConverged() {
+        return converged;
+    }
+
+    public synchronized int getSentMessages() {
+        return sentMessages;
+    }
+
+    public synchronized int getReceived() {
+        return received;
+    }
+
+    /**
+     * Gets the number of deliveries expected at the local clients.
+     *
+     * @return The expected deliveries, or <code>0</code> if the scenario does not measure deliveries.
+     */
+    public synchronized int getExpected() {
+        switch (scenario.getDelivery()) {
+            case ONE_USER:
+                return sentMessages;
+
+            case ALL_USERS:
+                int expected = 0;
+
+                for (final int senderCode : getSenders()) {
+                    final int highest = Math.max(getHighest(sent, senderCode), getHighest(seen, senderCode));
+                    final int receivers = sent.containsKey(senderCode) ? localClients - 1 : localClients;
+                    expected += highest * receivers;
+                }
+
+                return expected;
+
+            default:
+                return 0;
+        }
+    }
+
+    /**
+     * Gets the number of deliveries that never arrived. Duplicates are not counted.
+     *
+     * @return The number of lost deliveries.
+     */
+    public synchronized int getLost() {
+        return Math.max(0, getExpected() - received);
+    }
+
+    /**
+     * Gets the percentage of the expected deliveries that never arrived.
+     *
+     * @return The lost deliveries, in percent.
+     */
+    public synchronized double getLossPercent() {
+        final int expected = getExpected();
+
+        if (expected == 0) {
+            return 0;
+        }
+
+        return getLost() * 100.0 / expected;
+    }
+
+    /**
+     * Gets the latency at a percentile of the received messages, using the nearest rank.
+     *
+     * @param percentile The percentile, from 0 to 100.
+     * @return The latency, in microseconds, or <code>-1</code> if nothing was received.
+     */
+    public synchronized long getLatencyPercentile(final double percentile) {
+        if (percentile < 0 || percentile > 100) {
+            throw new IllegalArgumentException("Percentile must be from 0 to 100");
+        }
+
+        if (received == 0) {
+            return -1;
+        }
+
+        final long[] sorted = Arrays.copyOf(latencies, received);
+        Arrays.sort(sorted);
+
+        final int rank = (int) Math.ceil(percentile / 100.0 * received);
+        return sorted[Math.max(rank, 1) - 1];
+    }
+
+    /**
+     * Gets the messages sent per second.
+     *
+     * @return The send rate.
+     */
+    public synchronized double getSendRate() {
+        return perSecond(sentMessages);
+    }
+
+    /**
+     * Gets the deliveries received per second.
+     *
+     * @return The receive rate.
+     */
+    public synchronized double getReceiveRate() {
+        return perSecond(received);
+    }
+
+    /**
+     * Creates a report of the results, one line per measurement.
+     *
+     * @return The report.
+     */
+    public synchronized String createReport() {
+        final StringBuilder report = new StringBuilder();
+
+        report.append(String.format("%s: %d ms, %d sent (%.1f/s)%n",
+                                    scenario.getName(), getElapsedTime(), sentMessages, getSendRate()));
+
+        switch (scenario.getDelivery()) {
+            case ALL_USERS:
+            case ONE_USER:
+                report.append(String.format("  delivered %d of %d (%.1f/s), lost %d (%.2f%%)%n",
+                                            received, getExpected(), getReceiveRate(), getLost(), getLossPercent()));
+                report.append(String.format("  latency ms: p50 %s, p90 %s, p99 %s, max %s%n",
+                                            formatLatency(50), formatLatency(90), formatLatency(99),
+                                            formatLatency(100)));
+                break;
+
+            case CONVERGENCE:
+                report.append(String.format(converged ? "  all clients agree%n"
+                                                      : "  clients did not agree before the timeout%n"));
+                break;
+
+            default:
+                break;
+        }
+
+        return report.toString();
+    }
+
+    private String formatLatency(final double percentile) {
+        final long latency = getLatencyPercentile(percentile);
+        return latency < 0 ? "-" : String.format("%.2f", latency / 1000.0);
+    }
+
+    private double perSecond(final int count) {
+        final long elapsedTime = getElapsedTime();
+        return elapsedTime > 0 ? count * 1000.0 / elapsedTime : 0;
+    }
+
+    private Iterable<Integer> getSenders() {
+        final Map<Integer, Integer> senders = new HashMap<>(seen);
+        senders.putAll(sent);
+
+        return senders.keySet();
+    }
+
+    private int getHighest(final Map<Integer, Integer> highest, final int senderCode) {
+        final Integer sequenceNumber = highest.get(senderCode);
+        return sequenceNumber != null ? sequenceNumber : 0;
+    }
+
+    private void updateHighest(final Map<Integer, Integer> highest, final int senderCode, final int sequenceNumber) {
+        if (sequenceNumber > getHighest(highest, senderCode)) {
+            highest.put(senderCode, sequenceNumber);
+        }
+    }
+}
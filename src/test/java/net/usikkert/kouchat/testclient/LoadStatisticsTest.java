@@ -0,0 +1,159 @@
+
+/***************************************************************************
+ *   Copyright 2006-2018 by Christian Ihle                                 *
+ *   contact@kouchat.net                                                   *
+ *                                                                         *
+ *   This file is part of KouChat.                                         *
+ *                                                                         *
+ *   KouChat is free software; you can redistribute it and/or modify       *
+ *   it under the terms of the GNU Lesser General Public License as        *
+ *   published by the Free Software Foundation, either version 3 of        *
+ *   the License, or (at your option) any later version.                   *
+ *                                                                         *
+ *   KouChat is distributed in the hope that it will be useful,            *
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of        *
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU      *
+ *   Lesser General Public License for more details.                       *
+ *                                                                         *
+ *   You should have received a copy of the GNU Lesser General Public      *
+ *   License along with KouChat.                                           *
+ *   If not, see <http://www.gnu.org/licenses/>.                           *
+ ***************************************************************************/
+
+package net.usikkert.kouchat.testclient;
+
+import static org.junit.Assert.*;
+
+import net.usikkert.kouchat.junit.ExpectedException;
+
+import org.junit.Rule;
+import org.junit.Test;
+
+/**
+ * Test of {@link LoadStatistics}.
+ *
+ * @author Christian Ihle
+ */
+@SuppressWarnings("HardCodedStringLiteral")
+public class LoadStatisticsTest {
+
+    @Rule
+    public ExpectedException expectedException = ExpectedException.none();
+
+    @Test
+    public void constructorShouldThrowExceptionIfScenarioIsNull() {
+        expectedException.expect(IllegalArgumentException.class);
+        expectedException.expectMessage("Scenario can not be null");
+
+        new LoadStatistics(null, 1);
+    }
+
+    @Test
+    public void constructorShouldThrowExceptionIfLocalClientsIsLessThanOne() {
+        expectedException.expect(IllegalArgumentException.class);
+        expectedException.expectMessage("Local clients must be larger than 0");
+
+        new LoadStatistics(LoadScenario.CHAT_BURST, 0);
+    }
+
+    @Test
+    public void getExpectedShouldCountAllOtherLocalClientsForLocalSenders() {
+        final LoadStatistics statistics = new LoadStatistics(LoadScenario.CHAT_BURST, 3);
+
+        statistics.recordSent(1, 1);
+        statistics.recordSent(1, 2);
+        statistics.recordSent(2, 1);
+
+        // 2 messages to 2 clients from the first, and 1 message to 2 clients from the second
+        assertEquals(6, statistics.getExpected());
+        assertEquals(6, statistics.getLost());
+        assertEquals(100.0, statistics.getLossPercent(), 0.0);
+    }
+
+    @Test
+    public void getExpectedShouldCountAllLocalClientsForRemoteSenders() {
+        final LoadStatistics statistics = new LoadStatistics(LoadScenario.CHAT_BURST, 3);
+
+        statistics.recordReceived(100, 2, 10);
+
+        // The first message from the remote sender is missing, but is still expected
+        assertEquals(6, statistics.getExpected());
+        assertEquals(5, statistics.getLost());
+    }
+
+    @Test
+    public void getExpectedShouldCountSentMessagesWhenDeliveredToOneUser() {
+        final LoadStatistics statistics = new LoadStatistics(LoadScenario.FILE_OFFERS, 3);
+
+        statistics.recordSent(1, 1);
+        statistics.recordSent(2, 1);
+        statistics.recordReceived(1, 1, 10);
+
+        assertEquals(2, statistics.getExpected());
+        assertEquals(1, statistics.getLost());
+        assertEquals(50.0, statistics.getLossPercent(), 0.0);
+    }
+
+    @Test
+    public void getExpectedShouldBeZeroWhenDeliveriesAreNotMeasured() {
+        final LoadStatistics statistics = new LoadStatistics(LoadScenario.TYPING, 3);
+
+        statistics.recordSent(1, 1);
+
+        assertEquals(0, statistics.getExpected());
+        assertEquals(0, statistics.getLost());
+        assertEquals(0.0, statistics.getLossPercent(), 0.0);
+    }
+
+    @Test
+    public void getLostShouldNotBeNegativeWhenAllMessagesArrived() {
+        final LoadStatistics statistics = new LoadStatistics(LoadScenario.CHAT_BURST, 2);
+
+        statistics.recordSent(1, 1);
+        statistics.recordReceived(1, 1, 10);
+        statistics.recordReceived(1, 1, 10);
+
+        assertEquals(1, statistics.getExpected());
+        assertEquals(0, statistics.getLost());
+    }
+
+    @Test
+    public void getLatencyPercentileShouldUseNearestRank() {
+        final LoadStatistics statistics = new LoadStatistics(LoadScenario.CHAT_BURST, 2);
+
+        for (int i = 2000; i > 0; i--) {
+            statistics.recordReceived(1, i, i);
+        }
+
+        assertEquals(1, statistics.getLatencyPercentile(0));
+        assertEquals(1000, statistics.getLatencyPercentile(50));
+        assertEquals(1980, statistics.getLatencyPercentile(99));
+        assertEquals(2000, statistics.getLatencyPercentile(100));
+    }
+
+    @Test
+    public void getLatencyPercentileShouldReturnMinusOneWhenNothingIsReceived() {
+        final LoadStatistics statistics = new LoadStatistics(LoadScenario.CHAT_BURST, 2);
+
+        assertEquals(-1, statistics.getLatencyPercentile(50));
+    }
+
+    @Test
+    public void getLatencyPercentileShouldThrowExceptionIfPercentileIsAbove100() {
+        final LoadStatistics statistics = new LoadStatistics(LoadScenario.CHAT_BURST, 2);
+
+        expectedException.expect(IllegalArgumentException.class);
+        expectedException.expectMessage("Percentile must be from 0 to 100");
+
+        statistics.getLatencyPercentile(101);
+    }
+
+    @Test
+    public void createReportShouldIncludeScenario() {
+        final LoadStatistics statistics = new LoadStatistics(LoadScenario.CHAT_BURST, 2);
+        statistics.start();
+        statistics.stop();
+
+        assertTrue(statistics.createReport().contains("chat"));
+    }
+}
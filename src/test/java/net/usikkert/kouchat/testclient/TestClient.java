@@ -23,6 +23,8 @@
 package net.usikkert.kouchat.testclient;
 
 import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.InputStream;
 
 import net.usikkert.kouchat.message.CoreMessages;
 import net.usikkert.kouchat.misc.CommandException;
@@ -35,6 +37,7 @@ import net.usikkert.kouchat.net.FileReceiver;
 import net.usikkert.kouchat.net.FileSender;
 import net.usikkert.kouchat.net.FileToSend;
 import net.usikkert.kouchat.net.TransferList;
+import net.usikkert.kouchat.net.transport.Transport;
 import net.usikkert.kouchat.settings.PropertyFileSettingsSaver;
 import net.usikkert.kouchat.settings.Settings;
 import net.usikkert.kouchat.util.TestUtils;
@@ -42,6 +45,7 @@ import net.usikkert.kouchat.util.Tools;
 import net.usikkert.kouchat.util.Validate;
 
 import org.jetbrains.annotations.NonNls;
+import org.jetbrains.annotations.Nullable;
 
 /**
  * A class that can be used for simulating a KouChat client in tests.
@@ -66,6 +70,19 @@ public class TestClient {
     }
 
     public TestClient(@NonNls final String nickName, final int userCode, final int ownColor) {
+        this(nickName, userCode, ownColor, null);
+    }
+
+    /**
+     * Creates a test client using the specified transport instead of the network sockets.
+     *
+     * @param nickName The nick name to use.
+     * @param userCode The user code to use, or <code>0</code> for a random user code.
+     * @param ownColor The color to use for own messages, or <code>0</code> for the default color.
+     * @param transport The transport to use, or <code>null</code> to use the network sockets.
+     */
+    public TestClient(@NonNls final String nickName, final int userCode, final int ownColor,
+                      @Nullable final Transport transport) {
         final Settings settings = new Settings();
         settings.setClient("Test");
 
@@ -85,7 +102,7 @@ public class TestClient {
         final CoreMessages coreMessages = new CoreMessages();
         final PropertyFileSettingsSaver settingsSaver =
                 new PropertyFileSettingsSaver(settings, coreMessages, errorHandler);
-        controller = new Controller(ui, settings, settingsSaver, coreMessages, errorHandler);
+        controller = new Controller(ui, settings, settingsSaver, coreMessages, errorHandler, transport);
         transferList = controller.getTransferList();
         commandParser = new CommandParser(controller, ui, settings, coreMessages);
     }
@@ -101,13 +118,74 @@ public class TestClient {
         new TestClientTelnetServer(ui, controller, commandParser);
     }
 
+    public String getNickName() {
+        return me.getNick();
+    }
+
     public void logon() {
+        startLogon();
+        waitForConnection();
+
+        Tools.sleep(100);
+    }
+
+    /**
+     * Starts logging on, without waiting for the connection. Use {@link #isLoggedOn()} to check when done.
+     */
+    public void startLogon() {
         controller.start();
         controller.logOn();
+    }
 
-        waitForConnection();
+    public boolean isLoggedOn() {
+        return controller.isLoggedOn();
+    }
 
-        Tools.sleep(100);
+    /**
+     * Gets the number of users this client knows about, including itself.
+     *
+     * @return The number of users.
+     */
+    public int getNumberOfUsers() {
+        return controller.getUserList().size();
+    }
+
+    /**
+     * Checks if this client knows about a user with the specified nick name.
+     *
+     * @param nickName The nick name of the user.
+     * @return If the user is known.
+     */
+    public boolean knowsUser(final String nickName) {
+        return controller.getUser(nickName) != null;
+    }
+
+    /**
+     * Sets a listener for the messages and file offers arriving in this client.
+     *
+     * @param messageListener The listener to notify.
+     */
+    public void setMessageListener(final TestClientMessageListener messageListener) {
+        ui.setMessageListener(messageListener);
+    }
+
+    /**
+     * Sets if the messages should be stored, so they can be checked with {@link #gotMessage(User, String)}.
+     *
+     * @param recordMessages If the messages should be stored.
+     */
+    public void setRecordMessages(final boolean recordMessages) {
+        ui.setRecordMessages(recordMessages);
+    }
+
+    /**
+     * Sets if file offers should wait for {@link #acceptFile(User, String, File)} or
+     * {@link #rejectFile(User, String)}, or be rejected right away.
+     *
+     * @param acceptFileOffers If file offers should wait for a decision.
+     */
+    public void setAcceptFileOffers(final boolean acceptFileOffers) {
+        ui.setAcceptFileOffers(acceptFileOffers);
     }
 
     public void logoff() {
@@ -321,6 +399,30 @@ public class TestClient {
         }
     }
 
+    /**
+     * Offers to send a file with the given name and size to the given user, without reading a real file.
+     * The file can only be rejected by the other user.
+     *
+     * @param user The user to offer the file to.
+     * @param fileName The name of the file.
+     * @param size The size of the file, in bytes.
+     */
+    public void offerFile(final User user, final String fileName, final long size) {
+        final User localUser = controller.getUser(user.getCode()); // Because user might be from another context
+        final FileToSend file = new FileToSend(new FileToSend.InputStreamOpener() {
+            @Override
+            public InputStream open() throws FileNotFoundException {
+                throw new FileNotFoundException("Offered files can not be sent: " + fileName);
+            }
+        }, fileName, size);
+
+        try {
+            commandParser.sendFile(localUser, file);
+        } catch (final CommandException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
     /**
      * Cancels sending the given file to the given user.
      *
@@ -350,6 +452,17 @@ public class TestClient {
         return user;
     }
 
+    /**
+     * Finds one of the users this client knows about.
+     *
+     * @param userCode The unique code of the user to find.
+     * @return The user, or <code>null</code> if not found.
+     */
+    @Nullable
+    public User findUser(final int userCode) {
+        return controller.getUser(userCode);
+    }
+
     private FileReceiver findFileReceiver(final User user, final String fileName) {
         final User localUser = controller.getUser(user.getCode()); // Because user might be from another context
 
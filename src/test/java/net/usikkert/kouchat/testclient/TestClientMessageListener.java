@@ -0,0 +1,49 @@
+
+/***************************************************************************
+ *   Copyright 2006-2018 by Christian Ihle                                 *
+ *   contact@kouchat.net                                                   *
+ *                                                                         *
+ *   This file is part of KouChat.                                         *
+ *                                                                         *
+ *   KouChat is free software; you can redistribute it and/or modify       *
+ *   it under the terms of the GNU Lesser General Public License as        *
+ *   published by the Free Software Foundation, either version 3 of        *
+ *   the License, or (at your option) any later version.                   *
+ *                                                                         *
+ *   KouChat is distributed in the hope that it will be useful,            *
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of        *
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU      *
+ *   Lesser General Public License for more details.                       *
+ *                                                                         *
+ *   You should have received a copy of the GNU Lesser General Public      *
+ *   License along with KouChat.                                           *
+ *   If not, see <http://www.gnu.org/licenses/>.                           *
+ ***************************************************************************/
+
+package net.usikkert.kouchat.testclient;
+
+import net.usikkert.kouchat.misc.User;
+
+/**
+ * Listener for messages and file offers arriving in a test client, without storing them.
+ *
+ * @author Christian Ihle
+ */
+public interface TestClientMessageListener {
+
+    /**
+     * Called when a message arrives in the main chat.
+     *
+     * @param user The user who sent the message.
+     * @param message The message.
+     */
+    void messageArrived(User user, String message);
+
+    /**
+     * Called when a user offers to send a file.
+     *
+     * @param nickName The nick name of the user offering the file.
+     * @param fileName The name of the file.
+     */
+    void fileOfferArrived(String nickName, String fileName);
+}
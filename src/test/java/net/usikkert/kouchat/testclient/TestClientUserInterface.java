@@ -50,6 +50,9 @@ public class TestClientUserInterface implements UserInterface, ChatWindow {
     private final ErrorHandler errorHandler;
 
     private BufferedWriter writer;
+    private TestClientMessageListener messageListener;
+    private boolean recordMessages = true;
+    private boolean acceptFileOffers = true;
 
     public TestClientUserInterface(final Settings settings, final ErrorHandler errorHandler) {
         this.settings = settings;
@@ -60,7 +63,11 @@ public class TestClientUserInterface implements UserInterface, ChatWindow {
 
     @Override
     public boolean askFileSave(final String user, final String fileName, final String size) {
-        return true;
+        if (messageListener != null) {
+            messageListener.fileOfferArrived(user, fileName);
+        }
+
+        return acceptFileOffers;
     }
 
     @Override
@@ -98,7 +105,9 @@ public class TestClientUserInterface implements UserInterface, ChatWindow {
 
     @Override
     public void notifyMessageArrived(final User user, final String message) {
-
+        if (messageListener != null) {
+            messageListener.messageArrived(user, message);
+        }
     }
 
     @Override
@@ -139,7 +148,9 @@ public class TestClientUserInterface implements UserInterface, ChatWindow {
 
     @Override
     public void appendToChat(final String message, final int color) {
-        messageReceiver.addMessage(message, color);
+        if (recordMessages) {
+            messageReceiver.addMessage(message, color);
+        }
 
         if (writer != null) {
             sendMessage(message);
@@ -154,6 +165,29 @@ public class TestClientUserInterface implements UserInterface, ChatWindow {
         return messageReceiver.getColorOfMessage(user.getNick(), message);
     }
 
+    public void setMessageListener(final TestClientMessageListener messageListener) {
+        this.messageListener = messageListener;
+    }
+
+    /**
+     * Sets if the messages should be stored, so they can be checked later. Turned off
+     * when running many clients, to avoid filling the heap.
+     *
+     * @param recordMessages If the messages should be stored.
+     */
+    public void setRecordMessages(final boolean recordMessages) {
+        this.recordMessages = recordMessages;
+    }
+
+    /**
+     * Sets if file offers should be shown for the client to accept or reject, or rejected right away.
+     *
+     * @param acceptFileOffers If file offers should be shown.
+     */
+    public void setAcceptFileOffers(final boolean acceptFileOffers) {
+        this.acceptFileOffers = acceptFileOffers;
+    }
+
     public void setWriter(final BufferedWriter writer) {
         this.writer = writer;
 
@@ -0,0 +1,232 @@
+
+/***************************************************************************
+ *   Copyright 2006-2018 by Christian Ihle                                 *
+ *   contact@kouchat.net                                                   *
+ *                                                                         *
+ *   This file is part of KouChat.                                         *
+ *                                                                         *
+ *   KouChat is free software; you can redistribute it and/or modify       *
+ *   it under the terms of the GNU Lesser General Public License as        *
+ *   published by the Free Software Foundation, either version 3 of        *
+ *   the License, or (at your option) any later version.                   *
+ *                                                                         *
+ *   KouChat is distributed in the hope that it will be useful,            *
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of        *
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU      *
+ *   Lesser General Public License for more details.                       *
+ *                                                                         *
+ *   You should have received a copy of the GNU Lesser General Public      *
+ *   License along with KouChat.                                           *
+ *   If not, see <http://www.gnu.org/licenses/>.                           *
+ ***************************************************************************/
+
+package net.usikkert.kouchat.util;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import net.usikkert.kouchat.junit.ExpectedException;
+import net.usikkert.kouchat.util.BoundedThreadPool.RejectionPolicy;
+
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+
+/**
+ * Test of {@link BoundedThreadPool}.
+ *
+ * @author Christian Ihle
+ */
+@SuppressWarnings("HardCodedStringLiteral")
+public class BoundedThreadPoolTest {
+
+    @Rule
+    public ExpectedException expectedException = ExpectedException.none();
+
+    private final CountDownLatch releaseLatch = new CountDownLatch(1);
+
+    private BoundedThreadPool pool;
+
+    @After
+    public void tearDown() {
+        releaseLatch.countDown();
+
+        if (pool != null) {
+            pool.shutdownNow();
+        }
+    }
+
+    @Test
+    public void constructorShouldThrowExceptionIfNameIsEmpty() {
+        expectedException.expect(IllegalArgumentException.class);
+        expectedException.expectMessage("Name can not be empty");
+
+        new BoundedThreadPool("", 1, 1, RejectionPolicy.DISCARD);
+    }
+
+    @Test
+    public void constructorShouldThrowExceptionIfRejectionPolicyIsNull() {
+        expectedException.expect(IllegalArgumentException.class);
+        expectedException.expectMessage("Rejection policy can not be null");
+
+        new BoundedThreadPool("Test", 1, 1, null);
+    }
+
+    @Test
+    public void constructorShouldSetLimits() {
+        pool = new BoundedThreadPool("Test", 3, 10, RejectionPolicy.DISCARD);
+
+        assertEquals("Test", pool.getName());
+        assertEquals(3, pool.getMaximumPoolSize());
+        assertEquals(10, pool.getQueueCapacity());
+        assertEquals(0, pool.getPoolSize());
+        assertTrue(pool.allowsCoreThreadTimeOut());
+    }
+
+    @Test
+    public void executeShouldRunTaskInNamedThread() throws InterruptedException {
+        pool = new BoundedThreadPool("Test", 1, 1, RejectionPolicy.DISCARD);
+        final String[] threadName = new String[1];
+        final CountDownLatch doneLatch = new CountDownLatch(1);
+
+        pool.execute(new Runnable() {
+            @Override
+            public void run() {
+                threadName[0] = Thread.currentThread().getName();
+                doneLatch.countDown();
+            }
+        });
+
+        assertTrue(doneLatch.await(5, TimeUnit.SECONDS));
+        assertEquals("Test-1", threadName[0]);
+    }
+
+    @Test
+    public void executeShouldQueueTasksWhenAllThreadsAreBusy() throws InterruptedException {
+        pool = new BoundedThreadPool("Test", 1, 2, RejectionPolicy.DISCARD);
+        final CountDownLatch startedLatch = new CountDownLatch(1);
+
+        pool.execute(createBlockingTask(startedLatch));
+        assertTrue(startedLatch.await(5, TimeUnit.SECONDS));
+
+        pool.execute(mock(Runnable.class));
+        pool.execute(mock(Runnable.class));
+
+        assertEquals(1, pool.getActiveCount());
+        assertEquals(2, pool.getQueuedTaskCount());
+        assertEquals(0, pool.getRejectedTaskCount());
+    }
+
+    @Test
+    public void executeShouldDiscardAndCountTaskWhenFullAndPolicyIsDiscard() throws InterruptedException {
+        pool = new BoundedThreadPool("Test", 1, 1, RejectionPolicy.DISCARD);
+        final CountDownLatch startedLatch = new CountDownLatch(1);
+        final Runnable rejectedTask = mock(Runnable.class);
+
+        pool.execute(createBlockingTask(startedLatch));
+        assertTrue(startedLatch.await(5, TimeUnit.SECONDS));
+        pool.execute(mock(Runnable.class));
+
+        pool.execute(rejectedTask);
+
+        verifyZeroInteractions(rejectedTask);
+        assertEquals(1, pool.getRejectedTaskCount());
+        assertEquals(1, pool.getQueuedTaskCount());
+    }
+
+    @Test
+    public void executeShouldRunTaskInCallingThreadWhenFullAndPolicyIsCallerRuns() throws InterruptedException {
+        pool = new BoundedThreadPool("Test", 1, 1, RejectionPolicy.CALLER_RUNS);
+        final CountDownLatch startedLatch = new CountDownLatch(1);
+        final Runnable rejectedTask = mock(Runnable.class);
+
+        pool.execute(createBlockingTask(startedLatch));
+        assertTrue(startedLatch.await(5, TimeUnit.SECONDS));
+        pool.execute(mock(Runnable.class));
+
+        pool.execute(rejectedTask);
+
+        verify(rejectedTask).run();
+        assertEquals(1, pool.getRejectedTaskCount());
+    }
+
+    @Test
+    public void executeShouldThrowExceptionWhenFullAndPolicyIsAbort() throws InterruptedException {
+        pool = new BoundedThreadPool("Test", 1, 1, RejectionPolicy.ABORT);
+        final CountDownLatch startedLatch = new CountDownLatch(1);
+        final Runnable rejectedTask = mock(Runnable.class);
+
+        pool.execute(createBlockingTask(startedLatch));
+        assertTrue(startedLatch.await(5, TimeUnit.SECONDS));
+        pool.execute(mock(Runnable.class));
+
+        try {
+            pool.execute(rejectedTask);
+            fail("Should have been rejected");
+        }
+
+        catch (final RejectedExecutionException e) {
+            assertEquals("Pool Test is full", e.getMessage());
+        }
+
+        verifyZeroInteractions(rejectedTask);
+        assertEquals(1, pool.getRejectedTaskCount());
+    }
+
+    @Test
+    public void executeShouldThrowExceptionAfterShutdownWhenPolicyIsAbort() {
+        pool = new BoundedThreadPool("Test", 1, 1, RejectionPolicy.ABORT);
+
+        pool.shutdown();
+
+        expectedException.expect(RejectedExecutionException.class);
+        expectedException.expectMessage("Pool Test is shut down");
+
+        pool.execute(mock(Runnable.class));
+    }
+
+    @Test
+    public void executeShouldNotRunTaskAfterShutdown() {
+        pool = new BoundedThreadPool("Test", 1, 1, RejectionPolicy.CALLER_RUNS);
+        final Runnable task = mock(Runnable.class);
+
+        pool.shutdown();
+        pool.execute(task);
+
+        verifyZeroInteractions(task);
+    }
+
+    @Test
+    public void getCompletedTaskCountShouldCountFinishedTasks() throws InterruptedException {
+        pool = new BoundedThreadPool("Test", 2, 1, RejectionPolicy.DISCARD);
+
+        pool.execute(mock(Runnable.class));
+        pool.execute(mock(Runnable.class));
+
+        pool.shutdown();
+        assertTrue(pool.awaitTermination(5, TimeUnit.SECONDS));
+
+        assertEquals(2, pool.getCompletedTaskCount());
+    }
+
+    private Runnable createBlockingTask(final CountDownLatch startedLatch) {
+        return new Runnable() {
+            @Override
+            public void run() {
+                startedLatch.countDown();
+
+                try {
+                    releaseLatch.await();
+                }
+
+                catch (final InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        };
+    }
+}
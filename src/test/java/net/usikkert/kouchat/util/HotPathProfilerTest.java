@@ -0,0 +1,130 @@
+
+/***************************************************************************
+ *   Copyright 2006-2018 by Christian Ihle                                 *
+ *   contact@kouchat.net                                                   *
+ *                                                                         *
+ *   This file is part of KouChat.                                         *
+ *                                                                         *
+ *   KouChat is free software; you can redistribute it and/or modify       *
+ *   it under the terms of the GNU Lesser General Public License as        *
+ *   published by the Free Software Foundation, either version 3 of        *
+ *   the License, or (at your option) any later version.                   *
+ *                                                                         *
+ *   KouChat is distributed in the hope that it will be useful,            *
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of        *
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU      *
+ *   Lesser General Public License for more details.                       *
+ *                                                                         *
+ *   You should have received a copy of the GNU Lesser General Public      *
+ *   License along with KouChat.                                           *
+ *   If not, see <http://www.gnu.org/licenses/>.                           *
+ ***************************************************************************/
+
+package net.usikkert.kouchat.util;
+
+import static org.junit.Assert.*;
+
+import java.util.concurrent.TimeUnit;
+
+import net.usikkert.kouchat.util.HotPathProfiler.HotPath;
+import net.usikkert.kouchat.util.HotPathProfiler.Measurement;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Test of {@link HotPathProfiler}.
+ *
+ * @author Christian Ihle
+ */
+@SuppressWarnings("HardCodedStringLiteral")
+public class HotPathProfilerTest {
+
+    @Before
+    public void setUp() {
+        HotPathProfiler.reset();
+    }
+
+    @After
+    public void tearDown() {
+        HotPathProfiler.stopProfiling();
+        HotPathProfiler.reset();
+    }
+
+    @Test
+    public void profilingShouldBeOffByDefault() {
+        assertFalse(HotPathProfiler.isProfiling());
+        assertEquals(HotPathProfiler.NOT_STARTED, HotPathProfiler.start());
+    }
+
+    @Test
+    public void endShouldNotRecordAnythingWhenNotStarted() {
+        HotPathProfiler.end(HotPath.MESSAGE_PARSE, HotPathProfiler.start());
+
+        assertEquals(0, HotPathProfiler.getMeasurement(HotPath.MESSAGE_PARSE).getCount());
+    }
+
+    @Test
+    public void endShouldRecordCallsWhenProfiling() {
+        HotPathProfiler.startProfiling();
+        assertTrue(HotPathProfiler.isProfiling());
+
+        HotPathProfiler.end(HotPath.MESSAGE_PARSE, HotPathProfiler.start());
+        HotPathProfiler.end(HotPath.MESSAGE_PARSE, HotPathProfiler.start());
+
+        final Measurement measurement = HotPathProfiler.getMeasurement(HotPath.MESSAGE_PARSE);
+        assertSame(HotPath.MESSAGE_PARSE, measurement.getHotPath());
+        assertEquals(2, measurement.getCount());
+        assertTrue(measurement.getMaxTime() <= measurement.getTotalTime());
+        assertEquals(measurement.getTotalTime() / 2, measurement.getAverageTime());
+        assertEquals(0, measurement.getSlowCount());
+        assertEquals(0, HotPathProfiler.getMeasurement(HotPath.TCP_RECEIVE).getCount());
+    }
+
+    @Test
+    public void endShouldCountSlowCalls() {
+        HotPathProfiler.startProfiling();
+        final long slowTime = HotPath.USER_LIST_CHANGE.getSlowTime();
+
+        HotPathProfiler.end(HotPath.USER_LIST_CHANGE, System.nanoTime() - slowTime * 2);
+        HotPathProfiler.end(HotPath.USER_LIST_CHANGE, System.nanoTime());
+
+        final Measurement measurement = HotPathProfiler.getMeasurement(HotPath.USER_LIST_CHANGE);
+        assertEquals(2, measurement.getCount());
+        assertEquals(1, measurement.getSlowCount());
+        assertTrue(measurement.getMaxTime() >= slowTime * 2);
+    }
+
+    @Test
+    public void stopProfilingShouldKeepMeasurements() {
+        HotPathProfiler.startProfiling();
+        HotPathProfiler.end(HotPath.CHAT_LOG_APPEND, HotPathProfiler.start());
+
+        HotPathProfiler.stopProfiling();
+        HotPathProfiler.end(HotPath.CHAT_LOG_APPEND, HotPathProfiler.start());
+
+        assertEquals(1, HotPathProfiler.getMeasurement(HotPath.CHAT_LOG_APPEND).getCount());
+    }
+
+    @Test
+    public void resetShouldRemoveMeasurements() {
+        HotPathProfiler.startProfiling();
+        HotPathProfiler.end(HotPath.CHAT_LOG_APPEND, System.nanoTime() - TimeUnit.SECONDS.toNanos(1));
+
+        HotPathProfiler.reset();
+
+        final Measurement measurement = HotPathProfiler.getMeasurement(HotPath.CHAT_LOG_APPEND);
+        assertEquals(0, measurement.getCount());
+        assertEquals(0, measurement.getTotalTime());
+        assertEquals(0, measurement.getMaxTime());
+        assertEquals(0, measurement.getSlowCount());
+        assertEquals(0, measurement.getAverageTime());
+    }
+
+    @Test
+    public void getSlowTimeShouldBeInNanoseconds() {
+        assertEquals(TimeUnit.MILLISECONDS.toNanos(10), HotPath.MESSAGE_PARSE.getSlowTime());
+        assertEquals(TimeUnit.MILLISECONDS.toNanos(50), HotPath.FILE_SEND_CHUNK.getSlowTime());
+    }
+}
@@ -0,0 +1,170 @@
+
+/***************************************************************************
+ *   Copyright 2006-2018 by Christian Ihle                                 *
+ *   contact@kouchat.net                                                   *
+ *                                                                         *
+ *   This file is part of KouChat.                                         *
+ *                                                                         *
+ *   KouChat is free software; you can redistribute it and/or modify       *
+ *   it under the terms of the GNU Lesser General Public License as        *
+ *   published by the Free Software Foundation, either version 3 of        *
+ *   the License, or (at your option) any later version.                   *
+ *                                                                         *
+ *   KouChat is distributed in the hope that it will be useful,            *
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of        *
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU      *
+ *   Lesser General Public License for more details.                       *
+ *                                                                         *
+ *   You should have received a copy of the GNU Lesser General Public      *
+ *   License along with KouChat.                                           *
+ *   If not, see <http://www.gnu.org/licenses/>.                           *
+ ***************************************************************************/
+
+package net.usikkert.kouchat.util;
+
+import static org.junit.Assert.*;
+
+import net.usikkert.kouchat.junit.ExpectedException;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+
+/**
+ * Test of {@link IntObjectMap}.
+ *
+ * @author Christian Ihle
+ */
+@SuppressWarnings("HardCodedStringLiteral")
+public class IntObjectMapTest {
+
+    @Rule
+    public ExpectedException expectedException = ExpectedException.none();
+
+    private IntObjectMap<String> map;
+
+    @Before
+    public void setUp() {
+        map = new IntObjectMap<>();
+    }
+
+    @Test
+    public void newMapShouldBeEmpty() {
+        assertTrue(map.isEmpty());
+        assertEquals(0, map.size());
+        assertNull(map.get(0));
+    }
+
+    @Test
+    public void putShouldThrowExceptionIfValueIsNull() {
+        expectedException.expect(IllegalArgumentException.class);
+        expectedException.expectMessage("Value can not be null");
+
+        map.put(1, null);
+    }
+
+    @Test
+    public void putShouldAddTheValue() {
+        assertNull(map.put(12345678, "Test"));
+
+        assertEquals("Test", map.get(12345678));
+        assertTrue(map.containsKey(12345678));
+        assertEquals(1, map.size());
+        assertFalse(map.isEmpty());
+    }
+
+    @Test
+    public void putShouldSupportZeroAndNegativeKeys() {
+        map.put(0, "Zero");
+        map.put(-1, "Minus one");
+        map.put(Integer.MIN_VALUE, "Min");
+
+        assertEquals("Zero", map.get(0));
+        assertEquals("Minus one", map.get(-1));
+        assertEquals("Min", map.get(Integer.MIN_VALUE));
+        assertEquals(3, map.size());
+    }
+
+    @Test
+    public void putShouldReplaceTheValueOfAnExistingKey() {
+        map.put(10, "First");
+
+        assertEquals("First", map.put(10, "Second"));
+
+        assertEquals("Second", map.get(10));
+        assertEquals(1, map.size());
+    }
+
+    @Test
+    public void putShouldKeepAllValuesWhenGrowing() {
+        for (int i = 0; i < 1000; i++) {
+            map.put(i * 16, "Value" + i);
+        }
+
+        assertEquals(1000, map.size());
+
+        for (int i = 0; i < 1000; i++) {
+            assertEquals("Value" + i, map.get(i * 16));
+        }
+
+        assertNull(map.get(1000 * 16));
+    }
+
+    @Test
+    public void removeShouldReturnNullIfKeyDoesNotExist() {
+        map.put(1, "One");
+
+        assertNull(map.remove(2));
+        assertEquals(1, map.size());
+    }
+
+    @Test
+    public void removeShouldRemoveTheKeyAndReturnTheValue() {
+        map.put(1, "One");
+        map.put(2, "Two");
+
+        assertEquals("One", map.remove(1));
+
+        assertNull(map.get(1));
+        assertFalse(map.containsKey(1));
+        assertEquals("Two", map.get(2));
+        assertEquals(1, map.size());
+    }
+
+    @Test
+    public void removeShouldKeepTheOtherKeysReachable() {
+        for (int i = 0; i < 500; i++) {
+            map.put(i * 7919, "Value" + i);
+        }
+
+        for (int i = 0; i < 500; i += 2) {
+            assertEquals("Value" + i, map.remove(i * 7919));
+        }
+
+        assertEquals(250, map.size());
+
+        for (int i = 0; i < 500; i++) {
+            if (i % 2 == 0) {
+                assertNull(map.get(i * 7919));
+            }
+            else {
+                assertEquals("Value" + i, map.get(i * 7919));
+            }
+        }
+    }
+
+    @Test
+    public void clearShouldRemoveAllKeys() {
+        map.put(1, "One");
+        map.put(2, "Two");
+
+        map.clear();
+
+        assertTrue(map.isEmpty());
+        assertNull(map.get(1));
+        assertNull(map.get(2));
+
+        map.put(1, "New one");
+        assertEquals("New one", map.get(1));
+    }
+}
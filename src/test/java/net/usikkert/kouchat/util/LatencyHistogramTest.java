@@ -0,0 +1,147 @@
+
+/***************************************************************************
+ *   Copyright 2006-2018 by Christian Ihle                                 *
+ *   contact@kouchat.net                                                   *
+ *                                                                         *
+ *   This file is part of KouChat.                                         *
+ *                                                                         *
+ *   KouChat is free software; you can redistribute it and/or modify       *
+ *   it under the terms of the GNU Lesser General Public License as        *
+ *   published by the Free Software Foundation, either version 3 of        *
+ *   the License, or (at your option) any later version.                   *
+ *                                                                         *
+ *   KouChat is distributed in the hope that it will be useful,            *
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of        *
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU      *
+ *   Lesser General Public License for more details.                       *
+ *                                                                         *
+ *   You should have received a copy of the GNU Lesser General Public      *
+ *   License along with KouChat.                                           *
+ *   If not, see <http://www.gnu.org/licenses/>.                           *
+ ***************************************************************************/
+
+package net.usikkert.kouchat.util;
+
+import static org.junit.Assert.*;
+
+import net.usikkert.kouchat.junit.ExpectedException;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+
+/**
+ * Test of {@link LatencyHistogram}.
+ *
+ * @author Christian Ihle
+ */
+@SuppressWarnings("HardCodedStringLiteral")
+public class LatencyHistogramTest {
+
+    @Rule
+    public ExpectedException expectedException = ExpectedException.none();
+
+    private LatencyHistogram histogram;
+
+    @Before
+    public void setUp() {
+        histogram = new LatencyHistogram();
+    }
+
+    @Test
+    public void emptyHistogramShouldReturnZero() {
+        assertEquals(0, histogram.getCount());
+        assertEquals(0, histogram.getMax());
+        assertEquals(0, histogram.getMean(), 0.0);
+        assertEquals(0, histogram.getPercentile(50));
+        assertEquals(0, histogram.getPercentile(99));
+    }
+
+    @Test
+    public void smallValuesShouldBeExact() {
+        for (int i = 1; i <= 4; i++) {
+            histogram.record(i);
+        }
+
+        assertEquals(4, histogram.getCount());
+        assertEquals(4, histogram.getMax());
+        assertEquals(2.5, histogram.getMean(), 0.0);
+        assertEquals(1, histogram.getPercentile(0));
+        assertEquals(2, histogram.getPercentile(50));
+        assertEquals(3, histogram.getPercentile(75));
+        assertEquals(4, histogram.getPercentile(100));
+    }
+
+    @Test
+    public void percentilesShouldBeWithinTheBucketPrecision() {
+        for (int i = 1; i <= 10000; i++) {
+            histogram.record(i);
+        }
+
+        assertPercentile(5000, histogram.getPercentile(50));
+        assertPercentile(9000, histogram.getPercentile(90));
+        assertPercentile(9900, histogram.getPercentile(99));
+        assertEquals(10000, histogram.getPercentile(100));
+        assertEquals(10000, histogram.getMax());
+    }
+
+    @Test
+    public void percentileShouldNeverBeLargerThanMax() {
+        histogram.record(1000);
+
+        assertEquals(1000, histogram.getPercentile(50));
+        assertEquals(1000, histogram.getPercentile(99.9));
+    }
+
+    @Test
+    public void negativeValuesShouldBeRecordedAsZero() {
+        histogram.record(-5);
+
+        assertEquals(1, histogram.getCount());
+        assertEquals(0, histogram.getPercentile(50));
+        assertEquals(0, histogram.getMean(), 0.0);
+    }
+
+    @Test
+    public void largeValuesShouldBeSupported() {
+        histogram.record(Long.MAX_VALUE);
+
+        assertEquals(Long.MAX_VALUE, histogram.getMax());
+        assertEquals(Long.MAX_VALUE, histogram.getPercentile(50));
+    }
+
+    @Test
+    public void bucketShouldContainItsLastValue() {
+        for (int bucket = 0; bucket < 100; bucket++) {
+            final long end = LatencyHistogram.getBucketEnd(bucket);
+
+            assertEquals(bucket, LatencyHistogram.getBucket(end));
+            assertEquals(bucket + 1, LatencyHistogram.getBucket(end + 1));
+        }
+    }
+
+    @Test
+    public void resetShouldRemoveAllValues() {
+        histogram.record(10);
+        histogram.record(20);
+
+        histogram.reset();
+
+        assertEquals(0, histogram.getCount());
+        assertEquals(0, histogram.getMax());
+        assertEquals(0, histogram.getPercentile(50));
+    }
+
+    @Test
+    public void getPercentileShouldThrowExceptionIfPercentileIsTooLarge() {
+        expectedException.expect(IllegalArgumentException.class);
+        expectedException.expectMessage("Percentile must be between 0 and 100");
+
+        histogram.getPercentile(101);
+    }
+
+    private void assertPercentile(final long expected, final long actual) {
+        assertTrue("Expected about " + expected + ", but was " + actual,
+                   actual >= expected && actual <= expected * 1.125);
+    }
+}
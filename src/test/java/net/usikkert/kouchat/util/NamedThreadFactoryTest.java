@@ -0,0 +1,75 @@
+
+/***************************************************************************
+ *   Copyright 2006-2018 by Christian Ihle                                 *
+ *   contact@kouchat.net                                                   *
+ *                                                                         *
+ *   This file is part of KouChat.                                         *
+ *                                                                         *
+ *   KouChat is free software; you can redistribute it and/or modify       *
+ *   it under the terms of the GNU Lesser General Public License as        *
+ *   published by the Free Software Foundation, either version 3 of        *
+ *   the License, or (at your option) any later version.                   *
+ *                                                                         *
+ *   KouChat is distributed in the hope that it will be useful,            *
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of        *
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU      *
+ *   Lesser General Public License for more details.                       *
+ *                                                                         *
+ *   You should have received a copy of the GNU Lesser General Public      *
+ *   License along with KouChat.                                           *
+ *   If not, see <http://www.gnu.org/licenses/>.                           *
+ ***************************************************************************/
+
+package net.usikkert.kouchat.util;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+
+import net.usikkert.kouchat.junit.ExpectedException;
+
+import org.junit.Rule;
+import org.junit.Test;
+
+/**
+ * Test of {@link NamedThreadFactory}.
+ *
+ * @author Christian Ihle
+ */
+@SuppressWarnings("HardCodedStringLiteral")
+public class NamedThreadFactoryTest {
+
+    @Rule
+    public ExpectedException expectedException = ExpectedException.none();
+
+    @Test
+    public void constructorShouldThrowExceptionIfNameIsNull() {
+        expectedException.expect(IllegalArgumentException.class);
+        expectedException.expectMessage("Name can not be empty");
+
+        new NamedThreadFactory(null);
+    }
+
+    @Test
+    public void newThreadShouldCreateNumberedDaemonThreads() {
+        final NamedThreadFactory factory = new NamedThreadFactory("Worker");
+
+        final Thread thread1 = factory.newThread(mock(Runnable.class));
+        final Thread thread2 = factory.newThread(mock(Runnable.class));
+
+        assertEquals("Worker-1", thread1.getName());
+        assertEquals("Worker-2", thread2.getName());
+        assertTrue(thread1.isDaemon());
+        assertTrue(thread2.isDaemon());
+    }
+
+    @Test
+    public void newThreadShouldRunTheRunnable() throws InterruptedException {
+        final Runnable runnable = mock(Runnable.class);
+        final Thread thread = new NamedThreadFactory("Worker").newThread(runnable);
+
+        thread.start();
+        thread.join();
+
+        verify(runnable).run();
+    }
+}
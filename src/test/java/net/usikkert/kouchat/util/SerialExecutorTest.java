@@ -0,0 +1,158 @@
+
+/***************************************************************************
+ *   Copyright 2006-2018 by Christian Ihle                                 *
+ *   contact@kouchat.net                                                   *
+ *                                                                         *
+ *   This file is part of KouChat.                                         *
+ *                                                                         *
+ *   KouChat is free software; you can redistribute it and/or modify       *
+ *   it under the terms of the GNU Lesser General Public License as        *
+ *   published by the Free Software Foundation, either version 3 of        *
+ *   the License, or (at your option) any later version.                   *
+ *                                                                         *
+ *   KouChat is distributed in the hope that it will be useful,            *
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of        *
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU      *
+ *   Lesser General Public License for more details.                       *
+ *                                                                         *
+ *   You should have received a copy of the GNU Lesser General Public      *
+ *   License along with KouChat.                                           *
+ *   If not, see <http://www.gnu.org/licenses/>.                           *
+ ***************************************************************************/
+
+package net.usikkert.kouchat.util;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+import net.usikkert.kouchat.junit.ExpectedException;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+
+/**
+ * Test of {@link SerialExecutor}.
+ *
+ * @author Christian Ihle
+ */
+@SuppressWarnings("HardCodedStringLiteral")
+public class SerialExecutorTest {
+
+    @Rule
+    public ExpectedException expectedException = ExpectedException.none();
+
+    private List<Runnable> runners;
+    private List<String> results;
+    private SerialExecutor serialExecutor;
+
+    @Before
+    public void setUp() {
+        runners = new ArrayList<>();
+        results = new ArrayList<>();
+
+        serialExecutor = new SerialExecutor(new Executor() {
+            @Override
+            public void execute(final Runnable command) {
+                runners.add(command);
+            }
+        });
+    }
+
+    @Test
+    public void constructorShouldThrowExceptionIfExecutorIsNull() {
+        expectedException.expect(IllegalArgumentException.class);
+        expectedException.expectMessage("Executor can not be null");
+
+        new SerialExecutor(null);
+    }
+
+    @Test
+    public void executeShouldThrowExceptionIfTaskIsNull() {
+        expectedException.expect(IllegalArgumentException.class);
+        expectedException.expectMessage("Task can not be null");
+
+        serialExecutor.execute(null);
+    }
+
+    @Test
+    public void executeShouldRunAllWaitingTasksInOrderWithOneRunner() {
+        serialExecutor.execute(createTask("task 1"));
+        serialExecutor.execute(createTask("task 2"));
+        serialExecutor.execute(createTask("task 3"));
+
+        assertEquals(1, runners.size());
+        assertEquals(3, serialExecutor.getWaitingTasks());
+
+        runners.get(0).run();
+
+        assertEquals(Arrays.asList("task 1", "task 2", "task 3"), results);
+        assertEquals(0, serialExecutor.getWaitingTasks());
+    }
+
+    @Test
+    public void executeShouldStartNewRunnerAfterPreviousRunnerIsDone() {
+        serialExecutor.execute(createTask("task 1"));
+        runners.get(0).run();
+
+        serialExecutor.execute(createTask("task 2"));
+
+        assertEquals(2, runners.size());
+        runners.get(1).run();
+
+        assertEquals(Arrays.asList("task 1", "task 2"), results);
+    }
+
+    @Test
+    public void failingTaskShouldNotStopTheNextTasks() {
+        serialExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                throw new IllegalStateException("Failed");
+            }
+        });
+        serialExecutor.execute(createTask("task 2"));
+
+        runners.get(0).run();
+
+        assertEquals(Arrays.asList("task 2"), results);
+    }
+
+    @Test
+    public void executeShouldThrowExceptionAndForgetTheTaskWhenRejected() {
+        final Executor rejectingExecutor = mock(Executor.class);
+        doThrow(new RejectedExecutionException("Pool is full")).doNothing().when(rejectingExecutor).execute(any(Runnable.class));
+        final SerialExecutor executor = new SerialExecutor(rejectingExecutor);
+
+        try {
+            executor.execute(createTask("task 1"));
+            fail("Should have been rejected");
+        }
+
+        catch (final RejectedExecutionException e) {
+            assertEquals("Pool is full", e.getMessage());
+        }
+
+        assertEquals(0, executor.getWaitingTasks());
+
+        executor.execute(createTask("task 2"));
+
+        verify(rejectingExecutor, times(2)).execute(any(Runnable.class));
+        assertEquals(1, executor.getWaitingTasks());
+    }
+
+    private Runnable createTask(final String result) {
+        return new Runnable() {
+            @Override
+            public void run() {
+                results.add(result);
+            }
+        };
+    }
+}